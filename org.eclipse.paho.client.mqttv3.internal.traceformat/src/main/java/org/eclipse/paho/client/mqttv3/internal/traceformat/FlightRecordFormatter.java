@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - flight recorder trace
+ */
+package org.eclipse.paho.client.mqttv3.internal.traceformat;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.text.MessageFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.MissingResourceException;
+import java.util.PropertyResourceBundle;
+import java.util.ResourceBundle;
+
+import org.eclipse.paho.client.mqttv3.logging.FlightRecorder;
+import org.eclipse.paho.client.mqttv3.logging.LoggerFactory;
+
+/**
+ * Render a flight record, as written by
+ * {@link org.eclipse.paho.client.mqttv3.util.Debug#dumpFlightRecord(java.io.OutputStream)},
+ * as text, one line per event, formatting each event with the message
+ * catalog the way the client would have had its trace been switched on.
+ *
+ * The catalog of the client on the classpath is used unless another
+ * logcat.properties file is named, for a record taken from a different
+ * level of the client.
+ */
+public class FlightRecordFormatter {
+
+	private static final String[] LEVELS = { "", "SEVERE", "WARNING", "INFO", "CONFIG", "FINE", "FINER",
+			"FINEST" };
+
+	private final ResourceBundle catalog;
+	private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+
+	public FlightRecordFormatter(ResourceBundle catalog) {
+		this.catalog = catalog;
+	}
+
+	public static void main(String[] args) {
+		if (args == null || (args.length != 1 && args.length != 3)) {
+			usageAndExit();
+		}
+		String file = args[0];
+		String catalogFile = null;
+		if (args.length == 3) {
+			if (!args[1].equals("-c")) {
+				System.out.println("Unknown arg: " + args[1]);
+				usageAndExit();
+			}
+			catalogFile = args[2];
+		}
+
+		try {
+			ResourceBundle catalog;
+			if (catalogFile == null) {
+				catalog = ResourceBundle.getBundle(LoggerFactory.MQTT_CLIENT_MSG_CAT);
+			} else {
+				InputStream in = new FileInputStream(catalogFile);
+				try {
+					catalog = new PropertyResourceBundle(in);
+				} finally {
+					in.close();
+				}
+			}
+			InputStream in = new BufferedInputStream(new FileInputStream(file));
+			try {
+				new FlightRecordFormatter(catalog).format(FlightRecorder.read(in), System.out);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			System.out.println("Unable to read " + file + ": " + e);
+			System.exit(1);
+		}
+	}
+
+	private static void usageAndExit() {
+		System.out.println("usage:\n FlightRecordFormatter <dump file> [-c <logcat.properties>]");
+		System.out.println("  -c the message catalog to use, the one of the client on the classpath if not given");
+		System.exit(1);
+	}
+
+	/**
+	 * Write the events of a record, oldest first.
+	 * @param record the record to write
+	 * @param out where to write it
+	 */
+	public void format(FlightRecorder.FlightRecord record, PrintStream out) {
+		int events = record.getEvents().size();
+		out.println("Flight record of client " + record.getClientId() + ": " + events + " of "
+				+ record.getRecorded() + " events");
+		for (Iterator it = record.getEvents().iterator(); it.hasNext();) {
+			out.println(format((FlightRecorder.Event) it.next()));
+		}
+	}
+
+	/**
+	 * @param event the event to format
+	 * @return the event as one line of text
+	 */
+	public String format(FlightRecorder.Event event) {
+		StringBuffer line = new StringBuffer();
+		line.append(dateFormat.format(new Date(event.getTime())));
+		line.append(" [").append(event.getThreadId()).append("] ");
+		int level = event.getLevel();
+		line.append(level > 0 && level < LEVELS.length ? LEVELS[level] : String.valueOf(level));
+		line.append(' ').append(event.getSourceClass()).append('.').append(event.getSourceMethod());
+		line.append(' ').append(event.getMessageId()).append(": ");
+		String message;
+		try {
+			message = catalog.getString(event.getMessageId());
+		} catch (MissingResourceException e) {
+			message = null;
+		}
+		Object[] inserts = event.getInserts();
+		if (message != null) {
+			try {
+				line.append(MessageFormat.format(message, inserts));
+			} catch (IllegalArgumentException e) {
+				line.append(message);
+			}
+		} else {
+			// not in the catalog, so show what was recorded
+			line.append(event.getMessageId());
+			for (int i = 0; i < inserts.length; i++) {
+				line.append(i == 0 ? " " : ", ").append(inserts[i]);
+			}
+		}
+		if (event.getThrown() != null) {
+			line.append(" thrown=").append(event.getThrown());
+		}
+		return line.toString();
+	}
+}
@@ -0,0 +1,169 @@
+package org.eclipse.paho.client.mqttv3.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.MqttPersistable;
+import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.eclipse.paho.test.broker.TestBroker;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncPersistenceTest {
+
+	private static final String TOPIC = "async/persistence";
+	private static final int MESSAGES = 20;
+	private static final long PUT_LATENCY = 50;
+
+	private TestBroker broker;
+
+	/**
+	 * A persistence that takes a while over every write, and can be made to
+	 * fail them.
+	 */
+	private static class SlowPersistence extends MemoryPersistence {
+		final AtomicInteger puts = new AtomicInteger();
+		volatile boolean failing;
+
+		private void write() throws MqttPersistenceException {
+			try {
+				Thread.sleep(PUT_LATENCY);
+			} catch (InterruptedException e) {
+				throw new MqttPersistenceException(e);
+			}
+			if (failing) {
+				throw new MqttPersistenceException();
+			}
+			puts.incrementAndGet();
+		}
+
+		public void put(String key, MqttPersistable persistable) throws MqttPersistenceException {
+			write();
+			super.put(key, persistable);
+		}
+
+		public void putAll(String[] keys, MqttPersistable[] persistables) throws MqttPersistenceException {
+			write();
+			super.putAll(keys, persistables);
+		}
+	}
+
+	private static class Receiver implements MqttCallback {
+		final List<String> arrived = new ArrayList<String>();
+		final CountDownLatch latch;
+
+		Receiver(int expected) {
+			latch = new CountDownLatch(expected);
+		}
+
+		public void connectionLost(Throwable cause) {
+		}
+
+		public void messageArrived(String topic, MqttMessage message) throws Exception {
+			synchronized (arrived) {
+				arrived.add(new String(message.getPayload(), "UTF-8"));
+			}
+			latch.countDown();
+		}
+
+		public void deliveryComplete(IMqttDeliveryToken token) {
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		broker = new TestBroker();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		broker.close();
+	}
+
+	private MqttAsyncClient connect(SlowPersistence persistence, Receiver receiver) throws Exception {
+		MqttAsyncClient client = new MqttAsyncClient(broker.getServerURI(), "async", persistence);
+		client.setCallback(receiver);
+		MqttConnectOptions options = new MqttConnectOptions();
+		options.setAsyncPersistence(true);
+		options.setMaxInflight(MESSAGES * 2);
+		client.connect(options).waitForCompletion(5000);
+		client.subscribe(TOPIC, 0).waitForCompletion(5000);
+		return client;
+	}
+
+	@Test(timeout = 10000)
+	public void testPublishDoesNotWaitForPersistence() throws Exception {
+		SlowPersistence persistence = new SlowPersistence();
+		Receiver receiver = new Receiver(MESSAGES);
+		MqttAsyncClient client = connect(persistence, receiver);
+		try {
+			List<IMqttDeliveryToken> tokens = new ArrayList<IMqttDeliveryToken>();
+			long start = System.nanoTime();
+			for (int i = 0; i < MESSAGES; i++) {
+				tokens.add(client.publish(TOPIC, Integer.toString(i).getBytes("UTF-8"), i % 3, false));
+			}
+			long publishing = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			Assert.assertTrue("publishing took " + publishing + "ms", publishing < PUT_LATENCY * MESSAGES / 2);
+			for (IMqttDeliveryToken token : tokens) {
+				token.waitForCompletion(5000);
+			}
+			Assert.assertTrue(receiver.latch.await(5, TimeUnit.SECONDS));
+
+			// the publishes kept their order, whatever their QoS
+			for (int i = 0; i < MESSAGES; i++) {
+				Assert.assertEquals(Integer.toString(i), receiver.arrived.get(i));
+			}
+			// publishes queued while a batch was written were written together
+			Assert.assertTrue(persistence.puts.get() < MESSAGES * 2 / 3);
+			// the callback thread unpersists the publishes once their tokens
+			// are complete, and the disconnect waits for it to
+			client.disconnect().waitForCompletion(5000);
+			Assert.assertEquals(Integer.valueOf(0), client.getDebug().getTableSizes().get("persisted"));
+			Assert.assertEquals(Integer.valueOf(0), client.getDebug().getTableSizes().get("persisting"));
+		} finally {
+			client.close();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testFailedPersistenceCompletesToken() throws Exception {
+		SlowPersistence persistence = new SlowPersistence();
+		Receiver receiver = new Receiver(1);
+		MqttAsyncClient client = connect(persistence, receiver);
+		try {
+			persistence.failing = true;
+			IMqttDeliveryToken failed = client.publish(TOPIC, "1".getBytes("UTF-8"), 1, false);
+			IMqttDeliveryToken sent = client.publish(TOPIC, "0".getBytes("UTF-8"), 0, false);
+			try {
+				failed.waitForCompletion(5000);
+				Assert.fail("expected MqttException");
+			} catch (MqttException expected) {
+				Assert.assertTrue(expected instanceof MqttPersistenceException);
+			}
+			sent.waitForCompletion(5000);
+			Assert.assertTrue(receiver.latch.await(5, TimeUnit.SECONDS));
+			Assert.assertEquals("0", receiver.arrived.get(0));
+			Assert.assertEquals(Integer.valueOf(0), client.getDebug().getTableSizes().get("tokens"));
+			Assert.assertEquals(Integer.valueOf(0), client.getDebug().getTableSizes().get("inUseMsgIds"));
+
+			// the client goes on once the persistence recovers
+			persistence.failing = false;
+			client.publish(TOPIC, "2".getBytes("UTF-8"), 1, false).waitForCompletion(5000);
+			client.disconnect().waitForCompletion(5000);
+		} finally {
+			client.close();
+		}
+	}
+}
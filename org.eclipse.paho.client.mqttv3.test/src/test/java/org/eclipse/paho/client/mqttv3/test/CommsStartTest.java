@@ -0,0 +1,101 @@
+package org.eclipse.paho.client.mqttv3.test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.eclipse.paho.test.broker.TestBroker;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the comms threads start without delay, including when they are
+ * started again while their previous run is still finishing.
+ */
+public class CommsStartTest {
+
+	private TestBroker broker;
+
+	@Before
+	public void setUp() throws Exception {
+		broker = new TestBroker();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		broker.close();
+	}
+
+	@Test(timeout = 10000)
+	public void testConnectIsQuick() throws Exception {
+		MqttAsyncClient client = new MqttAsyncClient(broker.getServerURI(), "quick", new MemoryPersistence());
+		for (int i = 0; i < 5; i++) {
+			long start = System.currentTimeMillis();
+			client.connect().waitForCompletion(5000);
+			Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+			client.disconnect().waitForCompletion(5000);
+		}
+		client.close();
+	}
+
+	/**
+	 * A callback that throws loses the connection on the callback thread,
+	 * which then reports the loss while it is still running. Connecting again
+	 * from connectionLost has to start the callback once that run ends, which
+	 * here is after the new connection is made.
+	 */
+	@Test(timeout = 10000)
+	public void testReconnectFromConnectionLost() throws Exception {
+		final CountDownLatch lost = new CountDownLatch(1);
+		final CountDownLatch arrived = new CountDownLatch(1);
+		final MqttAsyncClient client = new MqttAsyncClient(broker.getServerURI(), "again", new MemoryPersistence());
+		client.setCallback(new MqttCallback() {
+			private boolean failed = false;
+
+			public void connectionLost(Throwable cause) {
+				lost.countDown();
+				try {
+					client.connect(null, null, null);
+					Thread.sleep(500);
+				} catch (MqttException e) {
+					Assert.fail(e.toString());
+				} catch (InterruptedException e) {
+				}
+			}
+
+			public void messageArrived(String topic, MqttMessage message) {
+				if (!failed) {
+					failed = true;
+					throw new IllegalStateException("drop the connection");
+				}
+				arrived.countDown();
+			}
+
+			public void deliveryComplete(IMqttDeliveryToken token) {
+			}
+		});
+		client.connect().waitForCompletion(5000);
+		client.subscribe("start/test", 0).waitForCompletion(5000);
+		client.publish("start/test", "first".getBytes(), 0, false);
+
+		Assert.assertTrue(lost.await(5, TimeUnit.SECONDS));
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!client.isConnected()) {
+			Assert.assertTrue("not reconnected", System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+		// the callback delivers messages again
+		client.subscribe("start/test", 0).waitForCompletion(5000);
+		client.publish("start/test", "second".getBytes(), 0, false);
+		Assert.assertTrue(arrived.await(5, TimeUnit.SECONDS));
+		client.disconnect().waitForCompletion(5000);
+		client.close();
+	}
+}
@@ -0,0 +1,66 @@
+package org.eclipse.paho.client.mqttv3.test;
+
+import java.util.Arrays;
+
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.eclipse.paho.test.broker.TestBroker;
+
+/**
+ * Measures how long a client takes to connect, and to connect again after
+ * disconnecting, to an in-process {@link TestBroker}: the time a short lived client,
+ * such as a command line tool, spends before it can do any work. Run it with
+ * the test classpath, e.g.
+ * <code>java org.eclipse.paho.client.mqttv3.test.ConnectLatencyBenchmark [connects]</code>
+ */
+public class ConnectLatencyBenchmark {
+
+	private static final int WARM_UP = 50;
+
+	public static void main(String[] args) throws Exception {
+		int connects = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		TestBroker broker = new TestBroker();
+		MqttConnectOptions options = new MqttConnectOptions();
+
+		long[] fresh = new long[connects];
+		for (int i = -WARM_UP; i < connects; i++) {
+			MqttAsyncClient client = new MqttAsyncClient(broker.getServerURI(), "latency-" + i, new MemoryPersistence());
+			long start = System.nanoTime();
+			client.connect(options).waitForCompletion(10000);
+			long elapsed = System.nanoTime() - start;
+			if (i >= 0) {
+				fresh[i] = elapsed;
+			}
+			client.disconnect().waitForCompletion(10000);
+			client.close();
+		}
+		report("new client", fresh);
+
+		long[] again = new long[connects];
+		MqttAsyncClient client = new MqttAsyncClient(broker.getServerURI(), "latency", new MemoryPersistence());
+		for (int i = -WARM_UP; i < connects; i++) {
+			long start = System.nanoTime();
+			client.connect(options).waitForCompletion(10000);
+			long elapsed = System.nanoTime() - start;
+			if (i >= 0) {
+				again[i] = elapsed;
+			}
+			client.disconnect().waitForCompletion(10000);
+		}
+		client.close();
+		report("reconnect", again);
+		broker.close();
+	}
+
+	private static void report(String name, long[] nanos) {
+		Arrays.sort(nanos);
+		long total = 0;
+		for (long n : nanos) {
+			total += n;
+		}
+		System.out.println(String.format("%s: %d connects, mean %.3f ms, median %.3f ms, p99 %.3f ms, max %.3f ms",
+				name, nanos.length, total / 1e6 / nanos.length, nanos[nanos.length / 2] / 1e6,
+				nanos[nanos.length * 99 / 100] / 1e6, nanos[nanos.length - 1] / 1e6));
+	}
+}
@@ -0,0 +1,138 @@
+package org.eclipse.paho.client.mqttv3.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.logging.FlightRecorder;
+import org.eclipse.paho.client.mqttv3.logging.FlightRecorder.Event;
+import org.eclipse.paho.client.mqttv3.logging.FlightRecorder.FlightRecord;
+import org.eclipse.paho.client.mqttv3.logging.Logger;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.eclipse.paho.test.broker.TestBroker;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FlightRecorderTest {
+
+	private TestBroker broker;
+
+	@Before
+	public void setUp() throws Exception {
+		broker = new TestBroker();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FlightRecorder.setCapacity(0);
+		broker.close();
+	}
+
+	private static FlightRecord dump(MqttAsyncClient client) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Assert.assertTrue(client.getDebug().dumpFlightRecord(out));
+		return FlightRecorder.read(new ByteArrayInputStream(out.toByteArray()));
+	}
+
+	@Test(timeout = 10000)
+	public void testRecordsClientTrace() throws Exception {
+		FlightRecorder.setCapacity(1024);
+		MqttAsyncClient client = new MqttAsyncClient(broker.getServerURI(), "recorded", new MemoryPersistence());
+		client.connect().waitForCompletion(5000);
+		client.publish("recorder/test", "hello".getBytes(), 1, false).waitForCompletion(5000);
+		client.disconnect().waitForCompletion(5000);
+
+		FlightRecord record = dump(client);
+		Assert.assertEquals("recorded", record.getClientId());
+		Event connect = null;
+		long last = 0;
+		for (Event event : record.getEvents()) {
+			Assert.assertTrue(event.getTime() >= last - 1);
+			last = event.getTime();
+			if ("103".equals(event.getMessageId())) {
+				connect = event;
+			}
+		}
+		Assert.assertNotNull("connect not recorded", connect);
+		Assert.assertEquals(Logger.FINE, connect.getLevel());
+		Assert.assertEquals(MqttAsyncClient.class.getName(), connect.getSourceClass());
+		Assert.assertEquals("connect", connect.getSourceMethod());
+		Assert.assertEquals(Boolean.TRUE, connect.getInserts()[0]);
+		Assert.assertEquals(Long.valueOf(30), connect.getInserts()[1]);
+
+		client.close();
+		Assert.assertNull(FlightRecorder.getRecorder("recorded"));
+	}
+
+	@Test(timeout = 10000)
+	public void testKeepsMostRecent() throws Exception {
+		FlightRecorder.setCapacity(16);
+		MqttAsyncClient client = new MqttAsyncClient(broker.getServerURI(), "wrapped", new MemoryPersistence());
+		client.connect().waitForCompletion(5000);
+		client.disconnect().waitForCompletion(5000);
+
+		FlightRecord record = dump(client);
+		Assert.assertTrue(record.getRecorded() > 16);
+		Assert.assertTrue(record.getEvents().size() <= 16);
+		// the connect has long been overwritten
+		for (Event event : record.getEvents()) {
+			Assert.assertFalse("103".equals(event.getMessageId()));
+		}
+		client.close();
+	}
+
+	@Test
+	public void testNotRecordingWhenOff() throws Exception {
+		MqttAsyncClient client = new MqttAsyncClient(broker.getServerURI(), "unrecorded", new MemoryPersistence());
+		Assert.assertNull(FlightRecorder.getRecorder("unrecorded"));
+		Assert.assertFalse(client.getDebug().dumpFlightRecord(new ByteArrayOutputStream()));
+		client.close();
+	}
+
+	/**
+	 * Dumps while several threads record, checking that no event read back
+	 * mixes the fields of two events.
+	 */
+	@Test(timeout = 30000)
+	public void testDumpWhileRecording() throws Exception {
+		FlightRecorder.setCapacity(64);
+		MqttAsyncClient client = new MqttAsyncClient(broker.getServerURI(), "concurrent", new MemoryPersistence());
+		final FlightRecorder recorder = FlightRecorder.getRecorder("concurrent");
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final CountDownLatch done = new CountDownLatch(4);
+		for (int t = 0; t < 4; t++) {
+			final String name = "writer" + t;
+			new Thread(new Runnable() {
+				public void run() {
+					for (int i = 0; running.get(); i++) {
+						recorder.record(Logger.FINE, name, name, name,
+								new Object[] { Integer.valueOf(i), String.valueOf(i), name }, null);
+					}
+					done.countDown();
+				}
+			}).start();
+		}
+		try {
+			for (int i = 0; i < 200; i++) {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				recorder.dump(out);
+				List<Event> events = FlightRecorder.read(new ByteArrayInputStream(out.toByteArray())).getEvents();
+				for (Event event : events) {
+					Object[] inserts = event.getInserts();
+					Assert.assertEquals(event.getMessageId(), event.getSourceClass());
+					Assert.assertEquals(event.getMessageId(), inserts[2]);
+					Assert.assertEquals(inserts[0].toString(), inserts[1]);
+				}
+			}
+		} finally {
+			running.set(false);
+			done.await();
+		}
+		client.close();
+	}
+}
@@ -0,0 +1,119 @@
+package org.eclipse.paho.client.mqttv3.test;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.eclipse.paho.client.mqttv3.MqttBatchPersistence;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.MqttPersistable;
+import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+import org.eclipse.paho.client.mqttv3.internal.wire.MqttPublish;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.eclipse.paho.client.mqttv3.persist.MqttDefaultFilePersistence;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.sun.management.UnixOperatingSystemMXBean;
+
+public class MqttBatchPersistenceTest {
+
+	private static MqttPublish publish(String topic) {
+		MqttMessage message = new MqttMessage(topic.getBytes(StandardCharsets.UTF_8));
+		message.setQos(1);
+		MqttPublish publish = new MqttPublish(topic, message);
+		publish.setMessageId(1);
+		return publish;
+	}
+
+	private static int length(MqttPersistable persistable) throws MqttPersistenceException {
+		return persistable.getHeaderLength() + persistable.getPayloadLength();
+	}
+
+	private static void testPutAll(MqttBatchPersistence persistence) throws MqttPersistenceException {
+		persistence.open("batch", "tcp://localhost:1883");
+		try {
+			persistence.putAll(new String[] { "s-1", "s-2" }, new MqttPersistable[] { publish("a"), publish("b/c") });
+			Assert.assertEquals(length(publish("a")), length(persistence.get("s-1")));
+			Assert.assertEquals(length(publish("b/c")), length(persistence.get("s-2")));
+		} finally {
+			persistence.clear();
+			persistence.close();
+		}
+	}
+
+	@Test
+	public void testMemoryPutAll() throws Exception {
+		testPutAll(new MemoryPersistence());
+	}
+
+	@Test
+	public void testFilePutAll() throws Exception {
+		File dir = new File(System.getProperty("java.io.tmpdir"), "paho-batch-" + System.nanoTime());
+		testPutAll(new MqttDefaultFilePersistence(dir.getAbsolutePath()));
+	}
+
+	@Test
+	public void testFilePutAllRollsBack() throws Exception {
+		File dir = new File(System.getProperty("java.io.tmpdir"), "paho-batch-" + System.nanoTime());
+		MqttDefaultFilePersistence persistence = new MqttDefaultFilePersistence(dir.getAbsolutePath());
+		persistence.open("batch", "tcp://localhost:1883");
+		try {
+			MqttPublish existing = publish("existing/entry");
+			persistence.put("s-1", existing);
+			MqttPublish broken = new MqttPublish("broken", new MqttMessage(new byte[1])) {
+				@Override
+				public byte[] getPayloadBytes() throws MqttPersistenceException {
+					throw new MqttPersistenceException();
+				}
+			};
+			try {
+				persistence.putAll(new String[] { "s-1", "s-2" }, new MqttPersistable[] { publish("new"), broken });
+				Assert.fail("expected MqttPersistenceException");
+			} catch (MqttPersistenceException expected) {
+			}
+			Assert.assertFalse(persistence.containsKey("s-2"));
+			Assert.assertEquals(length(existing), length(persistence.get("s-1")));
+		} finally {
+			persistence.clear();
+			persistence.close();
+		}
+	}
+
+	@Test(timeout = 60000)
+	public void testFilePutAllKeepsFewFilesOpen() throws Exception {
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		Assume.assumeTrue(os instanceof UnixOperatingSystemMXBean);
+		final UnixOperatingSystemMXBean unix = (UnixOperatingSystemMXBean) os;
+		File dir = new File(System.getProperty("java.io.tmpdir"), "paho-batch-" + System.nanoTime());
+		MqttDefaultFilePersistence persistence = new MqttDefaultFilePersistence(dir.getAbsolutePath());
+		persistence.open("batch", "tcp://localhost:1883");
+		try {
+			// more entries than the common default limit of 1024 open files
+			int entries = 4096;
+			final long[] mostOpen = { 0 };
+			String[] keys = new String[entries];
+			MqttPersistable[] messages = new MqttPersistable[entries];
+			for (int i = 0; i < entries; i++) {
+				keys[i] = "s-" + (i + 1);
+				messages[i] = new MqttPublish("batch/" + i, new MqttMessage(new byte[] { 1 })) {
+					@Override
+					public byte[] getHeaderBytes() throws MqttPersistenceException {
+						mostOpen[0] = Math.max(mostOpen[0], unix.getOpenFileDescriptorCount());
+						return super.getHeaderBytes();
+					}
+				};
+			}
+			long before = unix.getOpenFileDescriptorCount();
+			persistence.putAll(keys, messages);
+			Assert.assertTrue("open files grew from " + before + " to " + mostOpen[0], mostOpen[0] < before + 256);
+			Assert.assertEquals(entries, Collections.list(persistence.keys()).size());
+		} finally {
+			persistence.clear();
+			persistence.close();
+		}
+	}
+}
@@ -0,0 +1,176 @@
+package org.eclipse.paho.client.mqttv3.test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttClientHost;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.test.broker.TestBroker;
+
+/**
+ * Connects many clients through one {@link MqttClientHost}, keeps them
+ * connected over a few keep alive intervals and has each of them publish,
+ * reporting the threads used, the CPU time spent while idle and the time
+ * taken to connect, publish and disconnect. Run it with the test classpath,
+ * e.g.
+ * <code>java org.eclipse.paho.client.mqttv3.test.MqttClientHostBenchmark [clients] [workers] [server URI]</code>
+ * <p>
+ * Without a server URI an in-process {@link TestBroker} is used, which needs
+ * a second socket and two threads per client; the threads and CPU time
+ * reported leave out the broker's. For 10000 clients it may have to be
+ * started on its own with
+ * <code>java org.eclipse.paho.test.broker.TestBroker</code>
+ * so that neither process runs out of file descriptors.
+ * </p>
+ */
+public class MqttClientHostBenchmark {
+
+	private static final int KEEP_ALIVE = 5;
+	private static final int OUTSTANDING = 200;
+
+	public static void main(String[] args) throws Exception {
+		int clientCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int workers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		TestBroker broker = null;
+		String serverURI;
+		if (args.length > 2) {
+			serverURI = args[2];
+		} else {
+			broker = new TestBroker();
+			serverURI = broker.getServerURI();
+		}
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		int baseline = clientThreadCount();
+
+		MqttClientHost host = new MqttClientHost(workers);
+		List<MqttAsyncClient> clients = new ArrayList<MqttAsyncClient>(clientCount);
+		for (int i = 0; i < clientCount; i++) {
+			clients.add(host.createClient(serverURI, "bench-" + i));
+		}
+		final MqttConnectOptions options = new MqttConnectOptions();
+		options.setKeepAliveInterval(KEEP_ALIVE);
+		options.setConnectionTimeout(60);
+
+		long start = System.nanoTime();
+		int failed = run(clients, new Action() {
+			public IMqttToken start(MqttAsyncClient client, IMqttActionListener listener) throws Exception {
+				return client.connect(options, null, listener);
+			}
+		});
+		long connectMillis = (System.nanoTime() - start) / 1000000;
+		System.out.println(String.format("connected %d clients in %d ms (%d failed), %d workers", clientCount
+				- failed, connectMillis, failed, workers));
+		System.out.println(String.format("threads: %d before, %d with the clients connected (%d per client without a host)",
+				baseline, clientThreadCount(), 3));
+
+		long cpuBefore = totalCpu(threads);
+		Thread.sleep(KEEP_ALIVE * 3 * 1000L);
+		long idleCpu = (totalCpu(threads) - cpuBefore) / 1000000;
+		int stillConnected = 0;
+		for (MqttAsyncClient client : clients) {
+			if (client.isConnected()) {
+				stillConnected++;
+			}
+		}
+		System.out.println(String.format("after %d s idle: %d still connected, %d ms CPU%s", KEEP_ALIVE * 3,
+				stillConnected, idleCpu, broker == null ? "" : ", " + broker.getPingCount() + " pings"));
+
+		start = System.nanoTime();
+		failed = run(clients, new Action() {
+			public IMqttToken start(MqttAsyncClient client, IMqttActionListener listener) throws Exception {
+				return client.publish("bench/" + client.getClientId(), new byte[64], 1, false, null, listener);
+			}
+		});
+		System.out.println(String.format("one QoS 1 publish per client in %d ms (%d failed)",
+				(System.nanoTime() - start) / 1000000, failed));
+
+		start = System.nanoTime();
+		failed = run(clients, new Action() {
+			public IMqttToken start(MqttAsyncClient client, IMqttActionListener listener) throws Exception {
+				return client.disconnect(0, null, listener);
+			}
+		});
+		System.out.println(String.format("disconnected in %d ms (%d failed)", (System.nanoTime() - start) / 1000000,
+				failed));
+		for (MqttAsyncClient client : clients) {
+			client.close();
+		}
+		host.close();
+		if (broker != null) {
+			broker.close();
+		}
+	}
+
+	private interface Action {
+		IMqttToken start(MqttAsyncClient client, IMqttActionListener listener) throws Exception;
+	}
+
+	/**
+	 * Runs the action for every client, with a bounded number outstanding.
+	 * @return the number that failed
+	 */
+	private static int run(List<MqttAsyncClient> clients, Action action) throws Exception {
+		final Semaphore outstanding = new Semaphore(OUTSTANDING);
+		final CountDownLatch done = new CountDownLatch(clients.size());
+		final AtomicInteger failed = new AtomicInteger(0);
+		IMqttActionListener listener = new IMqttActionListener() {
+			public void onSuccess(IMqttToken token) {
+				outstanding.release();
+				done.countDown();
+			}
+
+			public void onFailure(IMqttToken token, Throwable exception) {
+				failed.incrementAndGet();
+				outstanding.release();
+				done.countDown();
+			}
+		};
+		for (MqttAsyncClient client : clients) {
+			outstanding.acquire();
+			try {
+				action.start(client, listener);
+			} catch (Exception e) {
+				listener.onFailure(null, e);
+			}
+		}
+		done.await(5, TimeUnit.MINUTES);
+		return failed.get();
+	}
+
+	/**
+	 * @return whether the thread belongs to an in-process broker
+	 */
+	private static boolean isBrokerThread(Thread thread) {
+		return thread.getName().startsWith("TestBroker");
+	}
+
+	private static int clientThreadCount() {
+		int count = 0;
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (!isBrokerThread(thread)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static long totalCpu(ThreadMXBean threads) {
+		long total = 0;
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			long cpu = isBrokerThread(thread) ? 0 : threads.getThreadCpuTime(thread.getId());
+			if (cpu > 0) {
+				total += cpu;
+			}
+		}
+		return total;
+	}
+}
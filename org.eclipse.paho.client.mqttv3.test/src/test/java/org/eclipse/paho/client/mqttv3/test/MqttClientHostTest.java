@@ -0,0 +1,190 @@
+package org.eclipse.paho.client.mqttv3.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttClientHost;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.internal.HostedTask;
+import org.eclipse.paho.test.broker.TestBroker;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MqttClientHostTest {
+
+	private TestBroker broker;
+	private MqttClientHost host;
+
+	@Before
+	public void setUp() throws Exception {
+		broker = new TestBroker();
+		host = new MqttClientHost(2);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		host.close();
+		broker.close();
+	}
+
+	private static int countClientThreads() {
+		int count = 0;
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			String name = thread.getName();
+			if (name.startsWith("MQTT Rec") || name.startsWith("MQTT Snd") || name.startsWith("MQTT Call")) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Test(timeout = 30000)
+	public void testClientsShareThreads() throws Exception {
+		MqttConnectOptions options = new MqttConnectOptions();
+		options.setKeepAliveInterval(1);
+		List<MqttAsyncClient> clients = new ArrayList<MqttAsyncClient>();
+		for (int i = 0; i < 50; i++) {
+			MqttAsyncClient client = host.createClient(broker.getServerURI(), "hosted-" + i);
+			client.connect(options).waitForCompletion(5000);
+			Assert.assertTrue(client.isConnected());
+			clients.add(client);
+		}
+		Assert.assertEquals(50, broker.getConnectedCount());
+		Assert.assertEquals(0, countClientThreads());
+
+		// the keep alive pings of every client are sent by the shared threads
+		Thread.sleep(2500);
+		Assert.assertTrue("pings " + broker.getPingCount(), broker.getPingCount() >= 50);
+		for (MqttAsyncClient client : clients) {
+			Assert.assertTrue(client.isConnected());
+		}
+
+		for (MqttAsyncClient client : clients) {
+			client.disconnect().waitForCompletion(5000);
+			client.close();
+		}
+		long deadline = System.currentTimeMillis() + 5000;
+		while (broker.getConnectedCount() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		Assert.assertEquals(0, broker.getConnectedCount());
+	}
+
+	@Test(timeout = 30000)
+	public void testPublishAndReceive() throws Exception {
+		final int count = 500;
+		final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+		final CountDownLatch done = new CountDownLatch(count);
+		MqttAsyncClient subscriber = host.createClient(broker.getServerURI(), "subscriber");
+		subscriber.setCallback(new MqttCallback() {
+			public void connectionLost(Throwable cause) {
+			}
+
+			public void messageArrived(String topic, MqttMessage message) {
+				received.add(new String(message.getPayload()));
+				done.countDown();
+			}
+
+			public void deliveryComplete(IMqttDeliveryToken token) {
+			}
+		});
+		subscriber.connect().waitForCompletion(5000);
+		subscriber.subscribe("host/test/#", 0).waitForCompletion(5000);
+
+		MqttAsyncClient publisher = host.createClient(broker.getServerURI(), "publisher");
+		MqttConnectOptions options = new MqttConnectOptions();
+		options.setMaxInflight(count);
+		publisher.connect(options).waitForCompletion(5000);
+		IMqttDeliveryToken last = null;
+		for (int i = 0; i < count; i++) {
+			last = publisher.publish("host/test/" + (i % 4), Integer.toString(i).getBytes(), 1, false);
+		}
+		last.waitForCompletion(10000);
+		Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+		for (int i = 0; i < count; i++) {
+			Assert.assertEquals(Integer.toString(i), received.get(i));
+		}
+
+		publisher.disconnect().waitForCompletion(5000);
+		subscriber.disconnect().waitForCompletion(5000);
+		publisher.close();
+		subscriber.close();
+	}
+
+	@Test(timeout = 30000)
+	public void testConnectionLost() throws Exception {
+		final CountDownLatch lost = new CountDownLatch(1);
+		MqttAsyncClient client = host.createClient(broker.getServerURI(), "lost");
+		client.setCallback(new MqttCallback() {
+			public void connectionLost(Throwable cause) {
+				lost.countDown();
+			}
+
+			public void messageArrived(String topic, MqttMessage message) {
+			}
+
+			public void deliveryComplete(IMqttDeliveryToken token) {
+			}
+		});
+		client.connect().waitForCompletion(5000);
+		broker.close();
+		Assert.assertTrue(lost.await(10, TimeUnit.SECONDS));
+		Assert.assertFalse(client.isConnected());
+		client.close();
+	}
+
+	@Test(timeout = 10000)
+	public void testBusyTaskGivesWay() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		final List<String> runs = Collections.synchronizedList(new ArrayList<String>());
+		final CountDownLatch finished = new CountDownLatch(2);
+		HostedTask busy = new HostedTask(executor) {
+			private int slices = 0;
+
+			protected boolean runSlice() {
+				runs.add("busy");
+				if (++slices == 4) {
+					finished.countDown();
+					return false;
+				}
+				return true;
+			}
+		};
+		HostedTask other = new HostedTask(executor) {
+			protected boolean runSlice() {
+				runs.add("other");
+				finished.countDown();
+				return false;
+			}
+		};
+		// hold the thread until both tasks are queued
+		final CountDownLatch gate = new CountDownLatch(1);
+		executor.execute(new Runnable() {
+			public void run() {
+				try {
+					gate.await();
+				} catch (InterruptedException e) {
+				}
+			}
+		});
+		busy.signal();
+		other.signal();
+		gate.countDown();
+		Assert.assertTrue(finished.await(5, TimeUnit.SECONDS));
+		executor.shutdown();
+		// the busy task queues itself again behind the other one
+		Assert.assertEquals("other", runs.get(1));
+		Assert.assertEquals(5, runs.size());
+	}
+}
@@ -0,0 +1,178 @@
+package org.eclipse.paho.client.mqttv3.test;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.paho.client.mqttv3.DisconnectedBufferOptions;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.metrics.CompositeMetricsListener;
+import org.eclipse.paho.client.mqttv3.metrics.MqttClientMetrics;
+import org.eclipse.paho.client.mqttv3.metrics.MqttClientMetricsAdapter;
+import org.eclipse.paho.client.mqttv3.metrics.MqttClientMetricsListener;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.eclipse.paho.test.broker.TestBroker;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MqttClientMetricsListenerTest {
+
+	private static final int PUBLISH = 3;
+	private static final int PUBACK = 4;
+
+	private TestBroker broker;
+
+	@Before
+	public void setUp() throws Exception {
+		broker = new TestBroker();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		broker.close();
+	}
+
+	private static class CountingListener implements MqttClientMetricsListener {
+		final AtomicInteger publishesSent = new AtomicInteger();
+		final AtomicInteger pubacksReceived = new AtomicInteger();
+		final AtomicInteger acks = new AtomicInteger();
+		final AtomicInteger callbacks = new AtomicInteger();
+		final AtomicInteger reconnects = new AtomicInteger();
+		final AtomicInteger puts = new AtomicInteger();
+		final AtomicInteger removes = new AtomicInteger();
+		final AtomicInteger deleted = new AtomicInteger();
+		final AtomicInteger refused = new AtomicInteger();
+
+		public void packetSent(int type, long bytes) {
+			if (type == PUBLISH) {
+				publishesSent.incrementAndGet();
+			}
+		}
+
+		public void packetReceived(int type, long bytes) {
+			if (type == PUBACK) {
+				pubacksReceived.incrementAndGet();
+			}
+		}
+
+		public void ackReceived(int qos, long nanos) {
+			Assert.assertEquals(1, qos);
+			acks.incrementAndGet();
+		}
+
+		public void callbackCompleted(long nanos) {
+			callbacks.incrementAndGet();
+		}
+
+		public void reconnected() {
+			reconnects.incrementAndGet();
+		}
+
+		public void persistencePut(long nanos) {
+			puts.incrementAndGet();
+		}
+
+		public void persistenceRemoved(long nanos) {
+			removes.incrementAndGet();
+		}
+
+		public void bufferSpilled(int bufferSize, boolean oldestDeleted) {
+			Assert.assertEquals(1, bufferSize);
+			(oldestDeleted ? deleted : refused).incrementAndGet();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testListenerSeesEvents() throws Exception {
+		MqttAsyncClient client = new MqttAsyncClient(broker.getServerURI(), "listened", new MemoryPersistence());
+		CountingListener counting = new CountingListener();
+		CountingListener second = new CountingListener();
+		client.getMetrics().setListener(new CompositeMetricsListener(counting, second));
+
+		client.connect().waitForCompletion(5000);
+		for (int i = 0; i < 5; i++) {
+			client.publish("listener/test", new byte[10], 1, false).waitForCompletion(5000);
+		}
+		Assert.assertEquals(5, counting.publishesSent.get());
+		Assert.assertEquals(5, counting.pubacksReceived.get());
+		Assert.assertEquals(5, counting.acks.get());
+		// each QoS 1 publish is stored until it is acknowledged
+		Assert.assertTrue(counting.puts.get() >= 5);
+		Assert.assertTrue(counting.removes.get() >= 5);
+		Assert.assertTrue(counting.callbacks.get() > 0);
+		Assert.assertEquals(0, counting.reconnects.get());
+		Assert.assertEquals(5, second.acks.get());
+
+		client.disconnect().waitForCompletion(5000);
+		client.connect().waitForCompletion(5000);
+		Assert.assertEquals(1, counting.reconnects.get());
+		client.disconnect().waitForCompletion(5000);
+		client.close();
+	}
+
+	@Test
+	public void testBufferSpill() throws Exception {
+		MqttAsyncClient client = new MqttAsyncClient(broker.getServerURI(), "spilled", new MemoryPersistence());
+		CountingListener counting = new CountingListener();
+		client.getMetrics().setListener(counting);
+		DisconnectedBufferOptions options = new DisconnectedBufferOptions();
+		options.setBufferEnabled(true);
+		options.setBufferSize(1);
+		options.setDeleteOldestMessages(true);
+		client.setBufferOpts(options);
+
+		client.publish("listener/test", new byte[10], 0, false);
+		client.publish("listener/test", new byte[10], 0, false);
+		Assert.assertEquals(1, counting.deleted.get());
+
+		options.setDeleteOldestMessages(false);
+		try {
+			client.publish("listener/test", new byte[10], 0, false);
+			Assert.fail("the buffer is full");
+		} catch (MqttException e) {
+			Assert.assertEquals(MqttException.REASON_CODE_DISCONNECTED_BUFFER_FULL, e.getReasonCode());
+		}
+		Assert.assertEquals(1, counting.refused.get());
+		client.close();
+	}
+
+	/**
+	 * Without a listener set, counting events must not allocate.
+	 */
+	@Test
+	public void testNoListenerDoesNotAllocate() throws Exception {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		MqttAsyncClient client = new MqttAsyncClient(broker.getServerURI(), "unlistened", new MemoryPersistence());
+		MqttClientMetrics metrics = client.getMetrics();
+		Assert.assertTrue(metrics.getListener() instanceof MqttClientMetricsAdapter);
+		record(metrics, 100000);
+
+		long thread = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(thread);
+		record(metrics, 100000);
+		long allocated = threads.getThreadAllocatedBytes(thread) - before;
+		// allow for the bean itself, but nothing per event
+		Assert.assertTrue(allocated + " bytes allocated", allocated < 1024);
+		client.close();
+	}
+
+	private static void record(MqttClientMetrics metrics, int count) {
+		for (int i = 0; i < count; i++) {
+			metrics.packetSent(PUBLISH, 100);
+			metrics.packetReceived(PUBACK, 4);
+			metrics.ackReceived(1, 1000);
+			metrics.callbackCompleted(1000);
+			metrics.persistencePut(1000);
+			metrics.persistenceRemoved(1000);
+			metrics.bufferSpilled(1, true);
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package org.eclipse.paho.client.mqttv3.test;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.metrics.LatencyHistogram;
+import org.eclipse.paho.client.mqttv3.metrics.MqttClientMetrics;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.eclipse.paho.test.broker.TestBroker;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MqttClientMetricsTest {
+
+	private static final int PUBLISH = 3;
+	private static final int PUBACK = 4;
+	private static final int MESSAGES = 10;
+
+	private TestBroker broker;
+
+	@Before
+	public void setUp() throws Exception {
+		broker = new TestBroker();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		broker.close();
+	}
+
+	@Test(timeout = 10000)
+	public void testCountsTrafficAndLatency() throws Exception {
+		final CountDownLatch arrived = new CountDownLatch(MESSAGES);
+		MqttAsyncClient client = new MqttAsyncClient(broker.getServerURI(), "metrics", new MemoryPersistence());
+		client.setCallback(new MqttCallback() {
+			public void connectionLost(Throwable cause) {
+			}
+
+			public void messageArrived(String topic, MqttMessage message) throws Exception {
+				Thread.sleep(2);
+				arrived.countDown();
+			}
+
+			public void deliveryComplete(IMqttDeliveryToken token) {
+			}
+		});
+		MqttClientMetrics metrics = client.getMetrics();
+		client.connect().waitForCompletion(5000);
+		client.subscribe("metrics/test", 0).waitForCompletion(5000);
+		for (int i = 0; i < MESSAGES; i++) {
+			client.publish("metrics/test", new byte[100], 1, false).waitForCompletion(5000);
+		}
+		Assert.assertTrue(arrived.await(5, TimeUnit.SECONDS));
+
+		Assert.assertEquals(MESSAGES, metrics.getPacketsSent(PUBLISH));
+		Assert.assertEquals(MESSAGES, metrics.getPacketsReceived(PUBLISH));
+		Assert.assertEquals(MESSAGES, metrics.getPacketsReceived(PUBACK));
+		// a fixed header of 2 bytes, the topic and the message id
+		Assert.assertEquals(MESSAGES * (2 + 2 + 12 + 2 + 100), metrics.getBytesSent(PUBLISH));
+		Assert.assertEquals(MESSAGES * 4, metrics.getBytesReceived(PUBACK));
+		Assert.assertTrue(metrics.getPacketsSent() > metrics.getPacketsSent(PUBLISH));
+
+		LatencyHistogram acks = metrics.getAckLatency(1);
+		Assert.assertEquals(MESSAGES, acks.getCount());
+		Assert.assertTrue(acks.getMax(TimeUnit.NANOSECONDS) > 0);
+		Assert.assertEquals(0, metrics.getAckLatency(2).getCount());
+
+		// every arrival and delivery complete went through the callback, which
+		// records each one only after the application's method has returned,
+		// and which takes a publish out of flight after its token completes
+		long deadline = System.currentTimeMillis() + 5000;
+		while ((metrics.getCallbackCount() < 2 * MESSAGES || metrics.getInFlight() > 0)
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		Assert.assertTrue(metrics.getCallbackCount() >= 2 * MESSAGES);
+		// the arrivals alone slept for 2 ms each, allowing for a coarse clock
+		Assert.assertTrue(metrics.getCallbackTime().getTotal(TimeUnit.MILLISECONDS) >= MESSAGES);
+
+		Assert.assertEquals(0, metrics.getInFlight());
+		Assert.assertEquals(0, metrics.getPendingMessages());
+		Assert.assertEquals(0, metrics.getReconnects());
+		client.disconnect().waitForCompletion(5000);
+		client.connect().waitForCompletion(5000);
+		Assert.assertEquals(1, metrics.getReconnects());
+		client.disconnect().waitForCompletion(5000);
+		client.close();
+	}
+
+	@Test(timeout = 10000)
+	public void testMBean() throws Exception {
+		MqttAsyncClient client = new MqttAsyncClient(broker.getServerURI(), "jmx", new MemoryPersistence());
+		client.getMetrics().registerMBean();
+		client.connect().waitForCompletion(5000);
+		client.publish("metrics/test", new byte[10], 1, false).waitForCompletion(5000);
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName("org.eclipse.paho.client.mqttv3:type=ClientMetrics,clientId=\"jmx\"");
+		Assert.assertEquals("jmx", server.getAttribute(name, "ClientId"));
+		Assert.assertTrue(((Long) server.getAttribute(name, "PacketsSent")).longValue() >= 2);
+		Assert.assertTrue(((Long) server.getAttribute(name, "Qos1AckP99Micros")).longValue() > 0);
+
+		client.disconnect().waitForCompletion(5000);
+		client.close();
+		Assert.assertFalse(server.isRegistered(name));
+	}
+
+	@Test
+	public void testHistogramPrecision() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 10000; i++) {
+			histogram.recordNanos(i * 1000L);
+		}
+		Assert.assertEquals(10000, histogram.getCount());
+		Assert.assertEquals(10000, histogram.getMax(TimeUnit.MICROSECONDS));
+		Assert.assertEquals(5000.5, histogram.getMean(TimeUnit.MICROSECONDS), 0.001);
+		assertNear(5000, histogram.getValueAtPercentile(50, TimeUnit.MICROSECONDS));
+		assertNear(9900, histogram.getValueAtPercentile(99, TimeUnit.MICROSECONDS));
+		Assert.assertEquals(10000, histogram.getValueAtPercentile(100, TimeUnit.MICROSECONDS));
+		Assert.assertEquals(1, histogram.getValueAtPercentile(0, TimeUnit.MICROSECONDS));
+
+		histogram.reset();
+		Assert.assertEquals(0, histogram.getCount());
+		Assert.assertEquals(0, histogram.getValueAtPercentile(50, TimeUnit.MICROSECONDS));
+	}
+
+	private static void assertNear(long expected, long actual) {
+		Assert.assertTrue(actual + " is not near " + expected,
+				actual >= expected && actual <= expected + expected / 32);
+	}
+}
@@ -4,6 +4,7 @@ import java.io.*;
 import java.nio.charset.StandardCharsets;
 
 import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.internal.wire.MqttTopicCache;
 import org.eclipse.paho.client.mqttv3.internal.wire.MqttWireMessage;
 import org.junit.Assert;
 import org.junit.Test;
@@ -163,4 +164,49 @@ public class MqttDataTypesTest {
 		}
 	}
 
+	@Test
+	public void testEncodeMatchesJdkEncoder() throws MqttException {
+		StringBuilder sb = new StringBuilder();
+		for (char c = 0x20; c < 0xd800; c++) {
+			if (c < 0x7f || c > 0x9f) {
+				sb.append(c);
+			}
+		}
+		sb.appendCodePoint(0x1F600).append("tail");
+		String testString = sb.substring(0, 20000);
+		String emoji = sb.substring(sb.length() - 6);
+		for (String s : new String[] { "plain/ascii/topic", testString, emoji }) {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			MqttWireMessage.encodeUTF8(new DataOutputStream(baos), s);
+			byte[] encoded = baos.toByteArray();
+			byte[] expected = s.getBytes(StandardCharsets.UTF_8);
+			Assert.assertEquals(expected.length, ((encoded[0] & 0xff) << 8) | (encoded[1] & 0xff));
+			Assert.assertArrayEquals(expected, java.util.Arrays.copyOfRange(encoded, 2, encoded.length));
+			Assert.assertEquals(s, MqttWireMessage.decodeUTF8(encoded, 2, encoded.length - 2));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDecodeInvalidAsciiControlChar() {
+		byte[] bytes = "abc\u0001def".getBytes(StandardCharsets.UTF_8);
+		MqttWireMessage.decodeUTF8(bytes, 0, bytes.length);
+	}
+
+	@Test
+	public void testTopicCacheReturnsSameString() throws MqttException {
+		MqttTopicCache cache = new MqttTopicCache(4);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(baos);
+		MqttWireMessage.encodeUTF8(dos, "sensors/temperature");
+		MqttWireMessage.encodeUTF8(dos, "sensors/temperature");
+		MqttWireMessage.encodeUTF8(dos, "\u6e29\u5ea6");
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(baos.toByteArray()));
+		String first = MqttWireMessage.decodeUTF8(input, cache);
+		String second = MqttWireMessage.decodeUTF8(input, cache);
+		Assert.assertEquals("sensors/temperature", first);
+		Assert.assertSame(first, second);
+		Assert.assertEquals("\u6e29\u5ea6", MqttWireMessage.decodeUTF8(input, cache));
+		Assert.assertEquals(1, cache.getHitCount());
+		Assert.assertEquals(2, cache.getMissCount());
+	}
 }
@@ -0,0 +1,153 @@
+package org.eclipse.paho.client.mqttv3.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import javax.net.SocketFactory;
+
+import org.eclipse.paho.client.mqttv3.MqttSocketOptions;
+import org.eclipse.paho.client.mqttv3.internal.TCPNetworkModule;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MqttSocketOptionsTest {
+
+	/**
+	 * Exposes the socket of the module for inspection.
+	 */
+	private static class InspectableNetworkModule extends TCPNetworkModule {
+		InspectableNetworkModule(int port) {
+			super(SocketFactory.getDefault(), "127.0.0.1", port, "MqttSocketOptionsTest");
+			setConnectTimeout(5);
+		}
+
+		Socket getSocket() {
+			return socket;
+		}
+	}
+
+	private ServerSocket serverSocket;
+
+	@Before
+	public void setUp() throws Exception {
+		serverSocket = new ServerSocket(0, 10, InetAddress.getByName("127.0.0.1"));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		serverSocket.close();
+	}
+
+	@Test
+	public void testDefaultsLeaveSocketUnchanged() throws Exception {
+		InspectableNetworkModule module = new InspectableNetworkModule(serverSocket.getLocalPort());
+		module.start();
+		Socket plain = new Socket();
+		try {
+			Socket socket = module.getSocket();
+			Assert.assertEquals(MqttSocketOptions.READ_TIMEOUT_DEFAULT, socket.getSoTimeout());
+			Assert.assertEquals(plain.getTcpNoDelay(), socket.getTcpNoDelay());
+			Assert.assertEquals(plain.getKeepAlive(), socket.getKeepAlive());
+		} finally {
+			plain.close();
+			module.stop();
+		}
+	}
+
+	@Test
+	public void testOptionsAppliedToSocket() throws Exception {
+		MqttSocketOptions options = new MqttSocketOptions();
+		options.setTcpNoDelay(true);
+		options.setKeepAlive(true);
+		options.setSendBufferSize(256 * 1024);
+		options.setReceiveBufferSize(256 * 1024);
+		options.setTrafficClass(0x10);
+		options.setReadTimeout(250);
+
+		InspectableNetworkModule module = new InspectableNetworkModule(serverSocket.getLocalPort());
+		module.setSocketOptions(options);
+		module.start();
+		try {
+			Socket socket = module.getSocket();
+			Assert.assertTrue(socket.getTcpNoDelay());
+			Assert.assertTrue(socket.getKeepAlive());
+			Assert.assertEquals(250, socket.getSoTimeout());
+			Assert.assertEquals(0x10, socket.getTrafficClass());
+			// the platform may round buffer sizes, or cap them
+			Socket plain = new Socket();
+			try {
+				Assert.assertTrue(socket.getSendBufferSize() > plain.getSendBufferSize()
+						|| socket.getSendBufferSize() >= 256 * 1024);
+				Assert.assertTrue(socket.getReceiveBufferSize() > plain.getReceiveBufferSize()
+						|| socket.getReceiveBufferSize() >= 256 * 1024);
+			} finally {
+				plain.close();
+			}
+		} finally {
+			module.stop();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testBlockingReadEndsWhenStopped() throws Exception {
+		MqttSocketOptions options = new MqttSocketOptions();
+		options.setReadTimeout(0);
+		final InspectableNetworkModule module = new InspectableNetworkModule(serverSocket.getLocalPort());
+		module.setSocketOptions(options);
+		module.start();
+		Assert.assertEquals(0, module.getSocket().getSoTimeout());
+
+		Thread stopper = new Thread() {
+			public void run() {
+				try {
+					Thread.sleep(1500);
+					module.stop();
+				} catch (Exception e) {
+					// the read is then ended by the test timeout
+				}
+			}
+		};
+		stopper.start();
+		InputStream in = module.getInputStream();
+		long start = System.currentTimeMillis();
+		try {
+			Assert.assertEquals(-1, in.read());
+		} catch (IOException expected) {
+			// the socket was closed under the read
+		}
+		// the read did not wake up on a timeout before the module was stopped
+		Assert.assertTrue(System.currentTimeMillis() - start >= 1400);
+	}
+
+	@Test
+	public void testInvalidValuesRejected() {
+		MqttSocketOptions options = new MqttSocketOptions();
+		options.setSendBufferSize(MqttSocketOptions.SYSTEM_DEFAULT);
+		options.setTrafficClass(MqttSocketOptions.SYSTEM_DEFAULT);
+		try {
+			options.setSendBufferSize(0);
+			Assert.fail("expected IllegalArgumentException");
+		} catch (IllegalArgumentException expected) {
+		}
+		try {
+			options.setReceiveBufferSize(-2);
+			Assert.fail("expected IllegalArgumentException");
+		} catch (IllegalArgumentException expected) {
+		}
+		try {
+			options.setTrafficClass(256);
+			Assert.fail("expected IllegalArgumentException");
+		} catch (IllegalArgumentException expected) {
+		}
+		try {
+			options.setReadTimeout(-1);
+			Assert.fail("expected IllegalArgumentException");
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package org.eclipse.paho.client.mqttv3.test;
+
+import java.io.ByteArrayInputStream;
+
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.MqttStreamingMessage;
+import org.eclipse.paho.client.mqttv3.internal.wire.MqttPublish;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MqttStreamingMessageTest {
+
+	@Test
+	public void testHeaderUsesDeclaredLength() throws MqttException {
+		int length = 300000;
+		MqttStreamingMessage streaming = new MqttStreamingMessage(new ByteArrayInputStream(new byte[0]), length);
+		MqttPublish streamed = new MqttPublish("big/file", streaming);
+
+		MqttMessage message = new MqttMessage(new byte[length]);
+		message.setQos(0);
+		MqttPublish inMemory = new MqttPublish("big/file", message);
+
+		Assert.assertArrayEquals(inMemory.getHeader(), streamed.getHeader());
+		Assert.assertEquals(length, streamed.getPayloadLength());
+		Assert.assertNotNull(streamed.getPayloadChannel());
+		Assert.assertNull(inMemory.getPayloadChannel());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testStreamingMessageIsQos0() {
+		MqttStreamingMessage streaming = new MqttStreamingMessage(new ByteArrayInputStream(new byte[0]), 0);
+		Assert.assertEquals(0, streaming.getQos());
+		streaming.setQos(1);
+	}
+
+	@Test
+	public void testStreamedPayloadIsEmptyInMemory() {
+		MqttStreamingMessage streaming = new MqttStreamingMessage(new ByteArrayInputStream(new byte[10]), 10);
+		Assert.assertEquals(0, streaming.getPayload().length);
+		Assert.assertEquals(10, streaming.getPayloadLength());
+	}
+
+	@Test(expected = MqttException.class)
+	public void testStreamedPayloadIsNotMaterialized() throws MqttException {
+		new MqttPublish("big/file", new MqttStreamingMessage(new ByteArrayInputStream(new byte[0]), 10)).getPayload();
+	}
+}
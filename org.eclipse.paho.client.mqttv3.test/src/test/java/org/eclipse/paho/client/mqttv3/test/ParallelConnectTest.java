@@ -0,0 +1,268 @@
+package org.eclipse.paho.client.mqttv3.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import javax.net.SocketFactory;
+
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.internal.NetworkModule;
+import org.eclipse.paho.client.mqttv3.internal.ParallelNetworkModule;
+import org.eclipse.paho.client.mqttv3.internal.TCPNetworkModule;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelConnectTest {
+
+	private static final int DELAY = 200;
+
+	/**
+	 * Stands in for an unreachable server: starting blocks until the module
+	 * is stopped, or fails at once if a failure is given.
+	 */
+	private static class StubNetworkModule implements NetworkModule {
+		private final String uri;
+		private final MqttException failure;
+		private final CountDownLatch started = new CountDownLatch(1);
+		private final CountDownLatch stopped = new CountDownLatch(1);
+
+		StubNetworkModule(String uri, MqttException failure) {
+			this.uri = uri;
+			this.failure = failure;
+		}
+
+		public void start() throws IOException, MqttException {
+			started.countDown();
+			if (failure != null) {
+				throw failure;
+			}
+			try {
+				stopped.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			throw new IOException("connection abandoned");
+		}
+
+		public InputStream getInputStream() throws IOException {
+			throw new IOException("not connected");
+		}
+
+		public OutputStream getOutputStream() throws IOException {
+			throw new IOException("not connected");
+		}
+
+		public void stop() {
+			stopped.countDown();
+		}
+
+		public String getServerURI() {
+			return uri;
+		}
+	}
+
+	/**
+	 * Stands in for a server that accepts the connection once it is told to.
+	 */
+	private static class AcceptingNetworkModule implements NetworkModule {
+		private final String uri;
+		private final CountDownLatch accept = new CountDownLatch(1);
+		private final CountDownLatch stopped = new CountDownLatch(1);
+
+		AcceptingNetworkModule(String uri) {
+			this.uri = uri;
+		}
+
+		public void start() throws IOException, MqttException {
+			try {
+				accept.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("connection abandoned");
+			}
+		}
+
+		public InputStream getInputStream() throws IOException {
+			throw new IOException("not used");
+		}
+
+		public OutputStream getOutputStream() throws IOException {
+			throw new IOException("not used");
+		}
+
+		public void stop() {
+			stopped.countDown();
+		}
+
+		public String getServerURI() {
+			return uri;
+		}
+	}
+
+	private ServerSocket serverSocket;
+	private MqttConnectOptions options;
+
+	@Before
+	public void setUp() throws Exception {
+		serverSocket = new ServerSocket(0);
+		options = new MqttConnectOptions();
+		options.setParallelConnect(true);
+		options.setParallelConnectDelay(DELAY);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		serverSocket.close();
+	}
+
+	private String localURI() {
+		return "tcp://localhost:" + serverSocket.getLocalPort();
+	}
+
+	private TCPNetworkModule localModule() {
+		TCPNetworkModule module = new TCPNetworkModule(SocketFactory.getDefault(), "localhost",
+				serverSocket.getLocalPort(), "ParallelConnectTest");
+		module.setConnectTimeout(30);
+		return module;
+	}
+
+	@Test(timeout = 10000)
+	public void testUnreachableServerDoesNotDelayConnect() throws Exception {
+		StubNetworkModule unreachable = new StubNetworkModule("tcp://unreachable:1883", null);
+		ParallelNetworkModule module = new ParallelNetworkModule(new String[] { unreachable.getServerURI(), localURI() },
+				new NetworkModule[] { unreachable, localModule() }, options, "ParallelConnectTest");
+
+		long start = System.currentTimeMillis();
+		module.start();
+		long elapsed = System.currentTimeMillis() - start;
+		Assert.assertEquals(localURI(), module.getServerURI());
+		Assert.assertTrue("connected after " + elapsed + "ms", elapsed < 1000);
+		Assert.assertTrue("the second attempt should have been staggered", elapsed >= DELAY - 20);
+		Assert.assertTrue("the losing attempt should be abandoned", unreachable.stopped.await(5, TimeUnit.SECONDS));
+		Assert.assertNotNull(module.getOutputStream());
+		module.stop();
+	}
+
+	@Test(timeout = 10000)
+	public void testFailedAttemptStartsNextAtOnce() throws Exception {
+		StubNetworkModule refused = new StubNetworkModule("tcp://refused:1883",
+				new MqttException(MqttException.REASON_CODE_SERVER_CONNECT_ERROR));
+		StubNetworkModule unused = new StubNetworkModule("tcp://unused:1883", null);
+		ParallelNetworkModule module = new ParallelNetworkModule(
+				new String[] { refused.getServerURI(), localURI(), unused.getServerURI() },
+				new NetworkModule[] { refused, localModule(), unused }, options, "ParallelConnectTest");
+
+		long start = System.currentTimeMillis();
+		module.start();
+		Assert.assertTrue(System.currentTimeMillis() - start < DELAY);
+		Assert.assertEquals(localURI(), module.getServerURI());
+		// the third server is not tried once a connection has been made
+		Assert.assertEquals(1, unused.started.getCount());
+		module.stop();
+	}
+
+	@Test(timeout = 10000)
+	public void testAllAttemptsFail() throws Exception {
+		StubNetworkModule first = new StubNetworkModule("tcp://first:1883",
+				new MqttException(MqttException.REASON_CODE_SERVER_CONNECT_ERROR));
+		StubNetworkModule second = new StubNetworkModule("tcp://second:1883",
+				new MqttException(MqttException.REASON_CODE_CLIENT_TIMEOUT));
+		ParallelNetworkModule module = new ParallelNetworkModule(
+				new String[] { first.getServerURI(), second.getServerURI() },
+				new NetworkModule[] { first, second }, options, "ParallelConnectTest");
+		try {
+			module.start();
+			Assert.fail("expected the connect to fail");
+		} catch (MqttException e) {
+			Assert.assertEquals(MqttException.REASON_CODE_SERVER_CONNECT_ERROR, e.getReasonCode());
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testStopAbandonsAllAttempts() throws Exception {
+		final StubNetworkModule first = new StubNetworkModule("tcp://first:1883", null);
+		final StubNetworkModule second = new StubNetworkModule("tcp://second:1883", null);
+		final ParallelNetworkModule module = new ParallelNetworkModule(
+				new String[] { first.getServerURI(), second.getServerURI() },
+				new NetworkModule[] { first, second }, options, "ParallelConnectTest");
+		Thread stopper = new Thread() {
+			public void run() {
+				try {
+					second.started.await();
+					module.stop();
+				} catch (Exception e) {
+					// the test fails on the timeout
+				}
+			}
+		};
+		stopper.start();
+		try {
+			module.start();
+			Assert.fail("expected the connect to fail");
+		} catch (IOException expected) {
+		}
+		Assert.assertEquals(0, first.stopped.getCount());
+		Assert.assertEquals(0, second.stopped.getCount());
+	}
+
+	@Test(timeout = 10000)
+	public void testStopAfterAttemptWinsAbandonsConnect() throws Exception {
+		final StubNetworkModule first = new StubNetworkModule("tcp://first:1883", null);
+		final AcceptingNetworkModule second = new AcceptingNetworkModule("tcp://second:1883");
+		final StubNetworkModule third = new StubNetworkModule("tcp://third:1883", null);
+		final ParallelNetworkModule module = new ParallelNetworkModule(
+				new String[] { first.getServerURI(), second.getServerURI(), third.getServerURI() },
+				new NetworkModule[] { first, second, third }, options, "ParallelConnectTest");
+		// the connecting thread traces the launch of the third attempt once it
+		// has checked there is no winner yet; the second attempt wins then,
+		// and the module is stopped before the outcome of the race is taken
+		Handler stopper = new Handler() {
+			public void publish(LogRecord record) {
+				if (!record.getMessage().endsWith(third.getServerURI())) {
+					return;
+				}
+				second.accept.countDown();
+				try {
+					while (!second.getServerURI().equals(module.getServerURI())) {
+						Thread.sleep(1);
+					}
+					module.stop();
+				} catch (Exception e) {
+					// the test fails on the outcome
+				}
+			}
+
+			public void flush() {
+			}
+
+			public void close() {
+			}
+		};
+		Logger logger = Logger.getLogger(ParallelNetworkModule.class.getName());
+		Level level = logger.getLevel();
+		logger.setLevel(Level.FINE);
+		logger.addHandler(stopper);
+		try {
+			module.start();
+			Assert.fail("expected the connect to fail");
+		} catch (IOException expected) {
+		} finally {
+			logger.removeHandler(stopper);
+			logger.setLevel(level);
+		}
+		Assert.assertEquals(0, first.stopped.getCount());
+		Assert.assertEquals(0, second.stopped.getCount());
+		Assert.assertEquals(0, third.stopped.getCount());
+	}
+}
@@ -0,0 +1,113 @@
+package org.eclipse.paho.client.mqttv3.test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.codec.DeflatePayloadCodec;
+import org.eclipse.paho.client.mqttv3.codec.Lz4PayloadCodec;
+import org.eclipse.paho.client.mqttv3.codec.MqttPayloadCodec;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PayloadCodecTest {
+
+	private static final int[] SIZES = { 0, 1, 12, 13, 100, 4096, 65536, 300000 };
+
+	/**
+	 * Builds a JSON telemetry style payload of the given length.
+	 */
+	static byte[] telemetry(int length, Random random) {
+		StringBuilder sb = new StringBuilder();
+		while (sb.length() < length) {
+			sb.append("{\"device\":\"sensor-").append(random.nextInt(16)).append("\",\"temperature\":")
+					.append(random.nextInt(400) / 10.0).append(",\"status\":\"ok\"},");
+		}
+		return Arrays.copyOf(sb.toString().getBytes(StandardCharsets.UTF_8), length);
+	}
+
+	private static void roundTrip(MqttPayloadCodec codec, byte[] payload) throws MqttException {
+		byte[] framed = new byte[payload.length + 7];
+		System.arraycopy(payload, 0, framed, 3, payload.length);
+		byte[] encoded = codec.encode(framed, 3, payload.length);
+		byte[] shifted = new byte[encoded.length + 5];
+		System.arraycopy(encoded, 0, shifted, 5, encoded.length);
+		Assert.assertArrayEquals(payload, codec.decode(shifted, 5, encoded.length));
+	}
+
+	private static void testCodec(MqttPayloadCodec codec) throws MqttException {
+		Random random = new Random(1);
+		for (int size : SIZES) {
+			roundTrip(codec, telemetry(size, random));
+			byte[] noise = new byte[size];
+			random.nextBytes(noise);
+			roundTrip(codec, noise);
+			byte[] run = new byte[size];
+			Arrays.fill(run, (byte) 'a');
+			roundTrip(codec, run);
+		}
+		byte[] json = telemetry(65536, random);
+		Assert.assertTrue(codec.encode(json, 0, json.length).length < json.length / 3);
+	}
+
+	@Test
+	public void testDeflateRoundTrip() throws MqttException {
+		testCodec(new DeflatePayloadCodec());
+		testCodec(new DeflatePayloadCodec(1));
+	}
+
+	@Test
+	public void testLz4RoundTrip() throws MqttException {
+		testCodec(new Lz4PayloadCodec());
+	}
+
+	@Test
+	public void testCorruptPayloadIsRejected() {
+		byte[] json = telemetry(4096, new Random(2));
+		MqttPayloadCodec[] codecs = { new DeflatePayloadCodec(), new Lz4PayloadCodec() };
+		for (MqttPayloadCodec codec : codecs) {
+			try {
+				byte[] encoded = codec.encode(json, 0, json.length);
+				codec.decode(encoded, 0, encoded.length / 2);
+				Assert.fail(codec.getName() + " decoded a truncated payload");
+			} catch (MqttException expected) {
+			}
+			try {
+				codec.decode(json, 0, json.length);
+				Assert.fail(codec.getName() + " decoded a payload it did not encode");
+			} catch (MqttException expected) {
+			}
+		}
+	}
+
+	@Test
+	public void testLz4ForgedLengthIsRejectedBeforeDecoding() {
+		byte[] json = telemetry(4096, new Random(3));
+		Lz4PayloadCodec codec = new Lz4PayloadCodec();
+		// a header claiming close to the largest payload, with one block byte
+		byte[] forged = { 0x0f, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0 };
+		byte[] inflated = null;
+		try {
+			inflated = codec.encode(json, 0, json.length);
+		} catch (MqttException ex) {
+			Assert.fail(ex.toString());
+		}
+		// a real block whose header claims more than the block can expand to
+		int claimed = (inflated.length - 4) * 255 + 1;
+		inflated[0] = (byte) (claimed >>> 24);
+		inflated[1] = (byte) (claimed >>> 16);
+		inflated[2] = (byte) (claimed >>> 8);
+		inflated[3] = (byte) claimed;
+		byte[][] payloads = { forged, inflated };
+		for (byte[] payload : payloads) {
+			try {
+				codec.decode(payload, 0, payload.length);
+				Assert.fail("decoded a payload with a forged length");
+			} catch (MqttException expected) {
+				Assert.assertTrue(expected.getCause().getMessage(),
+						expected.getCause().getMessage().startsWith("invalid decoded length"));
+			}
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package org.eclipse.paho.client.mqttv3.test;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.KeyStore;
+import java.util.Properties;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+
+import org.eclipse.paho.client.mqttv3.internal.security.SSLSocketFactoryFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SSLContextCacheTest {
+
+	private static final String PASSWORD = "password";
+
+	private File keyStore;
+	private SSLContext serverContext;
+
+	@Before
+	public void setUp() throws Exception {
+		keyStore = File.createTempFile("serverkeystore", ".jks");
+		try (InputStream in = getClass().getClassLoader().getResourceAsStream("serverkeystore.jks")) {
+			Files.copy(in, keyStore.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		KeyStore ks = KeyStore.getInstance("JKS");
+		try (InputStream in = new FileInputStream(keyStore)) {
+			ks.load(in, PASSWORD.toCharArray());
+		}
+		KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		kmf.init(ks, PASSWORD.toCharArray());
+		serverContext = SSLContext.getInstance("TLSv1.2");
+		serverContext.init(kmf.getKeyManagers(), null, null);
+	}
+
+	@After
+	public void tearDown() {
+		SSLSocketFactoryFactory.clearSSLContextCache();
+		keyStore.delete();
+	}
+
+	private Properties clientProperties() {
+		Properties props = new Properties();
+		props.setProperty(SSLSocketFactoryFactory.SSLPROTOCOL, "TLSv1.2");
+		props.setProperty(SSLSocketFactoryFactory.TRUSTSTORE, keyStore.getPath());
+		props.setProperty(SSLSocketFactoryFactory.TRUSTSTOREPWD, PASSWORD);
+		props.setProperty(SSLSocketFactoryFactory.TRUSTSTORETYPE, "JKS");
+		return props;
+	}
+
+	private SSLSocketFactoryFactory factoryFactory(Properties props) {
+		SSLSocketFactoryFactory factoryFactory = new SSLSocketFactoryFactory();
+		factoryFactory.initialize(props, null);
+		return factoryFactory;
+	}
+
+	@Test
+	public void testContextSharedUntilConfigurationChanges() throws Exception {
+		SSLContext first = factoryFactory(clientProperties()).getSSLContext(null);
+		Assert.assertSame(first, factoryFactory(clientProperties()).getSSLContext(null));
+		Assert.assertEquals(SSLSocketFactoryFactory.DEFAULT_SESSION_CACHE_SIZE,
+				first.getClientSessionContext().getSessionCacheSize());
+
+		Properties props = clientProperties();
+		props.setProperty(SSLSocketFactoryFactory.SESSIONCACHESIZE, "10");
+		SSLContext resized = factoryFactory(props).getSSLContext(null);
+		Assert.assertNotSame(first, resized);
+		Assert.assertEquals(10, resized.getClientSessionContext().getSessionCacheSize());
+
+		props = clientProperties();
+		props.setProperty(SSLSocketFactoryFactory.TRUSTSTOREPWD, "other");
+		try {
+			factoryFactory(props).getSSLContext(null);
+			Assert.fail("expected a bad password to be detected rather than a cached context used");
+		} catch (Exception expected) {
+		}
+
+		// a rewritten trust store is read again
+		Assert.assertTrue(keyStore.setLastModified(keyStore.lastModified() - 60000));
+		Assert.assertNotSame(first, factoryFactory(clientProperties()).getSSLContext(null));
+	}
+
+	/**
+	 * Connects to the server socket with a socket factory of the client
+	 * configuration and sends a message.
+	 * @return the id of the client's TLS session
+	 */
+	private byte[] handshake(SSLSocketFactoryFactory factoryFactory, final SSLServerSocket serverSocket)
+			throws Exception {
+		final byte[] request = "PING".getBytes(StandardCharsets.UTF_8);
+		final byte[] received = new byte[request.length];
+		Thread server = new Thread(new Runnable() {
+			public void run() {
+				try (Socket socket = serverSocket.accept()) {
+					new DataInputStream(socket.getInputStream()).readFully(received);
+				} catch (IOException e) {
+				}
+			}
+		});
+		server.start();
+		try (SSLSocket client = (SSLSocket) factoryFactory.createSocketFactory(null)
+				.createSocket("localhost", serverSocket.getLocalPort())) {
+			client.startHandshake();
+			client.getOutputStream().write(request);
+			client.getOutputStream().flush();
+			server.join(10000);
+			Assert.assertArrayEquals(request, received);
+			return client.getSession().getId();
+		}
+	}
+
+	@Test
+	public void testHandshakeResumesSession() throws Exception {
+		// the client's sessions are kept per server host and port
+		SSLServerSocket serverSocket = (SSLServerSocket) serverContext.getServerSocketFactory().createServerSocket(0,
+				1, InetAddress.getLoopbackAddress());
+		try {
+			byte[] first = handshake(factoryFactory(clientProperties()), serverSocket);
+			byte[] second = handshake(factoryFactory(clientProperties()), serverSocket);
+			Assert.assertTrue(first.length > 0);
+			Assert.assertArrayEquals("the second connection should resume the first session", first, second);
+		} finally {
+			serverSocket.close();
+		}
+	}
+}
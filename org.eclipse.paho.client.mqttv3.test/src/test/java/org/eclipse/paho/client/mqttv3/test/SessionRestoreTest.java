@@ -0,0 +1,235 @@
+package org.eclipse.paho.client.mqttv3.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.MqttPersistable;
+import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+import org.eclipse.paho.client.mqttv3.internal.wire.MqttPubRec;
+import org.eclipse.paho.client.mqttv3.internal.wire.MqttPubRel;
+import org.eclipse.paho.client.mqttv3.internal.wire.MqttPublish;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.eclipse.paho.client.mqttv3.persist.MqttDefaultFilePersistence;
+import org.eclipse.paho.test.broker.TestBroker;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Restores a large persisted session, which is read on several threads, and
+ * checks that the messages in it are resent in the order they were first
+ * sent, across the wrap of the message ids. A persistence that is not marked
+ * as safe to read concurrently is only read by the thread creating the client.
+ */
+public class SessionRestoreTest {
+
+	private static final String TOPIC = "restore/test";
+	private static final String CLIENT_ID = "restore";
+	private static final int MESSAGES = 1000;
+	private static final int FIRST_ID = 65000;
+	private static final int CONFIRMED = 545;
+	private static final int ORPHANED_ID = 30000;
+
+	private TestBroker broker;
+	private File dir;
+
+	@Before
+	public void setUp() throws Exception {
+		broker = new TestBroker();
+		dir = new File(System.getProperty("java.io.tmpdir"), "paho-restore-" + System.nanoTime());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		broker.close();
+	}
+
+	/**
+	 * A persistence that keeps the threads that read its records, and is not
+	 * marked as safe to read from several threads at once.
+	 */
+	private static class RecordingPersistence implements MqttClientPersistence {
+		final MemoryPersistence store = new MemoryPersistence();
+		final Set<Thread> readers = Collections.synchronizedSet(new HashSet<Thread>());
+		private boolean opened;
+
+		public void open(String clientId, String serverURI) throws MqttPersistenceException {
+			// opening a memory store empties it, so it is only opened once
+			if (!opened) {
+				store.open(clientId, serverURI);
+				opened = true;
+			}
+		}
+
+		public void close() throws MqttPersistenceException {
+			store.close();
+		}
+
+		public void put(String key, MqttPersistable persistable) throws MqttPersistenceException {
+			store.put(key, persistable);
+		}
+
+		public MqttPersistable get(String key) throws MqttPersistenceException {
+			readers.add(Thread.currentThread());
+			return store.get(key);
+		}
+
+		public void remove(String key) throws MqttPersistenceException {
+			store.remove(key);
+		}
+
+		public Enumeration keys() throws MqttPersistenceException {
+			return store.keys();
+		}
+
+		public void clear() throws MqttPersistenceException {
+			store.clear();
+		}
+
+		public boolean containsKey(String key) throws MqttPersistenceException {
+			return store.containsKey(key);
+		}
+	}
+
+	/**
+	 * @return the message id of the n-th message sent, counting from a
+	 *         little below the highest id so that the ids wrap
+	 */
+	private static int messageId(int n) {
+		return (FIRST_ID - 1 + n) % 65535 + 1;
+	}
+
+	/**
+	 * Persists a session as a client would leave it: QoS 1 messages that were
+	 * sent but not acknowledged, a QoS 2 message whose PUBREL was sent, and
+	 * a PUBREL left over from a flow that completed.
+	 */
+	private void persistSession() throws Exception {
+		MqttDefaultFilePersistence persistence = new MqttDefaultFilePersistence(dir.getAbsolutePath());
+		persistence.open(CLIENT_ID, broker.getServerURI());
+		for (int i = 0; i < MESSAGES; i++) {
+			MqttMessage message = new MqttMessage(Integer.toString(i).getBytes("UTF-8"));
+			message.setQos(i == CONFIRMED ? 2 : 1);
+			MqttPublish publish = new MqttPublish(TOPIC, message);
+			publish.setMessageId(messageId(i));
+			persistence.put("s-" + publish.getMessageId(), publish);
+			if (i == CONFIRMED) {
+				persistence.put("sc-" + publish.getMessageId(), new MqttPubRel(new MqttPubRec(publish)));
+			}
+		}
+		MqttPublish completed = new MqttPublish(TOPIC, new MqttMessage(new byte[0]));
+		completed.setMessageId(ORPHANED_ID);
+		persistence.put("sc-" + ORPHANED_ID, new MqttPubRel(new MqttPubRec(completed)));
+		persistence.close();
+	}
+
+	/**
+	 * @return the keys persisted for the client, read while it does not have
+	 *         its persistence open
+	 */
+	private List<String> persistedKeys() throws Exception {
+		MqttDefaultFilePersistence persistence = new MqttDefaultFilePersistence(dir.getAbsolutePath());
+		persistence.open(CLIENT_ID, broker.getServerURI());
+		try {
+			return Collections.list(persistence.keys());
+		} finally {
+			persistence.close();
+		}
+	}
+
+	@Test(timeout = 30000)
+	public void testRestoredSessionIsResentInOrder() throws Exception {
+		persistSession();
+		final List<String> arrived = new ArrayList<String>();
+		final CountDownLatch latch = new CountDownLatch(MESSAGES - 1);
+		MqttAsyncClient subscriber = new MqttAsyncClient(broker.getServerURI(), "subscriber",
+				new MemoryPersistence());
+		subscriber.setCallback(new MqttCallback() {
+			public void connectionLost(Throwable cause) {
+			}
+
+			public void messageArrived(String topic, MqttMessage message) throws Exception {
+				synchronized (arrived) {
+					arrived.add(new String(message.getPayload(), "UTF-8"));
+				}
+				latch.countDown();
+			}
+
+			public void deliveryComplete(IMqttDeliveryToken token) {
+			}
+		});
+		subscriber.connect().waitForCompletion(5000);
+		subscriber.subscribe(TOPIC, 0).waitForCompletion(5000);
+
+		MqttAsyncClient client = new MqttAsyncClient(broker.getServerURI(), CLIENT_ID,
+				new MqttDefaultFilePersistence(dir.getAbsolutePath()));
+		try {
+			// every message still to be acknowledged has its token back
+			IMqttDeliveryToken[] tokens = client.getPendingDeliveryTokens();
+			Assert.assertEquals(MESSAGES, tokens.length);
+			List<String> keys = persistedKeys();
+			Assert.assertFalse(keys.contains("sc-" + ORPHANED_ID));
+			Assert.assertTrue(keys.contains("sc-" + messageId(CONFIRMED)));
+
+			MqttConnectOptions options = new MqttConnectOptions();
+			options.setCleanSession(false);
+			options.setMaxInflight(100);
+			client.connect(options).waitForCompletion(5000);
+			for (IMqttDeliveryToken token : tokens) {
+				token.waitForCompletion(10000);
+			}
+			Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+			// the QoS 2 message only needed its PUBREL resending
+			int expected = 0;
+			for (String payload : arrived) {
+				if (expected == CONFIRMED) {
+					expected++;
+				}
+				Assert.assertEquals(Integer.toString(expected++), payload);
+			}
+			client.disconnect().waitForCompletion(5000);
+		} finally {
+			client.close();
+			subscriber.disconnect().waitForCompletion(5000);
+			subscriber.close();
+		}
+		Assert.assertTrue(persistedKeys().isEmpty());
+	}
+
+	@Test(timeout = 30000)
+	public void testUnmarkedPersistenceIsReadByCreatingThread() throws Exception {
+		RecordingPersistence persistence = new RecordingPersistence();
+		persistence.open(CLIENT_ID, broker.getServerURI());
+		for (int i = 0; i < MESSAGES; i++) {
+			MqttMessage message = new MqttMessage(Integer.toString(i).getBytes("UTF-8"));
+			message.setQos(1);
+			MqttPublish publish = new MqttPublish(TOPIC, message);
+			publish.setMessageId(messageId(i));
+			persistence.put("s-" + publish.getMessageId(), publish);
+		}
+		persistence.readers.clear();
+
+		MqttAsyncClient client = new MqttAsyncClient(broker.getServerURI(), CLIENT_ID, persistence);
+		try {
+			Assert.assertEquals(MESSAGES, client.getPendingDeliveryTokens().length);
+			Assert.assertEquals(Collections.singleton(Thread.currentThread()), persistence.readers);
+		} finally {
+			client.close();
+		}
+	}
+}
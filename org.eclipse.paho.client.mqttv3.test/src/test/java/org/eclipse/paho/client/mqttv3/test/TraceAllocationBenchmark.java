@@ -0,0 +1,78 @@
+package org.eclipse.paho.client.mqttv3.test;
+
+import java.lang.management.ManagementFactory;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.eclipse.paho.test.broker.TestBroker;
+
+/**
+ * Measures the bytes the client allocates per published message with trace
+ * switched off, which should not include anything for the trace points on
+ * the way. Run it with the test classpath, on a JVM that reports
+ * thread allocation, e.g.
+ * <code>java org.eclipse.paho.client.mqttv3.test.TraceAllocationBenchmark [messages] [qos]</code>
+ */
+public class TraceAllocationBenchmark {
+
+	private static final int BATCH = 500;
+
+	public static void main(String[] args) throws Exception {
+		int messages = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		int qos = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		TestBroker broker = new TestBroker();
+		MqttAsyncClient client = new MqttAsyncClient(broker.getServerURI(), "allocation", new MemoryPersistence());
+		MqttConnectOptions options = new MqttConnectOptions();
+		options.setMaxInflight(BATCH * 2);
+		client.connect(options).waitForCompletion(5000);
+		MqttMessage message = new MqttMessage(new byte[16]);
+		message.setQos(qos);
+
+		// warm up, so that the measured run is compiled
+		publish(client, message, messages / 2);
+		long allocated = totalAllocated(threads);
+		long start = System.nanoTime();
+		publish(client, message, messages);
+		long elapsed = System.nanoTime() - start;
+		allocated = totalAllocated(threads) - allocated;
+		System.out.println(String.format("%d QoS %d publishes in %d ms, %d bytes allocated per message", messages,
+				qos, elapsed / 1000000, allocated / messages));
+
+		client.disconnect().waitForCompletion(5000);
+		client.close();
+		broker.close();
+	}
+
+	private static void publish(MqttAsyncClient client, MqttMessage message, int count) throws Exception {
+		IMqttDeliveryToken last = null;
+		for (int i = 0; i < count; i++) {
+			last = client.publish("allocation/test", message);
+			if (i % BATCH == BATCH - 1) {
+				last.waitForCompletion(10000);
+			}
+		}
+		last.waitForCompletion(10000);
+	}
+
+	/**
+	 * @return the bytes allocated so far by the threads of the client and
+	 *         the application, leaving out the broker's
+	 */
+	private static long totalAllocated(com.sun.management.ThreadMXBean threads) {
+		long total = 0;
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (!thread.getName().startsWith("TestBroker")) {
+				long allocated = threads.getThreadAllocatedBytes(thread.getId());
+				if (allocated > 0) {
+					total += allocated;
+				}
+			}
+		}
+		return total;
+	}
+}
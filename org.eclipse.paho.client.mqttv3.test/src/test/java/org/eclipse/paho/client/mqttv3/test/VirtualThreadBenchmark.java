@@ -0,0 +1,157 @@
+package org.eclipse.paho.client.mqttv3.test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.ScheduledExecutorPingSender;
+import org.eclipse.paho.client.mqttv3.internal.VirtualThreads;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.eclipse.paho.test.broker.TestBroker;
+
+/**
+ * Connects many clients whose threads are virtual threads, then has each of
+ * them publish from a virtual thread that blocks until the delivery is
+ * complete, reporting the platform threads and the carrier threads of the
+ * virtual threads in use. The carriers should stay at about the number of
+ * processors however many clients there are. Needs Java 21 or later; run it
+ * with the test classpath, e.g.
+ * <code>java -Djdk.tracePinnedThreads=short org.eclipse.paho.client.mqttv3.test.VirtualThreadBenchmark [clients] [server URI]</code>
+ * <p>
+ * Without a server URI an in-process {@link TestBroker} is used, which needs
+ * a second socket and two threads per client, see
+ * {@link MqttClientHostBenchmark}; the platform threads reported leave out
+ * the broker's.
+ * </p>
+ */
+public class VirtualThreadBenchmark {
+
+	private static final String CARRIER_PREFIX = "ForkJoinPool-";
+
+	public static void main(String[] args) throws Exception {
+		if (!VirtualThreads.isSupported()) {
+			System.out.println("virtual threads need Java 21 or later");
+			return;
+		}
+		int clientCount = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		TestBroker broker = null;
+		String serverURI;
+		if (args.length > 1) {
+			serverURI = args[1];
+		} else {
+			broker = new TestBroker();
+			serverURI = broker.getServerURI();
+		}
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		int baseline = clientThreadCount();
+
+		// one scheduler for the keep alive pings of every client
+		ScheduledExecutorService pings = Executors.newScheduledThreadPool(1);
+		final List<MqttAsyncClient> clients = new ArrayList<MqttAsyncClient>(clientCount);
+		for (int i = 0; i < clientCount; i++) {
+			clients.add(new MqttAsyncClient(serverURI, "virtual-" + i, new MemoryPersistence(),
+					new ScheduledExecutorPingSender(pings), null));
+		}
+		final MqttConnectOptions options = new MqttConnectOptions();
+		options.setVirtualThreads(true);
+		options.setConnectionTimeout(60);
+		options.setKeepAliveInterval(30);
+
+		long start = System.nanoTime();
+		int failed = runEach(clients, new Action() {
+			public void run(MqttAsyncClient client) throws Exception {
+				client.connect(options).waitForCompletion(60000);
+			}
+		});
+		System.out.println(String.format("connected %d clients in %d ms (%d failed)", clientCount - failed,
+				(System.nanoTime() - start) / 1000000, failed));
+		report("connected", baseline);
+
+		start = System.nanoTime();
+		failed = runEach(clients, new Action() {
+			public void run(MqttAsyncClient client) throws Exception {
+				client.publish("bench/" + client.getClientId(), new byte[64], 1, false).waitForCompletion(60000);
+			}
+		});
+		System.out.println(String.format("one blocking QoS 1 publish per client in %d ms (%d failed)",
+				(System.nanoTime() - start) / 1000000, failed));
+		report("published", baseline);
+
+		start = System.nanoTime();
+		failed = runEach(clients, new Action() {
+			public void run(MqttAsyncClient client) throws Exception {
+				client.disconnect(0).waitForCompletion(60000);
+				client.close();
+			}
+		});
+		System.out.println(String.format("disconnected in %d ms (%d failed)", (System.nanoTime() - start) / 1000000,
+				failed));
+		System.out.println(String.format("peak platform threads %d%s", threads.getPeakThreadCount(),
+				broker == null ? "" : ", the broker's included"));
+		pings.shutdown();
+		if (broker != null) {
+			broker.close();
+		}
+	}
+
+	private interface Action {
+		void run(MqttAsyncClient client) throws Exception;
+	}
+
+	/**
+	 * Runs the action for every client at once, each on a virtual thread of
+	 * its own.
+	 * @return the number that failed
+	 */
+	private static int runEach(List<MqttAsyncClient> clients, final Action action) throws InterruptedException {
+		final CountDownLatch done = new CountDownLatch(clients.size());
+		final AtomicInteger failed = new AtomicInteger(0);
+		for (final MqttAsyncClient client : clients) {
+			VirtualThreads.factory().newThread(new Runnable() {
+				public void run() {
+					try {
+						action.run(client);
+					} catch (Exception e) {
+						failed.incrementAndGet();
+					} finally {
+						done.countDown();
+					}
+				}
+			}).start();
+		}
+		done.await(5, TimeUnit.MINUTES);
+		return failed.get();
+	}
+
+	/**
+	 * @return the live platform threads, other than an in-process broker's
+	 */
+	private static int clientThreadCount() {
+		int count = 0;
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (!thread.getName().startsWith("TestBroker")) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static void report(String phase, int baseline) {
+		int carriers = 0;
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().startsWith(CARRIER_PREFIX)) {
+				carriers++;
+			}
+		}
+		System.out.println(String.format("%s: %d platform threads (%d before), %d carriers, %d processors", phase,
+				clientThreadCount(), baseline, carriers, Runtime.getRuntime().availableProcessors()));
+	}
+}
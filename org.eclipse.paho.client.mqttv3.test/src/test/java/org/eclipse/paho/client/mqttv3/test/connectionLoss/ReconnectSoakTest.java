@@ -0,0 +1,268 @@
+package org.eclipse.paho.client.mqttv3.test.connectionLoss;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.paho.client.mqttv3.DisconnectedBufferOptions;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttBufferPool;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.eclipse.paho.client.mqttv3.test.utilities.ChaosSchedule;
+import org.eclipse.paho.client.mqttv3.test.utilities.ConnectionManipulationProxyServer;
+import org.eclipse.paho.client.mqttv3.test.utilities.ResourceMonitor;
+import org.eclipse.paho.test.broker.TestBroker;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs clients through many reconnects while their connections are impaired,
+ * and checks that nothing they hold grows. Each client publishes bursts of
+ * messages at every QoS to a topic it is subscribed to, through its own
+ * {@link ConnectionManipulationProxyServer} whose latency, bandwidth and
+ * stalls a {@link ChaosSchedule} varies and which it cuts at random. At the
+ * end of every burst the client's tables must be empty again, and over the
+ * run the heap and the number of threads must not grow.
+ * <p>
+ * By default the test runs for a few seconds, as a check on each build. Set
+ * the system property SOAK_DURATION to the number of seconds to run for, to
+ * soak the client for hours.
+ * </p>
+ */
+public class ReconnectSoakTest {
+
+	static final Class<?> cclass = ReconnectSoakTest.class;
+	private static final String className = cclass.getName();
+	private static final Logger log = Logger.getLogger(className);
+
+	private static final int CLIENTS = 2;
+	private static final int BURST = 50;
+	private static final long SAMPLE_PERIOD = 1000;
+	private static final long TIMEOUT = 10000;
+	private static final long MAX_HEAP_GROWTH = 16 * 1024 * 1024;
+	private static final int MAX_THREAD_GROWTH = 4 * CLIENTS;
+
+	private TestBroker broker;
+	private final List<ConnectionManipulationProxyServer> proxies = new ArrayList<ConnectionManipulationProxyServer>();
+	private final List<ChaosSchedule> schedules = new ArrayList<ChaosSchedule>();
+
+	@Before
+	public void setUp() throws Exception {
+		broker = new TestBroker();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		for (ChaosSchedule schedule : schedules) {
+			schedule.close();
+		}
+		for (ConnectionManipulationProxyServer proxy : proxies) {
+			proxy.stopProxy();
+		}
+		broker.close();
+	}
+
+	@Test
+	public void testReconnectCycles() throws Exception {
+		long duration = TimeUnit.SECONDS.toMillis(Long.getLong("SOAK_DURATION", 10).longValue());
+		URI serverURI = new URI(broker.getServerURI());
+		MqttBufferPool pool = new MqttBufferPool();
+		MqttAsyncClient[] clients = new MqttAsyncClient[CLIENTS];
+		Cycler[] cyclers = new Cycler[CLIENTS];
+		Thread[] threads = new Thread[CLIENTS];
+		for (int i = 0; i < CLIENTS; i++) {
+			ConnectionManipulationProxyServer proxy = new ConnectionManipulationProxyServer(serverURI.getHost(),
+					serverURI.getPort(), 0);
+			proxies.add(proxy);
+			proxy.startProxy();
+			while (!proxy.isPortSet()) {
+				Thread.sleep(10);
+			}
+			ChaosSchedule schedule = new ChaosSchedule(proxy, i);
+			schedules.add(schedule);
+			schedule.varyLatency(500, 20);
+			schedule.varyBandwidth(1000, 16 * 1024, 1024 * 1024);
+			schedule.stall(2000, 300);
+			schedule.disconnect(3000);
+
+			clients[i] = new MqttAsyncClient("tcp://localhost:" + proxy.getLocalPort(), "soak" + i,
+					new MemoryPersistence());
+			DisconnectedBufferOptions bufferOptions = new DisconnectedBufferOptions();
+			bufferOptions.setBufferEnabled(true);
+			bufferOptions.setBufferSize(BURST);
+			bufferOptions.setDeleteOldestMessages(true);
+			clients[i].setBufferOpts(bufferOptions);
+			cyclers[i] = new Cycler(clients[i], proxy, pool);
+			threads[i] = new Thread(cyclers[i], "ReconnectSoakTest-" + i);
+		}
+
+		ResourceMonitor monitor = new ResourceMonitor(clients, pool);
+		monitor.sample();
+		long end = System.currentTimeMillis() + duration;
+		for (int i = 0; i < CLIENTS; i++) {
+			cyclers[i].end = end;
+			threads[i].start();
+		}
+		while (System.currentTimeMillis() < end) {
+			Thread.sleep(SAMPLE_PERIOD);
+			log.info(monitor.sample().toString());
+		}
+		for (int i = 0; i < CLIENTS; i++) {
+			threads[i].join(TIMEOUT * 3);
+			Assert.assertFalse("client " + i + " has not finished", threads[i].isAlive());
+		}
+		monitor.sample();
+
+		int cycles = 0;
+		for (int i = 0; i < CLIENTS; i++) {
+			if (cyclers[i].failure != null) {
+				throw new AssertionError("client " + i + " failed", cyclers[i].failure);
+			}
+			cycles += cyclers[i].cycles;
+			log.info("Client " + i + " completed " + cyclers[i].cycles + " cycles over "
+					+ proxies.get(i).getConnectionCount() + " connections, and lost the connection "
+					+ cyclers[i].lost.get() + " times");
+			clients[i].close();
+		}
+		Assert.assertTrue(cycles > 0);
+		log.info("Heap grew by " + monitor.getHeapGrowth() / 1024 + "K, threads by " + monitor.getThreadGrowth());
+		Assert.assertTrue("heap grew by " + monitor.getHeapGrowth(), monitor.getHeapGrowth() < MAX_HEAP_GROWTH);
+		Assert.assertTrue("threads grew by " + monitor.getThreadGrowth(),
+				monitor.getThreadGrowth() <= MAX_THREAD_GROWTH);
+	}
+
+	/**
+	 * Runs one client through cycles of connecting, publishing a burst and
+	 * being disconnected, until the end of the test.
+	 */
+	private static class Cycler implements Runnable, MqttCallback {
+		private final MqttAsyncClient client;
+		private final ConnectionManipulationProxyServer proxy;
+		private final MqttConnectOptions options = new MqttConnectOptions();
+		private final String topic;
+		private final AtomicInteger lost = new AtomicInteger();
+		volatile long end;
+		volatile int cycles;
+		volatile Throwable failure;
+
+		Cycler(MqttAsyncClient client, ConnectionManipulationProxyServer proxy, MqttBufferPool pool) {
+			this.client = client;
+			this.proxy = proxy;
+			this.topic = "ReconnectSoakTest/" + client.getClientId();
+			options.setCleanSession(true);
+			options.setKeepAliveInterval(5);
+			options.setConnectionTimeout(5);
+			options.setMaxInflight(BURST);
+			options.setBufferPool(pool);
+			client.setCallback(this);
+		}
+
+		public void run() {
+			try {
+				while (System.currentTimeMillis() < end) {
+					cycle();
+				}
+			} catch (Throwable e) {
+				log.log(Level.SEVERE, "caught exception:", e);
+				failure = e;
+			}
+		}
+
+		private void cycle() throws Exception {
+			if (!connect()) {
+				return;
+			}
+			List<IMqttDeliveryToken> tokens = new ArrayList<IMqttDeliveryToken>();
+			try {
+				client.subscribe(topic, 2).waitForCompletion(TIMEOUT);
+				for (int i = 0; i < BURST; i++) {
+					tokens.add(client.publish(topic, new byte[100 * i], i % 3, false));
+				}
+			} catch (MqttException e) {
+				// the connection was lost, or too many messages are in flight
+			}
+			for (IMqttDeliveryToken token : tokens) {
+				try {
+					token.waitForCompletion(TIMEOUT);
+				} catch (MqttException e) {
+					// the connection was lost before the message was delivered
+				}
+			}
+			if (!client.isConnected()) {
+				// the tables are checked at the end of the next cycle, once
+				// the buffered messages have been sent
+				return;
+			}
+			checkTables();
+			cycles++;
+			// End the cycle as a network failure would, or every other
+			// time cleanly
+			if (cycles % 2 == 0) {
+				try {
+					client.disconnect().waitForCompletion(TIMEOUT);
+				} catch (MqttException e) {
+					// the connection was cut while disconnecting
+				}
+			} else {
+				proxy.dropConnection();
+				long timeout = System.currentTimeMillis() + TIMEOUT;
+				while (client.isConnected() && System.currentTimeMillis() < timeout) {
+					Thread.sleep(10);
+				}
+			}
+		}
+
+		private boolean connect() throws Exception {
+			if (client.isConnected()) {
+				return true;
+			}
+			try {
+				client.connect(options).waitForCompletion(TIMEOUT);
+				return true;
+			} catch (MqttException e) {
+				// the connection was cut while it was being made
+				Thread.sleep(10);
+				return false;
+			}
+		}
+
+		/**
+		 * Waits for the tables to empty, as flows that do not have tokens,
+		 * such as arriving messages and pings, may still be completing.
+		 */
+		private void checkTables() throws Exception {
+			Properties leaks = ResourceMonitor.getLeaks(client);
+			long timeout = System.currentTimeMillis() + TIMEOUT;
+			while (!leaks.isEmpty() && client.isConnected() && System.currentTimeMillis() < timeout) {
+				Thread.sleep(10);
+				leaks = ResourceMonitor.getLeaks(client);
+			}
+			if (!leaks.isEmpty() && client.isConnected()) {
+				throw new AssertionError("client " + client.getClientId() + " holds " + leaks + " after "
+						+ cycles + " cycles");
+			}
+		}
+
+		public void connectionLost(Throwable cause) {
+			lost.incrementAndGet();
+		}
+
+		public void messageArrived(String topic, MqttMessage message) throws Exception {
+		}
+
+		public void deliveryComplete(IMqttDeliveryToken token) {
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package org.eclipse.paho.client.mqttv3.test.utilities;
+
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Impairs the connection through a {@link ConnectionManipulationProxyServer}
+ * on schedules, for soak tests. Each kind of impairment is applied at its own
+ * period, with its size drawn from a seeded random generator so that a run
+ * can be repeated. The schedules all run on one thread.
+ */
+public class ChaosSchedule {
+	private static final String className = ChaosSchedule.class.getName();
+	private static final Logger log = Logger.getLogger(className);
+
+	private final ConnectionManipulationProxyServer proxy;
+	private final Random random;
+	private final ScheduledExecutorService executor;
+	private final AtomicInteger stalls = new AtomicInteger();
+	private final AtomicInteger disconnects = new AtomicInteger();
+
+	public ChaosSchedule(ConnectionManipulationProxyServer proxy, long seed) {
+		this.proxy = proxy;
+		this.random = new Random(seed);
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "ChaosSchedule");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Every period, sets the latency of the proxy to between none and the
+	 * given maximum.
+	 * @param period the time between changes, in milliseconds
+	 * @param maxLatency the largest latency, in milliseconds
+	 */
+	public void varyLatency(long period, final long maxLatency) {
+		schedule(period, new Runnable() {
+			public void run() {
+				proxy.setLatency((long) (random.nextDouble() * maxLatency), TimeUnit.MILLISECONDS);
+			}
+		});
+	}
+
+	/**
+	 * Every period, either lifts the bandwidth cap of the proxy or sets it
+	 * to between the given minimum and maximum, with equal chances.
+	 * @param period the time between changes, in milliseconds
+	 * @param minBandwidth the smallest cap, in bytes per second
+	 * @param maxBandwidth the largest cap, in bytes per second
+	 */
+	public void varyBandwidth(long period, final int minBandwidth, final int maxBandwidth) {
+		schedule(period, new Runnable() {
+			public void run() {
+				if (random.nextBoolean()) {
+					proxy.setBandwidth(0);
+				} else {
+					proxy.setBandwidth(minBandwidth + random.nextInt(maxBandwidth - minBandwidth + 1));
+				}
+			}
+		});
+	}
+
+	/**
+	 * Every period, stalls the proxy for up to the given time.
+	 * @param period the time between stalls, in milliseconds
+	 * @param maxStall the longest stall, in milliseconds
+	 */
+	public void stall(long period, final long maxStall) {
+		schedule(period, new Runnable() {
+			public void run() {
+				proxy.stall((long) (random.nextDouble() * maxStall), TimeUnit.MILLISECONDS);
+				stalls.incrementAndGet();
+			}
+		});
+	}
+
+	/**
+	 * Cuts the connection through the proxy, on average once a period. The
+	 * times between cuts are drawn at random so that they fall at every point
+	 * of the client's work.
+	 * @param period the average time between cuts, in milliseconds
+	 */
+	public void disconnect(final long period) {
+		executor.schedule(new Runnable() {
+			public void run() {
+				proxy.dropConnection();
+				disconnects.incrementAndGet();
+				executor.schedule(this, nextDelay(period), TimeUnit.MILLISECONDS);
+			}
+		}, nextDelay(period), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return the number of stalls so far
+	 */
+	public int getStallCount() {
+		return stalls.get();
+	}
+
+	/**
+	 * @return the number of connections cut so far
+	 */
+	public int getDisconnectCount() {
+		return disconnects.get();
+	}
+
+	/**
+	 * Stops the schedules and lifts the impairments, apart from a stall in
+	 * progress.
+	 */
+	public void close() {
+		executor.shutdownNow();
+		try {
+			executor.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		proxy.setLatency(0, TimeUnit.MILLISECONDS);
+		proxy.setBandwidth(0);
+		log.info("Chaos schedule applied " + stalls.get() + " stalls and " + disconnects.get() + " disconnects");
+	}
+
+	private void schedule(long period, Runnable impairment) {
+		executor.scheduleAtFixedRate(impairment, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return a delay between none and twice the period, so averaging the period
+	 */
+	private long nextDelay(long period) {
+		return 1 + (long) (random.nextDouble() * 2 * period);
+	}
+}
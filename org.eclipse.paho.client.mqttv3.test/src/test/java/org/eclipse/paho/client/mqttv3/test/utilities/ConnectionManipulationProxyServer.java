@@ -5,8 +5,18 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
+/**
+ * A proxy between a client and a server that tests can use to impair the
+ * connection: cut it, add latency, cap its bandwidth or stall it. Only one
+ * connection is proxied at a time.
+ */
 public class ConnectionManipulationProxyServer implements Runnable {
 	static final Class<?> cclass = ConnectionManipulationProxyServer.class;
 	private static final String className = cclass.getName();
@@ -21,6 +31,14 @@ public class ConnectionManipulationProxyServer implements Runnable {
 	private boolean running = true;
 	Socket client = null, server = null;
 	ServerSocket serverSocket = null;
+	// Chunks read but not yet written, in each direction
+	private static final int QUEUED_CHUNKS = 256;
+	private static final int CHUNK_SIZE = 4096;
+	private volatile long latencyNanos = 0;
+	private volatile int bandwidth = 0;
+	private volatile long stalledUntil = 0;
+	private volatile int connections = 0;
+	private final AtomicLong bytesForwarded = new AtomicLong();
 	
 
 	public ConnectionManipulationProxyServer(String host, int remotePort, int localPort) {
@@ -75,6 +93,71 @@ public class ConnectionManipulationProxyServer implements Runnable {
 		killOpenSockets();
 	}
 	
+	/**
+	 * Cuts the current connection, as a network failure would, but goes on
+	 * accepting new ones.
+	 */
+	public void dropConnection(){
+		log.info("[CMPS Proxy] - Dropping Connection");
+		closeConnection();
+	}
+
+	/**
+	 * Delays everything forwarded in each direction, so the round trip time
+	 * grows by twice the latency.
+	 * @param latency the delay, 0 for none
+	 * @param unit the unit of the latency
+	 */
+	public void setLatency(long latency, TimeUnit unit){
+		latencyNanos = unit.toNanos(latency);
+	}
+
+	/**
+	 * Limits the rate data is forwarded at in each direction.
+	 * @param bytesPerSecond the rate, 0 for no limit
+	 */
+	public void setBandwidth(int bytesPerSecond){
+		bandwidth = bytesPerSecond;
+	}
+
+	/**
+	 * Stops forwarding for a while, without closing the connection, as a
+	 * congested or partitioned network would. Data sent meanwhile is held
+	 * and forwarded afterwards.
+	 * @param duration how long to stall for
+	 * @param unit the unit of the duration
+	 */
+	public void stall(long duration, TimeUnit unit){
+		stalledUntil = System.nanoTime() + unit.toNanos(duration);
+	}
+
+	/**
+	 * @return the number of connections that have been proxied to the server
+	 */
+	public int getConnectionCount(){
+		return connections;
+	}
+
+	/**
+	 * @return the number of bytes forwarded in both directions
+	 */
+	public long getBytesForwarded(){
+		return bytesForwarded.get();
+	}
+
+	private void closeConnection(){
+		try {
+			if(client != null){
+				client.close();
+			}
+			if(server != null){
+				server.close();
+			}
+		} catch (IOException ex){
+			// Do nothing as we want to close;
+		}
+	}
+
 	private void killOpenSockets(){
 		log.info("[CMPS Proxy] - killOpenSockets Called.");
 		try {
@@ -97,8 +180,6 @@ public class ConnectionManipulationProxyServer implements Runnable {
 		log.info("[CMPS Proxy] - Proxy Thread running.");
 		try {
 			
-			final byte[] request = new byte[1024];
-			byte[] reply = new byte[4096];
 			boolean canIrun = true;
 			while(running){
 				synchronized (enableLock) {
@@ -145,48 +226,19 @@ public class ConnectionManipulationProxyServer implements Runnable {
 						// Get Server Streams
 						final InputStream streamFromServer = server.getInputStream();
 						final OutputStream streamToServer = server.getOutputStream();
-						
-						Thread thread = new Thread() {
-							public void run() {
-								int bytesRead;
-								try {
-									while((bytesRead = streamFromClient.read(request)) != -1) {
-										streamToServer.write(request, 0, bytesRead);
-										streamToServer.flush();
-									}
-								} catch (IOException ex){
-									log.warning("[CMPS Proxy] - IOException in client to server stream: " + ex.getMessage());
-									try {
-										client.close();
-										server.close();
-									} catch (IOException e) {
-
-									}
-									
-								}
-							}
-						};
-					
-					thread.start();
-					
-					// Read the Servers responses and pass them back to the client
-					int bytesRead;
-					try {
-							while ((bytesRead = streamFromServer.read(reply))!= -1){
-								streamToClient.write(reply, 0, bytesRead);
-								streamToClient.flush();
-							}
-						
-					 } catch (IOException ex){
-						 log.warning("[CMPS Proxy] - IOException in server to client stream: " + ex.getMessage());
-						 log.info("[CMPS Proxy] - ");
-						 client.close();
-						 server.close();
-					}
-					
-					streamToClient.close();
-				
-					
+						connections++;
+
+						// Pass the client's requests on to the server, and the
+						// server's responses back to the client
+						Link toServer = new Link("client to server", streamFromClient, streamToServer);
+						Link toClient = new Link("server to client", streamFromServer, streamToClient);
+						toServer.start();
+						toClient.start();
+						toClient.join();
+						toServer.join();
+					} catch (InterruptedException ex) {
+						log.warning("[CMPS Proxy] - Interrupted whilst forwarding.");
+						break;
 					}  catch (IOException ex) {
 						log.warning("[CMPS Proxy] - General IO Exception caught in main Thread: " + ex.getMessage());
 						break;
@@ -229,4 +281,119 @@ public class ConnectionManipulationProxyServer implements Runnable {
 	public boolean isPortSet() {
 		return portSet;
 	}
+
+	private static final Chunk END = new Chunk(0, new byte[0]);
+
+	/**
+	 * Data read from one end of a connection, and when to write it to the other.
+	 */
+	private static class Chunk {
+		final long due;
+		final byte[] data;
+
+		Chunk(long due, byte[] data) {
+			this.due = due;
+			this.data = data;
+		}
+	}
+
+	/**
+	 * Forwards one direction of a connection. A reader thread queues what it
+	 * reads, and a writer thread writes it once the latency has passed, no
+	 * faster than the bandwidth allows and not while stalled. When either end
+	 * closes, the whole connection is closed.
+	 */
+	private class Link {
+		private final String name;
+		private final InputStream in;
+		private final OutputStream out;
+		private final BlockingQueue<Chunk> queue = new ArrayBlockingQueue<Chunk>(QUEUED_CHUNKS);
+		private final Thread reader;
+		private final Thread writer;
+
+		Link(String name, InputStream in, OutputStream out) {
+			this.name = name;
+			this.in = in;
+			this.out = out;
+			reader = new Thread("CMPS Proxy " + name + " reader") {
+				public void run() {
+					read();
+				}
+			};
+			writer = new Thread("CMPS Proxy " + name + " writer") {
+				public void run() {
+					write();
+				}
+			};
+			reader.setDaemon(true);
+			writer.setDaemon(true);
+		}
+
+		void start() {
+			reader.start();
+			writer.start();
+		}
+
+		void join() throws InterruptedException {
+			reader.join();
+			writer.join();
+		}
+
+		private void read() {
+			byte[] buffer = new byte[CHUNK_SIZE];
+			try {
+				int bytesRead;
+				while ((bytesRead = in.read(buffer)) != -1) {
+					queue.put(new Chunk(System.nanoTime() + latencyNanos, Arrays.copyOf(buffer, bytesRead)));
+				}
+			} catch (IOException ex) {
+				log.warning("[CMPS Proxy] - IOException in " + name + " stream: " + ex.getMessage());
+			} catch (InterruptedException ex) {
+				// The writer has finished
+				return;
+			}
+			try {
+				queue.put(END);
+			} catch (InterruptedException ex) {
+				// The writer has finished
+			}
+		}
+
+		private void write() {
+			try {
+				while (true) {
+					Chunk chunk = queue.take();
+					if (chunk == END) {
+						break;
+					}
+					byte[] data = chunk.data;
+					sleepUntil(chunk.due);
+					long stalled;
+					while ((stalled = stalledUntil) - System.nanoTime() > 0) {
+						sleepUntil(stalled);
+					}
+					out.write(data);
+					out.flush();
+					bytesForwarded.addAndGet(data.length);
+					int limit = bandwidth;
+					if (limit > 0) {
+						Thread.sleep(data.length * 1000L / limit);
+					}
+				}
+			} catch (IOException ex) {
+				log.warning("[CMPS Proxy] - IOException in " + name + " stream: " + ex.getMessage());
+			} catch (InterruptedException ex) {
+				// Closing down
+			}
+			closeConnection();
+			reader.interrupt();
+		}
+
+		private void sleepUntil(long due) throws InterruptedException {
+			long wait = due - System.nanoTime();
+			if (wait > 0) {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			}
+		}
+	}
 }
@@ -0,0 +1,140 @@
+package org.eclipse.paho.client.mqttv3.test.utilities;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Properties;
+
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttBufferPool;
+
+/**
+ * Samples the resources held by the JVM and by a set of clients, for soak
+ * tests that check nothing grows over thousands of reconnects: the heap in
+ * use after a garbage collection, the live threads, the messages the clients
+ * have in flight or buffered, and the buffers held by a pool.
+ */
+public class ResourceMonitor {
+
+	/**
+	 * The resources in use at one time.
+	 */
+	public static class Sample {
+		public final long time;
+		public final long heapUsed;
+		public final int threads;
+		public final int inFlight;
+		public final int buffered;
+		public final int pooledBuffers;
+
+		Sample(long time, long heapUsed, int threads, int inFlight, int buffered, int pooledBuffers) {
+			this.time = time;
+			this.heapUsed = heapUsed;
+			this.threads = threads;
+			this.inFlight = inFlight;
+			this.buffered = buffered;
+			this.pooledBuffers = pooledBuffers;
+		}
+
+		public String toString() {
+			return "heap=" + (heapUsed / 1024) + "K threads=" + threads + " inFlight=" + inFlight + " buffered="
+					+ buffered + " pooled=" + pooledBuffers;
+		}
+	}
+
+	private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+	private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	private final MqttAsyncClient[] clients;
+	private final MqttBufferPool pool;
+	private final List<Sample> samples = new ArrayList<Sample>();
+
+	/**
+	 * @param clients the clients to sample
+	 * @param pool the pool the clients share, or null
+	 */
+	public ResourceMonitor(MqttAsyncClient[] clients, MqttBufferPool pool) {
+		this.clients = clients.clone();
+		this.pool = pool;
+	}
+
+	/**
+	 * Takes a sample, after a garbage collection so that the heap in use is
+	 * what is still reachable.
+	 * @return the sample, which is also kept
+	 */
+	public synchronized Sample sample() {
+		System.gc();
+		int inFlight = 0;
+		int buffered = 0;
+		for (int i = 0; i < clients.length; i++) {
+			inFlight += clients[i].getInFlightMessageCount();
+			Integer count = (Integer) clients[i].getDebug().getTableSizes().get("buffered");
+			if (count != null) {
+				buffered += count.intValue();
+			}
+		}
+		Sample sample = new Sample(System.currentTimeMillis(), memory.getHeapMemoryUsage().getUsed(),
+				threads.getThreadCount(), inFlight, buffered, pool == null ? 0 : pool.getPooledCount());
+		samples.add(sample);
+		return sample;
+	}
+
+	public synchronized List<Sample> getSamples() {
+		return new ArrayList<Sample>(samples);
+	}
+
+	/**
+	 * The growth of the heap, taken as how far the lowest heap in use over
+	 * the second half of the samples is above the lowest over the first half.
+	 * Garbage that survived one collection is seldom the lowest of many
+	 * samples, so a leak raises the floor where noise does not.
+	 * @return the growth in bytes, 0 with fewer than two samples
+	 */
+	public synchronized long getHeapGrowth() {
+		if (samples.size() < 2) {
+			return 0;
+		}
+		int half = samples.size() / 2;
+		return minHeap(half, samples.size()) - minHeap(0, half);
+	}
+
+	/**
+	 * @return the live threads at the last sample less those at the first
+	 */
+	public synchronized int getThreadGrowth() {
+		if (samples.isEmpty()) {
+			return 0;
+		}
+		return samples.get(samples.size() - 1).threads - samples.get(0).threads;
+	}
+
+	/**
+	 * Finds the client tables that are not empty. Once a client has finished
+	 * its work they all should be; any that is not has leaked.
+	 * @param client the client to check
+	 * @return the tables with entries and their sizes, empty if there are none
+	 */
+	public static Properties getLeaks(MqttAsyncClient client) {
+		Properties sizes = client.getDebug().getTableSizes();
+		Properties leaks = new Properties();
+		Enumeration<?> names = sizes.keys();
+		while (names.hasMoreElements()) {
+			Object name = names.nextElement();
+			if (((Integer) sizes.get(name)).intValue() != 0) {
+				leaks.put(name, sizes.get(name));
+			}
+		}
+		return leaks;
+	}
+
+	private long minHeap(int from, int to) {
+		long min = Long.MAX_VALUE;
+		for (int i = from; i < to; i++) {
+			min = Math.min(min, samples.get(i).heapUsed);
+		}
+		return min;
+	}
+}
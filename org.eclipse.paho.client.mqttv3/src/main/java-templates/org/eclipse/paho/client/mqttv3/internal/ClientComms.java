@@ -19,10 +19,12 @@
  */
 package org.eclipse.paho.client.mqttv3.internal;
 
+import java.nio.channels.SocketChannel;
 import java.util.Enumeration;
 import java.util.Properties;
 import java.util.Vector;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 import org.eclipse.paho.client.mqttv3.BufferedMessage;
@@ -30,6 +32,7 @@ import org.eclipse.paho.client.mqttv3.IMqttActionListener;
 import org.eclipse.paho.client.mqttv3.IMqttAsyncClient;
 import org.eclipse.paho.client.mqttv3.IMqttMessageListener;
 import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttBuffer;
 import org.eclipse.paho.client.mqttv3.MqttCallback;
 import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
 import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
@@ -39,8 +42,11 @@ import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
 import org.eclipse.paho.client.mqttv3.MqttPingSender;
+import org.eclipse.paho.client.mqttv3.MqttStreamingCallback;
+import org.eclipse.paho.client.mqttv3.MqttStreamingMessage;
 import org.eclipse.paho.client.mqttv3.MqttToken;
 import org.eclipse.paho.client.mqttv3.MqttTopic;
+import org.eclipse.paho.client.mqttv3.codec.MqttPayloadCodec;
 import org.eclipse.paho.client.mqttv3.internal.wire.MqttConnack;
 import org.eclipse.paho.client.mqttv3.internal.wire.MqttConnect;
 import org.eclipse.paho.client.mqttv3.internal.wire.MqttDisconnect;
@@ -48,6 +54,7 @@ import org.eclipse.paho.client.mqttv3.internal.wire.MqttPublish;
 import org.eclipse.paho.client.mqttv3.internal.wire.MqttWireMessage;
 import org.eclipse.paho.client.mqttv3.logging.Logger;
 import org.eclipse.paho.client.mqttv3.logging.LoggerFactory;
+import org.eclipse.paho.client.mqttv3.metrics.MqttClientMetrics;
 
 /**
  * Handles client communications with the server.  Sends and receives MQTT V3
@@ -76,6 +83,7 @@ public class ClientComms {
 	private MqttClientPersistence	persistence;
 	private MqttPingSender			pingSender;
 	private CommsTokenStore 		tokenStore;
+	private MqttPayloadCodec		payloadCodec;
 	private boolean 				stoppingComms = false;
 
 	private byte	conState = DISCONNECTED;
@@ -85,6 +93,9 @@ public class ClientComms {
 	private DisconnectedMessageBuffer disconnectedMessageBuffer;
 
 	private ExecutorService executorService;
+	private ClientHostPool host;
+	private ThreadFactory threadFactory;
+	private final MqttClientMetrics metrics;
 
 	/**
 	 * Creates a new ClientComms object, using the specified module to handle
@@ -105,6 +116,7 @@ public class ClientComms {
 		this.pingSender.init(this);
 		this.executorService = executorService;
 
+		this.metrics = new MqttClientMetrics(getClient().getClientId(), this);
 		this.tokenStore = new CommsTokenStore(getClient().getClientId());
 		this.callback 	= new CommsCallback(this);
 		this.clientState = new ClientState(persistence, tokenStore, this.callback, this, pingSender, highResolutionTimer);
@@ -113,6 +125,56 @@ public class ClientComms {
 		log.setResourceName(getClient().getClientId());
 	}
 
+	/**
+	 * Runs the sender, the callback and, where the connection allows it, the
+	 * receiver as tasks on the shared threads of a client host, instead of
+	 * on threads of their own. Takes effect from the next connect.
+	 * @param host the threads of the client host, or null for threads of
+	 *            the client's own
+	 */
+	public void setHost(ClientHostPool host) {
+		this.host = host;
+	}
+
+	/**
+	 * Creates a thread for the client's work, from the thread factory of the
+	 * connect options if there is one.
+	 * @param task the work of the thread
+	 * @return the thread, not yet started
+	 */
+	Thread newThread(Runnable task) {
+		ThreadFactory factory = threadFactory;
+		return (factory == null) ? new Thread(task) : factory.newThread(task);
+	}
+
+	/**
+	 * Runs work in the background, on the client's executor service if it
+	 * was created with one, otherwise on a thread of its own.
+	 * @param task the work
+	 */
+	void execute(Runnable task) {
+		if (executorService == null) {
+			newThread(task).start();
+		} else {
+			executorService.execute(task);
+		}
+	}
+
+	private ThreadFactory createThreadFactory(MqttConnectOptions options) {
+		final String methodName = "createThreadFactory";
+		if (options.getThreadFactory() != null) {
+			return options.getThreadFactory();
+		}
+		if (options.isVirtualThreads()) {
+			if (VirtualThreads.isSupported()) {
+				return VirtualThreads.factory();
+			}
+			//@TRACE 259=virtual threads are not available, using platform threads
+			log.fine(CLASS_NAME, methodName, "259");
+		}
+		return null;
+	}
+
 	CommsReceiver getReceiver() {
 		return receiver;
 	}
@@ -145,7 +207,9 @@ public class ClientComms {
 	void internalSend(MqttWireMessage message, MqttToken token) throws MqttException {
 		final String methodName = "internalSend";
 		//@TRACE 200=internalSend key={0} message={1} token={2}
-		log.fine(CLASS_NAME, methodName, "200", new Object[]{message.getKey(), message, token});
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "200", new Object[]{message.getKey(), message, token});
+		}
 
 		if (token.getClient() == null ) {
 			// Associate the client with the token - also marks it as in use.
@@ -153,7 +217,9 @@ public class ClientComms {
 		} else {
 			// Token is already in use - cannot reuse
 			//@TRACE 213=fail: token in use: key={0} message={1} token={2}
-			log.fine(CLASS_NAME, methodName, "213", new Object[]{message.getKey(), message, token});
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "213", new Object[]{message.getKey(), message, token});
+			}
 
 			throw new MqttException(MqttException.REASON_CODE_TOKEN_INUSE);
 		}
@@ -184,7 +250,9 @@ public class ClientComms {
 				(isDisconnecting() && message instanceof MqttDisconnect)) {
 			if(disconnectedMessageBuffer != null && disconnectedMessageBuffer.getMessageCount() != 0){
 				//@TRACE 507=Client Connected, Offline Buffer available, but not empty. Adding message to buffer. message={0}
-				log.fine(CLASS_NAME, methodName, "507", new Object[] {message.getKey()});
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME, methodName, "507", new Object[] {message.getKey()});
+				}
 				if(disconnectedMessageBuffer.isPersistBuffer()){
 					if (message instanceof MqttPublish) {
 						this.clientState.persistBufferedMessage(message);
@@ -196,7 +264,9 @@ public class ClientComms {
 			}
 		} else if(disconnectedMessageBuffer != null) {
 			//@TRACE 508=Offline Buffer available. Adding message to buffer. message={0}
-			log.fine(CLASS_NAME, methodName, "508", new Object[] {message.getKey()});
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "508", new Object[] {message.getKey()});
+			}
 			if(disconnectedMessageBuffer.isPersistBuffer()){
 				this.clientState.persistBufferedMessage(message);
 			}
@@ -208,6 +278,58 @@ public class ClientComms {
 		}
 	}
 
+	/**
+	 * Sends a batch of publish messages, waiting only for them to be queued.
+	 * <p>
+	 * When connected with nothing held in the disconnected buffer the batch is
+	 * queued in one step, and either all or none of the messages are queued.
+	 * Otherwise each message takes the same path as {@link #sendNoWait}; if
+	 * one of them fails after others were buffered, it and the rest of the
+	 * batch are completed with the exception instead of it being thrown.</p>
+	 * @param messages the messages to send
+	 * @param tokens the tokens tracking each message, in the same order
+	 * @throws MqttException if an error occurs sending the messages
+	 */
+	public void sendBatchNoWait(MqttPublish[] messages, MqttToken[] tokens) throws MqttException {
+		if (!isConnected() || (disconnectedMessageBuffer != null && disconnectedMessageBuffer.getMessageCount() != 0)) {
+			for (int i = 0; i < messages.length; i++) {
+				try {
+					sendNoWait(messages[i], tokens[i]);
+				} catch (MqttException e) {
+					if (i == 0) {
+						throw e;
+					}
+					for (int j = i; j < tokens.length; j++) {
+						tokens[j].internalTok.markComplete(null, e);
+						tokens[j].internalTok.notifyComplete();
+						tokens[j].internalTok.releasePayload();
+						if (tokens[j].getActionCallback() != null) {
+							tokens[j].getActionCallback().onFailure(tokens[j], e);
+						}
+					}
+					return;
+				}
+			}
+			return;
+		}
+		for (int i = 0; i < tokens.length; i++) {
+			if (tokens[i].getClient() != null) {
+				throw new MqttException(MqttException.REASON_CODE_TOKEN_INUSE);
+			}
+		}
+		for (int i = 0; i < tokens.length; i++) {
+			tokens[i].internalTok.setClient(getClient());
+		}
+		try {
+			this.clientState.sendBatch(messages, tokens);
+		} catch (MqttException e) {
+			for (int i = 0; i < tokens.length; i++) {
+				tokens[i].internalTok.setClient(null);
+			}
+			throw e;
+		}
+	}
+
 	/**
 	 * Removes the message corresponding to the token from the outbound queue and persistence.
 	 * @param token The {@link IMqttDeliveryToken} to remove
@@ -252,6 +374,7 @@ public class ClientComms {
 				clientState.close();
 				clientState = null;
 				callback = null;
+				metrics.unregisterMBean();
 				persistence = null;
 				sender = null;
 				pingSender = null;
@@ -281,6 +404,7 @@ public class ClientComms {
 				conState = CONNECTING;
 
 				conOptions = options;
+				threadFactory = createThreadFactory(options);
 
                 MqttConnect connect = new MqttConnect(client.getClientId(),
                         conOptions.getMqttVersion(),
@@ -294,6 +418,8 @@ public class ClientComms {
                 this.clientState.setKeepAliveSecs(conOptions.getKeepAliveInterval());
                 this.clientState.setCleanSession(conOptions.isCleanSession());
                 this.clientState.setMaxInflight(conOptions.getMaxInflight());
+                this.clientState.setBufferPool(conOptions.getBufferPool());
+                this.clientState.setAsyncPersistence(conOptions.isAsyncPersistence());
 
 				tokenStore.open();
 				ConnectBG conbg = new ConnectBG(this, token, connect, executorService);
@@ -301,7 +427,9 @@ public class ClientComms {
 			}
 			else {
 				// @TRACE 207=connect failed: not disconnected {0}
-				log.fine(CLASS_NAME,methodName,"207", new Object[] {Byte.valueOf(conState)});
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME,methodName,"207", new Object[] {Byte.valueOf(conState)});
+				}
 				if (isClosed() || closePending) {
 					throw new MqttException(MqttException.REASON_CODE_CLIENT_CLOSED);
 				} else if (isConnecting()) {
@@ -325,15 +453,34 @@ public class ClientComms {
 				log.fine(CLASS_NAME,methodName,"215");
 
 				conState = CONNECTED;
+				metrics.connected();
 				return;
 			}
 		}
 
 		// @TRACE 204=connect failed: rc={0}
-		log.fine(CLASS_NAME,methodName,"204", new Object[]{Integer.valueOf(rc)});
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME,methodName,"204", new Object[]{Integer.valueOf(rc)});
+		}
 		throw mex;
 	}
 
+	/**
+	 * Stops the network module, send and receive now not possible.
+	 */
+	private void stopNetworkModule() {
+		try {
+			if (networkModules != null) {
+				NetworkModule networkModule = networkModules[networkModuleIndex];
+				if (networkModule != null) {
+					networkModule.stop();
+				}
+			}
+		} catch (Exception ioe) {
+			// Ignore as we are shutting down
+		}
+	}
+
 	/**
 	 * Shuts down the connection to the server.
 	 * This may have been invoked as a result of a user calling disconnect or
@@ -373,19 +520,19 @@ public class ClientComms {
 		// when actions complete
 		if (callback!= null) {callback.stop(); }
 
+		// Without a read timeout the receiver only notices that it is
+		// stopping once the network module is closed
+		boolean blockingRead = (conOptions != null && conOptions.getSocketOptions().getReadTimeout() == 0);
+		if (blockingRead) {
+			stopNetworkModule();
+		}
+
 		// Stop the thread that handles inbound work from the network
 		if (receiver != null) {receiver.stop();}
-		
+
 		// Stop the network module, send and receive now not possible
-		try {
-			if (networkModules != null) {
-				NetworkModule networkModule = networkModules[networkModuleIndex];
-				if (networkModule != null) {
-					networkModule.stop();
-				}
-			}
-		} catch (Exception ioe) {
-			// Ignore as we are shutting down
+		if (!blockingRead) {
+			stopNetworkModule();
 		}
 
 		// Stop any new tokens being saved by app and throwing an exception if they do
@@ -610,6 +757,45 @@ public class ClientComms {
 	public void setManualAcks(boolean manualAcks) {
 		this.callback.setManualAcks(manualAcks);
 	}
+
+	public void setStreamingCallback(MqttStreamingCallback streamingCallback, int streamingThreshold) {
+		this.clientState.setStreamingCallback(streamingCallback, streamingThreshold);
+	}
+
+	public void setPayloadCodec(MqttPayloadCodec payloadCodec) {
+		this.payloadCodec = payloadCodec;
+	}
+
+	public MqttPayloadCodec getPayloadCodec() {
+		return payloadCodec;
+	}
+
+	/**
+	 * Returns the message to publish in place of the given one, with its
+	 * payload encoded by the payload codec. The application's message is left
+	 * unchanged. Streamed payloads are never encoded.
+	 * @param message the message the application is publishing
+	 * @return the message to send
+	 * @throws MqttException if the codec fails to encode the payload
+	 */
+	public MqttMessage encodePayload(MqttMessage message) throws MqttException {
+		MqttPayloadCodec codec = payloadCodec;
+		if (codec == null || message instanceof MqttStreamingMessage) {
+			return message;
+		}
+		byte[] encoded;
+		MqttBuffer buffer = message.getPayloadBuffer();
+		if (buffer != null && buffer.hasArray()) {
+			encoded = codec.encode(buffer.array(), buffer.arrayOffset(), buffer.length());
+		} else {
+			byte[] payload = message.getPayload();
+			encoded = codec.encode(payload, 0, payload.length);
+		}
+		MqttMessage result = new MqttMessage(encoded);
+		result.setQos(message.getQos());
+		result.setRetained(message.isRetained());
+		return result;
+	}
 	
 	public void messageArrivedComplete(int messageId, int qos) throws MqttException {
 		this.callback.messageArrivedComplete(messageId, qos);
@@ -662,6 +848,22 @@ public class ClientComms {
 		return clientState;
 	}
 
+	/**
+	 * @return the metrics of the client
+	 */
+	public MqttClientMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return the number of arrived messages and completed actions waiting
+	 *         for the callback, 0 once the client is closed
+	 */
+	public int getCallbackQueueDepth() {
+		CommsCallback callback = this.callback;
+		return callback == null ? 0 : callback.getQueueDepth();
+	}
+
 	public MqttConnectOptions getConOptions() {
 		return conOptions;
 	}
@@ -694,7 +896,7 @@ public class ClientComms {
 
 		void start() {
 			if (executorService == null) {
-				new Thread(this).start();
+				newThread(this).start();
 			} else {
 				executorService.execute(this);
 			}
@@ -723,12 +925,31 @@ public class ClientComms {
 				// start the background processing threads before sending the connect
 				// packet.
 				NetworkModule networkModule = networkModules[networkModuleIndex];
+				// A hosted client reads a plain TCP connection when a shared
+				// selector says there is data. A streamed publish is read
+				// all at once, so it needs a receiver that can wait.
+				boolean selectable = host != null && networkModule.getClass() == TCPNetworkModule.class
+						&& clientState.getStreamingCallback() == null;
+				if (networkModule instanceof TCPNetworkModule) {
+					((TCPNetworkModule) networkModule).setSelectable(selectable);
+				}
 				networkModule.start();
 				receiver = new CommsReceiver(clientComms, clientState, tokenStore, networkModule.getInputStream());
-				receiver.start("MQTT Rec: "+getClient().getClientId(), executorService);
+				SocketChannel channel = selectable ? ((TCPNetworkModule) networkModule).getChannel() : null;
+				if (channel != null) {
+					receiver.start(host, channel, callback);
+				} else {
+					// a hosted client's receiver that must wait gets its own thread
+					receiver.start("MQTT Rec: "+getClient().getClientId(), (host == null) ? executorService : null);
+				}
 				sender = new CommsSender(clientComms, clientState, tokenStore, networkModule.getOutputStream());
-				sender.start("MQTT Snd: "+getClient().getClientId(), executorService);
-				callback.start("MQTT Call: "+getClient().getClientId(), executorService);
+				if (host != null) {
+					sender.start(host);
+					callback.start(host);
+				} else {
+					sender.start("MQTT Snd: "+getClient().getClientId(), executorService);
+					callback.start("MQTT Call: "+getClient().getClientId(), executorService);
+				}
 				internalSend(conPacket, conToken);
 			} catch (MqttException ex) {
 				//@TRACE 212=connect failed: unexpected exception
@@ -763,7 +984,7 @@ public class ClientComms {
 		void start() {
 			threadName = "MQTT Disc: "+getClient().getClientId();
 			if (executorService == null) {
-				new Thread(this).start();
+				newThread(this).start();
 			} else {
 				executorService.execute(this);
 			}
@@ -851,8 +1072,18 @@ public class ClientComms {
 
 	public void setDisconnectedMessageBuffer(DisconnectedMessageBuffer disconnectedMessageBuffer) {
 		this.disconnectedMessageBuffer = disconnectedMessageBuffer;
+		if (disconnectedMessageBuffer != null) {
+			disconnectedMessageBuffer.setMetrics(metrics);
+		}
 	}
 	
+	/**
+	 * @return whether messages published while disconnected are buffered
+	 */
+	public boolean isBufferingMessages() {
+		return disconnectedMessageBuffer != null;
+	}
+
 	public int getBufferedMessageCount(){
 		return this.disconnectedMessageBuffer.getMessageCount();
 	}
@@ -880,7 +1111,7 @@ public class ClientComms {
 			disconnectedMessageBuffer.setPublishCallback(new ReconnectDisconnectedBufferCallback(methodName));
                         disconnectedMessageBuffer.setMessageDiscardedCallBack(new MessageDiscardedCallback());
 			if (executorService == null) {
-				new Thread(disconnectedMessageBuffer).start();
+				newThread(disconnectedMessageBuffer).start();
 			} else {
 				executorService.execute(disconnectedMessageBuffer);
 			}
@@ -916,7 +1147,9 @@ public class ClientComms {
 					
 				}
 				//@TRACE 510=Publishing Buffered message message={0}
-				log.fine(CLASS_NAME, methodName, "510", new Object[] {bufferedMessage.getMessage().getKey()});
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME, methodName, "510", new Object[] {bufferedMessage.getMessage().getKey()});
+				}
 				internalSend(bufferedMessage.getMessage(), bufferedMessage.getToken());
 				
 				// Delete from persistence if in there
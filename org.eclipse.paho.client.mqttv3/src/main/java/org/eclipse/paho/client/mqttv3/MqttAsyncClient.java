@@ -22,6 +22,7 @@
 package org.eclipse.paho.client.mqttv3;
 
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Properties;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -29,6 +30,8 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 
 import javax.net.SocketFactory;
+import org.eclipse.paho.client.mqttv3.codec.MqttPayloadCodec;
+import org.eclipse.paho.client.mqttv3.internal.BatchCompletionListener;
 import org.eclipse.paho.client.mqttv3.internal.ClientComms;
 import org.eclipse.paho.client.mqttv3.internal.ConnectActionListener;
 import org.eclipse.paho.client.mqttv3.internal.DisconnectedMessageBuffer;
@@ -37,12 +40,15 @@ import org.eclipse.paho.client.mqttv3.internal.HighResolutionTimer;
 import org.eclipse.paho.client.mqttv3.internal.SystemHighResolutionTimer;
 import org.eclipse.paho.client.mqttv3.internal.NetworkModule;
 import org.eclipse.paho.client.mqttv3.internal.NetworkModuleService;
+import org.eclipse.paho.client.mqttv3.internal.ParallelNetworkModule;
 import org.eclipse.paho.client.mqttv3.internal.wire.MqttDisconnect;
 import org.eclipse.paho.client.mqttv3.internal.wire.MqttPublish;
 import org.eclipse.paho.client.mqttv3.internal.wire.MqttSubscribe;
 import org.eclipse.paho.client.mqttv3.internal.wire.MqttUnsubscribe;
+import org.eclipse.paho.client.mqttv3.logging.FlightRecorder;
 import org.eclipse.paho.client.mqttv3.logging.Logger;
 import org.eclipse.paho.client.mqttv3.logging.LoggerFactory;
+import org.eclipse.paho.client.mqttv3.metrics.MqttClientMetrics;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 import org.eclipse.paho.client.mqttv3.persist.MqttDefaultFilePersistence;
 import org.eclipse.paho.client.mqttv3.util.Debug;
@@ -588,7 +594,9 @@ public class MqttAsyncClient implements IMqttAsyncClient {
 		this.executorService = executorService;
 
 		// @TRACE 101=<init> ClientID={0} ServerURI={1} PersistenceType={2}
-		log.fine(CLASS_NAME, methodName, "101", new Object[] { clientId, serverURI, persistence });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "101", new Object[] { clientId, serverURI, persistence });
+		}
 
 		this.persistence.open(clientId, serverURI);
 		this.comms = new ClientComms(this, this.persistence, pingSender, this.executorService, highResolutionTimer);
@@ -624,7 +632,9 @@ public class MqttAsyncClient implements IMqttAsyncClient {
 			throws MqttException, MqttSecurityException {
 		final String methodName = "createNetworkModules";
 		// @TRACE 116=URI={0}
-		log.fine(CLASS_NAME, methodName, "116", new Object[] { address });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "116", new Object[] { address });
+		}
 
 		NetworkModule[] networkModules = null;
 		String[] serverURIs = options.getServerURIs();
@@ -641,6 +651,10 @@ public class MqttAsyncClient implements IMqttAsyncClient {
 		for (int i = 0; i < array.length; i++) {
 			networkModules[i] = createNetworkModule(array[i], options);
 		}
+		if (options.isParallelConnect()) {
+			// a single module racing all the servers
+			networkModules = new NetworkModule[] { new ParallelNetworkModule(array, networkModules, options, clientId) };
+		}
 
 		log.fine(CLASS_NAME, methodName, "108");
 		return networkModules;
@@ -657,7 +671,9 @@ public class MqttAsyncClient implements IMqttAsyncClient {
 	private NetworkModule createNetworkModule(String address, MqttConnectOptions options) throws MqttException, MqttSecurityException {
 		final String methodName = "createNetworkModule";
 		// @TRACE 115=URI={0}
-		log.fine(CLASS_NAME,methodName, "115", new Object[] {address});
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME,methodName, "115", new Object[] {address});
+		}
 
 
 		NetworkModule netModule = NetworkModuleService.createInstance(address, options, clientId);
@@ -740,11 +756,13 @@ public class MqttAsyncClient implements IMqttAsyncClient {
 
 		// @TRACE 103=cleanSession={0} connectionTimeout={1} TimekeepAlive={2}
 		// userName={3} password={4} will={5} userContext={6} callback={7}
-		log.fine(CLASS_NAME, methodName, "103",
-				new Object[] { Boolean.valueOf(options.isCleanSession()), Integer.valueOf(options.getConnectionTimeout()),
-						Integer.valueOf(options.getKeepAliveInterval()), options.getUserName(),
-						((null == options.getPassword()) ? "[null]" : "[notnull]"),
-						((null == options.getWillMessage()) ? "[null]" : "[notnull]"), userContext, callback });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "103",
+					new Object[] { Boolean.valueOf(options.isCleanSession()), Integer.valueOf(options.getConnectionTimeout()),
+							Integer.valueOf(options.getKeepAliveInterval()), options.getUserName(),
+							((null == options.getPassword()) ? "[null]" : "[notnull]"),
+							((null == options.getWillMessage()) ? "[null]" : "[notnull]"), userContext, callback });
+		}
 		comms.setNetworkModules(createNetworkModules(serverURI, options));
 		comms.setReconnectCallback(new MqttReconnectCallback(automaticReconnect));
 
@@ -807,7 +825,9 @@ public class MqttAsyncClient implements IMqttAsyncClient {
 			throws MqttException {
 		final String methodName = "disconnect";
 		// @TRACE 104=> quiesceTimeout={0} userContext={1} callback={2}
-		log.fine(CLASS_NAME, methodName, "104", new Object[] { Long.valueOf(quiesceTimeout), userContext, callback });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "104", new Object[] { Long.valueOf(quiesceTimeout), userContext, callback });
+		}
 
 		MqttToken token = new MqttToken(getClientId());
 		token.setActionCallback(callback);
@@ -1072,7 +1092,9 @@ public class MqttAsyncClient implements IMqttAsyncClient {
 				subs.append("topic=").append(topicFilters[i]).append(" qos=").append(qos[i]);			
 			}
 			// @TRACE 106=Subscribe topicFilter={0} userContext={1} callback={2}
-			log.fine(CLASS_NAME, methodName, "106", new Object[] { subs.toString(), userContext, callback });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "106", new Object[] { subs.toString(), userContext, callback });
+			}
 		}
 
 		MqttToken token = new MqttToken(getClientId());
@@ -1215,7 +1237,9 @@ public class MqttAsyncClient implements IMqttAsyncClient {
 			}
 
 			// @TRACE 107=Unsubscribe topic={0} userContext={1} callback={2}
-			log.fine(CLASS_NAME, methodName, "107", new Object[] { subs, userContext, callback });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "107", new Object[] { subs, userContext, callback });
+			}
 		}
 
 		for (String topicFilter : topicFilters) {
@@ -1273,6 +1297,40 @@ public class MqttAsyncClient implements IMqttAsyncClient {
 		comms.setManualAcks(manualAcks);
 	}
 
+	/**
+	 * Sets a callback that receives the payload of large inbound messages as a
+	 * stream while it is read from the network, instead of the whole message
+	 * being read into memory first. QoS 0 and QoS 1 messages whose packet is
+	 * at least <code>minimumPacketSize</code> bytes are passed to the callback;
+	 * all other messages are delivered as usual.
+	 *
+	 * @param callback the streaming callback, or null to stop streaming
+	 * @param minimumPacketSize the packet size in bytes from which payloads are streamed
+	 * @see MqttStreamingCallback
+	 */
+	public void setStreamingCallback(MqttStreamingCallback callback, int minimumPacketSize) {
+		comms.setStreamingCallback(callback, minimumPacketSize);
+	}
+
+	/**
+	 * Sets a codec that encodes the payload of every message published by this
+	 * client, and decodes the payload of every message it receives before it
+	 * is delivered. The application's own message objects are not modified.
+	 * Messages with a streamed payload are never encoded.
+	 * <p>
+	 * MQTT 3.1.1 can not mark a payload as encoded, so every client
+	 * exchanging messages with this one must use the same codec. A received
+	 * payload the codec can not decode is delivered unchanged.
+	 * </p>
+	 *
+	 * @param codec the payload codec, or null to send and deliver payloads unchanged
+	 * @see org.eclipse.paho.client.mqttv3.codec.DeflatePayloadCodec
+	 * @see org.eclipse.paho.client.mqttv3.codec.Lz4PayloadCodec
+	 */
+	public void setPayloadCodec(MqttPayloadCodec codec) {
+		comms.setPayloadCodec(codec);
+	}
+
 	public void messageArrivedComplete(int messageId, int qos) throws MqttException {
 		comms.messageArrivedComplete(messageId, qos);
 	}
@@ -1357,7 +1415,9 @@ public class MqttAsyncClient implements IMqttAsyncClient {
 			IMqttActionListener callback) throws MqttException, MqttPersistenceException {
 		final String methodName = "publish";
 		// @TRACE 111=< topic={0} message={1}userContext={1} callback={2}
-		log.fine(CLASS_NAME, methodName, "111", new Object[] { topic, userContext, callback });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "111", new Object[] { topic, userContext, callback });
+		}
 
 		// Checks if a topic is valid when publishing a message.
 		MqttTopic.validate(topic, false/* wildcards NOT allowed */);
@@ -1368,7 +1428,7 @@ public class MqttAsyncClient implements IMqttAsyncClient {
 		token.setMessage(message);
 		token.internalTok.setTopics(new String[] { topic });
 
-		MqttPublish pubMsg = new MqttPublish(topic, message);
+		MqttPublish pubMsg = new MqttPublish(topic, comms.encodePayload(message));
 		comms.sendNoWait(pubMsg, token);
 
 		// @TRACE 112=<
@@ -1377,6 +1437,102 @@ public class MqttAsyncClient implements IMqttAsyncClient {
 		return token;
 	}
 
+	/**
+	 * Publishes a batch of messages, each to its own topic.
+	 * <p>
+	 * This behaves as calling {@link #publish(String, MqttMessage)} for each
+	 * message in turn, but while connected the whole batch is given message
+	 * ids, persisted and queued for sending in one step, under a single lock.
+	 * Where the persistence implements {@link MqttBatchPersistence} the QoS 1
+	 * and 2 messages are persisted with a single call. Either all the messages
+	 * are queued, or an exception is thrown and none of them is. While the
+	 * client is disconnected, or messages are still held in the disconnected
+	 * buffer, the messages are instead buffered one at a time.
+	 * </p>
+	 * <p>
+	 * As each QoS 1 and 2 message needs a message id for the duration of its
+	 * delivery, a batch cannot hold more than 65535 of them. Messages beyond
+	 * the inflight window wait in the client until earlier ones complete.
+	 * </p>
+	 *
+	 * @param messages
+	 *            the topics and messages to publish, in the order they are
+	 *            to be sent
+	 * @param userContext
+	 *            optional object used to pass context to the callback. Use
+	 *            null if not required.
+	 * @param callback
+	 *            optional listener that will be notified when every message
+	 *            in the batch has completed. Use null if not required.
+	 * @return token used to track the batch and the delivery of each message
+	 * @throws MqttException
+	 *             for other errors encountered while publishing the messages.
+	 *             For instance if too many messages are being processed.
+	 * @throws IllegalArgumentException
+	 *             if the batch is empty or a topic is not valid
+	 * @see #publish(String, MqttMessage, Object, IMqttActionListener)
+	 */
+	public MqttBatchToken publishBatch(List<MqttBatchMessage> messages, Object userContext,
+			IMqttActionListener callback) throws MqttException {
+		final String methodName = "publishBatch";
+		// @TRACE 120=publishBatch ENTRY count={0} userContext={1} callback={2}
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "120",
+					new Object[] { Integer.valueOf(messages == null ? 0 : messages.size()), userContext, callback });
+		}
+
+		if (messages == null || messages.isEmpty()) {
+			throw new IllegalArgumentException();
+		}
+		int count = messages.size();
+		MqttBatchToken batchToken = new MqttBatchToken(getClientId());
+		batchToken.setActionCallback(callback);
+		batchToken.setUserContext(userContext);
+		IMqttActionListener listener = new BatchCompletionListener(batchToken, count);
+
+		MqttPublish[] pubMsgs = new MqttPublish[count];
+		MqttDeliveryToken[] tokens = new MqttDeliveryToken[count];
+		String[] topics = new String[count];
+		for (int i = 0; i < count; i++) {
+			MqttBatchMessage entry = messages.get(i);
+			String topic = entry.getTopic();
+			// Checks if a topic is valid when publishing a message.
+			MqttTopic.validate(topic, false/* wildcards NOT allowed */);
+
+			MqttDeliveryToken token = new MqttDeliveryToken(getClientId());
+			token.setActionCallback(listener);
+			token.setUserContext(userContext);
+			token.setMessage(entry.getMessage());
+			token.internalTok.setTopics(new String[] { topic });
+			tokens[i] = token;
+			topics[i] = topic;
+			pubMsgs[i] = new MqttPublish(topic, comms.encodePayload(entry.getMessage()));
+		}
+		batchToken.internalTok.setTopics(topics);
+		batchToken.setDeliveryTokens(tokens);
+		comms.sendBatchNoWait(pubMsgs, tokens);
+
+		// @TRACE 121=publishBatch EXIT
+		log.fine(CLASS_NAME, methodName, "121");
+
+		return batchToken;
+	}
+
+	/**
+	 * Publishes a batch of messages, each to its own topic.
+	 *
+	 * @param messages
+	 *            the topics and messages to publish, in the order they are
+	 *            to be sent
+	 * @return token used to track the batch and the delivery of each message
+	 * @throws MqttException
+	 *             for errors encountered while publishing the messages
+	 * @see #publishBatch(List, Object, IMqttActionListener)
+	 */
+	public MqttBatchToken publishBatch(List<MqttBatchMessage> messages) throws MqttException {
+		return publishBatch(messages, null, null);
+	}
+
 	/**
 	 * User triggered attempt to reconnect
 	 * 
@@ -1386,7 +1542,9 @@ public class MqttAsyncClient implements IMqttAsyncClient {
 	public void reconnect() throws MqttException {
 		final String methodName = "reconnect";
 		// @Trace 500=Attempting to reconnect client: {0}
-		log.fine(CLASS_NAME, methodName, "500", new Object[] { this.clientId });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "500", new Object[] { this.clientId });
+		}
 		// Some checks to make sure that we're not attempting to reconnect an
 		// already connected client
 		if (comms.isConnected()) {
@@ -1420,7 +1578,9 @@ public class MqttAsyncClient implements IMqttAsyncClient {
 	private void attemptReconnect() {
 		final String methodName = "attemptReconnect";
 		// @Trace 500=Attempting to reconnect client: {0}
-		log.fine(CLASS_NAME, methodName, "500", new Object[] { this.clientId });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "500", new Object[] { this.clientId });
+		}
 		try {
 			connect(this.connOpts, this.userContext, new MqttReconnectActionListener(methodName));
 		} catch (MqttSecurityException ex) {
@@ -1435,7 +1595,9 @@ public class MqttAsyncClient implements IMqttAsyncClient {
 	private void startReconnectCycle() {
 		String methodName = "startReconnectCycle";
 		// @Trace 503=Start reconnect timer for client: {0}, delay: {1}
-		log.fine(CLASS_NAME, methodName, "503", new Object[] { this.clientId, Long.valueOf(reconnectDelay) });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "503", new Object[] { this.clientId, Long.valueOf(reconnectDelay) });
+		}
 		reconnectTimer = new Timer("MQTT Reconnect: " + clientId);
 		reconnectTimer.schedule(new ReconnectTask(), reconnectDelay);
 	}
@@ -1443,7 +1605,9 @@ public class MqttAsyncClient implements IMqttAsyncClient {
 	private void stopReconnectCycle() {
 		String methodName = "stopReconnectCycle";
 		// @Trace 504=Stop reconnect timer for client: {0}
-		log.fine(CLASS_NAME, methodName, "504", new Object[] { this.clientId });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "504", new Object[] { this.clientId });
+		}
 		synchronized (clientLock) {
 			if (this.connOpts.isAutomaticReconnect()) {
 				if (reconnectTimer != null) {
@@ -1504,14 +1668,18 @@ public class MqttAsyncClient implements IMqttAsyncClient {
 
 		public void onSuccess(IMqttToken asyncActionToken) {
 			// @Trace 501=Automatic Reconnect Successful: {0}
-			log.fine(CLASS_NAME, methodName, "501", new Object[] { asyncActionToken.getClient().getClientId() });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "501", new Object[] { asyncActionToken.getClient().getClientId() });
+			}
 			comms.setRestingState(false);
 			stopReconnectCycle();
 		}
 
 		public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
 			// @Trace 502=Automatic Reconnect failed, rescheduling: {0}
-			log.fine(CLASS_NAME, methodName, "502", new Object[] { asyncActionToken.getClient().getClientId() });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "502", new Object[] { asyncActionToken.getClient().getClientId() });
+			}
 			if (reconnectDelay < connOpts.getMaxReconnectDelay()) {
 				reconnectDelay = reconnectDelay * 2;
 			}
@@ -1522,8 +1690,10 @@ public class MqttAsyncClient implements IMqttAsyncClient {
 			String reschedulemethodName = methodName + ":rescheduleReconnectCycle";
 			// @Trace 505=Rescheduling reconnect timer for client: {0}, delay:
 			// {1}
-			log.fine(CLASS_NAME, reschedulemethodName, "505",
-					new Object[] { MqttAsyncClient.this.clientId, String.valueOf(reconnectDelay) });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, reschedulemethodName, "505",
+						new Object[] { MqttAsyncClient.this.clientId, String.valueOf(reconnectDelay) });
+			}
 			synchronized (clientLock) {
 				if (MqttAsyncClient.this.connOpts.isAutomaticReconnect()) {
 					if (reconnectTimer != null) {
@@ -1610,11 +1780,24 @@ public class MqttAsyncClient implements IMqttAsyncClient {
 		// @TRACE 113=<
 		log.fine(CLASS_NAME, methodName, "113");
 		comms.close(force);
+		FlightRecorder.remove(clientId);
 		// @TRACE 114=>
 		log.fine(CLASS_NAME, methodName, "114");
 
 	}
 
+	/**
+	 * Returns the metrics of this client: the packets and bytes it has sent
+	 * and received, how long publishes take to be acknowledged, its queues
+	 * and the time spent in callbacks. They can also be published through
+	 * JMX with {@link MqttClientMetrics#registerMBean()}.
+	 * 
+	 * @return the {@link MqttClientMetrics} of this client
+	 */
+	public MqttClientMetrics getMetrics() {
+		return comms.getMetrics();
+	}
+
 	/**
 	 * Return a debug object that can be used to help solve problems.
 	 * 
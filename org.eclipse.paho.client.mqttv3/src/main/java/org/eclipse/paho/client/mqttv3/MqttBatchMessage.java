@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - batch publish
+ */
+package org.eclipse.paho.client.mqttv3;
+
+/**
+ * A message and the topic to publish it to, as one entry of a batch passed
+ * to {@link MqttAsyncClient#publishBatch(java.util.List, Object, IMqttActionListener)}.
+ */
+public class MqttBatchMessage {
+
+	private final String topic;
+	private final MqttMessage message;
+
+	/**
+	 * Creates a batch entry.
+	 * @param topic the topic to deliver the message to, for example "finance/stock/ibm".
+	 * @param message the message to deliver
+	 */
+	public MqttBatchMessage(String topic, MqttMessage message) {
+		if (topic == null || message == null) {
+			throw new IllegalArgumentException();
+		}
+		this.topic = topic;
+		this.message = message;
+	}
+
+	/**
+	 * @return the topic to deliver the message to
+	 */
+	public String getTopic() {
+		return topic;
+	}
+
+	/**
+	 * @return the message to deliver
+	 */
+	public MqttMessage getMessage() {
+		return message;
+	}
+}
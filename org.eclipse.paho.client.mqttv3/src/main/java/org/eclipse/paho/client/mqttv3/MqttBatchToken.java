@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - batch publish
+ */
+package org.eclipse.paho.client.mqttv3;
+
+/**
+ * Tracks the delivery of a batch of messages published with
+ * {@link MqttAsyncClient#publishBatch(java.util.List, Object, IMqttActionListener)}.
+ * <p>
+ * The batch token completes once every message in the batch has completed.
+ * If any message failed, the batch token completes with the first exception
+ * reported; the outcome of each message is available from its own delivery
+ * token.</p>
+ */
+public class MqttBatchToken extends MqttToken {
+
+	private IMqttDeliveryToken[] deliveryTokens = new IMqttDeliveryToken[0];
+
+	public MqttBatchToken(String logContext) {
+		super(logContext);
+	}
+
+	/**
+	 * Returns the delivery tokens of the messages in the batch, in the order
+	 * the messages were passed.
+	 * @return the delivery tokens
+	 */
+	public IMqttDeliveryToken[] getDeliveryTokens() {
+		IMqttDeliveryToken[] copy = new IMqttDeliveryToken[deliveryTokens.length];
+		System.arraycopy(deliveryTokens, 0, copy, 0, copy.length);
+		return copy;
+	}
+
+	void setDeliveryTokens(IMqttDeliveryToken[] deliveryTokens) {
+		this.deliveryTokens = deliveryTokens;
+	}
+}
@@ -0,0 +1,219 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - pooled payload buffers
+ */
+package org.eclipse.paho.client.mqttv3;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A reference counted message payload backed by a {@link ByteBuffer}.
+ * <p>
+ * A buffer is created with a reference count of one. Each call to
+ * {@link #retain()} increments the count and each call to {@link #release()}
+ * decrements it. When the count reaches zero the storage is handed back to
+ * the {@link MqttBufferPool} it came from, if any, and must no longer be
+ * accessed.
+ * </p>
+ * <p>
+ * A buffer passed to {@link MqttMessage#MqttMessage(MqttBuffer)} is owned by
+ * the client from that point on: the client releases it once the message has
+ * been acknowledged (PUBACK for QoS 1, PUBCOMP for QoS 2, or once written for
+ * QoS 0). A buffer received in {@link MqttCallback#messageArrived(String, MqttMessage)}
+ * is released when the callback returns; call {@link #retain()} to keep it
+ * for longer, and {@link #release()} when done.
+ * </p>
+ */
+public class MqttBuffer {
+
+	private final ByteBuffer buffer;
+	private final Storage storage;
+
+	/**
+	 * The pooled storage and reference count shared between a buffer and its
+	 * slices.
+	 */
+	private static final class Storage {
+		private final ByteBuffer root;
+		private final MqttBufferPool pool;
+		private final AtomicInteger refCount = new AtomicInteger(1);
+
+		Storage(ByteBuffer root, MqttBufferPool pool) {
+			this.root = root;
+			this.pool = pool;
+		}
+	}
+
+	MqttBuffer(ByteBuffer root, int length, MqttBufferPool pool) {
+		ByteBuffer view = root.duplicate();
+		view.clear();
+		view.limit(length);
+		this.buffer = view.slice();
+		this.storage = new Storage(root, pool);
+	}
+
+	private MqttBuffer(ByteBuffer buffer, Storage storage) {
+		this.buffer = buffer;
+		this.storage = storage;
+	}
+
+	/**
+	 * Wraps the remaining bytes of the given buffer without copying them.
+	 * The caller must not modify the buffer contents after handing it over.
+	 * @param buffer the payload bytes, from its position to its limit
+	 * @return a new unpooled buffer with a reference count of one
+	 */
+	public static MqttBuffer wrap(ByteBuffer buffer) {
+		if (buffer == null) {
+			throw new NullPointerException();
+		}
+		return new MqttBuffer(buffer.slice(), new Storage(buffer, null));
+	}
+
+	/**
+	 * Wraps a range of the given array without copying it.
+	 * @param bytes the array holding the payload
+	 * @param offset the offset of the payload in the array
+	 * @param length the length of the payload
+	 * @return a new unpooled buffer with a reference count of one
+	 */
+	public static MqttBuffer wrap(byte[] bytes, int offset, int length) {
+		return wrap(ByteBuffer.wrap(bytes, offset, length));
+	}
+
+	/**
+	 * Returns a view of the payload bytes. The view's position is zero and its
+	 * limit is {@link #length()}; it may be written to fill a buffer obtained
+	 * from {@link MqttBufferPool#acquire(int)}.
+	 * @return an independent view of the payload
+	 */
+	public ByteBuffer getByteBuffer() {
+		checkAccessible();
+		return buffer.duplicate();
+	}
+
+	/**
+	 * @return the length of the payload in bytes
+	 */
+	public int length() {
+		return buffer.remaining();
+	}
+
+	/**
+	 * @return true if the payload is held in an accessible byte array
+	 */
+	public boolean hasArray() {
+		return buffer.hasArray();
+	}
+
+	/**
+	 * @return the array backing this buffer
+	 * @see #arrayOffset()
+	 */
+	public byte[] array() {
+		checkAccessible();
+		return buffer.array();
+	}
+
+	/**
+	 * @return the offset of the first payload byte in {@link #array()}
+	 */
+	public int arrayOffset() {
+		return buffer.arrayOffset() + buffer.position();
+	}
+
+	/**
+	 * Returns a view of part of this buffer. The slice shares the storage and
+	 * the reference count of this buffer, so releasing either one releases
+	 * both.
+	 * @param index the offset of the slice within this buffer
+	 * @param length the length of the slice
+	 * @return the slice
+	 */
+	public MqttBuffer slice(int index, int length) {
+		if (index < 0 || length < 0 || index + length > buffer.remaining()) {
+			throw new IndexOutOfBoundsException();
+		}
+		ByteBuffer view = buffer.duplicate();
+		view.position(index);
+		view.limit(index + length);
+		return new MqttBuffer(view.slice(), storage);
+	}
+
+	/**
+	 * Copies the payload into a new byte array.
+	 * @return a copy of the payload
+	 */
+	public byte[] toByteArray() {
+		checkAccessible();
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * @return the current reference count
+	 */
+	public int getReferenceCount() {
+		return storage.refCount.get();
+	}
+
+	/**
+	 * Increments the reference count.
+	 * @return this buffer
+	 * @throws IllegalStateException if the buffer has already been released
+	 */
+	public MqttBuffer retain() {
+		int count;
+		do {
+			count = storage.refCount.get();
+			if (count <= 0) {
+				throw new IllegalStateException("buffer already released");
+			}
+		} while (!storage.refCount.compareAndSet(count, count + 1));
+		return this;
+	}
+
+	/**
+	 * Decrements the reference count, returning the storage to its pool when
+	 * the count reaches zero.
+	 * @return true if this call released the storage
+	 * @throws IllegalStateException if the buffer has already been released
+	 */
+	public boolean release() {
+		int count = storage.refCount.decrementAndGet();
+		if (count < 0) {
+			storage.refCount.incrementAndGet();
+			throw new IllegalStateException("buffer already released");
+		}
+		if (count == 0) {
+			if (storage.pool != null) {
+				storage.pool.recycle(storage.root);
+			}
+			return true;
+		}
+		return false;
+	}
+
+	private void checkAccessible() {
+		if (storage.refCount.get() <= 0) {
+			throw new IllegalStateException("buffer already released");
+		}
+	}
+
+	public String toString() {
+		return "MqttBuffer[length=" + buffer.remaining() + ", refCount=" + storage.refCount.get() + "]";
+	}
+}
@@ -23,6 +23,8 @@ import java.util.concurrent.ScheduledExecutorService;
 
 import javax.net.SocketFactory;
 
+import org.eclipse.paho.client.mqttv3.codec.MqttPayloadCodec;
+import org.eclipse.paho.client.mqttv3.metrics.MqttClientMetrics;
 import org.eclipse.paho.client.mqttv3.persist.MqttDefaultFilePersistence;
 import org.eclipse.paho.client.mqttv3.util.Debug;
 
@@ -693,6 +695,29 @@ public class MqttClient implements IMqttClient {
 		aClient.setManualAcks(manualAcks);
 	}
 
+	/**
+	 * Sets a callback that receives the payload of large inbound messages as a
+	 * stream while it is read from the network.
+	 *
+	 * @param callback the streaming callback, or null to stop streaming
+	 * @param minimumPacketSize the packet size in bytes from which payloads are streamed
+	 * @see MqttAsyncClient#setStreamingCallback(MqttStreamingCallback, int)
+	 */
+	public void setStreamingCallback(MqttStreamingCallback callback, int minimumPacketSize) {
+		aClient.setStreamingCallback(callback, minimumPacketSize);
+	}
+
+	/**
+	 * Sets a codec that encodes the payload of every message published by this
+	 * client, and decodes the payload of every message it receives.
+	 *
+	 * @param codec the payload codec, or null to send and deliver payloads unchanged
+	 * @see MqttAsyncClient#setPayloadCodec(MqttPayloadCodec)
+	 */
+	public void setPayloadCodec(MqttPayloadCodec codec) {
+		aClient.setPayloadCodec(codec);
+	}
+
 	public void messageArrivedComplete(int messageId, int qos) throws MqttException {
 		aClient.messageArrivedComplete(messageId, qos);
 	}
@@ -718,6 +743,15 @@ public class MqttClient implements IMqttClient {
 		aClient.reconnect();
 	}
 
+	/**
+	 * Returns the metrics of this client.
+	 * @return the {@link MqttClientMetrics} of this client
+	 * @see MqttAsyncClient#getMetrics()
+	 */
+	public MqttClientMetrics getMetrics() {
+		return aClient.getMetrics();
+	}
+
 	/**
 	 * Return a debug object that can be used to help solve problems.
 	 * @return the {@link Debug} Object.
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - shared thread pool client host
+ */
+package org.eclipse.paho.client.mqttv3;
+
+import java.io.IOException;
+
+import org.eclipse.paho.client.mqttv3.internal.ClientHostPool;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+
+/**
+ * Hosts many {@link MqttAsyncClient}s on a fixed number of shared threads.
+ * <p>
+ * On its own, each connected client has a thread for sending, one for
+ * receiving and one for making callbacks, which spend nearly all their time
+ * waiting. The clients of a host have none: their sending, receiving and
+ * callbacks run as short tasks on the host's worker threads whenever there
+ * is work, and a single selector thread watches all their sockets for data
+ * to read. Each task handles a bounded number of packets before giving way
+ * to the other clients, so that a busy client cannot starve the rest.
+ * </p>
+ * <p>
+ * Besides the workers, the host has a selector thread, a thread for the keep
+ * alive pings of all its clients and a few threads for connecting and
+ * disconnecting, which can wait on the network.
+ * </p>
+ * <p>
+ * Only <code>tcp://</code> connections without a custom socket factory are
+ * read through the selector. The receiver of any other connection, and of a
+ * client with a {@link MqttStreamingCallback}, still has a thread of its own.
+ * Callbacks run on the shared workers, so they must not block: a callback
+ * that waits holds up other clients.
+ * </p>
+ * <pre>
+ * MqttClientHost host = new MqttClientHost(4);
+ * MqttAsyncClient client = host.createClient("tcp://localhost:1883", "sensor-1");
+ * client.connect();
+ * ...
+ * client.disconnect();
+ * client.close();
+ * host.close();
+ * </pre>
+ */
+public class MqttClientHost {
+
+	/**
+	 * The default number of threads for connecting and disconnecting
+	 */
+	public static final int CONNECT_THREADS_DEFAULT = 2;
+
+	private final ClientHostPool pool;
+	private final int workerThreads;
+
+	/**
+	 * Creates a host with the given number of worker threads.
+	 * @param workerThreads the number of worker threads, for example the
+	 *            number of processors
+	 * @throws MqttException if the host cannot be started
+	 */
+	public MqttClientHost(int workerThreads) throws MqttException {
+		this(workerThreads, CONNECT_THREADS_DEFAULT);
+	}
+
+	/**
+	 * Creates a host with the given numbers of threads.
+	 * @param workerThreads the number of worker threads, for example the
+	 *            number of processors
+	 * @param connectThreads the number of threads for connecting and
+	 *            disconnecting
+	 * @throws IllegalArgumentException if either number is less than 1
+	 * @throws MqttException if the host cannot be started
+	 */
+	public MqttClientHost(int workerThreads, int connectThreads) throws MqttException {
+		if (workerThreads < 1 || connectThreads < 1) {
+			throw new IllegalArgumentException();
+		}
+		this.workerThreads = workerThreads;
+		try {
+			this.pool = new ClientHostPool(workerThreads, connectThreads);
+		} catch (IOException e) {
+			throw new MqttException(e);
+		}
+	}
+
+	/**
+	 * Creates a client hosted on this host's threads, which keeps its state
+	 * in memory.
+	 * @param serverURI the address of the server to connect to
+	 * @param clientId a client identifier that is unique on the server
+	 * @return the client
+	 * @throws MqttException if the client cannot be created
+	 * @see MqttAsyncClient#MqttAsyncClient(String, String)
+	 */
+	public MqttAsyncClient createClient(String serverURI, String clientId) throws MqttException {
+		return createClient(serverURI, clientId, new MemoryPersistence());
+	}
+
+	/**
+	 * Creates a client hosted on this host's threads.
+	 * @param serverURI the address of the server to connect to
+	 * @param clientId a client identifier that is unique on the server
+	 * @param persistence the persistence class to use to store in-flight
+	 *            messages, or null to keep them in memory
+	 * @return the client
+	 * @throws MqttException if the client cannot be created
+	 * @see MqttAsyncClient#MqttAsyncClient(String, String, MqttClientPersistence)
+	 */
+	public MqttAsyncClient createClient(String serverURI, String clientId, MqttClientPersistence persistence)
+			throws MqttException {
+		MqttAsyncClient client = new MqttAsyncClient(serverURI, clientId, persistence,
+				new ScheduledExecutorPingSender(pool.getScheduler()), pool.getConnectors(), null);
+		client.comms.setHost(pool);
+		return client;
+	}
+
+	/**
+	 * @return the number of worker threads
+	 */
+	public int getWorkerThreads() {
+		return workerThreads;
+	}
+
+	/**
+	 * Stops the host's threads. The clients should be disconnected first, as
+	 * any work they still have is dropped.
+	 */
+	public void close() {
+		pool.shutdown();
+	}
+}
@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - parallel session restore
+ */
+package org.eclipse.paho.client.mqttv3;
+
+/**
+ * A marker for {@link MqttClientPersistence} stores that can be called from
+ * several threads at once.
+ * <p>
+ * {@link MqttClientPersistence} makes no promise about threads, so the client
+ * reads a persisted session back one record at a time on the thread that
+ * creates it. When the persistence implements this interface, a large
+ * session is instead read on several threads, which then call
+ * {@link #get(String)}, and {@link #remove(String)} for a record that
+ * cannot be decoded, concurrently for different keys.</p>
+ * <p>
+ * {@link org.eclipse.paho.client.mqttv3.persist.MemoryPersistence} and
+ * {@link org.eclipse.paho.client.mqttv3.persist.MqttDefaultFilePersistence}
+ * implement it.</p>
+ */
+public interface MqttConcurrentPersistence extends MqttClientPersistence {
+}
@@ -19,6 +19,7 @@ package org.eclipse.paho.client.mqttv3;
 
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ThreadFactory;
 
 import javax.net.SocketFactory;
 import javax.net.ssl.HostnameVerifier;
@@ -49,6 +50,14 @@ public class MqttConnectOptions {
 	 * The default MqttVersion is 3.1.1 first, dropping back to 3.1 if that fails
 	 */
 	public static final int MQTT_VERSION_DEFAULT = 0;
+	/**
+	 * The default WebSocket compression window, in bits, if one is not specified
+	 */
+	public static final int WEBSOCKET_COMPRESSION_WINDOW_BITS_DEFAULT = 15;
+	/**
+	 * The default delay in milliseconds between parallel connection attempts
+	 */
+	public static final int PARALLEL_CONNECT_DELAY_DEFAULT = 250;
 	/**
 	 * Mqtt Version 3.1
 	 */
@@ -60,6 +69,8 @@ public class MqttConnectOptions {
 
 	private int keepAliveInterval = KEEP_ALIVE_INTERVAL_DEFAULT;
 	private int maxInflight = MAX_INFLIGHT_DEFAULT;
+	private MqttBufferPool bufferPool = null;
+	private boolean asyncPersistence = false;
 	private String willDestination = null;
 	private MqttMessage willMessage = null;
 	private String userName;
@@ -76,6 +87,14 @@ public class MqttConnectOptions {
 	private int maxReconnectDelay = 128000;
 	private boolean skipPortDuringHandshake = false;
 	private Map<String, String> customWebSocketHeaders = null;
+	private boolean webSocketCompression = false;
+	private boolean webSocketCompressionContextTakeover = true;
+	private int webSocketCompressionWindowBits = WEBSOCKET_COMPRESSION_WINDOW_BITS_DEFAULT;
+	private boolean parallelConnect = false;
+	private int parallelConnectDelay = PARALLEL_CONNECT_DELAY_DEFAULT;
+	private MqttSocketOptions socketOptions = new MqttSocketOptions();
+	private boolean virtualThreads = false;
+	private ThreadFactory threadFactory = null;
 
 	// Client Operation Parameters
 	private int executorServiceTimeout = 1; // How long to wait in seconds when terminating the executor service.
@@ -300,6 +319,71 @@ public class MqttConnectOptions {
 		this.maxInflight = maxInflight;
 	}
 
+	/**
+	 * Returns the pool that inbound message payloads are read into.
+	 *
+	 * @see #setBufferPool(MqttBufferPool)
+	 * @return the buffer pool, or null if pooling is disabled
+	 */
+	public MqttBufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+	/**
+	 * Sets a pool that inbound QoS 0 and QoS 1 message payloads are read
+	 * into, avoiding a payload copy and an allocation per message. The
+	 * payload is available through {@link MqttMessage#getPayloadBuffer()}
+	 * and is released back to the pool when
+	 * {@link MqttCallback#messageArrived(String, MqttMessage)} returns.
+	 * The same pool may be shared between clients.
+	 * <p>
+	 * The default value is null, which disables pooling.
+	 * </p>
+	 *
+	 * @param bufferPool
+	 *            the buffer pool to use, or null
+	 */
+	public void setBufferPool(MqttBufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+
+	/**
+	 * Returns whether QoS 1 and 2 messages are persisted in the background.
+	 *
+	 * @see #setAsyncPersistence(boolean)
+	 * @return true if messages are persisted in the background
+	 */
+	public boolean isAsyncPersistence() {
+		return asyncPersistence;
+	}
+
+	/**
+	 * Sets whether QoS 1 and 2 messages are persisted in the background.
+	 * Normally a publish is put into the client's persistence before
+	 * <code>publish</code> returns, on the publishing thread, and while
+	 * holding a lock that the sending thread also needs, so a slow store
+	 * holds up every publisher and the sending of messages already
+	 * persisted.
+	 * <p>
+	 * When set, <code>publish</code> returns once the message is queued, and
+	 * a thread of the client persists the queued messages in batches, in one
+	 * call when the persistence implements {@link MqttBatchPersistence}. A
+	 * message is sent only once it has been persisted, and messages are sent
+	 * in the order they were published. If a message cannot be persisted its
+	 * delivery token completes with the exception, instead of
+	 * <code>publish</code> throwing it.
+	 * </p>
+	 * <p>
+	 * The default value is false.
+	 * </p>
+	 *
+	 * @param asyncPersistence
+	 *            true to persist messages in the background
+	 */
+	public void setAsyncPersistence(boolean asyncPersistence) {
+		this.asyncPersistence = asyncPersistence;
+	}
+
 	/**
 	 * Returns the connection timeout value.
 	 *
@@ -448,7 +532,21 @@ public class MqttConnectOptions {
 	 * <dd>Sets the algorithm that will be used to instantiate a TrustManagerFactory
 	 * object instead of using the default algorithm available in the platform.
 	 * Example values: "PKIX" or "IBMJ9X509".</dd>
+	 *
+	 * <dt>com.ibm.ssl.sessionCacheSize</dt>
+	 * <dd>The number of TLS sessions kept for resumption when reconnecting,
+	 * 0 for no limit. The default is 100.</dd>
+	 *
+	 * <dt>com.ibm.ssl.sessionTimeout</dt>
+	 * <dd>The time in seconds that a TLS session can be resumed for, 0 for no
+	 * limit. The default is 86400.</dd>
 	 * </dl>
+	 * <p>
+	 * The SSL context built from these properties is shared by every client
+	 * in the process using the same properties, so reconnects resume the
+	 * previous TLS session rather than reading the key stores and performing
+	 * a full handshake again.
+	 * </p>
 	 *
 	 * @param props
 	 *            The SSL {@link Properties}
@@ -556,7 +654,9 @@ public class MqttConnectOptions {
 	 * When an attempt to connect is initiated the client will start with the first
 	 * serverURI in the list and work through the list until a connection is
 	 * established with a server. If a connection cannot be made to any of the
-	 * servers then the connect attempt fails.
+	 * servers then the connect attempt fails. With
+	 * {@link #setParallelConnect(boolean)} the servers are instead tried in
+	 * parallel, with staggered starts.
 	 * <p>
 	 * Specifying a list of servers that a client may connect to has several uses:
 	 * <ol>
@@ -700,6 +800,12 @@ public class MqttConnectOptions {
 			p.put("SSLProperties", getSSLProperties());
 		}
 		p.put("SkipPortDuringHandshake", isSkipPortDuringHandshake());
+		p.put("WebSocketCompression", Boolean.valueOf(isWebSocketCompression()));
+		p.put("ParallelConnect", Boolean.valueOf(isParallelConnect()));
+		p.put("SocketOptions", getSocketOptions().toString());
+		p.put("VirtualThreads", Boolean.valueOf(isVirtualThreads()));
+		p.put("AsyncPersistence", Boolean.valueOf(isAsyncPersistence()));
+		p.put("ThreadFactory", (getThreadFactory() == null) ? strNull : getThreadFactory().toString());
 		return p;
 	}
 
@@ -717,6 +823,241 @@ public class MqttConnectOptions {
 		return customWebSocketHeaders;
 	}
 
+	/**
+	 * Returns whether WebSocket connections offer to compress messages.
+	 *
+	 * @see #setWebSocketCompression(boolean)
+	 * @return true if the permessage-deflate extension is offered
+	 */
+	public boolean isWebSocketCompression() {
+		return webSocketCompression;
+	}
+
+	/**
+	 * Sets whether WebSocket connections (<code>ws://</code> and
+	 * <code>wss://</code>) offer the permessage-deflate extension (RFC 7692) to
+	 * the server. If the server accepts it, each WebSocket message is
+	 * compressed, which greatly reduces the size of text payloads. Connections
+	 * to servers that do not support the extension are unaffected.
+	 * <p>
+	 * The default value is false.
+	 * </p>
+	 *
+	 * @param webSocketCompression
+	 *            true to offer compression
+	 */
+	public void setWebSocketCompression(boolean webSocketCompression) {
+		this.webSocketCompression = webSocketCompression;
+	}
+
+	/**
+	 * Returns whether WebSocket compression carries its context from one
+	 * message to the next.
+	 *
+	 * @see #setWebSocketCompressionContextTakeover(boolean)
+	 * @return true if context takeover is allowed
+	 */
+	public boolean isWebSocketCompressionContextTakeover() {
+		return webSocketCompressionContextTakeover;
+	}
+
+	/**
+	 * Sets whether WebSocket compression carries its context from one message
+	 * to the next. Context takeover compresses repeated content, such as topic
+	 * names, much better; without it each message is compressed on its own,
+	 * which saves memory at both ends between messages.
+	 * <p>
+	 * The default value is true.
+	 * </p>
+	 *
+	 * @param contextTakeover
+	 *            false to ask both ends to compress every message on its own
+	 */
+	public void setWebSocketCompressionContextTakeover(boolean contextTakeover) {
+		this.webSocketCompressionContextTakeover = contextTakeover;
+	}
+
+	/**
+	 * Returns the largest WebSocket compression window, in bits.
+	 *
+	 * @see #setWebSocketCompressionWindowBits(int)
+	 * @return the window size in bits
+	 */
+	public int getWebSocketCompressionWindowBits() {
+		return webSocketCompressionWindowBits;
+	}
+
+	/**
+	 * Sets the largest LZ77 window, in bits, that either end may compress
+	 * WebSocket messages with. With a window below 15 bits the client
+	 * compresses each message on its own, and sends messages larger than the
+	 * window uncompressed.
+	 * <p>
+	 * The default value is {@link #WEBSOCKET_COMPRESSION_WINDOW_BITS_DEFAULT}.
+	 * </p>
+	 *
+	 * @param windowBits
+	 *            the window size, from 8 to 15 bits
+	 * @throws IllegalArgumentException
+	 *             if the value is out of range
+	 */
+	public void setWebSocketCompressionWindowBits(int windowBits) {
+		if (windowBits < 8 || windowBits > 15) {
+			throw new IllegalArgumentException("WebSocket compression window bits must be between 8 and 15");
+		}
+		this.webSocketCompressionWindowBits = windowBits;
+	}
+
+	/**
+	 * Returns whether connection attempts are made in parallel.
+	 *
+	 * @see #setParallelConnect(boolean)
+	 * @return true if connection attempts are made in parallel
+	 */
+	public boolean isParallelConnect() {
+		return parallelConnect;
+	}
+
+	/**
+	 * Sets whether the client races connection attempts instead of making
+	 * them one after another. Every server URI, and every address a server
+	 * host name resolves to, is a candidate. The candidates are started in
+	 * order, each one {@link #getParallelConnectDelay()} milliseconds after
+	 * the previous one or as soon as the previous one fails, and the first
+	 * network connection to be established is used for the MQTT connect. The
+	 * other attempts are then abandoned and their connections closed.
+	 * <p>
+	 * An unreachable server then delays the connection by the stagger delay
+	 * only, rather than by the full connection timeout, which makes failing
+	 * over to another server, or from IPv6 to IPv4, much faster.
+	 * </p>
+	 * <p>
+	 * The default value is false.
+	 * </p>
+	 *
+	 * @param parallelConnect
+	 *            true to make connection attempts in parallel
+	 */
+	public void setParallelConnect(boolean parallelConnect) {
+		this.parallelConnect = parallelConnect;
+	}
+
+	/**
+	 * Returns the delay between the starts of parallel connection attempts.
+	 *
+	 * @see #setParallelConnectDelay(int)
+	 * @return the delay in milliseconds
+	 */
+	public int getParallelConnectDelay() {
+		return parallelConnectDelay;
+	}
+
+	/**
+	 * Sets how long, in milliseconds, a parallel connection attempt is given
+	 * before the next one is started alongside it.
+	 * <p>
+	 * The default value is {@link #PARALLEL_CONNECT_DELAY_DEFAULT}.
+	 * </p>
+	 *
+	 * @param parallelConnectDelay
+	 *            the delay in milliseconds
+	 * @throws IllegalArgumentException
+	 *             if the value is negative
+	 */
+	public void setParallelConnectDelay(int parallelConnectDelay) {
+		if (parallelConnectDelay < 0) {
+			throw new IllegalArgumentException("Parallel connect delay must not be negative");
+		}
+		this.parallelConnectDelay = parallelConnectDelay;
+	}
+
+	/**
+	 * Returns the options applied to the socket of TCP based connections.
+	 *
+	 * @see #setSocketOptions(MqttSocketOptions)
+	 * @return the socket options
+	 */
+	public MqttSocketOptions getSocketOptions() {
+		return socketOptions;
+	}
+
+	/**
+	 * Sets the options applied to the socket of TCP based connections, which
+	 * covers <code>tcp://</code>, <code>ssl://</code>, <code>ws://</code> and
+	 * <code>wss://</code> server URIs. These include TCP_NODELAY, the socket
+	 * buffer sizes, TCP keepalive, the IP traffic class, and how long reads
+	 * wait for data.
+	 *
+	 * @param socketOptions
+	 *            the socket options
+	 */
+	public void setSocketOptions(MqttSocketOptions socketOptions) {
+		if (socketOptions == null) {
+			throw new IllegalArgumentException();
+		}
+		this.socketOptions = socketOptions;
+	}
+
+	/**
+	 * Returns whether the client runs its threads as virtual threads.
+	 *
+	 * @see #setVirtualThreads(boolean)
+	 * @return true if virtual threads are used
+	 */
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	/**
+	 * Sets whether the client runs the threads it creates, which send,
+	 * receive, make callbacks, connect and disconnect, as virtual threads.
+	 * Virtual threads need Java 21 or later; on an older Java the client
+	 * uses platform threads as before. A client that waits for work does
+	 * not hold a virtual thread's carrier, so many clients can share a few
+	 * carriers. Keep alive pings are scheduled by the client's
+	 * {@link MqttPingSender}, which this does not change.
+	 * <p>
+	 * This has no effect when a thread factory is set with
+	 * {@link #setThreadFactory(ThreadFactory)}, or when the client was
+	 * created with an executor service, which then runs these tasks. The
+	 * default value is false.
+	 * </p>
+	 *
+	 * @param virtualThreads
+	 *            true to use virtual threads
+	 */
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+
+	/**
+	 * Returns the factory of the threads the client creates.
+	 *
+	 * @see #setThreadFactory(ThreadFactory)
+	 * @return the thread factory, or null for the default
+	 */
+	public ThreadFactory getThreadFactory() {
+		return threadFactory;
+	}
+
+	/**
+	 * Sets the factory of the threads the client creates to send, receive,
+	 * make callbacks, connect and disconnect, for example the factory of a
+	 * <code>Thread.ofVirtual()</code> builder. The client names the threads
+	 * itself while they run.
+	 * <p>
+	 * This has no effect when the client was created with an executor
+	 * service, which then runs these tasks. The default value is null,
+	 * which creates platform threads.
+	 * </p>
+	 *
+	 * @param threadFactory
+	 *            the thread factory, or null for the default
+	 */
+	public void setThreadFactory(ThreadFactory threadFactory) {
+		this.threadFactory = threadFactory;
+	}
+
 	public String toString() {
 		return Debug.dumpProperties(getDebug(), "Connection options");
 	}
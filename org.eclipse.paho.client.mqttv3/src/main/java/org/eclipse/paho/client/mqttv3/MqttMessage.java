@@ -26,6 +26,7 @@ public class MqttMessage {
 
 	private boolean mutable = true;
 	private byte[] payload;
+	private MqttBuffer payloadBuffer;
 	private int qos = 1;
 	private boolean retained = false;
 	private boolean dup = false;
@@ -65,15 +66,42 @@ public class MqttMessage {
 		setPayload(payload);
 	}
 
+	/**
+	 * Constructs a message with the specified buffer as a payload, and all
+	 * other values set to defaults. The message takes ownership of the
+	 * buffer without copying it.
+	 * @param payload The buffer holding the payload
+	 * @see #setPayload(MqttBuffer)
+	 */
+	public MqttMessage(MqttBuffer payload) {
+		setPayload(payload);
+	}
+
 	/**
 	 * Returns the payload as a byte array.
+	 * If the payload is held in an {@link MqttBuffer} it is copied on the
+	 * first call; use {@link #getPayloadBuffer()} to avoid the copy.
 	 *
 	 * @return the payload as a byte array.
 	 */
 	public byte[] getPayload() {
+		if (payload == null && payloadBuffer != null) {
+			payload = payloadBuffer.toByteArray();
+		}
 		return payload;
 	}
 
+	/**
+	 * Returns the buffer holding the payload, if the payload was supplied
+	 * as an {@link MqttBuffer} or the message was received into a pooled
+	 * buffer.
+	 *
+	 * @return the payload buffer, or null if the payload is a byte array.
+	 */
+	public MqttBuffer getPayloadBuffer() {
+		return payloadBuffer;
+	}
+
 	/**
 	 * Clears the payload, resetting it to be empty.
 	 * @throws IllegalStateException if this message cannot be edited
@@ -81,6 +109,7 @@ public class MqttMessage {
 	public void clearPayload() {
 		checkMutable();
 		this.payload = new byte[] {};
+		this.payloadBuffer = null;
 	}
 
 	/**
@@ -96,6 +125,27 @@ public class MqttMessage {
 			throw new NullPointerException();
 		}
 		this.payload = payload.clone();
+		this.payloadBuffer = null;
+	}
+
+	/**
+	 * Sets the payload of this message to be the specified buffer, without
+	 * copying it. The message takes ownership of the buffer's reference: once
+	 * the message has been published the client releases the buffer after
+	 * delivery completes, returning it to its {@link MqttBufferPool}. The
+	 * buffer contents must not be modified after this call.
+	 *
+	 * @param payload the payload for this message.
+	 * @throws IllegalStateException if this message cannot be edited
+	 * @throws NullPointerException if no payload is provided
+	 */
+	public void setPayload(MqttBuffer payload) {
+		checkMutable();
+		if (payload == null) {
+			throw new NullPointerException();
+		}
+		this.payloadBuffer = payload;
+		this.payload = null;
 	}
 
 	/**
@@ -190,7 +240,7 @@ public class MqttMessage {
 	 * @return a string representation of this message.
 	 */
 	public String toString() {
-		return new String(payload);
+		return new String(getPayload());
 	}
 
 	/**
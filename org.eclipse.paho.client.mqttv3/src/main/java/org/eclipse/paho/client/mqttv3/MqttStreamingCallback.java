@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - streaming payloads
+ */
+package org.eclipse.paho.client.mqttv3;
+
+import java.io.InputStream;
+
+/**
+ * Enables an application to read the payload of large inbound messages as
+ * it arrives from the network, rather than after the whole message has been
+ * read into memory.
+ * <p>
+ * Register with {@link MqttAsyncClient#setStreamingCallback(MqttStreamingCallback, int)}.
+ * QoS 0 and QoS 1 messages whose packet is at least the registered size are
+ * passed to this callback instead of {@link MqttCallback#messageArrived(String, MqttMessage)}
+ * or any message listener. QoS 2 messages are always delivered normally, as
+ * they must be held until the exchange with the server completes.
+ * </p>
+ */
+public interface MqttStreamingCallback {
+	/**
+	 * This method is called when the header of a large message has been read.
+	 * <p>
+	 * It runs on the thread that reads from the network, so no other packets,
+	 * including acknowledgements, are processed until it returns. Streamed
+	 * messages may therefore be delivered ahead of smaller messages still
+	 * queued for {@link MqttCallback#messageArrived(String, MqttMessage)}.
+	 * Any payload bytes left unread when it returns are skipped. For QoS 1 the
+	 * acknowledgement is sent when it returns, unless manual acknowledgements
+	 * are enabled.
+	 * </p>
+	 * <p>
+	 * If an exception is thrown the client is shut down, as for
+	 * {@link MqttCallback#messageArrived(String, MqttMessage)}.
+	 * </p>
+	 *
+	 * @param topic name of the topic on the message was published to
+	 * @param message the message attributes; its payload is empty
+	 * @param payload the payload, limited to the bytes of this message
+	 * @param length the payload length in bytes
+	 * @throws Exception if a terminal error has occurred, and the client should be
+	 * shut down.
+	 */
+	void messageArriving(String topic, MqttMessage message, InputStream payload, int length) throws Exception;
+}
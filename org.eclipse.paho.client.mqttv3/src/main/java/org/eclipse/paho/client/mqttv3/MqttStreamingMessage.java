@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - streaming payloads
+ */
+package org.eclipse.paho.client.mqttv3;
+
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * A message whose payload is read from a stream as it is written to the
+ * network, so that very large payloads never need to be held in memory.
+ * <p>
+ * The declared length is sent in the packet header before any payload bytes
+ * are read, so the stream must supply at least that many bytes; if it ends
+ * early the connection is closed, as the packet can not be completed.
+ * Bytes beyond the declared length are not read.
+ * </p>
+ * <p>
+ * The stream can only be read once, so the message can not be persisted or
+ * resent. Streaming messages are therefore always sent at QoS 0, and
+ * {@link #getPayload()} returns an empty array rather than the payload.
+ * </p>
+ * <pre>
+ * client.publish("files/big", new MqttStreamingMessage(new FileInputStream(file), (int) file.length()));
+ * </pre>
+ */
+public class MqttStreamingMessage extends MqttMessage {
+
+	private static final byte[] NO_PAYLOAD = new byte[0];
+
+	private final ReadableByteChannel payload;
+	private final int length;
+
+	/**
+	 * Constructs a message whose payload is read from the given stream.
+	 * @param payload the stream supplying the payload
+	 * @param length the number of payload bytes to send
+	 */
+	public MqttStreamingMessage(InputStream payload, int length) {
+		this(Channels.newChannel(payload), length);
+	}
+
+	/**
+	 * Constructs a message whose payload is read from the given channel.
+	 * @param payload the channel supplying the payload
+	 * @param length the number of payload bytes to send
+	 */
+	public MqttStreamingMessage(ReadableByteChannel payload, int length) {
+		super();
+		if (payload == null) {
+			throw new NullPointerException();
+		}
+		if (length < 0) {
+			throw new IllegalArgumentException();
+		}
+		this.payload = payload;
+		this.length = length;
+		super.setQos(0);
+	}
+
+	/**
+	 * @return the channel the payload is read from
+	 */
+	public ReadableByteChannel getPayloadChannel() {
+		return payload;
+	}
+
+	/**
+	 * @return the declared payload length in bytes
+	 */
+	public int getPayloadLength() {
+		return length;
+	}
+
+	/**
+	 * The payload of a streaming message is not held in memory, so this
+	 * returns an empty array, as code that handles any message, such as a
+	 * logger, may call it. The payload is read from
+	 * {@link #getPayloadChannel()}, and its length is
+	 * {@link #getPayloadLength()}.
+	 * @return an empty array
+	 */
+	public byte[] getPayload() {
+		return NO_PAYLOAD;
+	}
+
+	/**
+	 * Streaming messages can only be sent at QoS 0.
+	 * @param qos the "quality of service" to use, must be 0.
+	 * @throws IllegalArgumentException if qos is not 0.
+	 */
+	public void setQos(int qos) {
+		if (qos != 0) {
+			throw new IllegalArgumentException("streaming messages are sent at QoS 0");
+		}
+		super.setQos(qos);
+	}
+
+	public String toString() {
+		return "[streamed payload, length " + length + "]";
+	}
+}
@@ -142,8 +142,8 @@ public class MqttTopic {
 	/**
 	 * Create a PUBLISH packet from the specified message.
 	 */
-	private MqttPublish createPublish(MqttMessage message) {
-		return new MqttPublish(this.getName(), message);
+	private MqttPublish createPublish(MqttMessage message) throws MqttException {
+		return new MqttPublish(this.getName(), comms.encodePayload(message));
 	}
 
 	/**
@@ -59,7 +59,9 @@ public class ScheduledExecutorPingSender implements MqttPingSender {
 		final String methodName = "start";
 
 		//@Trace 659=start timer for client:{0}
-		log.fine(CLASS_NAME, methodName, "659", new Object[]{ clientid });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "659", new Object[]{ clientid });
+		}
 		//Check ping after first keep alive interval.
 		schedule(comms.getKeepAlive());
 	}
@@ -84,7 +86,9 @@ public class ScheduledExecutorPingSender implements MqttPingSender {
 			String originalThreadName = Thread.currentThread().getName();
 			Thread.currentThread().setName("MQTT Ping: " + clientid);
 			//@Trace 660=Check schedule at {0}
-			log.fine(CLASS_NAME, methodName, "660", new Object[]{ Long.valueOf(System.nanoTime()) });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "660", new Object[]{ Long.valueOf(System.nanoTime()) });
+			}
 			comms.checkForActivity();
 			Thread.currentThread().setName(originalThreadName);
 		}
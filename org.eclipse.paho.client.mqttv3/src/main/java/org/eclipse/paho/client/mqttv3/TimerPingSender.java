@@ -50,7 +50,9 @@ public class TimerPingSender implements MqttPingSender {
 		final String methodName = "start";		
 		
 		//@Trace 659=start timer for client:{0}
-		log.fine(CLASS_NAME, methodName, "659", new Object[]{clientid});
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "659", new Object[]{clientid});
+		}
 				
 		timer = new Timer("MQTT Ping: " + clientid);
 		//Check ping after first keep alive interval.
@@ -75,7 +77,9 @@ public class TimerPingSender implements MqttPingSender {
 		
 		public void run() {
 			//@Trace 660=Check schedule at {0}
-			log.fine(CLASS_NAME, methodName, "660", new Object[]{Long.valueOf(System.nanoTime())});
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "660", new Object[]{Long.valueOf(System.nanoTime())});
+			}
 			comms.checkForActivity();			
 		}
 	}
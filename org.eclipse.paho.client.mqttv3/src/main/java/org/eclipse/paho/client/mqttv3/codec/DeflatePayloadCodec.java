@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - payload codecs
+ */
+package org.eclipse.paho.client.mqttv3.codec;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.eclipse.paho.client.mqttv3.MqttException;
+
+/**
+ * A payload codec producing the zlib format (RFC 1950) with the JDK's
+ * {@link Deflater}.
+ * <p>
+ * Deflater and Inflater instances hold native memory and are expensive to
+ * create, so they are reset and reused across messages. Up to
+ * {@link #MAX_POOLED} of each are kept for concurrent use.
+ * </p>
+ */
+public class DeflatePayloadCodec implements MqttPayloadCodec {
+
+	/** The name of this codec. */
+	public static final String NAME = "deflate";
+	/** The number of idle Deflater and Inflater instances kept for reuse. */
+	public static final int MAX_POOLED = 8;
+
+	private final int level;
+	private final ConcurrentLinkedQueue<Deflater> deflaters = new ConcurrentLinkedQueue<Deflater>();
+	private final ConcurrentLinkedQueue<Inflater> inflaters = new ConcurrentLinkedQueue<Inflater>();
+	private final AtomicInteger pooledDeflaters = new AtomicInteger();
+	private final AtomicInteger pooledInflaters = new AtomicInteger();
+
+	/**
+	 * Creates a codec using the default compression level.
+	 */
+	public DeflatePayloadCodec() {
+		this(Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Creates a codec.
+	 * @param level the compression level, from 0 to 9, or -1 for the default
+	 */
+	public DeflatePayloadCodec(int level) {
+		if ((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION) {
+			throw new IllegalArgumentException();
+		}
+		this.level = level;
+	}
+
+	public String getName() {
+		return NAME;
+	}
+
+	public byte[] encode(byte[] payload, int offset, int length) throws MqttException {
+		Deflater deflater = deflaters.poll();
+		if (deflater != null) {
+			pooledDeflaters.decrementAndGet();
+		} else {
+			deflater = new Deflater(level);
+		}
+		try {
+			deflater.setInput(payload, offset, length);
+			deflater.finish();
+			byte[] out = new byte[length + (length >> 12) + (length >> 14) + (length >> 25) + 13 + 6];
+			int pos = 0;
+			while (!deflater.finished()) {
+				if (pos == out.length) {
+					out = grow(out, Integer.MAX_VALUE);
+				}
+				pos += deflater.deflate(out, pos, out.length - pos);
+			}
+			return trim(out, pos);
+		} finally {
+			deflater.reset();
+			if (pooledDeflaters.incrementAndGet() <= MAX_POOLED) {
+				deflaters.offer(deflater);
+			} else {
+				pooledDeflaters.decrementAndGet();
+				deflater.end();
+			}
+		}
+	}
+
+	public byte[] decode(byte[] payload, int offset, int length) throws MqttException {
+		Inflater inflater = inflaters.poll();
+		if (inflater != null) {
+			pooledInflaters.decrementAndGet();
+		} else {
+			inflater = new Inflater();
+		}
+		try {
+			inflater.setInput(payload, offset, length);
+			byte[] out = new byte[Math.max(64, Math.min(length, MAX_DECODED_LENGTH / 4) * 4)];
+			int pos = 0;
+			while (!inflater.finished()) {
+				if (pos == out.length) {
+					if (out.length == MAX_DECODED_LENGTH) {
+						throw new DataFormatException("decoded payload too large");
+					}
+					out = grow(out, MAX_DECODED_LENGTH);
+				}
+				int count = inflater.inflate(out, pos, out.length - pos);
+				if (count == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new DataFormatException("truncated payload");
+				}
+				pos += count;
+			}
+			return trim(out, pos);
+		} catch (DataFormatException ex) {
+			throw new MqttException(ex);
+		} finally {
+			inflater.reset();
+			if (pooledInflaters.incrementAndGet() <= MAX_POOLED) {
+				inflaters.offer(inflater);
+			} else {
+				pooledInflaters.decrementAndGet();
+				inflater.end();
+			}
+		}
+	}
+
+	private static byte[] grow(byte[] bytes, int max) {
+		byte[] grown = new byte[(int) Math.min((long) bytes.length * 2, max)];
+		System.arraycopy(bytes, 0, grown, 0, bytes.length);
+		return grown;
+	}
+
+	private static byte[] trim(byte[] bytes, int length) {
+		if (bytes.length == length) {
+			return bytes;
+		}
+		byte[] trimmed = new byte[length];
+		System.arraycopy(bytes, 0, trimmed, 0, length);
+		return trimmed;
+	}
+}
@@ -0,0 +1,243 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - payload codecs
+ */
+package org.eclipse.paho.client.mqttv3.codec;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+
+import org.eclipse.paho.client.mqttv3.MqttException;
+
+/**
+ * A payload codec using the LZ4 block format, which trades some compression
+ * ratio for much lower CPU cost than Deflate.
+ * <p>
+ * An encoded payload is the length of the decoded payload as a four byte big
+ * endian integer, followed by a single LZ4 block. A decoded length longer
+ * than the block could expand to is rejected before any buffer is allocated
+ * for it. The compressor is the simple greedy single-probe variant; its hash
+ * tables are reused across messages, with up to {@link #MAX_POOLED} kept for
+ * concurrent use.
+ * </p>
+ */
+public class Lz4PayloadCodec implements MqttPayloadCodec {
+
+	/** The name of this codec. */
+	public static final String NAME = "lz4";
+	/** The number of idle compressor hash tables kept for reuse. */
+	public static final int MAX_POOLED = 8;
+
+	private static final int MIN_MATCH = 4;
+	private static final int LAST_LITERALS = 5;
+	private static final int MF_LIMIT = 12;
+	private static final int MAX_DISTANCE = 65535;
+	private static final int HASH_LOG = 12;
+	private static final int MAX_EXPANSION = 255;
+
+	private final ConcurrentLinkedQueue<int[]> tables = new ConcurrentLinkedQueue<int[]>();
+	private final AtomicInteger pooledTables = new AtomicInteger();
+
+	public String getName() {
+		return NAME;
+	}
+
+	public byte[] encode(byte[] payload, int offset, int length) throws MqttException {
+		int[] table = tables.poll();
+		if (table != null) {
+			pooledTables.decrementAndGet();
+		} else {
+			table = new int[1 << HASH_LOG];
+		}
+		try {
+			byte[] out = new byte[4 + length + length / 255 + 16];
+			out[0] = (byte) (length >>> 24);
+			out[1] = (byte) (length >>> 16);
+			out[2] = (byte) (length >>> 8);
+			out[3] = (byte) length;
+			int pos = compress(payload, offset, length, out, 4, table);
+			return Arrays.copyOf(out, pos);
+		} finally {
+			if (pooledTables.incrementAndGet() <= MAX_POOLED) {
+				tables.offer(table);
+			} else {
+				pooledTables.decrementAndGet();
+			}
+		}
+	}
+
+	public byte[] decode(byte[] payload, int offset, int length) throws MqttException {
+		try {
+			if (length < 5) {
+				throw new DataFormatException("truncated payload");
+			}
+			int decodedLength = ((payload[offset] & 0xff) << 24) | ((payload[offset + 1] & 0xff) << 16)
+					| ((payload[offset + 2] & 0xff) << 8) | (payload[offset + 3] & 0xff);
+			// a block byte decodes to at most MAX_EXPANSION bytes, so a length
+			// the block could not produce is rejected before it is allocated
+			if (decodedLength < 0 || decodedLength > MAX_DECODED_LENGTH
+					|| decodedLength > (long) (length - 4) * MAX_EXPANSION) {
+				throw new DataFormatException("invalid decoded length " + decodedLength);
+			}
+			byte[] out = new byte[decodedLength];
+			decompress(payload, offset + 4, offset + length, out);
+			return out;
+		} catch (DataFormatException ex) {
+			throw new MqttException(ex);
+		}
+	}
+
+	private static int compress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int[] table) {
+		int srcEnd = srcOff + srcLen;
+		int anchor = srcOff;
+		int pos = dstOff;
+		if (srcLen >= MF_LIMIT + 1) {
+			Arrays.fill(table, -1);
+			int matchLimit = srcEnd - LAST_LITERALS;
+			int mfLimit = srcEnd - MF_LIMIT;
+			int ip = srcOff + 1;
+			while (ip < mfLimit) {
+				int sequence = readInt(src, ip);
+				int hash = hash(sequence);
+				int ref = table[hash];
+				table[hash] = ip;
+				if (ref < 0 || ip - ref > MAX_DISTANCE || readInt(src, ref) != sequence) {
+					ip++;
+					continue;
+				}
+				// extend the match backwards over pending literals
+				while (ip > anchor && ref > srcOff && src[ip - 1] == src[ref - 1]) {
+					ip--;
+					ref--;
+				}
+				int matchLength = MIN_MATCH;
+				while (ip + matchLength < matchLimit && src[ip + matchLength] == src[ref + matchLength]) {
+					matchLength++;
+				}
+
+				int literals = ip - anchor;
+				int token = pos++;
+				pos = writeLength(dst, pos, literals);
+				System.arraycopy(src, anchor, dst, pos, literals);
+				pos += literals;
+				int distance = ip - ref;
+				dst[pos++] = (byte) distance;
+				dst[pos++] = (byte) (distance >>> 8);
+				pos = writeLength(dst, pos, matchLength - MIN_MATCH);
+				dst[token] = (byte) ((Math.min(literals, 15) << 4) | Math.min(matchLength - MIN_MATCH, 15));
+
+				ip += matchLength;
+				anchor = ip;
+				if (ip < mfLimit) {
+					table[hash(readInt(src, ip - 2))] = ip - 2;
+				}
+			}
+		}
+		int literals = srcEnd - anchor;
+		int token = pos++;
+		pos = writeLength(dst, pos, literals);
+		System.arraycopy(src, anchor, dst, pos, literals);
+		pos += literals;
+		dst[token] = (byte) (Math.min(literals, 15) << 4);
+		return pos;
+	}
+
+	private static void decompress(byte[] src, int srcOff, int srcEnd, byte[] dst) throws DataFormatException {
+		int ip = srcOff;
+		int op = 0;
+		while (true) {
+			if (ip >= srcEnd) {
+				throw new DataFormatException("truncated payload");
+			}
+			int token = src[ip++] & 0xff;
+			int literals = token >>> 4;
+			if (literals == 15) {
+				int b;
+				do {
+					b = readByte(src, ip++, srcEnd);
+					literals += b;
+				} while (b == 255);
+			}
+			if (literals > srcEnd - ip || literals > dst.length - op) {
+				throw new DataFormatException("literals overrun");
+			}
+			System.arraycopy(src, ip, dst, op, literals);
+			ip += literals;
+			op += literals;
+			if (ip == srcEnd) {
+				break;
+			}
+
+			int distance = readByte(src, ip, srcEnd) | (readByte(src, ip + 1, srcEnd) << 8);
+			ip += 2;
+			if (distance == 0 || distance > op) {
+				throw new DataFormatException("invalid match offset " + distance);
+			}
+			int matchLength = token & 0x0f;
+			if (matchLength == 15) {
+				int b;
+				do {
+					b = readByte(src, ip++, srcEnd);
+					matchLength += b;
+				} while (b == 255);
+			}
+			matchLength += MIN_MATCH;
+			if (matchLength > dst.length - op) {
+				throw new DataFormatException("match overrun");
+			}
+			int ref = op - distance;
+			if (distance >= matchLength) {
+				System.arraycopy(dst, ref, dst, op, matchLength);
+			} else {
+				for (int i = 0; i < matchLength; i++) {
+					dst[op + i] = dst[ref + i];
+				}
+			}
+			op += matchLength;
+		}
+		if (op != dst.length) {
+			throw new DataFormatException("decoded length mismatch");
+		}
+	}
+
+	private static int readByte(byte[] bytes, int index, int end) throws DataFormatException {
+		if (index >= end) {
+			throw new DataFormatException("truncated payload");
+		}
+		return bytes[index] & 0xff;
+	}
+
+	private static int writeLength(byte[] dst, int pos, int length) {
+		if (length >= 15) {
+			length -= 15;
+			while (length >= 255) {
+				dst[pos++] = (byte) 255;
+				length -= 255;
+			}
+			dst[pos++] = (byte) length;
+		}
+		return pos;
+	}
+
+	private static int readInt(byte[] bytes, int index) {
+		return (bytes[index] & 0xff) | ((bytes[index + 1] & 0xff) << 8) | ((bytes[index + 2] & 0xff) << 16)
+				| ((bytes[index + 3] & 0xff) << 24);
+	}
+
+	private static int hash(int sequence) {
+		return (sequence * -1640531535) >>> (32 - HASH_LOG);
+	}
+}
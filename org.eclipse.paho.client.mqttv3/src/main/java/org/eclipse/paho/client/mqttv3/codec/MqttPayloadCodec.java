@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - payload codecs
+ */
+package org.eclipse.paho.client.mqttv3.codec;
+
+import org.eclipse.paho.client.mqttv3.MqttException;
+
+/**
+ * Transforms message payloads as they are published and delivered, typically
+ * to compress them.
+ * <p>
+ * A codec set with
+ * {@link org.eclipse.paho.client.mqttv3.MqttAsyncClient#setPayloadCodec(MqttPayloadCodec)}
+ * encodes the payload of every message the client publishes, and decodes the
+ * payload of every message it receives before it is passed to the
+ * application. MQTT 3.1.1 has no way of marking an encoded payload, so all
+ * clients publishing and subscribing to the topics involved must agree on
+ * the codec.
+ * </p>
+ * <p>
+ * Implementations must be thread safe.
+ * </p>
+ */
+public interface MqttPayloadCodec {
+
+	/**
+	 * The largest payload a codec will decode, which is the largest payload an
+	 * MQTT packet can carry.
+	 */
+	int MAX_DECODED_LENGTH = 268435455;
+
+	/**
+	 * @return the name of the codec, such as "deflate"
+	 */
+	String getName();
+
+	/**
+	 * Encodes a payload.
+	 * @param payload the array holding the payload
+	 * @param offset the offset of the payload in the array
+	 * @param length the length of the payload
+	 * @return the encoded payload
+	 * @throws MqttException if the payload could not be encoded
+	 */
+	byte[] encode(byte[] payload, int offset, int length) throws MqttException;
+
+	/**
+	 * Decodes a payload produced by {@link #encode(byte[], int, int)}.
+	 * @param payload the array holding the encoded payload
+	 * @param offset the offset of the encoded payload in the array
+	 * @param length the length of the encoded payload
+	 * @return the decoded payload
+	 * @throws MqttException if the payload is not valid for this codec
+	 */
+	byte[] decode(byte[] payload, int offset, int length) throws MqttException;
+}
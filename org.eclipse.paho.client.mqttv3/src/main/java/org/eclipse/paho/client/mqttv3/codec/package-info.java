@@ -0,0 +1,5 @@
+/**
+ * This package defines the message payload codec interface and its built in
+ * Deflate and LZ4 implementations.
+ */
+package org.eclipse.paho.client.mqttv3.codec;
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - batch publish
+ */
+package org.eclipse.paho.client.mqttv3.internal;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttToken;
+
+/**
+ * Listens to the delivery tokens of a batch of messages and completes the
+ * batch token, notifying its listener, once all of them have completed.
+ */
+public class BatchCompletionListener implements IMqttActionListener {
+
+	private final MqttToken batchToken;
+	private int remaining;
+	private MqttException exception = null;
+
+	/**
+	 * @param batchToken the token to complete
+	 * @param count the number of delivery tokens in the batch
+	 */
+	public BatchCompletionListener(MqttToken batchToken, int count) {
+		this.batchToken = batchToken;
+		this.remaining = count;
+	}
+
+	public void onSuccess(IMqttToken asyncActionToken) {
+		completed(null);
+	}
+
+	public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+		completed(exception instanceof MqttException ? (MqttException) exception : new MqttException(exception));
+	}
+
+	private void completed(MqttException ex) {
+		MqttException result;
+		synchronized (this) {
+			if (ex != null && exception == null) {
+				exception = ex;
+			}
+			if (--remaining > 0) {
+				return;
+			}
+			result = exception;
+		}
+		batchToken.internalTok.markComplete(null, result);
+		batchToken.internalTok.notifyComplete();
+		IMqttActionListener callback = batchToken.getActionCallback();
+		if (callback != null) {
+			if (result == null) {
+				callback.onSuccess(batchToken);
+			} else {
+				callback.onFailure(batchToken, result);
+			}
+		}
+	}
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - Unix domain socket transport
+ */
+package org.eclipse.paho.client.mqttv3.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Reads from a non-blocking channel. With a selector, a read waits for data
+ * up to the timeout; without one, a read that would wait fails at once with
+ * a <code>SocketTimeoutException</code>, which callers already treat as a
+ * read to be resumed later.
+ */
+class ChannelInputStream extends InputStream {
+	private final SocketChannel channel;
+	private final Selector selector;
+	private final int timeout;
+	private final byte[] single = new byte[1];
+
+	/**
+	 * @param channel the channel, in non-blocking mode
+	 * @param selector a selector the channel is registered with for reading,
+	 *            or null to never wait
+	 * @param timeout how long to wait in milliseconds, or 0 to wait
+	 *            indefinitely
+	 */
+	ChannelInputStream(SocketChannel channel, Selector selector, int timeout) {
+		this.channel = channel;
+		this.selector = selector;
+		this.timeout = timeout;
+	}
+
+	public int read() throws IOException {
+		return (read(single, 0, 1) < 0) ? -1 : (single[0] & 0xff);
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+		while (true) {
+			int count = channel.read(buffer);
+			if (count != 0) {
+				return count;
+			}
+			if (selector == null) {
+				throw new SocketTimeoutException("Read would block");
+			}
+			try {
+				if (selector.select(timeout) == 0 && timeout > 0 && channel.isOpen()) {
+					throw new SocketTimeoutException("Read timed out");
+				}
+				selector.selectedKeys().clear();
+			} catch (ClosedSelectorException e) {
+				throw new ClosedChannelException();
+			}
+		}
+	}
+
+	public int available() throws IOException {
+		return 0;
+	}
+}
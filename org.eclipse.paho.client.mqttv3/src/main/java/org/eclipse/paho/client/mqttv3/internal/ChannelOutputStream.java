@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - Unix domain socket transport
+ */
+package org.eclipse.paho.client.mqttv3.internal;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Writes to a non-blocking channel, waiting for room with a selector. The
+ * selector is only opened the first time the socket's send buffer is full,
+ * so that connections which never fill it do not hold one.
+ */
+class ChannelOutputStream extends OutputStream {
+	private final SocketChannel channel;
+	private Selector selector;
+	private boolean closed = false;
+
+	ChannelOutputStream(SocketChannel channel) {
+		this.channel = channel;
+	}
+
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	public void write(byte[] b, int off, int len) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+		while (buffer.hasRemaining()) {
+			if (channel.write(buffer) == 0) {
+				Selector waitFor = getSelector();
+				try {
+					waitFor.select();
+					waitFor.selectedKeys().clear();
+				} catch (ClosedSelectorException e) {
+					throw new ClosedChannelException();
+				}
+			}
+		}
+	}
+
+	private synchronized Selector getSelector() throws IOException {
+		if (closed) {
+			throw new ClosedChannelException();
+		}
+		if (selector == null) {
+			selector = Selector.open();
+			channel.register(selector, SelectionKey.OP_WRITE);
+		}
+		return selector;
+	}
+
+	/**
+	 * Closes the channel, and the selector so that a write waiting for room
+	 * is woken up and fails.
+	 */
+	public void close() throws IOException {
+		Selector toClose;
+		synchronized (this) {
+			closed = true;
+			toClose = selector;
+		}
+		try {
+			channel.close();
+		} finally {
+			if (toClose != null) {
+				toClose.close();
+			}
+		}
+	}
+}
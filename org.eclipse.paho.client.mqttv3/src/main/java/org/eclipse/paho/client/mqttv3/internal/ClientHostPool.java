@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - shared thread pool client host
+ */
+package org.eclipse.paho.client.mqttv3.internal;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.paho.client.mqttv3.logging.Logger;
+import org.eclipse.paho.client.mqttv3.logging.LoggerFactory;
+
+/**
+ * The threads shared by the clients of a client host:
+ * <ul>
+ * <li>the workers, which run the {@link HostedTask}s that send, receive and
+ * call back, in the order they were signalled</li>
+ * <li>a selector thread, which signals the receive task of a client when its
+ * socket has data to read</li>
+ * <li>a scheduler thread, for the keep alive pings</li>
+ * <li>a few connect threads, for connecting and disconnecting, which can
+ * wait for the network</li>
+ * </ul>
+ */
+public class ClientHostPool {
+	private static final String CLASS_NAME = ClientHostPool.class.getName();
+	private Logger log = LoggerFactory.getLogger(LoggerFactory.MQTT_CLIENT_MSG_CAT, CLASS_NAME);
+
+	private final ThreadPoolExecutor workers;
+	private final ScheduledExecutorService scheduler;
+	private final ScheduledExecutorService connectors;
+	private final Selector selector;
+	private final Thread selectorThread;
+	private final ConcurrentLinkedQueue<Registration> registrations = new ConcurrentLinkedQueue<Registration>();
+	private volatile boolean closed = false;
+
+	/**
+	 * @param workerThreads the number of worker threads
+	 * @param connectThreads the number of threads for connecting and
+	 *            disconnecting
+	 * @throws IOException if the selector cannot be opened
+	 */
+	public ClientHostPool(int workerThreads, int connectThreads) throws IOException {
+		workers = new ThreadPoolExecutor(workerThreads, workerThreads, 0L, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("MQTT Host Worker"));
+		scheduler = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("MQTT Host Ping"));
+		connectors = new ScheduledThreadPoolExecutor(connectThreads, new NamedThreadFactory("MQTT Host Con"));
+		selector = Selector.open();
+		selectorThread = new Thread(new Runnable() {
+			public void run() {
+				select();
+			}
+		}, "MQTT Host Selector");
+		selectorThread.start();
+	}
+
+	/**
+	 * @return the worker threads, on which hosted tasks run
+	 */
+	public Executor getWorkers() {
+		return workers;
+	}
+
+	/**
+	 * @return the thread for scheduling keep alive pings
+	 */
+	public ScheduledExecutorService getScheduler() {
+		return scheduler;
+	}
+
+	/**
+	 * @return the threads for connecting and disconnecting
+	 */
+	public ScheduledExecutorService getConnectors() {
+		return connectors;
+	}
+
+	/**
+	 * Asks for the task to be signalled once the channel has data to read.
+	 * The channel is watched for one signal only, so the task arms it again
+	 * each time it has read everything there was.
+	 * @param channel a channel in non-blocking mode
+	 * @param task the task that reads from the channel
+	 */
+	public void arm(SocketChannel channel, HostedTask task) {
+		registrations.add(new Registration(channel, task));
+		selector.wakeup();
+	}
+
+	/**
+	 * Stops watching the channel, so that it can be closed.
+	 * @param channel a channel previously armed
+	 */
+	public void release(SocketChannel channel) {
+		registrations.add(new Registration(channel, null));
+		selector.wakeup();
+	}
+
+	private void select() {
+		final String methodName = "select";
+		try {
+			while (!closed) {
+				selector.select();
+				Registration registration;
+				while ((registration = registrations.poll()) != null) {
+					register(registration);
+				}
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					try {
+						key.interestOps(0);
+					} catch (CancelledKeyException e) {
+						// the channel was closed, which the read will find out
+					}
+					((HostedTask) key.attachment()).signal();
+				}
+			}
+		} catch (IOException ex) {
+			// @TRACE 258=client host selector failed
+			log.fine(CLASS_NAME, methodName, "258", null, ex);
+		} catch (ClosedSelectorException ex) {
+			// the host has been closed
+		}
+	}
+
+	private void register(Registration registration) {
+		SelectionKey key = registration.channel.keyFor(selector);
+		try {
+			if (registration.task == null) {
+				if (key != null) {
+					key.cancel();
+				}
+			} else if (key == null) {
+				registration.channel.register(selector, SelectionKey.OP_READ, registration.task);
+			} else {
+				key.interestOps(SelectionKey.OP_READ);
+			}
+		} catch (ClosedChannelException | CancelledKeyException e) {
+			// let the task find out that the channel is closed
+			if (registration.task != null) {
+				registration.task.signal();
+			}
+		}
+	}
+
+	/**
+	 * Stops the threads. Work still queued is dropped.
+	 */
+	public void shutdown() {
+		closed = true;
+		try {
+			selector.close();
+		} catch (IOException e) {
+			// the selector thread ends anyway
+		}
+		shutdown(connectors);
+		shutdown(scheduler);
+		shutdown(workers);
+	}
+
+	private void shutdown(ExecutorService executor) {
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+				executor.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static class Registration {
+		final SocketChannel channel;
+		final HostedTask task;
+
+		Registration(SocketChannel channel, HostedTask task) {
+			this.channel = channel;
+			this.task = task;
+		}
+	}
+
+	private static class NamedThreadFactory implements ThreadFactory {
+		private final String prefix;
+		private final AtomicInteger count = new AtomicInteger(0);
+
+		NamedThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		public Thread newThread(Runnable runnable) {
+			return new Thread(runnable, prefix + "-" + count.incrementAndGet());
+		}
+	}
+}
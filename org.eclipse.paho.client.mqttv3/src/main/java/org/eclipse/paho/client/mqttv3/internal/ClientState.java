@@ -22,21 +22,30 @@
 package org.eclipse.paho.client.mqttv3.internal;
 
 import java.io.EOFException;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Properties;
 import java.util.Vector;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.eclipse.paho.client.mqttv3.IMqttActionListener;
 import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttBatchPersistence;
+import org.eclipse.paho.client.mqttv3.MqttBufferPool;
 import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
+import org.eclipse.paho.client.mqttv3.MqttConcurrentPersistence;
 import org.eclipse.paho.client.mqttv3.MqttDeliveryToken;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.eclipse.paho.client.mqttv3.MqttPersistable;
 import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
 import org.eclipse.paho.client.mqttv3.MqttPingSender;
+import org.eclipse.paho.client.mqttv3.MqttStreamingCallback;
 import org.eclipse.paho.client.mqttv3.MqttToken;
 import org.eclipse.paho.client.mqttv3.internal.wire.MqttAck;
 import org.eclipse.paho.client.mqttv3.internal.wire.MqttConnack;
@@ -55,6 +64,7 @@ import org.eclipse.paho.client.mqttv3.internal.wire.MqttUnsubscribe;
 import org.eclipse.paho.client.mqttv3.internal.wire.MqttWireMessage;
 import org.eclipse.paho.client.mqttv3.logging.Logger;
 import org.eclipse.paho.client.mqttv3.logging.LoggerFactory;
+import org.eclipse.paho.client.mqttv3.metrics.MqttClientMetrics;
 
 /**
  * The core of the client, which holds the state information for pending and
@@ -111,10 +121,10 @@ public class ClientState {
 	private static final int MIN_MSG_ID = 1;		// Lowest possible MQTT message ID to use
 	private static final int MAX_MSG_ID = 65535;	// Highest possible MQTT message ID to use
 	private int nextMsgId = MIN_MSG_ID - 1;			// The next available message ID to use
-	private Hashtable inUseMsgIds;					// Used to store a set of in-use message IDs
+	private Hashtable<Integer, Integer> inUseMsgIds;					// Used to store a set of in-use message IDs
 
-	volatile private Vector pendingMessages;
-	volatile private Vector pendingFlows;
+	volatile private Vector<MqttWireMessage> pendingMessages;
+	volatile private Vector<MqttWireMessage> pendingFlows;
 	
 	private CommsTokenStore tokenStore;
 	private ClientComms clientComms = null;
@@ -123,13 +133,24 @@ public class ClientState {
 	private boolean cleanSession;
 	private MqttClientPersistence persistence;
 	private HighResolutionTimer highResolutionTimer;
+	private final MqttClientMetrics metrics;
 	
 	private int maxInflight = 0;	
+	private MqttBufferPool bufferPool = null;
+	private boolean asyncPersistence = false;
+	private PersistenceWriter persistenceWriter = null;	// guarded by queueLock
+	private MqttStreamingCallback streamingCallback = null;
+	private int streamingThreshold = Integer.MAX_VALUE;
 	private int actualInFlight = 0;
 	private int inFlightPubRels = 0;
 	
-	private final Object queueLock = new Object();
-	private final Object quiesceLock = new Object();
+	// Locks rather than monitors, so that comms threads that wait for work
+	// do not pin the carrier of a virtual thread
+	private final ReentrantLock queueLock = new ReentrantLock();
+	private final Condition workAvailable = queueLock.newCondition();
+	private volatile HostedTask sendTask = null;
+	private final ReentrantLock quiesceLock = new ReentrantLock();
+	private final Condition quiesced = quiesceLock.newCondition();
 	private boolean quiescing = false;
 	
 	private long lastOutboundActivity = 0;			// nanoseconds absolute time
@@ -141,10 +162,10 @@ public class ClientState {
 
 	private boolean connected = false;
 	
-	private Hashtable outboundQoS2 = null;
-	private Hashtable outboundQoS1 = null;
-	private Hashtable outboundQoS0 = null;
-	private Hashtable inboundQoS2 = null;
+	private Hashtable<Integer, MqttWireMessage> outboundQoS2 = null;
+	private Hashtable<Integer, MqttWireMessage> outboundQoS1 = null;
+	private Hashtable<Integer, MqttWireMessage> outboundQoS0 = null;
+	private Hashtable<Integer, MqttWireMessage> inboundQoS2 = null;
 	
 	private MqttPingSender pingSender = null;
 
@@ -155,12 +176,12 @@ public class ClientState {
 		log.setResourceName(clientComms.getClient().getClientId());
 		log.finer(CLASS_NAME, "<Init>", "" );
 
-		inUseMsgIds = new Hashtable();
-		pendingFlows = new Vector();
-		outboundQoS2 = new Hashtable();
-		outboundQoS1 = new Hashtable();
-		outboundQoS0 = new Hashtable();
-		inboundQoS2 = new Hashtable();
+		inUseMsgIds = new Hashtable<Integer, Integer>();
+		pendingFlows = new Vector<MqttWireMessage>();
+		outboundQoS2 = new Hashtable<Integer, MqttWireMessage>();
+		outboundQoS1 = new Hashtable<Integer, MqttWireMessage>();
+		outboundQoS0 = new Hashtable<Integer, MqttWireMessage>();
+		inboundQoS2 = new Hashtable<Integer, MqttWireMessage>();
 		pingCommand = new MqttPingReq();
 		inFlightPubRels = 0;
 		actualInFlight = 0;
@@ -169,6 +190,7 @@ public class ClientState {
 		this.callback = callback;
 		this.tokenStore = tokenStore;
 		this.clientComms = clientComms;
+		this.metrics = clientComms.getMetrics();
 		this.pingSender = pingSender;
 		this.highResolutionTimer = highResolutionTimer;
 		
@@ -177,7 +199,7 @@ public class ClientState {
 	
 	protected void setMaxInflight(int maxInflight) {
         this.maxInflight = maxInflight;
-        pendingMessages = new Vector(this.maxInflight);
+        pendingMessages = new Vector<MqttWireMessage>(this.maxInflight);
     }
     protected void setKeepAliveSecs(long keepAliveSecs) {
 		this.keepAliveNanos = TimeUnit.SECONDS.toNanos(keepAliveSecs);
@@ -189,6 +211,34 @@ public class ClientState {
 	protected long getKeepAlive() {
 		return TimeUnit.NANOSECONDS.toMillis(this.keepAliveNanos);
 	}
+	protected void setBufferPool(MqttBufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+	protected void setAsyncPersistence(boolean asyncPersistence) {
+		this.asyncPersistence = asyncPersistence;
+	}
+	/**
+	 * @return the pool inbound publish payloads are read into, or null
+	 */
+	public MqttBufferPool getBufferPool() {
+		return this.bufferPool;
+	}
+	protected void setStreamingCallback(MqttStreamingCallback streamingCallback, int streamingThreshold) {
+		this.streamingCallback = streamingCallback;
+		this.streamingThreshold = streamingThreshold;
+	}
+	/**
+	 * @return the callback large inbound payloads are streamed to, or null
+	 */
+	public MqttStreamingCallback getStreamingCallback() {
+		return this.streamingCallback;
+	}
+	/**
+	 * @return the packet size from which inbound payloads are streamed
+	 */
+	public int getStreamingThreshold() {
+		return this.streamingThreshold;
+	}
 	protected void setCleanSession(boolean cleanSession) {
 		this.cleanSession = cleanSession;
 	}
@@ -225,6 +275,7 @@ public class ClientState {
 		//@TRACE 603=clearState
 		log.fine(CLASS_NAME, methodName,">");
 
+		cancelPersistence();
 		persistence.clear();
 		inUseMsgIds.clear();
 		pendingMessages.clear();
@@ -233,9 +284,20 @@ public class ClientState {
 		outboundQoS1.clear();
 		outboundQoS0.clear();
 		inboundQoS2.clear();
+		releasePayloads();
 		tokenStore.clear();
 	}
 	
+	/**
+	 * Hands back the pooled payloads of the tokens about to be dropped, whose
+	 * messages will not be sent again.
+	 */
+	private void releasePayloads() {
+		for (Object token : tokenStore.getOutstandingTokens()) {
+			((MqttToken) token).internalTok.releasePayload();
+		}
+	}
+
 	private MqttWireMessage restoreMessage(String key, MqttPersistable persistable) throws MqttException {
 		final String methodName = "restoreMessage";
 		MqttWireMessage message = null;
@@ -245,11 +307,13 @@ public class ClientState {
 		}
 		catch (MqttException ex) {
 			//@TRACE 602=key={0} exception
-			log.fine(CLASS_NAME, methodName, "602", new Object[] {key}, ex);
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "602", new Object[] {key}, ex);
+			}
 			if (ex.getCause() instanceof EOFException) {
 				// Premature end-of-file means that the message is corrupted
 				if (key != null) {
-					persistence.remove(key);
+					unpersist(key);
 				}
 			}
 			else {
@@ -257,26 +321,33 @@ public class ClientState {
 			}
 		}
 		//@TRACE 601=key={0} message={1}
-		log.fine(CLASS_NAME, methodName, "601", new Object[]{key,message});
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "601", new Object[]{key,message});
+		}
 		return message;
 	}
 
 	/**
-	 * Inserts a new message to the list, ensuring that list is ordered from lowest to highest in terms of the message id's.
-	 * @param list the list to insert the message into
-	 * @param newMsg the message to insert into the list
+	 * Orders a list of messages from the lowest to the highest message id.
+	 * @param list the list to sort
 	 */
-	private void insertInOrder(Vector list, MqttWireMessage newMsg) {
-		int newMsgId = newMsg.getMessageId();
-		for (int i = 0; i < list.size(); i++) {
-			MqttWireMessage otherMsg = (MqttWireMessage) list.elementAt(i);
-			int otherMsgId = otherMsg.getMessageId();
-			if (otherMsgId > newMsgId) {
-				list.insertElementAt(newMsg, i);
-				return;
+	private void sortById(Vector<MqttWireMessage> list) {
+		Collections.sort(list, new Comparator<MqttWireMessage>() {
+			public int compare(MqttWireMessage first, MqttWireMessage second) {
+				return Integer.compare(first.getMessageId(), second.getMessageId());
 			}
-		}
-		list.addElement(newMsg);
+		});
+	}
+
+	/**
+	 * Reads a persisted message and decodes it. Called by the threads of a
+	 * {@link PersistenceReader} while the state is restored.
+	 * @param key the key of the message
+	 * @return the message, or null if it was corrupt and has been removed
+	 * @throws MqttException if the message could not be read
+	 */
+	MqttWireMessage readMessage(String key) throws MqttException {
+		return restoreMessage(key, persistence.get(key));
 	}
 
 	/**
@@ -285,10 +356,10 @@ public class ClientState {
 	 * - this will not be modified or replaced, i.e., be read-only to this method
 	 * @return a new reordered list
 	 */
-	private Vector reOrder(Vector list) {
+	private Vector<MqttWireMessage> reOrder(Vector<MqttWireMessage> list) {
 
 		// here up the new list
-		Vector newList = new Vector();
+		Vector<MqttWireMessage> newList = new Vector<MqttWireMessage>();
 
 		if (list.size() == 0) {
 			return newList; // nothing to reorder
@@ -298,14 +369,14 @@ public class ClientState {
 		int largestGap = 0;
 		int largestGapMsgIdPosInList = 0;
 		for (int i = 0; i < list.size(); i++) {
-			int currentMsgId = ((MqttWireMessage) list.elementAt(i)).getMessageId();
+			int currentMsgId = list.elementAt(i).getMessageId();
 			if (currentMsgId - previousMsgId > largestGap) {
 				largestGap = currentMsgId - previousMsgId;
 				largestGapMsgIdPosInList = i;
 			}
 			previousMsgId = currentMsgId;
 		}
-		int lowestMsgId = ((MqttWireMessage) list.elementAt(0)).getMessageId();
+		int lowestMsgId = list.elementAt(0).getMessageId();
 		int highestMsgId = previousMsgId; // last in the sorted list
 		
 		// we need to check that the gap after highest msg id to the lowest msg id is not beaten
@@ -327,48 +398,76 @@ public class ClientState {
 	}
 	
 	/**
-	 * Restores the state information from persistence.
+	 * Restores the state information from persistence. The persisted
+	 * messages are read and decoded by a {@link PersistenceReader}, in
+	 * parallel if the persistence is a {@link MqttConcurrentPersistence},
+	 * and each is then filed in the tables in turn.
 	 * @throws MqttException if an exception occurs whilst restoring state
 	 */
 	protected void restoreState() throws MqttException {
 		final String methodName = "restoreState";
 		Enumeration messageKeys = persistence.keys();
-		MqttPersistable persistable;
 		String key;
 		int highestMsgId = nextMsgId;
 		Vector orphanedPubRels = new Vector();
 		//@TRACE 600=>
 		log.fine(CLASS_NAME, methodName, "600");
-		
+
+		Vector<String> keyList = new Vector<String>();
 		while (messageKeys.hasMoreElements()) {
-			key = (String) messageKeys.nextElement();
-			persistable = persistence.get(key);
-			MqttWireMessage message = restoreMessage(key, persistable);
+			keyList.addElement((String) messageKeys.nextElement());
+		}
+		String[] keys = keyList.toArray(new String[keyList.size()]);
+		MqttWireMessage[] messages = new PersistenceReader(this, clientComms, keys,
+				persistence instanceof MqttConcurrentPersistence).read();
+		// The messages by key, without those that were corrupt and removed,
+		// to look up the confirms of sent messages without reading them again
+		HashSet<String> persisted = new HashSet<String>(keyList);
+		Hashtable<String, MqttWireMessage> restored = new Hashtable<String, MqttWireMessage>();
+		for (int i = 0; i < keys.length; i++) {
+			if (messages[i] != null) {
+				restored.put(keys[i], messages[i]);
+			}
+		}
+
+		for (int i = 0; i < keys.length; i++) {
+			key = keys[i];
+			MqttWireMessage message = messages[i];
 			if (message != null) {
 				if (key.startsWith(PERSISTENCE_RECEIVED_PREFIX)) {
 					//@TRACE 604=inbound QoS 2 publish key={0} message={1}
-					log.fine(CLASS_NAME,methodName,"604", new Object[]{key,message});
+					if (log.isLoggable(Logger.FINE)) {
+						log.fine(CLASS_NAME,methodName,"604", new Object[]{key,message});
+					}
 
 					// The inbound messages that we have persisted will be QoS 2 
 					inboundQoS2.put( Integer.valueOf(message.getMessageId()),message);
 				} else if (key.startsWith(PERSISTENCE_SENT_PREFIX)) {
 					MqttPublish sendMessage = (MqttPublish) message;
 					highestMsgId = Math.max(sendMessage.getMessageId(), highestMsgId);
-					if (persistence.containsKey(getSendConfirmPersistenceKey(sendMessage))) {
-						MqttPersistable persistedConfirm = persistence.get(getSendConfirmPersistenceKey(sendMessage));
+					String confirmKey = getSendConfirmPersistenceKey(sendMessage);
+					if (persisted.contains(confirmKey)) {
 						// QoS 2, and CONFIRM has already been sent...
 						// NO DUP flag is allowed for 3.1.1 spec while it's not clear for 3.1 spec
 						// So we just remove DUP
-						MqttPubRel confirmMessage = (MqttPubRel) restoreMessage(key, persistedConfirm);
+						MqttPubRel confirmMessage = (MqttPubRel) restored.get(confirmKey);
+						if (confirmMessage == null) {
+							// the confirm was corrupt, so the send is removed too
+							unpersist(key);
+						}
 						if (confirmMessage != null) {
 							// confirmMessage.setDuplicate(true); // REMOVED
 							//@TRACE 605=outbound QoS 2 pubrel key={0} message={1}
-							log.fine(CLASS_NAME,methodName, "605", new Object[]{key,message});
+							if (log.isLoggable(Logger.FINE)) {
+								log.fine(CLASS_NAME,methodName, "605", new Object[]{key,message});
+							}
 
 							outboundQoS2.put( Integer.valueOf(confirmMessage.getMessageId()), confirmMessage);
 						} else {
 							//@TRACE 606=outbound QoS 2 completed key={0} message={1}
-							log.fine(CLASS_NAME,methodName, "606", new Object[]{key,message});
+							if (log.isLoggable(Logger.FINE)) {
+								log.fine(CLASS_NAME,methodName, "606", new Object[]{key,message});
+							}
 						}
 					} else {
 						// QoS 1 or 2, with no CONFIRM sent...
@@ -376,12 +475,16 @@ public class ClientState {
 						sendMessage.setDuplicate(true);
 						if (sendMessage.getMessage().getQos() == 2) {
 							//@TRACE 607=outbound QoS 2 publish key={0} message={1}
-							log.fine(CLASS_NAME,methodName, "607", new Object[]{key,message});
+							if (log.isLoggable(Logger.FINE)) {
+								log.fine(CLASS_NAME,methodName, "607", new Object[]{key,message});
+							}
 							
 							outboundQoS2.put( Integer.valueOf(sendMessage.getMessageId()),sendMessage);
 						} else {
 							//@TRACE 608=outbound QoS 1 publish key={0} message={1}
-							log.fine(CLASS_NAME,methodName, "608", new Object[]{key,message});
+							if (log.isLoggable(Logger.FINE)) {
+								log.fine(CLASS_NAME,methodName, "608", new Object[]{key,message});
+							}
 
 							outboundQoS1.put( Integer.valueOf(sendMessage.getMessageId()),sendMessage);
 						}
@@ -396,20 +499,26 @@ public class ClientState {
 					highestMsgId = Math.max(sendMessage.getMessageId(), highestMsgId);
 					if(sendMessage.getMessage().getQos() == 2){
 						//@TRACE 607=outbound QoS 2 publish key={0} message={1}
-						log.fine(CLASS_NAME,methodName, "607", new Object[]{key,message});
+						if (log.isLoggable(Logger.FINE)) {
+							log.fine(CLASS_NAME,methodName, "607", new Object[]{key,message});
+						}
 						outboundQoS2.put( Integer.valueOf(sendMessage.getMessageId()),sendMessage);
 					} else if(sendMessage.getMessage().getQos() == 1){
 						//@TRACE 608=outbound QoS 1 publish key={0} message={1}
-						log.fine(CLASS_NAME,methodName, "608", new Object[]{key,message});
+						if (log.isLoggable(Logger.FINE)) {
+							log.fine(CLASS_NAME,methodName, "608", new Object[]{key,message});
+						}
 
 						outboundQoS1.put( Integer.valueOf(sendMessage.getMessageId()),sendMessage);
 						
 					} else {
 						//@TRACE 511=outbound QoS 0 publish key={0} message={1}
-						log.fine(CLASS_NAME,methodName, "511", new Object[]{key,message});
+						if (log.isLoggable(Logger.FINE)) {
+							log.fine(CLASS_NAME,methodName, "511", new Object[]{key,message});
+						}
 						outboundQoS0.put( Integer.valueOf(sendMessage.getMessageId()), sendMessage);
 						// Because there is no Puback, we have to trust that this is enough to send the message
-						persistence.remove(key);
+						unpersist(key);
 						
 					}
 					
@@ -420,7 +529,7 @@ public class ClientState {
 					
 				} else if (key.startsWith(PERSISTENCE_CONFIRMED_PREFIX)) {
 					MqttPubRel pubRelMessage = (MqttPubRel) message;
-					if (!persistence.containsKey(getSendPersistenceKey(pubRelMessage))) {
+					if (!restored.containsKey(getSendPersistenceKey(pubRelMessage))) {
 						orphanedPubRels.addElement(key);
 					}
 				}
@@ -431,9 +540,11 @@ public class ClientState {
 		while(messageKeys.hasMoreElements()) {
 			key = (String) messageKeys.nextElement();
 			//@TRACE 609=removing orphaned pubrel key={0}
-			log.fine(CLASS_NAME,methodName, "609", new Object[]{key});
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME,methodName, "609", new Object[]{key});
+			}
 
-			persistence.remove(key);
+			unpersist(key);
 		}
 		
 		nextMsgId = highestMsgId;
@@ -441,24 +552,28 @@ public class ClientState {
 	
 	private void restoreInflightMessages() {
 		final String methodName = "restoreInflightMessages";
-		pendingMessages = new Vector(this.maxInflight);
-		pendingFlows = new Vector();
+		pendingMessages = new Vector<MqttWireMessage>(this.maxInflight);
+		pendingFlows = new Vector<MqttWireMessage>();
 
 		Enumeration keys = outboundQoS2.keys();
 		while (keys.hasMoreElements()) {
 			Object key = keys.nextElement();
-			MqttWireMessage msg = (MqttWireMessage) outboundQoS2.get(key);
+			MqttWireMessage msg = outboundQoS2.get(key);
 			if (msg instanceof MqttPublish) {
 				//@TRACE 610=QoS 2 publish key={0}
-				log.fine(CLASS_NAME,methodName, "610", new Object[]{key});
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME,methodName, "610", new Object[]{key});
+				}
                 // set DUP flag only for PUBLISH, but NOT for PUBREL (spec 3.1.1)
 				msg.setDuplicate(true);  
-				insertInOrder(pendingMessages, (MqttPublish)msg);
+				pendingMessages.addElement(msg);
 			} else if (msg instanceof MqttPubRel) {
 				//@TRACE 611=QoS 2 pubrel key={0}
-				log.fine(CLASS_NAME,methodName, "611", new Object[]{key});
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME,methodName, "611", new Object[]{key});
+				}
 
-				insertInOrder(pendingFlows, (MqttPubRel)msg);
+				pendingFlows.addElement(msg);
 			}
 		}
 		keys = outboundQoS1.keys();
@@ -467,20 +582,26 @@ public class ClientState {
 			MqttPublish msg = (MqttPublish)outboundQoS1.get(key);
 			msg.setDuplicate(true);
 			//@TRACE 612=QoS 1 publish key={0}
-			log.fine(CLASS_NAME,methodName, "612", new Object[]{key});
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME,methodName, "612", new Object[]{key});
+			}
 
-			insertInOrder(pendingMessages, msg);
+			pendingMessages.addElement(msg);
 		}
 		keys = outboundQoS0.keys();
 		while(keys.hasMoreElements()){
 			Object key = keys.nextElement();
 			MqttPublish msg = (MqttPublish)outboundQoS0.get(key);
 			//@TRACE 512=QoS 0 publish key={0}
-			log.fine(CLASS_NAME,methodName, "512", new Object[]{key});
-			insertInOrder(pendingMessages, msg);
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME,methodName, "512", new Object[]{key});
+			}
+			pendingMessages.addElement(msg);
 			
 		}
 		
+		sortById(pendingFlows);
+		sortById(pendingMessages);
 		this.pendingFlows = reOrder(pendingFlows);
 		this.pendingMessages = reOrder(pendingMessages);
 	}
@@ -519,27 +640,37 @@ public class ClientState {
 		}
 			
 		if (message instanceof MqttPublish) {
-			synchronized (queueLock) {
+			queueLock.lock();
+			try {
 				if (actualInFlight >= this.maxInflight) {
 					//@TRACE 613= sending {0} msgs at max inflight window
-					log.fine(CLASS_NAME, methodName, "613", new Object[]{ Integer.valueOf(actualInFlight)});
+					if (log.isLoggable(Logger.FINE)) {
+						log.fine(CLASS_NAME, methodName, "613", new Object[]{ Integer.valueOf(actualInFlight)});
+					}
 
 					throw new MqttException(MqttException.REASON_CODE_MAX_INFLIGHT);
 				}
 				
 				MqttMessage innerMessage = ((MqttPublish) message).getMessage();
 				//@TRACE 628=pending publish key={0} qos={1} message={2}
-				log.fine(CLASS_NAME,methodName,"628", new Object[]{ Integer.valueOf(message.getMessageId()),  Integer.valueOf(innerMessage.getQos()), message});
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME,methodName,"628", new Object[]{ Integer.valueOf(message.getMessageId()),  Integer.valueOf(innerMessage.getQos()), message});
+				}
 
+				if (asyncPersistence) {
+					tokenStore.saveToken(token, message);
+					getPersistenceWriter().add(new MqttPublish[] {(MqttPublish) message});
+					return;
+				}
 				switch(innerMessage.getQos()) {
 					case 2:
 						outboundQoS2.put( Integer.valueOf(message.getMessageId()), message);
-						persistence.put(getSendPersistenceKey(message), (MqttPublish) message);
+						persist(getSendPersistenceKey(message), (MqttPublish) message);
 						tokenStore.saveToken(token, message);
 						break;
 					case 1:
 						outboundQoS1.put( Integer.valueOf(message.getMessageId()), message);
-						persistence.put(getSendPersistenceKey(message), (MqttPublish) message);
+						persist(getSendPersistenceKey(message), (MqttPublish) message);
 						tokenStore.saveToken(token, message);
 						break;
 					case 0:
@@ -547,19 +678,26 @@ public class ClientState {
 						break;
 				}
 				pendingMessages.addElement(message);
-				queueLock.notifyAll();
+				notifyWork();
+			} finally {
+				queueLock.unlock();
 			}
 		} else {
 			//@TRACE 615=pending send key={0} message {1}
-			log.fine(CLASS_NAME,methodName,"615", new Object[]{ Integer.valueOf(message.getMessageId()), message});
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME,methodName,"615", new Object[]{ Integer.valueOf(message.getMessageId()), message});
+			}
 			
 			if (message instanceof MqttConnect) {
-				synchronized (queueLock) {
+				queueLock.lock();
+				try {
 					// Add the connect action at the head of the pending queue ensuring it jumps
 					// ahead of any of other pending actions.
 					tokenStore.saveToken(token, message);
 					pendingFlows.insertElementAt(message,0);
-					queueLock.notifyAll();
+					notifyWork();
+				} finally {
+					queueLock.unlock();
 				}
 			} else {
 				if (message instanceof MqttPingReq) {
@@ -567,23 +705,259 @@ public class ClientState {
 				}
 				else if (message instanceof MqttPubRel) {
 					outboundQoS2.put( Integer.valueOf(message.getMessageId()), message);
-					persistence.put(getSendConfirmPersistenceKey(message), (MqttPubRel) message);
+					persist(getSendConfirmPersistenceKey(message), (MqttPubRel) message);
 				}
 				else if (message instanceof MqttPubComp)  {
-					persistence.remove(getReceivedPersistenceKey(message));
+					unpersist(getReceivedPersistenceKey(message));
 				}
 				
-				synchronized (queueLock) {
+				queueLock.lock();
+				try {
 					if ( !(message instanceof MqttAck )) {
 						tokenStore.saveToken(token, message);
 					}
 					pendingFlows.addElement(message);
-					queueLock.notifyAll();
+					notifyWork();
+				} finally {
+					queueLock.unlock();
 				}
 			}
 		}
 	}
 	
+	/**
+	 * Submits a batch of publish messages for delivery, taking the queue lock
+	 * once for the whole batch rather than once per message.
+	 * <p>
+	 * Either every message in the batch is queued or, if an exception is
+	 * thrown, none of them is. The QoS 1 and 2 messages are persisted with a
+	 * single call when the persistence implements {@link MqttBatchPersistence}.
+	 * Messages beyond the inflight window wait in the pending queue as usual.
+	 * </p>
+	 * @param messages the messages to send
+	 * @param tokens the tokens tracking each message, in the same order
+	 * @throws MqttException if the batch could not be queued
+	 */
+	public void sendBatch(MqttPublish[] messages, MqttToken[] tokens) throws MqttException {
+		final String methodName = "sendBatch";
+		int assigned = 0;
+		try {
+			for (int i = 0; i < messages.length; i++) {
+				if (messages[i].getMessage().getQos() != 0 && messages[i].getMessageId() == 0) {
+					messages[i].setMessageId(getNextMessageId());
+				}
+				assigned = i + 1;
+				messages[i].setToken(tokens[i]);
+				tokens[i].internalTok.setMessageID(messages[i].getMessageId());
+			}
+
+			queueLock.lock();
+			try {
+				if (actualInFlight >= this.maxInflight) {
+					//@TRACE 613= sending {0} msgs at max inflight window
+					if (log.isLoggable(Logger.FINE)) {
+						log.fine(CLASS_NAME, methodName, "613", new Object[]{ Integer.valueOf(actualInFlight)});
+					}
+
+					throw new MqttException(MqttException.REASON_CODE_MAX_INFLIGHT);
+				}
+				//@TRACE 663=pending publish batch of {0} messages
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME, methodName, "663", new Object[]{ Integer.valueOf(messages.length)});
+				}
+
+				if (asyncPersistence) {
+					for (int i = 0; i < messages.length; i++) {
+						tokenStore.saveToken(tokens[i], messages[i]);
+					}
+					getPersistenceWriter().add(messages);
+					return;
+				}
+				persistBatch(messages);
+				for (int i = 0; i < messages.length; i++) {
+					MqttPublish message = messages[i];
+					switch (message.getMessage().getQos()) {
+						case 2:
+							outboundQoS2.put( Integer.valueOf(message.getMessageId()), message);
+							break;
+						case 1:
+							outboundQoS1.put( Integer.valueOf(message.getMessageId()), message);
+							break;
+					}
+					tokenStore.saveToken(tokens[i], message);
+					pendingMessages.addElement(message);
+				}
+				notifyWork();
+			} finally {
+				queueLock.unlock();
+			}
+		} catch (MqttException ex) {
+			for (int i = 0; i < assigned; i++) {
+				if (messages[i].getMessage().getQos() > 0) {
+					releaseMessageId(messages[i].getMessageId());
+					messages[i].setMessageId(0);
+				}
+			}
+			throw ex;
+		}
+	}
+
+	/**
+	 * Persists the QoS 1 and 2 messages of a batch, all or none.
+	 * @param messages the batch
+	 * @throws MqttPersistenceException if the messages could not be persisted
+	 */
+	private void persistBatch(MqttPublish[] messages) throws MqttPersistenceException {
+		int count = 0;
+		for (int i = 0; i < messages.length; i++) {
+			if (messages[i].getMessage().getQos() > 0) {
+				count++;
+			}
+		}
+		String[] keys = new String[count];
+		MqttPublish[] persistables = new MqttPublish[count];
+		count = 0;
+		for (int i = 0; i < messages.length; i++) {
+			if (messages[i].getMessage().getQos() > 0) {
+				keys[count] = getSendPersistenceKey(messages[i]);
+				persistables[count++] = messages[i];
+			}
+		}
+		if (count == 0) {
+			return;
+		}
+		if (persistence instanceof MqttBatchPersistence) {
+			long start = System.nanoTime();
+			((MqttBatchPersistence) persistence).putAll(keys, persistables);
+			metrics.persistencePut(System.nanoTime() - start);
+			return;
+		}
+		int written = 0;
+		try {
+			for (; written < count; written++) {
+				persist(keys[written], persistables[written]);
+			}
+		} catch (MqttPersistenceException ex) {
+			for (int i = 0; i < written; i++) {
+				try {
+					unpersist(keys[i]);
+				} catch (MqttPersistenceException e) {
+				}
+			}
+			throw ex;
+		}
+	}
+
+	/**
+	 * Returns the writer that persists publishes in the background, creating
+	 * it if there is none. Called holding the queue lock.
+	 */
+	private PersistenceWriter getPersistenceWriter() {
+		if (persistenceWriter == null) {
+			persistenceWriter = new PersistenceWriter(this, clientComms);
+		}
+		return persistenceWriter;
+	}
+
+	/**
+	 * Drops the publishes waiting to be persisted in the background, as
+	 * their state is being cleared. Any batch being persisted is removed
+	 * from persistence again once it has been.
+	 */
+	private void cancelPersistence() {
+		queueLock.lock();
+		try {
+			if (persistenceWriter != null) {
+				persistenceWriter.cancel();
+				persistenceWriter = null;
+			}
+		} finally {
+			queueLock.unlock();
+		}
+	}
+
+	/**
+	 * Persists a batch of publishes queued by asynchronous persistence, and
+	 * then queues them to be sent. Called on the writer's thread; only the
+	 * queueing takes the queue lock, so publishers and the sender are not
+	 * held up while the persistence works.
+	 * <p>
+	 * If the batch cannot be persisted, the delivery tokens of its QoS 1 and
+	 * 2 publishes are completed with the exception. If the writer was
+	 * cancelled, or a publish was given up on, while the batch was being
+	 * persisted, those publishes are removed from persistence again.
+	 * </p>
+	 * @param writer the writer the batch was queued on
+	 * @param batch the publishes, in the order they are to be sent
+	 */
+	void persistQueued(PersistenceWriter writer, MqttPublish[] batch) {
+		final String methodName = "persistQueued";
+		MqttPersistenceException failure = null;
+		try {
+			persistBatch(batch);
+		} catch (MqttPersistenceException ex) {
+			failure = ex;
+		}
+
+		Vector<MqttToken> failed = new Vector<MqttToken>();
+		Vector<MqttPublish> abandoned = new Vector<MqttPublish>();
+		queueLock.lock();
+		try {
+			boolean cancelled = (writer != persistenceWriter);
+			for (int i = 0; i < batch.length; i++) {
+				MqttPublish message = batch[i];
+				int qos = message.getMessage().getQos();
+				if (cancelled) {
+					if (qos > 0) {
+						abandoned.addElement(message);
+					}
+				} else if (qos == 0) {
+					pendingMessages.addElement(message);
+				} else if (tokenStore.getToken(message) == null) {
+					// the publish was given up on while it was persisted
+					abandoned.addElement(message);
+				} else if (failure != null) {
+					failed.addElement(tokenStore.removeToken(message));
+					releaseMessageId(message.getMessageId());
+					message.setMessageId(0);
+				} else {
+					if (qos == 2) {
+						outboundQoS2.put( Integer.valueOf(message.getMessageId()), message);
+					} else {
+						outboundQoS1.put( Integer.valueOf(message.getMessageId()), message);
+					}
+					pendingMessages.addElement(message);
+				}
+			}
+			if (!cancelled) {
+				notifyWork();
+				if (!failed.isEmpty()) {
+					checkQuiesceLock();
+				}
+			}
+		} finally {
+			queueLock.unlock();
+		}
+
+		if (failure == null) {
+			for (int i = 0; i < abandoned.size(); i++) {
+				try {
+					unpersist(getSendPersistenceKey(abandoned.elementAt(i)));
+				} catch (MqttPersistenceException ex) {
+					// the persistence has been closed or cleared
+				}
+			}
+		}
+		for (int i = 0; i < failed.size(); i++) {
+			MqttToken token = failed.elementAt(i);
+			//@TRACE 664=failed to persist publish key={0}
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "664", new Object[]{ token.internalTok.getKey()}, failure);
+			}
+			notifyResult(null, token, failure);
+		}
+	}
+
 	/**
 	 * Persists a buffered message to the persistence layer
 	 * 
@@ -599,15 +973,17 @@ public class ClientState {
 			message.setMessageId(getNextMessageId());
 			key = getSendBufferedPersistenceKey(message);
 			try {
-				persistence.put(key, (MqttPublish) message);
+				persist(key, (MqttPublish) message);
 			} catch (MqttPersistenceException mpe){
 				//@TRACE 515=Could not Persist, attempting to Re-Open Persistence Store
 				log.fine(CLASS_NAME,methodName, "515");
 				persistence.open(this.clientComms.getClient().getClientId(), this.clientComms.getClient().getServerURI());
-				persistence.put(key, (MqttPublish) message);
+				persist(key, (MqttPublish) message);
 			}
 			//@TRACE 513=Persisted Buffered Message key={0}
-			log.fine(CLASS_NAME,methodName, "513", new Object[]{key});
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME,methodName, "513", new Object[]{key});
+			}
 		} catch (MqttException ex){
 			//@TRACE 514=Failed to persist buffered message key={0}
 			log.warning(CLASS_NAME,methodName, "514", new Object[]{key});
@@ -622,11 +998,15 @@ public class ClientState {
 		final String methodName = "unPersistBufferedMessage";
 		try{
 			//@TRACE 517=Un-Persisting Buffered message key={0}
-			log.fine(CLASS_NAME,methodName, "517", new Object[]{message.getKey()});
-			persistence.remove(getSendBufferedPersistenceKey(message));
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME,methodName, "517", new Object[]{message.getKey()});
+			}
+			unpersist(getSendBufferedPersistenceKey(message));
 		} catch (MqttPersistenceException mpe){
 			//@TRACE 518=Failed to Un-Persist Buffered message key={0}
-			log.fine(CLASS_NAME,methodName, "518", new Object[]{message.getKey()});
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME,methodName, "518", new Object[]{message.getKey()});
+			}
 		}
 		
 	}
@@ -638,9 +1018,12 @@ public class ClientState {
 	 */
 	protected void undo(MqttPublish message) throws MqttPersistenceException {
 		final String methodName = "undo";
-		synchronized (queueLock) {
+		queueLock.lock();
+		try {
 			//@TRACE 618=key={0} QoS={1} 
-			log.fine(CLASS_NAME,methodName,"618", new Object[]{ Integer.valueOf(message.getMessageId()),  Integer.valueOf(message.getMessage().getQos())});
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME,methodName,"618", new Object[]{ Integer.valueOf(message.getMessageId()),  Integer.valueOf(message.getMessage().getQos())});
+			}
 			
 			if (message.getMessage().getQos() == 1) {
 				outboundQoS1.remove( Integer.valueOf(message.getMessageId()));
@@ -648,7 +1031,7 @@ public class ClientState {
 				outboundQoS2.remove( Integer.valueOf(message.getMessageId()));
 			}
 			pendingMessages.removeElement(message);
-			persistence.remove(getSendPersistenceKey(message));
+			unpersist(getSendPersistenceKey(message));
 			tokenStore.removeToken(message);
 			if(message.getMessage().getQos() > 0){
 				//Free this message Id so it can be used again
@@ -658,6 +1041,8 @@ public class ClientState {
 			}
 
 			checkQuiesceLock();
+		} finally {
+			queueLock.unlock();
 		}
 	}
 	
@@ -672,7 +1057,8 @@ public class ClientState {
 		MqttMessage message = token.getMessage();
 		int messageId = token.getMessageId();
 		boolean result = false;
-		synchronized (queueLock) {
+		queueLock.lock();
+		try {
 			if (message.getQos() == 1) {
 				if (outboundQoS1.remove( Integer.valueOf(messageId)) != null) {
 					result = true;
@@ -686,11 +1072,13 @@ public class ClientState {
 			if (pendingMessages.removeElement(message)) {
 				result = true;
 			}
-			persistence.remove(getSendPersistenceKey(messageId));
+			unpersist(getSendPersistenceKey(messageId));
 			String key =  Integer.toString(messageId);
 			tokenStore.removeToken(key);
 			releaseMessageId(messageId);
 			decrementInFlight();
+		} finally {
+			queueLock.unlock();
 		}
 		return result;
 	}
@@ -713,14 +1101,19 @@ public class ClientState {
 	public MqttToken checkForActivity(IMqttActionListener pingCallback) throws MqttException {
 		final String methodName = "checkForActivity";
 		//@TRACE 616=checkForActivity entered
-		log.fine(CLASS_NAME,methodName,"616", new Object[]{});
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME,methodName,"616", new Object[]{});
+		}
 		
-        synchronized (quiesceLock) {
+        quiesceLock.lock();
+        try {
             // ref bug: https://bugs.eclipse.org/bugs/show_bug.cgi?id=440698
             // No ping while quiescing
             if (quiescing) {
                 return null;
             }
+        } finally {
+            quiesceLock.unlock();
         }
 
 		MqttToken token = null;
@@ -774,7 +1167,9 @@ public class ClientState {
                     (time - lastOutboundActivity >= keepAliveNanos - delta)) {
 
                     //@TRACE 620=ping needed. keepAlive={0} lastOutboundActivity={1} lastInboundActivity={2}                                                                                                              
-                    log.fine(CLASS_NAME,methodName,"620", new Object[]{ Long.valueOf(this.keepAliveNanos), Long.valueOf(lastOutboundActivity), Long.valueOf(lastInboundActivity)});
+                    if (log.isLoggable(Logger.FINE)) {
+                        log.fine(CLASS_NAME,methodName,"620", new Object[]{ Long.valueOf(this.keepAliveNanos), Long.valueOf(lastOutboundActivity), Long.valueOf(lastInboundActivity)});
+                    }
 
                     // pingOutstanding++;  // it will be set after the ping has been written on the wire                                                                                                             
                     // lastPing = time;    // it will be set after the ping has been written on the wire                                                                                                             
@@ -799,7 +1194,9 @@ public class ClientState {
                 }
             }
             //@TRACE 624=Schedule next ping at {0}                                                                                                                                                                                
-            log.fine(CLASS_NAME, methodName,"624", new Object[]{Long.valueOf(nextPingTime)});
+            if (log.isLoggable(Logger.FINE)) {
+                log.fine(CLASS_NAME, methodName,"624", new Object[]{Long.valueOf(nextPingTime)});
+            }
             pingSender.schedule(nextPingTime);
 		}
 		
@@ -821,7 +1218,8 @@ public class ClientState {
 		final String methodName = "get";
 		MqttWireMessage result = null;
 
-		synchronized (queueLock) {
+		queueLock.lock();
+		try {
 			while (result == null) {
 				
 				// If there is no work wait until there is work.
@@ -833,7 +1231,7 @@ public class ClientState {
 						//@TRACE 644=wait for new work or for space in the inflight window 
 						log.fine(CLASS_NAME,methodName, "644");						
  
-						queueLock.wait();
+						workAvailable.await();
 						
 						//@TRACE 647=new work or ping arrived 
 						log.fine(CLASS_NAME,methodName, "647");
@@ -845,7 +1243,7 @@ public class ClientState {
 				// - in the process of disconnecting / shutting down
 				// - in the process of connecting
 				if (pendingFlows == null || (!connected && 
-						(pendingFlows.isEmpty() || !((MqttWireMessage)pendingFlows.elementAt(0) instanceof MqttConnect)))) {
+						(pendingFlows.isEmpty() || !(pendingFlows.elementAt(0) instanceof MqttConnect)))) {
 					//@TRACE 621=no outstanding flows and not connected
 					log.fine(CLASS_NAME,methodName,"621");
 					
@@ -858,40 +1256,77 @@ public class ClientState {
 				// from functioning. 
 //				checkForActivity(); //Use pinger, don't check here
 				
-				// Now process any queued flows or messages
-				if (!pendingFlows.isEmpty()) {
-					// Process the first "flow" in the queue
-					result = (MqttWireMessage)pendingFlows.remove(0);
-					if (result instanceof MqttPubRel) {
-						inFlightPubRels++;
-
-						//@TRACE 617=+1 inflightpubrels={0}
-						log.fine(CLASS_NAME,methodName,"617", new Object[]{ Integer.valueOf(inFlightPubRels)});
-					}
-		
-					checkQuiesceLock();
-				} else if (!pendingMessages.isEmpty()) {
-					
-					// If the inflight window is full then messages are not 
-					// processed until the inflight window has space. 
-					if (actualInFlight < this.maxInflight) {
-						// The in flight window is not full so process the 
-						// first message in the queue
-						result = (MqttWireMessage)pendingMessages.elementAt(0);
-						pendingMessages.removeElementAt(0);
-						actualInFlight++;
+				result = take();
+			}
+		} finally {
+			queueLock.unlock();
+		}
+		return result;
+	}
+
+	/**
+	 * Takes the next flow, or the next message if there is room in the
+	 * inflight window. The caller holds queueLock.
+	 * @return the message to send, or null if there is none
+	 */
+	private MqttWireMessage take() throws MqttException {
+		final String methodName = "take";
+		MqttWireMessage result = null;
+		if (!pendingFlows.isEmpty()) {
+			// Process the first "flow" in the queue
+			result = pendingFlows.remove(0);
+			if (result instanceof MqttPubRel) {
+				inFlightPubRels++;
+
+				//@TRACE 617=+1 inflightpubrels={0}
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME,methodName,"617", new Object[]{ Integer.valueOf(inFlightPubRels)});
+				}
+			}
 	
-						//@TRACE 623=+1 actualInFlight={0}
-						log.fine(CLASS_NAME,methodName,"623",new Object[]{ Integer.valueOf(actualInFlight)});
-					} else {
-						//@TRACE 622=inflight window full
-						log.fine(CLASS_NAME,methodName,"622");				
-					}
-				}			
+			checkQuiesceLock();
+		} else if (!pendingMessages.isEmpty()) {
+			
+			// If the inflight window is full then messages are not 
+			// processed until the inflight window has space. 
+			if (actualInFlight < this.maxInflight) {
+				// The in flight window is not full so process the 
+				// first message in the queue
+				result = pendingMessages.elementAt(0);
+				pendingMessages.removeElementAt(0);
+				actualInFlight++;
+
+				//@TRACE 623=+1 actualInFlight={0}
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME,methodName,"623",new Object[]{ Integer.valueOf(actualInFlight)});
+				}
+			} else {
+				//@TRACE 622=inflight window full
+				log.fine(CLASS_NAME,methodName,"622");				
 			}
 		}
 		return result;
 	}
+
+	/**
+	 * Returns the next piece of work for a hosted sender, without waiting.
+	 * @return the next message to send, or null if there is none that can be
+	 *         sent now, which includes the case where the client is
+	 *         disconnected
+	 * @throws MqttException if an exception occurs whilst returning the next piece of work
+	 */
+	protected MqttWireMessage poll() throws MqttException {
+		queueLock.lock();
+		try {
+			if (pendingFlows == null || (!connected
+					&& (pendingFlows.isEmpty() || !(pendingFlows.elementAt(0) instanceof MqttConnect)))) {
+				return null;
+			}
+			return take();
+		} finally {
+			queueLock.unlock();
+		}
+	}
 	
 	/**
 	 * Sets the keep alive interval.
@@ -908,8 +1343,10 @@ public class ClientState {
         	this.lastOutboundActivity = highResolutionTimer.nanoTime();
         }
         // @TRACE 643=sent bytes count={0}                                                                                                                                                                                            
-        log.fine(CLASS_NAME, methodName, "643", new Object[] {
-        		  Integer.valueOf(sentBytesCount) });
+        if (log.isLoggable(Logger.FINE)) {
+            log.fine(CLASS_NAME, methodName, "643", new Object[] {
+            		  Integer.valueOf(sentBytesCount) });
+        }
     }
 
 	
@@ -922,7 +1359,9 @@ public class ClientState {
 		
 		this.lastOutboundActivity = highResolutionTimer.nanoTime();
 		//@TRACE 625=key={0}
-		log.fine(CLASS_NAME,methodName,"625",new Object[]{message.getKey()});
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME,methodName,"625",new Object[]{message.getKey()});
+		}
 		
 		MqttToken token = message.getToken();
 		if (token == null) {
@@ -930,6 +1369,9 @@ public class ClientState {
 			if (token == null) return;
 		}
 		token.internalTok.notifySent();
+		if (message instanceof MqttPublish && ((MqttPublish) message).getMessage().getQos() > 0) {
+			token.internalTok.setSentTime(lastOutboundActivity);
+		}
         if (message instanceof MqttPingReq) {
             synchronized (pingOutstandingLock) {
             	long time = highResolutionTimer.nanoTime();
@@ -938,7 +1380,9 @@ public class ClientState {
                 	pingOutstanding++;
                 }
                 //@TRACE 635=ping sent. pingOutstanding: {0}                                                                                                                                                                  
-                log.fine(CLASS_NAME,methodName,"635",new Object[]{  Integer.valueOf(pingOutstanding)});
+                if (log.isLoggable(Logger.FINE)) {
+                    log.fine(CLASS_NAME,methodName,"635",new Object[]{  Integer.valueOf(pingOutstanding)});
+                }
             }
         }
         else if (message instanceof MqttPublish) {
@@ -957,14 +1401,19 @@ public class ClientState {
 
 	private void decrementInFlight() {
 		final String methodName = "decrementInFlight";
-		synchronized (queueLock) {
+		queueLock.lock();
+		try {
 			actualInFlight--;
 			//@TRACE 646=-1 actualInFlight={0}
-			log.fine(CLASS_NAME,methodName,"646",new Object[]{ Integer.valueOf(actualInFlight)});
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME,methodName,"646",new Object[]{ Integer.valueOf(actualInFlight)});
+			}
 			
 			if (!checkQuiesceLock()) {
-				queueLock.notifyAll();
+				notifyWork();
 			}
+		} finally {
+			queueLock.unlock();
 		}
 	}
 	
@@ -974,9 +1423,14 @@ public class ClientState {
 		int tokC = tokenStore.count();
 		if (quiescing && tokC == 0 && pendingFlows.size() == 0 && callback.isQuiesced()) {
 			//@TRACE 626=quiescing={0} actualInFlight={1} pendingFlows={2} inFlightPubRels={3} callbackQuiesce={4} tokens={5}
-			log.fine(CLASS_NAME,methodName,"626",new Object[]{ Boolean.valueOf(quiescing),  Integer.valueOf(actualInFlight),  Integer.valueOf(pendingFlows.size()),  Integer.valueOf(inFlightPubRels), Boolean.valueOf(callback.isQuiesced()),  Integer.valueOf(tokC)});
-			synchronized (quiesceLock) {
-				quiesceLock.notifyAll();
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME,methodName,"626",new Object[]{ Boolean.valueOf(quiescing),  Integer.valueOf(actualInFlight),  Integer.valueOf(pendingFlows.size()),  Integer.valueOf(inFlightPubRels), Boolean.valueOf(callback.isQuiesced()),  Integer.valueOf(tokC)});
+			}
+			quiesceLock.lock();
+			try {
+				quiesced.signalAll();
+			} finally {
+				quiesceLock.unlock();
 			}
 			return true;
 		}
@@ -989,8 +1443,10 @@ public class ClientState {
             this.lastInboundActivity = highResolutionTimer.nanoTime();
         }
         // @TRACE 630=received bytes count={0}                                                                                                                                                                                        
-        log.fine(CLASS_NAME, methodName, "630", new Object[] {
-                  Integer.valueOf(receivedBytesCount) });
+        if (log.isLoggable(Logger.FINE)) {
+            log.fine(CLASS_NAME, methodName, "630", new Object[] {
+                      Integer.valueOf(receivedBytesCount) });
+        }
     }
 
     /**
@@ -1004,16 +1460,20 @@ public class ClientState {
 		this.lastInboundActivity = highResolutionTimer.nanoTime();
 
 		// @TRACE 627=received key={0} message={1}
-		log.fine(CLASS_NAME, methodName, "627", new Object[] {
-				 Integer.valueOf(ack.getMessageId()), ack });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "627", new Object[] {
+					 Integer.valueOf(ack.getMessageId()), ack });
+		}
 
 		MqttToken token = tokenStore.getToken(ack);
 		MqttException mex = null;
 
 		if (token == null) {
 			// @TRACE 662=no message found for ack id={0}
-			log.fine(CLASS_NAME, methodName, "662", new Object[] {
-					 Integer.valueOf(ack.getMessageId())});
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "662", new Object[] {
+						 Integer.valueOf(ack.getMessageId())});
+			}
 		} else if (ack instanceof MqttPubRec) {
 			// Complete the QoS 2 flow. Unlike all other
 			// flows, QoS is a 2 phase flow. The second phase sends a
@@ -1022,6 +1482,10 @@ public class ClientState {
 			MqttPubRel rel = new MqttPubRel((MqttPubRec) ack);
 			this.send(rel, token);
 		} else if (ack instanceof MqttPubAck || ack instanceof MqttPubComp) {
+			long sentTime = token.internalTok.getSentTime();
+			if (sentTime != 0) {
+				metrics.ackReceived(ack instanceof MqttPubAck ? 1 : 2, lastInboundActivity - sentTime);
+			}
 			// QoS 1 & 2 notify users of result before removing from
 			// persistence
 			notifyResult(ack, token, mex);
@@ -1036,11 +1500,14 @@ public class ClientState {
                 }
             }
             //@TRACE 636=ping response received. pingOutstanding: {0}                                                                                                                                                     
-            log.fine(CLASS_NAME,methodName,"636",new Object[]{  Integer.valueOf(pingOutstanding)});
+            if (log.isLoggable(Logger.FINE)) {
+                log.fine(CLASS_NAME,methodName,"636",new Object[]{  Integer.valueOf(pingOutstanding)});
+            }
 		} else if (ack instanceof MqttConnack) {
 			int rc = ((MqttConnack) ack).getReturnCode();
 			if (rc == 0) {
-				synchronized (queueLock) {
+				queueLock.lock();
+				try {
 					if (cleanSession) {
 						clearState();
 						// Add the connect token back in so that users can be  
@@ -1051,6 +1518,8 @@ public class ClientState {
 					actualInFlight = 0;
 					restoreInflightMessages();
 					connected();
+				} finally {
+					queueLock.unlock();
 				}
 			} else {
 				mex = ExceptionHelper.createMqttException(rc);
@@ -1062,8 +1531,11 @@ public class ClientState {
 			tokenStore.removeToken(ack);
 
 			// Notify the sender thread that there maybe work for it to do now
-			synchronized (queueLock) {
-				queueLock.notifyAll();
+			queueLock.lock();
+			try {
+				notifyWork();
+			} finally {
+				queueLock.unlock();
 			}
 		} else {
 			notifyResult(ack, token, mex);
@@ -1086,8 +1558,10 @@ public class ClientState {
 		this.lastInboundActivity = highResolutionTimer.nanoTime();
 
 		// @TRACE 651=received key={0} message={1}
-		log.fine(CLASS_NAME, methodName, "651", new Object[] {
-				 Integer.valueOf(message.getMessageId()), message });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "651", new Object[] {
+					 Integer.valueOf(message.getMessageId()), message });
+		}
 		
 		if (!quiescing) {
 			if (message instanceof MqttPublish) {
@@ -1095,12 +1569,17 @@ public class ClientState {
 				switch (send.getMessage().getQos()) {
 				case 0:
 				case 1:
-					if (callback != null) {
+					if (send.isPayloadStreamed()) {
+						// already delivered while it was read, just acknowledge
+						if (callback != null) {
+							callback.messageStreamed(send);
+						}
+					} else if (callback != null) {
 						callback.messageArrived(send);
 					}
 					break;
 				case 2:
-					persistence.put(getReceivedPersistenceKey(message),
+					persist(getReceivedPersistenceKey(message),
 							(MqttPublish) message);
 					inboundQoS2.put( Integer.valueOf(send.getMessageId()), send);
 					this.send(new MqttPubRec(send), null);
@@ -1145,28 +1624,32 @@ public class ClientState {
 		if (message != null && message instanceof MqttAck) {
 			
 			// @TRACE 629=received key={0} token={1} message={2}
-			log.fine(CLASS_NAME, methodName, "629", new Object[] {
-					  Integer.valueOf(message.getMessageId()), token, message });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "629", new Object[] {
+						  Integer.valueOf(message.getMessageId()), token, message });
+			}
 
 			MqttAck ack = (MqttAck) message;
 
 			if (ack instanceof MqttPubAck) {
 				
 				// QoS 1 - user notified now remove from persistence...
-				persistence.remove(getSendPersistenceKey(message));
-				persistence.remove(getSendBufferedPersistenceKey(message));
+				unpersist(getSendPersistenceKey(message));
+				unpersist(getSendBufferedPersistenceKey(message));
 				outboundQoS1.remove(Integer.valueOf(ack.getMessageId()));
 				decrementInFlight();
 				releaseMessageId(message.getMessageId());
 				tokenStore.removeToken(message);
 				// @TRACE 650=removed Qos 1 publish. key={0}
-				log.fine(CLASS_NAME, methodName, "650",
-						new Object[] {  Integer.valueOf(ack.getMessageId()) });
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME, methodName, "650",
+							new Object[] {  Integer.valueOf(ack.getMessageId()) });
+				}
 			} else if (ack instanceof MqttPubComp) {
 				// QoS 2 - user notified now remove from persistence...
-				persistence.remove(getSendPersistenceKey(message));
-				persistence.remove(getSendConfirmPersistenceKey(message));
-				persistence.remove(getSendBufferedPersistenceKey(message));
+				unpersist(getSendPersistenceKey(message));
+				unpersist(getSendConfirmPersistenceKey(message));
+				unpersist(getSendBufferedPersistenceKey(message));
 				outboundQoS2.remove( Integer.valueOf(ack.getMessageId()));
 
 				inFlightPubRels--;
@@ -1175,9 +1658,11 @@ public class ClientState {
 				tokenStore.removeToken(message);
 
 				// @TRACE 645=removed QoS 2 publish/pubrel. key={0}, -1 inFlightPubRels={1}
-				log.fine(CLASS_NAME, methodName, "645", new Object[] {
-						 Integer.valueOf(ack.getMessageId()),
-						 Integer.valueOf(inFlightPubRels) });
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME, methodName, "645", new Object[] {
+							 Integer.valueOf(ack.getMessageId()),
+							 Integer.valueOf(inFlightPubRels) });
+				}
 			}
 
 			checkQuiesceLock();
@@ -1193,14 +1678,18 @@ public class ClientState {
 		// Let the user know an async operation has completed and then remove the token
 		if (ack != null && ack instanceof MqttAck && !(ack instanceof MqttPubRec)) {
 			//@TRACE 648=key{0}, msg={1}, excep={2}
-			log.fine(CLASS_NAME,methodName, "648", new Object [] {token.internalTok.getKey(), ack, ex});
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME,methodName, "648", new Object [] {token.internalTok.getKey(), ack, ex});
+			}
 			callback.asyncOperationComplete(token);
 		}
 		// There are cases where there is no ack as the operation failed before 
 		// an ack was received 
 		if (ack == null ) {
 			//@TRACE 649=key={0},excep={1}
-			log.fine(CLASS_NAME,methodName, "649", new Object [] { token.internalTok.getKey(), ex});
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME,methodName, "649", new Object [] { token.internalTok.getKey(), ex});
+			}
 			callback.asyncOperationComplete(token);
 		}
 	}
@@ -1229,7 +1718,9 @@ public class ClientState {
 	public Vector resolveOldTokens(MqttException reason) {
 		final String methodName = "resolveOldTokens";
 		//@TRACE 632=reason {0}
-		log.fine(CLASS_NAME,methodName,"632", new Object[] {reason});
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME,methodName,"632", new Object[] {reason});
+		}
 		
 		// If any outstanding let the user know the reason why it is still
 		// outstanding by putting the reason shutdown is occurring into the 
@@ -1247,10 +1738,13 @@ public class ClientState {
 		Enumeration outTE = outT.elements();
 		while (outTE.hasMoreElements()) {
 			MqttToken tok = (MqttToken)outTE.nextElement();
-			synchronized (tok) {
+			tok.internalTok.lock();
+			try {
 				if (!tok.isComplete() && !tok.internalTok.isCompletePending() && tok.getException() == null) {
 					tok.internalTok.setException(shutReason);
 				}
+			} finally {
+				tok.internalTok.unlock();
 			}
 			if (!(tok instanceof MqttDeliveryToken)) {
 				// If not a delivery token it is not valid on 
@@ -1268,7 +1762,9 @@ public class ClientState {
 	public void disconnected(MqttException reason) {
 		final String methodName = "disconnected";
 		//@TRACE 633=disconnected
-		log.fine(CLASS_NAME,methodName,"633", new Object[] {reason});		
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME,methodName,"633", new Object[] {reason});		
+		}
 
 		this.connected = false;
 
@@ -1338,15 +1834,21 @@ public class ClientState {
 		// If the timeout is greater than zero t
 		if (timeout > 0 ) {
 			//@TRACE 637=timeout={0}
-			log.fine(CLASS_NAME,methodName, "637",new Object[]{ Long.valueOf(timeout)});
-			synchronized (queueLock) {
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME,methodName, "637",new Object[]{ Long.valueOf(timeout)});
+			}
+			queueLock.lock();
+			try {
 				this.quiescing = true;
+			} finally {
+				queueLock.unlock();
 			}
 			// We don't want to handle any new inbound messages
 			callback.quiesce();
 			notifyQueueLock();
 
-			synchronized (quiesceLock) {
+			quiesceLock.lock();
+			try {
 				try {			
 					// If token count is not zero there is outbound work to process and 
 					// if pending flows is not zero there is outstanding work to complete and
@@ -1354,21 +1856,26 @@ public class ClientState {
 					int tokc = tokenStore.count();
 					if (tokc > 0 || pendingFlows.size() >0 || !callback.isQuiesced()) {
 						//@TRACE 639=wait for outstanding: actualInFlight={0} pendingFlows={1} inFlightPubRels={2} tokens={3}
-						log.fine(CLASS_NAME, methodName,"639", new Object[]{ Integer.valueOf(actualInFlight),  Integer.valueOf(pendingFlows.size()),  Integer.valueOf(inFlightPubRels),  Integer.valueOf(tokc)});
+						if (log.isLoggable(Logger.FINE)) {
+							log.fine(CLASS_NAME, methodName,"639", new Object[]{ Integer.valueOf(actualInFlight),  Integer.valueOf(pendingFlows.size()),  Integer.valueOf(inFlightPubRels),  Integer.valueOf(tokc)});
+						}
 
 						// wait for outstanding in flight messages to complete and
 						// any pending flows to complete
-						quiesceLock.wait(timeout);
+						quiesced.await(timeout, TimeUnit.MILLISECONDS);
 					}
 				}
 				catch (InterruptedException ex) {
 					// Don't care, as we're shutting down anyway
 				}
+			} finally {
+				quiesceLock.unlock();
 			}
 			
 			// Quiesce time up or inflight messages delivered.  Ensure pending delivery
 			// vectors are cleared ready for disconnect to be sent as the final flow.
-			synchronized (queueLock) {
+			queueLock.lock();
+			try {
 				if (pendingMessages != null) {
 					pendingMessages.clear();
 				}
@@ -1377,6 +1884,8 @@ public class ClientState {
 				}
 				quiescing = false;
 				actualInFlight = 0;
+			} finally {
+				queueLock.unlock();
 			}
 			//@TRACE 640=finished
 			log.fine(CLASS_NAME, methodName, "640");
@@ -1385,20 +1894,46 @@ public class ClientState {
 
 	public void notifyQueueLock() {
 		final String methodName = "notifyQueueLock";
-		synchronized (queueLock) {
+		queueLock.lock();
+		try {
 			//@TRACE 638=notifying queueLock holders
 			log.fine(CLASS_NAME,methodName,"638");
-			queueLock.notifyAll();
+			notifyWork();
+		} finally {
+			queueLock.unlock();
 		}
 	}
 
+	/**
+	 * Wakes up the sender, which either waits on queueLock or, when hosted, is
+	 * scheduled to run. The caller holds queueLock.
+	 */
+	private void notifyWork() {
+		workAvailable.signalAll();
+		HostedTask task = sendTask;
+		if (task != null) {
+			task.signal();
+		}
+	}
+
+	/**
+	 * Sets the hosted task that sends the queued work, instead of a sender
+	 * thread waiting for it.
+	 * @param sendTask the task to signal when there is work, or null
+	 */
+	public void setSendTask(HostedTask sendTask) {
+		this.sendTask = sendTask;
+	}
+
 	protected void deliveryComplete(MqttPublish message) throws MqttPersistenceException {
 		final String methodName = "deliveryComplete";
 
 		//@TRACE 641=remove publish from persistence. key={0}
-		log.fine(CLASS_NAME,methodName,"641", new Object[]{ Integer.valueOf(message.getMessageId())});
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME,methodName,"641", new Object[]{ Integer.valueOf(message.getMessageId())});
+		}
 		
-		persistence.remove(getReceivedPersistenceKey(message));
+		unpersist(getReceivedPersistenceKey(message));
 		inboundQoS2.remove( Integer.valueOf(message.getMessageId()));
 	}
 	
@@ -1406,15 +1941,71 @@ public class ClientState {
 		final String methodName = "deliveryComplete";
 
 		//@TRACE 641=remove publish from persistence. key={0}
-		log.fine(CLASS_NAME,methodName,"641", new Object[]{ Integer.valueOf(messageId)});
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME,methodName,"641", new Object[]{ Integer.valueOf(messageId)});
+		}
 		
-		persistence.remove(getReceivedPersistenceKey(messageId));
+		unpersist(getReceivedPersistenceKey(messageId));
 		inboundQoS2.remove( Integer.valueOf(messageId));
 	}
 	
+	/**
+	 * Puts a message into persistence, timing it for the client's metrics.
+	 */
+	private void persist(String key, MqttPersistable message) throws MqttPersistenceException {
+		long start = System.nanoTime();
+		persistence.put(key, message);
+		metrics.persistencePut(System.nanoTime() - start);
+	}
+
+	/**
+	 * Removes a message from persistence, timing it for the client's
+	 * metrics.
+	 */
+	private void unpersist(String key) throws MqttPersistenceException {
+		long start = System.nanoTime();
+		persistence.remove(key);
+		metrics.persistenceRemoved(System.nanoTime() - start);
+	}
+
 	public int getActualInFlight(){
 		return actualInFlight;
 	}
+
+	/**
+	 * @return the number of publishes waiting to be sent
+	 */
+	public int getPendingMessageCount() {
+		Vector<MqttWireMessage> pending = pendingMessages;
+		return pending == null ? 0 : pending.size();
+	}
+
+	/**
+	 * @return the number of acknowledgements, pings and other flows waiting
+	 *         to be sent
+	 */
+	public int getPendingFlowCount() {
+		Vector<MqttWireMessage> pending = pendingFlows;
+		return pending == null ? 0 : pending.size();
+	}
+
+	/**
+	 * Counts a packet written to the network in the client's metrics.
+	 * @param type the MQTT control packet type
+	 * @param bytes the size of the packet
+	 */
+	public void notifyPacketSent(int type, long bytes) {
+		metrics.packetSent(type, bytes);
+	}
+
+	/**
+	 * Counts a packet read from the network in the client's metrics.
+	 * @param type the MQTT control packet type
+	 * @param bytes the size of the packet
+	 */
+	public void notifyPacketReceived(int type, long bytes) {
+		metrics.packetReceived(type, bytes);
+	}
 	
 	public int getMaxInFlight(){
 		return maxInflight;
@@ -1426,6 +2017,7 @@ public class ClientState {
 	 * disconnect / connect cycle. 
 	 */
 	protected void close() {
+		cancelPersistence();
 		inUseMsgIds.clear();
 		if (pendingMessages != null) {
 			pendingMessages.clear();
@@ -1435,6 +2027,7 @@ public class ClientState {
 		outboundQoS1.clear();
 		outboundQoS0.clear();
 		inboundQoS2.clear();
+		releasePayloads();
 		tokenStore.clear();
 		inUseMsgIds = null;
 		pendingMessages = null;
@@ -1471,4 +2064,47 @@ public class ClientState {
 		props.put("tokens", tokenStore);
 		return props;
 	}
+
+	/**
+	 * Counts the entries in each of the tables this state keeps, for tests
+	 * that check none of them grows over many connections. Unlike
+	 * {@link #getDebug()} the counts are taken together, under the queue lock.
+	 * A closed state has no tables, so has no counts.
+	 * @return the number of entries in each table, by name
+	 */
+	public Properties getTableSizes() {
+		Properties props = new Properties();
+		queueLock.lock();
+		try {
+			if (tokenStore == null) {
+				return props;
+			}
+			props.put("inUseMsgIds", Integer.valueOf(inUseMsgIds.size()));
+			// the pending messages are only queued once the maximum in flight is known
+			props.put("pendingMessages", Integer.valueOf(pendingMessages == null ? 0 : pendingMessages.size()));
+			props.put("pendingFlows", Integer.valueOf(pendingFlows.size()));
+			props.put("outboundQoS2", Integer.valueOf(outboundQoS2.size()));
+			props.put("outboundQoS1", Integer.valueOf(outboundQoS1.size()));
+			props.put("outboundQoS0", Integer.valueOf(outboundQoS0.size()));
+			props.put("inboundQoS2", Integer.valueOf(inboundQoS2.size()));
+			props.put("tokens", Integer.valueOf(tokenStore.count()));
+			props.put("actualInFlight", Integer.valueOf(actualInFlight));
+			props.put("inFlightPubRels", Integer.valueOf(inFlightPubRels));
+			props.put("persisting", Integer.valueOf(persistenceWriter == null ? 0 : persistenceWriter.size()));
+		} finally {
+			queueLock.unlock();
+		}
+		int persisted = 0;
+		try {
+			Enumeration<?> keys = persistence.keys();
+			while (keys.hasMoreElements()) {
+				keys.nextElement();
+				persisted++;
+			}
+			props.put("persisted", Integer.valueOf(persisted));
+		} catch (MqttPersistenceException e) {
+			// the persistence has been closed, so it has nothing to count
+		}
+		return props;
+	}
 }
@@ -21,13 +21,17 @@ package org.eclipse.paho.client.mqttv3.internal;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.eclipse.paho.client.mqttv3.IMqttActionListener;
 import org.eclipse.paho.client.mqttv3.IMqttMessageListener;
+import org.eclipse.paho.client.mqttv3.MqttBuffer;
 import org.eclipse.paho.client.mqttv3.MqttCallback;
 import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
 import org.eclipse.paho.client.mqttv3.MqttDeliveryToken;
@@ -35,14 +39,17 @@ import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.eclipse.paho.client.mqttv3.MqttToken;
 import org.eclipse.paho.client.mqttv3.MqttTopic;
+import org.eclipse.paho.client.mqttv3.codec.MqttPayloadCodec;
 import org.eclipse.paho.client.mqttv3.internal.wire.MqttPubAck;
 import org.eclipse.paho.client.mqttv3.internal.wire.MqttPubComp;
 import org.eclipse.paho.client.mqttv3.internal.wire.MqttPublish;
 import org.eclipse.paho.client.mqttv3.internal.wire.MqttWireMessage;
 import org.eclipse.paho.client.mqttv3.logging.Logger;
 import org.eclipse.paho.client.mqttv3.logging.LoggerFactory;
+import org.eclipse.paho.client.mqttv3.metrics.MqttClientMetrics;
 
-import static org.eclipse.paho.client.mqttv3.internal.CommsSender.MAX_STOPPED_STATE_TO_STOP_THREAD;
+import static org.eclipse.paho.client.mqttv3.internal.CommsSender.START_TIMEOUT;
+import static org.eclipse.paho.client.mqttv3.internal.CommsSender.awaitStarted;
 
 /**
  * Bridge between Receiver and the external API. This class gets called by
@@ -59,6 +66,7 @@ public class CommsCallback implements Runnable {
 	private final Hashtable<String, IMqttMessageListener> callbacksWildcards; // topicFilter with wildcards -> messageHandler
 	private final Hashtable<String, IMqttMessageListener> callbacksDirect; // topicFilter without wildcards -> messageHandler
 	private final ClientComms clientComms;
+	private final MqttClientMetrics metrics;
 	private final Vector<MqttWireMessage> messageQueue;
 	private final Vector<MqttToken> completeQueue;
 	
@@ -66,18 +74,25 @@ public class CommsCallback implements Runnable {
 
 	private State current_state = State.STOPPED;
 	private State target_state = State.STOPPED;
-	private final Object lifecycle = new Object();
+	private final ReentrantLock lifecycle = new ReentrantLock();
+	private final Condition stopped = lifecycle.newCondition();
 	private Thread callbackThread;
+	private CountDownLatch started;
 	private String threadName;
 	private Future<?> callbackFuture;
+	private HostedTask hostedTask;
+	private volatile HostedTask spaceWaiter;
 	
-	private final Object workAvailable = new Object();
-	private final Object spaceAvailable = new Object();
+	private final ReentrantLock workLock = new ReentrantLock();
+	private final Condition workAvailable = workLock.newCondition();
+	private final ReentrantLock spaceLock = new ReentrantLock();
+	private final Condition spaceAvailable = spaceLock.newCondition();
 	private ClientState clientState;
 	private boolean manualAcks = false;
 
 	CommsCallback(ClientComms clientComms) {
 		this.clientComms = clientComms;
+		this.metrics = clientComms.getMetrics();
 		this.messageQueue = new Vector<MqttWireMessage>(INBOUND_QUEUE_SIZE);
 		this.completeQueue = new Vector<MqttToken>(INBOUND_QUEUE_SIZE);
 		this.callbacksWildcards = new Hashtable<String, IMqttMessageListener>();
@@ -96,8 +111,11 @@ public class CommsCallback implements Runnable {
 	 */
 	public void start(String threadName, ExecutorService executorService) {
 		this.threadName = threadName;
+		CountDownLatch running = null;
 
-		synchronized (lifecycle) {
+		lifecycle.lock();
+		try {
+			awaitStopped();
 			if (current_state == State.STOPPED) {
 				// Preparatory work before starting the background thread.
 				// For safety ensure any old events are cleared.
@@ -106,28 +124,72 @@ public class CommsCallback implements Runnable {
 				
 				target_state = State.RUNNING;
 				current_state = State.RUNNING;
+				running = new CountDownLatch(1);
+				started = running;
 				if (executorService == null) {
 					callbackFuture = null;
-					callbackThread = new Thread(this);
+					callbackThread = clientComms.newThread(this);
 					callbackThread.start();
 				} else {
 					callbackThread = null;
 					callbackFuture = executorService.submit(this);
 				}
 			}
+		} finally {
+			lifecycle.unlock();
+		}
+
+		if (running != null) {
+			awaitStarted(running);
+		}
+	}
+
+	/**
+	 * Waits for a run that has been told to stop to finish, before the
+	 * callback is started again. This happens when the client connects again
+	 * from connectionLost on the callback thread. The caller holds lifecycle.
+	 */
+	private void awaitStopped() {
+		if (Thread.currentThread().equals(callbackThread)) {
+			return;
+		}
+		long remaining = TimeUnit.MILLISECONDS.toNanos(START_TIMEOUT);
+		while (current_state != State.STOPPED && target_state == State.STOPPED && remaining > 0) {
+			try {
+				remaining = stopped.awaitNanos(remaining);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
 		}
+	}
 
-		AtomicInteger stoppedStateCounter = new AtomicInteger(0);
-		while (!isRunning()) {
-			try { Thread.sleep(100); } catch (Exception e) { }
+	/**
+	 * Starts up the Callback as a task on the shared threads of a client
+	 * host, which runs whenever there are callbacks to make.
+	 * @param host the threads of the client host
+	 */
+	public void start(ClientHostPool host) {
+		lifecycle.lock();
+		try {
+			awaitStopped();
 			if (current_state == State.STOPPED) {
-				if (stoppedStateCounter.incrementAndGet() > MAX_STOPPED_STATE_TO_STOP_THREAD) {
-					break;
-				}
-			} else {
-				stoppedStateCounter.set(0);
+				messageQueue.clear();
+				completeQueue.clear();
+
+				target_state = State.RUNNING;
+				current_state = State.RUNNING;
+				callbackThread = null;
+				callbackFuture = null;
+				hostedTask = new HostedTask(host.getWorkers()) {
+					protected boolean runSlice() {
+						return callbackSlice();
+					}
+				};
 			}
-		}			
+		} finally {
+			lifecycle.unlock();
+		}
 	}
 
 	/**
@@ -140,16 +202,25 @@ public class CommsCallback implements Runnable {
 		if (isRunning()) {
 			// @TRACE 700=stopping
 			log.fine(CLASS_NAME, methodName, "700");
-			synchronized (lifecycle) {
+			lifecycle.lock();
+			try {
 				target_state = State.STOPPED;
+			} finally {
+				lifecycle.unlock();
 			}
+			if (hostedTask != null) {
+				hostedTask.signal();
+				hostedTask.awaitIdle();
 			// Do not allow a thread to wait for itself.
-			if (!Thread.currentThread().equals(callbackThread)) {
-				synchronized (workAvailable) {
+			} else if (!Thread.currentThread().equals(callbackThread)) {
+				workLock.lock();
+				try {
 					// @TRACE 701=notify workAvailable and wait for run
 					// to finish
 					log.fine(CLASS_NAME, methodName, "701");
-					workAvailable.notifyAll();
+					workAvailable.signalAll();
+				} finally {
+					workLock.unlock();
 				}
 				// Wait for the thread to finish.
 				if (callbackFuture != null) {
@@ -185,51 +256,28 @@ public class CommsCallback implements Runnable {
 		final String methodName = "run";
 		callbackThread = Thread.currentThread();
 		callbackThread.setName(threadName);
+		started.countDown();
 
 		while (isRunning()) {
 			try {
 				// If no work is currently available, then wait until there is some...
 				try {
-					synchronized (workAvailable) {
+					workLock.lock();
+					try {
 						if (isRunning() && messageQueue.isEmpty()
 								&& completeQueue.isEmpty()) {
 							// @TRACE 704=wait for workAvailable
 							log.fine(CLASS_NAME, methodName, "704");
-							workAvailable.wait();
+							workAvailable.await();
 						}
+					} finally {
+						workLock.unlock();
 					}
 				} catch (InterruptedException e) {
 				}
 
 				if (isRunning()) {
-					// Check for deliveryComplete callbacks...
-					MqttToken token = null;
-					synchronized (completeQueue) {
-					    if (!completeQueue.isEmpty()) {
-						    // First call the delivery arrived callback if needed
-						    token = (MqttToken) completeQueue.elementAt(0);
-						    completeQueue.removeElementAt(0);
-					    }
-					}
-					if (null != token) {
-						handleActionComplete(token);
-					}
-					
-					// Check for messageArrived callbacks...
-					MqttPublish message = null;
-					synchronized (messageQueue) {
-					    if (!messageQueue.isEmpty()) {
-						    // Note, there is a window on connect where a publish
-						    // could arrive before we've
-						    // finished the connect logic.
-							message = (MqttPublish) messageQueue.elementAt(0);
-
-							messageQueue.removeElementAt(0);
-					    }
-					}
-					if (null != message) {
-						handleMessage(message);
-					}
+					handleNext();
 				}
 
 				if (isQuiescing()) {
@@ -245,27 +293,145 @@ public class CommsCallback implements Runnable {
 				clientComms.shutdownConnection(null, new MqttException(ex));
 			} finally {
 
-			    synchronized (spaceAvailable) {
-                    // Notify the spaceAvailable lock, to say that there's now
-                    // some space on the queue...
-
-                    // @TRACE 706=notify spaceAvailable
-                    log.fine(CLASS_NAME, methodName, "706");
-                    spaceAvailable.notifyAll();
-                }
+				spaceLock.lock();
+				try {
+					// Notify the spaceAvailable lock, to say that there's now
+					// some space on the queue...
+
+					// @TRACE 706=notify spaceAvailable
+					log.fine(CLASS_NAME, methodName, "706");
+					spaceAvailable.signalAll();
+				} finally {
+					spaceLock.unlock();
+				}
 			}
 		}
-		synchronized (lifecycle) {
+		lifecycle.lock();
+		try {
 			current_state = State.STOPPED;
+			stopped.signalAll();
+		} finally {
+			lifecycle.unlock();
+		}
+	}
+
+	/**
+	 * Makes the next delivery complete and message arrived callbacks, if
+	 * there are any.
+	 * @return true if there was a callback to make
+	 */
+	private boolean handleNext() throws Exception {
+		// Check for deliveryComplete callbacks...
+		MqttToken token = null;
+		synchronized (completeQueue) {
+		    if (!completeQueue.isEmpty()) {
+			    // First call the delivery arrived callback if needed
+			    token = (MqttToken) completeQueue.elementAt(0);
+			    completeQueue.removeElementAt(0);
+		    }
+		}
+		if (null != token) {
+			handleActionComplete(token);
+		}
+		
+		// Check for messageArrived callbacks...
+		MqttPublish message = null;
+		synchronized (messageQueue) {
+		    if (!messageQueue.isEmpty()) {
+			    // Note, there is a window on connect where a publish
+			    // could arrive before we've
+			    // finished the connect logic.
+				message = (MqttPublish) messageQueue.elementAt(0);
+
+				messageQueue.removeElementAt(0);
+		    }
+		}
+		if (null != message) {
+			handleMessage(message);
 		}
+		return token != null || message != null;
+	}
+
+	/**
+	 * Makes callbacks on the threads of a client host, until there are no
+	 * more or the slice is used up.
+	 * @return true if there may be more callbacks to make
+	 */
+	private boolean callbackSlice() {
+		final String methodName = "callbackSlice";
+		callbackThread = Thread.currentThread();
+		try {
+			for (int i = 0; i < HostedTask.SLICE_LIMIT; i++) {
+				if (!isRunning()) {
+					lifecycle.lock();
+					try {
+						current_state = State.STOPPED;
+						stopped.signalAll();
+					} finally {
+						lifecycle.unlock();
+					}
+					return false;
+				}
+				boolean handled = handleNext();
+				if (isQuiescing()) {
+					clientState.checkQuiesceLock();
+				}
+				if (!handled) {
+					break;
+				}
+			}
+		} catch (Throwable ex) {
+			// @TRACE 714=callback threw exception
+			log.fine(CLASS_NAME, methodName, "714", null, ex);
+
+			clientComms.shutdownConnection(null, new MqttException(ex));
+		} finally {
+			callbackThread = null;
+			spaceLock.lock();
+			try {
+				spaceAvailable.signalAll();
+			} finally {
+				spaceLock.unlock();
+			}
+			HostedTask waiter = spaceWaiter;
+			if (waiter != null && !isFull()) {
+				spaceWaiter = null;
+				waiter.signal();
+			}
+		}
+		return !messageQueue.isEmpty() || !completeQueue.isEmpty();
+	}
+
+	/**
+	 * Tells a hosted receiver whether there is room for another inbound
+	 * message, which is read only once there is, instead of the receiver
+	 * waiting for room in {@link #messageArrived(MqttPublish)}. If there is
+	 * not, the receiver is signalled when some has been made.
+	 * @param receiveTask the task of the receiver
+	 * @return true if a message can be read
+	 */
+	boolean hasSpace(HostedTask receiveTask) {
+		if (!isFull()) {
+			return true;
+		}
+		spaceWaiter = receiveTask;
+		// the queue may have been drained in between
+		return !isFull();
+	}
+
+	private boolean isFull() {
+		return isRunning() && !isQuiescing() && messageQueue.size() >= INBOUND_QUEUE_SIZE;
 	}
 
 	private void handleActionComplete(MqttToken token)
 			throws MqttException {
 		final String methodName = "handleActionComplete";
-		synchronized (token) {
+		token.internalTok.lock();
+		try {
 			// @TRACE 705=callback and notify for key={0}
-			log.fine(CLASS_NAME, methodName, "705",	new Object[] { token.internalTok.getKey() });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "705",	new Object[] { token.internalTok.getKey() });
+			}
 			if (token.isComplete()) {
 				// Finish by doing any post processing such as delete 
 				// from persistent store but only do so if the action
@@ -277,15 +443,25 @@ public class CommsCallback implements Runnable {
 			token.internalTok.notifyComplete();
 			
  			if (!token.internalTok.isNotified()) {
- 				// If a callback is registered and delivery has finished 
- 				// call delivery complete callback. 
-				if ( mqttCallback != null 
-					&& token instanceof MqttDeliveryToken 
-					&& token.isComplete()) {
-						mqttCallback.deliveryComplete((MqttDeliveryToken) token);
+				long start = System.nanoTime();
+				boolean called = false;
+				try {
+					// If a callback is registered and delivery has finished
+					// call delivery complete callback.
+					if ( mqttCallback != null 
+						&& token instanceof MqttDeliveryToken 
+						&& token.isComplete()) {
+							called = true;
+							mqttCallback.deliveryComplete((MqttDeliveryToken) token);
+					}
+					// Now call async action completion callbacks
+					called |= token.getActionCallback() != null;
+					fireActionEvent(token);
+				} finally {
+					if (called) {
+						metrics.callbackCompleted(System.nanoTime() - start);
+					}
 				}
-				// Now call async action completion callbacks
-				fireActionEvent(token);
 			}
 			
 			// Set notified so we don't tell the user again about this action.
@@ -294,9 +470,16 @@ public class CommsCallback implements Runnable {
  	                token.internalTok.setNotified(true);
  	            }
  			}
+
+			// Once finished with, delivered or not, hand a pooled payload back to its pool.
+			if (token.isComplete()) {
+				token.internalTok.releasePayload();
+			}
 			
 
 			
+		} finally {
+			token.internalTok.unlock();
 		}
 	}
 
@@ -316,8 +499,15 @@ public class CommsCallback implements Runnable {
 		try {
 			if (mqttCallback != null && cause != null) {
 				// @TRACE 708=call connectionLost
-				log.fine(CLASS_NAME, methodName, "708", new Object[] { cause });
-				mqttCallback.connectionLost(cause);
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME, methodName, "708", new Object[] { cause });
+				}
+				long start = System.nanoTime();
+				try {
+					mqttCallback.connectionLost(cause);
+				} finally {
+					metrics.callbackCompleted(System.nanoTime() - start);
+				}
 			}
 			if(reconnectInternalCallback != null && cause != null){
 				reconnectInternalCallback.connectionLost(cause);
@@ -326,7 +516,9 @@ public class CommsCallback implements Runnable {
 			// Just log the fact that a throwable has caught connection lost 
 			// is called during shutdown processing so no need to do anything else
 			// @TRACE 720=exception from connectionLost {0}
-			log.fine(CLASS_NAME, methodName, "720", new Object[] { t });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "720", new Object[] { t });
+			}
 		}
 	}
 
@@ -344,13 +536,17 @@ public class CommsCallback implements Runnable {
 			if (asyncCB != null) {
 				if (token.getException() == null) {
 					// @TRACE 716=call onSuccess key={0}
-					log.fine(CLASS_NAME, methodName, "716",
-							new Object[] { token.internalTok.getKey() });
+					if (log.isLoggable(Logger.FINE)) {
+						log.fine(CLASS_NAME, methodName, "716",
+								new Object[] { token.internalTok.getKey() });
+					}
 					asyncCB.onSuccess(token);
 				} else {
 					// @TRACE 717=call onFailure key {0}
-					log.fine(CLASS_NAME, methodName, "716",
-							new Object[] { token.internalTok.getKey() });
+					if (log.isLoggable(Logger.FINE)) {
+						log.fine(CLASS_NAME, methodName, "716",
+								new Object[] { token.internalTok.getKey() });
+					}
 					asyncCB.onFailure(token, token.getException());
 				}
 			}
@@ -372,24 +568,31 @@ public class CommsCallback implements Runnable {
 			// until some more queue space becomes available. This helps 
 			// the client protect itself from getting flooded by messages 
 			// from the server.
-			synchronized (spaceAvailable) {
+			spaceLock.lock();
+			try {
 				while (isRunning() && !isQuiescing() && messageQueue.size() >= INBOUND_QUEUE_SIZE) {
 					try {
 						// @TRACE 709=wait for spaceAvailable
 						log.fine(CLASS_NAME, methodName, "709");
-						spaceAvailable.wait(200);
+						spaceAvailable.await(200, TimeUnit.MILLISECONDS);
 					} catch (InterruptedException ex) {
 					}
 				}
+			} finally {
+				spaceLock.unlock();
 			}
 			if (!isQuiescing()) {
 				messageQueue.addElement(sendMessage);
 				// Notify the CommsCallback thread that there's work to do...
-				synchronized (workAvailable) {
+				workLock.lock();
+				try {
 					// @TRACE 710=new msg avail, notify workAvailable
 					log.fine(CLASS_NAME, methodName, "710");
-					workAvailable.notifyAll();
+					workAvailable.signalAll();
+				} finally {
+					workLock.unlock();
 				}
+				signalHostedTask();
 			}
 		}
 	}
@@ -401,18 +604,32 @@ public class CommsCallback implements Runnable {
 	 */
 	public void quiesce() {
 		final String methodName = "quiesce";
-		synchronized (lifecycle) {
+		lifecycle.lock();
+		try {
 			if (current_state == State.RUNNING)
 			current_state = State.QUIESCING;
+		} finally {
+			lifecycle.unlock();
 		}
-		synchronized (spaceAvailable) {
+		spaceLock.lock();
+		try {
 			// @TRACE 711=quiesce notify spaceAvailable
 			log.fine(CLASS_NAME, methodName, "711");
 			// Unblock anything waiting for space...
-			spaceAvailable.notifyAll();
+			spaceAvailable.signalAll();
+		} finally {
+			spaceLock.unlock();
 		}
 	}
 
+	/**
+	 * @return the number of arrived messages and completed actions waiting
+	 *         to be passed to the application
+	 */
+	public int getQueueDepth() {
+		return messageQueue.size() + completeQueue.size();
+	}
+
 	public boolean isQuiesced() {
 		if (isQuiescing() && completeQueue.size() == 0 && messageQueue.size() == 0) {
 			return true;
@@ -428,10 +645,27 @@ public class CommsCallback implements Runnable {
 		String destName = publishMessage.getTopicName();
 
 		// @TRACE 713=call messageArrived key={0} topic={1}
-		log.fine(CLASS_NAME, methodName, "713", new Object[] {
-				Integer.valueOf(publishMessage.getMessageId()), destName });
-		deliverMessage(destName, publishMessage.getMessageId(),
-				publishMessage.getMessage());
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "713", new Object[] {
+					Integer.valueOf(publishMessage.getMessageId()), destName });
+		}
+		MqttMessage message = publishMessage.getMessage();
+		MqttBuffer buffer = message.getPayloadBuffer();
+		try {
+			decodePayload(message);
+			long start = System.nanoTime();
+			try {
+				deliverMessage(destName, publishMessage.getMessageId(), message);
+			} finally {
+				metrics.callbackCompleted(System.nanoTime() - start);
+			}
+		} finally {
+			// Payloads read into a pooled buffer are only valid for the
+			// duration of messageArrived, unless retained by the application.
+			if (buffer != null) {
+				buffer.release();
+			}
+		}
 
 		if (!this.manualAcks) {
 			if (publishMessage.getMessage().getQos() == 1) {
@@ -446,6 +680,47 @@ public class CommsCallback implements Runnable {
 		}
 	}
 	
+	/**
+	 * Replaces the payload of a received message with its decoding by the
+	 * payload codec, if one is set. A payload the codec can not decode is
+	 * delivered unchanged.
+	 * @param message the received message
+	 */
+	private void decodePayload(MqttMessage message) {
+		final String methodName = "decodePayload";
+		MqttPayloadCodec codec = clientComms.getPayloadCodec();
+		if (codec == null) {
+			return;
+		}
+		try {
+			MqttBuffer buffer = message.getPayloadBuffer();
+			byte[] decoded;
+			if (buffer != null && buffer.hasArray()) {
+				decoded = codec.decode(buffer.array(), buffer.arrayOffset(), buffer.length());
+			} else {
+				byte[] payload = message.getPayload();
+				decoded = codec.decode(payload, 0, payload.length);
+			}
+			message.setPayload(decoded);
+		} catch (MqttException ex) {
+			// @TRACE 721=payload not decoded by codec {0}, delivering it unchanged
+			log.warning(CLASS_NAME, methodName, "721", new Object[] { codec.getName() }, ex);
+		}
+	}
+
+	/**
+	 * Completes the flow for a message whose payload was passed to the
+	 * streaming callback as it was read, by sending the acknowledgement.
+	 * @param publishMessage the streamed message
+	 * @throws MqttException if the acknowledgement can not be sent
+	 */
+	public void messageStreamed(MqttPublish publishMessage) throws MqttException {
+		if (!this.manualAcks && publishMessage.getMessage().getQos() == 1) {
+			this.clientComms.internalSend(new MqttPubAck(publishMessage),
+					new MqttToken(clientComms.getClient().getClientId()));
+		}
+	}
+
 	public void messageArrivedComplete(int messageId, int qos) 
 		throws MqttException {
 		if (qos == 1) {
@@ -465,11 +740,17 @@ public class CommsCallback implements Runnable {
 		if (isRunning()) {
 			// invoke callbacks on callback thread
 			completeQueue.addElement(token);
-			synchronized (workAvailable) {
+			workLock.lock();
+			try {
 				// @TRACE 715=new workAvailable. key={0}
-				log.fine(CLASS_NAME, methodName, "715", new Object[] { token.internalTok.getKey() });
-				workAvailable.notifyAll();
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME, methodName, "715", new Object[] { token.internalTok.getKey() });
+				}
+				workAvailable.signalAll();
+			} finally {
+				workLock.unlock();
 			}
+			signalHostedTask();
 		} else {
 			// invoke async callback on invokers thread
 			try {
@@ -487,6 +768,13 @@ public class CommsCallback implements Runnable {
 		}
 	}
 
+	private void signalHostedTask() {
+		HostedTask task = hostedTask;
+		if (task != null) {
+			task.signal();
+		}
+	}
+
 	/**
 	 * Returns the thread used by this callback.
 	 * @return The {@link Thread}
@@ -554,17 +842,23 @@ public class CommsCallback implements Runnable {
 	
 	public boolean isRunning() {
 		boolean result;
-		synchronized (lifecycle) {
+		lifecycle.lock();
+		try {
 			result = ((current_state == State.RUNNING || current_state == State.QUIESCING)
 					&& target_state == State.RUNNING);
+		} finally {
+			lifecycle.unlock();
 		}
 		return result;
 	}
 	
 	public boolean isQuiescing() {
 		boolean result;
-		synchronized (lifecycle) {
+		lifecycle.lock();
+		try {
 			result = (current_state == State.QUIESCING);
+		} finally {
+			lifecycle.unlock();
 		}
 		return result;
 	}
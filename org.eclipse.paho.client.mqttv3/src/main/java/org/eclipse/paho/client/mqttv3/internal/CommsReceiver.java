@@ -17,10 +17,12 @@ package org.eclipse.paho.client.mqttv3.internal;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttToken;
@@ -33,7 +35,7 @@ import org.eclipse.paho.client.mqttv3.internal.wire.MqttWireMessage;
 import org.eclipse.paho.client.mqttv3.logging.Logger;
 import org.eclipse.paho.client.mqttv3.logging.LoggerFactory;
 
-import static org.eclipse.paho.client.mqttv3.internal.CommsSender.MAX_STOPPED_STATE_TO_STOP_THREAD;
+import static org.eclipse.paho.client.mqttv3.internal.CommsSender.awaitStarted;
 
 /**
  * Receives MQTT packets from the server.
@@ -46,15 +48,20 @@ public class CommsReceiver implements Runnable {
 
 	private State current_state = State.STOPPED;
 	private State target_state = State.STOPPED;
-	private final Object lifecycle = new Object();
+	private final ReentrantLock lifecycle = new ReentrantLock();
 	private String threadName;
 	private Future<?> receiverFuture;
+	private final CountDownLatch started = new CountDownLatch(1);
 
 	private ClientState clientState = null;
 	private ClientComms clientComms = null;
 	private MqttInputStream in;
 	private CommsTokenStore tokenStore = null;
 	private Thread recThread	= null;
+	private HostedTask hostedTask;
+	private ClientHostPool host;
+	private SocketChannel channel;
+	private CommsCallback callback;
 
 	public CommsReceiver(ClientComms clientComms, ClientState clientState,CommsTokenStore tokenStore, InputStream in) {
 		this.in = new MqttInputStream(clientState, in);
@@ -74,31 +81,62 @@ public class CommsReceiver implements Runnable {
 		final String methodName = "start";
 		//@TRACE 855=starting
 		log.fine(CLASS_NAME,methodName, "855");
-		synchronized (lifecycle) {
+		boolean starting = false;
+		lifecycle.lock();
+		try {
 			if (current_state == State.STOPPED && target_state == State.STOPPED) {
+				starting = true;
 				target_state = State.RUNNING;
 				current_state = State.RUNNING;
 				if (executorService == null) {
 					receiverFuture = null;
-					recThread = new Thread(this);
+					recThread = clientComms.newThread(this);
 					recThread.start();
 				} else {
 					recThread = null;
 					receiverFuture = executorService.submit(this);
 				}
 			}
+		} finally {
+			lifecycle.unlock();
 		}
 
-		AtomicInteger stoppedStateCounter = new AtomicInteger(0);
-		while (!isRunning()) {
-			try { Thread.sleep(100); } catch (Exception e) { }
-			if (current_state == State.STOPPED) {
-				if (stoppedStateCounter.incrementAndGet() > MAX_STOPPED_STATE_TO_STOP_THREAD) {
-					break;
-				}
-			} else {
-				stoppedStateCounter.set(0);
+		if (starting) {
+			awaitStarted(started);
+		}
+	}
+
+	/**
+	 * Starts up the Receiver as a task on the shared threads of a client host,
+	 * which runs whenever the channel has data to read.
+	 * @param host the threads of the client host
+	 * @param channel the channel the input stream reads from, which must be
+	 *            in non-blocking mode
+	 * @param callback the callback that inbound messages are passed to
+	 */
+	public void start(ClientHostPool host, SocketChannel channel, CommsCallback callback) {
+		final String methodName = "start";
+		//@TRACE 855=starting
+		log.fine(CLASS_NAME,methodName, "855");
+		lifecycle.lock();
+		try {
+			if (current_state == State.STOPPED && target_state == State.STOPPED) {
+				target_state = State.RUNNING;
+				current_state = State.RUNNING;
+				recThread = null;
+				receiverFuture = null;
+				this.host = host;
+				this.channel = channel;
+				this.callback = callback;
+				hostedTask = new HostedTask(host.getWorkers()) {
+					protected boolean runSlice() {
+						return receiveSlice();
+					}
+				};
+				host.arm(channel, hostedTask);
 			}
+		} finally {
+			lifecycle.unlock();
 		}
 	}
 
@@ -109,16 +147,25 @@ public class CommsReceiver implements Runnable {
 		final String methodName = "stop";
 		boolean isRunning;
 
-		synchronized (lifecycle) {
+		lifecycle.lock();
+		try {
 			//@TRACE 850=stopping
 			log.fine(CLASS_NAME,methodName, "850");
 			isRunning = isRunning();
 			if (isRunning) {
 				target_state = State.STOPPED;
 			}
+		} finally {
+			lifecycle.unlock();
 		}
 		// This and the clause above will prevent a thread from waiting for itself.
-		if (isRunning) {
+		if (hostedTask != null) {
+			if (isRunning) {
+				hostedTask.signal();
+				hostedTask.awaitIdle();
+			}
+			host.release(channel);
+		} else if (isRunning) {
 			if (receiverFuture != null) {
 				try {
 					receiverFuture.get();
@@ -140,111 +187,192 @@ public class CommsReceiver implements Runnable {
 	 */
 	public void run() {
 		Thread.currentThread().setName(threadName);
+		started.countDown();
 		final String methodName = "run";
-		MqttToken token = null;
 
 		try {
 			State my_target;
-			synchronized (lifecycle) {
+			lifecycle.lock();
+			try {
 				my_target = target_state;
+			} finally {
+				lifecycle.unlock();
 			}
 			while (my_target == State.RUNNING && (in != null)) {
+				receiveNext();
+				lifecycle.lock();
 				try {
-					//@TRACE 852=network read message
-					log.fine(CLASS_NAME,methodName,"852");
-					if (in.available() > 0) {
-						synchronized (lifecycle) {
-							current_state = State.RECEIVING;
-						}
-					}
-					MqttWireMessage message = in.readMqttWireMessage();
-					synchronized (lifecycle) {
-						current_state = State.RUNNING;
-					}
+					my_target = target_state;
+				} finally {
+					lifecycle.unlock();
+				}
+			} // end while
+		} finally {
+			lifecycle.lock();
+			try {
+				current_state = State.STOPPED;
+			} finally {
+				lifecycle.unlock();
+			}
+		} // end try
+
+		//@TRACE 854=<
+		log.fine(CLASS_NAME,methodName,"854");
+	}
+
+	/**
+	 * Reads the next message, if there is one, and passes it on.
+	 * @return true if a message was read
+	 */
+	private boolean receiveNext() {
+		final String methodName = "receiveNext";
+		MqttToken token = null;
+		MqttWireMessage message = null;
+
+		try {
+			//@TRACE 852=network read message
+			log.fine(CLASS_NAME,methodName,"852");
+			if (in.available() > 0) {
+				lifecycle.lock();
+				try {
+					current_state = State.RECEIVING;
+				} finally {
+					lifecycle.unlock();
+				}
+			}
+			message = in.readMqttWireMessage();
+			lifecycle.lock();
+			try {
+				current_state = State.RUNNING;
+			} finally {
+				lifecycle.unlock();
+			}
 
-					// instanceof checks if message is null
-					if (message instanceof MqttAck) {
-						token = tokenStore.getToken(message);
-						if (token!=null) {
-							synchronized (token) {
-								// Ensure the notify processing is done under a lock on the token
-								// This ensures that the send processing can complete  before the
-								// receive processing starts! ( request and ack and ack processing
-								// can occur before request processing is complete if not!
-								clientState.notifyReceivedAck((MqttAck)message);
-							}
-						} else if(message instanceof MqttPubRec || message instanceof MqttPubComp || message instanceof MqttPubAck) {
-							//This is an ack for a message we no longer have a ticket for.
-							//This probably means we already received this message and it's being send again
-							//because of timeouts, crashes, disconnects, restarts etc.
-							//It should be safe to ignore these unexpected messages.
-							log.fine(CLASS_NAME, methodName, "857");
-						} else {
-							// It its an ack and there is no token then something is not right.
-							// An ack should always have a token assoicated with it.
-							throw new MqttException(MqttException.REASON_CODE_UNEXPECTED_ERROR);
-						}
-					} else {
-						if (message != null) {
-							// A new message has arrived
-							clientState.notifyReceivedMsg(message);
-						}  
+			// instanceof checks if message is null
+			if (message instanceof MqttAck) {
+				token = tokenStore.getToken(message);
+				if (token!=null) {
+					token.internalTok.lock();
+					try {
+						// Ensure the notify processing is done under a lock on the token
+						// This ensures that the send processing can complete  before the
+						// receive processing starts! ( request and ack and ack processing
+						// can occur before request processing is complete if not!
+						clientState.notifyReceivedAck((MqttAck)message);
+					} finally {
+						token.internalTok.unlock();
+					}
+				} else if(message instanceof MqttPubRec || message instanceof MqttPubComp || message instanceof MqttPubAck) {
+					//This is an ack for a message we no longer have a ticket for.
+					//This probably means we already received this message and it's being send again
+					//because of timeouts, crashes, disconnects, restarts etc.
+					//It should be safe to ignore these unexpected messages.
+					log.fine(CLASS_NAME, methodName, "857");
+				} else {
+					// It its an ack and there is no token then something is not right.
+					// An ack should always have a token assoicated with it.
+					throw new MqttException(MqttException.REASON_CODE_UNEXPECTED_ERROR);
+				}
+			} else {
+				if (message != null) {
+					// A new message has arrived
+					clientState.notifyReceivedMsg(message);
+				}  
                                                 else {
                                                     // fix for bug 719
                                                     if (!clientComms.isConnected() && !clientComms.isConnecting()) {
                                                          throw new IOException("Connection is lost.");
                                                     }
                                                 }
-					}
+			}
+		}
+		catch (MqttException ex) {
+			//@TRACE 856=Stopping, MQttException
+			log.fine(CLASS_NAME,methodName,"856",null,ex);
+			lifecycle.lock();
+			try {
+				target_state = State.STOPPED;
+			} finally {
+				lifecycle.unlock();
+			}
+			// Token maybe null but that is handled in shutdown
+			clientComms.shutdownConnection(token, ex);
+		}
+		catch (IOException ioe) {
+			//@TRACE 853=Stopping due to IOException
+			log.fine(CLASS_NAME,methodName,"853");
+			if (target_state != State.STOPPED) {
+				lifecycle.lock();
+				try {
+					target_state = State.STOPPED;
+				} finally {
+					lifecycle.unlock();
 				}
-				catch (MqttException ex) {
-					//@TRACE 856=Stopping, MQttException
-					log.fine(CLASS_NAME,methodName,"856",null,ex);
-					synchronized (lifecycle) {
-						target_state = State.STOPPED;
-					}
-					// Token maybe null but that is handled in shutdown
-					clientComms.shutdownConnection(token, ex);
+				// An EOFException could be raised if the broker processes the
+				// DISCONNECT and ends the socket before we complete. As such,
+				// only shutdown the connection if we're not already shutting down.
+				if (!clientComms.isDisconnecting()) {
+					clientComms.shutdownConnection(token, new MqttException(MqttException.REASON_CODE_CONNECTION_LOST, ioe));
 				}
-				catch (IOException ioe) {
-					//@TRACE 853=Stopping due to IOException
-					log.fine(CLASS_NAME,methodName,"853");
-					if (target_state != State.STOPPED) {
-						synchronized (lifecycle) {
-							target_state = State.STOPPED;
-						}
-						// An EOFException could be raised if the broker processes the
-						// DISCONNECT and ends the socket before we complete. As such,
-						// only shutdown the connection if we're not already shutting down.
-						if (!clientComms.isDisconnecting()) {
-							clientComms.shutdownConnection(token, new MqttException(MqttException.REASON_CODE_CONNECTION_LOST, ioe));
-						}
-					}
+			}
+		}
+		finally {
+			lifecycle.lock();
+			try {
+				current_state = State.RUNNING;
+			} finally {
+				lifecycle.unlock();
+			}
+		}
+		return message != null;
+	}
+
+	/**
+	 * Reads messages on the threads of a client host, until there is no more
+	 * data to read or the slice is used up. Once all the data has been read,
+	 * the channel is armed to signal the task when there is more.
+	 * @return true if there may be more messages to read
+	 */
+	private boolean receiveSlice() {
+		for (int i = 0; i < HostedTask.SLICE_LIMIT; i++) {
+			lifecycle.lock();
+			try {
+				if (target_state != State.RUNNING || in == null) {
+					current_state = State.STOPPED;
+					return false;
 				}
-				finally {
-					synchronized (lifecycle) {
-						current_state = State.RUNNING;
+			} finally {
+				lifecycle.unlock();
+			}
+			if (!callback.hasSpace(hostedTask)) {
+				// the callback signals the task once it has made room
+				return false;
+			}
+			if (!receiveNext()) {
+				lifecycle.lock();
+				try {
+					if (target_state != State.RUNNING) {
+						current_state = State.STOPPED;
+						return false;
 					}
+				} finally {
+					lifecycle.unlock();
 				}
-				synchronized (lifecycle) {
-					my_target = target_state;
-				}
-			} // end while
-		} finally {
-			synchronized (lifecycle) {
-				current_state = State.STOPPED;
+				host.arm(channel, hostedTask);
+				return false;
 			}
-		} // end try
-
-		//@TRACE 854=<
-		log.fine(CLASS_NAME,methodName,"854");
+		}
+		return true;
 	}
 
 	public boolean isRunning() {
 		boolean result;
-		synchronized (lifecycle) {
+		lifecycle.lock();
+		try {
 			result = ((current_state == State.RUNNING || current_state == State.RECEIVING) && 
 					target_state == State.RUNNING);
+		} finally {
+			lifecycle.unlock();
 		}
 		return result;
 	}
@@ -256,8 +384,11 @@ public class CommsReceiver implements Runnable {
 	 */
 	public boolean isReceiving() {
 		boolean result;
-		synchronized (lifecycle) {
+		lifecycle.lock();
+		try {
 			result = (current_state == State.RECEIVING);
+		} finally {
+			lifecycle.unlock();
 		}
 		return result;
 	}
@@ -17,10 +17,12 @@ package org.eclipse.paho.client.mqttv3.internal;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttToken;
@@ -36,17 +38,19 @@ public class CommsSender implements Runnable {
 	private static final String CLASS_NAME = CommsSender.class.getName();
 	private Logger log = LoggerFactory.getLogger(LoggerFactory.MQTT_CLIENT_MSG_CAT, CLASS_NAME);
 
-	public static final int MAX_STOPPED_STATE_TO_STOP_THREAD = 300;	// 30 seconds
+	static final int START_TIMEOUT = 30000;	// milliseconds
 
 	//Sends MQTT packets to the server on its own thread
 	private enum State {STOPPED, RUNNING, STARTING}
 
     private State current_state = State.STOPPED;
 	private State target_state = State.STOPPED;
-	private final Object lifecycle = new Object();
+	private final ReentrantLock lifecycle = new ReentrantLock();
 	private Thread 	sendThread		= null;
 	private String threadName;
 	private Future<?> senderFuture;
+	private final CountDownLatch started = new CountDownLatch(1);
+	private HostedTask hostedTask;
 
 	private ClientState clientState = null;
 	private MqttOutputStream out;
@@ -69,31 +73,54 @@ public class CommsSender implements Runnable {
 	 */
 	public void start(String threadName, ExecutorService executorService) {
 		this.threadName = threadName;
-		synchronized (lifecycle) {
+		boolean starting = false;
+		lifecycle.lock();
+		try {
 			if (current_state == State.STOPPED && target_state == State.STOPPED) {
+				starting = true;
 				target_state = State.RUNNING;
 				current_state = State.RUNNING;
 				if (executorService == null) {
 					senderFuture = null;
-					sendThread = new Thread(this);
+					sendThread = clientComms.newThread(this);
 					sendThread.start();
 				} else {
 					sendThread = null;
 					senderFuture = executorService.submit(this);
 				}
 			}
+		} finally {
+			lifecycle.unlock();
 		}
     
-		AtomicInteger stoppedStateCounter = new AtomicInteger(0);
-		while (!isRunning()) {
-			try { Thread.sleep(100); } catch (Exception e) { }
-			if (current_state == State.STOPPED) {
-				if (stoppedStateCounter.incrementAndGet() > MAX_STOPPED_STATE_TO_STOP_THREAD) {
-					break;
-				}
-			} else {
-				stoppedStateCounter.set(0);
+		if (starting) {
+			awaitStarted(started);
+		}
+	}
+
+	/**
+	 * Starts up the Sender as a task on the shared threads of a client host,
+	 * which runs whenever there is work to send.
+	 * @param host the threads of the client host
+	 */
+	public void start(ClientHostPool host) {
+		lifecycle.lock();
+		try {
+			if (current_state == State.STOPPED && target_state == State.STOPPED) {
+				target_state = State.RUNNING;
+				current_state = State.RUNNING;
+				sendThread = null;
+				senderFuture = null;
+				hostedTask = new HostedTask(host.getWorkers()) {
+					protected boolean runSlice() {
+						return sendSlice();
+					}
+				};
+				clientState.setSendTask(hostedTask);
+				hostedTask.signal();
 			}
+		} finally {
+			lifecycle.unlock();
 		}
 	}
 
@@ -108,7 +135,8 @@ public class CommsSender implements Runnable {
 			return;
 		}
 
-		synchronized (lifecycle) {
+		lifecycle.lock();
+		try {
 			//@TRACE 800=stopping sender
 			log.fine(CLASS_NAME,methodName,"800");
 			isRunning = isRunning();
@@ -116,10 +144,15 @@ public class CommsSender implements Runnable {
 				target_state = State.STOPPED;
 				clientState.notifyQueueLock();
 			}
+		} finally {
+			lifecycle.unlock();
 		}
 		// This and the clause above will prevent a thread from waiting for itself.
 		if (isRunning) {
-			if (senderFuture != null) {
+			if (hostedTask != null) {
+				hostedTask.awaitIdle();
+				clientState.setSendTask(null);
+			} else if (senderFuture != null) {
 				try {
 					senderFuture.get();
 				} catch (ExecutionException | InterruptedException e) {
@@ -138,53 +171,31 @@ public class CommsSender implements Runnable {
 
 	public void run() {
 		Thread.currentThread().setName(threadName);
+		started.countDown();
 		final String methodName = "run";
 		MqttWireMessage message = null;
 
 		try {
 			State my_target;
-			synchronized (lifecycle) {
+			lifecycle.lock();
+			try {
 				my_target = target_state;
+			} finally {
+				lifecycle.unlock();
 			}
 			while (my_target == State.RUNNING && (out != null)) {
 				try {
 					message = clientState.get();
 					if (message != null) {
-						//@TRACE 802=network send key={0} msg={1}
-						log.fine(CLASS_NAME,methodName,"802", new Object[] {message.getKey(),message});
-
-						if (message instanceof MqttAck) {
-							out.write(message);
-							out.flush();
-						} else {
-							MqttToken token = message.getToken();
-							if (token == null) {
-								token = tokenStore.getToken(message);
-							}
-							// While quiescing the tokenstore can be cleared so need
-							// to check for null for the case where clear occurs
-							// while trying to send a message.
-							if (token != null) {
-								synchronized (token) {
-									out.write(message);
-									try {
-										out.flush();
-									} catch (IOException ex) {
-										// The flush has been seen to fail on disconnect of a SSL socket
-										// as disconnect is in progress this should not be treated as an error
-										if (!(message instanceof MqttDisconnect)) {
-											throw ex;
-										}
-									}
-									clientState.notifySent(message);
-								}
-							}
-						}
+						send(message);
 					} else { // null message
 						//@TRACE 803=get message returned null, stopping}
 						log.fine(CLASS_NAME,methodName,"803");
-						synchronized (lifecycle) {
+						lifecycle.lock();
+						try {
 							target_state = State.STOPPED;
+						} finally {
+							lifecycle.unlock();
 						}
 					}
 				} catch (MqttException me) {
@@ -192,13 +203,19 @@ public class CommsSender implements Runnable {
 				} catch (Exception ex) {
 					handleRunException(message, ex);
 				}
-				synchronized (lifecycle) {
+				lifecycle.lock();
+				try {
 					my_target = target_state;
+				} finally {
+					lifecycle.unlock();
 				}
 			} // end while
 		} finally {
-			synchronized (lifecycle) {
+			lifecycle.lock();
+			try {
 				current_state = State.STOPPED;
+			} finally {
+				lifecycle.unlock();
 			}
 		}
 
@@ -206,6 +223,77 @@ public class CommsSender implements Runnable {
 		log.fine(CLASS_NAME, methodName,"805");
 	}
 
+	/**
+	 * Sends work on the threads of a client host, until there is no more
+	 * that can be sent now or the slice is used up.
+	 * @return true if there may be more work to send
+	 */
+	private boolean sendSlice() {
+		for (int i = 0; i < HostedTask.SLICE_LIMIT; i++) {
+			lifecycle.lock();
+			try {
+				if (target_state != State.RUNNING || out == null) {
+					current_state = State.STOPPED;
+					return false;
+				}
+			} finally {
+				lifecycle.unlock();
+			}
+			MqttWireMessage message = null;
+			try {
+				message = clientState.poll();
+				if (message == null) {
+					return false;
+				}
+				send(message);
+			} catch (MqttException me) {
+				handleRunException(message, me);
+			} catch (Exception ex) {
+				handleRunException(message, ex);
+			}
+		}
+		return true;
+	}
+
+	private void send(MqttWireMessage message) throws MqttException, IOException {
+		final String methodName = "send";
+		//@TRACE 802=network send key={0} msg={1}
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME,methodName,"802", new Object[] {message.getKey(),message});
+		}
+
+		if (message instanceof MqttAck) {
+			out.write(message);
+			out.flush();
+		} else {
+			MqttToken token = message.getToken();
+			if (token == null) {
+				token = tokenStore.getToken(message);
+			}
+			// While quiescing the tokenstore can be cleared so need
+			// to check for null for the case where clear occurs
+			// while trying to send a message.
+			if (token != null) {
+				token.internalTok.lock();
+				try {
+					out.write(message);
+					try {
+						out.flush();
+					} catch (IOException ex) {
+						// The flush has been seen to fail on disconnect of a SSL socket
+						// as disconnect is in progress this should not be treated as an error
+						if (!(message instanceof MqttDisconnect)) {
+							throw ex;
+						}
+					}
+					clientState.notifySent(message);
+				} finally {
+					token.internalTok.unlock();
+				}
+			}
+		}
+	}
+
 	private void handleRunException(MqttWireMessage message, Exception ex) {
 		final String methodName = "handleRunException";
 		//@TRACE 804=exception
@@ -216,16 +304,35 @@ public class CommsSender implements Runnable {
 		} else {
 			mex = (MqttException)ex;
 		}
-		synchronized (lifecycle) {
+		lifecycle.lock();
+		try {
 			target_state = State.STOPPED;
+		} finally {
+			lifecycle.unlock();
 		}
 		clientComms.shutdownConnection(null, mex);
 	}
 
+	/**
+	 * Waits until a comms task that has been started is running, but not
+	 * for longer than {@link #START_TIMEOUT}, as its executor may be busy.
+	 * @param started counted down by the task when it runs
+	 */
+	static void awaitStarted(CountDownLatch started) {
+		try {
+			started.await(START_TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
 	public boolean isRunning() {
 		boolean result;
-		synchronized (lifecycle) {
+		lifecycle.lock();
+		try {
 			result = (current_state == State.RUNNING && target_state == State.RUNNING);
+		} finally {
+			lifecycle.unlock();
 		}
 		return result;
 	}
@@ -59,7 +59,9 @@ public class CommsTokenStore {
 		this.tokens = new Hashtable();
 		this.logContext = logContext;
 		//@TRACE 308=<>
-		log.fine(CLASS_NAME,methodName,"308");//,new Object[]{message});
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME,methodName,"308");//,new Object[]{message});
+		}
 
 	}
 
@@ -89,7 +91,9 @@ public class CommsTokenStore {
 	public MqttToken removeToken(String key) {
 		final String methodName = "removeToken";
 		//@TRACE 306=key={0}
-		log.fine(CLASS_NAME,methodName,"306",new Object[]{key});
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME,methodName,"306",new Object[]{key});
+		}
 		
 		if ( null != key ){
 		    return (MqttToken) tokens.remove(key);
@@ -113,13 +117,17 @@ public class CommsTokenStore {
 			if (this.tokens.containsKey(key)) {
 				token = (MqttDeliveryToken)this.tokens.get(key);
 				//@TRACE 302=existing key={0} message={1} token={2}
-				log.fine(CLASS_NAME,methodName, "302",new Object[]{key, message,token});
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME,methodName, "302",new Object[]{key, message,token});
+				}
 			} else {
 				token = new MqttDeliveryToken(logContext);
 				token.internalTok.setKey(key);
 				this.tokens.put(key, token);
 				//@TRACE 303=creating new token key={0} message={1} token={2}
-				log.fine(CLASS_NAME,methodName,"303",new Object[]{key, message, token});
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME,methodName,"303",new Object[]{key, message, token});
+				}
 			}
 		}
 		return token;
@@ -134,7 +142,9 @@ public class CommsTokenStore {
 			if (closedResponse == null) {
 				String key = message.getKey();
 				//@TRACE 300=key={0} message={1}
-				log.fine(CLASS_NAME,methodName,"300",new Object[]{key, message});
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME,methodName,"300",new Object[]{key, message});
+				}
 				
 				saveToken(token,key);
 			} else {
@@ -148,7 +158,9 @@ public class CommsTokenStore {
 
 		synchronized(tokens) {
 			//@TRACE 307=key={0} token={1}
-			log.fine(CLASS_NAME,methodName,"307",new Object[]{key,token.toString()});
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME,methodName,"307",new Object[]{key,token.toString()});
+			}
 			token.internalTok.setKey(key);
 			this.tokens.put(key, token);
 		}
@@ -159,7 +171,9 @@ public class CommsTokenStore {
 
 		synchronized(tokens) {
 			//@TRACE 309=resp={0}
-			log.fine(CLASS_NAME,methodName,"309",new Object[]{quiesceResponse});
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME,methodName,"309",new Object[]{quiesceResponse});
+			}
 
 			closedResponse = quiesceResponse;
 		}
@@ -227,7 +241,9 @@ public class CommsTokenStore {
 	public void clear() {
 		final String methodName = "clear";
 		//@TRACE 305=> {0} tokens
-		log.fine(CLASS_NAME, methodName, "305", new Object[] {Integer.valueOf(tokens.size())});
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "305", new Object[] {Integer.valueOf(tokens.size())});
+		}
 		synchronized(tokens) {
 			tokens.clear();
 		}
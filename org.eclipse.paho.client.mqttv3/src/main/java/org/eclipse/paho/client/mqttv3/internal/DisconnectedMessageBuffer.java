@@ -24,6 +24,7 @@ import org.eclipse.paho.client.mqttv3.MqttToken;
 import org.eclipse.paho.client.mqttv3.internal.wire.MqttWireMessage;
 import org.eclipse.paho.client.mqttv3.logging.Logger;
 import org.eclipse.paho.client.mqttv3.logging.LoggerFactory;
+import org.eclipse.paho.client.mqttv3.metrics.MqttClientMetrics;
 
 public class DisconnectedMessageBuffer implements Runnable {
 
@@ -34,6 +35,7 @@ public class DisconnectedMessageBuffer implements Runnable {
 	private final Object bufLock = new Object(); // Used to synchronise the buffer
 	private IDisconnectedBufferCallback callback;
         private IDiscardedBufferMessageCallback messageDiscardedCallBack;
+	private MqttClientMetrics metrics;
 
 	public DisconnectedMessageBuffer(DisconnectedBufferOptions options) {
 		this.bufferOpts = options;
@@ -70,12 +72,28 @@ public class DisconnectedMessageBuffer implements Runnable {
 				}
 				buffer.remove(0);
 				buffer.add(bufferedMessage);
+				if (metrics != null) {
+					metrics.bufferSpilled(bufferOpts.getBufferSize(), true);
+				}
 			} else {
+				if (metrics != null) {
+					metrics.bufferSpilled(bufferOpts.getBufferSize(), false);
+				}
 				throw new MqttException(MqttException.REASON_CODE_DISCONNECTED_BUFFER_FULL);
 			}
 		}
 	}
 
+	/**
+	 * Sets the metrics told when a message is put into a full buffer.
+	 * 
+	 * @param metrics
+	 *            the metrics of the client
+	 */
+	public void setMetrics(MqttClientMetrics metrics) {
+		this.metrics = metrics;
+	}
+
 	/**
 	 * Retrieves a message from the buffer at the given index.
 	 * 
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - shared thread pool client host
+ */
+package org.eclipse.paho.client.mqttv3.internal;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A unit of client work, such as sending queued packets, that runs on a
+ * shared pool of threads when it is signalled, instead of on a thread of its
+ * own that waits for work.
+ * <p>
+ * The task is queued at most once at a time, so it never runs on two threads
+ * at once, and signals that arrive while it is queued or running are merged.
+ * Each run handles at most {@link #SLICE_LIMIT} items of work; if there is
+ * more, the task queues itself again behind the work of other clients, so a
+ * busy client cannot starve the rest.
+ * </p>
+ */
+public abstract class HostedTask implements Runnable {
+
+	/**
+	 * The most items of work, such as packets, that one run handles.
+	 */
+	public static final int SLICE_LIMIT = 16;
+
+	private final Executor executor;
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+	private volatile boolean pending = false;
+	private volatile Thread runner = null;
+	private final Object idle = new Object();
+
+	/**
+	 * @param executor the shared threads to run on
+	 */
+	public HostedTask(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Handles up to {@link #SLICE_LIMIT} items of work, without waiting for
+	 * more.
+	 * @return true if there is more work to do straight away
+	 */
+	protected abstract boolean runSlice();
+
+	/**
+	 * Tells the task that there may be work for it, queueing it to run if it
+	 * is not queued or running already.
+	 */
+	public void signal() {
+		pending = true;
+		if (scheduled.compareAndSet(false, true)) {
+			execute();
+		}
+	}
+
+	public void run() {
+		boolean more = false;
+		runner = Thread.currentThread();
+		try {
+			pending = false;
+			more = runSlice();
+		} finally {
+			runner = null;
+			if (more) {
+				execute();
+			} else {
+				setIdle();
+				// a signal may have arrived after the work was checked
+				if (pending && scheduled.compareAndSet(false, true)) {
+					execute();
+				}
+			}
+		}
+	}
+
+	private void execute() {
+		try {
+			executor.execute(this);
+		} catch (RejectedExecutionException e) {
+			// the host has been closed, so the work is dropped
+			setIdle();
+		}
+	}
+
+	private void setIdle() {
+		synchronized (idle) {
+			scheduled.set(false);
+			idle.notifyAll();
+		}
+	}
+
+	/**
+	 * Waits until the task is neither queued nor running. Returns at once
+	 * when called by the task itself.
+	 */
+	public void awaitIdle() {
+		if (runner == Thread.currentThread()) {
+			return;
+		}
+		synchronized (idle) {
+			while (scheduled.get()) {
+				try {
+					idle.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+}
@@ -19,13 +19,16 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.ConnectException;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
+import java.nio.channels.SocketChannel;
 
 import javax.net.SocketFactory;
 
 import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttSocketOptions;
 import org.eclipse.paho.client.mqttv3.logging.Logger;
 import org.eclipse.paho.client.mqttv3.logging.LoggerFactory;
 
@@ -41,6 +44,12 @@ public class TCPNetworkModule implements NetworkModule {
 	private String host;
 	private int port;
 	private int conTimeout;
+	private InetAddress address;
+	private MqttSocketOptions socketOptions = new MqttSocketOptions();
+	private boolean selectable = false;
+	private SocketChannel channel;
+	private InputStream channelInputStream;
+	private OutputStream channelOutputStream;
 
 	/**
 	 * Constructs a new TCPNetworkModule using the specified host and
@@ -69,10 +78,22 @@ public class TCPNetworkModule implements NetworkModule {
 		try {
 			// @TRACE 252=connect to host {0} port {1} timeout {2}
 			log.fine(CLASS_NAME,methodName, "252", new Object[] {host, Integer.valueOf(port), Long.valueOf(conTimeout*1000)});
-			SocketAddress sockaddr = new InetSocketAddress(host, port);
+			SocketAddress sockaddr;
+			if (address == null) {
+				sockaddr = new InetSocketAddress(host, port);
+			} else {
+				// keep the host name with the address, for TLS hostname verification
+				sockaddr = new InetSocketAddress(InetAddress.getByAddress(host, address.getAddress()), port);
+			}
+			if (isSelectable()) {
+				startChannel(sockaddr);
+				return;
+			}
+			channel = null;
 			socket = factory.createSocket();
+			applySocketOptions(socket);
 			socket.connect(sockaddr, conTimeout*1000);
-			socket.setSoTimeout(1000);
+			socket.setSoTimeout(socketOptions.getReadTimeout());
 		}
 		catch (ConnectException ex) {
 			//@TRACE 250=Failed to create TCP socket
@@ -81,11 +102,58 @@ public class TCPNetworkModule implements NetworkModule {
 		}
 	}
 
+	/**
+	 * Connects a socket channel, which is then put in non-blocking mode.
+	 */
+	private void startChannel(SocketAddress sockaddr) throws IOException {
+		SocketChannel newChannel = SocketChannel.open();
+		try {
+			applySocketOptions(newChannel.socket());
+			newChannel.socket().connect(sockaddr, conTimeout*1000);
+			newChannel.configureBlocking(false);
+		} catch (IOException ex) {
+			newChannel.close();
+			throw ex;
+		}
+		channel = newChannel;
+		socket = newChannel.socket();
+		channelInputStream = new ChannelInputStream(newChannel, null, 0);
+		channelOutputStream = new ChannelOutputStream(newChannel);
+	}
+
+	/**
+	 * Applies the socket options that must be set before the socket is
+	 * connected, leaving platform defaults in place where none is given.
+	 */
+	private void applySocketOptions(Socket socket) throws IOException {
+		if (socketOptions.isTcpNoDelay()) {
+			socket.setTcpNoDelay(true);
+		}
+		if (socketOptions.isKeepAlive()) {
+			socket.setKeepAlive(true);
+		}
+		if (socketOptions.getSendBufferSize() != MqttSocketOptions.SYSTEM_DEFAULT) {
+			socket.setSendBufferSize(socketOptions.getSendBufferSize());
+		}
+		if (socketOptions.getReceiveBufferSize() != MqttSocketOptions.SYSTEM_DEFAULT) {
+			socket.setReceiveBufferSize(socketOptions.getReceiveBufferSize());
+		}
+		if (socketOptions.getTrafficClass() != MqttSocketOptions.SYSTEM_DEFAULT) {
+			socket.setTrafficClass(socketOptions.getTrafficClass());
+		}
+	}
+
 	public InputStream getInputStream() throws IOException {
+		if (channel != null) {
+			return channelInputStream;
+		}
 		return socket.getInputStream();
 	}
 
 	public OutputStream getOutputStream() throws IOException {
+		if (channel != null) {
+			return channelOutputStream;
+		}
 		return socket.getOutputStream();
 	}
 
@@ -94,7 +162,9 @@ public class TCPNetworkModule implements NetworkModule {
 	 * @throws IOException if there is an error closing the socket
 	 */
 	public void stop() throws IOException {
-		if (socket != null) {
+		if (channel != null) {
+			channelOutputStream.close();
+		} else if (socket != null) {
 			socket.close();
 		}
 	}
@@ -107,6 +177,50 @@ public class TCPNetworkModule implements NetworkModule {
 		this.conTimeout = timeout;
 	}
 
+	/**
+	 * Sets the address to connect to, instead of the one the host name
+	 * resolves to first. The host name is still used everywhere else, for
+	 * example to verify the server's certificate.
+	 * @param address one of the addresses of the host, or null to resolve the
+	 *            host name when the module is started
+	 */
+	public void setAddress(InetAddress address) {
+		this.address = address;
+	}
+
+	/**
+	 * Set the options to apply to the socket
+	 * @param socketOptions The socket options
+	 */
+	public void setSocketOptions(MqttSocketOptions socketOptions) {
+		this.socketOptions = socketOptions;
+	}
+
+	/**
+	 * Asks for the connection to be made over a socket channel in
+	 * non-blocking mode, so that a selector can tell when there is data to
+	 * read. Reads from the input stream then never wait: a read that would
+	 * wait fails at once with a <code>SocketTimeoutException</code>. This is
+	 * only possible with the default socket factory, and is ignored
+	 * otherwise.
+	 * @param selectable true to connect over a selectable channel
+	 */
+	public void setSelectable(boolean selectable) {
+		this.selectable = selectable;
+	}
+
+	private boolean isSelectable() {
+		return selectable && getClass() == TCPNetworkModule.class && factory == SocketFactory.getDefault();
+	}
+
+	/**
+	 * @return the channel of a selectable connection, or null if the
+	 *         connection was not made over a channel
+	 */
+	public SocketChannel getChannel() {
+		return channel;
+	}
+
 	public String getServerURI() {
 		return "tcp://" + host + ":" + port;
 	}
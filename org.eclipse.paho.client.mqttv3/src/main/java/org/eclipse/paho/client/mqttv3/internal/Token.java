@@ -16,8 +16,13 @@
 
 package org.eclipse.paho.client.mqttv3.internal;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
 import org.eclipse.paho.client.mqttv3.IMqttActionListener;
 import org.eclipse.paho.client.mqttv3.IMqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttBuffer;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.eclipse.paho.client.mqttv3.internal.wire.MqttAck;
@@ -35,10 +40,14 @@ public class Token {
 	private boolean pendingComplete = false;
 	private boolean sent = false;
 	
-	private final Object responseLock = new Object();
-	private final Object sentLock = new Object();
+	private final ReentrantLock responseLock = new ReentrantLock();
+	private final Condition responseChanged = responseLock.newCondition();
+	private final ReentrantLock sentLock = new ReentrantLock();
+	private final Condition sentChanged = sentLock.newCondition();
+	private final ReentrantLock actionLock = new ReentrantLock();
 	
 	protected MqttMessage message = null; 
+	private MqttBuffer payloadBuffer = null;
 	private MqttWireMessage response = null;
 	private MqttException exception = null;
 	private String[] topics = null;
@@ -52,6 +61,7 @@ public class Token {
 	
 	private int messageID = 0;
 	private boolean notified = false;
+	private volatile long sentTime = 0;
 	
 	public Token(String logContext) {
 		log.setResourceName(logContext);
@@ -103,12 +113,16 @@ public class Token {
 	public void waitForCompletion(long timeout) throws MqttException {
 		final String methodName = "waitForCompletion";
 		//@TRACE 407=key={0} wait max={1} token={2}
-		log.fine(CLASS_NAME,methodName, "407",new Object[]{getKey(), Long.valueOf(timeout), this});
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME,methodName, "407",new Object[]{getKey(), Long.valueOf(timeout), this});
+		}
 
 		MqttWireMessage resp = waitForResponse(timeout);
 		if (resp == null && !completed) {
 			//@TRACE 406=key={0} timed out token={1}
-			log.fine(CLASS_NAME,methodName, "406",new Object[]{getKey(), this});
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME,methodName, "406",new Object[]{getKey(), this});
+			}
 			exception = new MqttException(MqttException.REASON_CODE_CLIENT_TIMEOUT);
 			throw exception;
 		}
@@ -129,20 +143,25 @@ public class Token {
 	
 	protected MqttWireMessage waitForResponse(long timeout) throws MqttException {
 		final String methodName = "waitForResponse";
-		synchronized (responseLock) {
+		responseLock.lock();
+		try {
 			//@TRACE 400=>key={0} timeout={1} sent={2} completed={3} hasException={4} response={5} token={6}
-			log.fine(CLASS_NAME, methodName, "400",new Object[]{getKey(), Long.valueOf(timeout),Boolean.valueOf(sent),Boolean.valueOf(completed),(exception==null)?"false":"true",response,this},exception);
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "400",new Object[]{getKey(), Long.valueOf(timeout),Boolean.valueOf(sent),Boolean.valueOf(completed),(exception==null)?"false":"true",response,this},exception);
+			}
 
 			while (!this.completed) {
 				if (this.exception == null) {
 					try {
 						//@TRACE 408=key={0} wait max={1}
-						log.fine(CLASS_NAME,methodName,"408",new Object[] {getKey(), Long.valueOf(timeout)});
+						if (log.isLoggable(Logger.FINE)) {
+							log.fine(CLASS_NAME,methodName,"408",new Object[] {getKey(), Long.valueOf(timeout)});
+						}
 	
 						if (timeout <= 0) {
-							responseLock.wait();
+							responseChanged.await();
 						} else {
-							responseLock.wait(timeout);
+							responseChanged.await(timeout, TimeUnit.MILLISECONDS);
 						}
 					} catch (InterruptedException e) {
 						exception = new MqttException(e);
@@ -161,9 +180,13 @@ public class Token {
 					}
 				}
 			}
+		} finally {
+			responseLock.unlock();
 		}
 		//@TRACE 402=key={0} response={1}
-		log.fine(CLASS_NAME,methodName, "402",new Object[]{getKey(), this.response});
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME,methodName, "402",new Object[]{getKey(), this.response});
+		}
 		return this.response;
 	}
 	
@@ -175,9 +198,12 @@ public class Token {
 	protected void markComplete(MqttWireMessage msg, MqttException ex) {
 		final String methodName = "markComplete";
 		//@TRACE 404=>key={0} response={1} excep={2}
-		log.fine(CLASS_NAME,methodName,"404",new Object[]{getKey(),msg,ex});
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME,methodName,"404",new Object[]{getKey(),msg,ex});
+		}
 				
-		synchronized(responseLock) {
+		responseLock.lock();
+		try {
 			// ACK means that everything was OK, so mark the message for garbage collection.
 			if (msg instanceof MqttAck) {
 				this.message = null;
@@ -185,6 +211,8 @@ public class Token {
 			this.pendingComplete = true;
 			this.response = msg;
 			this.exception = ex;
+		} finally {
+			responseLock.unlock();
 		}
 	}
 	/**
@@ -194,9 +222,12 @@ public class Token {
 		protected void notifyComplete() {
 			final String methodName = "notifyComplete";
 			//@TRACE 411=>key={0} response={1} excep={2}
-			log.fine(CLASS_NAME,methodName,"404",new Object[]{getKey(),this.response, this.exception});
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME,methodName,"404",new Object[]{getKey(),this.response, this.exception});
+			}
 
-			synchronized (responseLock) {
+			responseLock.lock();
+			try {
 				// If pending complete is set then normally the token can be marked
 				// as complete and users notified. An abnormal error may have 
 				// caused the client to shutdown beween pending complete being set
@@ -208,11 +239,16 @@ public class Token {
 					pendingComplete = false;
 				}
 				
-				responseLock.notifyAll();
+				responseChanged.signalAll();
+			} finally {
+				responseLock.unlock();
 			}
-			synchronized (sentLock) {
+			sentLock.lock();
+			try {
 				sent=true;	
-				sentLock.notifyAll();
+				sentChanged.signalAll();
+			} finally {
+				sentLock.unlock();
 			}
 		}
 	
@@ -234,18 +270,24 @@ public class Token {
 
 	public void waitUntilSent() throws MqttException {
 		final String methodName = "waitUntilSent";
-		synchronized (sentLock) {
-			synchronized (responseLock) {
+		sentLock.lock();
+		try {
+			responseLock.lock();
+			try {
 				if (this.exception != null) {
 					throw this.exception;
 				}
+			} finally {
+				responseLock.unlock();
 			}
 			while (!sent) {
 				try {
 					//@TRACE 409=wait key={0}
-					log.fine(CLASS_NAME,methodName, "409",new Object[]{getKey()});
+					if (log.isLoggable(Logger.FINE)) {
+						log.fine(CLASS_NAME,methodName, "409",new Object[]{getKey()});
+					}
 
-					sentLock.wait();
+					sentChanged.await();
 				} catch (InterruptedException e) {
 				}
 			}
@@ -256,6 +298,8 @@ public class Token {
 				}
 				throw this.exception;
 			}
+		} finally {
+			sentLock.unlock();
 		}
 	}
 	
@@ -266,17 +310,43 @@ public class Token {
 	protected void notifySent() {
 		final String methodName = "notifySent";
 		//@TRACE 403=> key={0}
-		log.fine(CLASS_NAME, methodName, "403",new Object[]{getKey()});
-		synchronized (responseLock) {
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "403",new Object[]{getKey()});
+		}
+		responseLock.lock();
+		try {
 			this.response = null;
 			this.completed = false;
+		} finally {
+			responseLock.unlock();
 		}
-		synchronized (sentLock) {
+		sentLock.lock();
+		try {
 			sent = true;
-			sentLock.notifyAll();
+			sentChanged.signalAll();
+		} finally {
+			sentLock.unlock();
 		}
 	}
 	
+	/**
+	 * Locks the token while the comms threads send its message, process its
+	 * acknowledgement or complete its action, so that these happen one at a
+	 * time. A lock rather than a monitor, as user callbacks may run under it.
+	 * Only the comms classes in this package take it; it is not part of the
+	 * token's API.
+	 */
+	void lock() {
+		actionLock.lock();
+	}
+
+	/**
+	 * Releases the lock taken by {@link #lock()}.
+	 */
+	void unlock() {
+		actionLock.unlock();
+	}
+
 	public IMqttAsyncClient getClient() {
 		return client;
 	}
@@ -292,7 +362,9 @@ public class Token {
 			throw new MqttException(MqttException.REASON_CODE_TOKEN_INUSE);
 		}
 		//@TRACE 410=> key={0}
-		log.fine(CLASS_NAME, methodName, "410",new Object[]{getKey()});
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "410",new Object[]{getKey()});
+		}
 		
 		client = null;
 		completed = false;
@@ -313,6 +385,26 @@ public class Token {
 	
 	public void setMessage(MqttMessage msg) {
 		this.message = msg;
+		this.payloadBuffer = (msg == null) ? null : msg.getPayloadBuffer();
+	}
+
+	/**
+	 * Releases the pooled payload of the message associated with this token,
+	 * if it has one. Called once the token has completed, whether or not
+	 * delivery succeeded, or is dropped; later calls have no effect.
+	 */
+	public void releasePayload() {
+		MqttBuffer buffer;
+		responseLock.lock();
+		try {
+			buffer = payloadBuffer;
+			payloadBuffer = null;
+		} finally {
+			responseLock.unlock();
+		}
+		if (buffer != null) {
+			buffer.release();
+		}
 	}
 	
 	public String[] getTopics() {
@@ -335,13 +427,31 @@ public class Token {
 		this.key = key;
 	}
 
+	/**
+	 * @param sentTime when the message was last written to the network, in
+	 *            nanoseconds of the client's timer
+	 */
+	protected void setSentTime(long sentTime) {
+		this.sentTime = sentTime;
+	}
+
+	/**
+	 * @return when the message was last written to the network, or 0
+	 */
+	protected long getSentTime() {
+		return sentTime;
+	}
+
 	public String getKey() {
 		return key;
 	}
 
 	public void setException(MqttException exception) {
-		synchronized(responseLock) {
+		responseLock.lock();
+		try {
 			this.exception = exception;
+		} finally {
+			responseLock.unlock();
 		}
 	}
 
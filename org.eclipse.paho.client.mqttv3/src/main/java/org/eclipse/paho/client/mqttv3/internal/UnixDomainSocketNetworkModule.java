@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - Unix domain socket transport
+ */
+package org.eclipse.paho.client.mqttv3.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttSocketOptions;
+import org.eclipse.paho.client.mqttv3.logging.Logger;
+import org.eclipse.paho.client.mqttv3.logging.LoggerFactory;
+
+/**
+ * A network module for connecting to a broker on the same host over a Unix
+ * domain socket, which avoids the cost of the loopback TCP stack.
+ * <p>
+ * Unix domain socket channels were added in Java 16. The client is built for
+ * older Java versions, so the Java 16 API is used reflectively and
+ * {@link #isSupported()} tells whether it is available; on older JVMs
+ * <code>unix://</code> URIs are rejected and nothing else is affected.
+ * </p>
+ * <p>
+ * The channel is used in non-blocking mode, so that reads can time out like
+ * reads from a TCP socket with the read timeout of the
+ * {@link MqttSocketOptions}. The other socket options do not apply.
+ * </p>
+ */
+public class UnixDomainSocketNetworkModule implements NetworkModule {
+	private static final String CLASS_NAME = UnixDomainSocketNetworkModule.class.getName();
+	private Logger log = LoggerFactory.getLogger(LoggerFactory.MQTT_CLIENT_MSG_CAT, CLASS_NAME);
+
+	// java.net.UnixDomainSocketAddress.of(String)
+	private static final Method ADDRESS_OF;
+	// java.nio.channels.SocketChannel.open(ProtocolFamily)
+	private static final Method OPEN_CHANNEL;
+	private static final ProtocolFamily UNIX;
+
+	static {
+		Method addressOf = null;
+		Method openChannel = null;
+		ProtocolFamily unix = null;
+		try {
+			addressOf = Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", String.class);
+			openChannel = SocketChannel.class.getMethod("open", ProtocolFamily.class);
+			unix = StandardProtocolFamily.valueOf("UNIX");
+		} catch (Exception e) {
+			// Java 15 or older, where the address class may exist on its own
+			addressOf = null;
+		}
+		ADDRESS_OF = addressOf;
+		OPEN_CHANNEL = openChannel;
+		UNIX = unix;
+	}
+
+	private final String path;
+	private MqttSocketOptions socketOptions = new MqttSocketOptions();
+	private SocketChannel channel;
+	private Selector readSelector;
+	private InputStream inputStream;
+	private OutputStream outputStream;
+
+	/**
+	 * Constructs a new UnixDomainSocketNetworkModule for the socket file
+	 * at the given path.
+	 * @param path the path of the broker's socket file
+	 * @param resourceContext The Resource Context
+	 */
+	public UnixDomainSocketNetworkModule(String path, String resourceContext) {
+		log.setResourceName(resourceContext);
+		this.path = path;
+	}
+
+	/**
+	 * @return true if the JVM supports Unix domain socket channels
+	 */
+	public static boolean isSupported() {
+		return ADDRESS_OF != null;
+	}
+
+	/**
+	 * Creates the address of a Unix domain socket.
+	 * @param path the path of the socket file
+	 * @return a <code>java.net.UnixDomainSocketAddress</code>
+	 * @throws UnsupportedOperationException if the JVM does not support Unix
+	 *             domain sockets
+	 */
+	public static SocketAddress createAddress(String path) {
+		if (!isSupported()) {
+			throw new UnsupportedOperationException("Unix domain sockets require Java 16 or later");
+		}
+		return (SocketAddress) invoke(ADDRESS_OF, path);
+	}
+
+	/**
+	 * Opens an unconnected Unix domain socket channel.
+	 * @return the channel, in blocking mode
+	 * @throws IOException if the channel could not be opened
+	 * @throws UnsupportedOperationException if the JVM does not support Unix
+	 *             domain sockets
+	 */
+	public static SocketChannel openChannel() throws IOException {
+		if (!isSupported()) {
+			throw new UnsupportedOperationException("Unix domain sockets require Java 16 or later");
+		}
+		try {
+			return (SocketChannel) OPEN_CHANNEL.invoke(null, UNIX);
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static Object invoke(Method method, Object arg) {
+		try {
+			return method.invoke(null, arg);
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Starts the module, by connecting to the socket file.
+	 * @throws IOException if there is an error setting up the channel
+	 * @throws MqttException if there is an error connecting to the server
+	 */
+	public void start() throws IOException, MqttException {
+		final String methodName = "start";
+		// @TRACE 256=connect to Unix domain socket {0}
+		log.fine(CLASS_NAME, methodName, "256", new Object[] { path });
+		SocketChannel newChannel = openChannel();
+		try {
+			newChannel.connect(createAddress(path));
+		} catch (IOException ex) {
+			newChannel.close();
+			// @TRACE 257=Failed to connect to Unix domain socket
+			log.fine(CLASS_NAME, methodName, "257", null, ex);
+			throw new MqttException(MqttException.REASON_CODE_SERVER_CONNECT_ERROR, ex);
+		} catch (RuntimeException ex) {
+			newChannel.close();
+			throw new MqttException(MqttException.REASON_CODE_SERVER_CONNECT_ERROR, ex);
+		}
+		newChannel.configureBlocking(false);
+		readSelector = Selector.open();
+		newChannel.register(readSelector, SelectionKey.OP_READ);
+		channel = newChannel;
+		inputStream = new ChannelInputStream(channel, readSelector, socketOptions.getReadTimeout());
+		outputStream = new ChannelOutputStream(channel);
+	}
+
+	public InputStream getInputStream() throws IOException {
+		return inputStream;
+	}
+
+	public OutputStream getOutputStream() throws IOException {
+		return outputStream;
+	}
+
+	/**
+	 * Stops the module, by closing the channel. Reads and writes waiting for
+	 * the channel are woken up and fail.
+	 * @throws IOException if there is an error closing the channel
+	 */
+	public void stop() throws IOException {
+		if (channel != null) {
+			try {
+				outputStream.close();
+			} finally {
+				readSelector.close();
+			}
+		}
+	}
+
+	/**
+	 * Set the options to apply to the socket. Only the read timeout applies
+	 * to a Unix domain socket.
+	 * @param socketOptions The socket options
+	 */
+	public void setSocketOptions(MqttSocketOptions socketOptions) {
+		this.socketOptions = socketOptions;
+	}
+
+	public String getServerURI() {
+		return "unix://" + path;
+	}
+}
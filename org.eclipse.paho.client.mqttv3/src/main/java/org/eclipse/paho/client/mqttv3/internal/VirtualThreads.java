@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - virtual thread execution mode
+ */
+package org.eclipse.paho.client.mqttv3.internal;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Finds the factory of virtual threads of the running Java, which has them
+ * from Java 21. The client is built for older versions of Java, so the
+ * factory is looked up by reflection.
+ */
+public final class VirtualThreads {
+
+	private static final ThreadFactory FACTORY = lookup();
+
+	private VirtualThreads() {
+	}
+
+	/**
+	 * @return true if the running Java has virtual threads
+	 */
+	public static boolean isSupported() {
+		return FACTORY != null;
+	}
+
+	/**
+	 * @return a factory of virtual threads, or null if the running Java has
+	 *         none
+	 */
+	public static ThreadFactory factory() {
+		return FACTORY;
+	}
+
+	private static ThreadFactory lookup() {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			// The builder class itself is not exported, so use its interface
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+		} catch (Exception e) {
+			return null;
+		} catch (LinkageError e) {
+			return null;
+		}
+	}
+}
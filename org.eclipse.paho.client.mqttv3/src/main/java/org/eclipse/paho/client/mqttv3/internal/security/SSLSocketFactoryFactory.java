@@ -15,6 +15,7 @@
  */
 package org.eclipse.paho.client.mqttv3.internal.security;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -23,6 +24,7 @@ import java.nio.charset.StandardCharsets;
 import java.security.KeyManagementException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.UnrecoverableKeyException;
@@ -30,12 +32,14 @@ import java.security.cert.CertificateException;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.Set;
 import java.util.Vector;
 
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
@@ -100,6 +104,10 @@ import org.eclipse.paho.client.mqttv3.logging.Logger;
  * </ol>
  * </li>
  * </ul>
+ * <p>
+ * Initialized SSL contexts are cached for the whole process, keyed by the
+ * effective configuration, so that clients sharing a configuration share one
+ * context and its TLS session cache. See {@link #getSSLContext(String)}.
  */
 public class SSLSocketFactoryFactory {
 	private static final String CLASS_NAME = "org.eclipse.paho.client.mqttv3.internal.security.SSLSocketFactoryFactory";
@@ -120,6 +128,8 @@ public class SSLSocketFactoryFactory {
 	public static final String TRUSTSTOREMGR="com.ibm.ssl.trustManager";
 	public static final String CIPHERSUITES="com.ibm.ssl.enabledCipherSuites";
 	public static final String CLIENTAUTH="com.ibm.ssl.clientAuthentication";
+	public static final String SESSIONCACHESIZE="com.ibm.ssl.sessionCacheSize";
+	public static final String SESSIONTIMEOUT="com.ibm.ssl.sessionTimeout";
 	
 	/**
 	 * Property keys used for java system properties
@@ -135,11 +145,20 @@ public class SSLSocketFactoryFactory {
 	
 
 	public static final String DEFAULT_PROTOCOL = "TLS";  // "SSL_TLS" is not supported by DesktopEE
+	/** The default number of TLS sessions each SSL context keeps for resumption. */
+	public static final int DEFAULT_SESSION_CACHE_SIZE = 100;
+	/** The default time, in seconds, that a TLS session can be resumed for. */
+	public static final int DEFAULT_SESSION_TIMEOUT = 86400;
 
     private static final String[] propertyKeys = {SSLPROTOCOL, JSSEPROVIDER,
             KEYSTORE, KEYSTOREPWD, KEYSTORETYPE, KEYSTOREPROVIDER, KEYSTOREMGR,
             TRUSTSTORE, TRUSTSTOREPWD, TRUSTSTORETYPE, TRUSTSTOREPROVIDER,
-            TRUSTSTOREMGR, CIPHERSUITES, CLIENTAUTH};
+            TRUSTSTOREMGR, CIPHERSUITES, CLIENTAUTH, SESSIONCACHESIZE, SESSIONTIMEOUT};
+
+	// The contexts shared by every factory in the process, keyed by the
+	// effective configuration they were created from.
+	private static final int MAX_CACHED_CONTEXTS = 64;
+	private static final ConcurrentHashMap<String, SSLContext> contextCache = new ConcurrentHashMap<String, SSLContext>();
 
 	private Hashtable configs; // a hashtable that maps configIDs to properties.
 
@@ -1106,6 +1125,147 @@ public class SSLSocketFactoryFactory {
 		return res;
 	}
 
+	/**
+	 * Gets the number of TLS sessions the SSL context keeps for resumption.
+	 * 
+	 * @param configID
+	 *            The configuration identifier for selecting a configuration or
+	 *            null for the default configuration.
+	 * @return The session cache size, where 0 means no limit.
+	 */
+	public int getSessionCacheSize(String configID) {
+		return getIntProperty(configID, SESSIONCACHESIZE, DEFAULT_SESSION_CACHE_SIZE);
+	}
+
+	/**
+	 * Gets the time, in seconds, that a TLS session can be resumed for.
+	 * 
+	 * @param configID
+	 *            The configuration identifier for selecting a configuration or
+	 *            null for the default configuration.
+	 * @return The session timeout, where 0 means no limit.
+	 */
+	public int getSessionTimeout(String configID) {
+		return getIntProperty(configID, SESSIONTIMEOUT, DEFAULT_SESSION_TIMEOUT);
+	}
+
+	private int getIntProperty(String configID, String ibmKey, int defaultValue) {
+		String value = getProperty(configID, ibmKey, null);
+		if (value != null) {
+			try {
+				int res = Integer.parseInt(value.trim());
+				if (res >= 0) {
+					return res;
+				}
+			} catch (NumberFormatException e) {
+				// use the default
+			}
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * Returns an initialized SSL context for the given configuration.
+	 * <p>
+	 * Contexts are shared by every SSLSocketFactoryFactory in the process. A
+	 * context is created, and its key and trust stores read, only the first
+	 * time a configuration with the same effective properties is used, and
+	 * again if a store file changes. As the client session cache belongs to
+	 * the context, reconnecting to a server resumes the previous TLS session
+	 * instead of performing a full handshake.
+	 * </p>
+	 * 
+	 * @param configID
+	 *            The configuration identifier for selecting a configuration or
+	 *            null for the default configuration.
+	 * @return An initialized SSL context.
+	 * @throws MqttSecurityException
+	 *             if the context could not be initialized
+	 */
+	public SSLContext getSSLContext(String configID) throws MqttSecurityException {
+		final String METHOD_NAME = "getSSLContext";
+		String cacheKey = getContextCacheKey(configID);
+		SSLContext ctx = (cacheKey == null) ? null : contextCache.get(cacheKey);
+		if (ctx != null) {
+			if (logger != null) {
+				// 12021 "SSL initialization: configID = {0}, reusing the cached SSL context"
+				logger.fine(CLASS_NAME, METHOD_NAME, "12021", new Object[] {configID!=null ? configID : "null (broker defaults)"});
+			}
+			return ctx;
+		}
+		ctx = createSSLContext(configID);
+		SSLSessionContext sessions = ctx.getClientSessionContext();
+		if (sessions != null) {
+			sessions.setSessionCacheSize(getSessionCacheSize(configID));
+			sessions.setSessionTimeout(getSessionTimeout(configID));
+		}
+		if (cacheKey != null) {
+			if (contextCache.size() >= MAX_CACHED_CONTEXTS) {
+				contextCache.clear();
+			}
+			SSLContext cached = contextCache.putIfAbsent(cacheKey, ctx);
+			if (cached != null) {
+				ctx = cached;
+			}
+		}
+		return ctx;
+	}
+
+	/**
+	 * Discards every cached SSL context, so that the next connection of each
+	 * configuration re-reads its key and trust stores and performs a full
+	 * TLS handshake.
+	 */
+	public static void clearSSLContextCache() {
+		contextCache.clear();
+	}
+
+	/**
+	 * Builds the key the SSL context of a configuration is cached under, from
+	 * every property that affects the context. Passwords are included as a
+	 * digest, and store files by their size and modification time.
+	 * 
+	 * @return the key, or null if the context should not be cached
+	 */
+	private String getContextCacheKey(String configID) {
+		String keyStore = getProperty(configID, KEYSTORE, SYSKEYSTORE);
+		String trustStore = getTrustStore(configID);
+		String[] values = { getSSLProtocol(configID), getJSSEProvider(configID), keyStore, getKeyStoreType(configID),
+				getKeyStoreProvider(configID), getKeyManager(configID), trustStore, getTrustStoreType(configID),
+				getTrustStoreProvider(configID), getTrustManager(configID),
+				Integer.toString(getSessionCacheSize(configID)), Integer.toString(getSessionTimeout(configID)) };
+		StringBuffer cacheKey = new StringBuffer();
+		for (int i = 0; i < values.length; i++) {
+			cacheKey.append(values[i]).append('\n');
+		}
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			char[] keyStorePwd = getKeyStorePassword(configID);
+			char[] trustStorePwd = getTrustStorePassword(configID);
+			if (keyStorePwd != null) {
+				digest.update(toByte(keyStorePwd));
+			}
+			digest.update((byte) 0);
+			if (trustStorePwd != null) {
+				digest.update(toByte(trustStorePwd));
+			}
+			cacheKey.append(SimpleBase64Encoder.encode(digest.digest())).append('\n');
+		} catch (NoSuchAlgorithmException e) {
+			return null;
+		}
+		appendFileStamp(cacheKey, keyStore);
+		appendFileStamp(cacheKey, trustStore);
+		return cacheKey.toString();
+	}
+
+	private static void appendFileStamp(StringBuffer cacheKey, String fileName) {
+		if (fileName != null) {
+			File file = new File(fileName);
+			cacheKey.append(file.length()).append(':').append(file.lastModified());
+		}
+		cacheKey.append('\n');
+	}
+
 	/**
 	 * Initializes key- and truststore. Returns an SSL context factory. If no
 	 * SSLProtocol is already set, uses DEFAULT_PROTOCOL
@@ -1117,9 +1277,9 @@ public class SSLSocketFactoryFactory {
 	 * @return An SSL context factory.
 	 * @throws MqttDirectException
 	 */
-	private SSLContext getSSLContext(String configID)
+	private SSLContext createSSLContext(String configID)
 			throws MqttSecurityException{
-		final String METHOD_NAME = "getSSLContext";
+		final String METHOD_NAME = "createSSLContext";
 		SSLContext ctx = null;
 		
 		String protocol = getSSLProtocol(configID);
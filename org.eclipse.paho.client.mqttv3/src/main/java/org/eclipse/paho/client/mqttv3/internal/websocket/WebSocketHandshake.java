@@ -49,6 +49,7 @@ public class WebSocketHandshake {
 	private static final String HTTP_HEADER_CONNECTION = "connection";
 	private static final String HTTP_HEADER_CONNECTION_VALUE = "upgrade";
 	private static final String HTTP_HEADER_SEC_WEBSOCKET_PROTOCOL = "sec-websocket-protocol";
+	private static final String HTTP_HEADER_SEC_WEBSOCKET_EXTENSIONS = "sec-websocket-extensions";
 
 	private final boolean skipPortDuringHandshake;
 
@@ -58,6 +59,10 @@ public class WebSocketHandshake {
 	String host;
 	int port;
 	Map<String, String> customWebSocketHeaders;
+	private boolean deflateOffered = false;
+	private boolean deflateContextTakeover = true;
+	private int deflateWindowBits = WebSocketDeflate.MAX_WINDOW_BITS;
+	private WebSocketDeflate deflate = null;
 
 	public WebSocketHandshake(InputStream input, OutputStream output, String uri, String host, int port, Map<String, String> customWebSocketHeaders, boolean skipPortDuringHandshake){
 		this.input = input;
@@ -69,6 +74,26 @@ public class WebSocketHandshake {
 		this.skipPortDuringHandshake = skipPortDuringHandshake;
 	}
 
+	/**
+	 * Offers the permessage-deflate extension in the handshake.
+	 * @param contextTakeover false to ask both ends to compress every message
+	 *            on its own
+	 * @param windowBits the largest compression window, in bits, from 8 to 15
+	 */
+	public void setPerMessageDeflate(boolean contextTakeover, int windowBits) {
+		this.deflateOffered = true;
+		this.deflateContextTakeover = contextTakeover;
+		this.deflateWindowBits = windowBits;
+	}
+
+	/**
+	 * @return the permessage-deflate parameters agreed by the handshake, or
+	 *         null if messages are not compressed
+	 */
+	WebSocketDeflate getPerMessageDeflate() {
+		return deflate;
+	}
+
 
 	/**
 	 * Executes a Websocket Handshake.
@@ -114,6 +139,10 @@ public class WebSocketHandshake {
 			pw.print("Sec-WebSocket-Key: " + key + LINE_SEPARATOR);
 			pw.print("Sec-WebSocket-Protocol: mqtt" + LINE_SEPARATOR);
 			pw.print("Sec-WebSocket-Version: 13" + LINE_SEPARATOR);
+			if (deflateOffered) {
+				pw.print("Sec-WebSocket-Extensions: " + WebSocketDeflate.offer(deflateContextTakeover, deflateWindowBits)
+						+ LINE_SEPARATOR);
+			}
 
 			if (customWebSocketHeaders != null) {
 				for (String headerKey : customWebSocketHeaders.keySet()) {
@@ -179,6 +208,10 @@ public class WebSocketHandshake {
 			throw new IOException("WebSocket Response header: Incorrect Sec-WebSocket-Key");
 		}
 
+		String extensionsHeader = (String) headerMap.get(HTTP_HEADER_SEC_WEBSOCKET_EXTENSIONS);
+		if (deflateOffered && extensionsHeader != null) {
+			deflate = WebSocketDeflate.accept(extensionsHeader, deflateContextTakeover, deflateWindowBits);
+		}
 	}
 
 	/**
@@ -0,0 +1,354 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - inline WebSocket framing
+ */
+package org.eclipse.paho.client.mqttv3.internal.websocket;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Presents the payload of the binary WebSocket frames arriving on a socket as
+ * a plain stream, decoding the frames on the thread that reads from it.
+ * <p>
+ * Frame headers are parsed from a small read buffer, while frame payloads are
+ * read straight into the caller's array whenever that buffer is empty, so the
+ * MQTT packet reader receives the data without an intermediate copy or thread.
+ * Pings are answered from the reading thread and pongs are discarded.
+ * </p>
+ * <p>
+ * A read may be interrupted by a socket read timeout at any point, including
+ * part way through a frame header; the decoding state is kept so that the
+ * next read carries on where the last one stopped.
+ * </p>
+ * <p>
+ * When permessage-deflate has been negotiated, messages flagged as compressed
+ * are decompressed into the caller's array with an {@link Inflater} kept for
+ * the life of the connection.
+ * </p>
+ */
+class WebSocketInputStream extends InputStream {
+
+	private static final int BUFFER_SIZE = 8192;
+	// Control frames carry at most 125 bytes of payload
+	private static final int MAX_CONTROL_PAYLOAD = 125;
+
+	private final InputStream in;
+	private final WebSocketOutputStream out;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int position = 0;
+	private int limit = 0;
+
+	private long remaining = 0;
+	private boolean masked = false;
+	private int mask = 0;
+	private int maskOffset = 0;
+	private volatile boolean closing = false;
+
+	private final WebSocketDeflate deflate;
+	private final Inflater inflater;
+	private final byte[] compressed;
+	// true until the last frame of the current message has been read
+	private boolean fin = true;
+	private boolean inflating = false;
+	private boolean tailAdded = false;
+	private boolean ended = false;
+
+	/**
+	 * @param in the socket input stream, positioned after the handshake
+	 * @param out the stream used to answer pings
+	 */
+	WebSocketInputStream(InputStream in, WebSocketOutputStream out) {
+		this(in, out, null);
+	}
+
+	/**
+	 * @param in the socket input stream, positioned after the handshake
+	 * @param out the stream used to answer pings
+	 * @param deflate the negotiated permessage-deflate parameters, or null if
+	 *            the server may not send compressed messages
+	 */
+	WebSocketInputStream(InputStream in, WebSocketOutputStream out, WebSocketDeflate deflate) {
+		this.in = in;
+		this.out = out;
+		this.deflate = deflate;
+		if (deflate != null) {
+			this.inflater = new Inflater(true);
+			this.compressed = new byte[BUFFER_SIZE];
+		} else {
+			this.inflater = null;
+			this.compressed = null;
+		}
+	}
+
+	/**
+	 * Marks the connection as closing, so that a close frame from the server
+	 * ends the stream rather than being reported as an error.
+	 */
+	void setClosing() {
+		closing = true;
+	}
+
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xff);
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		while (true) {
+			if (inflating) {
+				int count = inflate(b, off, len);
+				if (count != 0) {
+					return count;
+				}
+			} else if (remaining > 0) {
+				return readPayload(b, off, len);
+			} else if (!readFrameHeader()) {
+				return -1;
+			}
+		}
+	}
+
+	/**
+	 * Reads and unmasks payload of the current frame, which must have some
+	 * remaining.
+	 */
+	private int readPayload(byte[] b, int off, int len) throws IOException {
+		int count = (int) Math.min(len, remaining);
+		if (position < limit) {
+			count = Math.min(count, limit - position);
+			System.arraycopy(buffer, position, b, off, count);
+			position += count;
+		} else {
+			count = in.read(b, off, count);
+			if (count < 0) {
+				return -1;
+			}
+		}
+		unmask(b, off, count);
+		remaining -= count;
+		return count;
+	}
+
+	public int available() throws IOException {
+		if (remaining == 0 || inflating) {
+			return 0;
+		}
+		int buffered = limit - position;
+		if (buffered > 0) {
+			return (int) Math.min(buffered, remaining);
+		}
+		return (int) Math.min(in.available(), remaining);
+	}
+
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Frees the decompressor, if there is one. Compressed data read afterwards
+	 * is rejected.
+	 */
+	void end() {
+		if (inflater != null) {
+			synchronized (inflater) {
+				ended = true;
+				inflater.end();
+			}
+		}
+	}
+
+	/**
+	 * Decompresses the current message into the caller's array, reading its
+	 * frames as the decompressor needs them.
+	 * @return the number of bytes decompressed, 0 at the end of the message
+	 *         or -1 if the stream ended
+	 */
+	private int inflate(byte[] b, int off, int len) throws IOException {
+		while (true) {
+			boolean finished;
+			synchronized (inflater) {
+				checkEnded();
+				try {
+					int count = inflater.inflate(b, off, len);
+					if (count > 0) {
+						return count;
+					}
+				} catch (DataFormatException e) {
+					throw new IOException("Invalid compressed message: " + e.getMessage());
+				}
+				finished = inflater.finished();
+			}
+			if (remaining > 0) {
+				int read = readPayload(compressed, 0, compressed.length);
+				if (read < 0) {
+					return -1;
+				}
+				// anything after a final deflate block is ignored
+				if (!finished) {
+					setInput(compressed, read);
+				}
+			} else if (!fin) {
+				if (!readFrameHeader()) {
+					return -1;
+				}
+			} else if (!tailAdded && !finished) {
+				setInput(WebSocketDeflate.TAIL, WebSocketDeflate.TAIL.length);
+				tailAdded = true;
+			} else {
+				inflating = false;
+				if (deflate.isServerNoContextTakeover() || finished) {
+					synchronized (inflater) {
+						checkEnded();
+						inflater.reset();
+					}
+				}
+				return 0;
+			}
+		}
+	}
+
+	private void setInput(byte[] input, int length) throws IOException {
+		synchronized (inflater) {
+			checkEnded();
+			inflater.setInput(input, 0, length);
+		}
+	}
+
+	private void checkEnded() throws IOException {
+		if (ended) {
+			throw new IOException("WebSocket stream closed");
+		}
+	}
+
+	/**
+	 * Reads the next frame header, handling any control frame in full.
+	 * @return false if the stream has ended
+	 */
+	private boolean readFrameHeader() throws IOException {
+		if (!fill(2)) {
+			return false;
+		}
+		int first = buffer[position] & 0xff;
+		int second = buffer[position + 1] & 0xff;
+		boolean frameMasked = (second & 0x80) != 0;
+		int length = second & 0x7f;
+		int headerLength = 2 + (length == 126 ? 2 : length == 127 ? 8 : 0) + (frameMasked ? 4 : 0);
+		if (!fill(headerLength)) {
+			return false;
+		}
+		long payloadLength = length;
+		int index = position + 2;
+		if (length == 126) {
+			payloadLength = ((buffer[index] & 0xff) << 8) | (buffer[index + 1] & 0xff);
+			index += 2;
+		} else if (length == 127) {
+			payloadLength = 0;
+			for (int i = 0; i < 8; i++) {
+				payloadLength = (payloadLength << 8) | (buffer[index++] & 0xff);
+			}
+			if (payloadLength < 0) {
+				throw new IOException("Invalid Frame: Length: " + payloadLength);
+			}
+		}
+		int frameMask = frameMasked ? WebSocketMask.toKey(buffer, index) : 0;
+
+		int opcode = first & 0x0f;
+		boolean frameCompressed = (first & 0x40) != 0;
+		switch (opcode) {
+		case 0x00: // continuation
+		case 0x02: // binary
+			if (opcode == 0x02 && !fin) {
+				throw new IOException("Invalid Frame: expected a continuation frame");
+			}
+			if (frameCompressed) {
+				if (deflate == null || opcode == 0x00) {
+					throw new IOException("Invalid Frame: unexpected RSV1 bit");
+				}
+				inflating = true;
+				tailAdded = false;
+			}
+			fin = (first & 0x80) != 0;
+			position += headerLength;
+			remaining = payloadLength;
+			masked = frameMasked;
+			mask = frameMask;
+			maskOffset = 0;
+			return true;
+		case 0x08: // close
+		case 0x09: // ping
+		case 0x0a: // pong
+			if (payloadLength > MAX_CONTROL_PAYLOAD) {
+				throw new IOException("Invalid Frame: control payload length: " + payloadLength);
+			}
+			if (!fill(headerLength + (int) payloadLength)) {
+				return false;
+			}
+			byte[] payload = new byte[(int) payloadLength];
+			System.arraycopy(buffer, position + headerLength, payload, 0, payload.length);
+			position += headerLength + payload.length;
+			if (frameMasked) {
+				WebSocketMask.mask(payload, 0, payload.length, frameMask, 0);
+			}
+			if (opcode == 0x08) {
+				if (closing) {
+					return false;
+				}
+				throw new IOException("Server sent a WebSocket Frame with the Stop OpCode");
+			}
+			if (opcode == 0x09) {
+				out.writeControlFrame((byte) 0x0a, payload);
+			}
+			return true;
+		default:
+			throw new IOException("Invalid Frame: Opcode: " + opcode);
+		}
+	}
+
+	/**
+	 * Ensures at least <code>count</code> bytes are held in the read buffer.
+	 * @return false if the stream ended first
+	 */
+	private boolean fill(int count) throws IOException {
+		if (limit - position >= count) {
+			return true;
+		}
+		if (position > 0) {
+			System.arraycopy(buffer, position, buffer, 0, limit - position);
+			limit -= position;
+			position = 0;
+		}
+		while (limit < count) {
+			int read = in.read(buffer, limit, buffer.length - limit);
+			if (read < 0) {
+				return false;
+			}
+			limit += read;
+		}
+		return true;
+	}
+
+	private void unmask(byte[] b, int off, int len) {
+		if (!masked) {
+			return;
+		}
+		WebSocketMask.mask(b, off, len, mask, maskOffset);
+		maskOffset = (maskOffset + len) & 3;
+	}
+}
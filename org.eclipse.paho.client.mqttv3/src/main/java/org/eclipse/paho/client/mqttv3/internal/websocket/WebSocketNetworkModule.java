@@ -15,12 +15,9 @@
  */
 package org.eclipse.paho.client.mqttv3.internal.websocket;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.nio.ByteBuffer;
 import java.util.Map;
 
 import javax.net.SocketFactory;
@@ -39,17 +36,13 @@ public class WebSocketNetworkModule extends TCPNetworkModule {
 	private String host;
 	private int port;
 	private Map<String, String> customWebsocketHeaders;
-	private PipedInputStream pipedInputStream;
-	private WebSocketReceiver webSocketReceiver;
+	private WebSocketInputStream webSocketInputStream;
+	private WebSocketOutputStream webSocketOutputStream;
+	private boolean deflateEnabled = false;
+	private boolean deflateContextTakeover = true;
+	private int deflateWindowBits = WebSocketDeflate.MAX_WINDOW_BITS;
 	private final boolean skipPortDuringHandshake;
-	ByteBuffer recievedPayload;
 	
-	/**
-	 * Overrides the flush method.
-	 * This allows us to encode the MQTT payload into a WebSocket
-	 *  Frame before passing it through to the real socket.
-	 */
-	private ByteArrayOutputStream outputStream = new ExtendedByteArrayOutputStream(this);
   
 	public WebSocketNetworkModule(SocketFactory factory, String uri, String host, int port, String resourceContext, Map<String, String> customWebsocketHeaders, boolean skipPortDuringHandshake){
 		super(factory, host, port, resourceContext);
@@ -57,7 +50,6 @@ public class WebSocketNetworkModule extends TCPNetworkModule {
 		this.host = host;
 		this.port = port;
 		this.customWebsocketHeaders = customWebsocketHeaders;
-		this.pipedInputStream = new PipedInputStream();
 		this.skipPortDuringHandshake = skipPortDuringHandshake;
 		log.setResourceName(resourceContext);
 	}
@@ -65,9 +57,14 @@ public class WebSocketNetworkModule extends TCPNetworkModule {
 	public void start() throws IOException, MqttException {
 		super.start();
 		WebSocketHandshake handshake = new WebSocketHandshake(getSocketInputStream(), getSocketOutputStream(), uri, host, port, customWebsocketHeaders, skipPortDuringHandshake);
+		if (deflateEnabled) {
+			handshake.setPerMessageDeflate(deflateContextTakeover, deflateWindowBits);
+		}
 		handshake.execute();
-		this.webSocketReceiver = new WebSocketReceiver(getSocketInputStream(), pipedInputStream);
-		webSocketReceiver.start("webSocketReceiver");
+		WebSocketDeflate deflate = handshake.getPerMessageDeflate();
+		this.webSocketOutputStream = new WebSocketOutputStream(getSocketOutputStream(),
+				WebSocketOutputStream.DEFAULT_FRAME_SIZE, deflate);
+		this.webSocketInputStream = new WebSocketInputStream(getSocketInputStream(), webSocketOutputStream, deflate);
 	}
 	
 	OutputStream getSocketOutputStream() throws IOException {
@@ -79,29 +76,42 @@ public class WebSocketNetworkModule extends TCPNetworkModule {
 	}
 	
 	public InputStream getInputStream() throws IOException {
-		return pipedInputStream;
+		return webSocketInputStream;
 	}
 	
 	public OutputStream getOutputStream() throws IOException {
-		return outputStream;
+		return webSocketOutputStream;
 	}
 	
 	/**
 	 * Stops the module, by closing the TCP socket.
 	 */
 	public void stop() throws IOException {
-		// Creating Close Frame
-		WebSocketFrame frame = new WebSocketFrame((byte)0x08, true, "1000".getBytes());
-		byte[] rawFrame = frame.encodeFrame();
-		getSocketOutputStream().write(rawFrame);
-		getSocketOutputStream().flush();
-
-		if(webSocketReceiver != null){
-			webSocketReceiver.stop();
+		if (webSocketOutputStream != null) {
+			webSocketInputStream.setClosing();
+			// Creating Close Frame
+			webSocketOutputStream.writeControlFrame((byte)0x08, "1000".getBytes());
 		}
 		super.stop();
+		if (webSocketOutputStream != null) {
+			webSocketOutputStream.end();
+			webSocketInputStream.end();
+		}
 	}
 	
+	/**
+	 * Offers the permessage-deflate extension when connecting, so that
+	 * messages are compressed if the server accepts it.
+	 * @param contextTakeover false to ask both ends to compress every message
+	 *            on its own
+	 * @param windowBits the largest compression window, in bits, from 8 to 15
+	 */
+	public void setPerMessageDeflate(boolean contextTakeover, int windowBits) {
+		this.deflateEnabled = true;
+		this.deflateContextTakeover = contextTakeover;
+		this.deflateWindowBits = windowBits;
+	}
+
 	public String getServerURI() {
 		return "ws://" + host + ":" + port;
 	}
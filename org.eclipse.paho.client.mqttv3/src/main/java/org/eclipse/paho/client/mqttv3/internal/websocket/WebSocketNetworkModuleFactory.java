@@ -54,6 +54,11 @@ public class WebSocketNetworkModuleFactory implements NetworkModuleFactory {
 		WebSocketNetworkModule netModule = new WebSocketNetworkModule(factory, brokerUri.toString(), host, port,
 				clientId, options.getCustomWebSocketHeaders(), options.isSkipPortDuringHandshake());
 		netModule.setConnectTimeout(options.getConnectionTimeout());
+		netModule.setSocketOptions(options.getSocketOptions());
+		if (options.isWebSocketCompression()) {
+			netModule.setPerMessageDeflate(options.isWebSocketCompressionContextTakeover(),
+					options.getWebSocketCompressionWindowBits());
+		}
 		return netModule;
 	}
 }
@@ -15,12 +15,9 @@
  */
 package org.eclipse.paho.client.mqttv3.internal.websocket;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.nio.ByteBuffer;
 import java.util.Map;
 import javax.net.ssl.SSLSocketFactory;
 
@@ -34,21 +31,17 @@ public class WebSocketSecureNetworkModule extends SSLNetworkModule{
 	private static final String CLASS_NAME = WebSocketSecureNetworkModule.class.getName();
 	private Logger log = LoggerFactory.getLogger(LoggerFactory.MQTT_CLIENT_MSG_CAT, CLASS_NAME);
 	
-	private PipedInputStream pipedInputStream;
-	private WebSocketReceiver webSocketReceiver;
+	private WebSocketInputStream webSocketInputStream;
+	private WebSocketOutputStream webSocketOutputStream;
+	private boolean deflateEnabled = false;
+	private boolean deflateContextTakeover = true;
+	private int deflateWindowBits = WebSocketDeflate.MAX_WINDOW_BITS;
 	private String uri;
 	private String host;
 	private int port;
 	private final boolean skipPortDuringHandshake;
 	private Map<String, String> customWebSocketHeaders;
-	ByteBuffer recievedPayload;
 	
-	/**
-	 * Overrides the flush method.
-	 * This allows us to encode the MQTT payload into a WebSocket
-	 *  Frame before passing it through to the real socket.
-	 */
-	private ByteArrayOutputStream outputStream = new ExtendedByteArrayOutputStream(this);
 
 	public WebSocketSecureNetworkModule(SSLSocketFactory factory, String uri, String host, int port, String clientId, Map<String, String> customWebSocketHeaders, boolean skipPortDuringHandshake) {
 		super(factory, host, port, clientId);
@@ -56,7 +49,6 @@ public class WebSocketSecureNetworkModule extends SSLNetworkModule{
 		this.host = host;
 		this.port = port;
 		this.customWebSocketHeaders = customWebSocketHeaders;
-		this.pipedInputStream = new PipedInputStream();
 		this.skipPortDuringHandshake = skipPortDuringHandshake;
 		log.setResourceName(clientId);
 	}
@@ -64,10 +56,14 @@ public class WebSocketSecureNetworkModule extends SSLNetworkModule{
 	public void start() throws IOException, MqttException {
 		super.start();
 		WebSocketHandshake handshake = new WebSocketHandshake(super.getInputStream(), super.getOutputStream(), uri, host, port, customWebSocketHeaders, skipPortDuringHandshake);
+		if (deflateEnabled) {
+			handshake.setPerMessageDeflate(deflateContextTakeover, deflateWindowBits);
+		}
 		handshake.execute();
-		this.webSocketReceiver = new WebSocketReceiver(getSocketInputStream(), pipedInputStream);
-		webSocketReceiver.start("WssSocketReceiver");
-
+		WebSocketDeflate deflate = handshake.getPerMessageDeflate();
+		this.webSocketOutputStream = new WebSocketOutputStream(getSocketOutputStream(),
+				WebSocketOutputStream.DEFAULT_FRAME_SIZE, deflate);
+		this.webSocketInputStream = new WebSocketInputStream(getSocketInputStream(), webSocketOutputStream, deflate);
 	}
 
 	OutputStream getSocketOutputStream() throws IOException {
@@ -79,24 +75,37 @@ public class WebSocketSecureNetworkModule extends SSLNetworkModule{
 	}
 	
 	public InputStream getInputStream() throws IOException {
-		return pipedInputStream;
+		return webSocketInputStream;
 	}
 	
 	public OutputStream getOutputStream() throws IOException {
-		return outputStream;
+		return webSocketOutputStream;
 	}
 
 	public void stop() throws IOException {
-		// Creating Close Frame
-		WebSocketFrame frame = new WebSocketFrame((byte)0x08, true, "1000".getBytes());
-		byte[] rawFrame = frame.encodeFrame();
-		getSocketOutputStream().write(rawFrame);
-		getSocketOutputStream().flush();
-
-		if(webSocketReceiver != null){
-			webSocketReceiver.stop();
+		if (webSocketOutputStream != null) {
+			webSocketInputStream.setClosing();
+			// Creating Close Frame
+			webSocketOutputStream.writeControlFrame((byte)0x08, "1000".getBytes());
 		}
 		super.stop();
+		if (webSocketOutputStream != null) {
+			webSocketOutputStream.end();
+			webSocketInputStream.end();
+		}
+	}
+
+	/**
+	 * Offers the permessage-deflate extension when connecting, so that
+	 * messages are compressed if the server accepts it.
+	 * @param contextTakeover false to ask both ends to compress every message
+	 *            on its own
+	 * @param windowBits the largest compression window, in bits, from 8 to 15
+	 */
+	public void setPerMessageDeflate(boolean contextTakeover, int windowBits) {
+		this.deflateEnabled = true;
+		this.deflateContextTakeover = contextTakeover;
+		this.deflateWindowBits = windowBits;
 	}
 
 	public String getServerURI() {
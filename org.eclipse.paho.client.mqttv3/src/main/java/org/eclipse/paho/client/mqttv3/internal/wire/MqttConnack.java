@@ -39,14 +39,20 @@ public class MqttConnack extends MqttAck {
 		returnCode = dis.readUnsignedByte();
 		dis.close();
 	}
+
+	public MqttConnack(boolean sessionPresent, int returnCode) {
+		super(MqttWireMessage.MESSAGE_TYPE_CONNACK);
+		this.sessionPresent = sessionPresent;
+		this.returnCode = returnCode;
+	}
 	
 	public int getReturnCode() {
 		return returnCode;
 	}
 
 	protected byte[] getVariableHeader() throws MqttException {
-		// Not needed, as the client never encodes a CONNACK
-		return new byte[0];
+		// Only encoded by a server, such as the one used in tests
+		return new byte[] { (byte) (sessionPresent ? 0x01 : 0x00), (byte) returnCode };
 	}
 	
 	/**
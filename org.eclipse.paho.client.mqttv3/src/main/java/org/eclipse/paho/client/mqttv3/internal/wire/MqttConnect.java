@@ -59,10 +59,26 @@ public class MqttConnect extends MqttWireMessage {
 		DataInputStream dis = new DataInputStream(bais);
 
 		String protocol_name = decodeUTF8(dis);
-		int protocol_version = dis.readByte();
+		mqttVersion = dis.readByte();
 		byte connect_flags = dis.readByte();
+		cleanSession = (connect_flags & 0x02) != 0;
 		keepAliveInterval = dis.readUnsignedShort();
 		clientId = decodeUTF8(dis);
+
+		if ((connect_flags & 0x04) != 0) {
+			willDestination = decodeUTF8(dis);
+			byte[] willPayload = new byte[dis.readUnsignedShort()];
+			dis.readFully(willPayload);
+			willMessage = new MqttMessage(willPayload);
+			willMessage.setQos((connect_flags >> 3) & 0x03);
+			willMessage.setRetained((connect_flags & 0x20) != 0);
+		}
+		if ((connect_flags & 0x80) != 0) {
+			userName = decodeUTF8(dis);
+			if ((connect_flags & 0x40) != 0) {
+				password = decodeUTF8(dis).toCharArray();
+			}
+		}
 		dis.close();
 	}
 
@@ -95,6 +111,30 @@ public class MqttConnect extends MqttWireMessage {
 		return cleanSession;
 	}
 
+	public String getClientId() {
+		return clientId;
+	}
+
+	public int getMqttVersion() {
+		return mqttVersion;
+	}
+
+	public int getKeepAliveInterval() {
+		return keepAliveInterval;
+	}
+
+	public String getUserName() {
+		return userName;
+	}
+
+	public MqttMessage getWillMessage() {
+		return willMessage;
+	}
+
+	public String getWillDestination() {
+		return willDestination;
+	}
+
 	protected byte[] getVariableHeader() throws MqttException {
 		try {
 			ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -22,7 +22,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.SocketTimeoutException;
 
+import org.eclipse.paho.client.mqttv3.MqttBuffer;
+import org.eclipse.paho.client.mqttv3.MqttBufferPool;
 import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttStreamingCallback;
 import org.eclipse.paho.client.mqttv3.internal.ClientState;
 import org.eclipse.paho.client.mqttv3.internal.ExceptionHelper;
 import org.eclipse.paho.client.mqttv3.logging.Logger;
@@ -43,6 +46,13 @@ public class MqttInputStream extends InputStream {
 	private int remLen;
 	private int packetLen;
 	private byte[] packet;
+	private int packetOffset;
+	private byte first;
+	private boolean firstRead = false;
+	private int lengthValue;
+	private int lengthMultiplier;
+	private MqttBuffer pooled;
+	private final MqttTopicCache topicCache = new MqttTopicCache();
 
 	public MqttInputStream(ClientState clientState, InputStream in) {
 		this.clientState = clientState;
@@ -60,8 +70,20 @@ public class MqttInputStream extends InputStream {
 	}
 	
 	public void close() throws IOException {
+		releasePooled();
 		in.close();
 	}
+
+	/**
+	 * Hands back the pooled buffer of a packet that will not be completed.
+	 */
+	private void releasePooled() {
+		MqttBuffer buffer = pooled;
+		pooled = null;
+		if (buffer != null) {
+			buffer.release();
+		}
+	}
 	
 	/**
 	 * Reads an <code>MqttWireMessage</code> from the stream.
@@ -79,30 +101,55 @@ public class MqttInputStream extends InputStream {
 		try {
 			// read header
 			if (remLen < 0) {
-				// Assume we can read the whole header at once.
-				// The header is very small so it's likely we
-				// are able to read it fully or not at all.
-				// This keeps the parser lean since we don't
-				// need to cope with a partial header.
-				// Should we lose synch with the stream,
-				// the keepalive mechanism would kick in
-				// closing the connection.
-				bais.reset();
-				
-				byte first = in.readByte();
-				clientState.notifyReceivedBytes(1);
+				// The header is small, but it can still be split between
+				// reads that time out, so the bytes read so far are kept
+				// and the header is resumed by the next call.
+				if (!firstRead) {
+					bais.reset();
 
-				byte type = (byte) ((first >>> 4) & 0x0F);
-				if ((type < MqttWireMessage.MESSAGE_TYPE_CONNECT) ||
-						(type > MqttWireMessage.MESSAGE_TYPE_DISCONNECT)) {
-					// Invalid MQTT message type...
-					throw ExceptionHelper.createMqttException(MqttException.REASON_CODE_INVALID_MESSAGE);
+					first = in.readByte();
+					clientState.notifyReceivedBytes(1);
+
+					byte type = (byte) ((first >>> 4) & 0x0F);
+					if ((type < MqttWireMessage.MESSAGE_TYPE_CONNECT) ||
+							(type > MqttWireMessage.MESSAGE_TYPE_DISCONNECT)) {
+						// Invalid MQTT message type...
+						throw ExceptionHelper.createMqttException(MqttException.REASON_CODE_INVALID_MESSAGE);
+					}
+					firstRead = true;
+					lengthValue = 0;
+					lengthMultiplier = 1;
 				}
-				remLen = MqttWireMessage.readMBI(in).getValue();
+				remLen = readRemainingLength();
+				firstRead = false;
+				byte type = (byte) ((first >>> 4) & 0x0F);
 				bais.write(first);
 				// bit silly, we decode it then encode it
 				bais.write(MqttWireMessage.encodeMBI(remLen));
-				packet = new byte[(int)(bais.size()+remLen)];
+				MqttStreamingCallback streaming = clientState.getStreamingCallback();
+				if (streaming != null && type == MqttWireMessage.MESSAGE_TYPE_PUBLISH && ((first >> 1) & 0x03) < 2
+						&& bais.size() + remLen >= clientState.getStreamingThreshold()) {
+					int length = remLen;
+					remLen = -1;
+					message = readStreamed(length, streaming);
+					clientState.notifyPacketReceived(type, bais.size() + length);
+					// @TRACE 301= received {0} 
+					if (log.isLoggable(Logger.FINE)) {
+						log.fine(CLASS_NAME, methodName, "301",new Object[] {message});
+					}
+					return message;
+				}
+				MqttBufferPool pool = clientState.getBufferPool();
+				if (pool != null && type == MqttWireMessage.MESSAGE_TYPE_PUBLISH && ((first >> 1) & 0x03) < 2) {
+					// QoS 0 and 1 publishes are read straight into a pooled
+					// buffer which becomes the message payload
+					pooled = pool.acquire(remLen);
+					packet = pooled.array();
+					packetOffset = pooled.arrayOffset();
+				} else {
+					packet = new byte[(int)(bais.size()+remLen)];
+					packetOffset = bais.size();
+				}
 				packetLen = 0;
 			}
 			
@@ -110,25 +157,62 @@ public class MqttInputStream extends InputStream {
 			if (remLen >= 0) {
 				// the remaining packet can be read with timeouts
 				readFully();
+				clientState.notifyPacketReceived((first >>> 4) & 0x0F, bais.size() + remLen);
 
 				// reset packet parsing state 
 				remLen = -1;
 				
-				byte[] header = bais.toByteArray();
-				System.arraycopy(header,0,packet,0, header.length);
-				message = MqttWireMessage.createWireMessage(packet);
+				if (pooled != null) {
+					MqttBuffer data = pooled;
+					pooled = null;
+					try {
+						message = new MqttPublish((byte) (first & 0x0f), data, topicCache);
+					} catch (IOException ex) {
+						data.release();
+						throw new MqttException(ex);
+					}
+				} else {
+					byte[] header = bais.toByteArray();
+					System.arraycopy(header,0,packet,0, header.length);
+					message = MqttWireMessage.createWireMessage(packet, topicCache);
+				}
 				// @TRACE 301= received {0} 
-				log.fine(CLASS_NAME, methodName, "301",new Object[] {message});
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME, methodName, "301",new Object[] {message});
+				}
 			}
 		} catch (SocketTimeoutException e) {
 			// ignore socket read timeout
+		} catch (IOException e) {
+			// the connection failed part way through a packet
+			releasePooled();
+			throw e;
 		}
 		
 		return message;
 	}
 	
+	/**
+	 * Reads the remaining length of the packet, carrying on from where an
+	 * earlier read timed out.
+	 */
+	private int readRemainingLength() throws IOException {
+		byte digit;
+		do {
+			digit = in.readByte();
+			lengthValue += ((digit & 0x7F) * lengthMultiplier);
+			lengthMultiplier *= 128;
+		} while ((digit & 0x80) != 0);
+
+		if (lengthValue < 0 || lengthValue > MqttWireMessage.VARIABLE_BYTE_INT_MAX) {
+			throw new IOException("This property must be a number between 0 and "
+					+ MqttWireMessage.VARIABLE_BYTE_INT_MAX + ". Read value was: " + lengthValue);
+		}
+		return lengthValue;
+	}
+
     private void readFully() throws IOException {
-    	int off = bais.size() + (int) packetLen;
+    	int off = packetOffset + (int) packetLen;
     	int len = (int) (remLen - packetLen);
     	if (len < 0)
     		throw new IndexOutOfBoundsException();
@@ -151,4 +235,79 @@ public class MqttInputStream extends InputStream {
     		n += count;
     	}
     }
+
+	/**
+	 * Reads a publish whose payload is handed to the streaming callback while
+	 * it is read from the network. The returned message has an empty payload.
+	 */
+	private MqttPublish readStreamed(int length, MqttStreamingCallback streaming) throws IOException, MqttException {
+		PacketInputStream packetIn = new PacketInputStream(length);
+		MqttPublish publish = new MqttPublish((byte) (first & 0x0f), new DataInputStream(packetIn), topicCache);
+		publish.setMessageId(publish.getMessageId());
+		try {
+			streaming.messageArriving(publish.getTopicName(), publish.getMessage(), packetIn, packetIn.remaining);
+		} catch (IOException ex) {
+			throw ex;
+		} catch (Exception ex) {
+			throw new MqttException(ex);
+		}
+		packetIn.drain();
+		return publish;
+	}
+
+	/**
+	 * The remainder of a streamed publish packet. Reads wait out socket read
+	 * timeouts, as the whole packet must be consumed before the next one.
+	 */
+	private class PacketInputStream extends InputStream {
+		private int remaining;
+
+		PacketInputStream(int remaining) {
+			this.remaining = remaining;
+		}
+
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xff);
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			if (len == 0) {
+				return 0;
+			}
+			int count;
+			while (true) {
+				try {
+					count = in.read(b, off, Math.min(len, remaining));
+					break;
+				} catch (SocketTimeoutException e) {
+					// keep waiting for the rest of the packet
+				}
+			}
+			if (count < 0) {
+				throw new EOFException();
+			}
+			remaining -= count;
+			clientState.notifyReceivedBytes(count);
+			return count;
+		}
+
+		public int available() throws IOException {
+			return Math.min(in.available(), remaining);
+		}
+
+		public void close() {
+			// the network stream stays open, unread bytes are skipped later
+		}
+
+		void drain() throws IOException {
+			byte[] skip = new byte[Math.min(8192, Math.max(remaining, 1))];
+			while (read(skip, 0, skip.length) >= 0) {
+				// discard
+			}
+		}
+	}
 }
@@ -16,8 +16,11 @@
 package org.eclipse.paho.client.mqttv3.internal.wire;
 
 import java.io.BufferedOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.internal.ClientState;
@@ -72,23 +75,64 @@ public class MqttOutputStream extends OutputStream {
 	public void write(MqttWireMessage message) throws IOException, MqttException {
 		final String methodName = "write";
 		byte[] bytes = message.getHeader();
-		byte[] pl = message.getPayload();
+		if (message instanceof MqttPublish && ((MqttPublish) message).getPayloadChannel() != null) {
+			out.write(bytes,0,bytes.length);
+			clientState.notifySentBytes(bytes.length);
+			writeStreamed(((MqttPublish) message).getPayloadChannel(), ((MqttPublish) message).getPayloadLength());
+			clientState.notifyPacketSent(message.getType(), bytes.length + ((MqttPublish) message).getPayloadLength());
+			// @TRACE 529= sent {0}
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "529", new Object[]{message});
+			}
+			return;
+		}
+		ByteBuffer pl = message.getPayloadByteBuffer().duplicate();
+		int packetLength = bytes.length + pl.remaining();
 //		out.write(message.getHeader());
 //		out.write(message.getPayload());
 		out.write(bytes,0,bytes.length);
 		clientState.notifySentBytes(bytes.length);
 		
-        int offset = 0;
         int chunckSize = 1024;
-        while (offset < pl.length) {
-        	int length = Math.min(chunckSize, pl.length - offset);
-        	out.write(pl, offset, length);
-        	offset += chunckSize;
+        byte[] chunk = pl.hasArray() ? null : new byte[Math.min(chunckSize, pl.remaining())];
+        while (pl.hasRemaining()) {
+        	int length = Math.min(chunckSize, pl.remaining());
+        	if (chunk == null) {
+        		// write straight from the backing array, no copy
+        		out.write(pl.array(), pl.arrayOffset() + pl.position(), length);
+        		pl.position(pl.position() + length);
+        	} else {
+        		pl.get(chunk, 0, length);
+        		out.write(chunk, 0, length);
+        	}
         	clientState.notifySentBytes(length);
         }		
+		clientState.notifyPacketSent(message.getType(), packetLength);
 		
 		// @TRACE 529= sent {0}
-    	log.fine(CLASS_NAME, methodName, "529", new Object[]{message});
+    	if (log.isLoggable(Logger.FINE)) {
+	    	log.fine(CLASS_NAME, methodName, "529", new Object[]{message});
+    	}
 	}
-}
 
+	/**
+	 * Copies exactly <code>length</code> bytes of a streamed payload to the
+	 * stream. The header has already announced the length, so a payload that
+	 * ends early leaves the packet incomplete and fails the connection.
+	 */
+	private void writeStreamed(ReadableByteChannel channel, int length) throws IOException {
+		ByteBuffer chunk = ByteBuffer.allocate(Math.min(8192, Math.max(length, 1)));
+		int remaining = length;
+		while (remaining > 0) {
+			chunk.clear();
+			chunk.limit(Math.min(chunk.capacity(), remaining));
+			int count = channel.read(chunk);
+			if (count < 0) {
+				throw new EOFException("payload stream ended " + remaining + " bytes early");
+			}
+			out.write(chunk.array(), 0, count);
+			remaining -= count;
+			clientState.notifySentBytes(count);
+		}
+	}
+}
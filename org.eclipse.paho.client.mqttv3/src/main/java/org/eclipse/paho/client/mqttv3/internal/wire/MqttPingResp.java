@@ -27,9 +27,13 @@ public class MqttPingResp extends MqttAck {
 	public MqttPingResp(byte info, byte[] variableHeader) {
 		super(MqttWireMessage.MESSAGE_TYPE_PINGRESP);
 	}
+
+	public MqttPingResp() {
+		super(MqttWireMessage.MESSAGE_TYPE_PINGRESP);
+	}
 	
 	protected byte[] getVariableHeader() throws MqttException {
-		// Not needed, as the client never encodes a PINGRESP
+		// A PINGRESP has no variable header
 		return new byte[0];
 	}
 	
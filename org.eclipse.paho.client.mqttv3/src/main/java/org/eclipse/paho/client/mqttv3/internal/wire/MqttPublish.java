@@ -20,9 +20,14 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 
+import org.eclipse.paho.client.mqttv3.MqttBuffer;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+import org.eclipse.paho.client.mqttv3.MqttStreamingMessage;
 
 /**
  * An on-the-wire representation of an MQTT SEND message.
@@ -33,6 +38,7 @@ public class MqttPublish extends MqttPersistableWireMessage {
 	private String topicName;
 	
 	private byte[] encodedPayload = null;
+	private boolean payloadStreamed = false;
 	
 	public MqttPublish(String name, MqttMessage message) {
 		super(MqttWireMessage.MESSAGE_TYPE_PUBLISH);
@@ -48,20 +54,26 @@ public class MqttPublish extends MqttPersistableWireMessage {
 	 * @throws IOException if an exception occurs creating the publish
 	 */
 	public MqttPublish(byte info, byte[] data) throws MqttException, IOException  {
+		this(info, data, null);
+	}
+
+	/**
+	 * Constructs a new MqttPublish object, decoding the topic through the
+	 * given cache.
+	 * @param info the message info byte
+	 * @param data the variable header and payload bytes
+	 * @param topicCache the connection's cache of recently received topics, or null
+	 * @throws MqttException if an exception occurs creating the publish
+	 * @throws IOException if an exception occurs creating the publish
+	 */
+	public MqttPublish(byte info, byte[] data, MqttTopicCache topicCache) throws MqttException, IOException  {
 		super(MqttWireMessage.MESSAGE_TYPE_PUBLISH);
-		message = new MqttReceivedMessage();
-		message.setQos((info >> 1) & 0x03);
-		if ((info & 0x01) == 0x01) {
-			message.setRetained(true);
-		}
-		if ((info & 0x08) == 0x08) {
-			((MqttReceivedMessage) message).setDuplicate(true);
-		}
+		message = createReceivedMessage(info);
 		
 		ByteArrayInputStream bais = new ByteArrayInputStream(data);
 		CountingInputStream counter = new CountingInputStream(bais);
 		DataInputStream dis = new DataInputStream(counter);
-		topicName = decodeUTF8(dis);
+		topicName = decodeUTF8(dis, topicCache);
 		if (message.getQos() > 0) {
 			msgId = dis.readUnsignedShort();
 		}
@@ -71,14 +83,103 @@ public class MqttPublish extends MqttPersistableWireMessage {
 		message.setPayload(payload);
 	}
 
+	/**
+	 * Constructs a new MqttPublish object whose payload is a slice of the
+	 * supplied buffer, so no payload bytes are copied.
+	 * @param info the message info byte
+	 * @param data the variable header and payload bytes, the reference to which
+	 * is handed over to the message payload
+	 * @throws MqttException if an exception occurs creating the publish
+	 * @throws IOException if an exception occurs creating the publish
+	 */
+	public MqttPublish(byte info, MqttBuffer data) throws MqttException, IOException  {
+		this(info, data, null);
+	}
+
+	/**
+	 * Constructs a new MqttPublish object whose payload is a slice of the
+	 * supplied buffer, decoding the topic through the given cache.
+	 * @param info the message info byte
+	 * @param data the variable header and payload bytes, the reference to which
+	 * is handed over to the message payload
+	 * @param topicCache the connection's cache of recently received topics, or null
+	 * @throws MqttException if an exception occurs creating the publish
+	 * @throws IOException if an exception occurs creating the publish
+	 */
+	public MqttPublish(byte info, MqttBuffer data, MqttTopicCache topicCache) throws MqttException, IOException  {
+		super(MqttWireMessage.MESSAGE_TYPE_PUBLISH);
+		message = createReceivedMessage(info);
+
+		ByteArrayInputStream bais = new ByteArrayInputStream(data.array(), data.arrayOffset(), data.length());
+		CountingInputStream counter = new CountingInputStream(bais);
+		DataInputStream dis = new DataInputStream(counter);
+		topicName = decodeUTF8(dis, topicCache);
+		if (message.getQos() > 0) {
+			msgId = dis.readUnsignedShort();
+		}
+		int offset = counter.getCounter();
+		message.setPayload(data.slice(offset, data.length() - offset));
+	}
+
+	/**
+	 * Constructs a new MqttPublish object from its variable header only,
+	 * for a message whose payload is passed to the application as a stream.
+	 * The message payload is empty.
+	 * @param info the message info byte
+	 * @param in the stream positioned at the variable header
+	 * @throws MqttException if an exception occurs creating the publish
+	 * @throws IOException if an exception occurs creating the publish
+	 */
+	public MqttPublish(byte info, DataInputStream in) throws MqttException, IOException  {
+		this(info, in, null);
+	}
+
+	/**
+	 * Constructs a new MqttPublish object from its variable header only,
+	 * decoding the topic through the given cache.
+	 * @param info the message info byte
+	 * @param in the stream positioned at the variable header
+	 * @param topicCache the connection's cache of recently received topics, or null
+	 * @throws MqttException if an exception occurs creating the publish
+	 * @throws IOException if an exception occurs creating the publish
+	 */
+	public MqttPublish(byte info, DataInputStream in, MqttTopicCache topicCache) throws MqttException, IOException  {
+		super(MqttWireMessage.MESSAGE_TYPE_PUBLISH);
+		message = createReceivedMessage(info);
+		topicName = decodeUTF8(in, topicCache);
+		if (message.getQos() > 0) {
+			msgId = in.readUnsignedShort();
+		}
+		payloadStreamed = true;
+	}
+
+	private static MqttMessage createReceivedMessage(byte info) {
+		MqttReceivedMessage message = new MqttReceivedMessage();
+		message.setQos((info >> 1) & 0x03);
+		if ((info & 0x01) == 0x01) {
+			message.setRetained(true);
+		}
+		if ((info & 0x08) == 0x08) {
+			message.setDuplicate(true);
+		}
+		return message;
+	}
+
 	public String toString() {
 
 		// Convert the first few bytes of the payload into a hex string
 		StringBuffer hex = new StringBuffer();
-		byte[] payload = message.getPayload();
-		int limit = Math.min(payload.length, 20);
+		ByteBuffer payload;
+		try {
+			payload = (getPayloadChannel() == null) ? getPayloadByteBuffer() : ByteBuffer.allocate(0);
+		} catch (MqttException ex) {
+			payload = ByteBuffer.allocate(0);
+		}
+		int limit = Math.min(payload.remaining(), 20);
+		byte[] head = new byte[limit];
+		payload.duplicate().get(head);
 		for (int i = 0; i < limit; i++) {
-			byte b = payload[i];
+			byte b = head[i];
 			String ch = Integer.toHexString(b);
 			if (ch.length() == 1) {
 				ch = "0" + ch;
@@ -91,7 +192,7 @@ public class MqttPublish extends MqttPersistableWireMessage {
 		// useful
 		String string = null;
 		try {
-			string = new String(payload, 0, limit, "UTF-8");
+			string = new String(head, 0, limit, "UTF-8");
 		} catch (Exception e) {
 			string = "?";
 		}
@@ -107,7 +208,7 @@ public class MqttPublish extends MqttPersistableWireMessage {
 		sb.append(" topic:\"").append(topicName).append("\"");
 		sb.append(" payload:[hex:").append(hex);
 		sb.append(" utf8:\"").append(string).append("\"");
-		sb.append(" length:").append(payload.length).append("]");
+		sb.append(" length:").append(getPayloadLength()).append("]");
 
 		return sb.toString();
 	}
@@ -137,13 +238,71 @@ public class MqttPublish extends MqttPersistableWireMessage {
 	}
 
 	public byte[] getPayload() throws MqttException {
+		if (message instanceof MqttStreamingMessage) {
+			// the payload only exists as a stream, it can not be persisted
+			throw new MqttException(MqttException.REASON_CODE_UNEXPECTED_ERROR);
+		}
 		if (encodedPayload == null) {
 			encodedPayload = encodePayload(message);
 		}
 		return encodedPayload;
 	}
 
+	/**
+	 * @return the channel supplying the payload of an outbound streaming
+	 * message, or null if the payload is held in memory
+	 */
+	public ReadableByteChannel getPayloadChannel() {
+		if (message instanceof MqttStreamingMessage) {
+			return ((MqttStreamingMessage) message).getPayloadChannel();
+		}
+		return null;
+	}
+
+	/**
+	 * @return true if the payload of this inbound message was passed to the
+	 * application as a stream while it was read
+	 */
+	public boolean isPayloadStreamed() {
+		return payloadStreamed;
+	}
+
+	protected int getEncodedPayloadLength() throws MqttException {
+		return getPayloadLength();
+	}
+
+	public ByteBuffer getPayloadByteBuffer() throws MqttException {
+		MqttBuffer buffer = message.getPayloadBuffer();
+		if (buffer != null) {
+			return buffer.getByteBuffer();
+		}
+		return super.getPayloadByteBuffer();
+	}
+
+	public byte[] getPayloadBytes() throws MqttPersistenceException {
+		MqttBuffer buffer = message.getPayloadBuffer();
+		if (buffer != null && buffer.hasArray()) {
+			return buffer.array();
+		}
+		return super.getPayloadBytes();
+	}
+
+	public int getPayloadOffset() throws MqttPersistenceException {
+		MqttBuffer buffer = message.getPayloadBuffer();
+		if (buffer != null && buffer.hasArray()) {
+			return buffer.arrayOffset();
+		}
+		return 0;
+	}
+
 	public int getPayloadLength() {
+		if (message instanceof MqttStreamingMessage) {
+			return ((MqttStreamingMessage) message).getPayloadLength();
+		}
+		MqttBuffer buffer = message.getPayloadBuffer();
+		if (buffer != null) {
+			return buffer.length();
+		}
 		int length = 0;
 		try {
 			length = getPayload().length;
@@ -44,10 +44,24 @@ public class MqttSuback extends MqttAck {
 		}
 		dis.close();
 	}
+
+	public MqttSuback(int msgId, int[] grantedQos) {
+		super(MqttWireMessage.MESSAGE_TYPE_SUBACK);
+		this.msgId = msgId;
+		this.grantedQos = grantedQos.clone();
+	}
 	
 	protected byte[] getVariableHeader() throws MqttException {
-		// Not needed, as the client never encodes a SUBACK
-		return new byte[0];
+		// Only encoded by a server, such as the one used in tests
+		return encodeMessageId();
+	}
+
+	public byte[] getPayload() throws MqttException {
+		byte[] payload = new byte[grantedQos.length];
+		for (int i = 0; i < grantedQos.length; i++) {
+			payload[i] = (byte) grantedQos[i];
+		}
+		return payload;
 	}
 
 	public String toString() {
@@ -20,6 +20,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
@@ -48,19 +50,24 @@ public class MqttSubscribe extends MqttWireMessage {
 		DataInputStream dis = new DataInputStream(bais);
 		msgId = dis.readUnsignedShort();
 
-		count = 0;
-		names = new String[10];
-		qos = new int[10];
-		boolean end = false;
-		while (!end) {
-			try {
-				names[count] = decodeUTF8(dis);
-				qos[count++] = dis.readByte();
-			} catch (Exception e) {
-				end = true;
+		List<String> topics = new ArrayList<String>();
+		List<Integer> requested = new ArrayList<Integer>();
+		try {
+			while (dis.available() > 0) {
+				topics.add(decodeUTF8(dis));
+				requested.add(Integer.valueOf(dis.readByte()));
 			}
+		} catch (MqttException e) {
+			throw new IOException(e.getMessage());
 		}
 		dis.close();
+
+		count = topics.size();
+		names = topics.toArray(new String[count]);
+		qos = new int[count];
+		for (int i = 0; i < count; i++) {
+			qos[i] = requested.get(i).intValue();
+		}
 	}
 
 	/**
@@ -90,6 +97,20 @@ public class MqttSubscribe extends MqttWireMessage {
 		}
 	}
 
+	/**
+	 * @return the topic filters subscribed to
+	 */
+	public String[] getNames() {
+		return names.clone();
+	}
+
+	/**
+	 * @return the maximum QoS requested for each of the topic filters
+	 */
+	public int[] getQos() {
+		return qos.clone();
+	}
+
 	/**
 	 * @return string representation of this subscribe packet
 	 */
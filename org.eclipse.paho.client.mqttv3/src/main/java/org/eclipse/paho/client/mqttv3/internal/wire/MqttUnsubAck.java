@@ -34,9 +34,14 @@ public class MqttUnsubAck extends MqttAck {
 		msgId = dis.readUnsignedShort();
 		dis.close();
 	}
+
+	public MqttUnsubAck(int msgId) {
+		super(MqttWireMessage.MESSAGE_TYPE_UNSUBACK);
+		this.msgId = msgId;
+	}
 	
 	protected byte[] getVariableHeader() throws MqttException {
-		// Not needed, as the client never encodes an UNSUBACK
-		return new byte[0];
+		// Only encoded by a server, such as the one used in tests
+		return encodeMessageId();
 	}
 }
@@ -20,6 +20,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.eclipse.paho.client.mqttv3.MqttException;
 
@@ -41,6 +43,7 @@ public class MqttUnsubscribe extends MqttWireMessage {
 		super(MqttWireMessage.MESSAGE_TYPE_UNSUBSCRIBE);
 		if (names != null) {
 			this.names = names.clone();
+			this.count = names.length;
 		}
 	}
 
@@ -60,17 +63,25 @@ public class MqttUnsubscribe extends MqttWireMessage {
 		DataInputStream dis = new DataInputStream(bais);
 		msgId = dis.readUnsignedShort();
 
-		count = 0;
-		names = new String[10];
-		boolean end = false;
-		while (!end) {
-			try {
-				names[count] = decodeUTF8(dis);
-			} catch (Exception e) {
-				end = true;
+		List<String> topics = new ArrayList<String>();
+		try {
+			while (dis.available() > 0) {
+				topics.add(decodeUTF8(dis));
 			}
+		} catch (MqttException e) {
+			throw new IOException(e.getMessage());
 		}
 		dis.close();
+
+		count = topics.size();
+		names = topics.toArray(new String[count]);
+	}
+
+	/**
+	 * @return the topic filters unsubscribed from
+	 */
+	public String[] getNames() {
+		return names.clone();
 	}
 
 	/**
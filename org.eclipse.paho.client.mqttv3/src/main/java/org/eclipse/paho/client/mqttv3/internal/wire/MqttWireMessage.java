@@ -21,7 +21,7 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 
@@ -57,7 +57,7 @@ public abstract class MqttWireMessage {
 
 
 	private static final long FOUR_BYTE_INT_MAX = 4294967295L;
-	private static final int VARIABLE_BYTE_INT_MAX = 268435455;
+	static final int VARIABLE_BYTE_INT_MAX = 268435455;
 
 	// The type of the message (e.g. CONNECT, PUBLISH, PUBACK)
 	private byte type;
@@ -100,6 +100,28 @@ public abstract class MqttWireMessage {
 		return new byte[0];
 	}
 
+	/**
+	 * Returns the payload as a buffer, from its position to its limit.
+	 * Sub-classes holding the payload in a buffer should override this
+	 * method so that the payload can be written without being copied.
+	 * 
+	 * @return The payload buffer
+	 * @throws MqttException
+	 *             if an exception occurs whilst getting the payload
+	 */
+	public ByteBuffer getPayloadByteBuffer() throws MqttException {
+		return ByteBuffer.wrap(getPayload());
+	}
+
+	/**
+	 * @return The number of payload bytes written after the header
+	 * @throws MqttException
+	 *             if an exception occurs whilst getting the payload
+	 */
+	protected int getEncodedPayloadLength() throws MqttException {
+		return getPayloadByteBuffer().remaining();
+	}
+
 	/**
 	 * @return the type of the message.
 	 */
@@ -139,7 +161,7 @@ public abstract class MqttWireMessage {
 		try {
 			int first = ((getType() & 0x0f) << 4) ^ (getMessageInfo() & 0x0f);
 			byte[] varHeader = getVariableHeader();
-			int remLen = varHeader.length + getPayload().length;
+			int remLen = varHeader.length + getEncodedPayloadLength();
 
 			ByteArrayOutputStream baos = new ByteArrayOutputStream();
 			DataOutputStream dos = new DataOutputStream(baos);
@@ -174,15 +196,27 @@ public abstract class MqttWireMessage {
 		}
 		MultiByteArrayInputStream mbais = new MultiByteArrayInputStream(data.getHeaderBytes(), data.getHeaderOffset(),
 				data.getHeaderLength(), payload, data.getPayloadOffset(), data.getPayloadLength());
-		return createWireMessage(mbais);
+		return createWireMessage(mbais, null);
 	}
 
 	public static MqttWireMessage createWireMessage(byte[] bytes) throws MqttException {
+		return createWireMessage(bytes, null);
+	}
+
+	/**
+	 * Decodes a received packet, using the given cache to decode the topic of
+	 * a PUBLISH.
+	 * @param bytes the packet bytes
+	 * @param topicCache the connection's cache of recently received topics, or null
+	 * @return the decoded packet
+	 * @throws MqttException if the packet could not be decoded
+	 */
+	public static MqttWireMessage createWireMessage(byte[] bytes, MqttTopicCache topicCache) throws MqttException {
 		ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-		return createWireMessage(bais);
+		return createWireMessage(bais, topicCache);
 	}
 
-	private static MqttWireMessage createWireMessage(InputStream inputStream) throws MqttException {
+	private static MqttWireMessage createWireMessage(InputStream inputStream, MqttTopicCache topicCache) throws MqttException {
 		try {
 			CountingInputStream counter = new CountingInputStream(inputStream);
 			DataInputStream in = new DataInputStream(counter);
@@ -204,7 +238,7 @@ public abstract class MqttWireMessage {
 			if (type == MqttWireMessage.MESSAGE_TYPE_CONNECT) {
 				result = new MqttConnect(info, data);
 			} else if (type == MqttWireMessage.MESSAGE_TYPE_PUBLISH) {
-				result = new MqttPublish(info, data);
+				result = new MqttPublish(info, data, topicCache);
 			} else if (type == MqttWireMessage.MESSAGE_TYPE_PUBACK) {
 				result = new MqttPubAck(info, data);
 			} else if (type == MqttWireMessage.MESSAGE_TYPE_PUBCOMP) {
@@ -324,23 +358,91 @@ public abstract class MqttWireMessage {
 	 *             the data to the stream
 	 */
 	public static void encodeUTF8(DataOutputStream dos, String stringToEncode) throws MqttException {
-		validateUTF8String(stringToEncode);
+		byte[] encodedString = toUTF8(stringToEncode);
 		try {
-
-			byte[] encodedString = stringToEncode.getBytes(STRING_ENCODING);
 			byte byte1 = (byte) ((encodedString.length >>> 8) & 0xFF);
 			byte byte2 = (byte) ((encodedString.length >>> 0) & 0xFF);
 
 			dos.write(byte1);
 			dos.write(byte2);
 			dos.write(encodedString);
-		} catch (UnsupportedEncodingException ex) {
-			throw new MqttException(ex);
 		} catch (IOException ex) {
 			throw new MqttException(ex);
 		}
 	}
 
+	/**
+	 * Encodes a String into UTF-8, validating it for MQTT in the same pass.
+	 * Strings made up only of printable ASCII characters are copied directly.
+	 * 
+	 * @param input
+	 *            The String to be encoded
+	 * @return the UTF-8 encoding of the input
+	 * @throws IllegalArgumentException - thrown if input String contains illegal characters or character sequences.
+	 */
+	private static byte[] toUTF8(String input) throws IllegalArgumentException {
+		int length = input.length();
+		byte[] ascii = new byte[length];
+		int i = 0;
+		for (; i < length; i++) {
+			char c = input.charAt(i);
+			if (c < 0x20 || c >= 0x7f) {
+				break;
+			}
+			ascii[i] = (byte) c;
+		}
+		if (i == length) {
+			return ascii;
+		}
+
+		byte[] encoded = new byte[i + (length - i) * 3];
+		System.arraycopy(ascii, 0, encoded, 0, i);
+		int pos = i;
+		for (; i < length; i++) {
+			boolean isBad = false;
+			char c = input.charAt(i);
+			if (c < 0x80) {
+				isBad = c < 0x20 || c == 0x7f; // Control character
+				encoded[pos++] = (byte) c;
+			} else if (c < 0x800) {
+				isBad = c <= 0x9f; // Control character
+				encoded[pos++] = (byte) (0xc0 | (c >> 6));
+				encoded[pos++] = (byte) (0x80 | (c & 0x3f));
+			} else if (Character.isHighSurrogate(c)) {
+				if (i + 1 == length) {
+					isBad = true; /* Trailing high surrogate */
+				} else {
+					char c2 = input.charAt(++i);
+					if (Character.isLowSurrogate(c2)) {
+						int ch = ((((int) c) & 0x3ff) << 10) | (c2 & 0x3ff);
+						if ((ch & 0xffff) == 0xffff || (ch & 0xffff) == 0xfffe) {
+							isBad = true; /* Noncharacter in base plane */
+						}
+						int codePoint = Character.toCodePoint(c, c2);
+						encoded[pos++] = (byte) (0xf0 | (codePoint >> 18));
+						encoded[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+						encoded[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+						encoded[pos++] = (byte) (0x80 | (codePoint & 0x3f));
+					} else {
+						isBad = true; /* No low surrogate */
+					}
+				}
+			} else {
+				isBad = Character.isLowSurrogate(c) // no high surrogate
+						|| c >= 0xfdd0 && (c <= 0xfddf || c >= 0xfffe); // non-character in other nonbase plane
+				encoded[pos++] = (byte) (0xe0 | (c >> 12));
+				encoded[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+				encoded[pos++] = (byte) (0x80 | (c & 0x3f));
+			}
+			if (isBad) {
+				throw new IllegalArgumentException(String.format("Invalid UTF-8 char: [%04x]", (int) c));
+			}
+		}
+		byte[] result = new byte[pos];
+		System.arraycopy(encoded, 0, result, 0, pos);
+		return result;
+	}
+
 	/**
 	 * Decodes a UTF-8 string from the DataInputStream
 	 * provided. @link(DataInoutStream#readUTF()) should be no longer used,
@@ -361,15 +463,62 @@ public abstract class MqttWireMessage {
 
 			byte[] encodedString = new byte[encodedLength];
 			input.readFully(encodedString);
-			String output = new String(encodedString, STRING_ENCODING);
-			validateUTF8String(output);
+			return decodeUTF8(encodedString, 0, encodedLength);
+		} catch (IOException ex) {
+			throw new MqttException(ex);
+		}
+	}
 
-			return output;
+	/**
+	 * Decodes a UTF-8 string from the DataInputStream provided, looking the
+	 * encoded bytes up in the given cache first.
+	 * 
+	 * @param input
+	 *            The input stream from which to read the encoded string
+	 * @param topicCache
+	 *            The cache of recently decoded strings, or null
+	 * @return a decoded String from the DataInputStream
+	 * @throws MqttException
+	 *             thrown when an error occurs with either reading from the stream
+	 *             or decoding the encoded string.
+	 */
+	public static String decodeUTF8(DataInputStream input, MqttTopicCache topicCache) throws MqttException {
+		if (topicCache == null) {
+			return decodeUTF8(input);
+		}
+		try {
+			return topicCache.read(input);
 		} catch (IOException ex) {
 			throw new MqttException(ex);
 		}
 	}
 
+	/**
+	 * Decodes and validates a UTF-8 string held in an array. Strings made up
+	 * only of printable ASCII characters are copied directly.
+	 * 
+	 * @param bytes
+	 *            The array holding the encoded string
+	 * @param offset
+	 *            The offset of the encoded string in the array
+	 * @param length
+	 *            The length of the encoded string
+	 * @return the decoded String
+	 * @throws IllegalArgumentException - thrown if the String contains illegal characters or character sequences.
+	 */
+	public static String decodeUTF8(byte[] bytes, int offset, int length) throws IllegalArgumentException {
+		for (int i = offset; i < offset + length; i++) {
+			byte b = bytes[i];
+			if (b < 0x20 || b == 0x7f) {
+				// Not printable ASCII, so decode and validate in full
+				String output = new String(bytes, offset, length, STRING_ENCODING);
+				validateUTF8String(output);
+				return output;
+			}
+		}
+		return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+	}
+
 	/**
 	 * Validate a UTF-8 String for suitability for MQTT.
 	 * 
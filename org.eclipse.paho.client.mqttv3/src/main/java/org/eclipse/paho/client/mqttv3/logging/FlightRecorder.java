@@ -0,0 +1,540 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - flight recorder trace
+ */
+package org.eclipse.paho.client.mqttv3.logging;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the trace of a client as it happens, without formatting it, into a
+ * fixed size ring buffer that keeps the most recent events.
+ * <p>
+ * Each event holds the message catalog id of the trace point, when it
+ * happened, the thread and the inserts. Numbers, booleans, characters and
+ * strings are recorded as they are. Any other insert is recorded by its class
+ * and identity hash code only, so that the recorder never holds on to the
+ * messages and payloads passing through the client. Nothing is formatted and
+ * no lock is taken while recording: writers claim a slot with a single atomic
+ * increment and overwrite the oldest event.
+ * </p>
+ * <p>
+ * Recording is switched on for the clients created after a capacity has been
+ * set, with {@link #setCapacity(int)} or the
+ * <code>org.eclipse.paho.client.mqttv3.flightRecorder</code> system property.
+ * The buffer of a client is written, in a compact binary form, with
+ * {@link org.eclipse.paho.client.mqttv3.util.Debug#dumpFlightRecord(OutputStream)}
+ * and can be read back with {@link #read(InputStream)}; the
+ * <code>org.eclipse.paho.client.mqttv3.internal.traceformat</code> tool
+ * renders it as text using the message catalog.
+ * </p>
+ */
+public final class FlightRecorder {
+	/**
+	 * The system property that sets the number of events recorded for each
+	 * client.
+	 */
+	public static final String CAPACITY_PROPERTY = "org.eclipse.paho.client.mqttv3.flightRecorder";
+
+	private static final int MAGIC = 0x50414652;
+	private static final int VERSION = 1;
+	private static final int MAX_INSERTS = 8;
+	private static final int MAX_STRING = 4096;
+
+	private static final byte NULL = 0;
+	private static final byte LONG = 1;
+	private static final byte DOUBLE = 2;
+	private static final byte BOOLEAN = 3;
+	private static final byte CHAR = 4;
+	private static final byte STRING = 5;
+	private static final byte OBJECT = 6;
+	private static final byte THROWABLE = 7;
+
+	private static volatile int capacity = initialCapacity();
+	private static final ConcurrentHashMap<String, FlightRecorder> recorders = new ConcurrentHashMap<String, FlightRecorder>();
+
+	private final String clientId;
+	private final Slot[] slots;
+	private final int mask;
+	private final AtomicLong next = new AtomicLong(0);
+	private volatile int fence;
+
+	private FlightRecorder(String clientId, int size) {
+		int length = Integer.highestOneBit(Math.max(size, 2) - 1) << 1;
+		this.clientId = clientId;
+		this.slots = new Slot[length];
+		for (int i = 0; i < length; i++) {
+			slots[i] = new Slot();
+		}
+		this.mask = length - 1;
+	}
+
+	private static int initialCapacity() {
+		try {
+			return Math.max(0, Integer.getInteger(CAPACITY_PROPERTY, 0).intValue());
+		} catch (SecurityException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Sets the number of trace events to keep for each client created from
+	 * now on, rounded up to a power of two. Clients that exist already keep
+	 * recording, or not, as they were.
+	 * @param events the number of events, or 0 to stop recording
+	 */
+	public static void setCapacity(int events) {
+		if (events < 0) {
+			throw new IllegalArgumentException();
+		}
+		capacity = events;
+	}
+
+	/**
+	 * @return the number of trace events kept for each new client, 0 when
+	 *         recording is off
+	 */
+	public static int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return whether clients created now record their trace
+	 */
+	public static boolean isEnabled() {
+		return capacity > 0;
+	}
+
+	/**
+	 * Returns the recorder of a client, creating it if recording is on.
+	 * @param clientId the client
+	 * @return the recorder, or null if recording is off
+	 */
+	static FlightRecorder forClient(String clientId) {
+		FlightRecorder recorder = recorders.get(clientId);
+		int size = capacity;
+		if (recorder == null && size > 0) {
+			recorder = new FlightRecorder(clientId, size);
+			FlightRecorder existing = recorders.putIfAbsent(clientId, recorder);
+			if (existing != null) {
+				recorder = existing;
+			}
+		}
+		return recorder;
+	}
+
+	/**
+	 * @param clientId the client
+	 * @return the recorder of the client, or null if it does not record
+	 */
+	public static FlightRecorder getRecorder(String clientId) {
+		return recorders.get(clientId);
+	}
+
+	/**
+	 * Drops the recorder of a client that has been closed.
+	 * @param clientId the client
+	 */
+	public static void remove(String clientId) {
+		recorders.remove(clientId);
+	}
+
+	/**
+	 * @return the client whose trace is recorded
+	 */
+	public String getClientId() {
+		return clientId;
+	}
+
+	/**
+	 * @return the number of events recorded so far, including those that have
+	 *         been overwritten
+	 */
+	public long getRecorded() {
+		return next.get();
+	}
+
+	/**
+	 * Records a trace event.
+	 * @param level the level of the event, one of the levels of {@link Logger}
+	 * @param sourceClass the class that traced the event
+	 * @param sourceMethod the method that traced the event
+	 * @param msg the message catalog id
+	 * @param inserts the inserts for the message, may be null
+	 * @param thrown the exception traced with the event, may be null
+	 */
+	public void record(int level, String sourceClass, String sourceMethod, String msg, Object[] inserts,
+			Throwable thrown) {
+		long sequence = next.getAndIncrement();
+		Slot slot = slots[(int) sequence & mask];
+		slot.sequence = -1;
+		slot.time = System.nanoTime();
+		slot.threadId = Thread.currentThread().getId();
+		slot.level = level;
+		slot.sourceClass = sourceClass;
+		slot.sourceMethod = sourceMethod;
+		slot.msg = msg;
+		slot.thrown = thrown;
+		int count = inserts == null ? 0 : Math.min(inserts.length, MAX_INSERTS);
+		for (int i = 0; i < count; i++) {
+			slot.set(i, inserts[i]);
+		}
+		for (int i = count; i < slot.count; i++) {
+			slot.refs[i] = null;
+		}
+		slot.count = count;
+		slot.sequence = sequence;
+	}
+
+	/**
+	 * Writes the recorded events, oldest first, in binary form. Recording
+	 * carries on while the dump is written; events that are overwritten as
+	 * they are being copied are left out.
+	 * @param out the stream to write to, which is flushed but not closed
+	 * @throws IOException if the events could not be written
+	 */
+	public void dump(OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+		long end = next.get();
+		data.writeInt(MAGIC);
+		data.writeShort(VERSION);
+		data.writeUTF(clip(clientId));
+		data.writeLong(System.currentTimeMillis());
+		data.writeLong(System.nanoTime());
+		data.writeLong(end);
+		Slot copy = new Slot();
+		for (long sequence = Math.max(0, end - slots.length); sequence < end; sequence++) {
+			Slot slot = slots[(int) sequence & mask];
+			if (slot.sequence != sequence) {
+				continue;
+			}
+			copy.copy(slot);
+			// the reads of the copy above have to happen before the check below
+			fence = 0;
+			if (slot.sequence != sequence) {
+				continue;
+			}
+			data.writeByte(1);
+			copy.write(data);
+		}
+		data.writeByte(0);
+		data.flush();
+	}
+
+	/**
+	 * Reads the events written by {@link #dump(OutputStream)}.
+	 * @param in the stream to read from
+	 * @return the events
+	 * @throws IOException if the stream does not hold a dump
+	 */
+	public static FlightRecord read(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		if (data.readInt() != MAGIC) {
+			throw new IOException("not a flight record");
+		}
+		int version = data.readShort();
+		if (version != VERSION) {
+			throw new IOException("unsupported flight record version " + version);
+		}
+		String clientId = data.readUTF();
+		long dumpTime = data.readLong();
+		long dumpNanos = data.readLong();
+		long recorded = data.readLong();
+		List<Event> events = new ArrayList<Event>();
+		while (data.readByte() != 0) {
+			long nanos = data.readLong();
+			long threadId = data.readLong();
+			int level = data.readByte();
+			String sourceClass = data.readUTF();
+			String sourceMethod = data.readUTF();
+			String msg = data.readUTF();
+			Object[] inserts = new Object[data.readByte()];
+			for (int i = 0; i < inserts.length; i++) {
+				inserts[i] = readInsert(data);
+			}
+			String thrown = data.readBoolean() ? data.readUTF() : null;
+			long time = dumpTime - (dumpNanos - nanos) / 1000000;
+			events.add(new Event(time, threadId, level, sourceClass, sourceMethod, msg, inserts, thrown));
+		}
+		return new FlightRecord(clientId, recorded, events);
+	}
+
+	private static Object readInsert(DataInputStream data) throws IOException {
+		byte type = data.readByte();
+		switch (type) {
+		case NULL:
+			return null;
+		case LONG:
+			return Long.valueOf(data.readLong());
+		case DOUBLE:
+			return Double.valueOf(data.readDouble());
+		case BOOLEAN:
+			return Boolean.valueOf(data.readBoolean());
+		case CHAR:
+			return Character.valueOf(data.readChar());
+		case STRING:
+		case OBJECT:
+		case THROWABLE:
+			return data.readUTF();
+		default:
+			throw new IOException("unknown insert type " + type);
+		}
+	}
+
+	private static String clip(String s) {
+		if (s == null) {
+			return "";
+		}
+		return s.length() > MAX_STRING ? s.substring(0, MAX_STRING) : s;
+	}
+
+	/**
+	 * One event in the ring buffer, overwritten in place. The sequence is
+	 * -1 while the event is being written.
+	 */
+	private static final class Slot {
+		volatile long sequence = -1;
+		long time;
+		long threadId;
+		int level;
+		String sourceClass;
+		String sourceMethod;
+		String msg;
+		Throwable thrown;
+		int count;
+		final byte[] types = new byte[MAX_INSERTS];
+		final long[] values = new long[MAX_INSERTS];
+		final Object[] refs = new Object[MAX_INSERTS];
+
+		void set(int i, Object insert) {
+			Object ref = null;
+			byte type;
+			long value = 0;
+			if (insert == null) {
+				type = NULL;
+			} else if (insert instanceof String) {
+				type = STRING;
+				ref = insert;
+			} else if (insert instanceof Integer || insert instanceof Long || insert instanceof Short
+					|| insert instanceof Byte) {
+				type = LONG;
+				value = ((Number) insert).longValue();
+			} else if (insert instanceof Boolean) {
+				type = BOOLEAN;
+				value = ((Boolean) insert).booleanValue() ? 1 : 0;
+			} else if (insert instanceof Double || insert instanceof Float) {
+				type = DOUBLE;
+				value = Double.doubleToRawLongBits(((Number) insert).doubleValue());
+			} else if (insert instanceof Character) {
+				type = CHAR;
+				value = ((Character) insert).charValue();
+			} else if (insert instanceof Throwable) {
+				type = THROWABLE;
+				ref = insert;
+			} else {
+				type = OBJECT;
+				ref = insert.getClass();
+				value = System.identityHashCode(insert);
+			}
+			types[i] = type;
+			values[i] = value;
+			refs[i] = ref;
+		}
+
+		void copy(Slot from) {
+			time = from.time;
+			threadId = from.threadId;
+			level = from.level;
+			sourceClass = from.sourceClass;
+			sourceMethod = from.sourceMethod;
+			msg = from.msg;
+			thrown = from.thrown;
+			count = Math.min(from.count, MAX_INSERTS);
+			System.arraycopy(from.types, 0, types, 0, count);
+			System.arraycopy(from.values, 0, values, 0, count);
+			System.arraycopy(from.refs, 0, refs, 0, count);
+		}
+
+		void write(DataOutputStream data) throws IOException {
+			data.writeLong(time);
+			data.writeLong(threadId);
+			data.writeByte(level);
+			data.writeUTF(clip(sourceClass));
+			data.writeUTF(clip(sourceMethod));
+			data.writeUTF(clip(msg));
+			data.writeByte(count);
+			for (int i = 0; i < count; i++) {
+				data.writeByte(types[i]);
+				switch (types[i]) {
+				case LONG:
+					data.writeLong(values[i]);
+					break;
+				case BOOLEAN:
+					data.writeBoolean(values[i] != 0);
+					break;
+				case DOUBLE:
+					data.writeDouble(Double.longBitsToDouble(values[i]));
+					break;
+				case CHAR:
+					data.writeChar((int) values[i]);
+					break;
+				case STRING:
+				case THROWABLE:
+					data.writeUTF(clip(String.valueOf(refs[i])));
+					break;
+				case OBJECT:
+					data.writeUTF(clip(((Class) refs[i]).getName() + "@" + Integer.toHexString((int) values[i])));
+					break;
+				default:
+					break;
+				}
+			}
+			data.writeBoolean(thrown != null);
+			if (thrown != null) {
+				data.writeUTF(clip(thrown.toString()));
+			}
+		}
+	}
+
+	/**
+	 * The events read back from a dump.
+	 */
+	public static final class FlightRecord {
+		private final String clientId;
+		private final long recorded;
+		private final List<Event> events;
+
+		FlightRecord(String clientId, long recorded, List<Event> events) {
+			this.clientId = clientId;
+			this.recorded = recorded;
+			this.events = Collections.unmodifiableList(events);
+		}
+
+		/**
+		 * @return the client whose trace was recorded
+		 */
+		public String getClientId() {
+			return clientId;
+		}
+
+		/**
+		 * @return the number of events the client had recorded when it was
+		 *         dumped, including those that had been overwritten
+		 */
+		public long getRecorded() {
+			return recorded;
+		}
+
+		/**
+		 * @return the events in the dump, oldest first
+		 */
+		public List<Event> getEvents() {
+			return events;
+		}
+	}
+
+	/**
+	 * A trace event read back from a dump.
+	 */
+	public static final class Event {
+		private final long time;
+		private final long threadId;
+		private final int level;
+		private final String sourceClass;
+		private final String sourceMethod;
+		private final String messageId;
+		private final Object[] inserts;
+		private final String thrown;
+
+		Event(long time, long threadId, int level, String sourceClass, String sourceMethod, String messageId,
+				Object[] inserts, String thrown) {
+			this.time = time;
+			this.threadId = threadId;
+			this.level = level;
+			this.sourceClass = sourceClass;
+			this.sourceMethod = sourceMethod;
+			this.messageId = messageId;
+			this.inserts = inserts;
+			this.thrown = thrown;
+		}
+
+		/**
+		 * @return when the event happened, in milliseconds since the epoch
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		/**
+		 * @return the id of the thread that traced the event
+		 */
+		public long getThreadId() {
+			return threadId;
+		}
+
+		/**
+		 * @return the level of the event, one of the levels of {@link Logger}
+		 */
+		public int getLevel() {
+			return level;
+		}
+
+		/**
+		 * @return the class that traced the event
+		 */
+		public String getSourceClass() {
+			return sourceClass;
+		}
+
+		/**
+		 * @return the method that traced the event
+		 */
+		public String getSourceMethod() {
+			return sourceMethod;
+		}
+
+		/**
+		 * @return the message catalog id of the event
+		 */
+		public String getMessageId() {
+			return messageId;
+		}
+
+		/**
+		 * @return the inserts of the event: Long, Double, Boolean and
+		 *         Character values for the primitives, and Strings for the
+		 *         rest
+		 */
+		public Object[] getInserts() {
+			return inserts.clone();
+		}
+
+		/**
+		 * @return the exception traced with the event, or null
+		 */
+		public String getThrown() {
+			return thrown;
+		}
+	}
+}
@@ -56,6 +56,8 @@ public class LoggerFactory {
 	 * If a logger has already been created with the given name 
 	 * it is returned. Otherwise a new logger is created. By default a logger
 	 * that uses java.util.logging will be returned.
+	 * While a {@link FlightRecorder} capacity is set the logger also records
+	 * every event for the client named as its resource.
 	 * 
 	 * @param messageCatalogName the resource bundle containing the logging messages.
 	 * @param loggerID  unique name to identify this logger.
@@ -75,6 +77,9 @@ public class LoggerFactory {
 		if (null == logger) {
 			throw new MissingResourceException("Error locating the logging class", CLASS_NAME, loggerID);
 		}
+		if (FlightRecorder.isEnabled()) {
+			logger = new RecordingLogger(logger);
+		}
 
 		return logger;
 	}
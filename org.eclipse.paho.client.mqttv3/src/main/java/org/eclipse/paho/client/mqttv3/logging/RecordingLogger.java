@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - flight recorder trace
+ */
+package org.eclipse.paho.client.mqttv3.logging;
+
+import java.util.ResourceBundle;
+
+/**
+ * A logger that records every event in the {@link FlightRecorder} of its
+ * client, whatever the level, before passing it on to the logger it wraps.
+ * The recorder is found once the client id is set as the resource name.
+ */
+final class RecordingLogger implements Logger {
+	private final Logger logger;
+	private volatile FlightRecorder recorder = null;
+
+	RecordingLogger(Logger logger) {
+		this.logger = logger;
+	}
+
+	public void initialise(ResourceBundle messageCatalog, String loggerID, String resourceName) {
+		logger.initialise(messageCatalog, loggerID, resourceName);
+		if (resourceName != null) {
+			recorder = FlightRecorder.forClient(resourceName);
+		}
+	}
+
+	public void setResourceName(String logContext) {
+		logger.setResourceName(logContext);
+		recorder = logContext == null ? null : FlightRecorder.forClient(logContext);
+	}
+
+	public boolean isLoggable(int level) {
+		return recorder != null || logger.isLoggable(level);
+	}
+
+	public void severe(String sourceClass, String sourceMethod, String msg) {
+		log(SEVERE, sourceClass, sourceMethod, msg, null, null);
+	}
+
+	public void severe(String sourceClass, String sourceMethod, String msg, Object[] inserts) {
+		log(SEVERE, sourceClass, sourceMethod, msg, inserts, null);
+	}
+
+	public void severe(String sourceClass, String sourceMethod, String msg, Object[] inserts, Throwable thrown) {
+		log(SEVERE, sourceClass, sourceMethod, msg, inserts, thrown);
+	}
+
+	public void warning(String sourceClass, String sourceMethod, String msg) {
+		log(WARNING, sourceClass, sourceMethod, msg, null, null);
+	}
+
+	public void warning(String sourceClass, String sourceMethod, String msg, Object[] inserts) {
+		log(WARNING, sourceClass, sourceMethod, msg, inserts, null);
+	}
+
+	public void warning(String sourceClass, String sourceMethod, String msg, Object[] inserts, Throwable thrown) {
+		log(WARNING, sourceClass, sourceMethod, msg, inserts, thrown);
+	}
+
+	public void info(String sourceClass, String sourceMethod, String msg) {
+		log(INFO, sourceClass, sourceMethod, msg, null, null);
+	}
+
+	public void info(String sourceClass, String sourceMethod, String msg, Object[] inserts) {
+		log(INFO, sourceClass, sourceMethod, msg, inserts, null);
+	}
+
+	public void info(String sourceClass, String sourceMethod, String msg, Object[] inserts, Throwable thrown) {
+		log(INFO, sourceClass, sourceMethod, msg, inserts, thrown);
+	}
+
+	public void config(String sourceClass, String sourceMethod, String msg) {
+		log(CONFIG, sourceClass, sourceMethod, msg, null, null);
+	}
+
+	public void config(String sourceClass, String sourceMethod, String msg, Object[] inserts) {
+		log(CONFIG, sourceClass, sourceMethod, msg, inserts, null);
+	}
+
+	public void config(String sourceClass, String sourceMethod, String msg, Object[] inserts, Throwable thrown) {
+		log(CONFIG, sourceClass, sourceMethod, msg, inserts, thrown);
+	}
+
+	public void fine(String sourceClass, String sourceMethod, String msg) {
+		trace(FINE, sourceClass, sourceMethod, msg, null, null);
+	}
+
+	public void fine(String sourceClass, String sourceMethod, String msg, Object[] inserts) {
+		trace(FINE, sourceClass, sourceMethod, msg, inserts, null);
+	}
+
+	public void fine(String sourceClass, String sourceMethod, String msg, Object[] inserts, Throwable ex) {
+		trace(FINE, sourceClass, sourceMethod, msg, inserts, ex);
+	}
+
+	public void finer(String sourceClass, String sourceMethod, String msg) {
+		trace(FINER, sourceClass, sourceMethod, msg, null, null);
+	}
+
+	public void finer(String sourceClass, String sourceMethod, String msg, Object[] inserts) {
+		trace(FINER, sourceClass, sourceMethod, msg, inserts, null);
+	}
+
+	public void finer(String sourceClass, String sourceMethod, String msg, Object[] inserts, Throwable ex) {
+		trace(FINER, sourceClass, sourceMethod, msg, inserts, ex);
+	}
+
+	public void finest(String sourceClass, String sourceMethod, String msg) {
+		trace(FINEST, sourceClass, sourceMethod, msg, null, null);
+	}
+
+	public void finest(String sourceClass, String sourceMethod, String msg, Object[] inserts) {
+		trace(FINEST, sourceClass, sourceMethod, msg, inserts, null);
+	}
+
+	public void finest(String sourceClass, String sourceMethod, String msg, Object[] inserts, Throwable ex) {
+		trace(FINEST, sourceClass, sourceMethod, msg, inserts, ex);
+	}
+
+	public void log(int level, String sourceClass, String sourceMethod, String msg, Object[] inserts, Throwable thrown) {
+		FlightRecorder recorder = this.recorder;
+		if (recorder != null) {
+			recorder.record(level, sourceClass, sourceMethod, msg, inserts, thrown);
+		}
+		logger.log(level, sourceClass, sourceMethod, msg, inserts, thrown);
+	}
+
+	public void trace(int level, String sourceClass, String sourceMethod, String msg, Object[] inserts, Throwable ex) {
+		FlightRecorder recorder = this.recorder;
+		if (recorder != null) {
+			recorder.record(level, sourceClass, sourceMethod, msg, inserts, ex);
+		}
+		logger.trace(level, sourceClass, sourceMethod, msg, inserts, ex);
+	}
+
+	public String formatMessage(String msg, Object[] inserts) {
+		return logger.formatMessage(msg, inserts);
+	}
+
+	public void dumpTrace() {
+		logger.dumpTrace();
+	}
+}
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - client metrics listener
+ */
+package org.eclipse.paho.client.mqttv3.metrics;
+
+/**
+ * Passes every event on to several listeners in turn, to feed more than one
+ * monitoring system from a client.
+ */
+public class CompositeMetricsListener implements MqttClientMetricsListener {
+	private final MqttClientMetricsListener[] listeners;
+
+	/**
+	 * @param listeners the listeners to pass the events to, in order
+	 */
+	public CompositeMetricsListener(MqttClientMetricsListener... listeners) {
+		this.listeners = listeners.clone();
+	}
+
+	public void packetSent(int type, long bytes) {
+		for (MqttClientMetricsListener listener : listeners) {
+			listener.packetSent(type, bytes);
+		}
+	}
+
+	public void packetReceived(int type, long bytes) {
+		for (MqttClientMetricsListener listener : listeners) {
+			listener.packetReceived(type, bytes);
+		}
+	}
+
+	public void ackReceived(int qos, long nanos) {
+		for (MqttClientMetricsListener listener : listeners) {
+			listener.ackReceived(qos, nanos);
+		}
+	}
+
+	public void callbackCompleted(long nanos) {
+		for (MqttClientMetricsListener listener : listeners) {
+			listener.callbackCompleted(nanos);
+		}
+	}
+
+	public void reconnected() {
+		for (MqttClientMetricsListener listener : listeners) {
+			listener.reconnected();
+		}
+	}
+
+	public void persistencePut(long nanos) {
+		for (MqttClientMetricsListener listener : listeners) {
+			listener.persistencePut(nanos);
+		}
+	}
+
+	public void persistenceRemoved(long nanos) {
+		for (MqttClientMetricsListener listener : listeners) {
+			listener.persistenceRemoved(nanos);
+		}
+	}
+
+	public void bufferSpilled(int bufferSize, boolean oldestDeleted) {
+		for (MqttClientMetricsListener listener : listeners) {
+			listener.bufferSpilled(bufferSize, oldestDeleted);
+		}
+	}
+}
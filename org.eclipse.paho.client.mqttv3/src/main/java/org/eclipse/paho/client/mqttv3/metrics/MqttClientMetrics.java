@@ -0,0 +1,363 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - client metrics
+ */
+package org.eclipse.paho.client.mqttv3.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.internal.ClientComms;
+import org.eclipse.paho.client.mqttv3.internal.ClientState;
+
+/**
+ * The metrics of one client: what it has sent and received, how long the
+ * server takes to acknowledge publishes, how much work is queued inside the
+ * client and how long the application's callbacks take. Every client keeps
+ * its metrics from when it is created; they are read with
+ * {@link org.eclipse.paho.client.mqttv3.MqttAsyncClient#getMetrics()} and
+ * can also be published through JMX with {@link #registerMBean()}.
+ * <p>
+ * Packets are counted by their MQTT control packet type, 1 for CONNECT to 14
+ * for DISCONNECT. The counters and histograms are updated as the client
+ * works, without locks; the gauges are read from the client when asked for.
+ * </p>
+ * <p>
+ * To feed the events into a monitoring system as they happen, set a
+ * {@link MqttClientMetricsListener} with
+ * {@link #setListener(MqttClientMetricsListener)}.
+ * </p>
+ */
+public class MqttClientMetrics implements MqttClientMetricsMBean {
+	private static final int TYPES = 16;
+
+	private final String clientId;
+	private final ClientComms comms;
+	private final AtomicLongArray packetsSent = new AtomicLongArray(TYPES);
+	private final AtomicLongArray bytesSent = new AtomicLongArray(TYPES);
+	private final AtomicLongArray packetsReceived = new AtomicLongArray(TYPES);
+	private final AtomicLongArray bytesReceived = new AtomicLongArray(TYPES);
+	private final LatencyHistogram qos1Ack = new LatencyHistogram();
+	private final LatencyHistogram qos2Ack = new LatencyHistogram();
+	private final LatencyHistogram callbacks = new LatencyHistogram();
+	private final AtomicLong connects = new AtomicLong(0);
+	private volatile ObjectName mbeanName = null;
+	private volatile MqttClientMetricsListener listener = NO_LISTENER;
+
+	private static final MqttClientMetricsListener NO_LISTENER = new MqttClientMetricsAdapter();
+
+	/**
+	 * Creates the metrics of a client; called by the client.
+	 * @param clientId the id of the client
+	 * @param comms the client's comms, to read the gauges from
+	 */
+	public MqttClientMetrics(String clientId, ClientComms comms) {
+		this.clientId = clientId;
+		this.comms = comms;
+	}
+
+	/**
+	 * Sets the listener that is told of each event as it is counted.
+	 * @param listener the listener, or null for none
+	 */
+	public void setListener(MqttClientMetricsListener listener) {
+		this.listener = listener == null ? NO_LISTENER : listener;
+	}
+
+	/**
+	 * @return the listener that is told of each event, a
+	 *         {@link MqttClientMetricsAdapter} if none has been set
+	 */
+	public MqttClientMetricsListener getListener() {
+		return listener;
+	}
+
+	/**
+	 * Counts a packet written to the network; called by the client.
+	 * @param type the MQTT control packet type
+	 * @param bytes the size of the packet
+	 */
+	public void packetSent(int type, long bytes) {
+		packetsSent.incrementAndGet(type & 0x0F);
+		bytesSent.addAndGet(type & 0x0F, bytes);
+		listener.packetSent(type, bytes);
+	}
+
+	/**
+	 * Counts a packet read from the network; called by the client.
+	 * @param type the MQTT control packet type
+	 * @param bytes the size of the packet
+	 */
+	public void packetReceived(int type, long bytes) {
+		packetsReceived.incrementAndGet(type & 0x0F);
+		bytesReceived.addAndGet(type & 0x0F, bytes);
+		listener.packetReceived(type, bytes);
+	}
+
+	/**
+	 * Records the time a publish took to be acknowledged; called by the
+	 * client.
+	 * @param qos the QoS of the publish, 1 or 2
+	 * @param nanos the time from sending the publish to its PUBACK or
+	 *            PUBCOMP
+	 */
+	public void ackReceived(int qos, long nanos) {
+		if (qos == 1) {
+			qos1Ack.recordNanos(nanos);
+		} else if (qos == 2) {
+			qos2Ack.recordNanos(nanos);
+		}
+		listener.ackReceived(qos, nanos);
+	}
+
+	/**
+	 * Records the time a call to the application took; called by the client.
+	 * @param nanos the time spent in the callback
+	 */
+	public void callbackCompleted(long nanos) {
+		callbacks.recordNanos(nanos);
+		listener.callbackCompleted(nanos);
+	}
+
+	/**
+	 * Counts a connection made; called by the client.
+	 */
+	public void connected() {
+		if (connects.incrementAndGet() > 1) {
+			listener.reconnected();
+		}
+	}
+
+	/**
+	 * Records the time a put into persistence took; called by the client.
+	 * @param nanos the time the put took
+	 */
+	public void persistencePut(long nanos) {
+		listener.persistencePut(nanos);
+	}
+
+	/**
+	 * Records the time a removal from persistence took; called by the client.
+	 * @param nanos the time the removal took
+	 */
+	public void persistenceRemoved(long nanos) {
+		listener.persistenceRemoved(nanos);
+	}
+
+	/**
+	 * Records a publish made while the disconnected buffer was full; called
+	 * by the client.
+	 * @param bufferSize the size of the buffer
+	 * @param oldestDeleted whether the oldest message was deleted to make
+	 *            room
+	 */
+	public void bufferSpilled(int bufferSize, boolean oldestDeleted) {
+		listener.bufferSpilled(bufferSize, oldestDeleted);
+	}
+
+	public String getClientId() {
+		return clientId;
+	}
+
+	/**
+	 * @param type the MQTT control packet type
+	 * @return the number of packets of the type sent
+	 */
+	public long getPacketsSent(int type) {
+		return packetsSent.get(type & 0x0F);
+	}
+
+	/**
+	 * @param type the MQTT control packet type
+	 * @return the number of bytes sent in packets of the type
+	 */
+	public long getBytesSent(int type) {
+		return bytesSent.get(type & 0x0F);
+	}
+
+	/**
+	 * @param type the MQTT control packet type
+	 * @return the number of packets of the type received
+	 */
+	public long getPacketsReceived(int type) {
+		return packetsReceived.get(type & 0x0F);
+	}
+
+	/**
+	 * @param type the MQTT control packet type
+	 * @return the number of bytes received in packets of the type
+	 */
+	public long getBytesReceived(int type) {
+		return bytesReceived.get(type & 0x0F);
+	}
+
+	public long getPacketsSent() {
+		return sum(packetsSent);
+	}
+
+	public long getPacketsReceived() {
+		return sum(packetsReceived);
+	}
+
+	public long getBytesSent() {
+		return sum(bytesSent);
+	}
+
+	public long getBytesReceived() {
+		return sum(bytesReceived);
+	}
+
+	private static long sum(AtomicLongArray counts) {
+		long total = 0;
+		for (int i = 0; i < TYPES; i++) {
+			total += counts.get(i);
+		}
+		return total;
+	}
+
+	/**
+	 * Returns the times from sending a publish to it being acknowledged,
+	 * by PUBACK for QoS 1 and PUBCOMP for QoS 2.
+	 * @param qos the QoS, 1 or 2
+	 * @return the histogram of the times
+	 */
+	public LatencyHistogram getAckLatency(int qos) {
+		if (qos == 1) {
+			return qos1Ack;
+		} else if (qos == 2) {
+			return qos2Ack;
+		}
+		throw new IllegalArgumentException("no acknowledgement for QoS " + qos);
+	}
+
+	/**
+	 * @return the histogram of the time spent in each call to the
+	 *         application's callbacks and action listeners
+	 */
+	public LatencyHistogram getCallbackTime() {
+		return callbacks;
+	}
+
+	public int getInFlight() {
+		ClientState state = comms.getClientState();
+		return state == null ? 0 : state.getActualInFlight();
+	}
+
+	public int getPendingMessages() {
+		ClientState state = comms.getClientState();
+		return state == null ? 0 : state.getPendingMessageCount();
+	}
+
+	public int getPendingFlows() {
+		ClientState state = comms.getClientState();
+		return state == null ? 0 : state.getPendingFlowCount();
+	}
+
+	public int getCallbackQueueDepth() {
+		return comms.getCallbackQueueDepth();
+	}
+
+	public int getBufferedMessages() {
+		return comms.isBufferingMessages() ? comms.getBufferedMessageCount() : 0;
+	}
+
+	public long getReconnects() {
+		return Math.max(0, connects.get() - 1);
+	}
+
+	public double getQos1AckMeanMicros() {
+		return qos1Ack.getMean(TimeUnit.MICROSECONDS);
+	}
+
+	public long getQos1AckP99Micros() {
+		return qos1Ack.getValueAtPercentile(99, TimeUnit.MICROSECONDS);
+	}
+
+	public double getQos2AckMeanMicros() {
+		return qos2Ack.getMean(TimeUnit.MICROSECONDS);
+	}
+
+	public long getQos2AckP99Micros() {
+		return qos2Ack.getValueAtPercentile(99, TimeUnit.MICROSECONDS);
+	}
+
+	public long getCallbackCount() {
+		return callbacks.getCount();
+	}
+
+	public long getCallbackTimeMillis() {
+		return callbacks.getTotal(TimeUnit.MILLISECONDS);
+	}
+
+	public long getCallbackMaxMicros() {
+		return callbacks.getMax(TimeUnit.MICROSECONDS);
+	}
+
+	/**
+	 * Registers these metrics with the platform MBean server, under the name
+	 * <code>org.eclipse.paho.client.mqttv3:type=ClientMetrics,clientId="&lt;client id&gt;"</code>.
+	 * They are unregistered when the client is closed.
+	 * @throws MqttException if the metrics could not be registered, for
+	 *             instance because another client with the same id has
+	 *             registered its metrics
+	 */
+	public synchronized void registerMBean() throws MqttException {
+		if (mbeanName != null) {
+			return;
+		}
+		try {
+			ObjectName name = new ObjectName("org.eclipse.paho.client.mqttv3:type=ClientMetrics,clientId="
+					+ ObjectName.quote(clientId));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+			mbeanName = name;
+		} catch (JMException e) {
+			throw new MqttException(e);
+		}
+	}
+
+	/**
+	 * Removes these metrics from the platform MBean server, if they were
+	 * registered.
+	 */
+	public synchronized void unregisterMBean() {
+		ObjectName name = mbeanName;
+		if (name == null) {
+			return;
+		}
+		mbeanName = null;
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (JMException e) {
+			// already gone
+		}
+	}
+
+	/**
+	 * @return whether the metrics are registered with the platform MBean
+	 *         server
+	 */
+	public boolean isMBeanRegistered() {
+		return mbeanName != null;
+	}
+}
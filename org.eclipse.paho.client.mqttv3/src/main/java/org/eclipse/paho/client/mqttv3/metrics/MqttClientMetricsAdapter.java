@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - client metrics listener
+ */
+package org.eclipse.paho.client.mqttv3.metrics;
+
+/**
+ * A {@link MqttClientMetricsListener} that ignores every event, to extend
+ * when only some events are of interest. An instance of this class is the
+ * listener of a client until another is set.
+ */
+public class MqttClientMetricsAdapter implements MqttClientMetricsListener {
+
+	public void packetSent(int type, long bytes) {
+	}
+
+	public void packetReceived(int type, long bytes) {
+	}
+
+	public void ackReceived(int qos, long nanos) {
+	}
+
+	public void callbackCompleted(long nanos) {
+	}
+
+	public void reconnected() {
+	}
+
+	public void persistencePut(long nanos) {
+	}
+
+	public void persistenceRemoved(long nanos) {
+	}
+
+	public void bufferSpilled(int bufferSize, boolean oldestDeleted) {
+	}
+}
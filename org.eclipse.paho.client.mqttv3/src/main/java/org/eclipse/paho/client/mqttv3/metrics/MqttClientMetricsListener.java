@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - client metrics listener
+ */
+package org.eclipse.paho.client.mqttv3.metrics;
+
+/**
+ * Receives the events a client counts in its {@link MqttClientMetrics}, as
+ * they happen, so that they can be fed into a monitoring system. Set one
+ * with {@link MqttClientMetrics#setListener(MqttClientMetricsListener)}.
+ * <p>
+ * The methods are called on the client's own threads, in the middle of
+ * sending and receiving, and take only primitives so that calling them costs
+ * no allocation. They must return quickly and must not block or throw. Each
+ * maps onto a counter, a distribution or a timer of a metrics library, for
+ * instance a Micrometer <code>Counter</code> tagged with the packet type for
+ * {@link #packetSent(int, long)} and a <code>Timer</code> for
+ * {@link #ackReceived(int, long)}.
+ * </p>
+ * <p>
+ * Extend {@link MqttClientMetricsAdapter} to implement only some of the
+ * methods.
+ * </p>
+ */
+public interface MqttClientMetricsListener {
+
+	/**
+	 * A packet has been written to the network.
+	 * @param type the MQTT control packet type, 1 for CONNECT to 14 for
+	 *            DISCONNECT
+	 * @param bytes the size of the packet
+	 */
+	void packetSent(int type, long bytes);
+
+	/**
+	 * A packet has been read from the network.
+	 * @param type the MQTT control packet type
+	 * @param bytes the size of the packet
+	 */
+	void packetReceived(int type, long bytes);
+
+	/**
+	 * A publish has been acknowledged, by PUBACK for QoS 1 or PUBCOMP for
+	 * QoS 2.
+	 * @param qos the QoS of the publish
+	 * @param nanos the time since the publish was written to the network
+	 */
+	void ackReceived(int qos, long nanos);
+
+	/**
+	 * A call to the application's callback or action listener has
+	 * returned.
+	 * @param nanos the time spent in the call
+	 */
+	void callbackCompleted(long nanos);
+
+	/**
+	 * The client has connected again, after an earlier connection.
+	 */
+	void reconnected();
+
+	/**
+	 * A message, or a batch of messages, has been put into persistence.
+	 * @param nanos the time the put took
+	 */
+	void persistencePut(long nanos);
+
+	/**
+	 * A message has been removed from persistence.
+	 * @param nanos the time the removal took
+	 */
+	void persistenceRemoved(long nanos);
+
+	/**
+	 * A message was published while disconnected and the buffer for such
+	 * messages was full.
+	 * @param bufferSize the size of the buffer
+	 * @param oldestDeleted true if the oldest buffered message was deleted
+	 *            to make room, false if the new message was refused
+	 */
+	void bufferSpilled(int bufferSize, boolean oldestDeleted);
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - client metrics
+ */
+package org.eclipse.paho.client.mqttv3.metrics;
+
+/**
+ * The attributes of {@link MqttClientMetrics} as they appear through JMX,
+ * once registered with {@link MqttClientMetrics#registerMBean()}.
+ */
+public interface MqttClientMetricsMBean {
+
+	/**
+	 * @return the id of the client
+	 */
+	String getClientId();
+
+	/**
+	 * @return the number of packets sent, of all types
+	 */
+	long getPacketsSent();
+
+	/**
+	 * @return the number of packets received, of all types
+	 */
+	long getPacketsReceived();
+
+	/**
+	 * @return the number of bytes sent
+	 */
+	long getBytesSent();
+
+	/**
+	 * @return the number of bytes received
+	 */
+	long getBytesReceived();
+
+	/**
+	 * @return the number of publishes sent and not yet acknowledged
+	 */
+	int getInFlight();
+
+	/**
+	 * @return the number of publishes waiting to be sent
+	 */
+	int getPendingMessages();
+
+	/**
+	 * @return the number of acknowledgements and other flows waiting to be
+	 *         sent
+	 */
+	int getPendingFlows();
+
+	/**
+	 * @return the number of arrived messages and completed actions waiting
+	 *         for the callback
+	 */
+	int getCallbackQueueDepth();
+
+	/**
+	 * @return the number of messages held while disconnected
+	 */
+	int getBufferedMessages();
+
+	/**
+	 * @return the number of times the client connected again
+	 */
+	long getReconnects();
+
+	/**
+	 * @return the mean time from sending a QoS 1 publish to its PUBACK, in
+	 *         microseconds
+	 */
+	double getQos1AckMeanMicros();
+
+	/**
+	 * @return the 99th percentile time from sending a QoS 1 publish to its
+	 *         PUBACK, in microseconds
+	 */
+	long getQos1AckP99Micros();
+
+	/**
+	 * @return the mean time from sending a QoS 2 publish to its PUBCOMP, in
+	 *         microseconds
+	 */
+	double getQos2AckMeanMicros();
+
+	/**
+	 * @return the 99th percentile time from sending a QoS 2 publish to its
+	 *         PUBCOMP, in microseconds
+	 */
+	long getQos2AckP99Micros();
+
+	/**
+	 * @return the number of calls made to the application's callbacks
+	 */
+	long getCallbackCount();
+
+	/**
+	 * @return the total time spent in the application's callbacks, in
+	 *         milliseconds
+	 */
+	long getCallbackTimeMillis();
+
+	/**
+	 * @return the longest time spent in one call to the application's
+	 *         callbacks, in microseconds
+	 */
+	long getCallbackMaxMicros();
+}
@@ -0,0 +1,5 @@
+/**
+ * This package holds the metrics a client keeps of its traffic, latencies
+ * and queues, which can also be published through JMX.
+ */
+package org.eclipse.paho.client.mqttv3.metrics;
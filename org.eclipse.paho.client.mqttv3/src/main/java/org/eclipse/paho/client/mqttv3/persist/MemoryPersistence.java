@@ -18,7 +18,8 @@ package org.eclipse.paho.client.mqttv3.persist;
 import java.util.Enumeration;
 import java.util.Hashtable;
 
-import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
+import org.eclipse.paho.client.mqttv3.MqttBatchPersistence;
+import org.eclipse.paho.client.mqttv3.MqttConcurrentPersistence;
 import org.eclipse.paho.client.mqttv3.MqttPersistable;
 import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
 
@@ -31,7 +32,7 @@ import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
  * then a non-volatile form of persistence should be used. 
  * 
  */
-public class MemoryPersistence implements MqttClientPersistence {
+public class MemoryPersistence implements MqttBatchPersistence, MqttConcurrentPersistence {
 
 	private Hashtable<String, MqttPersistable> data;
 	
@@ -75,6 +76,18 @@ public class MemoryPersistence implements MqttClientPersistence {
 		data.put(key, persistable);
 	}
 
+	/* (non-Javadoc)
+	 * @see org.eclipse.paho.client.mqttv3.MqttBatchPersistence#putAll(java.lang.String[], org.eclipse.paho.client.mqttv3.MqttPersistable[])
+	 */
+	public void putAll(String[] keys, MqttPersistable[] persistables) throws MqttPersistenceException {
+		checkIsOpen();
+		synchronized (data) {
+			for (int i = 0; i < keys.length; i++) {
+				data.put(keys[i], persistables[i]);
+			}
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see org.eclipse.paho.client.mqttv3.MqttClientPersistence#remove(java.lang.String)
 	 */
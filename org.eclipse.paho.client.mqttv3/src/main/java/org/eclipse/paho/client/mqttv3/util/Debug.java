@@ -15,10 +15,13 @@
  */
 package org.eclipse.paho.client.mqttv3.util;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Enumeration;
 import java.util.Properties;
 
 import org.eclipse.paho.client.mqttv3.internal.ClientComms;
+import org.eclipse.paho.client.mqttv3.logging.FlightRecorder;
 import org.eclipse.paho.client.mqttv3.logging.Logger;
 import org.eclipse.paho.client.mqttv3.logging.LoggerFactory;
 
@@ -83,7 +86,43 @@ public class Debug {
 	protected void dumpMemoryTrace() {
 		log.dumpTrace();
 	}
+
+	/**
+	 * Write the events the {@link FlightRecorder} holds for this client, in
+	 * binary form. The traceformat tool renders them as text.
+	 * @param out the stream to write to, which is not closed
+	 * @return false if the client does not record its trace
+	 * @throws IOException if the events could not be written
+	 */
+	public boolean dumpFlightRecord(OutputStream out) throws IOException {
+		FlightRecorder recorder = FlightRecorder.getRecorder(clientID);
+		if (recorder == null) {
+			return false;
+		}
+		recorder.dump(out);
+		return true;
+	}
 	
+	/**
+	 * Count the entries held in each of the client's internal tables: the
+	 * message ids in use, the queues of packets waiting to be sent, the
+	 * in-flight messages of each QoS, the tokens, the messages in
+	 * persistence and those in the disconnected buffer. Once a client has
+	 * no work outstanding these all return to zero; a count that keeps
+	 * growing across reconnects is a leak.
+	 * @return the counts by table name, empty once the client is closed
+	 */
+	public Properties getTableSizes() {
+		Properties props = new Properties();
+		if (comms != null && comms.getClientState() != null) {
+			props = comms.getClientState().getTableSizes();
+			if (!props.isEmpty() && comms.isBufferingMessages()) {
+				props.put("buffered", Integer.valueOf(comms.getBufferedMessageCount()));
+			}
+		}
+		return props;
+	}
+
 	/**
 	 * Dump information that show the version of the MQTT client being used.
 	 */
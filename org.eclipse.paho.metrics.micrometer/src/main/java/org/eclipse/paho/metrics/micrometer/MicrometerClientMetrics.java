@@ -0,0 +1,229 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - Micrometer metrics adapter
+ */
+package org.eclipse.paho.metrics.micrometer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+import org.eclipse.paho.client.mqttv3.metrics.CompositeMetricsListener;
+import org.eclipse.paho.client.mqttv3.metrics.MqttClientMetrics;
+import org.eclipse.paho.client.mqttv3.metrics.MqttClientMetricsListener;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Publishes the metrics of a client to a Micrometer {@link MeterRegistry}.
+ * The events the client counts go to counters and timers as they happen,
+ * and the client's queues are read by gauges when the registry asks for
+ * them. Every meter is tagged with the client id.
+ * <p>
+ * For example:
+ * </p>
+ * <pre>
+ * new MicrometerClientMetrics(client.getMetrics()).bindTo(registry);
+ * </pre>
+ * <p>
+ * Binding sets this as the listener of the client's metrics, in place of
+ * any listener set before; use a {@link CompositeMetricsListener} to keep
+ * both. Bind it to one registry only.
+ * </p>
+ * <table>
+ * <caption>Meters</caption>
+ * <tr><td><code>mqtt.client.packets.sent</code>, <code>mqtt.client.packets.received</code></td>
+ * <td>counters of packets, tagged with the packet <code>type</code></td></tr>
+ * <tr><td><code>mqtt.client.bytes.sent</code>, <code>mqtt.client.bytes.received</code></td>
+ * <td>counters of the bytes of those packets</td></tr>
+ * <tr><td><code>mqtt.client.ack.latency</code></td>
+ * <td>timer of the time for a publish to be acknowledged, tagged with its <code>qos</code></td></tr>
+ * <tr><td><code>mqtt.client.callback.duration</code></td>
+ * <td>timer of the calls to the application's callbacks</td></tr>
+ * <tr><td><code>mqtt.client.persistence.put</code>, <code>mqtt.client.persistence.remove</code></td>
+ * <td>timers of the persistence</td></tr>
+ * <tr><td><code>mqtt.client.reconnects</code></td>
+ * <td>counter of connections after the first</td></tr>
+ * <tr><td><code>mqtt.client.buffer.spilled</code></td>
+ * <td>counter of publishes made into a full disconnected buffer, tagged
+ * with the <code>action</code>, <code>deleted</code> or <code>refused</code></td></tr>
+ * <tr><td><code>mqtt.client.inflight</code>, <code>mqtt.client.pending.messages</code>,
+ * <code>mqtt.client.pending.flows</code>, <code>mqtt.client.callback.queue</code>,
+ * <code>mqtt.client.buffered</code></td>
+ * <td>gauges of the client's queues</td></tr>
+ * </table>
+ */
+public class MicrometerClientMetrics implements MeterBinder, MqttClientMetricsListener {
+	private static final String[] PACKET_TYPES = { "reserved", "connect", "connack", "publish", "puback", "pubrec",
+			"pubrel", "pubcomp", "subscribe", "suback", "unsubscribe", "unsuback", "pingreq", "pingresp",
+			"disconnect", "auth" };
+
+	private final MqttClientMetrics metrics;
+	private final Tags tags;
+
+	// Created by bindTo, before the client is told of this listener
+	private Counter[] packetsSent;
+	private Counter[] packetsReceived;
+	private Counter[] bytesSent;
+	private Counter[] bytesReceived;
+	private Timer[] ackLatency;
+	private Timer callbackDuration;
+	private Timer persistencePut;
+	private Timer persistenceRemove;
+	private Counter reconnects;
+	private Counter spilledDeleted;
+	private Counter spilledRefused;
+
+	/**
+	 * @param metrics the metrics of the client, from
+	 *            {@link org.eclipse.paho.client.mqttv3.MqttAsyncClient#getMetrics()}
+	 */
+	public MicrometerClientMetrics(MqttClientMetrics metrics) {
+		this(metrics, Tags.empty());
+	}
+
+	/**
+	 * @param metrics the metrics of the client, from
+	 *            {@link org.eclipse.paho.client.mqttv3.MqttAsyncClient#getMetrics()}
+	 * @param tags the tags to add to every meter, besides the client id
+	 */
+	public MicrometerClientMetrics(MqttClientMetrics metrics, Iterable<Tag> tags) {
+		this.metrics = metrics;
+		this.tags = Tags.concat(tags, "client.id", metrics.getClientId());
+	}
+
+	public void bindTo(MeterRegistry registry) {
+		packetsSent = packetCounters(registry, "mqtt.client.packets.sent", "packets", "packets written");
+		packetsReceived = packetCounters(registry, "mqtt.client.packets.received", "packets", "packets read");
+		bytesSent = packetCounters(registry, "mqtt.client.bytes.sent", BaseUnits.BYTES, "bytes of packets written");
+		bytesReceived = packetCounters(registry, "mqtt.client.bytes.received", BaseUnits.BYTES,
+				"bytes of packets read");
+		ackLatency = new Timer[3];
+		for (int qos = 1; qos < ackLatency.length; qos++) {
+			ackLatency[qos] = Timer.builder("mqtt.client.ack.latency")
+					.description("time from writing a publish to its acknowledgement").tags(tags)
+					.tag("qos", Integer.toString(qos)).register(registry);
+		}
+		callbackDuration = Timer.builder("mqtt.client.callback.duration")
+				.description("time spent in the application's callbacks").tags(tags).register(registry);
+		persistencePut = Timer.builder("mqtt.client.persistence.put")
+				.description("time to put messages into persistence").tags(tags).register(registry);
+		persistenceRemove = Timer.builder("mqtt.client.persistence.remove")
+				.description("time to remove a message from persistence").tags(tags).register(registry);
+		reconnects = Counter.builder("mqtt.client.reconnects").description("connections after the first")
+				.tags(tags).register(registry);
+		spilledDeleted = spilled(registry, "deleted");
+		spilledRefused = spilled(registry, "refused");
+
+		gauge(registry, "mqtt.client.inflight", "publishes awaiting acknowledgement",
+				new ToDoubleFunction<MqttClientMetrics>() {
+					public double applyAsDouble(MqttClientMetrics value) {
+						return value.getInFlight();
+					}
+				});
+		gauge(registry, "mqtt.client.pending.messages", "publishes waiting to be sent",
+				new ToDoubleFunction<MqttClientMetrics>() {
+					public double applyAsDouble(MqttClientMetrics value) {
+						return value.getPendingMessages();
+					}
+				});
+		gauge(registry, "mqtt.client.pending.flows", "other packets waiting to be sent",
+				new ToDoubleFunction<MqttClientMetrics>() {
+					public double applyAsDouble(MqttClientMetrics value) {
+						return value.getPendingFlows();
+					}
+				});
+		gauge(registry, "mqtt.client.callback.queue", "messages and completions waiting for a callback",
+				new ToDoubleFunction<MqttClientMetrics>() {
+					public double applyAsDouble(MqttClientMetrics value) {
+						return value.getCallbackQueueDepth();
+					}
+				});
+		gauge(registry, "mqtt.client.buffered", "publishes buffered while disconnected",
+				new ToDoubleFunction<MqttClientMetrics>() {
+					public double applyAsDouble(MqttClientMetrics value) {
+						return value.getBufferedMessages();
+					}
+				});
+
+		// the volatile write publishes the meters to the client's threads
+		metrics.setListener(this);
+	}
+
+	private Counter[] packetCounters(MeterRegistry registry, String name, String baseUnit, String description) {
+		Counter[] counters = new Counter[PACKET_TYPES.length];
+		for (int type = 1; type < counters.length; type++) {
+			counters[type] = Counter.builder(name).description(description).baseUnit(baseUnit).tags(tags)
+					.tag("type", PACKET_TYPES[type]).register(registry);
+		}
+		return counters;
+	}
+
+	private Counter spilled(MeterRegistry registry, String action) {
+		return Counter.builder("mqtt.client.buffer.spilled")
+				.description("publishes made while the disconnected buffer was full").tags(tags)
+				.tag("action", action).register(registry);
+	}
+
+	private void gauge(MeterRegistry registry, String name, String description,
+			ToDoubleFunction<MqttClientMetrics> value) {
+		Gauge.builder(name, metrics, value).description(description).tags(tags).register(registry);
+	}
+
+	public void packetSent(int type, long bytes) {
+		if (type > 0 && type < PACKET_TYPES.length) {
+			packetsSent[type].increment();
+			bytesSent[type].increment(bytes);
+		}
+	}
+
+	public void packetReceived(int type, long bytes) {
+		if (type > 0 && type < PACKET_TYPES.length) {
+			packetsReceived[type].increment();
+			bytesReceived[type].increment(bytes);
+		}
+	}
+
+	public void ackReceived(int qos, long nanos) {
+		if (qos > 0 && qos < ackLatency.length) {
+			ackLatency[qos].record(nanos, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	public void callbackCompleted(long nanos) {
+		callbackDuration.record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	public void reconnected() {
+		reconnects.increment();
+	}
+
+	public void persistencePut(long nanos) {
+		persistencePut.record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	public void persistenceRemoved(long nanos) {
+		persistenceRemove.record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	public void bufferSpilled(int bufferSize, boolean oldestDeleted) {
+		(oldestDeleted ? spilledDeleted : spilledRefused).increment();
+	}
+}
@@ -0,0 +1,51 @@
+package org.eclipse.paho.mqttv5.client.codec;
+
+import java.util.Random;
+
+import org.eclipse.paho.mqttv5.common.MqttException;
+
+/**
+ * Reports the compression ratio and the encode and decode CPU cost of the
+ * built in payload codecs for JSON telemetry payloads of several sizes.
+ * Run it with the test classpath, e.g.
+ * <code>java org.eclipse.paho.mqttv5.client.codec.PayloadCodecBenchmark [iterations]</code>
+ */
+public class PayloadCodecBenchmark {
+
+	private static final int[] SIZES = { 128, 512, 2048, 8192, 65536, 1048576 };
+
+	public static void main(String[] args) throws MqttException {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 64 * 1024 * 1024;
+		MqttPayloadCodec[] codecs = { new Lz4PayloadCodec(), new DeflatePayloadCodec(1),
+				new DeflatePayloadCodec() };
+		String[] names = { "lz4", "deflate-1", "deflate-6" };
+		System.out.println(String.format("%-10s %9s %8s %12s %12s %10s", "codec", "size", "ratio", "encode ns",
+				"decode ns", "MB/s enc"));
+		for (int size : SIZES) {
+			byte[] payload = PayloadCodecTest.telemetry(size, new Random(size));
+			// scale the message count so each measurement covers the same volume
+			int count = Math.max(16, iterations / size);
+			for (int i = 0; i < codecs.length; i++) {
+				MqttPayloadCodec codec = codecs[i];
+				byte[] encoded = null;
+				for (int warm = 0; warm < count; warm++) {
+					encoded = codec.encode(payload, 0, payload.length);
+					codec.decode(encoded, 0, encoded.length);
+				}
+				long start = System.nanoTime();
+				for (int n = 0; n < count; n++) {
+					encoded = codec.encode(payload, 0, payload.length);
+				}
+				long encodeNanos = (System.nanoTime() - start) / count;
+				start = System.nanoTime();
+				for (int n = 0; n < count; n++) {
+					codec.decode(encoded, 0, encoded.length);
+				}
+				long decodeNanos = (System.nanoTime() - start) / count;
+				System.out.println(String.format("%-10s %9d %8.2f %12d %12d %10.1f", names[i], size,
+						(double) size / encoded.length, encodeNanos, decodeNanos,
+						size * 1000.0 / Math.max(1, encodeNanos)));
+			}
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package org.eclipse.paho.mqttv5.client.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.paho.mqttv5.client.IMqttMessageListener;
+import org.eclipse.paho.mqttv5.client.MqttAsyncClient;
+import org.eclipse.paho.mqttv5.client.persist.MemoryPersistence;
+import org.eclipse.paho.mqttv5.common.MqttException;
+import org.eclipse.paho.mqttv5.common.MqttMessage;
+import org.eclipse.paho.mqttv5.common.MqttSubscription;
+import org.eclipse.paho.mqttv5.common.packet.MqttProperties;
+import org.eclipse.paho.mqttv5.common.packet.UserProperty;
+import org.eclipse.paho.test.broker.TestBroker;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PayloadCodecTest {
+
+	private static final int[] SIZES = { 0, 1, 12, 13, 100, 4096, 65536, 300000 };
+
+	/**
+	 * Builds a JSON telemetry style payload of the given length.
+	 */
+	static byte[] telemetry(int length, Random random) {
+		StringBuilder sb = new StringBuilder();
+		while (sb.length() < length) {
+			sb.append("{\"device\":\"sensor-").append(random.nextInt(16)).append("\",\"temperature\":")
+					.append(random.nextInt(400) / 10.0).append(",\"status\":\"ok\"},");
+		}
+		return Arrays.copyOf(sb.toString().getBytes(StandardCharsets.UTF_8), length);
+	}
+
+	private static void roundTrip(MqttPayloadCodec codec, byte[] payload) throws MqttException {
+		byte[] framed = new byte[payload.length + 7];
+		System.arraycopy(payload, 0, framed, 3, payload.length);
+		byte[] encoded = codec.encode(framed, 3, payload.length);
+		byte[] shifted = new byte[encoded.length + 5];
+		System.arraycopy(encoded, 0, shifted, 5, encoded.length);
+		Assert.assertArrayEquals(payload, codec.decode(shifted, 5, encoded.length));
+	}
+
+	private static void testCodec(MqttPayloadCodec codec) throws MqttException {
+		Random random = new Random(1);
+		for (int size : SIZES) {
+			roundTrip(codec, telemetry(size, random));
+			byte[] noise = new byte[size];
+			random.nextBytes(noise);
+			roundTrip(codec, noise);
+			byte[] run = new byte[size];
+			Arrays.fill(run, (byte) 'a');
+			roundTrip(codec, run);
+		}
+		byte[] json = telemetry(65536, random);
+		Assert.assertTrue(codec.encode(json, 0, json.length).length < json.length / 3);
+	}
+
+	@Test
+	public void testDeflateRoundTrip() throws MqttException {
+		testCodec(new DeflatePayloadCodec());
+		testCodec(new DeflatePayloadCodec(1));
+	}
+
+	@Test
+	public void testLz4RoundTrip() throws MqttException {
+		testCodec(new Lz4PayloadCodec());
+	}
+
+	@Test
+	public void testCorruptPayloadIsRejected() {
+		byte[] json = telemetry(4096, new Random(2));
+		MqttPayloadCodec[] codecs = { new DeflatePayloadCodec(), new Lz4PayloadCodec() };
+		for (MqttPayloadCodec codec : codecs) {
+			try {
+				byte[] encoded = codec.encode(json, 0, json.length);
+				codec.decode(encoded, 0, encoded.length / 2);
+				Assert.fail(codec.getName() + " decoded a truncated payload");
+			} catch (MqttException expected) {
+			}
+			try {
+				codec.decode(json, 0, json.length);
+				Assert.fail(codec.getName() + " decoded a payload it did not encode");
+			} catch (MqttException expected) {
+			}
+		}
+	}
+
+	@Test
+	public void testLz4ForgedLengthIsRejectedBeforeDecoding() {
+		byte[] json = telemetry(4096, new Random(3));
+		Lz4PayloadCodec codec = new Lz4PayloadCodec();
+		// a header claiming close to the largest payload, with one block byte
+		byte[] forged = { 0x0f, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0 };
+		byte[] inflated = null;
+		try {
+			inflated = codec.encode(json, 0, json.length);
+		} catch (MqttException ex) {
+			Assert.fail(ex.toString());
+		}
+		// a real block whose header claims more than the block can expand to
+		int claimed = (inflated.length - 4) * 255 + 1;
+		inflated[0] = (byte) (claimed >>> 24);
+		inflated[1] = (byte) (claimed >>> 16);
+		inflated[2] = (byte) (claimed >>> 8);
+		inflated[3] = (byte) claimed;
+		byte[][] payloads = { forged, inflated };
+		for (byte[] payload : payloads) {
+			try {
+				codec.decode(payload, 0, payload.length);
+				Assert.fail("decoded a payload with a forged length");
+			} catch (MqttException expected) {
+				Assert.assertTrue(expected.getCause().getMessage(),
+						expected.getCause().getMessage().startsWith("invalid decoded length"));
+			}
+		}
+	}
+
+	private static MqttAsyncClient subscribe(TestBroker broker, String clientId, MqttPayloadCodec codec,
+			final BlockingQueue<MqttMessage> arrived) throws MqttException {
+		MqttAsyncClient client = new MqttAsyncClient(broker.getServerURI(), clientId, new MemoryPersistence());
+		client.setPayloadCodec(codec);
+		client.connect().waitForCompletion(5000);
+		client.subscribe(new MqttSubscription("codec/format", 0), new IMqttMessageListener() {
+			public void messageArrived(String topic, MqttMessage message) {
+				arrived.add(message);
+			}
+		}).waitForCompletion(5000);
+		return client;
+	}
+
+	@Test(timeout = 10000)
+	public void testEncodedPayloadIsNotMarkedUtf8() throws Exception {
+		TestBroker broker = new TestBroker();
+		BlockingQueue<MqttMessage> decoded = new ArrayBlockingQueue<MqttMessage>(1);
+		BlockingQueue<MqttMessage> encoded = new ArrayBlockingQueue<MqttMessage>(1);
+		MqttAsyncClient decoding = subscribe(broker, "decoding", new DeflatePayloadCodec(), decoded);
+		MqttAsyncClient plain = subscribe(broker, "plain", null, encoded);
+		MqttAsyncClient publisher = new MqttAsyncClient(broker.getServerURI(), "publisher", new MemoryPersistence());
+		try {
+			publisher.setPayloadCodec(new DeflatePayloadCodec());
+			publisher.connect().waitForCompletion(5000);
+			byte[] json = telemetry(4096, new Random(4));
+			MqttMessage message = new MqttMessage(json);
+			MqttProperties properties = new MqttProperties();
+			properties.setPayloadFormat(true);
+			message.setProperties(properties);
+			publisher.publish("codec/format", message).waitForCompletion(5000);
+
+			// a client without the codec sees a binary payload
+			MqttMessage binary = encoded.poll(5, TimeUnit.SECONDS);
+			Assert.assertNotNull(binary);
+			Assert.assertFalse(binary.getProperties().getPayloadFormat());
+			Assert.assertTrue(binary.getPayload().length < json.length);
+			Assert.assertTrue(binary.getProperties().getUserProperties().contains(
+					new UserProperty(MqttPayloadCodec.USER_PROPERTY_NAME, DeflatePayloadCodec.NAME)));
+
+			// the codec restores the payload and its format
+			MqttMessage text = decoded.poll(5, TimeUnit.SECONDS);
+			Assert.assertNotNull(text);
+			Assert.assertArrayEquals(json, text.getPayload());
+			Assert.assertTrue(text.getProperties().getPayloadFormat());
+			Assert.assertTrue(text.getProperties().getUserProperties().isEmpty());
+		} finally {
+			MqttAsyncClient[] clients = { publisher, plain, decoding };
+			for (MqttAsyncClient client : clients) {
+				if (client.isConnected()) {
+					client.disconnect().waitForCompletion(5000);
+				}
+				client.close();
+			}
+			broker.close();
+		}
+	}
+}
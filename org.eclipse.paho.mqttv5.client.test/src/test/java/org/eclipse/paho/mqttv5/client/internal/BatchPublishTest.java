@@ -0,0 +1,227 @@
+package org.eclipse.paho.mqttv5.client.internal;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.paho.mqttv5.client.IMqttToken;
+import org.eclipse.paho.mqttv5.client.MqttActionListener;
+import org.eclipse.paho.mqttv5.client.MqttAsyncClient;
+import org.eclipse.paho.mqttv5.client.MqttClientException;
+import org.eclipse.paho.mqttv5.client.MqttBatchToken;
+import org.eclipse.paho.mqttv5.client.MqttToken;
+import org.eclipse.paho.mqttv5.client.TimerPingSender;
+import org.eclipse.paho.mqttv5.client.persist.MemoryPersistence;
+import org.eclipse.paho.mqttv5.client.persist.MqttDefaultFilePersistence;
+import org.eclipse.paho.mqttv5.common.MqttException;
+import org.eclipse.paho.mqttv5.common.MqttMessage;
+import org.eclipse.paho.mqttv5.common.MqttPersistable;
+import org.eclipse.paho.mqttv5.common.MqttPersistenceException;
+import org.eclipse.paho.mqttv5.common.packet.MqttProperties;
+import org.eclipse.paho.mqttv5.common.packet.MqttPublish;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.sun.management.UnixOperatingSystemMXBean;
+
+public class BatchPublishTest {
+
+	/**
+	 * Memory persistence counting batch puts, optionally failing them.
+	 */
+	private static class CountingPersistence extends MemoryPersistence {
+		int putAllCalls = 0;
+		boolean fail = false;
+
+		@Override
+		public void putAll(String[] keys, MqttPersistable[] persistables) throws MqttPersistenceException {
+			putAllCalls++;
+			if (fail) {
+				throw new MqttPersistenceException();
+			}
+			super.putAll(keys, persistables);
+		}
+	}
+
+	private static ClientState createState(CountingPersistence persistence) throws MqttException {
+		MqttAsyncClient client = new MqttAsyncClient("tcp://localhost:1883", "batch", persistence);
+		persistence.open("batch");
+		ClientComms comms = new ClientComms(client, persistence, new TimerPingSender(null), null,
+				new MqttSessionState(), new MqttConnectionState("batch"));
+		return (ClientState) comms.getClientState();
+	}
+
+	private static MqttPublish publish(String topic, int qos) {
+		MqttMessage message = new MqttMessage(topic.getBytes(StandardCharsets.UTF_8));
+		message.setQos(qos);
+		return new MqttPublish(topic, message, new MqttProperties());
+	}
+
+	private static MqttToken[] tokens(int count) {
+		MqttToken[] tokens = new MqttToken[count];
+		for (int i = 0; i < count; i++) {
+			tokens[i] = new MqttToken("batch");
+		}
+		return tokens;
+	}
+
+	private static List<String> keys(MemoryPersistence persistence) throws MqttPersistenceException {
+		List<String> keys = Collections.list(persistence.keys());
+		Collections.sort(keys);
+		return keys;
+	}
+
+	private static int length(MqttPersistable persistable) throws MqttPersistenceException {
+		return persistable.getHeaderLength() + persistable.getPayloadLength();
+	}
+
+	@Test
+	public void testBatchIsPersistedInOneCall() throws Exception {
+		CountingPersistence persistence = new CountingPersistence();
+		ClientState state = createState(persistence);
+		MqttPublish[] messages = { publish("a", 1), publish("b", 0), publish("c", 2) };
+		MqttToken[] tokens = tokens(messages.length);
+
+		state.sendBatch(messages, tokens);
+
+		Assert.assertEquals(1, persistence.putAllCalls);
+		List<String> expected = new ArrayList<String>();
+		expected.add("s-" + messages[0].getMessageId());
+		expected.add("s-" + messages[2].getMessageId());
+		Collections.sort(expected);
+		Assert.assertEquals(expected, keys(persistence));
+		for (int i = 0; i < messages.length; i++) {
+			Assert.assertNotEquals(0, messages[i].getMessageId());
+			Assert.assertEquals(messages[i].getMessageId(), tokens[i].getMessageId());
+		}
+	}
+
+	@Test
+	public void testFailedBatchQueuesNothing() throws Exception {
+		CountingPersistence persistence = new CountingPersistence();
+		ClientState state = createState(persistence);
+		persistence.fail = true;
+		MqttPublish[] messages = { publish("a", 1), publish("b", 2) };
+		try {
+			state.sendBatch(messages, tokens(messages.length));
+			Assert.fail("expected MqttPersistenceException");
+		} catch (MqttPersistenceException expected) {
+		}
+		Assert.assertTrue(keys(persistence).isEmpty());
+		Assert.assertEquals(0, messages[0].getMessageId());
+		Assert.assertEquals(0, messages[1].getMessageId());
+
+		persistence.fail = false;
+		state.sendBatch(messages, tokens(messages.length));
+		Assert.assertEquals(2, keys(persistence).size());
+	}
+
+	@Test
+	public void testBatchTokenCompletesAfterEveryMessage() throws Exception {
+		final List<Throwable> failures = new ArrayList<Throwable>();
+		final int[] successes = { 0 };
+		MqttBatchToken batchToken = new MqttBatchToken("batch");
+		batchToken.setActionCallback(new MqttActionListener() {
+			public void onSuccess(IMqttToken asyncActionToken) {
+				successes[0]++;
+			}
+
+			public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+				failures.add(exception);
+			}
+		});
+		BatchCompletionListener listener = new BatchCompletionListener(batchToken, 3);
+		MqttException first = new MqttException(MqttClientException.REASON_CODE_CLIENT_TIMEOUT);
+
+		listener.onSuccess(null);
+		listener.onFailure(null, first);
+		Assert.assertNull(batchToken.getException());
+		Assert.assertTrue(failures.isEmpty());
+		listener.onFailure(null, new MqttException(MqttClientException.REASON_CODE_CLIENT_TIMEOUT));
+
+		Assert.assertSame(first, batchToken.getException());
+		Assert.assertEquals(0, successes[0]);
+		Assert.assertEquals(1, failures.size());
+		Assert.assertSame(first, failures.get(0));
+
+		MqttBatchToken succeeded = new MqttBatchToken("batch");
+		succeeded.setActionCallback(batchToken.getActionCallback());
+		listener = new BatchCompletionListener(succeeded, 2);
+		listener.onSuccess(null);
+		Assert.assertFalse(succeeded.isComplete());
+		listener.onSuccess(null);
+		Assert.assertTrue(succeeded.isComplete());
+		Assert.assertEquals(1, successes[0]);
+	}
+
+	@Test
+	public void testFilePersistencePutAllRollsBack() throws Exception {
+		File dir = new File(System.getProperty("java.io.tmpdir"), "paho-batch-" + System.nanoTime());
+		MqttDefaultFilePersistence persistence = new MqttDefaultFilePersistence(dir.getAbsolutePath());
+		persistence.open("batch");
+		try {
+			MqttPublish existing = publish("existing/entry", 1);
+			persistence.put("s-1", existing);
+			MqttPublish broken = new MqttPublish("broken", new MqttMessage(new byte[1]), new MqttProperties()) {
+				@Override
+				public byte[] getPayloadBytes() throws MqttPersistenceException {
+					throw new MqttPersistenceException();
+				}
+			};
+			try {
+				persistence.putAll(new String[] { "s-1", "s-2" }, new MqttPersistable[] { publish("new", 1), broken });
+				Assert.fail("expected MqttPersistenceException");
+			} catch (MqttPersistenceException expected) {
+			}
+			Assert.assertFalse(persistence.containsKey("s-2"));
+			Assert.assertEquals(length(existing), length(persistence.get("s-1")));
+
+			persistence.putAll(new String[] { "s-1", "s-2" }, new MqttPersistable[] { publish("new", 1), publish("two", 2) });
+			Assert.assertTrue(persistence.containsKey("s-1"));
+			Assert.assertTrue(persistence.containsKey("s-2"));
+			Assert.assertEquals(length(publish("new", 1)), length(persistence.get("s-1")));
+		} finally {
+			persistence.clear();
+			persistence.close();
+		}
+	}
+
+	@Test(timeout = 60000)
+	public void testFilePutAllKeepsFewFilesOpen() throws Exception {
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		Assume.assumeTrue(os instanceof UnixOperatingSystemMXBean);
+		final UnixOperatingSystemMXBean unix = (UnixOperatingSystemMXBean) os;
+		File dir = new File(System.getProperty("java.io.tmpdir"), "paho-batch-" + System.nanoTime());
+		MqttDefaultFilePersistence persistence = new MqttDefaultFilePersistence(dir.getAbsolutePath());
+		persistence.open("batch");
+		try {
+			// more entries than the common default limit of 1024 open files
+			int entries = 4096;
+			final long[] mostOpen = { 0 };
+			String[] keys = new String[entries];
+			MqttPersistable[] messages = new MqttPersistable[entries];
+			for (int i = 0; i < entries; i++) {
+				keys[i] = "s-" + (i + 1);
+				messages[i] = new MqttPublish("batch/" + i, new MqttMessage(new byte[] { 1 }), new MqttProperties()) {
+					@Override
+					public byte[] getHeaderBytes() throws MqttPersistenceException {
+						mostOpen[0] = Math.max(mostOpen[0], unix.getOpenFileDescriptorCount());
+						return super.getHeaderBytes();
+					}
+				};
+			}
+			long before = unix.getOpenFileDescriptorCount();
+			persistence.putAll(keys, messages);
+			Assert.assertTrue("open files grew from " + before + " to " + mostOpen[0], mostOpen[0] < before + 256);
+			Assert.assertEquals(entries, Collections.list(persistence.keys()).size());
+		} finally {
+			persistence.clear();
+			persistence.close();
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package org.eclipse.paho.mqttv5.client.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * An in-process stand-in server that echoes every byte it receives, on a
+ * loopback TCP port or on a Unix domain socket file.
+ */
+public class ChannelEchoServer extends Thread {
+
+	private final ServerSocketChannel serverChannel;
+	private final File socketFile;
+
+	private ChannelEchoServer(ServerSocketChannel serverChannel, File socketFile) {
+		this.serverChannel = serverChannel;
+		this.socketFile = socketFile;
+		setDaemon(true);
+		start();
+	}
+
+	/**
+	 * @return a server listening on an ephemeral loopback TCP port
+	 */
+	public static ChannelEchoServer tcp() throws IOException {
+		ServerSocketChannel channel = ServerSocketChannel.open();
+		channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		return new ChannelEchoServer(channel, null);
+	}
+
+	/**
+	 * @return a server listening on a new socket file in the temporary directory
+	 */
+	public static ChannelEchoServer unix() throws Exception {
+		File file = File.createTempFile("paho", ".sock");
+		file.delete();
+		ProtocolFamily unix = StandardProtocolFamily.valueOf("UNIX");
+		ServerSocketChannel channel = (ServerSocketChannel) ServerSocketChannel.class
+				.getMethod("open", ProtocolFamily.class).invoke(null, unix);
+		channel.bind(UnixDomainSocketNetworkModule.createAddress(file.getPath()));
+		return new ChannelEchoServer(channel, file);
+	}
+
+	public String getServerURI() throws IOException {
+		if (socketFile != null) {
+			return "unix://" + socketFile.getPath();
+		}
+		return "tcp://127.0.0.1:" + ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+	}
+
+	public void run() {
+		try {
+			while (true) {
+				final SocketChannel channel = serverChannel.accept();
+				Thread echo = new Thread() {
+					public void run() {
+						ByteBuffer buffer = ByteBuffer.allocateDirect(65536);
+						try {
+							while (channel.read(buffer) >= 0) {
+								buffer.flip();
+								while (buffer.hasRemaining()) {
+									channel.write(buffer);
+								}
+								buffer.clear();
+							}
+						} catch (IOException e) {
+							// the client has gone
+						} finally {
+							try {
+								channel.close();
+							} catch (IOException e) {
+								// ignore
+							}
+						}
+					}
+				};
+				echo.setDaemon(true);
+				echo.start();
+			}
+		} catch (IOException e) {
+			// closed
+		}
+	}
+
+	public void close() throws IOException {
+		serverChannel.close();
+		if (socketFile != null) {
+			socketFile.delete();
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package org.eclipse.paho.mqttv5.client.internal;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.eclipse.paho.mqttv5.client.MqttConnectionOptions;
+
+/**
+ * Compares the Unix domain socket transport with loopback TCP, through the
+ * network modules the client uses, against an in-process echo server.
+ * Latency is the round trip of a small packet; throughput is the rate at
+ * which a stream of 64KB writes is echoed back. Needs Java 16 or later. Run
+ * it with the test classpath, e.g.
+ * <code>java org.eclipse.paho.mqttv5.client.internal.UnixDomainSocketBenchmark [round trips] [MB]</code>
+ */
+public class UnixDomainSocketBenchmark {
+
+	private static final int PACKET_SIZE = 64;
+	private static final int CHUNK_SIZE = 65536;
+
+	public static void main(String[] args) throws Exception {
+		int roundTrips = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+		int megabytes = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+		if (!UnixDomainSocketNetworkModule.isSupported()) {
+			System.out.println("Unix domain sockets need Java 16 or later");
+			return;
+		}
+		System.out.println(String.format("%-6s %12s %12s %12s %14s", "", "median us", "p99 us", "mean us",
+				"echo MB/s"));
+		for (int run = 0; run < 2; run++) {
+			// the first run warms up the JIT
+			boolean report = run == 1;
+			measure("tcp", ChannelEchoServer.tcp(), roundTrips, megabytes, report);
+			measure("unix", ChannelEchoServer.unix(), roundTrips, megabytes, report);
+		}
+	}
+
+	private static void measure(String name, ChannelEchoServer server, int roundTrips, int megabytes, boolean report)
+			throws Exception {
+		MqttConnectionOptions options = new MqttConnectionOptions();
+		options.getSocketOptions().setTcpNoDelay(true);
+		NetworkModule module = NetworkModuleService.createInstance(server.getServerURI(), options, "benchmark");
+		module.start();
+		try {
+			long[] latencies = latency(module, roundTrips);
+			double throughput = throughput(module, megabytes);
+			if (report) {
+				long total = 0;
+				for (long latency : latencies) {
+					total += latency;
+				}
+				System.out.println(String.format("%-6s %12.1f %12.1f %12.1f %14.0f", name,
+						latencies[latencies.length / 2] / 1000.0,
+						latencies[(int) (latencies.length * 0.99)] / 1000.0,
+						total / 1000.0 / latencies.length, throughput));
+			}
+		} finally {
+			module.stop();
+			server.close();
+		}
+	}
+
+	private static long[] latency(NetworkModule module, int roundTrips) throws IOException {
+		OutputStream out = module.getOutputStream();
+		DataInputStream in = new DataInputStream(module.getInputStream());
+		byte[] packet = new byte[PACKET_SIZE];
+		long[] latencies = new long[roundTrips];
+		for (int i = 0; i < roundTrips; i++) {
+			long start = System.nanoTime();
+			out.write(packet);
+			out.flush();
+			in.readFully(packet);
+			latencies[i] = System.nanoTime() - start;
+		}
+		Arrays.sort(latencies);
+		return latencies;
+	}
+
+	private static double throughput(NetworkModule module, int megabytes) throws Exception {
+		final OutputStream out = module.getOutputStream();
+		final long volume = (long) megabytes * 1024 * 1024;
+		final byte[] chunk = new byte[CHUNK_SIZE];
+		final IOException[] failure = new IOException[1];
+		Thread writer = new Thread() {
+			public void run() {
+				try {
+					for (long sent = 0; sent < volume; sent += chunk.length) {
+						out.write(chunk);
+					}
+					out.flush();
+				} catch (IOException e) {
+					failure[0] = e;
+				}
+			}
+		};
+		long start = System.nanoTime();
+		writer.start();
+		DataInputStream in = new DataInputStream(module.getInputStream());
+		byte[] buffer = new byte[CHUNK_SIZE];
+		for (long received = 0; received < volume; received += buffer.length) {
+			in.readFully(buffer);
+		}
+		long elapsed = System.nanoTime() - start;
+		writer.join();
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+		return volume / 1048576.0 / (elapsed / 1e9);
+	}
+}
@@ -0,0 +1,112 @@
+package org.eclipse.paho.mqttv5.client.internal;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+
+import org.eclipse.paho.mqttv5.client.MqttClientException;
+import org.eclipse.paho.mqttv5.client.MqttConnectionOptions;
+import org.eclipse.paho.mqttv5.common.MqttException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class UnixDomainSocketTest {
+
+	private ChannelEchoServer server;
+
+	@Before
+	public void setUp() throws Exception {
+		Assume.assumeTrue("Unix domain sockets need Java 16", UnixDomainSocketNetworkModule.isSupported());
+		server = ChannelEchoServer.unix();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (server != null) {
+			server.close();
+		}
+	}
+
+	@Test
+	public void testValidateURI() {
+		NetworkModuleService.validateURI("unix:///var/run/mosquitto.sock");
+		String[] invalid = { "unix://localhost/var/run/mosquitto.sock", "unix:///", "unix://" };
+		for (String uri : invalid) {
+			try {
+				NetworkModuleService.validateURI(uri);
+				Assert.fail("accepted " + uri);
+			} catch (IllegalArgumentException expected) {
+			}
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testEcho() throws Exception {
+		NetworkModule module = NetworkModuleService.createInstance(server.getServerURI(), new MqttConnectionOptions(),
+				"UnixDomainSocketTest");
+		Assert.assertTrue(module instanceof UnixDomainSocketNetworkModule);
+		Assert.assertEquals(server.getServerURI(), module.getServerURI());
+		module.start();
+		byte[] message = "hello over a Unix domain socket".getBytes(StandardCharsets.UTF_8);
+		module.getOutputStream().write(message);
+		module.getOutputStream().flush();
+		byte[] echoed = new byte[message.length];
+		new DataInputStream(module.getInputStream()).readFully(echoed);
+		Assert.assertArrayEquals(message, echoed);
+		module.stop();
+	}
+
+	@Test(timeout = 10000)
+	public void testReadTimeoutAndStop() throws Exception {
+		MqttConnectionOptions options = new MqttConnectionOptions();
+		options.getSocketOptions().setReadTimeout(200);
+		final NetworkModule module = NetworkModuleService.createInstance(server.getServerURI(), options,
+				"UnixDomainSocketTest");
+		module.start();
+		InputStream in = module.getInputStream();
+		try {
+			in.read();
+			Assert.fail("expected the read to time out");
+		} catch (SocketTimeoutException expected) {
+		}
+
+		Thread stopper = new Thread() {
+			public void run() {
+				try {
+					Thread.sleep(300);
+					module.stop();
+				} catch (Exception e) {
+					// the read then fails on the test timeout
+				}
+			}
+		};
+		stopper.start();
+		while (true) {
+			try {
+				in.read();
+				Assert.fail("expected the read to fail once the module is stopped");
+			} catch (SocketTimeoutException e) {
+				// not stopped yet
+			} catch (IOException expected) {
+				break;
+			}
+		}
+	}
+
+	@Test
+	public void testMissingSocketFile() throws Exception {
+		NetworkModule module = NetworkModuleService.createInstance("unix:///nonexistent/paho.sock",
+				new MqttConnectionOptions(), "UnixDomainSocketTest");
+		try {
+			module.start();
+			Assert.fail("expected the connect to fail");
+		} catch (MqttException e) {
+			Assert.assertEquals(MqttClientException.REASON_CODE_SERVER_CONNECT_ERROR, e.getReasonCode());
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package org.eclipse.paho.mqttv5.client.test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.paho.mqttv5.client.IMqttToken;
+import org.eclipse.paho.mqttv5.client.MqttAsyncClient;
+import org.eclipse.paho.mqttv5.client.MqttCallback;
+import org.eclipse.paho.mqttv5.client.MqttConnectionOptions;
+import org.eclipse.paho.mqttv5.client.MqttDisconnectResponse;
+import org.eclipse.paho.mqttv5.client.persist.MemoryPersistence;
+import org.eclipse.paho.mqttv5.common.MqttException;
+import org.eclipse.paho.mqttv5.common.MqttMessage;
+import org.eclipse.paho.mqttv5.common.MqttPersistable;
+import org.eclipse.paho.mqttv5.common.MqttPersistenceException;
+import org.eclipse.paho.mqttv5.common.packet.MqttProperties;
+import org.eclipse.paho.test.broker.TestBroker;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncPersistenceTest {
+
+	private static final String TOPIC = "async/persistence";
+	private static final int MESSAGES = 20;
+	private static final long PUT_LATENCY = 50;
+
+	private TestBroker broker;
+	private final List<MqttAsyncClient> clients = new ArrayList<MqttAsyncClient>();
+
+	@Before
+	public void setUp() throws Exception {
+		broker = new TestBroker();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		for (MqttAsyncClient client : clients) {
+			if (client.isConnected()) {
+				client.disconnect().waitForCompletion(5000);
+			}
+			client.close();
+		}
+		broker.close();
+	}
+
+	/**
+	 * A persistence that takes a while over every write, and can be made to
+	 * fail them.
+	 */
+	private static class SlowPersistence extends MemoryPersistence {
+		final AtomicInteger puts = new AtomicInteger();
+		volatile boolean failing;
+
+		private void write() throws MqttPersistenceException {
+			try {
+				Thread.sleep(PUT_LATENCY);
+			} catch (InterruptedException e) {
+				throw new MqttPersistenceException(e);
+			}
+			if (failing) {
+				throw new MqttPersistenceException();
+			}
+			puts.incrementAndGet();
+		}
+
+		@Override
+		public void put(String key, MqttPersistable persistable) throws MqttPersistenceException {
+			write();
+			super.put(key, persistable);
+		}
+
+		@Override
+		public void putAll(String[] keys, MqttPersistable[] persistables) throws MqttPersistenceException {
+			write();
+			super.putAll(keys, persistables);
+		}
+	}
+
+	/**
+	 * A callback that keeps the payloads of the messages that arrive.
+	 */
+	private static class Receiver implements MqttCallback {
+		final List<String> arrived = Collections.synchronizedList(new ArrayList<String>());
+		final CountDownLatch latch;
+
+		Receiver(int count) {
+			latch = new CountDownLatch(count);
+		}
+
+		public void messageArrived(String topic, MqttMessage message) throws Exception {
+			arrived.add(new String(message.getPayload(), StandardCharsets.UTF_8));
+			latch.countDown();
+		}
+
+		public void disconnected(MqttDisconnectResponse disconnectResponse) {
+		}
+
+		public void mqttErrorOccurred(MqttException exception) {
+		}
+
+		public void deliveryComplete(IMqttToken token) {
+		}
+
+		public void connectComplete(boolean reconnect, String serverURI) {
+		}
+
+		public void authPacketArrived(int reasonCode, MqttProperties properties) {
+		}
+	}
+
+	private MqttAsyncClient connect(SlowPersistence persistence, Receiver receiver) throws MqttException {
+		MqttAsyncClient client = new MqttAsyncClient(broker.getServerURI(), "async", persistence);
+		clients.add(client);
+		client.setCallback(receiver);
+		MqttConnectionOptions options = new MqttConnectionOptions();
+		options.setAsyncPersistence(true);
+		client.connect(options).waitForCompletion(5000);
+		client.subscribe(TOPIC, 0).waitForCompletion(5000);
+		return client;
+	}
+
+	private static byte[] payload(int i) {
+		return Integer.toString(i).getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Test(timeout = 10000)
+	public void testPublishDoesNotWaitForPersistence() throws Exception {
+		SlowPersistence persistence = new SlowPersistence();
+		Receiver receiver = new Receiver(MESSAGES);
+		MqttAsyncClient client = connect(persistence, receiver);
+
+		List<IMqttToken> tokens = new ArrayList<IMqttToken>();
+		long start = System.nanoTime();
+		for (int i = 0; i < MESSAGES; i++) {
+			tokens.add(client.publish(TOPIC, payload(i), i % 3, false));
+		}
+		long publishing = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		Assert.assertTrue("publishing took " + publishing + "ms", publishing < PUT_LATENCY * MESSAGES / 2);
+		for (IMqttToken token : tokens) {
+			token.waitForCompletion(5000);
+		}
+		Assert.assertTrue(receiver.latch.await(5, TimeUnit.SECONDS));
+
+		// the publishes kept their order, whatever their QoS
+		for (int i = 0; i < MESSAGES; i++) {
+			Assert.assertEquals(Integer.toString(i), receiver.arrived.get(i));
+		}
+		// publishes queued while a batch was written were written together
+		Assert.assertTrue(persistence.puts.get() < MESSAGES * 2 / 3);
+		// the callback thread unpersists the publishes once their tokens are
+		// complete, and the disconnect waits for it to
+		client.disconnect().waitForCompletion(5000);
+		Assert.assertFalse(persistence.keys().hasMoreElements());
+	}
+
+	@Test(timeout = 10000)
+	public void testFailedPersistenceCompletesToken() throws Exception {
+		SlowPersistence persistence = new SlowPersistence();
+		Receiver receiver = new Receiver(2);
+		MqttAsyncClient client = connect(persistence, receiver);
+
+		persistence.failing = true;
+		IMqttToken failed = client.publish(TOPIC, payload(1), 1, false);
+		IMqttToken sent = client.publish(TOPIC, payload(0), 0, false);
+		try {
+			failed.waitForCompletion(5000);
+			Assert.fail("expected MqttException");
+		} catch (MqttException expected) {
+			Assert.assertTrue(expected instanceof MqttPersistenceException);
+		}
+		sent.waitForCompletion(5000);
+
+		// the client goes on once the persistence recovers
+		persistence.failing = false;
+		client.publish(TOPIC, payload(2), 1, false).waitForCompletion(5000);
+		Assert.assertTrue(receiver.latch.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals("0", receiver.arrived.get(0));
+		Assert.assertEquals("2", receiver.arrived.get(1));
+	}
+}
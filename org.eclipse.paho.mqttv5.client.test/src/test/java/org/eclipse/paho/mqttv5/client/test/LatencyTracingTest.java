@@ -0,0 +1,160 @@
+package org.eclipse.paho.mqttv5.client.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.paho.mqttv5.client.IMqttToken;
+import org.eclipse.paho.mqttv5.client.MqttAsyncClient;
+import org.eclipse.paho.mqttv5.client.MqttCallback;
+import org.eclipse.paho.mqttv5.client.MqttDisconnectResponse;
+import org.eclipse.paho.mqttv5.client.metrics.LatencyHistogram;
+import org.eclipse.paho.mqttv5.client.metrics.LatencyTracer;
+import org.eclipse.paho.mqttv5.client.persist.MemoryPersistence;
+import org.eclipse.paho.mqttv5.common.MqttException;
+import org.eclipse.paho.mqttv5.common.MqttMessage;
+import org.eclipse.paho.mqttv5.common.packet.MqttProperties;
+import org.eclipse.paho.mqttv5.common.packet.UserProperty;
+import org.eclipse.paho.test.broker.TestBroker;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LatencyTracingTest {
+
+	private static final int MESSAGES = 20;
+
+	private TestBroker broker;
+	private final List<MqttAsyncClient> clients = new ArrayList<MqttAsyncClient>();
+
+	@Before
+	public void setUp() throws Exception {
+		broker = new TestBroker();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		for (MqttAsyncClient client : clients) {
+			if (client.isConnected()) {
+				client.disconnect().waitForCompletion(5000);
+			}
+			client.close();
+		}
+		broker.close();
+	}
+
+	/**
+	 * A callback that keeps the messages that arrive.
+	 */
+	private static class Receiver implements MqttCallback {
+		final List<MqttMessage> messages = new ArrayList<MqttMessage>();
+		final CountDownLatch arrived;
+
+		Receiver(int count) {
+			arrived = new CountDownLatch(count);
+		}
+
+		public void messageArrived(String topic, MqttMessage message) throws Exception {
+			synchronized (messages) {
+				messages.add(message);
+			}
+			arrived.countDown();
+		}
+
+		public void disconnected(MqttDisconnectResponse disconnectResponse) {
+		}
+
+		public void mqttErrorOccurred(MqttException exception) {
+		}
+
+		public void deliveryComplete(IMqttToken token) {
+		}
+
+		public void connectComplete(boolean reconnect, String serverURI) {
+		}
+
+		public void authPacketArrived(int reasonCode, MqttProperties properties) {
+		}
+	}
+
+	private MqttAsyncClient connect(String clientId, MqttCallback callback, String topic) throws MqttException {
+		MqttAsyncClient client = new MqttAsyncClient(broker.getServerURI(), clientId, new MemoryPersistence());
+		clients.add(client);
+		client.setCallback(callback);
+		client.setLatencyTracing(true);
+		client.connect().waitForCompletion(5000);
+		if (topic != null) {
+			client.subscribe(topic, 0).waitForCompletion(5000);
+		}
+		return client;
+	}
+
+	@Test(timeout = 10000)
+	public void testLatencyRecordedThroughBroker() throws Exception {
+		Receiver receiver = new Receiver(MESSAGES);
+		MqttAsyncClient subscriber = connect("subscriber", receiver, "latency/test");
+		MqttAsyncClient publisher = connect("publisher", new Receiver(0), null);
+		MqttAsyncClient untraced = new MqttAsyncClient(broker.getServerURI(), "untraced", new MemoryPersistence());
+		clients.add(untraced);
+		Assert.assertNull(untraced.getEndToEndLatency());
+
+		MqttMessage sent = new MqttMessage(new byte[10]);
+		sent.setQos(1);
+		sent.setProperties(new MqttProperties());
+		long before = LatencyTracer.currentTimeMicros();
+		for (int i = 0; i < MESSAGES; i++) {
+			publisher.publish("latency/test", sent).waitForCompletion(5000);
+		}
+		Assert.assertTrue(receiver.arrived.await(5, TimeUnit.SECONDS));
+		// the application's message is not changed by the stamp
+		Assert.assertTrue(sent.getProperties().getUserProperties().isEmpty());
+
+		LatencyHistogram latency = subscriber.getEndToEndLatency();
+		Assert.assertEquals(MESSAGES, latency.getCount());
+		long elapsed = LatencyTracer.currentTimeMicros() - before;
+		Assert.assertTrue(latency.getMax(TimeUnit.MICROSECONDS) <= elapsed);
+		for (MqttMessage message : receiver.messages) {
+			long published = LatencyTracer.getPublishTime(message.getProperties());
+			Assert.assertTrue(published >= before);
+		}
+		// the publisher received nothing, so measured nothing
+		Assert.assertEquals(0, publisher.getEndToEndLatency().getCount());
+	}
+
+	/**
+	 * A message passed on by a relay keeps the time of the first publish, so
+	 * the last subscriber measures the whole pipeline.
+	 */
+	@Test(timeout = 10000)
+	public void testRelayKeepsFirstStamp() throws Exception {
+		Receiver last = new Receiver(1);
+		MqttAsyncClient subscriber = connect("last", last, "latency/out");
+		final MqttAsyncClient relay = new MqttAsyncClient(broker.getServerURI(), "relay", new MemoryPersistence());
+		clients.add(relay);
+		relay.setCallback(new Receiver(1) {
+			public void messageArrived(String topic, MqttMessage message) throws Exception {
+				relay.publish("latency/out", message);
+			}
+		});
+		relay.setLatencyTracing(true);
+		relay.connect().waitForCompletion(5000);
+		relay.subscribe("latency/in", 0).waitForCompletion(5000);
+		MqttAsyncClient publisher = connect("first", new Receiver(0), null);
+
+		MqttMessage message = new MqttMessage(new byte[10]);
+		MqttProperties properties = new MqttProperties();
+		List<UserProperty> userProperties = new ArrayList<UserProperty>();
+		userProperties.add(new UserProperty(LatencyTracer.USER_PROPERTY_NAME, LatencyTracer.format(1000)));
+		properties.setUserProperties(userProperties);
+		message.setProperties(properties);
+		publisher.publish("latency/in", message).waitForCompletion(5000);
+		Assert.assertTrue(last.arrived.await(5, TimeUnit.SECONDS));
+
+		Assert.assertEquals(1000, LatencyTracer.getPublishTime(last.messages.get(0).getProperties()));
+		Assert.assertEquals(1, relay.getEndToEndLatency().getCount());
+		Assert.assertEquals(1, subscriber.getEndToEndLatency().getCount());
+		Assert.assertTrue(subscriber.getEndToEndLatency().getMax(TimeUnit.SECONDS) > 0);
+	}
+}
@@ -0,0 +1,243 @@
+package org.eclipse.paho.mqttv5.client.test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.paho.mqttv5.client.IMqttToken;
+import org.eclipse.paho.mqttv5.client.MqttAsyncClient;
+import org.eclipse.paho.mqttv5.client.MqttCallback;
+import org.eclipse.paho.mqttv5.client.MqttClientPersistence;
+import org.eclipse.paho.mqttv5.client.MqttConnectionOptions;
+import org.eclipse.paho.mqttv5.client.MqttDisconnectResponse;
+import org.eclipse.paho.mqttv5.client.persist.MemoryPersistence;
+import org.eclipse.paho.mqttv5.client.persist.MqttDefaultFilePersistence;
+import org.eclipse.paho.mqttv5.common.MqttException;
+import org.eclipse.paho.mqttv5.common.MqttMessage;
+import org.eclipse.paho.mqttv5.common.MqttPersistable;
+import org.eclipse.paho.mqttv5.common.MqttPersistenceException;
+import org.eclipse.paho.mqttv5.common.packet.MqttProperties;
+import org.eclipse.paho.mqttv5.common.packet.MqttPubRel;
+import org.eclipse.paho.mqttv5.common.packet.MqttPublish;
+import org.eclipse.paho.mqttv5.common.packet.MqttReturnCode;
+import org.eclipse.paho.test.broker.TestBroker;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Restores a large persisted session, which is read on several threads, and
+ * checks that the messages in it are resent in the order they were first
+ * sent, across the wrap of the message ids. A persistence that is not marked
+ * as safe to read concurrently is only read by the thread creating the client.
+ */
+public class SessionRestoreTest {
+
+	private static final String TOPIC = "restore/test";
+	private static final String CLIENT_ID = "restore";
+	private static final int MESSAGES = 1000;
+	private static final int FIRST_ID = 65000;
+	private static final int ORPHANED_ID = 30000;
+
+	private TestBroker broker;
+	private File dir;
+
+	@Before
+	public void setUp() throws Exception {
+		broker = new TestBroker();
+		dir = new File(System.getProperty("java.io.tmpdir"), "paho-restore-" + System.nanoTime());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		broker.close();
+	}
+
+	/**
+	 * A callback that keeps the payloads of the messages that arrive.
+	 */
+	private static class Receiver implements MqttCallback {
+		final List<String> arrived = Collections.synchronizedList(new ArrayList<String>());
+		final CountDownLatch latch;
+
+		Receiver(int count) {
+			latch = new CountDownLatch(count);
+		}
+
+		public void messageArrived(String topic, MqttMessage message) throws Exception {
+			arrived.add(new String(message.getPayload(), StandardCharsets.UTF_8));
+			latch.countDown();
+		}
+
+		public void disconnected(MqttDisconnectResponse disconnectResponse) {
+		}
+
+		public void mqttErrorOccurred(MqttException exception) {
+		}
+
+		public void deliveryComplete(IMqttToken token) {
+		}
+
+		public void connectComplete(boolean reconnect, String serverURI) {
+		}
+
+		public void authPacketArrived(int reasonCode, MqttProperties properties) {
+		}
+	}
+
+	/**
+	 * A persistence that keeps the threads that read its records, and is not
+	 * marked as safe to read from several threads at once.
+	 */
+	private static class RecordingPersistence implements MqttClientPersistence {
+		final MemoryPersistence store = new MemoryPersistence();
+		final Set<Thread> readers = Collections.synchronizedSet(new HashSet<Thread>());
+		private boolean opened;
+
+		public void open(String clientId) throws MqttPersistenceException {
+			// opening a memory store empties it, so it is only opened once
+			if (!opened) {
+				store.open(clientId);
+				opened = true;
+			}
+		}
+
+		public void close() throws MqttPersistenceException {
+			store.close();
+		}
+
+		public void put(String key, MqttPersistable persistable) throws MqttPersistenceException {
+			store.put(key, persistable);
+		}
+
+		public MqttPersistable get(String key) throws MqttPersistenceException {
+			readers.add(Thread.currentThread());
+			return store.get(key);
+		}
+
+		public void remove(String key) throws MqttPersistenceException {
+			store.remove(key);
+		}
+
+		public Enumeration<String> keys() throws MqttPersistenceException {
+			return store.keys();
+		}
+
+		public void clear() throws MqttPersistenceException {
+			store.clear();
+		}
+
+		public boolean containsKey(String key) throws MqttPersistenceException {
+			return store.containsKey(key);
+		}
+	}
+
+	/**
+	 * @return the message id of the n-th message sent, counting from a
+	 *         little below the highest id so that the ids wrap
+	 */
+	private static int messageId(int n) {
+		return (FIRST_ID - 1 + n) % 65535 + 1;
+	}
+
+	/**
+	 * Persists a session as a client would leave it: QoS 1 messages that were
+	 * sent but not acknowledged, and a PUBREL left over from a flow that
+	 * completed.
+	 */
+	private void persistSession() throws Exception {
+		MqttDefaultFilePersistence persistence = new MqttDefaultFilePersistence(dir.getAbsolutePath());
+		persistence.open(CLIENT_ID);
+		for (int i = 0; i < MESSAGES; i++) {
+			MqttMessage message = new MqttMessage(Integer.toString(i).getBytes(StandardCharsets.UTF_8));
+			message.setQos(1);
+			MqttPublish publish = new MqttPublish(TOPIC, message, new MqttProperties());
+			publish.setMessageId(messageId(i));
+			persistence.put("s-" + publish.getMessageId(), publish);
+		}
+		persistence.put("sc-" + ORPHANED_ID,
+				new MqttPubRel(MqttReturnCode.RETURN_CODE_SUCCESS, ORPHANED_ID, new MqttProperties()));
+		persistence.close();
+	}
+
+	/**
+	 * @return the keys persisted for the client, read while it does not have
+	 *         its persistence open
+	 */
+	private List<String> persistedKeys() throws Exception {
+		MqttDefaultFilePersistence persistence = new MqttDefaultFilePersistence(dir.getAbsolutePath());
+		persistence.open(CLIENT_ID);
+		try {
+			return Collections.list(persistence.keys());
+		} finally {
+			persistence.close();
+		}
+	}
+
+	@Test(timeout = 30000)
+	public void testRestoredSessionIsResentInOrder() throws Exception {
+		persistSession();
+		Receiver receiver = new Receiver(MESSAGES);
+		MqttAsyncClient subscriber = new MqttAsyncClient(broker.getServerURI(), "subscriber",
+				new MemoryPersistence());
+		subscriber.setCallback(receiver);
+		subscriber.connect().waitForCompletion(5000);
+		subscriber.subscribe(TOPIC, 0).waitForCompletion(5000);
+
+		MqttAsyncClient client = new MqttAsyncClient(broker.getServerURI(), CLIENT_ID,
+				new MqttDefaultFilePersistence(dir.getAbsolutePath()));
+		try {
+			// every message still to be acknowledged has its token back
+			IMqttToken[] tokens = client.getPendingTokens();
+			Assert.assertEquals(MESSAGES, tokens.length);
+			Assert.assertFalse(persistedKeys().contains("sc-" + ORPHANED_ID));
+
+			MqttConnectionOptions options = new MqttConnectionOptions();
+			options.setCleanStart(false);
+			client.connect(options).waitForCompletion(5000);
+			for (IMqttToken token : tokens) {
+				token.waitForCompletion(10000);
+			}
+			Assert.assertTrue(receiver.latch.await(10, TimeUnit.SECONDS));
+			for (int i = 0; i < MESSAGES; i++) {
+				Assert.assertEquals(Integer.toString(i), receiver.arrived.get(i));
+			}
+			client.disconnect().waitForCompletion(5000);
+		} finally {
+			client.close();
+			subscriber.disconnect().waitForCompletion(5000);
+			subscriber.close();
+		}
+		Assert.assertTrue(persistedKeys().isEmpty());
+	}
+
+	@Test(timeout = 30000)
+	public void testUnmarkedPersistenceIsReadByCreatingThread() throws Exception {
+		RecordingPersistence persistence = new RecordingPersistence();
+		persistence.open(CLIENT_ID);
+		for (int i = 0; i < MESSAGES; i++) {
+			MqttMessage message = new MqttMessage(Integer.toString(i).getBytes(StandardCharsets.UTF_8));
+			message.setQos(1);
+			MqttPublish publish = new MqttPublish(TOPIC, message, new MqttProperties());
+			publish.setMessageId(messageId(i));
+			persistence.put("s-" + publish.getMessageId(), publish);
+		}
+		persistence.readers.clear();
+
+		MqttAsyncClient client = new MqttAsyncClient(broker.getServerURI(), CLIENT_ID, persistence);
+		try {
+			Assert.assertEquals(MESSAGES, client.getPendingTokens().length);
+			Assert.assertEquals(Collections.singleton(Thread.currentThread()), persistence.readers);
+		} finally {
+			client.close();
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package org.eclipse.paho.mqttv5.client.test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.paho.mqttv5.client.IMqttToken;
+import org.eclipse.paho.mqttv5.client.MqttAsyncClient;
+import org.eclipse.paho.mqttv5.client.MqttCallback;
+import org.eclipse.paho.mqttv5.client.MqttConnectionOptions;
+import org.eclipse.paho.mqttv5.client.MqttDisconnectResponse;
+import org.eclipse.paho.mqttv5.client.persist.MemoryPersistence;
+import org.eclipse.paho.mqttv5.common.MqttException;
+import org.eclipse.paho.mqttv5.common.MqttMessage;
+import org.eclipse.paho.mqttv5.common.packet.MqttProperties;
+import org.eclipse.paho.test.broker.TestBroker;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class VirtualThreadTest {
+
+	private TestBroker broker;
+
+	@Before
+	public void setUp() throws Exception {
+		broker = new TestBroker();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		broker.close();
+	}
+
+	private void publishAndReceive(MqttConnectionOptions options) throws Exception {
+		final CountDownLatch arrived = new CountDownLatch(1);
+		MqttAsyncClient client = new MqttAsyncClient(broker.getServerURI(), "threads", new MemoryPersistence());
+		client.setCallback(new MqttCallback() {
+			public void disconnected(MqttDisconnectResponse disconnectResponse) {
+			}
+
+			public void mqttErrorOccurred(MqttException exception) {
+			}
+
+			public void messageArrived(String topic, MqttMessage message) {
+				arrived.countDown();
+			}
+
+			public void deliveryComplete(IMqttToken token) {
+			}
+
+			public void connectComplete(boolean reconnect, String serverURI) {
+			}
+
+			public void authPacketArrived(int reasonCode, MqttProperties properties) {
+			}
+		});
+		client.connect(options).waitForCompletion(5000);
+		client.subscribe("threads/test", 0).waitForCompletion(5000);
+		client.publish("threads/test", "hello".getBytes(), 1, false).waitForCompletion(5000);
+		Assert.assertTrue(arrived.await(5, TimeUnit.SECONDS));
+		client.disconnect().waitForCompletion(5000);
+		client.close();
+	}
+
+	@Test(timeout = 30000)
+	public void testThreadFactory() throws Exception {
+		final AtomicInteger created = new AtomicInteger(0);
+		MqttConnectionOptions options = new MqttConnectionOptions();
+		options.setThreadFactory(new ThreadFactory() {
+			public Thread newThread(Runnable task) {
+				created.incrementAndGet();
+				return new Thread(task);
+			}
+		});
+		publishAndReceive(options);
+		// connect, receiver, sender, callback and disconnect
+		Assert.assertEquals(5, created.get());
+	}
+
+	@Test(timeout = 30000)
+	public void testVirtualThreads() throws Exception {
+		// falls back to platform threads where virtual threads are missing
+		MqttConnectionOptions options = new MqttConnectionOptions();
+		options.setVirtualThreads(true);
+		publishAndReceive(options);
+	}
+}
@@ -0,0 +1,304 @@
+package org.eclipse.paho.mqttv5.client.websocket;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import javax.net.SocketFactory;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WebSocketDeflateTest {
+
+	private static final byte[] TAIL = { 0x00, 0x00, (byte) 0xff, (byte) 0xff };
+
+	/**
+	 * A minimal WebSocket server for a single connection. It answers the
+	 * handshake with the given extensions header and echoes every message.
+	 * When permessage-deflate was agreed the echo is compressed with the
+	 * server's own Deflater and split over two frames.
+	 */
+	private static class EchoServer extends Thread {
+		private final ServerSocket serverSocket;
+		private final String extensions;
+		private final List<Integer> wireLengths = Collections.synchronizedList(new ArrayList<Integer>());
+		private final List<Boolean> compressedFlags = Collections.synchronizedList(new ArrayList<Boolean>());
+		private volatile String offer;
+		private volatile Throwable failure;
+
+		EchoServer(String extensions) throws IOException {
+			this.serverSocket = new ServerSocket(0);
+			this.extensions = extensions;
+			setDaemon(true);
+			start();
+		}
+
+		int getPort() {
+			return serverSocket.getLocalPort();
+		}
+
+		public void run() {
+			try (Socket socket = serverSocket.accept()) {
+				InputStream in = socket.getInputStream();
+				OutputStream out = socket.getOutputStream();
+				String key = null;
+				String line;
+				while (!(line = readLine(in)).isEmpty()) {
+					int colon = line.indexOf(':');
+					if (colon > 0) {
+						String name = line.substring(0, colon).trim();
+						String value = line.substring(colon + 1).trim();
+						if (name.equalsIgnoreCase("Sec-WebSocket-Key")) {
+							key = value;
+						} else if (name.equalsIgnoreCase("Sec-WebSocket-Extensions")) {
+							offer = value;
+						}
+					}
+				}
+				String accept = Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA1")
+						.digest((key + "258EAFA5-E914-47DA-95CA-C5AB0DC85B11").getBytes(StandardCharsets.UTF_8)));
+				StringBuilder response = new StringBuilder("HTTP/1.1 101 Switching Protocols\r\n");
+				response.append("Upgrade: websocket\r\nConnection: Upgrade\r\n");
+				response.append("Sec-WebSocket-Accept: ").append(accept).append("\r\n");
+				response.append("Sec-WebSocket-Protocol: mqtt\r\n");
+				if (extensions != null) {
+					response.append("Sec-WebSocket-Extensions: ").append(extensions).append("\r\n");
+				}
+				response.append("\r\n");
+				out.write(response.toString().getBytes(StandardCharsets.UTF_8));
+				out.flush();
+
+				DataInputStream frames = new DataInputStream(in);
+				Inflater inflater = new Inflater(true);
+				Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+				while (true) {
+					int first = frames.readUnsignedByte();
+					int second = frames.readUnsignedByte();
+					long length = second & 0x7f;
+					if (length == 126) {
+						length = frames.readUnsignedShort();
+					} else if (length == 127) {
+						length = frames.readLong();
+					}
+					byte[] mask = new byte[4];
+					frames.readFully(mask);
+					byte[] payload = new byte[(int) length];
+					frames.readFully(payload);
+					for (int i = 0; i < payload.length; i++) {
+						payload[i] ^= mask[i % 4];
+					}
+					if ((first & 0x0f) == 0x08) {
+						break;
+					}
+					boolean compressed = (first & 0x40) != 0;
+					wireLengths.add(payload.length);
+					compressedFlags.add(compressed);
+					byte[] message = payload;
+					if (compressed) {
+						inflater.setInput(payload);
+						ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+						byte[] chunk = new byte[4096];
+						int count;
+						while ((count = inflater.inflate(chunk)) > 0) {
+							inflated.write(chunk, 0, count);
+						}
+						inflater.setInput(TAIL);
+						while ((count = inflater.inflate(chunk)) > 0) {
+							inflated.write(chunk, 0, count);
+						}
+						message = inflated.toByteArray();
+					}
+					if (extensions != null) {
+						byte[] echo = deflate(deflater, message);
+						int half = echo.length / 2;
+						writeFrame(out, 0x42, echo, 0, half);
+						writeFrame(out, 0x80, echo, half, echo.length - half);
+					} else {
+						writeFrame(out, 0x82, message, 0, message.length);
+					}
+					out.flush();
+				}
+			} catch (Throwable e) {
+				failure = e;
+			}
+		}
+
+		void finish() throws Exception {
+			join(5000);
+			serverSocket.close();
+			if (failure != null) {
+				throw new AssertionError("server failed", failure);
+			}
+		}
+
+		private static String readLine(InputStream in) throws IOException {
+			StringBuilder line = new StringBuilder();
+			int b;
+			while ((b = in.read()) != '\n') {
+				if (b < 0) {
+					throw new IOException("end of stream");
+				}
+				if (b != '\r') {
+					line.append((char) b);
+				}
+			}
+			return line.toString();
+		}
+
+		private static void writeFrame(OutputStream out, int first, byte[] payload, int offset, int length)
+				throws IOException {
+			out.write(first);
+			if (length < 126) {
+				out.write(length);
+			} else {
+				out.write(126);
+				out.write(length >>> 8);
+				out.write(length);
+			}
+			out.write(payload, offset, length);
+		}
+	}
+
+	private static byte[] deflate(Deflater deflater, byte[] message) {
+		deflater.setInput(message);
+		ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+		byte[] chunk = new byte[4096];
+		int count;
+		do {
+			count = deflater.deflate(chunk, 0, chunk.length, Deflater.SYNC_FLUSH);
+			deflated.write(chunk, 0, count);
+		} while (count == chunk.length);
+		byte[] bytes = deflated.toByteArray();
+		return Arrays.copyOf(bytes, bytes.length - TAIL.length);
+	}
+
+	private static byte[] text(int length) {
+		StringBuilder text = new StringBuilder();
+		int i = 0;
+		while (text.length() < length) {
+			text.append("{\"sensor\":\"temperature-").append(i % 7).append("\",\"value\":").append(20 + i % 13)
+					.append(",\"unit\":\"celsius\"}");
+			i++;
+		}
+		return text.substring(0, length).getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] readFully(InputStream in, int length) throws IOException {
+		byte[] bytes = new byte[length];
+		new DataInputStream(in).readFully(bytes);
+		return bytes;
+	}
+
+	@Test(timeout = 10000)
+	public void testCompressedEchoThroughLocalServer() throws Exception {
+		EchoServer server = new EchoServer("permessage-deflate; client_max_window_bits=15");
+		WebSocketNetworkModule module = new WebSocketNetworkModule(SocketFactory.getDefault(),
+				"ws://localhost:" + server.getPort() + "/mqtt", "localhost", server.getPort(), "deflate");
+		module.setPerMessageDeflate(true, 15);
+		module.start();
+		Assert.assertTrue(server.offer.startsWith("permessage-deflate"));
+
+		byte[] message = text(4000);
+		for (int i = 0; i < 3; i++) {
+			module.getOutputStream().write(message);
+			module.getOutputStream().flush();
+			Assert.assertArrayEquals(message, readFully(module.getInputStream(), message.length));
+		}
+		module.stop();
+		server.finish();
+
+		Assert.assertEquals(Boolean.TRUE, server.compressedFlags.get(0));
+		Assert.assertTrue("ratio " + server.wireLengths.get(0), server.wireLengths.get(0) * 4 < message.length);
+		// with context takeover a repeated message is little more than a reference
+		Assert.assertTrue(server.wireLengths.get(2) < server.wireLengths.get(0) / 4);
+	}
+
+	@Test(timeout = 10000)
+	public void testDeclinedOfferSendsUncompressed() throws Exception {
+		EchoServer server = new EchoServer(null);
+		WebSocketNetworkModule module = new WebSocketNetworkModule(SocketFactory.getDefault(),
+				"ws://localhost:" + server.getPort() + "/mqtt", "localhost", server.getPort(), "deflate");
+		module.setPerMessageDeflate(false, 12);
+		module.start();
+		Assert.assertEquals("permessage-deflate; client_max_window_bits=12; server_max_window_bits=12; "
+				+ "client_no_context_takeover; server_no_context_takeover", server.offer);
+
+		byte[] message = text(1000);
+		module.getOutputStream().write(message);
+		module.getOutputStream().flush();
+		Assert.assertArrayEquals(message, readFully(module.getInputStream(), message.length));
+		module.stop();
+		server.finish();
+		Assert.assertEquals(Boolean.FALSE, server.compressedFlags.get(0));
+		Assert.assertEquals(Integer.valueOf(message.length), server.wireLengths.get(0));
+	}
+
+	@Test
+	public void testSmallClientWindow() throws Exception {
+		WebSocketDeflate deflate = WebSocketDeflate.accept(
+				"permessage-deflate; client_max_window_bits=10; server_no_context_takeover", true, 15);
+		Assert.assertEquals(10, deflate.getClientWindowBits());
+		Assert.assertTrue(deflate.isClientResetPerMessage());
+		Assert.assertTrue(deflate.isServerNoContextTakeover());
+
+		ByteArrayOutputStream socket = new ByteArrayOutputStream();
+		WebSocketOutputStream out = new WebSocketOutputStream(socket, 4096, deflate);
+		byte[] small = text(1024);
+		byte[] large = text(3000);
+		out.write(small);
+		out.flush();
+		int firstFrameLength = socket.size();
+		out.write(large);
+		out.flush();
+		byte[] wire = socket.toByteArray();
+		Assert.assertEquals(0xc2, wire[0] & 0xff);
+		Assert.assertEquals(0x82, wire[firstFrameLength] & 0xff);
+
+		WebSocketInputStream in = new WebSocketInputStream(new ByteArrayInputStream(wire), out, deflate);
+		Assert.assertArrayEquals(small, readFully(in, small.length));
+		Assert.assertArrayEquals(large, readFully(in, large.length));
+		Assert.assertEquals(-1, in.read());
+	}
+
+	@Test
+	public void testInvalidResponsesRejected() throws Exception {
+		Assert.assertNull(WebSocketDeflate.accept("", true, 15));
+		String[] invalid = { "x-webkit-deflate-frame", "permessage-deflate; server_max_window_bits=7",
+				"permessage-deflate; client_max_window_bits=16", "permessage-deflate; unknown",
+				"permessage-deflate; server_no_context_takeover=1", "permessage-deflate, permessage-deflate" };
+		for (String response : invalid) {
+			try {
+				WebSocketDeflate.accept(response, true, 15);
+				Assert.fail("accepted " + response);
+			} catch (IOException expected) {
+			}
+		}
+	}
+
+	@Test
+	public void testCompressedFrameWithoutNegotiationRejected() throws Exception {
+		byte[] frame = { (byte) 0xc2, 0x01, 0x00 };
+		WebSocketInputStream in = new WebSocketInputStream(new ByteArrayInputStream(frame),
+				new WebSocketOutputStream(new ByteArrayOutputStream()));
+		try {
+			in.read();
+			Assert.fail("expected IOException");
+		} catch (IOException expected) {
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package org.eclipse.paho.mqttv5.client.websocket;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * Reports the cost of masking WebSocket payloads a byte at a time against
+ * the word-wise masking used by the client, and the throughput of framing
+ * payloads with {@link WebSocketOutputStream}, for payloads of 1KB to 1MB.
+ * Run it with the test classpath, e.g.
+ * <code>java org.eclipse.paho.mqttv5.client.websocket.WebSocketMaskBenchmark [volume]</code>
+ */
+public class WebSocketMaskBenchmark {
+
+	private static final int[] SIZES = { 1024, 16384, 65536, 262144, 1048576 };
+
+	private static final OutputStream DISCARD = new OutputStream() {
+		public void write(int b) {
+		}
+
+		public void write(byte[] b, int off, int len) {
+		}
+	};
+
+	private static void maskBytewise(byte[] bytes, byte[] key) {
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] ^= key[i % 4];
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		long volume = args.length > 0 ? Long.parseLong(args[0]) : 512L * 1024 * 1024;
+		byte[] key = { 0x12, 0x34, 0x56, 0x78 };
+		int intKey = WebSocketMask.toKey(key, 0);
+		System.out.println(String.format("%9s %14s %14s %14s", "size", "bytewise MB/s", "wordwise MB/s",
+				"framing MB/s"));
+		for (int size : SIZES) {
+			byte[] payload = new byte[size];
+			new Random(size).nextBytes(payload);
+			// scale the message count so each measurement covers the same volume
+			int count = (int) Math.max(16, volume / size);
+			WebSocketOutputStream out = new WebSocketOutputStream(DISCARD);
+			for (int warm = 0; warm < count; warm++) {
+				maskBytewise(payload, key);
+				WebSocketMask.mask(payload, 0, size, intKey, 0);
+				out.write(payload, 0, size);
+				out.flush();
+			}
+			long start = System.nanoTime();
+			for (int n = 0; n < count; n++) {
+				maskBytewise(payload, key);
+			}
+			long bytewise = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (int n = 0; n < count; n++) {
+				WebSocketMask.mask(payload, 0, size, intKey, 0);
+			}
+			long wordwise = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (int n = 0; n < count; n++) {
+				out.write(payload, 0, size);
+				out.flush();
+			}
+			long framing = System.nanoTime() - start;
+			double megabytes = (double) size * count / (1024 * 1024);
+			System.out.println(String.format("%9d %14.0f %14.0f %14.0f", size, megabytes * 1e9 / bytewise,
+					megabytes * 1e9 / wordwise, megabytes * 1e9 / framing));
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package org.eclipse.paho.mqttv5.client.websocket;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WebSocketStreamTest {
+
+	/**
+	 * Hands out the wrapped bytes a few at a time, timing out between reads.
+	 */
+	private static class TrickleInputStream extends InputStream {
+		private final byte[] data;
+		private int position = 0;
+		private boolean timeout = false;
+
+		TrickleInputStream(byte[] data) {
+			this.data = data;
+		}
+
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xff);
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			timeout = !timeout;
+			if (timeout) {
+				throw new SocketTimeoutException();
+			}
+			if (position == data.length) {
+				return -1;
+			}
+			int count = Math.min(3, Math.min(len, data.length - position));
+			System.arraycopy(data, position, b, off, count);
+			position += count;
+			return count;
+		}
+	}
+
+	private static byte[] random(int length) {
+		byte[] bytes = new byte[length];
+		new Random(length).nextBytes(bytes);
+		return bytes;
+	}
+
+	private static byte[] readAll(InputStream in, int length) throws IOException {
+		byte[] result = new byte[length];
+		int read = 0;
+		while (read < length) {
+			try {
+				int count = in.read(result, read, length - read);
+				Assert.assertTrue("unexpected end of stream", count > 0);
+				read += count;
+			} catch (SocketTimeoutException e) {
+				// carry on where the read stopped, as the MQTT reader does
+			}
+		}
+		return result;
+	}
+
+	@Test
+	public void testRoundTripAcrossFrameSizes() throws Exception {
+		int[] sizes = { 0, 1, 125, 126, 65535, 65536, 100000 };
+		for (int size : sizes) {
+			byte[] payload = random(size);
+			ByteArrayOutputStream socket = new ByteArrayOutputStream();
+			WebSocketOutputStream out = new WebSocketOutputStream(socket, 70000);
+			out.write(payload, 0, payload.length);
+			out.flush();
+
+			WebSocketInputStream in = new WebSocketInputStream(new ByteArrayInputStream(socket.toByteArray()), out);
+			Assert.assertArrayEquals(payload, readAll(in, size));
+			Assert.assertEquals(-1, in.read());
+		}
+	}
+
+	@Test
+	public void testPacketsMaySpanFrames() throws Exception {
+		byte[] payload = random(1000);
+		ByteArrayOutputStream socket = new ByteArrayOutputStream();
+		WebSocketOutputStream out = new WebSocketOutputStream(socket, 64);
+		for (int i = 0; i < payload.length; i += 7) {
+			out.write(payload, i, Math.min(7, payload.length - i));
+		}
+		out.write(0x42);
+		out.flush();
+
+		WebSocketInputStream in = new WebSocketInputStream(new TrickleInputStream(socket.toByteArray()), out);
+		Assert.assertArrayEquals(payload, readAll(in, payload.length));
+		Assert.assertEquals(0x42, readAll(in, 1)[0]);
+	}
+
+	@Test
+	public void testPingIsAnsweredAndPongIgnored() throws Exception {
+		ByteArrayOutputStream server = new ByteArrayOutputStream();
+		// unmasked frames, as a server sends them
+		server.write(new byte[] { (byte) 0x89, 2, 'h', 'i' });
+		server.write(new byte[] { (byte) 0x8a, 0 });
+		server.write(new byte[] { (byte) 0x82, 3, 1, 2, 3 });
+		ByteArrayOutputStream socket = new ByteArrayOutputStream();
+		WebSocketOutputStream out = new WebSocketOutputStream(socket);
+
+		WebSocketInputStream in = new WebSocketInputStream(new ByteArrayInputStream(server.toByteArray()), out);
+		Assert.assertArrayEquals(new byte[] { 1, 2, 3 }, readAll(in, 3));
+
+		byte[] pong = socket.toByteArray();
+		Assert.assertEquals((byte) 0x8a, pong[0]);
+		Assert.assertEquals((byte) 0x82, pong[1]);
+		Assert.assertEquals('h', pong[6] ^ pong[2]);
+		Assert.assertEquals('i', pong[7] ^ pong[3]);
+	}
+
+	@Test
+	public void testCloseFrame() throws Exception {
+		byte[] close = { (byte) 0x88, 0 };
+		WebSocketOutputStream out = new WebSocketOutputStream(new ByteArrayOutputStream());
+		WebSocketInputStream in = new WebSocketInputStream(new ByteArrayInputStream(close), out);
+		try {
+			in.read();
+			Assert.fail("expected IOException");
+		} catch (IOException expected) {
+		}
+
+		in = new WebSocketInputStream(new ByteArrayInputStream(close), out);
+		in.setClosing();
+		Assert.assertEquals(-1, in.read());
+	}
+
+	@Test
+	public void testWordWiseMaskMatchesBytewise() {
+		byte[] key = { (byte) 0x9a, 0x12, (byte) 0xf0, 0x3c };
+		for (int length = 0; length < 40; length++) {
+			for (int offset = 0; offset < 3; offset++) {
+				for (int keyOffset = 0; keyOffset < 4; keyOffset++) {
+					byte[] bytes = random(length + 3);
+					byte[] expected = bytes.clone();
+					for (int i = 0; i < length; i++) {
+						expected[offset + i] ^= key[(keyOffset + i) % 4];
+					}
+					WebSocketMask.mask(bytes, offset, length, WebSocketMask.toKey(key, 0), keyOffset);
+					Assert.assertArrayEquals(expected, bytes);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testMaskingKeysVary() {
+		WebSocketMask mask = new WebSocketMask();
+		int first = mask.nextKey();
+		boolean varied = false;
+		for (int i = 0; i < 3 * WebSocketMask.KEYS_PER_REFILL; i++) {
+			varied |= mask.nextKey() != first;
+		}
+		Assert.assertTrue(varied);
+	}
+}
@@ -0,0 +1,133 @@
+package org.eclipse.paho.mqttv5.client.wire;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.eclipse.paho.mqttv5.client.MqttStreamingCallback;
+import org.eclipse.paho.mqttv5.client.internal.MqttState;
+import org.eclipse.paho.mqttv5.common.MqttMessage;
+import org.eclipse.paho.mqttv5.common.MqttStreamingMessage;
+import org.eclipse.paho.mqttv5.common.packet.MqttPingResp;
+import org.eclipse.paho.mqttv5.common.packet.MqttPublish;
+import org.eclipse.paho.mqttv5.common.packet.MqttWireMessage;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MqttStreamingTest {
+
+	/**
+	 * A client state that only answers the questions the wire streams ask.
+	 */
+	private static MqttState createState(final MqttStreamingCallback callback, final int threshold) {
+		return (MqttState) Proxy.newProxyInstance(MqttState.class.getClassLoader(), new Class<?>[] { MqttState.class },
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						if (method.getName().equals("getStreamingCallback")) {
+							return callback;
+						} else if (method.getName().equals("getStreamingThreshold")) {
+							return Integer.valueOf(threshold);
+						}
+						return null;
+					}
+				});
+	}
+
+	private static byte[] payload(int length) {
+		byte[] payload = new byte[length];
+		for (int i = 0; i < length; i++) {
+			payload[i] = (byte) i;
+		}
+		return payload;
+	}
+
+	@Test
+	public void testStreamedPublishMatchesInMemoryPublish() throws Exception {
+		byte[] payload = payload(20000);
+		MqttState state = createState(null, Integer.MAX_VALUE);
+
+		ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+		MqttOutputStream out = new MqttOutputStream(state, streamed, "test");
+		out.write(new MqttPublish("big/file", new MqttStreamingMessage(new ByteArrayInputStream(payload), payload.length), null));
+		out.flush();
+
+		MqttMessage message = new MqttMessage(payload);
+		message.setQos(0);
+		ByteArrayOutputStream inMemory = new ByteArrayOutputStream();
+		out = new MqttOutputStream(state, inMemory, "test");
+		out.write(new MqttPublish("big/file", message, null));
+		out.flush();
+
+		Assert.assertArrayEquals(inMemory.toByteArray(), streamed.toByteArray());
+	}
+
+	@Test(expected = EOFException.class)
+	public void testShortStreamFailsWrite() throws Exception {
+		MqttOutputStream out = new MqttOutputStream(createState(null, Integer.MAX_VALUE), new ByteArrayOutputStream(), "test");
+		out.write(new MqttPublish("big/file", new MqttStreamingMessage(new ByteArrayInputStream(new byte[10]), 11), null));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testStreamingMessageIsQos0() {
+		new MqttStreamingMessage(new ByteArrayInputStream(new byte[0]), 0).setQos(1);
+	}
+
+	@Test
+	public void testStreamedPayloadIsEmptyInMemory() {
+		MqttStreamingMessage streaming = new MqttStreamingMessage(new ByteArrayInputStream(new byte[10]), 10);
+		Assert.assertEquals(0, streaming.getPayload().length);
+		Assert.assertEquals(10, streaming.getPayloadLength());
+	}
+
+	@Test
+	public void testInboundPayloadIsStreamed() throws Exception {
+		final byte[] payload = payload(5000);
+		MqttMessage message = new MqttMessage(payload);
+		message.setQos(1);
+		MqttPublish publish = new MqttPublish("big/file", message, null);
+		publish.setMessageId(42);
+		byte[] small = new MqttPublish("small", new MqttMessage("hi".getBytes(StandardCharsets.UTF_8)), null).serialize();
+
+		ByteArrayOutputStream wire = new ByteArrayOutputStream();
+		wire.write(publish.serialize());
+		wire.write(small);
+		wire.write(new MqttPingResp().serialize());
+
+		final String[] topic = new String[1];
+		final int[] length = new int[1];
+		final byte[] head = new byte[100];
+		MqttStreamingCallback callback = new MqttStreamingCallback() {
+			public void messageArriving(String t, MqttMessage m, InputStream in, int len) throws IOException {
+				topic[0] = t;
+				length[0] = len;
+				Assert.assertEquals(1, m.getQos());
+				Assert.assertEquals(42, m.getId());
+				// only read part of the payload, the rest must be skipped
+				int read = 0;
+				while (read < head.length) {
+					read += in.read(head, read, head.length - read);
+				}
+			}
+		};
+		MqttInputStream in = new MqttInputStream(createState(callback, 1000), new ByteArrayInputStream(wire.toByteArray()), "test");
+
+		MqttWireMessage first = in.readMqttWireMessage();
+		Assert.assertTrue(((MqttPublish) first).isPayloadStreamed());
+		Assert.assertEquals(42, first.getMessageId());
+		Assert.assertEquals("big/file", topic[0]);
+		Assert.assertEquals(payload.length, length[0]);
+		Assert.assertArrayEquals(Arrays.copyOf(payload, head.length), head);
+
+		MqttWireMessage second = in.readMqttWireMessage();
+		Assert.assertFalse(((MqttPublish) second).isPayloadStreamed());
+		Assert.assertEquals("hi", new String(((MqttPublish) second).getPayload(), StandardCharsets.UTF_8));
+		Assert.assertTrue(in.readMqttWireMessage() instanceof MqttPingResp);
+	}
+}
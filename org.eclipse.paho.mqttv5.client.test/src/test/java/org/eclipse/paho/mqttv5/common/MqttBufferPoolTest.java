@@ -0,0 +1,115 @@
+package org.eclipse.paho.mqttv5.common;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.eclipse.paho.mqttv5.common.packet.MqttPublish;
+import org.eclipse.paho.mqttv5.common.packet.MqttWireMessage;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MqttBufferPoolTest {
+
+	@Test
+	public void testAcquireAndRecycle() {
+		MqttBufferPool pool = new MqttBufferPool(4096, 4);
+		MqttBuffer buffer = pool.acquire(100);
+		Assert.assertEquals(100, buffer.length());
+		Assert.assertEquals(1, buffer.getReferenceCount());
+		byte[] storage = buffer.array();
+
+		Assert.assertTrue(buffer.release());
+		Assert.assertEquals(1, pool.getPooledCount());
+
+		// the same size class hands back the same storage
+		MqttBuffer again = pool.acquire(120);
+		Assert.assertSame(storage, again.array());
+		Assert.assertEquals(0, pool.getPooledCount());
+	}
+
+	@Test
+	public void testOversizeIsNotPooled() {
+		MqttBufferPool pool = new MqttBufferPool(1024, 4);
+		MqttBuffer buffer = pool.acquire(2000);
+		Assert.assertEquals(2000, buffer.length());
+		Assert.assertTrue(buffer.release());
+		Assert.assertEquals(0, pool.getPooledCount());
+	}
+
+	@Test
+	public void testRetainAndRelease() {
+		MqttBufferPool pool = new MqttBufferPool();
+		MqttBuffer buffer = pool.acquire(10);
+		buffer.retain();
+		Assert.assertFalse(buffer.release());
+		Assert.assertEquals(0, pool.getPooledCount());
+		Assert.assertTrue(buffer.release());
+		Assert.assertEquals(1, pool.getPooledCount());
+		try {
+			buffer.release();
+			Assert.fail("expected IllegalStateException");
+		} catch (IllegalStateException expected) {
+		}
+		Assert.assertEquals(1, pool.getPooledCount());
+	}
+
+	@Test
+	public void testSliceSharesReferenceCount() {
+		MqttBufferPool pool = new MqttBufferPool();
+		MqttBuffer buffer = pool.acquire(10);
+		MqttBuffer slice = buffer.slice(4, 6);
+		Assert.assertEquals(6, slice.length());
+		Assert.assertEquals(buffer.arrayOffset() + 4, slice.arrayOffset());
+		Assert.assertTrue(slice.release());
+		Assert.assertEquals(0, buffer.getReferenceCount());
+	}
+
+	@Test
+	public void testMessageTakesOwnershipWithoutCopy() {
+		byte[] bytes = "xxhello".getBytes(StandardCharsets.UTF_8);
+		MqttBuffer buffer = MqttBuffer.wrap(bytes, 2, 5);
+		MqttMessage message = new MqttMessage(buffer);
+		Assert.assertSame(buffer, message.getPayloadBuffer());
+		Assert.assertSame(bytes, message.getPayloadBuffer().array());
+		Assert.assertEquals("hello", new String(message.getPayload(), StandardCharsets.UTF_8));
+
+		message.setPayload("bye".getBytes(StandardCharsets.UTF_8));
+		Assert.assertNull(message.getPayloadBuffer());
+	}
+
+	@Test
+	public void testPublishRoundTripThroughPooledBuffer() throws Exception {
+		MqttBufferPool pool = new MqttBufferPool();
+		byte[] payload = "pooled payload".getBytes(StandardCharsets.UTF_8);
+		MqttBuffer outbound = pool.acquire(payload.length);
+		outbound.getByteBuffer().put(payload);
+		MqttMessage message = new MqttMessage(outbound);
+		message.setQos(1);
+		MqttPublish publish = new MqttPublish("a/b", message, null);
+		publish.setMessageId(7);
+
+		byte[] header = publish.getHeader();
+		Assert.assertEquals(payload.length, publish.getPayloadLength());
+		Assert.assertSame(outbound.array(), publish.getPayloadBytes());
+		ByteBuffer wire = ByteBuffer.allocate(header.length + payload.length);
+		wire.put(header).put(publish.getPayloadByteBuffer());
+
+		// decode the variable header and payload as the input stream would
+		byte[] bytes = wire.array();
+		int varStart = header.length - (2 + 3 + 2 + 1);
+		MqttBuffer inbound = pool.acquire(bytes.length - varStart);
+		inbound.getByteBuffer().put(bytes, varStart, bytes.length - varStart);
+		MqttPublish received = new MqttPublish((byte) (bytes[0] & 0x0f), inbound);
+		Assert.assertEquals("a/b", received.getTopicName());
+		Assert.assertEquals(7, received.getMessageId());
+		Assert.assertEquals(1, received.getQoS());
+		MqttBuffer receivedPayload = received.getPayloadBuffer();
+		Assert.assertSame(inbound.array(), receivedPayload.array());
+		Assert.assertArrayEquals(payload, receivedPayload.toByteArray());
+
+		Assert.assertTrue(receivedPayload.release());
+		Assert.assertTrue(outbound.release());
+		Assert.assertEquals(2, pool.getPooledCount());
+		Assert.assertEquals(MqttWireMessage.MESSAGE_TYPE_PUBLISH, received.getType());
+	}
+}
@@ -19,6 +19,7 @@ package org.eclipse.paho.mqttv5.client;
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Properties;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -26,6 +27,8 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 
 import javax.net.SocketFactory;
+import org.eclipse.paho.mqttv5.client.codec.MqttPayloadCodec;
+import org.eclipse.paho.mqttv5.client.internal.BatchCompletionListener;
 import org.eclipse.paho.mqttv5.client.internal.ClientComms;
 import org.eclipse.paho.mqttv5.client.internal.ConnectActionListener;
 import org.eclipse.paho.mqttv5.client.internal.DisconnectedMessageBuffer;
@@ -33,11 +36,14 @@ import org.eclipse.paho.mqttv5.client.internal.MqttConnectionState;
 import org.eclipse.paho.mqttv5.client.internal.MqttSessionState;
 import org.eclipse.paho.mqttv5.client.internal.NetworkModule;
 import org.eclipse.paho.mqttv5.client.internal.NetworkModuleService;
+import org.eclipse.paho.mqttv5.client.internal.ParallelNetworkModule;
 import org.eclipse.paho.mqttv5.client.persist.MemoryPersistence;
 import org.eclipse.paho.mqttv5.client.persist.MqttDefaultFilePersistence;
 import org.eclipse.paho.mqttv5.client.util.Debug;
 import org.eclipse.paho.mqttv5.client.logging.Logger;
 import org.eclipse.paho.mqttv5.client.logging.LoggerFactory;
+import org.eclipse.paho.mqttv5.client.metrics.LatencyHistogram;
+import org.eclipse.paho.mqttv5.client.metrics.LatencyTracer;
 import org.eclipse.paho.mqttv5.common.ExceptionHelper;
 import org.eclipse.paho.mqttv5.common.MqttException;
 import org.eclipse.paho.mqttv5.common.MqttMessage;
@@ -588,7 +594,9 @@ public class MqttAsyncClient implements MqttClientInterface, IMqttAsyncClient {
 		}
 
 		// @TRACE 101=<init> ClientID={0} ServerURI={1} PersistenceType={2}
-		log.fine(CLASS_NAME, methodName, "101", new Object[] { clientId, serverURI, persistence });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "101", new Object[] { clientId, serverURI, persistence });
+		}
 
 		this.persistence.open(clientId);
 		this.comms = new ClientComms(this, this.persistence, this.pingSender, this.executorService, this.mqttSession,
@@ -625,7 +633,9 @@ public class MqttAsyncClient implements MqttClientInterface, IMqttAsyncClient {
 			throws MqttException, MqttSecurityException {
 		final String methodName = "createNetworkModules";
 		// @TRACE 116=URI={0}
-		log.fine(CLASS_NAME, methodName, "116", new Object[] { address });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "116", new Object[] { address });
+		}
 
 		NetworkModule[] networkModules = null;
 		String[] serverURIs = options.getServerURIs();
@@ -642,6 +652,10 @@ public class MqttAsyncClient implements MqttClientInterface, IMqttAsyncClient {
 		for (int i = 0; i < array.length; i++) {
 			networkModules[i] = createNetworkModule(array[i], options);
 		}
+		if (options.isParallelConnect()) {
+			// a single module racing all the servers
+			networkModules = new NetworkModule[] { new ParallelNetworkModule(array, networkModules, options, mqttSession.getClientId()) };
+		}
 
 		log.fine(CLASS_NAME, methodName, "108");
 		return networkModules;
@@ -661,7 +675,9 @@ public class MqttAsyncClient implements MqttClientInterface, IMqttAsyncClient {
 			throws MqttException, MqttSecurityException {
 		final String methodName = "createNetworkModule";
 		// @TRACE 115=URI={0}
-		log.fine(CLASS_NAME, methodName, "115", new Object[] { address });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "115", new Object[] { address });
+		}
 
 
 		NetworkModule netModule = NetworkModuleService.createInstance(address, options, mqttSession.getClientId());
@@ -748,11 +764,13 @@ public class MqttAsyncClient implements MqttClientInterface, IMqttAsyncClient {
 
 		// @TRACE 103=cleanStart={0} connectionTimeout={1} TimekeepAlive={2}
 		// userName={3} password={4} will={5} userContext={6} callback={7}
-		log.fine(CLASS_NAME, methodName, "103",
-				new Object[] { Boolean.valueOf(options.isCleanStart()), Integer.valueOf(options.getConnectionTimeout()),
-						Integer.valueOf(options.getKeepAliveInterval()), options.getUserName(),
-						((null == options.getPassword()) ? "[null]" : "[notnull]"),
-						((null == options.getWillMessage()) ? "[null]" : "[notnull]"), userContext, callback });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "103",
+					new Object[] { Boolean.valueOf(options.isCleanStart()), Integer.valueOf(options.getConnectionTimeout()),
+							Integer.valueOf(options.getKeepAliveInterval()), options.getUserName(),
+							((null == options.getPassword()) ? "[null]" : "[notnull]"),
+							((null == options.getWillMessage()) ? "[null]" : "[notnull]"), userContext, callback });
+		}
 		comms.setNetworkModules(createNetworkModules(serverURI, options));
 		comms.setReconnectCallback(new MqttReconnectCallback(automaticReconnect));
 
@@ -765,6 +783,8 @@ public class MqttAsyncClient implements MqttClientInterface, IMqttAsyncClient {
 		userToken.setUserContext(this);
 
 		this.mqttConnection.setSendReasonMessages(this.connOpts.isSendReasonMessages());
+		this.mqttConnection.setBufferPool(this.connOpts.getBufferPool());
+		this.mqttConnection.setAsyncPersistence(this.connOpts.isAsyncPersistence());
 
 		// If we are using the MqttCallbackExtended, set it on the
 		// connectActionListener
@@ -830,7 +850,9 @@ public class MqttAsyncClient implements MqttClientInterface, IMqttAsyncClient {
 			MqttProperties disconnectProperties) throws MqttException {
 		final String methodName = "disconnect";
 		// @TRACE 104=> quiesceTimeout={0} userContext={1} callback={2}
-		log.fine(CLASS_NAME, methodName, "104", new Object[] { Long.valueOf(quiesceTimeout), userContext, callback });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "104", new Object[] { Long.valueOf(quiesceTimeout), userContext, callback });
+		}
 
 		MqttToken token = new MqttToken(getClientId());
 		token.setActionCallback(callback);
@@ -1154,7 +1176,9 @@ public class MqttAsyncClient implements MqttClientInterface, IMqttAsyncClient {
 				subs.append(subscriptions[i].toString());
 			}
 			// @TRACE 106=Subscribe topicFilter={0} userContext={1} callback={2}
-			log.fine(CLASS_NAME, methodName, "106", new Object[] { subs.toString(), userContext, callback });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "106", new Object[] { subs.toString(), userContext, callback });
+			}
 		}
 
 		MqttToken token = new MqttToken(getClientId());
@@ -1382,7 +1406,9 @@ public class MqttAsyncClient implements MqttClientInterface, IMqttAsyncClient {
 			}
 
 			// @TRACE 107=Unsubscribe topic={0} userContext={1} callback={2}
-			log.fine(CLASS_NAME, methodName, "107", new Object[] { subs, userContext, callback });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "107", new Object[] { subs, userContext, callback });
+			}
 		}
 
 		for (String topicFilter : topicFilters) {
@@ -1436,6 +1462,76 @@ public class MqttAsyncClient implements MqttClientInterface, IMqttAsyncClient {
 		comms.setManualAcks(manualAcks);
 	}
 
+	/**
+	 * Sets a callback that receives the payload of large inbound messages as a
+	 * stream while it is read from the network, instead of the whole message
+	 * being read into memory first. QoS 0 and QoS 1 messages whose packet is at
+	 * least <code>minimumPacketSize</code> bytes are passed to the callback; all
+	 * other messages are delivered as usual.
+	 *
+	 * @param callback
+	 *            the streaming callback, or null to stop streaming
+	 * @param minimumPacketSize
+	 *            the packet size in bytes from which payloads are streamed
+	 * @see MqttStreamingCallback
+	 */
+	public void setStreamingCallback(MqttStreamingCallback callback, int minimumPacketSize) {
+		comms.setStreamingCallback(callback, minimumPacketSize);
+	}
+
+	/**
+	 * Sets a codec that encodes the payload of messages published by this
+	 * client, and decodes the payload of received messages encoded with the
+	 * same codec before they are delivered. The application's own message
+	 * objects are not modified.
+	 * <p>
+	 * An encoded message carries a
+	 * {@link MqttPayloadCodec#USER_PROPERTY_NAME} user property naming the
+	 * codec, so only subscribers using the same codec decode it. A payload
+	 * that does not get smaller when encoded is sent unchanged, and messages
+	 * with a streamed payload are never encoded.
+	 * </p>
+	 * 
+	 * @param codec
+	 *            the payload codec, or null to send and deliver payloads
+	 *            unchanged
+	 * @see org.eclipse.paho.mqttv5.client.codec.DeflatePayloadCodec
+	 * @see org.eclipse.paho.mqttv5.client.codec.Lz4PayloadCodec
+	 */
+	public void setPayloadCodec(MqttPayloadCodec codec) {
+		comms.setPayloadCodec(codec);
+	}
+
+	/**
+	 * Switches end to end latency tracing on or off. While it is on, every
+	 * message this client publishes carries a
+	 * {@link LatencyTracer#USER_PROPERTY_NAME} user property holding the time
+	 * it was published, and every message received with that property adds
+	 * the time it took to arrive to {@link #getEndToEndLatency()}. Publishers
+	 * and subscribers both need tracing on; the servers in between pass the
+	 * property on unchanged.
+	 * 
+	 * @param enabled
+	 *            whether to trace latency
+	 * @see LatencyTracer
+	 */
+	public void setLatencyTracing(boolean enabled) {
+		comms.setLatencyTracing(enabled);
+	}
+
+	/**
+	 * Returns the times messages received by this client took from being
+	 * published, measured while latency tracing was on.
+	 * 
+	 * @return the histogram of the latencies, or null if latency tracing has
+	 *         never been switched on
+	 * @see #setLatencyTracing(boolean)
+	 */
+	public LatencyHistogram getEndToEndLatency() {
+		LatencyTracer tracer = comms.getLatencyTracer();
+		return tracer == null ? null : tracer.getLatency();
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -1517,7 +1613,9 @@ public class MqttAsyncClient implements MqttClientInterface, IMqttAsyncClient {
 			MqttActionListener callback) throws MqttException, MqttPersistenceException {
 		final String methodName = "publish";
 		// @TRACE 111=< topic={0} message={1}userContext={1} callback={2}
-		log.fine(CLASS_NAME, methodName, "111", new Object[] { topic, userContext, callback });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "111", new Object[] { topic, userContext, callback });
+		}
 
 		// Checks if a topic is valid when publishing a message.
 		MqttTopicValidator.validate(topic, false/* wildcards NOT allowed */, true);
@@ -1529,7 +1627,7 @@ public class MqttAsyncClient implements MqttClientInterface, IMqttAsyncClient {
 		token.setMessage(message);
 		token.internalTok.setTopics(new String[] { topic });
 
-		MqttPublish pubMsg = new MqttPublish(topic, message, message.getProperties());
+		MqttPublish pubMsg = comms.createPublish(topic, message, message.getProperties());
                 token.setRequestMessage(pubMsg);
 		comms.sendNoWait(pubMsg, token);
 
@@ -1539,6 +1637,106 @@ public class MqttAsyncClient implements MqttClientInterface, IMqttAsyncClient {
 		return token;
 	}
 
+	/**
+	 * Publishes a batch of messages, each to its own topic.
+	 * <p>
+	 * This behaves as calling {@link #publish(String, MqttMessage)} for each
+	 * message in turn, but while connected the whole batch is given message
+	 * ids, persisted and queued for sending in one step, under a single lock.
+	 * Where the persistence implements {@link MqttBatchPersistence} the QoS 1
+	 * and 2 messages are persisted with a single call. Either all the messages
+	 * are queued, or an exception is thrown and none of them is. While the
+	 * client is disconnected, or messages are still held in the disconnected
+	 * buffer, the messages are instead buffered one at a time.
+	 * </p>
+	 * <p>
+	 * As each QoS 1 and 2 message needs a packet identifier for the duration
+	 * of its delivery, a batch cannot hold more than 65535 of them. Messages
+	 * beyond the server's receive maximum wait in the client until earlier
+	 * ones complete.
+	 * </p>
+	 *
+	 * @param messages
+	 *            the topics and messages to publish, in the order they are
+	 *            to be sent
+	 * @param userContext
+	 *            optional object used to pass context to the callback. Use
+	 *            null if not required.
+	 * @param callback
+	 *            optional listener that will be notified when every message
+	 *            in the batch has completed. Use null if not required.
+	 * @return token used to track the batch and the delivery of each message
+	 * @throws MqttException
+	 *             for other errors encountered while publishing the messages.
+	 *             For instance if too many messages are being processed.
+	 * @throws IllegalArgumentException
+	 *             if the batch is empty or a topic is not valid
+	 * @see #publish(String, MqttMessage, Object, MqttActionListener)
+	 */
+	public MqttBatchToken publishBatch(List<MqttBatchMessage> messages, Object userContext,
+			MqttActionListener callback) throws MqttException {
+		final String methodName = "publishBatch";
+		// @TRACE 120=publishBatch ENTRY count={0} userContext={1} callback={2}
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "120",
+					new Object[] { Integer.valueOf(messages == null ? 0 : messages.size()), userContext, callback });
+		}
+
+		if (messages == null || messages.isEmpty()) {
+			throw new IllegalArgumentException();
+		}
+		int count = messages.size();
+		MqttBatchToken batchToken = new MqttBatchToken(getClientId());
+		batchToken.setActionCallback(callback);
+		batchToken.setUserContext(userContext);
+		MqttActionListener listener = new BatchCompletionListener(batchToken, count);
+
+		MqttPublish[] pubMsgs = new MqttPublish[count];
+		MqttToken[] tokens = new MqttToken[count];
+		String[] topics = new String[count];
+		for (int i = 0; i < count; i++) {
+			MqttBatchMessage entry = messages.get(i);
+			String topic = entry.getTopic();
+			MqttMessage message = entry.getMessage();
+			// Checks if a topic is valid when publishing a message.
+			MqttTopicValidator.validate(topic, false/* wildcards NOT allowed */, true);
+
+			MqttToken token = new MqttToken(getClientId());
+			token.internalTok.setDeliveryToken(true);
+			token.setActionCallback(listener);
+			token.setUserContext(userContext);
+			token.setMessage(message);
+			token.internalTok.setTopics(new String[] { topic });
+			pubMsgs[i] = comms.createPublish(topic, message, message.getProperties());
+			token.setRequestMessage(pubMsgs[i]);
+			tokens[i] = token;
+			topics[i] = topic;
+		}
+		batchToken.internalTok.setTopics(topics);
+		batchToken.setDeliveryTokens(tokens);
+		comms.sendBatchNoWait(pubMsgs, tokens);
+
+		// @TRACE 121=publishBatch EXIT
+		log.fine(CLASS_NAME, methodName, "121");
+
+		return batchToken;
+	}
+
+	/**
+	 * Publishes a batch of messages, each to its own topic.
+	 *
+	 * @param messages
+	 *            the topics and messages to publish, in the order they are
+	 *            to be sent
+	 * @return token used to track the batch and the delivery of each message
+	 * @throws MqttException
+	 *             for errors encountered while publishing the messages
+	 * @see #publishBatch(List, Object, MqttActionListener)
+	 */
+	public MqttBatchToken publishBatch(List<MqttBatchMessage> messages) throws MqttException {
+		return publishBatch(messages, null, null);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -1548,7 +1746,9 @@ public class MqttAsyncClient implements MqttClientInterface, IMqttAsyncClient {
 	public void reconnect() throws MqttException {
 		final String methodName = "reconnect";
 		// @Trace 500=Attempting to reconnect client: {0}
-		log.fine(CLASS_NAME, methodName, "500", new Object[] { this.mqttSession.getClientId() });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "500", new Object[] { this.mqttSession.getClientId() });
+		}
 		// Some checks to make sure that we're not attempting to reconnect an
 		// already connected client
 		if (comms.isConnected()) {
@@ -1582,7 +1782,9 @@ public class MqttAsyncClient implements MqttClientInterface, IMqttAsyncClient {
 	private void attemptReconnect() {
 		final String methodName = "attemptReconnect";
 		// @Trace 500=Attempting to reconnect client: {0}
-		log.fine(CLASS_NAME, methodName, "500", new Object[] { this.mqttSession.getClientId() });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "500", new Object[] { this.mqttSession.getClientId() });
+		}
 		try {
 			connect(this.connOpts, this.userContext, new MqttReconnectActionListener(methodName));
 		} catch (MqttSecurityException ex) {
@@ -1597,8 +1799,10 @@ public class MqttAsyncClient implements MqttClientInterface, IMqttAsyncClient {
 	private void startReconnectCycle() {
 		String methodName = "startReconnectCycle";
 		// @Trace 503=Start reconnect timer for client: {0}, delay: {1}
-		log.fine(CLASS_NAME, methodName, "503",
-				new Object[] { this.mqttSession.getClientId(), Long.valueOf(reconnectDelay) });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "503",
+					new Object[] { this.mqttSession.getClientId(), Long.valueOf(reconnectDelay) });
+		}
 		reconnectTimer = new Timer("MQTT Reconnect: " + this.mqttSession.getClientId());
 		reconnectTimer.schedule(new ReconnectTask(), reconnectDelay);
 	}
@@ -1606,7 +1810,9 @@ public class MqttAsyncClient implements MqttClientInterface, IMqttAsyncClient {
 	private void stopReconnectCycle() {
 		String methodName = "stopReconnectCycle";
 		// @Trace 504=Stop reconnect timer for client: {0}
-		log.fine(CLASS_NAME, methodName, "504", new Object[] { this.mqttSession.getClientId() });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "504", new Object[] { this.mqttSession.getClientId() });
+		}
 		synchronized (clientLock) {
 			if (this.connOpts.isAutomaticReconnect()) {
 				if (reconnectTimer != null) {
@@ -1674,14 +1880,18 @@ public class MqttAsyncClient implements MqttClientInterface, IMqttAsyncClient {
 
 		public void onSuccess(IMqttToken asyncActionToken) {
 			// @Trace 501=Automatic Reconnect Successful: {0}
-			log.fine(CLASS_NAME, methodName, "501", new Object[] { asyncActionToken.getClient().getClientId() });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "501", new Object[] { asyncActionToken.getClient().getClientId() });
+			}
 			comms.setRestingState(false);
 			stopReconnectCycle();
 		}
 
 		public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
 			// @Trace 502=Automatic Reconnect failed, rescheduling: {0}
-			log.fine(CLASS_NAME, methodName, "502", new Object[] { asyncActionToken.getClient().getClientId() });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "502", new Object[] { asyncActionToken.getClient().getClientId() });
+			}
 			if (reconnectDelay < connOpts.getMaxReconnectDelay()) {
 				reconnectDelay = reconnectDelay * 2;
 			}
@@ -1692,8 +1902,10 @@ public class MqttAsyncClient implements MqttClientInterface, IMqttAsyncClient {
 			String reschedulemethodName = methodName + ":rescheduleReconnectCycle";
 			// @Trace 505=Rescheduling reconnect timer for client: {0}, delay:
 			// {1}
-			log.fine(CLASS_NAME, reschedulemethodName, "505",
-					new Object[] { MqttAsyncClient.this.mqttSession.getClientId(), String.valueOf(reconnectDelay) });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, reschedulemethodName, "505",
+						new Object[] { MqttAsyncClient.this.mqttSession.getClientId(), String.valueOf(reconnectDelay) });
+			}
 			synchronized (clientLock) {
 				if (MqttAsyncClient.this.connOpts.isAutomaticReconnect()) {
 					if (reconnectTimer != null) {
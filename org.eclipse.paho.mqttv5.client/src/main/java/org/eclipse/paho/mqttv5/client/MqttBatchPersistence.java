@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - batch publish
+ */
+package org.eclipse.paho.mqttv5.client;
+
+import org.eclipse.paho.mqttv5.common.MqttPersistable;
+import org.eclipse.paho.mqttv5.common.MqttPersistenceException;
+
+/**
+ * An optional extension of {@link MqttClientPersistence} for stores that can
+ * put several entries in one operation.
+ * <p>
+ * When the persistence passed to the client implements this interface,
+ * {@link MqttAsyncClient#publishBatch(java.util.List, Object, MqttActionListener)}
+ * persists all the QoS 1 and 2 messages of a batch with a single call to
+ * {@link #putAll(String[], MqttPersistable[])}, which allows a store to
+ * amortise the cost of a commit or a sync over the whole batch. Otherwise the
+ * messages are put one at a time.</p>
+ */
+public interface MqttBatchPersistence extends MqttClientPersistence {
+
+	/**
+	 * Puts the specified entries into the persistent store as a unit.
+	 * <p>
+	 * If this method throws an exception then none of the entries is
+	 * assumed to be in the persistent store, so an implementation must
+	 * remove any it already wrote.</p>
+	 * @param keys the keys for the data, in the same order as the data
+	 * @param persistables the data to persist
+	 * @throws MqttPersistenceException if there was a problem putting the data
+	 * into the persistent store.
+	 */
+	void putAll(String[] keys, MqttPersistable[] persistables) throws MqttPersistenceException;
+}
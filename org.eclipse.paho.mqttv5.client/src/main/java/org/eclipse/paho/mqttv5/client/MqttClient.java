@@ -23,6 +23,8 @@ import java.util.concurrent.ScheduledExecutorService;
 
 import javax.net.SocketFactory;
 
+import org.eclipse.paho.mqttv5.client.codec.MqttPayloadCodec;
+import org.eclipse.paho.mqttv5.client.metrics.LatencyHistogram;
 import org.eclipse.paho.mqttv5.client.persist.MqttDefaultFilePersistence;
 import org.eclipse.paho.mqttv5.client.util.Debug;
 import org.eclipse.paho.mqttv5.common.MqttException;
@@ -718,6 +720,53 @@ public class MqttClient implements IMqttClient {
 		aClient.setManualAcks(manualAcks);
 	}
 
+	/**
+	 * Sets a callback that receives the payload of large inbound messages as a
+	 * stream while it is read from the network.
+	 *
+	 * @param callback
+	 *            the streaming callback, or null to stop streaming
+	 * @param minimumPacketSize
+	 *            the packet size in bytes from which payloads are streamed
+	 * @see MqttAsyncClient#setStreamingCallback(MqttStreamingCallback, int)
+	 */
+	public void setStreamingCallback(MqttStreamingCallback callback, int minimumPacketSize) {
+		aClient.setStreamingCallback(callback, minimumPacketSize);
+	}
+
+	/**
+	 * Sets a codec that encodes the payload of messages published by this
+	 * client, and decodes received payloads encoded with the same codec.
+	 *
+	 * @param codec
+	 *            the payload codec, or null to send and deliver payloads
+	 *            unchanged
+	 * @see MqttAsyncClient#setPayloadCodec(MqttPayloadCodec)
+	 */
+	public void setPayloadCodec(MqttPayloadCodec codec) {
+		aClient.setPayloadCodec(codec);
+	}
+
+	/**
+	 * Switches end to end latency tracing on or off.
+	 *
+	 * @param enabled
+	 *            whether to trace latency
+	 * @see MqttAsyncClient#setLatencyTracing(boolean)
+	 */
+	public void setLatencyTracing(boolean enabled) {
+		aClient.setLatencyTracing(enabled);
+	}
+
+	/**
+	 * @return the histogram of the latencies of received messages, or null if
+	 *         latency tracing has never been switched on
+	 * @see MqttAsyncClient#getEndToEndLatency()
+	 */
+	public LatencyHistogram getEndToEndLatency() {
+		return aClient.getEndToEndLatency();
+	}
+
 	public void messageArrivedComplete(int messageId, int qos) throws MqttException {
 		aClient.messageArrivedComplete(messageId, qos);
 	}
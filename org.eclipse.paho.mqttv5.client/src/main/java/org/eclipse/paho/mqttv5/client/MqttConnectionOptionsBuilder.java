@@ -32,6 +32,11 @@ public class MqttConnectionOptionsBuilder {
 		return this;
 	}
 
+	public MqttConnectionOptionsBuilder parallelConnect(boolean enabled) {
+		mqttConnectionOptions.setParallelConnect(enabled);
+		return this;
+	}
+
 	public MqttConnectionOptionsBuilder keepAliveInterval(int keepAlive) {
 		mqttConnectionOptions.setKeepAliveInterval(keepAlive);
 		return this;
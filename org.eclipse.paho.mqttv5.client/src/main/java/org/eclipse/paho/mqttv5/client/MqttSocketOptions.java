@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - socket tuning options
+ */
+package org.eclipse.paho.mqttv5.client;
+
+/**
+ * Holds the set of options applied to the socket of a TCP based connection,
+ * which covers <code>tcp://</code>, <code>ssl://</code>, <code>ws://</code>
+ * and <code>wss://</code> server URIs.
+ * <p>
+ * Options left at their defaults are not set on the socket, so the platform
+ * defaults apply. The options are applied before the socket is connected, so
+ * that the buffer sizes can be taken into account when the TCP window is
+ * negotiated.
+ * </p>
+ */
+public class MqttSocketOptions {
+
+	/**
+	 * The default read timeout in milliseconds
+	 */
+	public static final int READ_TIMEOUT_DEFAULT = 1000;
+
+	/**
+	 * The value of a buffer size or traffic class that leaves the platform
+	 * default in place
+	 */
+	public static final int SYSTEM_DEFAULT = -1;
+
+	private boolean tcpNoDelay = false;
+	private boolean keepAlive = false;
+	private int sendBufferSize = SYSTEM_DEFAULT;
+	private int receiveBufferSize = SYSTEM_DEFAULT;
+	private int trafficClass = SYSTEM_DEFAULT;
+	private int readTimeout = READ_TIMEOUT_DEFAULT;
+
+	/**
+	 * Constructs a new <code>MqttSocketOptions</code> object using the
+	 * default values.
+	 *
+	 * The defaults are:
+	 * <ul>
+	 * <li>Nagle's algorithm is used (TCP_NODELAY is off)</li>
+	 * <li>TCP keepalive probes are not sent</li>
+	 * <li>The platform's send and receive buffer sizes and traffic class are
+	 * used</li>
+	 * <li>Reads from the socket time out after 1 second</li>
+	 * </ul>
+	 * More information about these values can be found in the setter methods.
+	 */
+	public MqttSocketOptions() {
+		// Do Nothing.
+	}
+
+	public boolean isTcpNoDelay() {
+		return tcpNoDelay;
+	}
+
+	/**
+	 * Sets TCP_NODELAY. With it, small packets such as acknowledgements and
+	 * pings are sent at once instead of being held back while earlier data is
+	 * unacknowledged, which lowers latency at the cost of more packets.
+	 *
+	 * @param tcpNoDelay
+	 *            true to disable Nagle's algorithm
+	 */
+	public void setTcpNoDelay(boolean tcpNoDelay) {
+		this.tcpNoDelay = tcpNoDelay;
+	}
+
+	public boolean isKeepAlive() {
+		return keepAlive;
+	}
+
+	/**
+	 * Sets SO_KEEPALIVE, so that the operating system probes an idle
+	 * connection. This is independent of the MQTT keep alive interval.
+	 *
+	 * @param keepAlive
+	 *            true to send TCP keepalive probes
+	 */
+	public void setKeepAlive(boolean keepAlive) {
+		this.keepAlive = keepAlive;
+	}
+
+	public int getSendBufferSize() {
+		return sendBufferSize;
+	}
+
+	/**
+	 * Sets SO_SNDBUF. Links with a large bandwidth-delay product need buffers
+	 * larger than the platform default to be used fully.
+	 *
+	 * @param sendBufferSize
+	 *            the size in bytes, or {@link #SYSTEM_DEFAULT}
+	 * @throws IllegalArgumentException
+	 *             if the size is neither positive nor {@link #SYSTEM_DEFAULT}
+	 */
+	public void setSendBufferSize(int sendBufferSize) {
+		if (sendBufferSize < 1 && sendBufferSize != SYSTEM_DEFAULT) {
+			throw new IllegalArgumentException();
+		}
+		this.sendBufferSize = sendBufferSize;
+	}
+
+	public int getReceiveBufferSize() {
+		return receiveBufferSize;
+	}
+
+	/**
+	 * Sets SO_RCVBUF. Links with a large bandwidth-delay product need buffers
+	 * larger than the platform default to be used fully.
+	 *
+	 * @param receiveBufferSize
+	 *            the size in bytes, or {@link #SYSTEM_DEFAULT}
+	 * @throws IllegalArgumentException
+	 *             if the size is neither positive nor {@link #SYSTEM_DEFAULT}
+	 */
+	public void setReceiveBufferSize(int receiveBufferSize) {
+		if (receiveBufferSize < 1 && receiveBufferSize != SYSTEM_DEFAULT) {
+			throw new IllegalArgumentException();
+		}
+		this.receiveBufferSize = receiveBufferSize;
+	}
+
+	public int getTrafficClass() {
+		return trafficClass;
+	}
+
+	/**
+	 * Sets IP_TOS, the type of service or traffic class octet of the IP
+	 * packets sent, for example 0x10 for low delay or a DSCP value shifted
+	 * left by two bits. Networks may ignore it.
+	 *
+	 * @param trafficClass
+	 *            a value from 0 to 255, or {@link #SYSTEM_DEFAULT}
+	 * @throws IllegalArgumentException
+	 *             if the value is out of range
+	 */
+	public void setTrafficClass(int trafficClass) {
+		if ((trafficClass < 0 || trafficClass > 255) && trafficClass != SYSTEM_DEFAULT) {
+			throw new IllegalArgumentException();
+		}
+		this.trafficClass = trafficClass;
+	}
+
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	/**
+	 * Sets how long, in milliseconds, a read from the socket waits for data
+	 * before the receiving thread wakes up to check whether it should stop.
+	 * A value of 0 lets reads wait until data arrives, so an idle connection
+	 * costs no wake ups at all; the connection is then shut down by closing
+	 * the socket, which ends the read.
+	 *
+	 * @param readTimeout
+	 *            the timeout in milliseconds, or 0 to wait indefinitely
+	 * @throws IllegalArgumentException
+	 *             if the value is negative
+	 */
+	public void setReadTimeout(int readTimeout) {
+		if (readTimeout < 0) {
+			throw new IllegalArgumentException();
+		}
+		this.readTimeout = readTimeout;
+	}
+
+	public String toString() {
+		return "tcpNoDelay=" + tcpNoDelay + ", keepAlive=" + keepAlive + ", sendBufferSize=" + sendBufferSize
+				+ ", receiveBufferSize=" + receiveBufferSize + ", trafficClass=" + trafficClass + ", readTimeout="
+				+ readTimeout;
+	}
+}
@@ -110,8 +110,8 @@ public class MqttTopic {
 	/**
 	 * Create a PUBLISH packet from the specified message.
 	 */
-	private MqttPublish createPublish(MqttMessage message, MqttProperties properties) {
-		return new MqttPublish(this.getName(), message, properties);
+	private MqttPublish createPublish(MqttMessage message, MqttProperties properties) throws MqttException {
+		return comms.createPublish(this.getName(), message, properties);
 	}
 
 	/**
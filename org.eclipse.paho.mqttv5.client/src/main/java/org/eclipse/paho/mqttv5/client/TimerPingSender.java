@@ -61,7 +61,9 @@ public class TimerPingSender implements MqttPingSender{
 		final String methodName = "start";
 
 		//@Trace 659=start timer for client:{0}
-		log.fine(CLASS_NAME, methodName, "659", new Object[]{ clientid });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "659", new Object[]{ clientid });
+		}
 		if (executorService == null) {
 			timer = new Timer("MQTT Ping: " + clientid);
 			//Check ping after first keep alive interval.
@@ -101,7 +103,9 @@ public class TimerPingSender implements MqttPingSender{
 		public void run() {
 			Thread.currentThread().setName("MQTT Ping: " + clientid);
 			//@Trace 660=Check schedule at {0}
-			log.fine(CLASS_NAME, methodName, "660", new Object[]{ Long.valueOf(System.nanoTime()) });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "660", new Object[]{ Long.valueOf(System.nanoTime()) });
+			}
 			comms.checkForActivity();
 		}
 	}
@@ -113,7 +117,9 @@ public class TimerPingSender implements MqttPingSender{
 			String originalThreadName = Thread.currentThread().getName();
 			Thread.currentThread().setName("MQTT Ping: " + clientid);
 			//@Trace 660=Check schedule at {0}
-			log.fine(CLASS_NAME, methodName, "660", new Object[]{ Long.valueOf(System.nanoTime()) });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "660", new Object[]{ Long.valueOf(System.nanoTime()) });
+			}
 			comms.checkForActivity();
 			Thread.currentThread().setName(originalThreadName);
 		}
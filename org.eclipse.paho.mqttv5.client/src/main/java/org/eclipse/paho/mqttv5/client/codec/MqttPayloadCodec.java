@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - payload codecs
+ */
+package org.eclipse.paho.mqttv5.client.codec;
+
+import org.eclipse.paho.mqttv5.common.MqttException;
+
+/**
+ * Transforms message payloads as they are published and delivered, typically
+ * to compress them.
+ * <p>
+ * A codec set with
+ * {@link org.eclipse.paho.mqttv5.client.MqttAsyncClient#setPayloadCodec(MqttPayloadCodec)}
+ * encodes the payload of every message the client publishes, and marks the
+ * message with a {@link #USER_PROPERTY_NAME} user property holding the codec
+ * name. Received messages carrying the property with the same codec name are
+ * decoded before they are passed to the application, so clients that do not
+ * use the codec can still recognise encoded payloads and leave them alone.
+ * </p>
+ * <p>
+ * An encoded payload is binary, so the payload format indicator of an encoded
+ * message is cleared. If the application marked the payload as UTF-8, the
+ * message also carries a {@link #CHARSET_USER_PROPERTY_NAME} user property,
+ * and the indicator is set again when the payload is decoded.
+ * </p>
+ * <p>
+ * Implementations must be thread safe.
+ * </p>
+ */
+public interface MqttPayloadCodec {
+
+	/**
+	 * The largest payload a codec will decode, which is the largest payload an
+	 * MQTT packet can carry.
+	 */
+	int MAX_DECODED_LENGTH = 268435455;
+
+	/**
+	 * The name of the user property naming the codec of an encoded payload.
+	 */
+	String USER_PROPERTY_NAME = "content-encoding";
+
+	/**
+	 * The name of the user property recording that the payload of an encoded
+	 * message was UTF-8 before it was encoded, with the value
+	 * {@link #CHARSET_UTF8}.
+	 */
+	String CHARSET_USER_PROPERTY_NAME = "content-charset";
+
+	/**
+	 * The value of the {@link #CHARSET_USER_PROPERTY_NAME} user property.
+	 */
+	String CHARSET_UTF8 = "utf-8";
+
+	/**
+	 * @return the name of the codec, such as "deflate"
+	 */
+	String getName();
+
+	/**
+	 * Encodes a payload.
+	 * @param payload the array holding the payload
+	 * @param offset the offset of the payload in the array
+	 * @param length the length of the payload
+	 * @return the encoded payload
+	 * @throws MqttException if the payload could not be encoded
+	 */
+	byte[] encode(byte[] payload, int offset, int length) throws MqttException;
+
+	/**
+	 * Decodes a payload produced by {@link #encode(byte[], int, int)}.
+	 * @param payload the array holding the encoded payload
+	 * @param offset the offset of the encoded payload in the array
+	 * @param length the length of the encoded payload
+	 * @return the decoded payload
+	 * @throws MqttException if the payload is not valid for this codec
+	 */
+	byte[] decode(byte[] payload, int offset, int length) throws MqttException;
+}
@@ -19,10 +19,13 @@ package org.eclipse.paho.mqttv5.client.internal;
  *    James Sutton - checkForActivity Token (bug 473928)
  *    James Sutton - Automatic Reconnect & Offline Buffering.
  */
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Properties;
 import java.util.Vector;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
 
 import org.eclipse.paho.mqttv5.client.BufferedMessage;
 import org.eclipse.paho.mqttv5.client.IMqttMessageListener;
@@ -33,20 +36,26 @@ import org.eclipse.paho.mqttv5.client.MqttClientInterface;
 import org.eclipse.paho.mqttv5.client.MqttClientPersistence;
 import org.eclipse.paho.mqttv5.client.MqttConnectionOptions;
 import org.eclipse.paho.mqttv5.client.MqttPingSender;
+import org.eclipse.paho.mqttv5.client.MqttStreamingCallback;
 import org.eclipse.paho.mqttv5.client.MqttToken;
 import org.eclipse.paho.mqttv5.client.MqttTopic;
 import org.eclipse.paho.mqttv5.client.TimerPingSender;
+import org.eclipse.paho.mqttv5.client.codec.MqttPayloadCodec;
 import org.eclipse.paho.mqttv5.client.logging.Logger;
 import org.eclipse.paho.mqttv5.client.logging.LoggerFactory;
+import org.eclipse.paho.mqttv5.client.metrics.LatencyTracer;
+import org.eclipse.paho.mqttv5.common.MqttBuffer;
 import org.eclipse.paho.mqttv5.common.MqttException;
 import org.eclipse.paho.mqttv5.common.MqttMessage;
 import org.eclipse.paho.mqttv5.common.MqttPersistenceException;
+import org.eclipse.paho.mqttv5.common.MqttStreamingMessage;
 import org.eclipse.paho.mqttv5.common.packet.MqttConnAck;
 import org.eclipse.paho.mqttv5.common.packet.MqttConnect;
 import org.eclipse.paho.mqttv5.common.packet.MqttDisconnect;
 import org.eclipse.paho.mqttv5.common.packet.MqttProperties;
 import org.eclipse.paho.mqttv5.common.packet.MqttPublish;
 import org.eclipse.paho.mqttv5.common.packet.MqttWireMessage;
+import org.eclipse.paho.mqttv5.common.packet.UserProperty;
 
 /**
  * Handles client communications with the server. Sends and receives MQTT V5
@@ -75,6 +84,9 @@ public class ClientComms {
 	private MqttClientPersistence persistence;
 	private MqttPingSender pingSender;
 	private CommsTokenStore tokenStore;
+	private MqttPayloadCodec payloadCodec;
+	private volatile boolean latencyTracing = false;
+	private volatile LatencyTracer latencyTracer;
 	private boolean stoppingComms = false;
 
 	private byte conState = DISCONNECTED;
@@ -83,6 +95,7 @@ public class ClientComms {
 	private boolean resting = false;
 	private DisconnectedMessageBuffer disconnectedMessageBuffer;
 	private ExecutorService executorService;
+	private ThreadFactory threadFactory;
 	private MqttConnectionState mqttConnection;
 
 	/**
@@ -122,6 +135,34 @@ public class ClientComms {
 		log.setResourceName(getClient().getClientId());
 	}
 
+	/**
+	 * Creates a thread for the client's work, from the thread factory of the
+	 * connection options if there is one.
+	 * 
+	 * @param task
+	 *            the work of the thread
+	 * @return the thread, not yet started
+	 */
+	Thread newThread(Runnable task) {
+		ThreadFactory factory = threadFactory;
+		return (factory == null) ? new Thread(task) : factory.newThread(task);
+	}
+
+	private ThreadFactory createThreadFactory(MqttConnectionOptions options) {
+		final String methodName = "createThreadFactory";
+		if (options.getThreadFactory() != null) {
+			return options.getThreadFactory();
+		}
+		if (options.isVirtualThreads()) {
+			if (VirtualThreads.isSupported()) {
+				return VirtualThreads.factory();
+			}
+			// @TRACE 259=virtual threads are not available, using platform threads
+			log.fine(CLASS_NAME, methodName, "259");
+		}
+		return null;
+	}
+
 	CommsReceiver getReceiver() {
 		return receiver;
 	}
@@ -137,7 +178,9 @@ public class ClientComms {
 	void internalSend(MqttWireMessage message, MqttToken token) throws MqttException {
 		final String methodName = "internalSend";
 		// @TRACE 200=internalSend key={0} message={1} token={2}
-		log.fine(CLASS_NAME, methodName, "200", new Object[] { message.getKey(), message, token });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "200", new Object[] { message.getKey(), message, token });
+		}
 
 		if (token.getClient() == null) {
 			// Associate the client with the token - also marks it as in use.
@@ -145,7 +188,9 @@ public class ClientComms {
 		} else {
 			// Token is already in use - cannot reuse
 			// @TRACE 213=fail: token in use: key={0} message={1} token={2}
-			log.fine(CLASS_NAME, methodName, "213", new Object[] { message.getKey(), message, token });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "213", new Object[] { message.getKey(), message, token });
+			}
 
 			throw new MqttException(MqttClientException.REASON_CODE_TOKEN_INUSE);
 		}
@@ -182,7 +227,9 @@ public class ClientComms {
 			if (disconnectedMessageBuffer != null && disconnectedMessageBuffer.getMessageCount() != 0) {
 				// @TRACE 507=Client Connected, Offline Buffer available, but not empty. Adding
 				// message to buffer. message={0}
-				log.fine(CLASS_NAME, methodName, "507", new Object[] { message.getKey() });
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME, methodName, "507", new Object[] { message.getKey() });
+				}
 				// If the message is a publish, strip the topic alias:
 				if(message instanceof MqttPublish && message.getProperties().getTopicAlias()!= null) {
 					MqttProperties messageProps = message.getProperties();
@@ -197,30 +244,16 @@ public class ClientComms {
 			} else {
 
 				if (message instanceof MqttPublish) {
-					// Override the QoS if the server has set a maximum
-					if (this.mqttConnection.getMaximumQoS() != null
-							&& ((MqttPublish) message).getMessage().getQos() > this.mqttConnection.getMaximumQoS()) {
-						MqttMessage mqttMessage = ((MqttPublish) message).getMessage();
-						mqttMessage.setQos(this.mqttConnection.getMaximumQoS());
-						((MqttPublish) message).setMessage(mqttMessage);
-					}
-
-					// Override the Retain flag if the server has disabled it
-					if (this.mqttConnection.isRetainAvailable() != null
-							&& ((MqttPublish) message).getMessage().isRetained()
-							&& (this.mqttConnection.isRetainAvailable() == false)) {
-						MqttMessage mqttMessage = ((MqttPublish) message).getMessage();
-						mqttMessage.setRetained(false);
-						((MqttPublish) message).setMessage(mqttMessage);
-					}
-
+					applyServerLimits((MqttPublish) message);
 				}
 				this.internalSend(message, token);
 			}
 		} else if (disconnectedMessageBuffer != null && isResting()) {
 			// @TRACE 508=Client Resting, Offline Buffer available. Adding message to
 			// buffer. message={0}
-			log.fine(CLASS_NAME, methodName, "508", new Object[] { message.getKey() });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "508", new Object[] { message.getKey() });
+			}
 			if (disconnectedMessageBuffer.isPersistBuffer()) {
 				this.clientState.persistBufferedMessage(message);
 			}
@@ -232,6 +265,89 @@ public class ClientComms {
 		}
 	}
 
+	/**
+	 * Overrides the QoS and retain flag of an outbound publish where the server
+	 * has limited them.
+	 * 
+	 * @param message
+	 *            the message to be sent
+	 */
+	private void applyServerLimits(MqttPublish message) {
+		// Override the QoS if the server has set a maximum
+		if (this.mqttConnection.getMaximumQoS() != null
+				&& message.getMessage().getQos() > this.mqttConnection.getMaximumQoS()) {
+			MqttMessage mqttMessage = message.getMessage();
+			mqttMessage.setQos(this.mqttConnection.getMaximumQoS());
+			message.setMessage(mqttMessage);
+		}
+
+		// Override the Retain flag if the server has disabled it
+		if (this.mqttConnection.isRetainAvailable() != null && message.getMessage().isRetained()
+				&& (this.mqttConnection.isRetainAvailable() == false)) {
+			MqttMessage mqttMessage = message.getMessage();
+			mqttMessage.setRetained(false);
+			message.setMessage(mqttMessage);
+		}
+	}
+
+	/**
+	 * Sends a batch of publish messages, waiting only for them to be queued.
+	 * <p>
+	 * When connected with nothing held in the disconnected buffer the batch is
+	 * queued in one step, and either all or none of the messages are queued.
+	 * Otherwise each message takes the same path as {@link #sendNoWait}; if
+	 * one of them fails after others were buffered, it and the rest of the
+	 * batch are completed with the exception instead of it being thrown.
+	 * </p>
+	 * 
+	 * @param messages
+	 *            the messages to send
+	 * @param tokens
+	 *            the tokens tracking each message, in the same order
+	 * @throws MqttException
+	 *             if an error occurs sending the messages
+	 */
+	public void sendBatchNoWait(MqttPublish[] messages, MqttToken[] tokens) throws MqttException {
+		if (!isConnected() || (disconnectedMessageBuffer != null && disconnectedMessageBuffer.getMessageCount() != 0)) {
+			for (int i = 0; i < messages.length; i++) {
+				try {
+					sendNoWait(messages[i], tokens[i]);
+				} catch (MqttException e) {
+					if (i == 0) {
+						throw e;
+					}
+					for (int j = i; j < tokens.length; j++) {
+						tokens[j].internalTok.markComplete(null, e);
+						tokens[j].internalTok.notifyComplete();
+						tokens[j].internalTok.releasePayload();
+						if (tokens[j].getActionCallback() != null) {
+							tokens[j].getActionCallback().onFailure(tokens[j], e);
+						}
+					}
+					return;
+				}
+			}
+			return;
+		}
+		for (int i = 0; i < tokens.length; i++) {
+			if (tokens[i].getClient() != null) {
+				throw new MqttException(MqttClientException.REASON_CODE_TOKEN_INUSE);
+			}
+		}
+		for (int i = 0; i < messages.length; i++) {
+			applyServerLimits(messages[i]);
+			tokens[i].internalTok.setClient(getClient());
+		}
+		try {
+			this.clientState.sendBatch(messages, tokens);
+		} catch (MqttException e) {
+			for (int i = 0; i < tokens.length; i++) {
+				tokens[i].internalTok.setClient(null);
+			}
+			throw e;
+		}
+	}
+
 	/**
 	 * Close and tidy up.
 	 *
@@ -302,6 +418,7 @@ public class ClientComms {
 				conState = CONNECTING;
 
 				conOptions = options;
+				threadFactory = createThreadFactory(options);
 
 				MqttConnect connect = new MqttConnect(client.getClientId(), conOptions.getMqttVersion(),
 						conOptions.isCleanStart(), conOptions.getKeepAliveInterval(),
@@ -334,7 +451,9 @@ public class ClientComms {
 				conbg.start();
 			} else {
 				// @TRACE 207=connect failed: not disconnected {0}
-				log.fine(CLASS_NAME, methodName, "207", new Object[] { Byte.valueOf(conState) });
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME, methodName, "207", new Object[] { Byte.valueOf(conState) });
+				}
 				if (isClosed() || closePending) {
 					throw new MqttException(MqttClientException.REASON_CODE_CLIENT_CLOSED);
 				} else if (isConnecting()) {
@@ -363,10 +482,28 @@ public class ClientComms {
 		}
 
 		// @TRACE 204=connect failed: rc={0}
-		log.fine(CLASS_NAME, methodName, "204", new Object[] { Integer.valueOf(rc) });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "204", new Object[] { Integer.valueOf(rc) });
+		}
 		throw mex;
 	}
 
+	/**
+	 * Stops the network module, send and receive now not possible.
+	 */
+	private void stopNetworkModule() {
+		try {
+			if (networkModules != null) {
+				NetworkModule networkModule = networkModules[networkModuleIndex];
+				if (networkModule != null) {
+					networkModule.stop();
+				}
+			}
+		} catch (Exception ioe) {
+			// Ignore as we are shutting down
+		}
+	}
+
 	/**
 	 * Shuts down the connection to the server. This may have been invoked as a
 	 * result of a user calling disconnect or an abnormal disconnection. The method
@@ -415,21 +552,21 @@ public class ClientComms {
 			callback.stop();
 		}
 
+		// Without a read timeout the receiver only notices that it is
+		// stopping once the network module is closed
+		boolean blockingRead = (conOptions != null && conOptions.getSocketOptions().getReadTimeout() == 0);
+		if (blockingRead) {
+			stopNetworkModule();
+		}
+
 		// Stop the thread that handles inbound work from the network
 		if (receiver != null) {
 			receiver.stop();
 		}
 
 		// Stop the network module, send and receive now not possible
-		try {
-			if (networkModules != null) {
-				NetworkModule networkModule = networkModules[networkModuleIndex];
-				if (networkModule != null) {
-					networkModule.stop();
-				}
-			}
-		} catch (Exception ioe) {
-			// Ignore as we are shutting down
+		if (!blockingRead) {
+			stopNetworkModule();
 		}
 
 		// Stop any new tokens being saved by app and throwing an exception if they do
@@ -664,6 +801,120 @@ public class ClientComms {
 		this.callback.setManualAcks(manualAcks);
 	}
 
+	public void setStreamingCallback(MqttStreamingCallback streamingCallback, int streamingThreshold) {
+		this.clientState.setStreamingCallback(streamingCallback, streamingThreshold);
+	}
+
+	public void setPayloadCodec(MqttPayloadCodec payloadCodec) {
+		this.payloadCodec = payloadCodec;
+	}
+
+	public MqttPayloadCodec getPayloadCodec() {
+		return payloadCodec;
+	}
+
+	/**
+	 * Switches the stamping and measuring of end to end latency on or off,
+	 * keeping the latencies measured so far.
+	 * 
+	 * @param enabled
+	 *            whether to trace latency
+	 */
+	public synchronized void setLatencyTracing(boolean enabled) {
+		if (enabled && latencyTracer == null) {
+			latencyTracer = new LatencyTracer();
+		}
+		latencyTracing = enabled;
+	}
+
+	public boolean isLatencyTracing() {
+		return latencyTracing;
+	}
+
+	/**
+	 * @return the latency tracer, or null if latency tracing has never been
+	 *         switched on
+	 */
+	public LatencyTracer getLatencyTracer() {
+		return latencyTracer;
+	}
+
+	/**
+	 * Creates the PUBLISH packet for a message published by the application.
+	 * If a payload codec is set and encoding makes the payload smaller, the
+	 * packet carries the encoded payload and a user property naming the codec.
+	 * If latency tracing is on, the packet carries a user property holding the
+	 * time, unless the message already has one. The application's message and
+	 * properties are left unchanged. Streamed payloads are never encoded.
+	 * 
+	 * @param topic
+	 *            the topic to publish to
+	 * @param message
+	 *            the message the application is publishing
+	 * @param properties
+	 *            the publish properties, or null
+	 * @return the packet to send
+	 * @throws MqttException
+	 *             if the codec fails to encode the payload
+	 */
+	public MqttPublish createPublish(String topic, MqttMessage message, MqttProperties properties)
+			throws MqttException {
+		MqttPayloadCodec codec = payloadCodec;
+		boolean stamp = latencyTracing && LatencyTracer.getPublishTime(properties) < 0;
+		byte[] encoded = null;
+		if (codec != null && !(message instanceof MqttStreamingMessage)) {
+			int length;
+			MqttBuffer buffer = message.getPayloadBuffer();
+			if (buffer != null && buffer.hasArray()) {
+				length = buffer.length();
+				encoded = codec.encode(buffer.array(), buffer.arrayOffset(), length);
+			} else {
+				byte[] payload = message.getPayload();
+				length = payload.length;
+				encoded = codec.encode(payload, 0, length);
+			}
+			if (encoded.length >= length) {
+				encoded = null;
+			}
+		}
+		if (encoded == null && !stamp) {
+			return new MqttPublish(topic, message, properties);
+		}
+
+		MqttProperties sentProperties = new MqttProperties();
+		List<UserProperty> userProperties = new ArrayList<>();
+		if (properties != null) {
+			sentProperties.setPayloadFormat(properties.getPayloadFormat());
+			sentProperties.setMessageExpiryInterval(properties.getMessageExpiryInterval());
+			sentProperties.setTopicAlias(properties.getTopicAlias());
+			sentProperties.setResponseTopic(properties.getResponseTopic());
+			sentProperties.setCorrelationData(properties.getCorrelationData());
+			sentProperties.setContentType(properties.getContentType());
+			sentProperties.setSubscriptionIdentifiers(properties.getSubscriptionIdentifiers());
+			userProperties.addAll(properties.getUserProperties());
+		}
+		if (encoded != null) {
+			// the encoded payload is binary, whatever the application's was
+			if (sentProperties.getPayloadFormat()) {
+				sentProperties.setPayloadFormat(false);
+				userProperties.add(new UserProperty(MqttPayloadCodec.CHARSET_USER_PROPERTY_NAME,
+						MqttPayloadCodec.CHARSET_UTF8));
+			}
+			userProperties.add(new UserProperty(MqttPayloadCodec.USER_PROPERTY_NAME, codec.getName()));
+		}
+		if (stamp) {
+			userProperties.add(new UserProperty(LatencyTracer.USER_PROPERTY_NAME,
+					LatencyTracer.format(LatencyTracer.currentTimeMicros())));
+		}
+		sentProperties.setUserProperties(userProperties);
+		if (encoded == null) {
+			return new MqttPublish(topic, message, sentProperties);
+		}
+		MqttMessage encodedMessage = new MqttMessage(encoded, message.getQos(), message.isRetained(),
+				sentProperties);
+		return new MqttPublish(topic, encodedMessage, sentProperties);
+	}
+
 	public void messageArrivedComplete(int messageId, int qos) throws MqttException {
 		this.callback.messageArrivedComplete(messageId, qos);
 	}
@@ -712,6 +963,21 @@ public class ClientComms {
 		return client;
 	}
 
+	/**
+	 * Runs work in the background, on the client's executor service if it
+	 * was created with one, otherwise on a thread of its own.
+	 * 
+	 * @param task
+	 *            the work
+	 */
+	void execute(Runnable task) {
+		if (executorService == null) {
+			newThread(task).start();
+		} else {
+			executorService.execute(task);
+		}
+	}
+
 	public long getKeepAlive() {
 		return this.mqttConnection.getKeepAlive();
 	}
@@ -751,7 +1017,7 @@ public class ClientComms {
 
 		void start() {
 			if (executorService == null) {
-				new Thread(this).start();
+				newThread(this).start();
 			} else {
 				executorService.execute(this);
 			}
@@ -821,7 +1087,7 @@ public class ClientComms {
 		void start() {
 			threadName = "MQTT Disc: "+getClient().getClientId();
 			if (executorService == null) {
-				new Thread(this).start();
+				newThread(this).start();
 			} else {
 				executorService.execute(this);
 			}
@@ -936,7 +1202,7 @@ public class ClientComms {
 
 			disconnectedMessageBuffer.setPublishCallback(new ReconnectDisconnectedBufferCallback(methodName));
 			if (executorService == null) {
-				new Thread(disconnectedMessageBuffer).start();
+				newThread(disconnectedMessageBuffer).start();
 			} else {
 				executorService.execute(disconnectedMessageBuffer);
 			}
@@ -954,7 +1220,9 @@ public class ClientComms {
 		public void publishBufferedMessage(BufferedMessage bufferedMessage) throws MqttException {
 			if (isConnected()) {
 				// @TRACE 510=Publising Buffered message message={0}
-				log.fine(CLASS_NAME, methodName, "510", new Object[] { bufferedMessage.getMessage().getKey() });
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME, methodName, "510", new Object[] { bufferedMessage.getMessage().getKey() });
+				}
 				internalSend(bufferedMessage.getMessage(), bufferedMessage.getToken());
 				// Delete from persistence if in there
 				clientState.unPersistBufferedMessage(bufferedMessage.getMessage());
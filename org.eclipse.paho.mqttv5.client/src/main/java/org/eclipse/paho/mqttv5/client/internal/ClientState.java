@@ -23,20 +23,33 @@
 package org.eclipse.paho.mqttv5.client.internal;
 
 import java.io.EOFException;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.eclipse.paho.mqttv5.client.MqttActionListener;
+import org.eclipse.paho.mqttv5.client.MqttBatchPersistence;
 import org.eclipse.paho.mqttv5.client.MqttClientException;
 import org.eclipse.paho.mqttv5.client.MqttClientPersistence;
+import org.eclipse.paho.mqttv5.client.MqttConcurrentPersistence;
 import org.eclipse.paho.mqttv5.client.MqttPingSender;
+import org.eclipse.paho.mqttv5.client.MqttStreamingCallback;
 import org.eclipse.paho.mqttv5.client.MqttToken;
 import org.eclipse.paho.mqttv5.client.logging.Logger;
 import org.eclipse.paho.mqttv5.client.logging.LoggerFactory;
+import org.eclipse.paho.mqttv5.common.MqttBufferPool;
 import org.eclipse.paho.mqttv5.common.MqttException;
 import org.eclipse.paho.mqttv5.common.MqttMessage;
 import org.eclipse.paho.mqttv5.common.MqttPersistable;
@@ -125,8 +138,12 @@ public class ClientState implements MqttState {
 	private int actualInFlight = 0;
 	private int inFlightPubRels = 0;
 
-	private final Object queueLock = new Object();
-	private final Object quiesceLock = new Object();
+	// Locks rather than monitors, so that comms threads that wait for work
+	// do not pin the carrier of a virtual thread
+	private final ReentrantLock queueLock = new ReentrantLock();
+	private final Condition workAvailable = queueLock.newCondition();
+	private final ReentrantLock quiesceLock = new ReentrantLock();
+	private final Condition quiesced = quiesceLock.newCondition();
 	private boolean quiescing = false;
 
 	private long lastOutboundActivity = 0;
@@ -148,6 +165,9 @@ public class ClientState implements MqttState {
 	// Topic Alias Maps
 	private Hashtable<String, Integer> outgoingTopicAliases;
 	private Hashtable<Integer, String> incomingTopicAliases;
+	private MqttStreamingCallback streamingCallback = null;
+	private int streamingThreshold = Integer.MAX_VALUE;
+	private PersistenceWriter persistenceWriter = null; // guarded by queueLock
 
 	private MqttConnectionState mqttConnection;
 
@@ -214,6 +234,7 @@ public class ClientState implements MqttState {
 		// @TRACE 603=clearState
 		log.fine(CLASS_NAME, methodName, ">");
 
+		cancelPersistence();
 		persistence.clear();
 		inUseMsgIds.clear();
 		pendingMessages.clear();
@@ -222,6 +243,7 @@ public class ClientState implements MqttState {
 		outboundQoS1.clear();
 		outboundQoS0.clear();
 		inboundQoS2.clear();
+		releasePayloads();
 		tokenStore.clear();
 		outgoingTopicAliases.clear();
 		incomingTopicAliases.clear();
@@ -236,6 +258,16 @@ public class ClientState implements MqttState {
 
 	}
 
+	/**
+	 * Hands back the pooled payloads of the tokens about to be dropped, whose
+	 * messages will not be sent again.
+	 */
+	private void releasePayloads() {
+		for (MqttToken token : tokenStore.getOutstandingTokens()) {
+			token.internalTok.releasePayload();
+		}
+	}
+
 	private MqttWireMessage restoreMessage(String key, MqttPersistable persistable) throws MqttException {
 		final String methodName = "restoreMessage";
 		MqttWireMessage message = null;
@@ -244,7 +276,9 @@ public class ClientState implements MqttState {
 			message = MqttWireMessage.createWireMessage(persistable);
 		} catch (MqttException ex) {
 			// @TRACE 602=key={0} exception
-			log.fine(CLASS_NAME, methodName, "602", new Object[] { key }, ex);
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "602", new Object[] { key }, ex);
+			}
 			if (ex.getCause() instanceof EOFException) {
 				// Premature end-of-file means that the message is corrupted
 				if (key != null) {
@@ -255,30 +289,38 @@ public class ClientState implements MqttState {
 			}
 		}
 		// @TRACE 601=key={0} message={1}
-		log.fine(CLASS_NAME, methodName, "601", new Object[] { key, message });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "601", new Object[] { key, message });
+		}
 		return message;
 	}
 
 	/**
-	 * Inserts a new message to the list, ensuring that list is ordered from lowest
-	 * to highest in terms of the message id's.
+	 * Orders a list of messages from the lowest to the highest message id.
 	 * 
 	 * @param list
-	 *            the list to insert the message into
-	 * @param newMsg
-	 *            the message to insert into the list
+	 *            the list to sort
 	 */
-	private void insertInOrder(Vector<MqttWireMessage> list, MqttWireMessage newMsg) {
-		int newMsgId = newMsg.getMessageId();
-		for (int i = 0; i < list.size(); i++) {
-			MqttWireMessage otherMsg = (MqttWireMessage) list.elementAt(i);
-			int otherMsgId = otherMsg.getMessageId();
-			if (otherMsgId > newMsgId) {
-				list.insertElementAt(newMsg, i);
-				return;
+	private void sortById(Vector<MqttWireMessage> list) {
+		Collections.sort(list, new Comparator<MqttWireMessage>() {
+			public int compare(MqttWireMessage first, MqttWireMessage second) {
+				return Integer.compare(first.getMessageId(), second.getMessageId());
 			}
-		}
-		list.addElement(newMsg);
+		});
+	}
+
+	/**
+	 * Reads a persisted message and decodes it. Called by the threads of a
+	 * {@link PersistenceReader} while the state is restored.
+	 * 
+	 * @param key
+	 *            the key of the message
+	 * @return the message, or null if it was corrupt and has been removed
+	 * @throws MqttException
+	 *             if the message could not be read
+	 */
+	MqttWireMessage readMessage(String key) throws MqttException {
+		return restoreMessage(key, persistence.get(key));
 	}
 
 	/**
@@ -334,7 +376,10 @@ public class ClientState implements MqttState {
 	}
 
 	/**
-	 * Restores the state information from persistence.
+	 * Restores the state information from persistence. The persisted messages
+	 * are read and decoded by a {@link PersistenceReader}, in parallel if the
+	 * persistence is a {@link MqttConcurrentPersistence}, and each is then
+	 * filed in the tables in turn.
 	 * 
 	 * @throws MqttException
 	 *             if an exception occurs whilst restoring state
@@ -342,42 +387,64 @@ public class ClientState implements MqttState {
 	protected void restoreState() throws MqttException {
 		final String methodName = "restoreState";
 		Enumeration<String> messageKeys = persistence.keys();
-		MqttPersistable persistable;
 		String key;
 		int highestMsgId = nextMsgId;
 		Vector<String> orphanedPubRels = new Vector<String>();
 		// @TRACE 600=>
 		log.fine(CLASS_NAME, methodName, "600");
 
-		while (messageKeys.hasMoreElements()) {
-			key = (String) messageKeys.nextElement();
-			persistable = persistence.get(key);
-			MqttWireMessage message = restoreMessage(key, persistable);
+		List<String> keyList = Collections.list(messageKeys);
+		String[] keys = keyList.toArray(new String[keyList.size()]);
+		MqttWireMessage[] messages = new PersistenceReader(this, clientComms, keys,
+				persistence instanceof MqttConcurrentPersistence).read();
+		// The messages by key, without those that were corrupt and removed,
+		// to look up the confirms of sent messages without reading them again
+		Set<String> persisted = new HashSet<String>(keyList);
+		Map<String, MqttWireMessage> restored = new HashMap<String, MqttWireMessage>();
+		for (int i = 0; i < keys.length; i++) {
+			if (messages[i] != null) {
+				restored.put(keys[i], messages[i]);
+			}
+		}
+
+		for (int i = 0; i < keys.length; i++) {
+			key = keys[i];
+			MqttWireMessage message = messages[i];
 			if (message != null) {
 				if (key.startsWith(PERSISTENCE_RECEIVED_PREFIX)) {
 					// @TRACE 604=inbound QoS 2 publish key={0} message={1}
-					log.fine(CLASS_NAME, methodName, "604", new Object[] { key, message });
+					if (log.isLoggable(Logger.FINE)) {
+						log.fine(CLASS_NAME, methodName, "604", new Object[] { key, message });
+					}
 
 					// The inbound messages that we have persisted will be QoS 2
 					inboundQoS2.put(Integer.valueOf(message.getMessageId()), message);
 				} else if (key.startsWith(PERSISTENCE_SENT_PREFIX)) {
 					MqttPublish sendMessage = (MqttPublish) message;
 					highestMsgId = Math.max(sendMessage.getMessageId(), highestMsgId);
-					if (persistence.containsKey(getSendConfirmPersistenceKey(sendMessage))) {
-						MqttPersistable persistedConfirm = persistence.get(getSendConfirmPersistenceKey(sendMessage));
+					String confirmKey = getSendConfirmPersistenceKey(sendMessage);
+					if (persisted.contains(confirmKey)) {
 						// QoS 2, and CONFIRM has already been sent...
 						// NO DUP flag is allowed for 3.1.1 spec while it's not clear for 3.1 spec
 						// So we just remove DUP
-						MqttPubRel confirmMessage = (MqttPubRel) restoreMessage(key, persistedConfirm);
+						MqttPubRel confirmMessage = (MqttPubRel) restored.get(confirmKey);
+						if (confirmMessage == null) {
+							// the confirm was corrupt, so the send is removed too
+							persistence.remove(key);
+						}
 						if (confirmMessage != null) {
 							// confirmMessage.setDuplicate(true); // REMOVED
 							// @TRACE 605=outbound QoS 2 pubrel key={0} message={1}
-							log.fine(CLASS_NAME, methodName, "605", new Object[] { key, message });
+							if (log.isLoggable(Logger.FINE)) {
+								log.fine(CLASS_NAME, methodName, "605", new Object[] { key, message });
+							}
 
 							outboundQoS2.put(Integer.valueOf(confirmMessage.getMessageId()), confirmMessage);
 						} else {
 							// @TRACE 606=outbound QoS 2 completed key={0} message={1}
-							log.fine(CLASS_NAME, methodName, "606", new Object[] { key, message });
+							if (log.isLoggable(Logger.FINE)) {
+								log.fine(CLASS_NAME, methodName, "606", new Object[] { key, message });
+							}
 						}
 					} else {
 						// QoS 1 or 2, with no CONFIRM sent...
@@ -385,12 +452,16 @@ public class ClientState implements MqttState {
 						sendMessage.setDuplicate(true);
 						if (sendMessage.getMessage().getQos() == 2) {
 							// @TRACE 607=outbound QoS 2 publish key={0} message={1}
-							log.fine(CLASS_NAME, methodName, "607", new Object[] { key, message });
+							if (log.isLoggable(Logger.FINE)) {
+								log.fine(CLASS_NAME, methodName, "607", new Object[] { key, message });
+							}
 
 							outboundQoS2.put(Integer.valueOf(sendMessage.getMessageId()), sendMessage);
 						} else {
 							// @TRACE 608=outbound QoS 1 publish key={0} message={1}
-							log.fine(CLASS_NAME, methodName, "608", new Object[] { key, message });
+							if (log.isLoggable(Logger.FINE)) {
+								log.fine(CLASS_NAME, methodName, "608", new Object[] { key, message });
+							}
 
 							outboundQoS1.put(Integer.valueOf(sendMessage.getMessageId()), sendMessage);
 						}
@@ -406,17 +477,23 @@ public class ClientState implements MqttState {
 					highestMsgId = Math.max(sendMessage.getMessageId(), highestMsgId);
 					if (sendMessage.getMessage().getQos() == 2) {
 						// @TRACE 607=outbound QoS 2 publish key={0} message={1}
-						log.fine(CLASS_NAME, methodName, "607", new Object[] { key, message });
+						if (log.isLoggable(Logger.FINE)) {
+							log.fine(CLASS_NAME, methodName, "607", new Object[] { key, message });
+						}
 						outboundQoS2.put(Integer.valueOf(sendMessage.getMessageId()), sendMessage);
 					} else if (sendMessage.getMessage().getQos() == 1) {
 						// @TRACE 608=outbound QoS 1 publish key={0} message={1}
-						log.fine(CLASS_NAME, methodName, "608", new Object[] { key, message });
+						if (log.isLoggable(Logger.FINE)) {
+							log.fine(CLASS_NAME, methodName, "608", new Object[] { key, message });
+						}
 
 						outboundQoS1.put(Integer.valueOf(sendMessage.getMessageId()), sendMessage);
 
 					} else {
 						// @TRACE 511=outbound QoS 0 publish key={0} message={1}
-						log.fine(CLASS_NAME, methodName, "511", new Object[] { key, message });
+						if (log.isLoggable(Logger.FINE)) {
+							log.fine(CLASS_NAME, methodName, "511", new Object[] { key, message });
+						}
 						outboundQoS0.put(Integer.valueOf(sendMessage.getMessageId()), sendMessage);
 						// Because there is no Puback, we have to trust that this is enough to send the
 						// message
@@ -431,7 +508,7 @@ public class ClientState implements MqttState {
 
 				} else if (key.startsWith(PERSISTENCE_CONFIRMED_PREFIX)) {
 					MqttPubRel pubRelMessage = (MqttPubRel) message;
-					if (!persistence.containsKey(getSendPersistenceKey(pubRelMessage))) {
+					if (!restored.containsKey(getSendPersistenceKey(pubRelMessage))) {
 						orphanedPubRels.addElement(key);
 					}
 				}
@@ -442,7 +519,9 @@ public class ClientState implements MqttState {
 		while (messageKeys.hasMoreElements()) {
 			key = (String) messageKeys.nextElement();
 			// @TRACE 609=removing orphaned pubrel key={0}
-			log.fine(CLASS_NAME, methodName, "609", new Object[] { key });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "609", new Object[] { key });
+			}
 
 			persistence.remove(key);
 		}
@@ -461,15 +540,19 @@ public class ClientState implements MqttState {
 			MqttWireMessage msg = (MqttWireMessage) outboundQoS2.get(key);
 			if (msg instanceof MqttPublish) {
 				// @TRACE 610=QoS 2 publish key={0}
-				log.fine(CLASS_NAME, methodName, "610", new Object[] { key });
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME, methodName, "610", new Object[] { key });
+				}
 				// set DUP flag only for PUBLISH, but NOT for PUBREL (spec 3.1.1)
 				msg.setDuplicate(true);
-				insertInOrder(pendingMessages, (MqttPublish) msg);
+				pendingMessages.addElement(msg);
 			} else if (msg instanceof MqttPubRel) {
 				// @TRACE 611=QoS 2 pubrel key={0}
-				log.fine(CLASS_NAME, methodName, "611", new Object[] { key });
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME, methodName, "611", new Object[] { key });
+				}
 
-				insertInOrder(pendingFlows, (MqttPubRel) msg);
+				pendingFlows.addElement(msg);
 			}
 		}
 		keys = outboundQoS1.keys();
@@ -478,20 +561,26 @@ public class ClientState implements MqttState {
 			MqttPublish msg = (MqttPublish) outboundQoS1.get(key);
 			msg.setDuplicate(true);
 			// @TRACE 612=QoS 1 publish key={0}
-			log.fine(CLASS_NAME, methodName, "612", new Object[] { key });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "612", new Object[] { key });
+			}
 
-			insertInOrder(pendingMessages, msg);
+			pendingMessages.addElement(msg);
 		}
 		keys = outboundQoS0.keys();
 		while (keys.hasMoreElements()) {
 			Object key = keys.nextElement();
 			MqttPublish msg = (MqttPublish) outboundQoS0.get(key);
 			// @TRACE 512=QoS 0 publish key={0}
-			log.fine(CLASS_NAME, methodName, "512", new Object[] { key });
-			insertInOrder(pendingMessages, msg);
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "512", new Object[] { key });
+			}
+			pendingMessages.addElement(msg);
 
 		}
 
+		sortById(pendingFlows);
+		sortById(pendingMessages);
 		this.pendingFlows = reOrder(pendingFlows);
 		this.pendingMessages = reOrder(pendingMessages);
 	}
@@ -510,22 +599,9 @@ public class ClientState implements MqttState {
 		if (message.isMessageIdRequired() && (message.getMessageId() == 0)) {
 			message.setMessageId(getNextMessageId());
 		}
-		// Set Topic Alias if required
-		if (message instanceof MqttPublish && ((MqttPublish) message).getTopicName() != null 
-	        		&& this.mqttConnection != null && this.mqttConnection.getOutgoingTopicAliasMaximum() > 0) {
-                        String topic = ((MqttPublish) message).getTopicName();
-			if (outgoingTopicAliases.containsKey(topic)) {
-				// Existing Topic Alias, Assign it and remove the topic string
-				((MqttPublish) message).getProperties().setTopicAlias(outgoingTopicAliases.get(topic));
-				((MqttPublish) message).setTopicName(null);
-			} else {
-				int nextOutgoingTopicAlias = this.mqttConnection.getNextOutgoingTopicAlias();
-				if (nextOutgoingTopicAlias <= this.mqttConnection.getOutgoingTopicAliasMaximum()) {
-					// Create a new Topic Alias and increment the counter
-					((MqttPublish) message).getProperties().setTopicAlias(nextOutgoingTopicAlias);
-					outgoingTopicAliases.put(((MqttPublish) message).getTopicName(), nextOutgoingTopicAlias);
-				}
-			}
+		// Set Topic Alias if required, or once persisted in the background
+		if (message instanceof MqttPublish && !mqttConnection.isAsyncPersistence()) {
+			assignTopicAlias((MqttPublish) message);
 		}
 
 		if (token != null) {
@@ -536,19 +612,29 @@ public class ClientState implements MqttState {
 		}
 
 		if (message instanceof MqttPublish) {
-			synchronized (queueLock) {
+			queueLock.lock();
+			try {
 				if (actualInFlight >= this.mqttConnection.getReceiveMaximum()) {
 					// @TRACE 613= sending {0} msgs at max inflight window
-					log.fine(CLASS_NAME, methodName, "613", new Object[] { Integer.valueOf(actualInFlight) });
+					if (log.isLoggable(Logger.FINE)) {
+						log.fine(CLASS_NAME, methodName, "613", new Object[] { Integer.valueOf(actualInFlight) });
+					}
 
 					throw new MqttException(MqttClientException.REASON_CODE_MAX_INFLIGHT);
 				}
 
 				MqttMessage innerMessage = ((MqttPublish) message).getMessage();
 				// @TRACE 628=pending publish key={0} qos={1} message={2}
-				log.fine(CLASS_NAME, methodName, "628", new Object[] { Integer.valueOf(message.getMessageId()),
-						Integer.valueOf(innerMessage.getQos()), message });
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME, methodName, "628", new Object[] { Integer.valueOf(message.getMessageId()),
+							Integer.valueOf(innerMessage.getQos()), message });
+				}
 
+				if (mqttConnection.isAsyncPersistence()) {
+					tokenStore.saveToken(token, message);
+					getPersistenceWriter().add(new MqttPublish[] { (MqttPublish) message });
+					return;
+				}
 				switch (innerMessage.getQos()) {
 				case 2:
 					outboundQoS2.put(Integer.valueOf(message.getMessageId()), message);
@@ -561,19 +647,26 @@ public class ClientState implements MqttState {
 				}
 				tokenStore.saveToken(token, message);
 				pendingMessages.addElement(message);
-				queueLock.notifyAll();
+				workAvailable.signalAll();
+			} finally {
+				queueLock.unlock();
 			}
 		} else {
 			// @TRACE 615=pending send key={0} message {1}
-			log.fine(CLASS_NAME, methodName, "615", new Object[] { Integer.valueOf(message.getMessageId()), message });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "615", new Object[] { Integer.valueOf(message.getMessageId()), message });
+			}
 
 			if (message instanceof MqttConnect) {
-				synchronized (queueLock) {
+				queueLock.lock();
+				try {
 					// Add the connect action at the head of the pending queue ensuring it jumps
 					// ahead of any of other pending actions.
 					tokenStore.saveToken(token, message);
 					pendingFlows.insertElementAt(message, 0);
-					queueLock.notifyAll();
+					workAvailable.signalAll();
+				} finally {
+					queueLock.unlock();
 				}
 			} else {
 				if (message instanceof MqttPingReq) {
@@ -585,15 +678,287 @@ public class ClientState implements MqttState {
 					persistence.remove(getReceivedPersistenceKey(message));
 				}
 
-				synchronized (queueLock) {
+				queueLock.lock();
+				try {
 					if (!(message instanceof MqttAck)) {
 						tokenStore.saveToken(token, message);
 					}
 					pendingFlows.addElement(message);
-					queueLock.notifyAll();
+					workAvailable.signalAll();
+				} finally {
+					queueLock.unlock();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sets the topic alias of an outbound publish if the server allows them,
+	 * removing the topic string when an alias is already established.
+	 * 
+	 * @param message
+	 *            the message to be sent
+	 */
+	private void assignTopicAlias(MqttPublish message) {
+		if (message.getTopicName() != null && this.mqttConnection != null
+				&& this.mqttConnection.getOutgoingTopicAliasMaximum() > 0) {
+			String topic = message.getTopicName();
+			if (outgoingTopicAliases.containsKey(topic)) {
+				// Existing Topic Alias, Assign it and remove the topic string
+				message.getProperties().setTopicAlias(outgoingTopicAliases.get(topic));
+				message.setTopicName(null);
+			} else {
+				int nextOutgoingTopicAlias = this.mqttConnection.getNextOutgoingTopicAlias();
+				if (nextOutgoingTopicAlias <= this.mqttConnection.getOutgoingTopicAliasMaximum()) {
+					// Create a new Topic Alias and increment the counter
+					message.getProperties().setTopicAlias(nextOutgoingTopicAlias);
+					outgoingTopicAliases.put(topic, nextOutgoingTopicAlias);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Submits a batch of publish messages for delivery, taking the queue lock
+	 * once for the whole batch rather than once per message.
+	 * <p>
+	 * Either every message in the batch is queued or, if an exception is
+	 * thrown, none of them is. The QoS 1 and 2 messages are persisted with a
+	 * single call when the persistence implements {@link MqttBatchPersistence}.
+	 * Messages beyond the receive maximum wait in the pending queue as usual.
+	 * </p>
+	 * 
+	 * @param messages
+	 *            the messages to send
+	 * @param tokens
+	 *            the tokens tracking each message, in the same order
+	 * @throws MqttException
+	 *             if the batch could not be queued
+	 */
+	public void sendBatch(MqttPublish[] messages, MqttToken[] tokens) throws MqttException {
+		final String methodName = "sendBatch";
+		int assigned = 0;
+		try {
+			for (int i = 0; i < messages.length; i++) {
+				if (messages[i].isMessageIdRequired() && messages[i].getMessageId() == 0) {
+					messages[i].setMessageId(getNextMessageId());
+				}
+				assigned = i + 1;
+				tokens[i].internalTok.setMessageID(messages[i].getMessageId());
+			}
+
+			queueLock.lock();
+			try {
+				if (actualInFlight >= this.mqttConnection.getReceiveMaximum()) {
+					// @TRACE 613= sending {0} msgs at max inflight window
+					if (log.isLoggable(Logger.FINE)) {
+						log.fine(CLASS_NAME, methodName, "613", new Object[] { Integer.valueOf(actualInFlight) });
+					}
+
+					throw new MqttException(MqttClientException.REASON_CODE_MAX_INFLIGHT);
+				}
+				// @TRACE 669=pending publish batch of {0} messages
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME, methodName, "669", new Object[] { Integer.valueOf(messages.length) });
+				}
+
+				if (mqttConnection.isAsyncPersistence()) {
+					for (int i = 0; i < messages.length; i++) {
+						tokenStore.saveToken(tokens[i], messages[i]);
+					}
+					getPersistenceWriter().add(messages);
+					return;
+				}
+				persistBatch(messages);
+				for (int i = 0; i < messages.length; i++) {
+					MqttPublish message = messages[i];
+					assignTopicAlias(message);
+					switch (message.getMessage().getQos()) {
+					case 2:
+						outboundQoS2.put(Integer.valueOf(message.getMessageId()), message);
+						break;
+					case 1:
+						outboundQoS1.put(Integer.valueOf(message.getMessageId()), message);
+						break;
+					}
+					tokenStore.saveToken(tokens[i], message);
+					pendingMessages.addElement(message);
+				}
+				workAvailable.signalAll();
+			} finally {
+				queueLock.unlock();
+			}
+		} catch (MqttException ex) {
+			for (int i = 0; i < assigned; i++) {
+				releaseMessageId(messages[i].getMessageId());
+				messages[i].setMessageId(0);
+			}
+			throw ex;
+		}
+	}
+
+	/**
+	 * Persists the QoS 1 and 2 messages of a batch, all or none.
+	 * 
+	 * @param messages
+	 *            the batch
+	 * @throws MqttPersistenceException
+	 *             if the messages could not be persisted
+	 */
+	private void persistBatch(MqttPublish[] messages) throws MqttPersistenceException {
+		int count = 0;
+		for (int i = 0; i < messages.length; i++) {
+			if (messages[i].getMessage().getQos() > 0) {
+				count++;
+			}
+		}
+		String[] keys = new String[count];
+		MqttPublish[] persistables = new MqttPublish[count];
+		count = 0;
+		for (int i = 0; i < messages.length; i++) {
+			if (messages[i].getMessage().getQos() > 0) {
+				keys[count] = getSendPersistenceKey(messages[i]);
+				persistables[count++] = messages[i];
+			}
+		}
+		if (count == 0) {
+			return;
+		}
+		if (persistence instanceof MqttBatchPersistence) {
+			((MqttBatchPersistence) persistence).putAll(keys, persistables);
+			return;
+		}
+		int written = 0;
+		try {
+			for (; written < count; written++) {
+				persistence.put(keys[written], persistables[written]);
+			}
+		} catch (MqttPersistenceException ex) {
+			for (int i = 0; i < written; i++) {
+				try {
+					persistence.remove(keys[i]);
+				} catch (MqttPersistenceException e) {
+				}
+			}
+			throw ex;
+		}
+	}
+
+	/**
+	 * Returns the writer that persists publishes in the background, creating
+	 * it if there is none. Called holding the queue lock.
+	 */
+	private PersistenceWriter getPersistenceWriter() {
+		if (persistenceWriter == null) {
+			persistenceWriter = new PersistenceWriter(this, clientComms);
+		}
+		return persistenceWriter;
+	}
+
+	/**
+	 * Drops the publishes waiting to be persisted in the background, as their
+	 * state is being cleared. Any batch being persisted is removed from
+	 * persistence again once it has been.
+	 */
+	private void cancelPersistence() {
+		queueLock.lock();
+		try {
+			if (persistenceWriter != null) {
+				persistenceWriter.cancel();
+				persistenceWriter = null;
+			}
+		} finally {
+			queueLock.unlock();
+		}
+	}
+
+	/**
+	 * Persists a batch of publishes queued by asynchronous persistence, and
+	 * then queues them to be sent. Called on the writer's thread; only the
+	 * queueing takes the queue lock, so publishers and the sender are not held
+	 * up while the persistence works. Topic aliases are assigned as the
+	 * publishes are queued, so that a publish that is never sent does not
+	 * establish one.
+	 * <p>
+	 * If the batch cannot be persisted, the delivery tokens of its QoS 1 and 2
+	 * publishes are completed with the exception. If the writer was cancelled,
+	 * or a publish was given up on, while the batch was being persisted, those
+	 * publishes are removed from persistence again.
+	 * </p>
+	 * 
+	 * @param writer
+	 *            the writer the batch was queued on
+	 * @param batch
+	 *            the publishes, in the order they are to be sent
+	 */
+	void persistQueued(PersistenceWriter writer, MqttPublish[] batch) {
+		final String methodName = "persistQueued";
+		MqttPersistenceException failure = null;
+		try {
+			persistBatch(batch);
+		} catch (MqttPersistenceException ex) {
+			failure = ex;
+		}
+
+		Vector<MqttToken> failed = new Vector<MqttToken>();
+		Vector<MqttPublish> abandoned = new Vector<MqttPublish>();
+		queueLock.lock();
+		try {
+			boolean cancelled = (writer != persistenceWriter);
+			for (int i = 0; i < batch.length; i++) {
+				MqttPublish message = batch[i];
+				int qos = message.getMessage().getQos();
+				if (cancelled) {
+					if (qos > 0) {
+						abandoned.addElement(message);
+					}
+				} else if (qos == 0) {
+					assignTopicAlias(message);
+					pendingMessages.addElement(message);
+				} else if (tokenStore.getToken(message) == null) {
+					// the publish was given up on while it was persisted
+					abandoned.addElement(message);
+				} else if (failure != null) {
+					failed.addElement(tokenStore.removeToken(message));
+					releaseMessageId(message.getMessageId());
+					message.setMessageId(0);
+				} else {
+					if (qos == 2) {
+						outboundQoS2.put(Integer.valueOf(message.getMessageId()), message);
+					} else {
+						outboundQoS1.put(Integer.valueOf(message.getMessageId()), message);
+					}
+					assignTopicAlias(message);
+					pendingMessages.addElement(message);
+				}
+			}
+			if (!cancelled) {
+				workAvailable.signalAll();
+				if (!failed.isEmpty()) {
+					checkQuiesceLock();
+				}
+			}
+		} finally {
+			queueLock.unlock();
+		}
+
+		if (failure == null) {
+			for (int i = 0; i < abandoned.size(); i++) {
+				try {
+					persistence.remove(getSendPersistenceKey(abandoned.elementAt(i)));
+				} catch (MqttPersistenceException ex) {
+					// the persistence has been closed or cleared
 				}
 			}
 		}
+		for (int i = 0; i < failed.size(); i++) {
+			MqttToken token = failed.elementAt(i);
+			// @TRACE 670=failed to persist publish key={0}
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "670", new Object[] { token.internalTok.getKey() }, failure);
+			}
+			notifyResult(null, token, failure);
+		}
 	}
 
 	/*
@@ -622,7 +987,9 @@ public class ClientState implements MqttState {
 				persistence.put(key, (MqttPublish) message);
 			}
 			// @TRACE 513=Persisted Buffered Message key={0}
-			log.fine(CLASS_NAME, methodName, "513", new Object[] { key });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "513", new Object[] { key });
+			}
 		} catch (MqttException ex) {
 			// @TRACE 514=Failed to persist buffered message key={0}
 			log.warning(CLASS_NAME, methodName, "513", new Object[] { key });
@@ -641,11 +1008,15 @@ public class ClientState implements MqttState {
 		final String methodName = "unPersistBufferedMessage";
 		try {
 			// @TRACE 517=Un-Persisting Buffered message key={0}
-			log.fine(CLASS_NAME, methodName, "517", new Object[] { message.getKey() });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "517", new Object[] { message.getKey() });
+			}
 			persistence.remove(getSendBufferedPersistenceKey(message));
 		} catch (MqttPersistenceException mpe) {
 			// @TRACE 518=Failed to Un-Persist Buffered message key={0}
-			log.fine(CLASS_NAME, methodName, "518", new Object[] { message.getKey() });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "518", new Object[] { message.getKey() });
+			}
 		}
 
 	}
@@ -660,10 +1031,13 @@ public class ClientState implements MqttState {
 	 */
 	protected void undo(MqttPublish message) throws MqttPersistenceException {
 		final String methodName = "undo";
-		synchronized (queueLock) {
+		queueLock.lock();
+		try {
 			// @TRACE 618=key={0} QoS={1}
-			log.fine(CLASS_NAME, methodName, "618", new Object[] { Integer.valueOf(message.getMessageId()),
-					Integer.valueOf(message.getMessage().getQos()) });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "618", new Object[] { Integer.valueOf(message.getMessageId()),
+						Integer.valueOf(message.getMessage().getQos()) });
+			}
 
 			if (message.getMessage().getQos() == 1) {
 				outboundQoS1.remove(Integer.valueOf(message.getMessageId()));
@@ -681,6 +1055,8 @@ public class ClientState implements MqttState {
 			}
 
 			checkQuiesceLock();
+		} finally {
+			queueLock.unlock();
 		}
 	}
 
@@ -694,14 +1070,19 @@ public class ClientState implements MqttState {
 	public MqttToken checkForActivity(MqttActionListener pingCallback) throws MqttException {
 		final String methodName = "checkForActivity";
 		// @TRACE 616=checkForActivity entered
-		log.fine(CLASS_NAME, methodName, "616", new Object[] {});
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "616", new Object[] {});
+		}
 
-		synchronized (quiesceLock) {
+		quiesceLock.lock();
+		try {
 			// ref bug: https://bugs.eclipse.org/bugs/show_bug.cgi?id=440698
 			// No ping while quiescing
 			if (quiescing) {
 				return null;
 			}
+		} finally {
+			quiesceLock.unlock();
 		}
 
 		MqttToken token = null;
@@ -771,8 +1152,10 @@ public class ClientState implements MqttState {
 
 					// @TRACE 620=ping needed. keepAlive={0} lastOutboundActivity={1}
 					// lastInboundActivity={2}
-					log.fine(CLASS_NAME, methodName, "620", new Object[] { Long.valueOf(keepAlive),
-							Long.valueOf(lastOutboundActivity), Long.valueOf(lastInboundActivity) });
+					if (log.isLoggable(Logger.FINE)) {
+						log.fine(CLASS_NAME, methodName, "620", new Object[] { Long.valueOf(keepAlive),
+								Long.valueOf(lastOutboundActivity), Long.valueOf(lastInboundActivity) });
+					}
 
 					// pingOutstanding++; // it will be set after the ping has been written on the
 					// wire
@@ -795,7 +1178,9 @@ public class ClientState implements MqttState {
 				}
 			}
 			// @TRACE 624=Schedule next ping at {0}
-			log.fine(CLASS_NAME, methodName, "624", new Object[] { Long.valueOf(nextPingTime) });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "624", new Object[] { Long.valueOf(nextPingTime) });
+			}
 			pingSender.schedule(TimeUnit.NANOSECONDS.toMillis(nextPingTime));
 		}
 
@@ -817,7 +1202,8 @@ public class ClientState implements MqttState {
 		final String methodName = "get";
 		MqttWireMessage result = null;
 
-		synchronized (queueLock) {
+		queueLock.lock();
+		try {
 			while (result == null) {
 
 				// If there is no work wait until there is work.
@@ -830,7 +1216,7 @@ public class ClientState implements MqttState {
 						// @TRACE 644=wait for new work or for space in the inflight window
 						log.fine(CLASS_NAME, methodName, "644");
 
-						queueLock.wait();
+						workAvailable.await();
 
 						// @TRACE 647=new work or ping arrived
 						log.fine(CLASS_NAME, methodName, "647");
@@ -863,7 +1249,9 @@ public class ClientState implements MqttState {
 						inFlightPubRels++;
 
 						// @TRACE 617=+1 inflightpubrels={0}
-						log.fine(CLASS_NAME, methodName, "617", new Object[] { Integer.valueOf(inFlightPubRels) });
+						if (log.isLoggable(Logger.FINE)) {
+							log.fine(CLASS_NAME, methodName, "617", new Object[] { Integer.valueOf(inFlightPubRels) });
+						}
 					}
 
 					checkQuiesceLock();
@@ -879,14 +1267,18 @@ public class ClientState implements MqttState {
 						actualInFlight++;
 
 						// @TRACE 623=+1 actualInFlight={0}
-						log.fine(CLASS_NAME, methodName, "623", new Object[] { Integer.valueOf(actualInFlight) });
+						if (log.isLoggable(Logger.FINE)) {
+							log.fine(CLASS_NAME, methodName, "623", new Object[] { Integer.valueOf(actualInFlight) });
+						}
 					} else {
 						// @TRACE 622=inflight window full
 						log.fine(CLASS_NAME, methodName, "622");
 					}
 				}
 			} // end while
-		} // synchronized
+		} finally {
+			queueLock.unlock();
+		}
 		return result;
 	}
 
@@ -902,7 +1294,9 @@ public class ClientState implements MqttState {
 			this.lastOutboundActivity = System.nanoTime();
 		}
 		// @TRACE 643=sent bytes count={0}
-		log.fine(CLASS_NAME, methodName, "643", new Object[] { Integer.valueOf(sentBytesCount) });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "643", new Object[] { Integer.valueOf(sentBytesCount) });
+		}
 	}
 
 	/**
@@ -916,7 +1310,9 @@ public class ClientState implements MqttState {
 
 		this.lastOutboundActivity = System.nanoTime();
 		// @TRACE 625=key={0}
-		log.fine(CLASS_NAME, methodName, "625", new Object[] { message.getKey() });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "625", new Object[] { message.getKey() });
+		}
 
 		MqttToken token = tokenStore.getToken(message);
 		if (token == null) return;
@@ -929,7 +1325,9 @@ public class ClientState implements MqttState {
 					pingOutstanding++;
 				}
 				// @TRACE 635=ping sent. pingOutstanding: {0}
-				log.fine(CLASS_NAME, methodName, "635", new Object[] { Integer.valueOf(pingOutstanding) });
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME, methodName, "635", new Object[] { Integer.valueOf(pingOutstanding) });
+				}
 			}
 		} else if (message instanceof MqttPublish) {
 			if (((MqttPublish) message).getMessage().getQos() == 0) {
@@ -947,14 +1345,19 @@ public class ClientState implements MqttState {
 
 	private void decrementInFlight() {
 		final String methodName = "decrementInFlight";
-		synchronized (queueLock) {
+		queueLock.lock();
+		try {
 			actualInFlight--;
 			// @TRACE 646=-1 actualInFlight={0}
-			log.fine(CLASS_NAME, methodName, "646", new Object[] { Integer.valueOf(actualInFlight) });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "646", new Object[] { Integer.valueOf(actualInFlight) });
+			}
 
 			if (!checkQuiesceLock()) {
-				queueLock.notifyAll();
+				workAvailable.signalAll();
 			}
+		} finally {
+			queueLock.unlock();
 		}
 	}
 
@@ -966,12 +1369,17 @@ public class ClientState implements MqttState {
 		if (quiescing && tokC == 0 && pendingFlows.size() == 0 && callback.isQuiesced()) {
 			// @TRACE 626=quiescing={0} actualInFlight={1} pendingFlows={2}
 			// inFlightPubRels={3} callbackQuiesce={4} tokens={5}
-			log.fine(CLASS_NAME, methodName, "626",
-					new Object[] { Boolean.valueOf(quiescing), Integer.valueOf(actualInFlight),
-							Integer.valueOf(pendingFlows.size()), Integer.valueOf(inFlightPubRels),
-							Boolean.valueOf(callback.isQuiesced()), Integer.valueOf(tokC) });
-			synchronized (quiesceLock) {
-				quiesceLock.notifyAll();
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "626",
+						new Object[] { Boolean.valueOf(quiescing), Integer.valueOf(actualInFlight),
+								Integer.valueOf(pendingFlows.size()), Integer.valueOf(inFlightPubRels),
+								Boolean.valueOf(callback.isQuiesced()), Integer.valueOf(tokC) });
+			}
+			quiesceLock.lock();
+			try {
+				quiesced.signalAll();
+			} finally {
+				quiesceLock.unlock();
 			}
 			return true;
 		}
@@ -991,7 +1399,9 @@ public class ClientState implements MqttState {
 			this.lastInboundActivity = System.nanoTime();
 		}
 		// @TRACE 630=received bytes count={0}
-		log.fine(CLASS_NAME, methodName, "630", new Object[] { Integer.valueOf(receivedBytesCount) });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "630", new Object[] { Integer.valueOf(receivedBytesCount) });
+		}
 	}
 
 	/**
@@ -1007,14 +1417,18 @@ public class ClientState implements MqttState {
 		this.lastInboundActivity = System.nanoTime();
 
 		// @TRACE 627=received key={0} message={1}
-		log.fine(CLASS_NAME, methodName, "627", new Object[] { Integer.valueOf(ack.getMessageId()), ack });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "627", new Object[] { Integer.valueOf(ack.getMessageId()), ack });
+		}
 
 		MqttToken token = tokenStore.getToken(ack);
 		MqttException mex = null;
 
 		if (token == null) {
 			// @TRACE 662=no message found for ack id={0}
-			log.fine(CLASS_NAME, methodName, "662", new Object[] { Integer.valueOf(ack.getMessageId()) });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "662", new Object[] { Integer.valueOf(ack.getMessageId()) });
+			}
 		} else if (ack instanceof MqttPubRec) {
 			if (((MqttPubRec) ack).getReasonCodes()[0] > MqttReturnCode.RETURN_CODE_UNSPECIFIED_ERROR) {
 				// @TRACE 664=[MQTT-4.3.3-4] - A Reason code greater than 0x80 (128) was
@@ -1052,12 +1466,15 @@ public class ClientState implements MqttState {
 				}
 			}
 			// @TRACE 636=ping response received. pingOutstanding: {0}
-			log.fine(CLASS_NAME, methodName, "636", new Object[] { Integer.valueOf(pingOutstanding) });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "636", new Object[] { Integer.valueOf(pingOutstanding) });
+			}
 		} else if (ack instanceof MqttConnAck) {
 
 			int rc = ((MqttConnAck) ack).getReturnCode();
 			if (rc == 0) {
-				synchronized (queueLock) {
+				queueLock.lock();
+				try {
 					if (cleanStart) {
 						clearState();
 						// Add the connect token back in so that users can be
@@ -1068,6 +1485,8 @@ public class ClientState implements MqttState {
 					actualInFlight = 0;
 					restoreInflightMessages();
 					connected();
+				} finally {
+					queueLock.unlock();
 				}
 			} else {
 
@@ -1080,8 +1499,11 @@ public class ClientState implements MqttState {
 			tokenStore.removeToken(ack);
 
 			// Notify the sender thread that there maybe work for it to do now
-			synchronized (queueLock) {
-				queueLock.notifyAll();
+			queueLock.lock();
+			try {
+				workAvailable.signalAll();
+			} finally {
+				queueLock.unlock();
 			}
 		} else {
 			notifyResult(ack, token, mex);
@@ -1105,7 +1527,9 @@ public class ClientState implements MqttState {
 	protected void handleOrphanedAcks(MqttAck ack) throws MqttException {
 		final String methodName = "handleOrphanedAcks";
 		// @TRACE 666=Orphaned Ack key={0} message={1}
-		log.fine(CLASS_NAME, methodName, "666", new Object[] { Integer.valueOf(ack.getMessageId()), ack });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "666", new Object[] { Integer.valueOf(ack.getMessageId()), ack });
+		}
 
 		if (ack instanceof MqttPubAck) {
 			// MqttPubAck - This would be the end of a QoS 1 flow, so message can be ignored
@@ -1166,7 +1590,9 @@ public class ClientState implements MqttState {
 		this.lastInboundActivity = System.nanoTime();
 
 		// @TRACE 651=received key={0} message={1}
-		log.fine(CLASS_NAME, methodName, "651", new Object[] { Integer.valueOf(message.getMessageId()), message });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "651", new Object[] { Integer.valueOf(message.getMessageId()), message });
+		}
 
 		if (!quiescing) {
 			if (message instanceof MqttPublish) {
@@ -1191,14 +1617,16 @@ public class ClientState implements MqttState {
 					}
 
 					// Is this alias being sent with a topic string?
-					if (send.getTopicName() != null) {
+					if (send.getTopicName() != null && send.getTopicName().length() > 0) {
 						// @TRACE 652=Setting Incoming New Topic Alias alias={0}, topicName={1}
-						log.fine(CLASS_NAME, methodName, "652", new Object[] {
-								Integer.valueOf(send.getProperties().getTopicAlias()), send.getTopicName() });
+						if (log.isLoggable(Logger.FINE)) {
+							log.fine(CLASS_NAME, methodName, "652", new Object[] {
+									Integer.valueOf(send.getProperties().getTopicAlias()), send.getTopicName() });
+						}
 						incomingTopicAliases.put(send.getProperties().getTopicAlias(), send.getTopicName());
 					} else {
 						// No Topic String, so must be in incomingTopicAliases.
-						if (incomingTopicAliases.contains(incomingTopicAlias)) {
+						if (incomingTopicAliases.containsKey(incomingTopicAlias)) {
 							send.setTopicName(incomingTopicAliases.get(incomingTopicAlias));
 						} else {
 							// @TRACE 654=Unknown Topic Alias: Incoming Alias={1}
@@ -1212,7 +1640,12 @@ public class ClientState implements MqttState {
 				switch (send.getMessage().getQos()) {
 				case 0:
 				case 1:
-					if (callback != null) {
+					if (send.isPayloadStreamed()) {
+						// already delivered while it was read, just acknowledge
+						if (callback != null) {
+							callback.messageStreamed(send);
+						}
+					} else if (callback != null) {
 						callback.messageArrived(send);
 					}
 					break;
@@ -1258,8 +1691,10 @@ public class ClientState implements MqttState {
 		if (message != null && message instanceof MqttAck) {
 
 			// @TRACE 629=received key={0} token={1} message={2}
-			log.fine(CLASS_NAME, methodName, "629",
-					new Object[] { Integer.valueOf(message.getMessageId()), token, message });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "629",
+						new Object[] { Integer.valueOf(message.getMessageId()), token, message });
+			}
 
 			MqttAck ack = (MqttAck) message;
 
@@ -1273,7 +1708,9 @@ public class ClientState implements MqttState {
 				releaseMessageId(message.getMessageId());
 				tokenStore.removeToken(message);
 				// @TRACE 650=removed Qos 1 publish. key={0}
-				log.fine(CLASS_NAME, methodName, "650", new Object[] { Integer.valueOf(ack.getMessageId()) });
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME, methodName, "650", new Object[] { Integer.valueOf(ack.getMessageId()) });
+				}
 			} else if (ack instanceof MqttPubComp) {
 				// QoS 2 - user notified now remove from persistence...
 				persistence.remove(getSendPersistenceKey(message));
@@ -1287,8 +1724,10 @@ public class ClientState implements MqttState {
 				tokenStore.removeToken(message);
 
 				// @TRACE 645=removed QoS 2 publish/pubrel. key={0}, -1 inFlightPubRels={1}
-				log.fine(CLASS_NAME, methodName, "645",
-						new Object[] { Integer.valueOf(ack.getMessageId()), Integer.valueOf(inFlightPubRels) });
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME, methodName, "645",
+							new Object[] { Integer.valueOf(ack.getMessageId()), Integer.valueOf(inFlightPubRels) });
+				}
 			}
 
 			checkQuiesceLock();
@@ -1319,14 +1758,18 @@ public class ClientState implements MqttState {
 		// Let the user know an async operation has completed and then remove the token
 		if (ack != null && ack instanceof MqttAck && !(ack instanceof MqttPubRec)) {
 			// @TRACE 648=key{0}, msg={1}, excep={2}
-			log.fine(CLASS_NAME, methodName, "648", new Object[] { token.internalTok.getKey(), ack, ex });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "648", new Object[] { token.internalTok.getKey(), ack, ex });
+			}
 			callback.asyncOperationComplete(token);
 		}
 		// There are cases where there is no ack as the operation failed before
 		// an ack was received
 		if (ack == null) {
 			// @TRACE 649=key={0},excep={1}
-			log.fine(CLASS_NAME, methodName, "649", new Object[] { token.internalTok.getKey(), ex });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "649", new Object[] { token.internalTok.getKey(), ex });
+			}
 			callback.asyncOperationComplete(token);
 		}
 	}
@@ -1356,7 +1799,9 @@ public class ClientState implements MqttState {
 	public Vector<MqttToken> resolveOldTokens(MqttException reason) {
 		final String methodName = "resolveOldTokens";
 		// @TRACE 632=reason {0}
-		log.fine(CLASS_NAME, methodName, "632", new Object[] { reason });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "632", new Object[] { reason });
+		}
 
 		// If any outstanding let the user know the reason why it is still
 		// outstanding by putting the reason shutdown is occurring into the
@@ -1374,10 +1819,13 @@ public class ClientState implements MqttState {
 		Enumeration<MqttToken> outTE = outT.elements();
 		while (outTE.hasMoreElements()) {
 			MqttToken tok = (MqttToken) outTE.nextElement();
-			synchronized (tok) {
+			tok.internalTok.lock();
+			try {
 				if (!tok.isComplete() && !tok.internalTok.isCompletePending() && tok.getException() == null) {
 					tok.internalTok.setException(shutReason);
 				}
+			} finally {
+				tok.internalTok.unlock();
 			}
 			if (!(tok.internalTok.isDeliveryToken())) {
 				// If not a delivery token it is not valid on
@@ -1399,7 +1847,9 @@ public class ClientState implements MqttState {
 	public void disconnected(MqttException reason) {
 		final String methodName = "disconnected";
 		// @TRACE 633=disconnected
-		log.fine(CLASS_NAME, methodName, "633", new Object[] { reason });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "633", new Object[] { reason });
+		}
 
 		this.connected = false;
 
@@ -1471,15 +1921,21 @@ public class ClientState implements MqttState {
 		// If the timeout is greater than zero t
 		if (timeout > 0) {
 			// @TRACE 637=timeout={0}
-			log.fine(CLASS_NAME, methodName, "637", new Object[] { Long.valueOf(timeout) });
-			synchronized (queueLock) {
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "637", new Object[] { Long.valueOf(timeout) });
+			}
+			queueLock.lock();
+			try {
 				this.quiescing = true;
+			} finally {
+				queueLock.unlock();
 			}
 			// We don't want to handle any new inbound messages
 			callback.quiesce();
 			notifyQueueLock();
 
-			synchronized (quiesceLock) {
+			quiesceLock.lock();
+			try {
 				try {
 					// If token count is not zero there is outbound work to process and
 					// if pending flows is not zero there is outstanding work to complete and
@@ -1488,26 +1944,33 @@ public class ClientState implements MqttState {
 					if (tokc > 0 || pendingFlows.size() > 0 || !callback.isQuiesced()) {
 						// @TRACE 639=wait for outstanding: actualInFlight={0} pendingFlows={1}
 						// inFlightPubRels={2} tokens={3}
-						log.fine(CLASS_NAME, methodName, "639",
-								new Object[] { Integer.valueOf(actualInFlight), Integer.valueOf(pendingFlows.size()),
-										Integer.valueOf(inFlightPubRels), Integer.valueOf(tokc) });
+						if (log.isLoggable(Logger.FINE)) {
+							log.fine(CLASS_NAME, methodName, "639",
+									new Object[] { Integer.valueOf(actualInFlight), Integer.valueOf(pendingFlows.size()),
+											Integer.valueOf(inFlightPubRels), Integer.valueOf(tokc) });
+						}
 
 						// wait for outstanding in flight messages to complete and
 						// any pending flows to complete
-						quiesceLock.wait(timeout);
+						quiesced.await(timeout, TimeUnit.MILLISECONDS);
 					}
 				} catch (InterruptedException ex) {
 					// Don't care, as we're shutting down anyway
 				}
+			} finally {
+				quiesceLock.unlock();
 			}
 
 			// Quiesce time up or inflight messages delivered. Ensure pending delivery
 			// vectors are cleared ready for disconnect to be sent as the final flow.
-			synchronized (queueLock) {
+			queueLock.lock();
+			try {
 				pendingMessages.clear();
 				pendingFlows.clear();
 				quiescing = false;
 				actualInFlight = 0;
+			} finally {
+				queueLock.unlock();
 			}
 			// @TRACE 640=finished
 			log.fine(CLASS_NAME, methodName, "640");
@@ -1522,10 +1985,13 @@ public class ClientState implements MqttState {
 	@Override
 	public void notifyQueueLock() {
 		final String methodName = "notifyQueueLock";
-		synchronized (queueLock) {
+		queueLock.lock();
+		try {
 			// @TRACE 638=notifying queueLock holders
 			log.fine(CLASS_NAME, methodName, "638");
-			queueLock.notifyAll();
+			workAvailable.signalAll();
+		} finally {
+			queueLock.unlock();
 		}
 	}
 
@@ -1533,7 +1999,9 @@ public class ClientState implements MqttState {
 		final String methodName = "deliveryComplete";
 
 		// @TRACE 641=remove publish from persistence. key={0}
-		log.fine(CLASS_NAME, methodName, "641", new Object[] { Integer.valueOf(message.getMessageId()) });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "641", new Object[] { Integer.valueOf(message.getMessageId()) });
+		}
 
 		persistence.remove(getReceivedPersistenceKey(message));
 		inboundQoS2.remove(Integer.valueOf(message.getMessageId()));
@@ -1543,7 +2011,9 @@ public class ClientState implements MqttState {
 		final String methodName = "deliveryComplete";
 
 		// @TRACE 641=remove publish from persistence. key={0}
-		log.fine(CLASS_NAME, methodName, "641", new Object[] { Integer.valueOf(messageId) });
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "641", new Object[] { Integer.valueOf(messageId) });
+		}
 
 		persistence.remove(getReceivedPersistenceKey(messageId));
 		inboundQoS2.remove(Integer.valueOf(messageId));
@@ -1567,11 +2037,33 @@ public class ClientState implements MqttState {
 		return this.mqttConnection.getOutgoingMaximumPacketSize();
 	}
 
+	public MqttBufferPool getBufferPool() {
+		return this.mqttConnection.getBufferPool();
+	}
+
+	protected void setStreamingCallback(MqttStreamingCallback streamingCallback, int streamingThreshold) {
+		this.streamingCallback = streamingCallback;
+		this.streamingThreshold = streamingThreshold;
+	}
+
+	public MqttStreamingCallback getStreamingCallback() {
+		return this.streamingCallback;
+	}
+
+	public int getStreamingThreshold() {
+		return this.streamingThreshold;
+	}
+
+	public String getIncomingTopicName(int topicAlias) {
+		return incomingTopicAliases.get(Integer.valueOf(topicAlias));
+	}
+
 	/**
 	 * Tidy up - ensure that tokens are released as they are maintained over a
 	 * disconnect / connect cycle.
 	 */
 	protected void close() {
+		cancelPersistence();
 		inUseMsgIds.clear();
 		if (pendingMessages != null) {
 			pendingMessages.clear();
@@ -1581,6 +2073,7 @@ public class ClientState implements MqttState {
 		outboundQoS1.clear();
 		outboundQoS0.clear();
 		inboundQoS2.clear();
+		releasePayloads();
 		tokenStore.clear();
 		inUseMsgIds = null;
 		pendingMessages = null;
@@ -1620,6 +2113,7 @@ public class ClientState implements MqttState {
 		props.put("outboundQoS0", outboundQoS0);
 		props.put("inboundQoS2", inboundQoS2);
 		props.put("tokens", tokenStore);
+		props.put("persisting", Integer.valueOf(persistenceWriter == null ? 0 : persistenceWriter.size()));
 		return props;
 	}
 }
@@ -20,18 +20,24 @@ package org.eclipse.paho.mqttv5.client.internal;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.eclipse.paho.mqttv5.client.IMqttMessageListener;
 import org.eclipse.paho.mqttv5.client.MqttActionListener;
 import org.eclipse.paho.mqttv5.client.MqttCallback;
 import org.eclipse.paho.mqttv5.client.MqttDisconnectResponse;
 import org.eclipse.paho.mqttv5.client.MqttToken;
+import org.eclipse.paho.mqttv5.client.codec.MqttPayloadCodec;
 import org.eclipse.paho.mqttv5.client.logging.Logger;
 import org.eclipse.paho.mqttv5.client.logging.LoggerFactory;
+import org.eclipse.paho.mqttv5.common.MqttBuffer;
 import org.eclipse.paho.mqttv5.common.MqttException;
 import org.eclipse.paho.mqttv5.common.MqttMessage;
 import org.eclipse.paho.mqttv5.common.packet.MqttAuth;
@@ -68,13 +74,15 @@ public class CommsCallback implements Runnable {
 
 	private State current_state = State.STOPPED;
 	private State target_state = State.STOPPED;	
-	private final Object lifecycle = new Object();
+	private final ReentrantLock lifecycle = new ReentrantLock();
 	private Thread callbackThread;
 	private String threadName;
 	private Future<?> callbackFuture;
 	
-	private final Object workAvailable = new Object();
-	private final Object spaceAvailable = new Object();
+	private final ReentrantLock workLock = new ReentrantLock();
+	private final Condition workAvailable = workLock.newCondition();
+	private final ReentrantLock spaceLock = new ReentrantLock();
+	private final Condition spaceAvailable = spaceLock.newCondition();
 	private ClientState clientState;
 	private boolean manualAcks = false;
 
@@ -103,21 +111,27 @@ public class CommsCallback implements Runnable {
 	 */
 	public void start(String threadName, ExecutorService executorService) {
 		this.threadName = threadName;
-		synchronized (lifecycle) {
+		lifecycle.lock();
+		try {
 			if (current_state == State.STOPPED) {
 				// Preparatory work before starting the background thread.
 				// For safety ensure any old events are cleared.
-				synchronized (workAvailable) {
+				workLock.lock();
+				try {
 					messageQueue.clear();
 					completeQueue.clear();
+				} finally {
+					workLock.unlock();
 				}
 				target_state = State.RUNNING;
 				if (executorService == null) {
-					new Thread(this).start();
+					clientComms.newThread(this).start();
 				} else {
 					callbackFuture = executorService.submit(this);
 				}
 			}
+		} finally {
+			lifecycle.unlock();
 		}
 		while (!isRunning()) {
 			try { Thread.sleep(100); } catch (Exception e) { }
@@ -129,23 +143,32 @@ public class CommsCallback implements Runnable {
 	 */
 	public void stop() {
 		final String methodName = "stop";
-		synchronized (lifecycle) {
+		lifecycle.lock();
+		try {
 			if (callbackFuture != null) {
 				callbackFuture.cancel(true);
 			}
+		} finally {
+			lifecycle.unlock();
 		}
 		if (isRunning()) {
 			// @TRACE 700=stopping
 			log.fine(CLASS_NAME, methodName, "700");
-			synchronized (lifecycle) {
+			lifecycle.lock();
+			try {
 				target_state = State.STOPPED;
+			} finally {
+				lifecycle.unlock();
 			}
 			if (!Thread.currentThread().equals(callbackThread)) {
-				synchronized (workAvailable) {
+				workLock.lock();
+				try {
 					// @TRACE 701=notify workAvailable and wait for run
 					// to finish
 					log.fine(CLASS_NAME, methodName, "701");
-					workAvailable.notifyAll();
+					workAvailable.signalAll();
+				} finally {
+					workLock.unlock();
 				}
 				// Wait for the thread to finish.
 				while (isRunning()) {
@@ -176,21 +199,27 @@ public class CommsCallback implements Runnable {
 		callbackThread = Thread.currentThread();
 		callbackThread.setName(threadName);
 		
-		synchronized (lifecycle) {
+		lifecycle.lock();
+		try {
 			current_state = State.RUNNING;
+		} finally {
+			lifecycle.unlock();
 		}
 
 		while (isRunning()) {
 			try {
 				// If no work is currently available, then wait until there is some...
 				try {
-					synchronized (workAvailable) {
+					workLock.lock();
+					try {
 						if (isRunning() && messageQueue.isEmpty()
 								&& completeQueue.isEmpty()) {
 							// @TRACE 704=wait for workAvailable
 							log.fine(CLASS_NAME, methodName, "704");
-							workAvailable.wait();
+							workAvailable.await();
 						}
+					} finally {
+						workLock.unlock();
 					}
 				} catch (InterruptedException e) {
 				}
@@ -198,12 +227,15 @@ public class CommsCallback implements Runnable {
 				if (isRunning()) {
 					// Check for deliveryComplete callbacks...
 					MqttToken token = null;
-					synchronized (workAvailable) {
+					workLock.lock();
+					try {
 						if (!completeQueue.isEmpty()) {
 							// First call the delivery arrived callback if needed
 							token = completeQueue.get(0);
 							completeQueue.remove(0);
 						}
+					} finally {
+						workLock.unlock();
 					}
 					if (null != token) {
 						handleActionComplete(token);
@@ -211,7 +243,8 @@ public class CommsCallback implements Runnable {
 
 					// Check for messageArrived callbacks...
 					MqttPublish message = null;
-					synchronized (workAvailable) {
+					workLock.lock();
+					try {
 						if (!messageQueue.isEmpty()) {
 							// Note, there is a window on connect where a publish
 							// could arrive before we've
@@ -219,6 +252,8 @@ public class CommsCallback implements Runnable {
 							message = messageQueue.get(0);
 							messageQueue.remove(0);
 						}
+					} finally {
+						workLock.unlock();
 					}
 					if (null != message) {
 						handleMessage(message);
@@ -238,27 +273,36 @@ public class CommsCallback implements Runnable {
 				clientComms.shutdownConnection(null, new MqttException(ex), null);
 			} finally {
 
-			    synchronized (spaceAvailable) {
-                    // Notify the spaceAvailable lock, to say that there's now
-                    // some space on the queue...
+				spaceLock.lock();
+				try {
+					// Notify the spaceAvailable lock, to say that there's now
+					// some space on the queue...
 
 					// @TRACE 706=notify spaceAvailable
 					log.fine(CLASS_NAME, methodName, "706");
-					spaceAvailable.notifyAll();
+					spaceAvailable.signalAll();
+				} finally {
+					spaceLock.unlock();
 				}
 			}
 		}
-		synchronized (lifecycle) {
+		lifecycle.lock();
+		try {
 			current_state = State.STOPPED;
+		} finally {
+			lifecycle.unlock();
 		}
 		callbackThread = null;
 	}
 
 	private void handleActionComplete(MqttToken token) throws MqttException {
 		final String methodName = "handleActionComplete";
-		synchronized (token) {
+		token.internalTok.lock();
+		try {
 			// @TRACE 705=callback and notify for key={0}
-			log.fine(CLASS_NAME, methodName, "705", new Object[] { token.internalTok.getKey() });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "705", new Object[] { token.internalTok.getKey() });
+			}
 			if (token.isComplete()) {
 				// Finish by doing any post processing such as delete
 				// from persistent store but only do so if the action
@@ -278,7 +322,9 @@ public class CommsCallback implements Runnable {
 					} catch (Throwable ex) {
 						// Just log the fact that an exception was thrown
 						// @TRACE 726=Ignoring Exception thrown from deliveryComplete {0}
-						log.fine(CLASS_NAME, methodName, "726", new Object[] { ex });
+						if (log.isLoggable(Logger.FINE)) {
+							log.fine(CLASS_NAME, methodName, "726", new Object[] { ex });
+						}
 					}
 				}
 				// Now call async action completion callbacks
@@ -292,6 +338,13 @@ public class CommsCallback implements Runnable {
 				}
 			}
 
+			// Once finished with, delivered or not, hand a pooled payload back to its pool.
+			if (token.isComplete()) {
+				token.internalTok.releasePayload();
+			}
+
+		} finally {
+			token.internalTok.unlock();
 		}
 	}
 
@@ -315,7 +368,9 @@ public class CommsCallback implements Runnable {
 			if (mqttCallback != null && message != null) {
 
 				// @TRACE 722=Server initiated disconnect, connection closed. Disconnect={0}
-				log.fine(CLASS_NAME, methodName, "722", new Object[] { message.toString() });
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME, methodName, "722", new Object[] { message.toString() });
+				}
 				MqttDisconnectResponse disconnectResponse = new MqttDisconnectResponse(message.getReturnCode(),
 						message.getProperties().getReasonString(),
 						(ArrayList<UserProperty>) message.getProperties().getUserProperties(),
@@ -323,7 +378,9 @@ public class CommsCallback implements Runnable {
 				mqttCallback.disconnected(disconnectResponse);
 			} else if (mqttCallback != null && cause != null) {
 				// @TRACE 708=call connectionLost
-				log.fine(CLASS_NAME, methodName, "708", new Object[] { cause });
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME, methodName, "708", new Object[] { cause });
+				}
 				MqttDisconnectResponse disconnectResponse = new MqttDisconnectResponse(cause);
 				mqttCallback.disconnected(disconnectResponse);
 			}
@@ -335,7 +392,9 @@ public class CommsCallback implements Runnable {
 		} catch (Throwable t) {
 			// Just log the fact that an exception was thrown
 			// @TRACE 720=Ignoring Exception thrown from connectionLost {0}
-			log.fine(CLASS_NAME, methodName, "720", new Object[] { t });
+			if (log.isLoggable(Logger.FINE)) {
+				log.fine(CLASS_NAME, methodName, "720", new Object[] { t });
+			}
 		}
 	}
 
@@ -354,11 +413,15 @@ public class CommsCallback implements Runnable {
 			if (asyncCB != null) {
 				if (token.getException() == null) {
 					// @TRACE 716=call onSuccess key={0}
-					log.fine(CLASS_NAME, methodName, "716", new Object[] { token.internalTok.getKey() });
+					if (log.isLoggable(Logger.FINE)) {
+						log.fine(CLASS_NAME, methodName, "716", new Object[] { token.internalTok.getKey() });
+					}
 					asyncCB.onSuccess(token);
 				} else {
 					// @TRACE 717=call onFailure key {0}
-					log.fine(CLASS_NAME, methodName, "716", new Object[] { token.internalTok.getKey() });
+					if (log.isLoggable(Logger.FINE)) {
+						log.fine(CLASS_NAME, methodName, "716", new Object[] { token.internalTok.getKey() });
+					}
 					asyncCB.onFailure(token, token.getException());
 				}
 			}
@@ -379,23 +442,29 @@ public class CommsCallback implements Runnable {
 			// until some more queue space becomes available. This helps
 			// the client protect itself from getting flooded by messages
 			// from the server.
-			synchronized (spaceAvailable) {
+			spaceLock.lock();
+			try {
 				while (isRunning() && !isQuiescing() && messageQueue.size() >= INBOUND_QUEUE_SIZE) {
 					try {
 						// @TRACE 709=wait for spaceAvailable
 						log.fine(CLASS_NAME, methodName, "709");
-						spaceAvailable.wait(200);
+						spaceAvailable.await(200, TimeUnit.MILLISECONDS);
 					} catch (InterruptedException ex) {
 					}
 				}
+			} finally {
+				spaceLock.unlock();
 			}
 			if (!isQuiescing()) {
 				// Notify the CommsCallback thread that there's work to do...
-				synchronized (workAvailable) {
+				workLock.lock();
+				try {
 					messageQueue.add(sendMessage);
 					// @TRACE 710=new msg avail, notify workAvailable
 					log.fine(CLASS_NAME, methodName, "710");
-					workAvailable.notifyAll();
+					workAvailable.signalAll();
+				} finally {
+					workLock.unlock();
 				}
 			}
 		}
@@ -415,7 +484,9 @@ public class CommsCallback implements Runnable {
 			} catch (Throwable ex) {
 				// Just log the fact that an exception was thrown
 				// @TRACE 727=Ignoring Exception thrown from authPacketArrived {0}
-				log.fine(CLASS_NAME, methodName, "727", new Object[] { ex });
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME, methodName, "727", new Object[] { ex });
+				}
 			}
 		}
 	}
@@ -437,7 +508,9 @@ public class CommsCallback implements Runnable {
 			} catch (Exception ex) {
 				// Just log the fact that an exception was thrown
 				// @TRACE 724=Ignoring Exception thrown from mqttErrorOccurred: {0}
-				log.fine(CLASS_NAME, methodName, "724", new Object[] { ex });
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME, methodName, "724", new Object[] { ex });
+				}
 			}
 		}
 	}
@@ -449,21 +522,30 @@ public class CommsCallback implements Runnable {
 	 */
 	public void quiesce() {
 		final String methodName = "quiesce";
-		synchronized (lifecycle) {
+		lifecycle.lock();
+		try {
 			if (current_state == State.RUNNING)
 			current_state = State.QUIESCING;
+		} finally {
+			lifecycle.unlock();
 		}
-		synchronized (spaceAvailable) {
+		spaceLock.lock();
+		try {
 			// @TRACE 711=quiesce notify spaceAvailable
 			log.fine(CLASS_NAME, methodName, "711");
 			// Unblock anything waiting for space...
-			spaceAvailable.notifyAll();
+			spaceAvailable.signalAll();
+		} finally {
+			spaceLock.unlock();
 		}
 	}
 
 	boolean areQueuesEmpty() {
-		synchronized (workAvailable) {
+		workLock.lock();
+		try {
 			return completeQueue.isEmpty() && messageQueue.isEmpty();
+		} finally {
+			workLock.unlock();
 		}
 	}
 
@@ -477,8 +559,24 @@ public class CommsCallback implements Runnable {
 		String destName = publishMessage.getTopicName();
 
 		// @TRACE 713=call messageArrived key={0} topic={1}
-		log.fine(CLASS_NAME, methodName, "713", new Object[] { Integer.valueOf(publishMessage.getMessageId()), destName });
-		deliverMessage(destName, publishMessage.getMessageId(), publishMessage.getMessage());
+		if (log.isLoggable(Logger.FINE)) {
+			log.fine(CLASS_NAME, methodName, "713", new Object[] { Integer.valueOf(publishMessage.getMessageId()), destName });
+		}
+		MqttMessage message = publishMessage.getMessage();
+		if (clientComms.isLatencyTracing()) {
+			clientComms.getLatencyTracer().messageReceived(message.getProperties());
+		}
+		try {
+			decodePayload(message);
+			deliverMessage(destName, publishMessage.getMessageId(), message);
+		} finally {
+			// Payloads read into a pooled buffer are only valid for the
+			// duration of messageArrived, unless retained by the application.
+			MqttBuffer buffer = publishMessage.getPayloadBuffer();
+			if (buffer != null) {
+				buffer.release();
+			}
+		}
 
 		// If we are not in manual ACK mode:
 		if (!this.manualAcks && publishMessage.getMessage().getQos() == 1) {
@@ -488,6 +586,67 @@ public class CommsCallback implements Runnable {
 		}
 	}
 
+	/**
+	 * Replaces the payload of a received message with its decoding by the
+	 * payload codec, if the message carries the user property naming that
+	 * codec. The property is removed once the payload is decoded, and the
+	 * payload format indicator the publisher cleared is set again if the
+	 * payload was UTF-8; a payload the codec can not decode is delivered
+	 * unchanged.
+	 * 
+	 * @param message
+	 *            the received message
+	 */
+	private void decodePayload(MqttMessage message) {
+		final String methodName = "decodePayload";
+		MqttPayloadCodec codec = clientComms.getPayloadCodec();
+		MqttProperties properties = message.getProperties();
+		if (codec == null || properties == null || properties.getUserProperties() == null) {
+			return;
+		}
+		UserProperty marker = new UserProperty(MqttPayloadCodec.USER_PROPERTY_NAME, codec.getName());
+		List<UserProperty> userProperties = new ArrayList<>(properties.getUserProperties());
+		if (!userProperties.remove(marker)) {
+			return;
+		}
+		try {
+			MqttBuffer buffer = message.getPayloadBuffer();
+			byte[] decoded;
+			if (buffer != null && buffer.hasArray()) {
+				decoded = codec.decode(buffer.array(), buffer.arrayOffset(), buffer.length());
+			} else {
+				byte[] payload = message.getPayload();
+				decoded = codec.decode(payload, 0, payload.length);
+			}
+			message.setPayload(decoded);
+			if (userProperties.remove(new UserProperty(MqttPayloadCodec.CHARSET_USER_PROPERTY_NAME,
+					MqttPayloadCodec.CHARSET_UTF8))) {
+				properties.setPayloadFormat(true);
+			}
+			properties.setUserProperties(userProperties);
+		} catch (MqttException ex) {
+			// @TRACE 728=payload not decoded by codec {0}, delivering it unchanged
+			log.warning(CLASS_NAME, methodName, "728", new Object[] { codec.getName() }, ex);
+		}
+	}
+
+	/**
+	 * Completes the flow for a message whose payload was passed to the
+	 * streaming callback as it was read, by sending the acknowledgement.
+	 * 
+	 * @param publishMessage
+	 *            the streamed message
+	 * @throws MqttException
+	 *             if the acknowledgement can not be sent
+	 */
+	public void messageStreamed(MqttPublish publishMessage) throws MqttException {
+		if (!this.manualAcks && publishMessage.getQoS() == 1) {
+			this.clientComms.internalSend(new MqttPubAck(MqttReturnCode.RETURN_CODE_SUCCESS,
+					publishMessage.getMessageId(), new MqttProperties()),
+					new MqttToken(clientComms.getClient().getClientId()));
+		}
+	}
+
 	public void messageArrivedComplete(int messageId, int qos) throws MqttException {
 		if (qos == 1) {
 			this.clientComms.internalSend(
@@ -508,11 +667,16 @@ public class CommsCallback implements Runnable {
 
 		if (isRunning()) {
 			// invoke callbacks on callback thread
-			synchronized (workAvailable) {
+			workLock.lock();
+			try {
 				completeQueue.add(token);
 				// @TRACE 715=new workAvailable. key={0}
-				log.fine(CLASS_NAME, methodName, "715", new Object[] { token.internalTok.getKey() });
-				workAvailable.notifyAll();
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME, methodName, "715", new Object[] { token.internalTok.getKey() });
+				}
+				workAvailable.signalAll();
+			} finally {
+				workLock.unlock();
 			}
 		} else {
 			// invoke async callback on invokers thread
@@ -638,7 +802,9 @@ public class CommsCallback implements Runnable {
 			} catch (Exception ex) {
 				// Just log the fact that an exception was thrown
 				// @TRACE 725=Ignoring Exception thrown from messageArrived: {0}
-				log.fine(CLASS_NAME, methodName, "725", new Object[] { ex });
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME, methodName, "725", new Object[] { ex });
+				}
 			}
 			delivered = true;
 		}
@@ -652,17 +818,23 @@ public class CommsCallback implements Runnable {
 
 	public boolean isRunning() {
 		boolean result;
-		synchronized (lifecycle) {
+		lifecycle.lock();
+		try {
 			result = ((current_state == State.RUNNING || current_state == State.QUIESCING)
 					&& target_state == State.RUNNING);
+		} finally {
+			lifecycle.unlock();
 		}
 		return result;
 	}
 	
 	public boolean isQuiescing() {
 		boolean result;
-		synchronized (lifecycle) {
+		lifecycle.lock();
+		try {
 			result = (current_state == State.QUIESCING);
+		} finally {
+			lifecycle.unlock();
 		}
 		return result;
 	}
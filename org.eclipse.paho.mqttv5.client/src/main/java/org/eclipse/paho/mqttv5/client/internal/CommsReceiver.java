@@ -19,6 +19,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.eclipse.paho.mqttv5.client.MqttClientException;
 import org.eclipse.paho.mqttv5.client.MqttToken;
@@ -41,7 +42,7 @@ public class CommsReceiver implements Runnable {
 
 	private State current_state = State.STOPPED;
 	private State target_state = State.STOPPED;
-	private final Object lifecycle = new Object();
+	private final ReentrantLock lifecycle = new ReentrantLock();
 	private String threadName;
 	private Future<?> receiverFuture;
 	
@@ -72,15 +73,18 @@ public class CommsReceiver implements Runnable {
 		final String methodName = "start";
 		// @TRACE 855=starting
 		log.fine(CLASS_NAME, methodName, "855");
-		synchronized (lifecycle) {
+		lifecycle.lock();
+		try {
 			if (current_state == State.STOPPED && target_state == State.STOPPED) {
 				target_state = State.RUNNING;
 				if (executorService == null) {
-					new Thread(this).start();
+					clientComms.newThread(this).start();
 				} else {
 					receiverFuture = executorService.submit(this);
 				}
 			}
+		} finally {
+			lifecycle.unlock();
 		}
 		while (!isRunning()) {
 			try { Thread.sleep(100); } catch (Exception e) { }
@@ -92,7 +96,8 @@ public class CommsReceiver implements Runnable {
 	 */
 	public void stop() {
 		final String methodName = "stop";
-		synchronized (lifecycle) {
+		lifecycle.lock();
+		try {
 			if (receiverFuture != null) {
 				receiverFuture.cancel(true);
 			}
@@ -101,6 +106,8 @@ public class CommsReceiver implements Runnable {
 			if (isRunning()) {
 				target_state = State.STOPPED;
 			}
+		} finally {
+			lifecycle.unlock();
 		}
 		while (isRunning()) {
 			try { Thread.sleep(100); } catch (Exception e) { }
@@ -118,39 +125,54 @@ public class CommsReceiver implements Runnable {
 		final String methodName = "run";
 		MqttToken token = null;
 
-		synchronized (lifecycle) {
+		lifecycle.lock();
+		try {
 			current_state = State.RUNNING;
+		} finally {
+			lifecycle.unlock();
 		}
 		
 		try {
 			State my_target;
-			synchronized (lifecycle) {
+			lifecycle.lock();
+			try {
 				my_target = target_state;
+			} finally {
+				lifecycle.unlock();
 			}
 			while (my_target == State.RUNNING && (in != null)) {
 				try {
 					//@TRACE 852=network read message
 					log.fine(CLASS_NAME,methodName,"852");
 					if (in.available() > 0) {
-						synchronized (lifecycle) {
+						lifecycle.lock();
+						try {
 							current_state = State.RECEIVING;
+						} finally {
+							lifecycle.unlock();
 						}
 					}
 					MqttWireMessage message = in.readMqttWireMessage();
-					synchronized (lifecycle) {
+					lifecycle.lock();
+					try {
 						current_state = State.RUNNING;
+					} finally {
+						lifecycle.unlock();
 					}
 
 					// instanceof checks if message is null
 					if (message instanceof MqttAck) {
 						token = tokenStore.getToken(message);
 						if (token != null) {
-							synchronized (token) {
+							token.internalTok.lock();
+							try {
 								// Ensure the notify processing is done under a lock on the token
 								// This ensures that the send processing can complete before the
 								// receive processing starts! ( request and ack and ack processing
 								// can occur before request processing is complete if not!
 								clientState.notifyReceivedAck((MqttAck) message);
+							} finally {
+								token.internalTok.unlock();
 							}
 						} else {
 							// This is an ack for a message we no longer have a ticket for.
@@ -175,8 +197,11 @@ public class CommsReceiver implements Runnable {
 				catch (MqttException ex) {
 					// @TRACE 856=Stopping, MQttException
 					log.fine(CLASS_NAME, methodName, "856", null, ex);
-					synchronized (lifecycle) {
+					lifecycle.lock();
+					try {
 						target_state = State.STOPPED;
+					} finally {
+						lifecycle.unlock();
 					}
 					// Token maybe null but that is handled in shutdown
 					clientComms.shutdownConnection(token, ex, null);
@@ -185,8 +210,11 @@ public class CommsReceiver implements Runnable {
 					// @TRACE 853=Stopping due to IOException
 					log.fine(CLASS_NAME, methodName, "853");
                                         if (target_state != State.STOPPED) {
-					    synchronized (lifecycle) {
+					    lifecycle.lock();
+					    try {
 						target_state = State.STOPPED;
+					    } finally {
+						lifecycle.unlock();
 					    }
 					    // An EOFException could be raised if the broker processes the
 					    // DISCONNECT and ends the socket before we complete. As such,
@@ -198,17 +226,26 @@ public class CommsReceiver implements Runnable {
                                         }
 				}
 				finally {
-					synchronized (lifecycle) {
+					lifecycle.lock();
+					try {
 						current_state = State.RUNNING;
+					} finally {
+						lifecycle.unlock();
 					}
 				}
-				synchronized (lifecycle) {
+				lifecycle.lock();
+				try {
 					my_target = target_state;
+				} finally {
+					lifecycle.unlock();
 				}
 			} // end while
 		} finally {
-			synchronized (lifecycle) {
+			lifecycle.lock();
+			try {
 				current_state = State.STOPPED;
+			} finally {
+				lifecycle.unlock();
 			}
 		} // end try
 
@@ -219,9 +256,12 @@ public class CommsReceiver implements Runnable {
 
 	public boolean isRunning() {
 		boolean result;
-		synchronized (lifecycle) {
+		lifecycle.lock();
+		try {
 			result = ((current_state == State.RUNNING || current_state == State.RECEIVING)
 					&& target_state == State.RUNNING);
+		} finally {
+			lifecycle.unlock();
 		}
 		return result;
 	}
@@ -233,8 +273,11 @@ public class CommsReceiver implements Runnable {
 	 */
 	public boolean isReceiving() {
 		boolean result;
-		synchronized (lifecycle) {
+		lifecycle.lock();
+		try {
 			result = (current_state == State.RECEIVING);
+		} finally {
+			lifecycle.unlock();
 		}
 		return result;
 	}
@@ -19,6 +19,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.eclipse.paho.mqttv5.client.MqttClientException;
 import org.eclipse.paho.mqttv5.client.MqttToken;
@@ -40,7 +41,7 @@ public class CommsSender implements Runnable {
 
     private State current_state = State.STOPPED;
 	private State target_state = State.STOPPED;
-	private final Object lifecycle = new Object();
+	private final ReentrantLock lifecycle = new ReentrantLock();
 	private Thread 	sendThread		= null;
 	private String threadName;
 	private Future<?> senderFuture;
@@ -66,15 +67,18 @@ public class CommsSender implements Runnable {
 	 */
 	public void start(String threadName, ExecutorService executorService) {
 		this.threadName = threadName;
-		synchronized (lifecycle) {
+		lifecycle.lock();
+		try {
 			if (current_state == State.STOPPED && target_state == State.STOPPED) {
 				target_state = State.RUNNING;
 				if (executorService == null) {
-					new Thread(this).start();
+					clientComms.newThread(this).start();
 				} else {
 					senderFuture = executorService.submit(this);
 				}
 			}
+		} finally {
+			lifecycle.unlock();
 		}
 		while (!isRunning()) {
 			try { Thread.sleep(100); } catch (Exception e) { }
@@ -91,7 +95,8 @@ public class CommsSender implements Runnable {
 			return;
 		}
 			
-		synchronized (lifecycle) {
+		lifecycle.lock();
+		try {
 			if (senderFuture != null) {
 				senderFuture.cancel(true);
 			}
@@ -101,6 +106,8 @@ public class CommsSender implements Runnable {
 				target_state = State.STOPPED;
 				clientState.notifyQueueLock();
 			}
+		} finally {
+			lifecycle.unlock();
 		}
 		while (isRunning()) {
 			try { Thread.sleep(100); } catch (Exception e) { }
@@ -116,21 +123,29 @@ public class CommsSender implements Runnable {
 		final String methodName = "run";
 		MqttWireMessage message = null;
 		
-		synchronized (lifecycle) {
+		lifecycle.lock();
+		try {
 			current_state = State.RUNNING;
+		} finally {
+			lifecycle.unlock();
 		}
 
 		try {
 			State my_target;
-			synchronized (lifecycle) {
+			lifecycle.lock();
+			try {
 				my_target = target_state;
+			} finally {
+				lifecycle.unlock();
 			}
 			while (my_target == State.RUNNING && (out != null)) {
 				try {
 					message = clientState.get();
 					if (message != null) {
 						//@TRACE 802=network send key={0} msg={1}
-						log.fine(CLASS_NAME,methodName,"802", new Object[] {message.getKey(),message});
+						if (log.isLoggable(Logger.FINE)) {
+							log.fine(CLASS_NAME,methodName,"802", new Object[] {message.getKey(),message});
+						}
 
 						if (message instanceof MqttAck) {
 							out.write(message);
@@ -141,7 +156,8 @@ public class CommsSender implements Runnable {
 							// to check for null for the case where clear occurs
 							// while trying to send a message.
 							if (token != null) {
-								synchronized (token) {
+								token.internalTok.lock();
+								try {
 									out.write(message);
 									try {
 										out.flush();
@@ -153,14 +169,19 @@ public class CommsSender implements Runnable {
 										}
 									}
 									clientState.notifySent(message);
+								} finally {
+									token.internalTok.unlock();
 								}
 							}
 						}
 					} else { // null message
 						//@TRACE 803=get message returned null, stopping}
 						log.fine(CLASS_NAME,methodName,"803");
-						synchronized (lifecycle) {
+						lifecycle.lock();
+						try {
 							target_state = State.STOPPED;
+						} finally {
+							lifecycle.unlock();
 						}
 					}
 				} catch (MqttException me) {
@@ -168,14 +189,20 @@ public class CommsSender implements Runnable {
 				} catch (Exception ex) {
 					handleRunException(message, ex);
 				}
-				synchronized (lifecycle) {
+				lifecycle.lock();
+				try {
 					my_target = target_state;
+				} finally {
+					lifecycle.unlock();
 				}
 			} // end while
 		} finally {
-			synchronized (lifecycle) {
+			lifecycle.lock();
+			try {
 				current_state = State.STOPPED;
 				sendThread = null;
+			} finally {
+				lifecycle.unlock();
 			}
 		}
 
@@ -194,16 +221,22 @@ public class CommsSender implements Runnable {
 		} else {
 			mex = (MqttException)ex;
 		}
-		synchronized (lifecycle) {
+		lifecycle.lock();
+		try {
 			target_state = State.STOPPED;
+		} finally {
+			lifecycle.unlock();
 		}
 		clientComms.shutdownConnection(null, mex, null);
 	}
 
 	public boolean isRunning() {
 		boolean result;
-		synchronized (lifecycle) {
+		lifecycle.lock();
+		try {
 			result = (current_state == State.RUNNING && target_state == State.RUNNING);
+		} finally {
+			lifecycle.unlock();
 		}
 		return result;
 	}
@@ -2,6 +2,8 @@ package org.eclipse.paho.mqttv5.client.internal;
 
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.eclipse.paho.mqttv5.common.MqttBufferPool;
+
 /**
  * This class is used as a store for client information that should be preserved
  * for a single connection. 
@@ -21,6 +23,7 @@ import java.util.concurrent.atomic.AtomicInteger;
  * <li>Subscription Identifiers Available</li>
  * <li>Shared Subscriptions Available</li>
  * <li>Send Reason Messages</li>
+ * <li>Buffer Pool</li>
  * </ul>
  */
 public class MqttConnectionState {
@@ -37,6 +40,8 @@ public class MqttConnectionState {
 	private Boolean subscriptionIdentifiersAvailable = true;
 	private Boolean sharedSubscriptionsAvailable = true;
 	private boolean sendReasonMessages = false;
+	private MqttBufferPool bufferPool = null;
+	private boolean asyncPersistence = false;
 	private long keepAlive = 60;
         private String clientId = "";
 
@@ -171,6 +176,26 @@ public class MqttConnectionState {
 	}
 
 
+	public MqttBufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+
+	public void setBufferPool(MqttBufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+
+
+	public boolean isAsyncPersistence() {
+		return asyncPersistence;
+	}
+
+
+	public void setAsyncPersistence(boolean asyncPersistence) {
+		this.asyncPersistence = asyncPersistence;
+	}
+
+
 	public long getKeepAlive() {
 		return keepAlive;
 	}
@@ -20,7 +20,9 @@ import java.util.Properties;
 import java.util.Vector;
 
 import org.eclipse.paho.mqttv5.client.MqttActionListener;
+import org.eclipse.paho.mqttv5.client.MqttStreamingCallback;
 import org.eclipse.paho.mqttv5.client.MqttToken;
+import org.eclipse.paho.mqttv5.common.MqttBufferPool;
 import org.eclipse.paho.mqttv5.common.MqttException;
 import org.eclipse.paho.mqttv5.common.packet.MqttWireMessage;
 
@@ -111,4 +113,25 @@ public interface MqttState {
 
 	Long getIncomingMaximumPacketSize();
 
+	/**
+	 * @return the pool inbound publish payloads are read into, or null
+	 */
+	MqttBufferPool getBufferPool();
+
+	/**
+	 * @return the callback large inbound payloads are streamed to, or null
+	 */
+	MqttStreamingCallback getStreamingCallback();
+
+	/**
+	 * @return the packet size from which inbound payloads are streamed
+	 */
+	int getStreamingThreshold();
+
+	/**
+	 * @param topicAlias an incoming topic alias
+	 * @return the topic name the server has mapped to the alias, or null
+	 */
+	String getIncomingTopicName(int topicAlias);
+
 }
\ No newline at end of file
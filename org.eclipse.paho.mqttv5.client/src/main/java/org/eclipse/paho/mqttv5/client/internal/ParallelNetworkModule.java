@@ -0,0 +1,361 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - parallel connection attempts
+ */
+package org.eclipse.paho.mqttv5.client.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.paho.mqttv5.client.MqttClientException;
+import org.eclipse.paho.mqttv5.client.MqttConnectionOptions;
+import org.eclipse.paho.mqttv5.client.logging.Logger;
+import org.eclipse.paho.mqttv5.client.logging.LoggerFactory;
+import org.eclipse.paho.mqttv5.common.MqttException;
+
+/**
+ * A network module that races connection attempts to several servers, in the
+ * manner of "Happy Eyeballs" (RFC 8305), and keeps the first connection to be
+ * established.
+ * <p>
+ * Each server URI is a candidate, and so is each address that the host name
+ * of a TCP based URI resolves to, with IPv6 and IPv4 addresses alternating.
+ * The candidates are started in order on their own threads, each one after
+ * the stagger delay or as soon as all earlier attempts have failed. When an
+ * attempt succeeds, no more are started and the others are stopped, which
+ * closes their sockets. The module fails only once every attempt has failed,
+ * and then reports the failure of the earliest candidate.
+ * </p>
+ */
+public class ParallelNetworkModule implements NetworkModule {
+	private static final String CLASS_NAME = ParallelNetworkModule.class.getName();
+	private Logger log = LoggerFactory.getLogger(LoggerFactory.MQTT_CLIENT_MSG_CAT, CLASS_NAME);
+
+	private final String[] serverURIs;
+	private final NetworkModule[] networkModules;
+	private final MqttConnectionOptions options;
+	private final String clientId;
+	private final int delay;
+
+	private volatile Race race;
+
+	/**
+	 * @param serverURIs the servers to connect to, in order of preference
+	 * @param networkModules a network module for each server URI
+	 * @param options the connect options, used to create a network module for
+	 *            each further address of a server
+	 * @param clientId the client id, also used as the resource context
+	 */
+	public ParallelNetworkModule(String[] serverURIs, NetworkModule[] networkModules, MqttConnectionOptions options,
+			String clientId) {
+		log.setResourceName(clientId);
+		this.serverURIs = serverURIs;
+		this.networkModules = networkModules;
+		this.options = options;
+		this.clientId = clientId;
+		this.delay = options.getParallelConnectDelay();
+	}
+
+	public void start() throws IOException, MqttException {
+		Race current = new Race();
+		race = current;
+		current.run();
+	}
+
+	public InputStream getInputStream() throws IOException {
+		return getConnected().getInputStream();
+	}
+
+	public OutputStream getOutputStream() throws IOException {
+		return getConnected().getOutputStream();
+	}
+
+	/**
+	 * Stops the connected module or, while the module is starting, abandons
+	 * every attempt, in which case {@link #start()} throws an IOException.
+	 */
+	public void stop() throws IOException {
+		Race current = race;
+		if (current != null) {
+			current.stop();
+		}
+	}
+
+	/**
+	 * @return the URI of the server connected to, or the first server URI
+	 *         if no connection has been established
+	 */
+	public String getServerURI() {
+		return getConnected().getServerURI();
+	}
+
+	private NetworkModule getConnected() {
+		Race current = race;
+		NetworkModule winner = (current == null) ? null : current.getWinner();
+		return (winner == null) ? networkModules[0] : winner;
+	}
+
+	/**
+	 * Returns the network modules to try for one server URI, one for each
+	 * address its host name resolves to.
+	 */
+	private List<NetworkModule> getCandidates(int index) throws MqttException {
+		List<NetworkModule> candidates = new ArrayList<NetworkModule>();
+		NetworkModule module = networkModules[index];
+		candidates.add(module);
+		if (!(module instanceof TCPNetworkModule)) {
+			return candidates;
+		}
+		((TCPNetworkModule) module).setAddress(null);
+		InetAddress[] addresses = resolve(serverURIs[index]);
+		if (addresses == null) {
+			// let the module report the failure to resolve
+			return candidates;
+		}
+		((TCPNetworkModule) module).setAddress(addresses[0]);
+		for (int i = 1; i < addresses.length; i++) {
+			NetworkModule candidate = NetworkModuleService.createInstance(serverURIs[index], options, clientId);
+			((TCPNetworkModule) candidate).setAddress(addresses[i]);
+			candidates.add(candidate);
+		}
+		return candidates;
+	}
+
+	/**
+	 * Resolves the host of a server URI, ordering the addresses so that the
+	 * address families alternate, starting with the preferred one.
+	 * @return the addresses, or null if the host cannot be resolved
+	 */
+	private static InetAddress[] resolve(String serverURI) {
+		try {
+			URI uri = new URI(serverURI);
+			NetworkModuleService.applyRFC3986AuthorityPatch(uri);
+			String host = uri.getHost();
+			if (host == null) {
+				return null;
+			}
+			InetAddress[] addresses = InetAddress.getAllByName(host);
+			List<InetAddress> preferred = new ArrayList<InetAddress>();
+			List<InetAddress> other = new ArrayList<InetAddress>();
+			boolean ipv6 = addresses[0] instanceof Inet6Address;
+			for (InetAddress address : addresses) {
+				((address instanceof Inet6Address) == ipv6 ? preferred : other).add(address);
+			}
+			InetAddress[] ordered = new InetAddress[addresses.length];
+			int count = 0;
+			for (int i = 0; count < ordered.length; i++) {
+				if (i < preferred.size()) {
+					ordered[count++] = preferred.get(i);
+				}
+				if (i < other.size()) {
+					ordered[count++] = other.get(i);
+				}
+			}
+			return ordered;
+		} catch (URISyntaxException e) {
+			return null;
+		} catch (UnknownHostException e) {
+			return null;
+		}
+	}
+
+	private static void stopQuietly(NetworkModule module) {
+		try {
+			module.stop();
+		} catch (Exception e) {
+			// the attempt is being abandoned
+		}
+	}
+
+	/**
+	 * The attempts made by one call of {@link ParallelNetworkModule#start()}.
+	 * Attempts still running when the race is over only ever update their own
+	 * race.
+	 */
+	private class Race {
+		private final List<NetworkModule> attempts = new ArrayList<NetworkModule>();
+		private final List<Exception> failures = new ArrayList<Exception>();
+		private int failed = 0;
+		private NetworkModule winner;
+		private boolean stopped = false;
+
+		synchronized NetworkModule getWinner() {
+			return winner;
+		}
+
+		void run() throws IOException, MqttException {
+			final String methodName = "start";
+			try {
+				boolean more = true;
+				for (int i = 0; more && i < serverURIs.length; i++) {
+					for (NetworkModule candidate : getCandidates(i)) {
+						more = launch(candidate);
+						if (!more) {
+							break;
+						}
+					}
+				}
+				synchronized (this) {
+					while (winner == null && !stopped && failed < attempts.size()) {
+						wait();
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				stop();
+				throw ExceptionHelper.createMqttException(e);
+			} catch (MqttException e) {
+				stop();
+				throw e;
+			}
+
+			List<NetworkModule> losers = new ArrayList<NetworkModule>();
+			NetworkModule connected;
+			Exception failure = null;
+			boolean abandoned;
+			synchronized (this) {
+				connected = winner;
+				abandoned = stopped;
+				for (NetworkModule attempt : attempts) {
+					if (attempt != winner) {
+						losers.add(attempt);
+					}
+				}
+				for (Exception e : failures) {
+					if (e != null) {
+						failure = e;
+						break;
+					}
+				}
+			}
+			for (NetworkModule loser : losers) {
+				stopQuietly(loser);
+			}
+			if (abandoned) {
+				// whatever the attempts have reported so far, as a single
+				// module would fail once its socket was closed
+				throw new IOException("Connection attempts abandoned");
+			}
+			if (connected != null) {
+				// @TRACE 255=connected to {0} after {1} parallel attempts
+				log.fine(CLASS_NAME, methodName, "255",
+						new Object[] { connected.getServerURI(), Integer.valueOf(losers.size() + 1) });
+				return;
+			}
+			if (failure instanceof MqttException) {
+				throw (MqttException) failure;
+			} else if (failure instanceof IOException) {
+				throw (IOException) failure;
+			} else if (failure != null) {
+				throw ExceptionHelper.createMqttException(failure);
+			}
+			throw ExceptionHelper.createMqttException(MqttClientException.REASON_CODE_CLIENT_CLOSED);
+		}
+
+		/**
+		 * Starts an attempt and waits until it is time for the next one.
+		 * @return false if no more attempts are needed
+		 */
+		private boolean launch(final NetworkModule candidate) throws InterruptedException {
+			final String methodName = "start";
+			final int index;
+			synchronized (this) {
+				if (winner != null || stopped) {
+					return false;
+				}
+				index = attempts.size();
+				attempts.add(candidate);
+				failures.add(null);
+			}
+			// @TRACE 253=parallel connect attempt {0} to {1}
+			log.fine(CLASS_NAME, methodName, "253", new Object[] { Integer.valueOf(index), candidate.getServerURI() });
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					attempt(index, candidate);
+				}
+			}, "MQTT Con: " + clientId + "-" + index);
+			thread.setDaemon(true);
+			thread.start();
+
+			long deadline = System.currentTimeMillis() + delay;
+			synchronized (this) {
+				while (winner == null && !stopped && failed < attempts.size()) {
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0) {
+						break;
+					}
+					wait(remaining);
+				}
+				return winner == null && !stopped;
+			}
+		}
+
+		private void attempt(int index, NetworkModule candidate) {
+			final String methodName = "attempt";
+			boolean won = false;
+			try {
+				candidate.start();
+				synchronized (this) {
+					if (winner == null && !stopped) {
+						winner = candidate;
+						won = true;
+					}
+					notifyAll();
+				}
+			} catch (Exception e) {
+				// @TRACE 254=parallel connect attempt {0} failed
+				log.fine(CLASS_NAME, methodName, "254", new Object[] { Integer.valueOf(index) }, e);
+				synchronized (this) {
+					failures.set(index, e);
+					failed++;
+					notifyAll();
+				}
+				return;
+			}
+			if (!won) {
+				stopQuietly(candidate);
+			}
+		}
+
+		/**
+		 * Ends the race, stopping every attempt including the winner.
+		 */
+		void stop() throws IOException {
+			List<NetworkModule> started;
+			NetworkModule connected;
+			synchronized (this) {
+				stopped = true;
+				connected = winner;
+				started = new ArrayList<NetworkModule>(attempts);
+				notifyAll();
+			}
+			for (NetworkModule attempt : started) {
+				if (attempt != connected) {
+					stopQuietly(attempt);
+				}
+			}
+			if (connected != null) {
+				connected.stop();
+			}
+		}
+	}
+}
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - parallel session restore
+ */
+package org.eclipse.paho.mqttv5.client.internal;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.paho.mqttv5.common.MqttException;
+import org.eclipse.paho.mqttv5.common.packet.MqttWireMessage;
+
+/**
+ * Reads and decodes the records of a persisted session for {@link ClientState}
+ * when it restores its state.
+ * <p>
+ * Reading a record from a file store and decoding it is most of the work of
+ * a restore, and the records are independent of each other. When the
+ * persistence is a {@link org.eclipse.paho.mqttv5.client.MqttConcurrentPersistence},
+ * a large session is split into shares of at least {@link #MIN_SHARE}
+ * records, one for each processor, which are read by background tasks run
+ * by the client's comms and by the calling thread. Each share is taken by
+ * whichever of them comes to it first, so the calling thread reads every
+ * share itself if no task starts. Otherwise the records are read one at a
+ * time on the calling thread. Either way the records are returned in the
+ * order of their keys, and {@link ClientState} then builds its tables from
+ * them on the calling thread.
+ * </p>
+ */
+class PersistenceReader {
+
+	/** The fewest records worth reading on a thread of their own. */
+	static final int MIN_SHARE = 64;
+
+	private final ClientState clientState;
+	private final ClientComms clientComms;
+	private final String[] keys;
+	private final MqttWireMessage[] messages;
+	private final int shares;
+	private final AtomicInteger nextShare = new AtomicInteger(0);
+	private int finished = 0;
+	private Exception failure = null;
+
+	/**
+	 * @param clientState the state the records are read for
+	 * @param clientComms the comms that run the background tasks
+	 * @param keys the keys of the records to read
+	 * @param concurrent whether the persistence may be read from several
+	 *            threads at once
+	 */
+	PersistenceReader(ClientState clientState, ClientComms clientComms, String[] keys, boolean concurrent) {
+		this.clientState = clientState;
+		this.clientComms = clientComms;
+		this.keys = keys;
+		this.messages = new MqttWireMessage[keys.length];
+		this.shares = concurrent
+				? Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), keys.length / MIN_SHARE))
+				: 1;
+	}
+
+	/**
+	 * Reads every record, returning once they all have been.
+	 * @return the messages, in the order of the keys, with null for a record
+	 *         that was corrupt and has been removed
+	 * @throws MqttException the first exception reading a record threw
+	 */
+	MqttWireMessage[] read() throws MqttException {
+		final String threadName = "MQTT Res: " + clientComms.getClient().getClientId();
+		for (int i = 1; i < shares; i++) {
+			clientComms.execute(new Runnable() {
+				public void run() {
+					Thread.currentThread().setName(threadName);
+					readShares();
+				}
+			});
+		}
+		readShares();
+		synchronized (this) {
+			try {
+				while (finished < shares) {
+					wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw ExceptionHelper.createMqttException(e);
+			}
+			if (failure instanceof MqttException) {
+				throw (MqttException) failure;
+			} else if (failure != null) {
+				throw (RuntimeException) failure;
+			}
+		}
+		return messages;
+	}
+
+	/**
+	 * Reads shares until none are left to take.
+	 */
+	private void readShares() {
+		for (int share = nextShare.getAndIncrement(); share < shares; share = nextShare.getAndIncrement()) {
+			readShare(share);
+			synchronized (this) {
+				finished++;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Reads one share of the records: those between share / shares and
+	 * (share + 1) / shares of the way through the keys.
+	 */
+	private void readShare(int share) {
+		int from = (int) ((long) keys.length * share / shares);
+		int to = (int) ((long) keys.length * (share + 1) / shares);
+		try {
+			for (int i = from; i < to; i++) {
+				messages[i] = clientState.readMessage(keys[i]);
+			}
+		} catch (MqttException | RuntimeException ex) {
+			synchronized (this) {
+				if (failure == null) {
+					failure = ex;
+				}
+			}
+		}
+	}
+}
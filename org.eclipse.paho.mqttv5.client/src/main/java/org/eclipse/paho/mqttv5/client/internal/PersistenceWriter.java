@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - asynchronous persistence
+ */
+package org.eclipse.paho.mqttv5.client.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.paho.mqttv5.common.packet.MqttPublish;
+
+/**
+ * Persists the publishes of a client that uses asynchronous persistence, on
+ * a thread of its own rather than on the threads that publish or send.
+ * <p>
+ * Publishes are queued in the order they are sent. The writer takes
+ * everything queued, up to a limit, as one batch, which {@link ClientState}
+ * persists outside its queue lock and then queues to be sent. QoS 0
+ * publishes pass through without being persisted, so that they keep their
+ * place in the order.
+ * </p>
+ * <p>
+ * The thread is started when there is work, and ends once it has been idle
+ * for a while. A writer is cancelled when the state it writes for is cleared
+ * or closed: what is still queued is dropped, and a batch being persisted is
+ * removed from persistence again when it completes.
+ * </p>
+ */
+class PersistenceWriter implements Runnable {
+
+	/** The most publishes persisted as one batch. */
+	static final int MAX_BATCH = 256;
+	/** How long the thread waits for more work before ending. */
+	private static final long IDLE_TIMEOUT = 1000;
+
+	private final ClientState clientState;
+	private final ClientComms clientComms;
+	private final String threadName;
+	private final List<MqttPublish> queue = new ArrayList<MqttPublish>();
+	private boolean running = false;
+	private boolean cancelled = false;
+
+	PersistenceWriter(ClientState clientState, ClientComms clientComms) {
+		this.clientState = clientState;
+		this.clientComms = clientComms;
+		this.threadName = "MQTT Per: " + clientComms.getClient().getClientId();
+	}
+
+	/**
+	 * Queues publishes to be persisted, and sent once they have been.
+	 * @param messages the publishes, in the order they are to be sent
+	 */
+	synchronized void add(MqttPublish[] messages) {
+		if (cancelled) {
+			return;
+		}
+		for (int i = 0; i < messages.length; i++) {
+			queue.add(messages[i]);
+		}
+		if (running) {
+			notifyAll();
+		} else {
+			running = true;
+			clientComms.execute(this);
+		}
+	}
+
+	/**
+	 * Drops what is queued and stops the thread once it has finished the
+	 * batch in hand.
+	 */
+	synchronized void cancel() {
+		cancelled = true;
+		queue.clear();
+		notifyAll();
+	}
+
+	/**
+	 * @return the number of publishes waiting to be persisted
+	 */
+	synchronized int size() {
+		return queue.size();
+	}
+
+	public void run() {
+		Thread.currentThread().setName(threadName);
+		MqttPublish[] batch;
+		while ((batch = take()) != null) {
+			clientState.persistQueued(this, batch);
+		}
+	}
+
+	private synchronized MqttPublish[] take() {
+		long idleSince = System.currentTimeMillis();
+		while (queue.isEmpty() && !cancelled) {
+			long wait = idleSince + IDLE_TIMEOUT - System.currentTimeMillis();
+			if (wait <= 0) {
+				break;
+			}
+			try {
+				wait(wait);
+			} catch (InterruptedException e) {
+				break;
+			}
+		}
+		if (queue.isEmpty() || cancelled) {
+			running = false;
+			return null;
+		}
+		List<MqttPublish> taken = queue.subList(0, Math.min(queue.size(), MAX_BATCH));
+		MqttPublish[] batch = taken.toArray(new MqttPublish[taken.size()]);
+		taken.clear();
+		return batch;
+	}
+}
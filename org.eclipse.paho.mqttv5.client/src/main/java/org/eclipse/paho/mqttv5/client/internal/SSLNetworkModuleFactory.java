@@ -74,6 +74,7 @@ public class SSLNetworkModuleFactory implements NetworkModuleFactory {
 		// Create the network module...
 		SSLNetworkModule netModule = new SSLNetworkModule((SSLSocketFactory) factory, host, port, clientId);
 		netModule.setSSLhandshakeTimeout(options.getConnectionTimeout());
+		netModule.setSocketOptions(options.getSocketOptions());
 		netModule.setSSLHostnameVerifier(options.getSSLHostnameVerifier());
 		netModule.setHttpsHostnameVerificationEnabled(options.isHttpsHostnameVerificationEnabled());
 		// Ciphers suites need to be set, if they are available
@@ -19,6 +19,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.ConnectException;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
@@ -26,6 +27,7 @@ import java.net.SocketAddress;
 import javax.net.SocketFactory;
 
 import org.eclipse.paho.mqttv5.client.MqttClientException;
+import org.eclipse.paho.mqttv5.client.MqttSocketOptions;
 import org.eclipse.paho.mqttv5.client.logging.Logger;
 import org.eclipse.paho.mqttv5.client.logging.LoggerFactory;
 import org.eclipse.paho.mqttv5.common.MqttException;
@@ -42,6 +44,8 @@ public class TCPNetworkModule implements NetworkModule {
 	private String host;
 	private int port;
 	private int conTimeout;
+	private InetAddress address;
+	private MqttSocketOptions socketOptions = new MqttSocketOptions();
 
 	/**
 	 * Constructs a new TCPNetworkModule using the specified host and
@@ -70,10 +74,17 @@ public class TCPNetworkModule implements NetworkModule {
 		try {
 			// @TRACE 252=connect to host {0} port {1} timeout {2}
 			log.fine(CLASS_NAME,methodName, "252", new Object[] {host, Integer.valueOf(port), Long.valueOf(conTimeout*1000)});
-			SocketAddress sockaddr = new InetSocketAddress(host, port);
+			SocketAddress sockaddr;
+			if (address == null) {
+				sockaddr = new InetSocketAddress(host, port);
+			} else {
+				// keep the host name with the address, for TLS hostname verification
+				sockaddr = new InetSocketAddress(InetAddress.getByAddress(host, address.getAddress()), port);
+			}
 			socket = factory.createSocket();
+			applySocketOptions(socket);
 			socket.connect(sockaddr, conTimeout*1000);
-			socket.setSoTimeout(1000);
+			socket.setSoTimeout(socketOptions.getReadTimeout());
 		}
 		catch (ConnectException ex) {
 			//@TRACE 250=Failed to create TCP socket
@@ -82,6 +93,28 @@ public class TCPNetworkModule implements NetworkModule {
 		}
 	}
 
+	/**
+	 * Applies the socket options that must be set before the socket is
+	 * connected, leaving platform defaults in place where none is given.
+	 */
+	private void applySocketOptions(Socket socket) throws IOException {
+		if (socketOptions.isTcpNoDelay()) {
+			socket.setTcpNoDelay(true);
+		}
+		if (socketOptions.isKeepAlive()) {
+			socket.setKeepAlive(true);
+		}
+		if (socketOptions.getSendBufferSize() != MqttSocketOptions.SYSTEM_DEFAULT) {
+			socket.setSendBufferSize(socketOptions.getSendBufferSize());
+		}
+		if (socketOptions.getReceiveBufferSize() != MqttSocketOptions.SYSTEM_DEFAULT) {
+			socket.setReceiveBufferSize(socketOptions.getReceiveBufferSize());
+		}
+		if (socketOptions.getTrafficClass() != MqttSocketOptions.SYSTEM_DEFAULT) {
+			socket.setTrafficClass(socketOptions.getTrafficClass());
+		}
+	}
+
 	public InputStream getInputStream() throws IOException {
 		return socket.getInputStream();
 	}
@@ -114,8 +147,12 @@ public class TCPNetworkModule implements NetworkModule {
 			// This workaround should not cause any harm in general but you might
 			// want to move it in SSLNetworkModule.
 
-			socket.shutdownInput();
-			socket.close();
+			try {
+				socket.shutdownInput();
+			} finally {
+				// also abandons a connection attempt that is still in progress
+				socket.close();
+			}
 		}
 	}
 
@@ -127,6 +164,25 @@ public class TCPNetworkModule implements NetworkModule {
 		this.conTimeout = timeout;
 	}
 
+	/**
+	 * Sets the address to connect to, instead of the one the host name
+	 * resolves to first. The host name is still used everywhere else, for
+	 * example to verify the server's certificate.
+	 * @param address one of the addresses of the host, or null to resolve the
+	 *            host name when the module is started
+	 */
+	public void setAddress(InetAddress address) {
+		this.address = address;
+	}
+
+	/**
+	 * Set the options to apply to the socket
+	 * @param socketOptions The socket options
+	 */
+	public void setSocketOptions(MqttSocketOptions socketOptions) {
+		this.socketOptions = socketOptions;
+	}
+
 	public String getServerURI() {
 		return "tcp://" + host + ":" + port;
 	}
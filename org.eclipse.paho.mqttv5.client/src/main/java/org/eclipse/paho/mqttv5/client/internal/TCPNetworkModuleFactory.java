@@ -59,6 +59,7 @@ public class TCPNetworkModuleFactory implements NetworkModuleFactory {
 		}
 		TCPNetworkModule networkModule = new TCPNetworkModule(factory, host, port, clientId);
 		networkModule.setConnectTimeout(options.getConnectionTimeout());
+		networkModule.setSocketOptions(options.getSocketOptions());
 		return networkModule;
 	}
 }
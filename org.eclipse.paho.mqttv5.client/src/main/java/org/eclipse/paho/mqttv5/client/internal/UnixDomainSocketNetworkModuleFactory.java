@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - Unix domain socket transport
+ */
+package org.eclipse.paho.mqttv5.client.internal;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.paho.mqttv5.client.MqttConnectionOptions;
+import org.eclipse.paho.mqttv5.client.spi.NetworkModuleFactory;
+import org.eclipse.paho.mqttv5.common.MqttException;
+
+/**
+ * Creates network modules for <code>unix:///path/to/socket</code> URIs, which
+ * connect to a broker on the same host over a Unix domain socket. Java 16 or
+ * later is required; older JVMs reject these URIs.
+ */
+public class UnixDomainSocketNetworkModuleFactory implements NetworkModuleFactory {
+
+	@Override
+	public Set<String> getSupportedUriSchemes() {
+		return Collections.unmodifiableSet(new HashSet<>(Arrays.asList("unix")));
+	}
+
+	@Override
+	public void validateURI(URI brokerUri) throws IllegalArgumentException {
+		String path = brokerUri.getPath();
+		if (path == null || path.isEmpty() || path.endsWith("/")) {
+			throw new IllegalArgumentException("URI path must be the path of a socket file \"" + brokerUri.toString() + "\"");
+		}
+		if (brokerUri.getHost() != null || brokerUri.getPort() != -1) {
+			throw new IllegalArgumentException("URI must not name a host or port \"" + brokerUri.toString() + "\"");
+		}
+		if (!UnixDomainSocketNetworkModule.isSupported()) {
+			throw new IllegalArgumentException("Unix domain sockets require Java 16 or later \"" + brokerUri.toString() + "\"");
+		}
+	}
+
+	@Override
+	public NetworkModule createNetworkModule(URI brokerUri, MqttConnectionOptions options, String clientId)
+			throws MqttException
+	{
+		validateURI(brokerUri);
+		UnixDomainSocketNetworkModule networkModule = new UnixDomainSocketNetworkModule(brokerUri.getPath(), clientId);
+		networkModule.setSocketOptions(options.getSocketOptions());
+		return networkModule;
+	}
+}
@@ -127,6 +127,11 @@ public interface Logger {
 	 * Check if a message of the given level would actually be logged by this
 	 * logger. This check is based on the Loggers effective level, which may be
 	 * inherited from its parent.
+	 * <p>
+	 * The client checks this before building the inserts of trace messages on
+	 * its per message paths, so that switched off trace costs this check and
+	 * allocates nothing. Implementations should keep it cheap.
+	 * </p>
 	 * 
 	 * @param level
 	 *            a message logging level.
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - end to end latency
+ */
+package org.eclipse.paho.mqttv5.client.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in a fixed amount of memory, in the manner of
+ * HdrHistogram. Durations are counted in microseconds, exactly up to 64
+ * and then in 32 buckets for each power of two, which keeps every value
+ * within about 3% of what was recorded, up to about 12 days.
+ * <p>
+ * Recording is a few atomic increments and never allocates, so it can be
+ * done on the threads that send and receive. Reading while recording goes
+ * on gives a view that may be a few values behind, which is fine for
+ * monitoring.
+ * </p>
+ */
+public final class LatencyHistogram {
+	private static final int SUB_BITS = 5;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	private static final int MAX_BITS = 40;
+	private static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+	private static final int BUCKETS = (MAX_BITS - SUB_BITS + 1) * SUB_COUNT;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong(0);
+	private final AtomicLong total = new AtomicLong(0);
+	private final AtomicLong max = new AtomicLong(0);
+
+	/**
+	 * Records a duration.
+	 * @param nanos the duration in nanoseconds, negative values count as 0
+	 */
+	public void recordNanos(long nanos) {
+		long micros = Math.min(Math.max(nanos / 1000, 0), MAX_VALUE);
+		counts.incrementAndGet(indexOf(micros));
+		count.incrementAndGet();
+		total.addAndGet(micros);
+		long highest = max.get();
+		while (micros > highest && !max.compareAndSet(highest, micros)) {
+			highest = max.get();
+		}
+	}
+
+	private static int indexOf(long micros) {
+		if (micros < 2 * SUB_COUNT) {
+			return (int) micros;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(micros) - SUB_BITS;
+		return exponent * SUB_COUNT + (int) (micros >>> exponent);
+	}
+
+	/**
+	 * @return the highest value counted in the bucket
+	 */
+	private static long highestIn(int index) {
+		if (index < 2 * SUB_COUNT) {
+			return index;
+		}
+		int exponent = index / SUB_COUNT - 1;
+		long sub = index % SUB_COUNT + SUB_COUNT;
+		return ((sub + 1) << exponent) - 1;
+	}
+
+	/**
+	 * @return the number of durations recorded
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @param unit the unit to return the total in
+	 * @return the sum of the durations recorded
+	 */
+	public long getTotal(TimeUnit unit) {
+		return unit.convert(total.get(), TimeUnit.MICROSECONDS);
+	}
+
+	/**
+	 * @param unit the unit to return the maximum in
+	 * @return the longest duration recorded
+	 */
+	public long getMax(TimeUnit unit) {
+		return unit.convert(max.get(), TimeUnit.MICROSECONDS);
+	}
+
+	/**
+	 * @param unit the unit to return the mean in
+	 * @return the mean duration, 0 if nothing has been recorded
+	 */
+	public double getMean(TimeUnit unit) {
+		long n = count.get();
+		if (n == 0) {
+			return 0;
+		}
+		return (double) total.get() * 1000 / n / TimeUnit.NANOSECONDS.convert(1, unit);
+	}
+
+	/**
+	 * Returns the duration that the given percentage of the recorded
+	 * durations are no longer than, to the precision of the histogram.
+	 * @param percentile the percentage, from 0 to 100
+	 * @param unit the unit to return the duration in
+	 * @return the duration, 0 if nothing has been recorded
+	 */
+	public long getValueAtPercentile(double percentile, TimeUnit unit) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException();
+		}
+		long n = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			n += counts.get(i);
+		}
+		if (n == 0) {
+			return 0;
+		}
+		long wanted = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= wanted) {
+				return unit.convert(Math.min(highestIn(i), max.get()), TimeUnit.MICROSECONDS);
+			}
+		}
+		return unit.convert(max.get(), TimeUnit.MICROSECONDS);
+	}
+
+	/**
+	 * Forgets everything recorded so far.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.set(0);
+		total.set(0);
+		max.set(0);
+	}
+
+	public String toString() {
+		return "count=" + getCount() + " mean=" + Math.round(getMean(TimeUnit.MICROSECONDS)) + "us p50="
+				+ getValueAtPercentile(50, TimeUnit.MICROSECONDS) + "us p99="
+				+ getValueAtPercentile(99, TimeUnit.MICROSECONDS) + "us max=" + getMax(TimeUnit.MICROSECONDS) + "us";
+	}
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - end to end latency
+ */
+package org.eclipse.paho.mqttv5.client.metrics;
+
+import java.util.List;
+
+import org.eclipse.paho.mqttv5.common.packet.MqttProperties;
+import org.eclipse.paho.mqttv5.common.packet.UserProperty;
+
+/**
+ * Measures the time messages take from being published by one client to
+ * being delivered by another, through any number of servers.
+ * <p>
+ * A client with latency tracing switched on, with
+ * {@link org.eclipse.paho.mqttv5.client.MqttAsyncClient#setLatencyTracing(boolean)},
+ * adds a {@link #USER_PROPERTY_NAME} user property to each message it
+ * publishes, holding the time of publishing in microseconds since the epoch
+ * in base 36, about 10 characters. A message that already carries the
+ * property, because it is being passed on from an earlier publisher, keeps
+ * it, so the time measured is from the first publisher. When such a client
+ * receives a message carrying the property, it records the time since then
+ * in its {@link LatencyHistogram} before passing the message to the
+ * application, which still sees the property.
+ * </p>
+ * <p>
+ * The times are taken from the wall clock, at the precision of
+ * {@link System#nanoTime()}, so latencies measured between machines are only
+ * as good as the synchronization of their clocks. A latency that comes out
+ * negative is recorded as 0.
+ * </p>
+ */
+public final class LatencyTracer {
+
+	/**
+	 * The name of the user property holding the time a message was published.
+	 */
+	public static final String USER_PROPERTY_NAME = "paho-ts";
+
+	private static final int RADIX = 36;
+	private static final long BASE_MICROS = System.currentTimeMillis() * 1000;
+	private static final long BASE_NANOS = System.nanoTime();
+
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	/**
+	 * @return the time now, in microseconds since the epoch
+	 */
+	public static long currentTimeMicros() {
+		return BASE_MICROS + (System.nanoTime() - BASE_NANOS) / 1000;
+	}
+
+	/**
+	 * @param micros
+	 *            a time in microseconds since the epoch
+	 * @return the time as the value of the {@link #USER_PROPERTY_NAME} user
+	 *         property
+	 */
+	public static String format(long micros) {
+		return Long.toString(micros, RADIX);
+	}
+
+	/**
+	 * Returns the time a message was published, from its user properties.
+	 * 
+	 * @param properties
+	 *            the properties of the message, may be null
+	 * @return the time in microseconds since the epoch, or -1 if the message
+	 *         does not carry a time
+	 */
+	public static long getPublishTime(MqttProperties properties) {
+		if (properties == null) {
+			return -1;
+		}
+		List<UserProperty> userProperties = properties.getUserProperties();
+		if (userProperties == null) {
+			return -1;
+		}
+		for (int i = 0; i < userProperties.size(); i++) {
+			UserProperty property = userProperties.get(i);
+			if (USER_PROPERTY_NAME.equals(property.getKey())) {
+				try {
+					return Long.parseLong(property.getValue(), RADIX);
+				} catch (NumberFormatException e) {
+					return -1;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Records the latency of a received message, if it carries the time it
+	 * was published.
+	 * 
+	 * @param properties
+	 *            the properties of the message, may be null
+	 * @return whether the message carried a time
+	 */
+	public boolean messageReceived(MqttProperties properties) {
+		long published = getPublishTime(properties);
+		if (published < 0) {
+			return false;
+		}
+		latency.recordNanos((currentTimeMicros() - published) * 1000);
+		return true;
+	}
+
+	/**
+	 * @return the times from messages being published to them being delivered
+	 *         to this client
+	 */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+}
@@ -0,0 +1,5 @@
+/**
+ * This package holds the classes that measure the time messages take from
+ * being published to being delivered.
+ */
+package org.eclipse.paho.mqttv5.client.metrics;
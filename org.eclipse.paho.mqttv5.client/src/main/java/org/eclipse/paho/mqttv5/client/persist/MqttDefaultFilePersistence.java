@@ -23,7 +23,9 @@ import java.io.IOException;
 import java.util.Enumeration;
 import java.util.Vector;
 
+import org.eclipse.paho.mqttv5.client.MqttBatchPersistence;
 import org.eclipse.paho.mqttv5.client.MqttClientPersistence;
+import org.eclipse.paho.mqttv5.client.MqttConcurrentPersistence;
 import org.eclipse.paho.mqttv5.client.internal.FileLock;
 import org.eclipse.paho.mqttv5.client.internal.MqttPersistentData;
 import org.eclipse.paho.mqttv5.common.MqttPersistable;
@@ -41,10 +43,12 @@ import org.eclipse.paho.mqttv5.common.MqttPersistenceException;
  * The sub-directory's name is created from a concatenation of the client ID and connection key
  * with any instance of '/', '\\', ':' or ' ' removed.
  */
-public class MqttDefaultFilePersistence implements MqttClientPersistence {
+public class MqttDefaultFilePersistence implements MqttBatchPersistence, MqttConcurrentPersistence {
 	private static final String MESSAGE_FILE_EXTENSION = ".msg";
 	private static final String MESSAGE_BACKUP_FILE_EXTENSION = ".bup";
 	private static final String LOCK_FILENAME = ".lck"; 
+	/** The most entry files {@link #putAll} has open at once. */
+	private static final int MAX_OPEN_FILES = 64;
 
 	private File dataDir;
 	private File clientDir = null;
@@ -196,6 +200,85 @@ public class MqttDefaultFilePersistence implements MqttClientPersistence {
 		}
 	}
 
+	/**
+	 * Writes the entries in groups of up to {@link #MAX_OPEN_FILES}, syncing
+	 * and closing each group once it is written, so the data of a group is
+	 * flushed to the device together rather than file by file without a large
+	 * batch running out of file descriptors. Existing entries are backed up
+	 * until every write has completed.
+	 * @see org.eclipse.paho.mqttv5.client.MqttBatchPersistence#putAll(java.lang.String[], org.eclipse.paho.mqttv5.common.MqttPersistable[])
+	 */
+	public void putAll(String[] keys, MqttPersistable[] messages) throws MqttPersistenceException {
+		checkIsOpen();
+		File[] files = new File[keys.length];
+		File[] backupFiles = new File[keys.length];
+		FileOutputStream[] streams = new FileOutputStream[keys.length];
+		int synced = 0;
+		boolean complete = false;
+		try {
+			for (int i = 0; i < keys.length; i++) {
+				files[i] = new File(clientDir, keys[i]+MESSAGE_FILE_EXTENSION);
+				if (files[i].exists()) {
+					backupFiles[i] = new File(clientDir, keys[i]+MESSAGE_FILE_EXTENSION+MESSAGE_BACKUP_FILE_EXTENSION);
+					if (!files[i].renameTo(backupFiles[i])) {
+						backupFiles[i].delete();
+						files[i].renameTo(backupFiles[i]);
+					}
+				}
+				streams[i] = new FileOutputStream(files[i]);
+				MqttPersistable message = messages[i];
+				streams[i].write(message.getHeaderBytes(), message.getHeaderOffset(), message.getHeaderLength());
+				if (message.getPayloadBytes()!=null) {
+					streams[i].write(message.getPayloadBytes(), message.getPayloadOffset(), message.getPayloadLength());
+				}
+				if (i + 1 - synced == MAX_OPEN_FILES) {
+					syncAndClose(streams, synced, i + 1);
+					synced = i + 1;
+				}
+			}
+			syncAndClose(streams, synced, keys.length);
+			complete = true;
+		}
+		catch (IOException ex) {
+			throw new MqttPersistenceException(ex);
+		}
+		finally {
+			for (int i = 0; i < keys.length; i++) {
+				if (streams[i] != null) {
+					try {
+						streams[i].close();
+					} catch (IOException ex) {
+					}
+				}
+				if (files[i] == null) {
+					continue;
+				}
+				if (complete) {
+					if (backupFiles[i] != null) {
+						backupFiles[i].delete();
+					}
+				} else {
+					// The batch has failed - remove what was written and restore any backup
+					files[i].delete();
+					if (backupFiles[i] != null) {
+						backupFiles[i].renameTo(files[i]);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Syncs and closes the streams from one index up to another.
+	 */
+	private static void syncAndClose(FileOutputStream[] streams, int from, int to) throws IOException {
+		for (int i = from; i < to; i++) {
+			streams[i].getFD().sync();
+			streams[i].close();
+			streams[i] = null;
+		}
+	}
+
 	public MqttPersistable get(String key) throws MqttPersistenceException {
 		checkIsOpen();
 		MqttPersistable result;
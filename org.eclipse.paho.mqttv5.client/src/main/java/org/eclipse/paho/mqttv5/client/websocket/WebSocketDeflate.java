@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - WebSocket permessage-deflate
+ */
+package org.eclipse.paho.mqttv5.client.websocket;
+
+import java.io.IOException;
+
+/**
+ * The parameters of the permessage-deflate extension (RFC 7692) agreed with
+ * the server for one connection.
+ * <p>
+ * A compressed message is raw Deflate data ending in a sync flush, with the
+ * final four bytes of the flush, which are always {@link #TAIL}, left off. The
+ * compression context is carried from one message to the next unless the
+ * extension parameters say otherwise.
+ * </p>
+ * <p>
+ * {@link java.util.zip.Deflater} always uses the largest LZ77 window of
+ * {@value #MAX_WINDOW_BITS} bits. When the server limits the client to a
+ * smaller window, the client compresses each message on its own, and sends
+ * messages longer than the window uncompressed, so that no back reference
+ * can reach further than the server allows. Any window the server uses can
+ * be decompressed.
+ * </p>
+ */
+class WebSocketDeflate {
+
+	/** The extension token used in the Sec-WebSocket-Extensions header. */
+	static final String EXTENSION_NAME = "permessage-deflate";
+	/** The smallest LZ77 window, in bits, that can be negotiated. */
+	static final int MIN_WINDOW_BITS = 8;
+	/** The largest LZ77 window, in bits, that can be negotiated. */
+	static final int MAX_WINDOW_BITS = 15;
+	/** The bytes removed from the end of every compressed message. */
+	static final byte[] TAIL = { 0x00, 0x00, (byte) 0xff, (byte) 0xff };
+
+	private static final String SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+	private static final String CLIENT_NO_CONTEXT_TAKEOVER = "client_no_context_takeover";
+	private static final String SERVER_MAX_WINDOW_BITS = "server_max_window_bits";
+	private static final String CLIENT_MAX_WINDOW_BITS = "client_max_window_bits";
+
+	private final boolean clientNoContextTakeover;
+	private final boolean serverNoContextTakeover;
+	private final int clientWindowBits;
+	private final int serverWindowBits;
+
+	WebSocketDeflate(boolean clientNoContextTakeover, boolean serverNoContextTakeover, int clientWindowBits,
+			int serverWindowBits) {
+		this.clientNoContextTakeover = clientNoContextTakeover;
+		this.serverNoContextTakeover = serverNoContextTakeover;
+		this.clientWindowBits = clientWindowBits;
+		this.serverWindowBits = serverWindowBits;
+	}
+
+	/**
+	 * Builds the extension offer sent in the handshake request.
+	 * @param contextTakeover false to ask both ends to compress every message
+	 *            on its own
+	 * @param windowBits the largest window, in bits, either end should use
+	 * @return the value of the Sec-WebSocket-Extensions header
+	 */
+	static String offer(boolean contextTakeover, int windowBits) {
+		StringBuffer offer = new StringBuffer(EXTENSION_NAME);
+		offer.append("; ").append(CLIENT_MAX_WINDOW_BITS);
+		if (windowBits < MAX_WINDOW_BITS) {
+			offer.append('=').append(windowBits);
+			offer.append("; ").append(SERVER_MAX_WINDOW_BITS).append('=').append(windowBits);
+		}
+		if (!contextTakeover) {
+			offer.append("; ").append(CLIENT_NO_CONTEXT_TAKEOVER);
+			offer.append("; ").append(SERVER_NO_CONTEXT_TAKEOVER);
+		}
+		return offer.toString();
+	}
+
+	/**
+	 * Parses the extensions the server accepted in its handshake response to
+	 * an {@link #offer(boolean, int)}.
+	 * @param response the value of the Sec-WebSocket-Extensions header
+	 * @param contextTakeover the value the offer was built with
+	 * @param windowBits the value the offer was built with
+	 * @return the agreed parameters, or null if the server declined the offer
+	 * @throws IOException if the response is not a valid answer to the offer
+	 */
+	static WebSocketDeflate accept(String response, boolean contextTakeover, int windowBits) throws IOException {
+		WebSocketDeflate accepted = null;
+		for (String extension : response.split(",")) {
+			String[] params = extension.split(";");
+			String name = params[0].trim();
+			if (name.length() == 0) {
+				continue;
+			}
+			if (!name.equalsIgnoreCase(EXTENSION_NAME)) {
+				throw new IOException("WebSocket Response header: Unexpected extension: " + name);
+			}
+			if (accepted != null) {
+				throw new IOException("WebSocket Response header: " + EXTENSION_NAME + " accepted twice");
+			}
+			boolean clientNoContextTakeover = !contextTakeover;
+			boolean serverNoContextTakeover = false;
+			int clientWindowBits = -1;
+			int serverWindowBits = -1;
+			for (int i = 1; i < params.length; i++) {
+				String param = params[i].trim();
+				String value = null;
+				int equals = param.indexOf('=');
+				if (equals >= 0) {
+					value = param.substring(equals + 1).trim();
+					param = param.substring(0, equals).trim();
+				}
+				if (param.equalsIgnoreCase(CLIENT_NO_CONTEXT_TAKEOVER) && value == null) {
+					clientNoContextTakeover = true;
+				} else if (param.equalsIgnoreCase(SERVER_NO_CONTEXT_TAKEOVER) && value == null) {
+					serverNoContextTakeover = true;
+				} else if (param.equalsIgnoreCase(CLIENT_MAX_WINDOW_BITS) && clientWindowBits < 0) {
+					clientWindowBits = parseWindowBits(param, value);
+				} else if (param.equalsIgnoreCase(SERVER_MAX_WINDOW_BITS) && serverWindowBits < 0) {
+					serverWindowBits = parseWindowBits(param, value);
+				} else {
+					throw new IOException("WebSocket Response header: Invalid " + EXTENSION_NAME + " parameter: "
+							+ params[i].trim());
+				}
+			}
+			if (clientWindowBits < 0 || clientWindowBits > windowBits) {
+				clientWindowBits = windowBits;
+			}
+			if (serverWindowBits < 0) {
+				serverWindowBits = MAX_WINDOW_BITS;
+			}
+			accepted = new WebSocketDeflate(clientNoContextTakeover, serverNoContextTakeover, clientWindowBits,
+					serverWindowBits);
+		}
+		return accepted;
+	}
+
+	private static int parseWindowBits(String param, String value) throws IOException {
+		try {
+			int bits = Integer.parseInt(value);
+			if (bits >= MIN_WINDOW_BITS && bits <= MAX_WINDOW_BITS) {
+				return bits;
+			}
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+		throw new IOException("WebSocket Response header: Invalid " + param + ": " + value);
+	}
+
+	/**
+	 * @param length the length of an outbound message
+	 * @return true if the message can be sent compressed within the agreed
+	 *         window
+	 */
+	boolean isCompressible(int length) {
+		return clientWindowBits == MAX_WINDOW_BITS || length <= (1 << clientWindowBits);
+	}
+
+	/**
+	 * @return true if the client must reset its compressor after each message
+	 */
+	boolean isClientResetPerMessage() {
+		return clientNoContextTakeover || clientWindowBits < MAX_WINDOW_BITS;
+	}
+
+	/**
+	 * @return true if the server resets its compressor after each message,
+	 *         so the client must reset its decompressor too
+	 */
+	boolean isServerNoContextTakeover() {
+		return serverNoContextTakeover;
+	}
+
+	/**
+	 * @return the largest window, in bits, the client may compress with
+	 */
+	int getClientWindowBits() {
+		return clientWindowBits;
+	}
+
+	/**
+	 * @return the largest window, in bits, the server compresses with
+	 */
+	int getServerWindowBits() {
+		return serverWindowBits;
+	}
+
+	public String toString() {
+		return EXTENSION_NAME + " [clientNoContextTakeover=" + clientNoContextTakeover + ", serverNoContextTakeover="
+				+ serverNoContextTakeover + ", clientWindowBits=" + clientWindowBits + ", serverWindowBits="
+				+ serverWindowBits + "]";
+	}
+}
@@ -21,6 +21,8 @@ import java.nio.ByteBuffer;
 import java.security.SecureRandom;
 
 public class WebSocketFrame {
+
+	private static final SecureRandom RANDOM = new SecureRandom();
 	
 	public static final int frameLengthOverhead = 6;
 	
@@ -102,9 +104,7 @@ public class WebSocketFrame {
 			// Demask payload if needed
 			if(masked)
 			{
-				for(int i = 0; i < this.payload.length; i++){
-					this.payload[i] ^= maskingKey[i % 4];
-				}
+				WebSocketMask.mask(this.payload, 0, this.payload.length, WebSocketMask.toKey(maskingKey, 0), 0);
 			}
 			return;
 		}
@@ -175,9 +175,7 @@ public class WebSocketFrame {
 			// Demask if needed
 			if(masked)
 			{
-				for(int i = 0; i < this.payload.length; i++){
-					this.payload[i] ^= maskingKey[i % 4];
-				}
+				WebSocketMask.mask(this.payload, 0, this.payload.length, WebSocketMask.toKey(maskingKey, 0), 0);
 			}
 			return;
 		} else if(this.opcode == 8){
@@ -209,9 +207,9 @@ public class WebSocketFrame {
 		byte[] mask = generateMaskingKey();
 		appendLengthAndMask(buffer, this.payload.length, mask);
 
-		for(int i = 0; i < this.payload.length; i ++){
-			buffer.put((byte)(this.payload[i] ^=mask[i % 4]));
-		}
+		int payloadStart = buffer.position();
+		buffer.put(this.payload);
+		WebSocketMask.mask(buffer.array(), payloadStart, this.payload.length, WebSocketMask.toKey(mask, 0), 0);
 
 		buffer.flip();
 		return buffer.array();
@@ -291,12 +289,9 @@ public class WebSocketFrame {
 	 * @return ByteArray containing the key;
 	 */
 	public static byte[] generateMaskingKey(){
-		SecureRandom secureRandomGenerator = new SecureRandom();
-		int a = secureRandomGenerator.nextInt(255);
-		int b = secureRandomGenerator.nextInt(255);
-		int c = secureRandomGenerator.nextInt(255);
-		int d = secureRandomGenerator.nextInt(255);
-		return new byte[] {(byte) a,(byte) b,(byte) c,(byte) d};
+		byte[] key = new byte[4];
+		RANDOM.nextBytes(key);
+		return key;
 	}
 
 
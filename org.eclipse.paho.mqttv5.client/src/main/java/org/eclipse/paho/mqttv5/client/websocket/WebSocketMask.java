@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - word-wise WebSocket masking
+ */
+package org.eclipse.paho.mqttv5.client.websocket;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+
+/**
+ * Applies WebSocket masking keys to payloads, and generates the keys for one
+ * connection.
+ * <p>
+ * Masking XORs the payload with the four byte key repeated. Rather than a
+ * byte and a modulo at a time, the key is widened to a long and applied eight
+ * bytes at a time, leaving only the last few bytes to do singly.
+ * </p>
+ * <p>
+ * Keys are drawn from a {@link SecureRandom} as RFC 6455 asks, but a block
+ * of keys at a time, so the generator is only consulted once every
+ * {@link #KEYS_PER_REFILL} frames. An instance is not thread safe.
+ * </p>
+ */
+class WebSocketMask {
+
+	/** The number of keys generated each time the random source is used. */
+	static final int KEYS_PER_REFILL = 64;
+
+	private final SecureRandom random;
+	private final byte[] keys = new byte[KEYS_PER_REFILL * 4];
+	private int position = keys.length;
+
+	WebSocketMask() {
+		this(new SecureRandom());
+	}
+
+	WebSocketMask(SecureRandom random) {
+		this.random = random;
+	}
+
+	/**
+	 * @return a new masking key, the first mask byte in the most significant
+	 * byte
+	 */
+	int nextKey() {
+		if (position == keys.length) {
+			random.nextBytes(keys);
+			position = 0;
+		}
+		int key = toKey(keys, position);
+		position += 4;
+		return key;
+	}
+
+	/**
+	 * Reads a masking key as it appears in a frame.
+	 * @param bytes the array holding the key
+	 * @param offset the offset of the first key byte
+	 * @return the key, the first mask byte in the most significant byte
+	 */
+	static int toKey(byte[] bytes, int offset) {
+		return ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16)
+				| ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+	}
+
+	/**
+	 * Masks, or unmasks, bytes in place.
+	 * @param bytes the array holding the bytes
+	 * @param offset the offset of the first byte
+	 * @param length the number of bytes
+	 * @param key the masking key
+	 * @param keyOffset the position in the payload of the first byte, modulo 4
+	 */
+	static void mask(byte[] bytes, int offset, int length, int key, int keyOffset) {
+		int rotated = Integer.rotateLeft(key, 8 * (keyOffset & 3));
+		int end = offset + length;
+		int index = offset;
+		if (length >= 8) {
+			long wide = ((long) rotated << 32) | (rotated & 0xffffffffL);
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			for (; index <= end - 8; index += 8) {
+				buffer.putLong(index, buffer.getLong(index) ^ wide);
+			}
+		}
+		for (; index < end; index++) {
+			bytes[index] ^= (byte) (rotated >>> (24 - 8 * ((index - offset) & 3)));
+		}
+	}
+}
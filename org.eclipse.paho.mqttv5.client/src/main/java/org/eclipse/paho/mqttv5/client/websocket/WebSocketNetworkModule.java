@@ -15,12 +15,9 @@
  */
 package org.eclipse.paho.mqttv5.client.websocket;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.Map;
 import javax.net.SocketFactory;
@@ -38,24 +35,18 @@ public class WebSocketNetworkModule extends TCPNetworkModule {
 	private String uri;
 	private String host;
 	private int port;
-	private PipedInputStream pipedInputStream;
-	private WebSocketReceiver webSocketReceiver;
-	ByteBuffer recievedPayload;
+	private WebSocketInputStream webSocketInputStream;
+	private WebSocketOutputStream webSocketOutputStream;
+	private boolean deflateEnabled = false;
+	private boolean deflateContextTakeover = true;
+	private int deflateWindowBits = WebSocketDeflate.MAX_WINDOW_BITS;
 	Map<String, String> customWebSocketHeaders;
 
-	/**
-	 * Overrides the flush method.
-	 * This allows us to encode the MQTT payload into a WebSocket
-	 *  Frame before passing it through to the real socket.
-	 */
-	private ByteArrayOutputStream outputStream = new ExtendedByteArrayOutputStream(this);
-	
 	public WebSocketNetworkModule(SocketFactory factory, String uri, String host, int port, String resourceContext){
 		super(factory, host, port, resourceContext);
 		this.uri = uri;
 		this.host = host;
 		this.port = port;
-		this.pipedInputStream = new PipedInputStream();
 		
 		log.setResourceName(resourceContext);
 	}
@@ -63,9 +54,14 @@ public class WebSocketNetworkModule extends TCPNetworkModule {
 	public void start() throws IOException, MqttException {
 		super.start();
 		WebSocketHandshake handshake = new WebSocketHandshake(getSocketInputStream(), getSocketOutputStream(), uri, host, port, customWebSocketHeaders);
+		if (deflateEnabled) {
+			handshake.setPerMessageDeflate(deflateContextTakeover, deflateWindowBits);
+		}
 		handshake.execute();
-		this.webSocketReceiver = new WebSocketReceiver(getSocketInputStream(), pipedInputStream);
-		webSocketReceiver.start("webSocketReceiver");
+		WebSocketDeflate deflate = handshake.getPerMessageDeflate();
+		this.webSocketOutputStream = new WebSocketOutputStream(getSocketOutputStream(),
+				WebSocketOutputStream.DEFAULT_FRAME_SIZE, deflate);
+		this.webSocketInputStream = new WebSocketInputStream(getSocketInputStream(), webSocketOutputStream, deflate);
 	}
 	
 	OutputStream getSocketOutputStream() throws IOException {
@@ -77,11 +73,11 @@ public class WebSocketNetworkModule extends TCPNetworkModule {
 	}
 	
 	public InputStream getInputStream() throws IOException {
-		return pipedInputStream;
+		return webSocketInputStream;
 	}
 	
 	public OutputStream getOutputStream() throws IOException {
-		return outputStream;
+		return webSocketOutputStream;
 	}
 
 	public void setCustomWebSocketHeaders(Map<String, String> customWebSocketHeaders) {
@@ -92,18 +88,31 @@ public class WebSocketNetworkModule extends TCPNetworkModule {
 	 * Stops the module, by closing the TCP socket.
 	 */
 	public void stop() throws IOException {
-		// Creating Close Frame
-		WebSocketFrame frame = new WebSocketFrame((byte)0x08, true, "1000".getBytes());
-		byte[] rawFrame = frame.encodeFrame();
-		getSocketOutputStream().write(rawFrame);
-		getSocketOutputStream().flush();
-
-		if(webSocketReceiver != null){
-			webSocketReceiver.stop();
+		if (webSocketOutputStream != null) {
+			webSocketInputStream.setClosing();
+			// Creating Close Frame
+			webSocketOutputStream.writeControlFrame((byte)0x08, "1000".getBytes());
 		}
 		super.stop();
+		if (webSocketOutputStream != null) {
+			webSocketOutputStream.end();
+			webSocketInputStream.end();
+		}
 	}
 	
+	/**
+	 * Offers the permessage-deflate extension when connecting, so that
+	 * messages are compressed if the server accepts it.
+	 * @param contextTakeover false to ask both ends to compress every message
+	 *            on its own
+	 * @param windowBits the largest compression window, in bits, from 8 to 15
+	 */
+	public void setPerMessageDeflate(boolean contextTakeover, int windowBits) {
+		this.deflateEnabled = true;
+		this.deflateContextTakeover = contextTakeover;
+		this.deflateWindowBits = windowBits;
+	}
+
 	public String getServerURI() {
 		return "ws://" + host + ":" + port;
 	}
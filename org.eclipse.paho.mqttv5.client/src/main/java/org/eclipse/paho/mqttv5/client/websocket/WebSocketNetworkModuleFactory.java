@@ -55,7 +55,12 @@ public class WebSocketNetworkModuleFactory implements NetworkModuleFactory {
 		WebSocketNetworkModule netModule = new WebSocketNetworkModule(factory, brokerUri.toString(), host, port,
 				clientId);
 		netModule.setConnectTimeout(options.getConnectionTimeout());
+		netModule.setSocketOptions(options.getSocketOptions());
 		netModule.setCustomWebSocketHeaders(options.getCustomWebSocketHeaders());
+		if (options.isWebSocketCompression()) {
+			netModule.setPerMessageDeflate(options.isWebSocketCompressionContextTakeover(),
+					options.getWebSocketCompressionWindowBits());
+		}
 		return netModule;
 	}
 }
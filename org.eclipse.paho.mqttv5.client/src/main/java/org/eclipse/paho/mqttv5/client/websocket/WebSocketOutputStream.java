@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - inline WebSocket framing
+ */
+package org.eclipse.paho.mqttv5.client.websocket;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Wraps the data written to it in masked binary WebSocket frames.
+ * <p>
+ * Data is copied into a frame buffer that keeps room for the frame header in
+ * front of the payload. On {@link #flush()}, or when the buffer fills, the
+ * payload is masked in place, the header is written into that room and the
+ * whole frame is passed to the socket in a single write. The buffer is reused
+ * for every frame. A partial MQTT packet may end a frame, as the protocol does
+ * not align packets with frames.
+ * </p>
+ * <p>
+ * When permessage-deflate has been negotiated, each frame is a complete
+ * message whose payload is compressed, on flush, with a {@link Deflater} kept
+ * for the life of the connection.
+ * </p>
+ */
+class WebSocketOutputStream extends OutputStream {
+
+	// The largest frame header: 2 bytes, an 8 byte length and a 4 byte mask
+	private static final int MAX_HEADER_LENGTH = 14;
+	/** The default largest payload of a single frame. */
+	static final int DEFAULT_FRAME_SIZE = 16384;
+
+	private final OutputStream out;
+	private final byte[] buffer;
+	private final byte[] controlBuffer = new byte[MAX_HEADER_LENGTH + 125];
+	private final WebSocketMask mask = new WebSocketMask();
+	private final WebSocketDeflate deflate;
+	private final Deflater deflater;
+	private byte[] compressed;
+	private boolean ended = false;
+	private int position = MAX_HEADER_LENGTH;
+
+	/**
+	 * @param out the socket output stream, positioned after the handshake
+	 */
+	WebSocketOutputStream(OutputStream out) {
+		this(out, DEFAULT_FRAME_SIZE);
+	}
+
+	/**
+	 * @param out the socket output stream, positioned after the handshake
+	 * @param frameSize the largest payload to put in a single frame
+	 */
+	WebSocketOutputStream(OutputStream out, int frameSize) {
+		this(out, frameSize, null);
+	}
+
+	/**
+	 * @param out the socket output stream, positioned after the handshake
+	 * @param frameSize the largest payload to put in a single frame
+	 * @param deflate the negotiated permessage-deflate parameters, or null to
+	 *            send uncompressed frames
+	 */
+	WebSocketOutputStream(OutputStream out, int frameSize, WebSocketDeflate deflate) {
+		this.out = out;
+		this.buffer = new byte[MAX_HEADER_LENGTH + frameSize];
+		this.deflate = deflate;
+		if (deflate != null) {
+			this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			this.compressed = new byte[buffer.length + 64];
+		} else {
+			this.deflater = null;
+		}
+	}
+
+	public synchronized void write(int b) throws IOException {
+		if (position == buffer.length) {
+			writeFrame();
+		}
+		buffer[position++] = (byte) b;
+	}
+
+	public synchronized void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			if (position == buffer.length) {
+				writeFrame();
+			}
+			int count = Math.min(len, buffer.length - position);
+			System.arraycopy(b, off, buffer, position, count);
+			position += count;
+			off += count;
+			len -= count;
+		}
+	}
+
+	public synchronized void flush() throws IOException {
+		if (position > MAX_HEADER_LENGTH) {
+			writeFrame();
+		}
+		out.flush();
+	}
+
+	public void close() throws IOException {
+		out.close();
+	}
+
+	/**
+	 * Frees the compressor, if there is one. Data written afterwards is
+	 * rejected.
+	 */
+	synchronized void end() {
+		if (deflater != null && !ended) {
+			ended = true;
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Writes a complete control frame straight away. Any data frame being
+	 * built is unaffected, as data frames only reach the socket whole.
+	 * @param opcode the control frame opcode
+	 * @param payload the frame payload, at most 125 bytes
+	 * @throws IOException if the frame could not be written
+	 */
+	synchronized void writeControlFrame(byte opcode, byte[] payload) throws IOException {
+		int key = mask.nextKey();
+		controlBuffer[0] = (byte) (0x80 | (opcode & 0x0f));
+		controlBuffer[1] = (byte) (0x80 | payload.length);
+		putKey(controlBuffer, 2, key);
+		System.arraycopy(payload, 0, controlBuffer, 6, payload.length);
+		WebSocketMask.mask(controlBuffer, 6, payload.length, key, 0);
+		out.write(controlBuffer, 0, 6 + payload.length);
+		out.flush();
+	}
+
+	/**
+	 * Sends the buffered payload as a frame, compressing it first if
+	 * permessage-deflate is in use.
+	 */
+	private void writeFrame() throws IOException {
+		int length = position - MAX_HEADER_LENGTH;
+		position = MAX_HEADER_LENGTH;
+		if (deflater != null && deflate.isCompressible(length)) {
+			writeFrame(compressed, deflate(length), true);
+		} else {
+			writeFrame(buffer, length, false);
+		}
+	}
+
+	/**
+	 * Compresses the buffered payload into the compressed buffer, after the
+	 * room kept for the header.
+	 * @return the length of the compressed payload
+	 */
+	private int deflate(int length) throws IOException {
+		if (ended) {
+			throw new IOException("WebSocket stream closed");
+		}
+		deflater.setInput(buffer, MAX_HEADER_LENGTH, length);
+		int end = MAX_HEADER_LENGTH;
+		while (true) {
+			end += deflater.deflate(compressed, end, compressed.length - end, Deflater.SYNC_FLUSH);
+			// a sync flush is complete once it leaves room in the buffer
+			if (end < compressed.length) {
+				break;
+			}
+			compressed = Arrays.copyOf(compressed, compressed.length * 2);
+		}
+		if (deflate.isClientResetPerMessage()) {
+			deflater.reset();
+		}
+		return end - MAX_HEADER_LENGTH - WebSocketDeflate.TAIL.length;
+	}
+
+	/**
+	 * Masks a payload, writes the header in front of it and sends the frame.
+	 * @param frame the buffer holding the payload after the room kept for the
+	 *            header
+	 * @param length the length of the payload
+	 * @param compressed true if the payload is compressed
+	 */
+	private void writeFrame(byte[] frame, int length, boolean compressed) throws IOException {
+		int key = mask.nextKey();
+		WebSocketMask.mask(frame, MAX_HEADER_LENGTH, length, key, 0);
+		int extended = (length > 0xFFFF) ? 8 : (length >= 126) ? 2 : 0;
+		int start = MAX_HEADER_LENGTH - (2 + extended + 4);
+		int index = start;
+		// final binary frame, with RSV1 marking a compressed message
+		frame[index++] = (byte) (compressed ? 0xc2 : 0x82);
+		if (extended == 8) {
+			frame[index++] = (byte) 0xff;
+			for (int shift = 56; shift >= 0; shift -= 8) {
+				frame[index++] = (byte) (((long) length) >>> shift);
+			}
+		} else if (extended == 2) {
+			frame[index++] = (byte) 0xfe;
+			frame[index++] = (byte) (length >>> 8);
+			frame[index++] = (byte) length;
+		} else {
+			frame[index++] = (byte) (0x80 | length);
+		}
+		putKey(frame, index, key);
+		out.write(frame, start, MAX_HEADER_LENGTH + length - start);
+	}
+
+	private static void putKey(byte[] bytes, int offset, int key) {
+		bytes[offset] = (byte) (key >>> 24);
+		bytes[offset + 1] = (byte) (key >>> 16);
+		bytes[offset + 2] = (byte) (key >>> 8);
+		bytes[offset + 3] = (byte) key;
+	}
+}
@@ -67,9 +67,14 @@ public class WebSocketSecureNetworkModuleFactory implements NetworkModuleFactory
 		WebSocketSecureNetworkModule netModule = new WebSocketSecureNetworkModule((SSLSocketFactory) factory,
 				brokerUri.toString(), host, port, clientId);
 		netModule.setSSLhandshakeTimeout(options.getConnectionTimeout());
+		netModule.setSocketOptions(options.getSocketOptions());
 		netModule.setSSLHostnameVerifier(options.getSSLHostnameVerifier());
 		netModule.setHttpsHostnameVerificationEnabled(options.isHttpsHostnameVerificationEnabled());
 		netModule.setCustomWebSocketHeaders(options.getCustomWebSocketHeaders());
+		if (options.isWebSocketCompression()) {
+			netModule.setPerMessageDeflate(options.isWebSocketCompressionContextTakeover(),
+					options.getWebSocketCompressionWindowBits());
+		}
 		// Ciphers suites need to be set, if they are available
 		if (wSSFactoryFactory != null) {
 			String[] enabledCiphers = wSSFactoryFactory.getEnabledCipherSuites(null);
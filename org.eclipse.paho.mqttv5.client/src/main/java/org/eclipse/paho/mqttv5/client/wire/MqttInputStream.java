@@ -23,12 +23,18 @@ import java.io.InputStream;
 import java.net.SocketTimeoutException;
 
 import org.eclipse.paho.mqttv5.client.MqttClientException;
+import org.eclipse.paho.mqttv5.client.MqttStreamingCallback;
 import org.eclipse.paho.mqttv5.client.internal.MqttState;
 import org.eclipse.paho.mqttv5.client.logging.Logger;
 import org.eclipse.paho.mqttv5.client.logging.LoggerFactory;
 import org.eclipse.paho.mqttv5.common.ExceptionHelper;
+import org.eclipse.paho.mqttv5.common.MqttBuffer;
+import org.eclipse.paho.mqttv5.common.MqttBufferPool;
 import org.eclipse.paho.mqttv5.common.MqttException;
+import org.eclipse.paho.mqttv5.common.MqttMessage;
 import org.eclipse.paho.mqttv5.common.packet.MqttDataTypes;
+import org.eclipse.paho.mqttv5.common.packet.MqttPublish;
+import org.eclipse.paho.mqttv5.common.packet.MqttTopicCache;
 import org.eclipse.paho.mqttv5.common.packet.MqttWireMessage;
 
 
@@ -46,6 +52,10 @@ public class MqttInputStream extends InputStream {
 	private int remLen;
 	private int packetLen;
 	private byte[] packet;
+	private int packetOffset;
+	private byte first;
+	private MqttBuffer pooled;
+	private final MqttTopicCache topicCache = new MqttTopicCache();
 
 	public MqttInputStream(MqttState clientState, InputStream in, String clientId) {
 		this.clientState = clientState;
@@ -64,8 +74,20 @@ public class MqttInputStream extends InputStream {
 	}
 	
 	public void close() throws IOException {
+		releasePooled();
 		in.close();
 	}
+
+	/**
+	 * Hands back the pooled buffer of a packet that will not be completed.
+	 */
+	private void releasePooled() {
+		MqttBuffer buffer = pooled;
+		pooled = null;
+		if (buffer != null) {
+			buffer.release();
+		}
+	}
 	
 	/**
 	 * Reads an <code>MqttWireMessage</code> from the stream.
@@ -93,7 +115,7 @@ public class MqttInputStream extends InputStream {
 				// closing the connection.
 				bais.reset();
 				
-				byte first = in.readByte();
+				first = in.readByte();
 				clientState.notifyReceivedBytes(1);
 
 				byte type = (byte) ((first >>> 4) & 0x0F);
@@ -109,12 +131,34 @@ public class MqttInputStream extends InputStream {
 				remLen = MqttDataTypes.readVariableByteInteger(in).getValue();
 				bais.write(first);
 				bais.write(MqttWireMessage.encodeVariableByteInteger((int)remLen));
-				packet = new byte[(int)(bais.size()+remLen)];
 				if(this.clientState.getIncomingMaximumPacketSize() != null && 
 						bais.size()+remLen > this.clientState.getIncomingMaximumPacketSize() ) {
 					// Incoming packet is too large
 					throw ExceptionHelper.createMqttException(MqttClientException.REASON_CODE_INCOMING_PACKET_TOO_LARGE);
 				}
+				MqttStreamingCallback streaming = clientState.getStreamingCallback();
+				if (streaming != null && type == MqttWireMessage.MESSAGE_TYPE_PUBLISH && ((first >> 1) & 0x03) < 2
+						&& bais.size() + remLen >= clientState.getStreamingThreshold()) {
+					int length = remLen;
+					remLen = -1;
+					message = readStreamed(length, streaming);
+					// @TRACE 530= Received {0} 
+					if (log.isLoggable(Logger.FINE)) {
+						log.fine(CLASS_NAME, methodName, "530",new Object[] {message});
+					}
+					return message;
+				}
+				MqttBufferPool pool = clientState.getBufferPool();
+				if (pool != null && type == MqttWireMessage.MESSAGE_TYPE_PUBLISH && ((first >> 1) & 0x03) < 2) {
+					// QoS 0 and 1 publishes are read straight into a pooled
+					// buffer which becomes the message payload
+					pooled = pool.acquire(remLen);
+					packet = pooled.array();
+					packetOffset = pooled.arrayOffset();
+				} else {
+					packet = new byte[(int)(bais.size()+remLen)];
+					packetOffset = bais.size();
+				}
 				packetLen = 0;
 			}
 			
@@ -126,21 +170,38 @@ public class MqttInputStream extends InputStream {
 				// reset packet parsing state 
 				remLen = -1;
 				
-				byte[] header = bais.toByteArray();
-				System.arraycopy(header,0,packet,0, header.length);
-				message = MqttWireMessage.createWireMessage(packet);
+				if (pooled != null) {
+					MqttBuffer data = pooled;
+					pooled = null;
+					try {
+						message = new MqttPublish((byte) (first & 0x0f), data, topicCache);
+					} catch (IOException ex) {
+						data.release();
+						throw new MqttException(ex);
+					}
+				} else {
+					byte[] header = bais.toByteArray();
+					System.arraycopy(header,0,packet,0, header.length);
+					message = MqttWireMessage.createWireMessage(packet, topicCache);
+				}
 				// @TRACE 530= Received {0} 
-				log.fine(CLASS_NAME, methodName, "530",new Object[] {message});
+				if (log.isLoggable(Logger.FINE)) {
+					log.fine(CLASS_NAME, methodName, "530",new Object[] {message});
+				}
 			}
 		} catch (SocketTimeoutException e) {
 			// ignore socket read timeout
+		} catch (IOException e) {
+			// the connection failed part way through a packet
+			releasePooled();
+			throw e;
 		}
 		
 		return message;
 	}
 	
     private void readFully() throws IOException {
-    	int off = bais.size() + (int) packetLen;
+    	int off = packetOffset + (int) packetLen;
     	int len = (int) (remLen - packetLen);
     	if (len < 0)
     		throw new IndexOutOfBoundsException();
@@ -163,4 +224,85 @@ public class MqttInputStream extends InputStream {
     		n += count;
     	}
     }
+
+	/**
+	 * Reads a publish whose payload is handed to the streaming callback while
+	 * it is read from the network. The returned message has an empty payload.
+	 */
+	private MqttPublish readStreamed(int length, MqttStreamingCallback streaming) throws IOException, MqttException {
+		PacketInputStream packetIn = new PacketInputStream(length);
+		MqttPublish publish = new MqttPublish((byte) (first & 0x0f), new DataInputStream(packetIn), topicCache);
+		String topic = publish.getTopicName();
+		Integer topicAlias = publish.getProperties().getTopicAlias();
+		if ((topic == null || topic.isEmpty()) && topicAlias != null) {
+			topic = clientState.getIncomingTopicName(topicAlias.intValue());
+		}
+		MqttMessage message = publish.getMessage();
+		message.setId(publish.getMessageId());
+		try {
+			streaming.messageArriving(topic, message, packetIn, packetIn.remaining);
+		} catch (IOException ex) {
+			throw ex;
+		} catch (Exception ex) {
+			throw new MqttException(ex);
+		}
+		packetIn.drain();
+		return publish;
+	}
+
+	/**
+	 * The remainder of a streamed publish packet. Reads wait out socket read
+	 * timeouts, as the whole packet must be consumed before the next one.
+	 */
+	private class PacketInputStream extends InputStream {
+		private int remaining;
+
+		PacketInputStream(int remaining) {
+			this.remaining = remaining;
+		}
+
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xff);
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			if (len == 0) {
+				return 0;
+			}
+			int count;
+			while (true) {
+				try {
+					count = in.read(b, off, Math.min(len, remaining));
+					break;
+				} catch (SocketTimeoutException e) {
+					// keep waiting for the rest of the packet
+				}
+			}
+			if (count < 0) {
+				throw new EOFException();
+			}
+			remaining -= count;
+			clientState.notifyReceivedBytes(count);
+			return count;
+		}
+
+		public int available() throws IOException {
+			return Math.min(in.available(), remaining);
+		}
+
+		public void close() {
+			// the network stream stays open, unread bytes are skipped later
+		}
+
+		void drain() throws IOException {
+			byte[] skip = new byte[Math.min(8192, Math.max(remaining, 1))];
+			while (read(skip, 0, skip.length) >= 0) {
+				// discard
+			}
+		}
+	}
 }
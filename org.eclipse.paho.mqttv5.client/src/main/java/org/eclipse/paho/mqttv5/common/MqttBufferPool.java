@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - pooled payload buffers
+ */
+package org.eclipse.paho.mqttv5.common;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A thread safe pool of {@link MqttBuffer}s.
+ * <p>
+ * Buffers are kept in size classes of powers of two, from
+ * {@link #MIN_BUFFER_SIZE} up to the configured maximum buffer size.
+ * Requests larger than the maximum are satisfied with unpooled buffers.
+ * Each size class holds at most the configured number of idle buffers;
+ * released buffers beyond that are left to the garbage collector.
+ * </p>
+ * <p>
+ * A pool can be shared by any number of clients, see
+ * {@link org.eclipse.paho.mqttv5.client.MqttConnectionOptions#setBufferPool(MqttBufferPool)}.
+ * </p>
+ */
+public class MqttBufferPool {
+
+	/** The smallest size class, in bytes. */
+	public static final int MIN_BUFFER_SIZE = 64;
+	/** The default largest size class, in bytes. */
+	public static final int DEFAULT_MAX_BUFFER_SIZE = 1024 * 1024;
+	/** The default number of idle buffers kept per size class. */
+	public static final int DEFAULT_MAX_POOLED_PER_SIZE = 64;
+
+	private final int maxBufferSize;
+	private final int maxPooledPerSize;
+	private final ConcurrentLinkedQueue<ByteBuffer>[] free;
+	private final AtomicInteger[] freeCount;
+
+	/**
+	 * Creates a pool with the default limits.
+	 */
+	public MqttBufferPool() {
+		this(DEFAULT_MAX_BUFFER_SIZE, DEFAULT_MAX_POOLED_PER_SIZE);
+	}
+
+	/**
+	 * Creates a pool.
+	 * @param maxBufferSize the largest buffer size to pool, rounded up to a power of two
+	 * @param maxPooledPerSize the number of idle buffers kept per size class
+	 */
+	public MqttBufferPool(int maxBufferSize, int maxPooledPerSize) {
+		if (maxBufferSize < MIN_BUFFER_SIZE || maxPooledPerSize < 0) {
+			throw new IllegalArgumentException();
+		}
+		int classes = sizeClass(maxBufferSize) + 1;
+		this.maxBufferSize = MIN_BUFFER_SIZE << (classes - 1);
+		this.maxPooledPerSize = maxPooledPerSize;
+		@SuppressWarnings("unchecked")
+		ConcurrentLinkedQueue<ByteBuffer>[] queues = (ConcurrentLinkedQueue<ByteBuffer>[]) new ConcurrentLinkedQueue<?>[classes];
+		this.free = queues;
+		this.freeCount = new AtomicInteger[classes];
+		for (int i = 0; i < classes; i++) {
+			free[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+			freeCount[i] = new AtomicInteger();
+		}
+	}
+
+	/**
+	 * Obtains a buffer of the given length. The contents are undefined; fill
+	 * them through {@link MqttBuffer#getByteBuffer()}.
+	 * @param length the payload length in bytes
+	 * @return a buffer with a reference count of one
+	 */
+	public MqttBuffer acquire(int length) {
+		if (length < 0) {
+			throw new IllegalArgumentException();
+		}
+		if (length > maxBufferSize) {
+			return new MqttBuffer(ByteBuffer.allocate(length), length, null);
+		}
+		int sizeClass = sizeClass(length);
+		ByteBuffer root = free[sizeClass].poll();
+		if (root != null) {
+			freeCount[sizeClass].decrementAndGet();
+		} else {
+			root = ByteBuffer.allocate(MIN_BUFFER_SIZE << sizeClass);
+		}
+		return new MqttBuffer(root, length, this);
+	}
+
+	/**
+	 * @return the largest buffer size that is pooled
+	 */
+	public int getMaxBufferSize() {
+		return maxBufferSize;
+	}
+
+	/**
+	 * @return the number of idle buffers currently held by the pool
+	 */
+	public int getPooledCount() {
+		int count = 0;
+		for (int i = 0; i < freeCount.length; i++) {
+			count += freeCount[i].get();
+		}
+		return count;
+	}
+
+	void recycle(ByteBuffer root) {
+		int sizeClass = sizeClass(root.capacity());
+		if ((MIN_BUFFER_SIZE << sizeClass) != root.capacity()) {
+			return;
+		}
+		if (freeCount[sizeClass].incrementAndGet() > maxPooledPerSize) {
+			freeCount[sizeClass].decrementAndGet();
+			return;
+		}
+		root.clear();
+		free[sizeClass].offer(root);
+	}
+
+	private static int sizeClass(int length) {
+		if (length <= MIN_BUFFER_SIZE) {
+			return 0;
+		}
+		return 32 - Integer.numberOfLeadingZeros(length - 1) - 6;
+	}
+}
@@ -27,6 +27,7 @@ public class MqttMessage {
 
 	private boolean mutable = true;
 	private byte[] payload;
+	private MqttBuffer payloadBuffer;
 	private int qos = 1;
 	private boolean retained = false;
 	private boolean dup = false;
@@ -73,6 +74,19 @@ public class MqttMessage {
 		setPayload(payload);
 	}
 
+	/**
+	 * Constructs a message with the specified buffer as a payload, and all other
+	 * values set to defaults. The message takes ownership of the buffer without
+	 * copying it.
+	 * 
+	 * @param payload
+	 *            the payload
+	 * @see #setPayload(MqttBuffer)
+	 */
+	public MqttMessage(MqttBuffer payload) {
+		setPayload(payload);
+	}
+
 	/**
 	 * Contructs an message with the specified payload, qos and retained flag.
 	 * 
@@ -93,14 +107,49 @@ public class MqttMessage {
 	}
 
 	/**
-	 * Returns the payload as a byte array.
+	 * Contructs an message with the specified buffer as payload, qos and retained
+	 * flag. The message takes ownership of the buffer without copying it.
+	 * 
+	 * @param payload
+	 *            The Message Payload.
+	 * @param qos
+	 *            The Message QoS.
+	 * @param retained
+	 *            If the message is retained.
+	 * @param properties
+	 *            The Message {@link MqttProperties}
+	 */
+	public MqttMessage(MqttBuffer payload, int qos, boolean retained, MqttProperties properties) {
+		setPayload(payload);
+		setQos(qos);
+		setRetained(retained);
+		setProperties(properties);
+	}
+
+	/**
+	 * Returns the payload as a byte array. If the payload is held in an
+	 * {@link MqttBuffer} it is copied on the first call; use
+	 * {@link #getPayloadBuffer()} to avoid the copy.
 	 *
 	 * @return the payload as a byte array.
 	 */
 	public byte[] getPayload() {
+		if (payload == null && payloadBuffer != null) {
+			payload = payloadBuffer.toByteArray();
+		}
 		return payload;
 	}
 
+	/**
+	 * Returns the buffer holding the payload, if the payload was supplied as an
+	 * {@link MqttBuffer} or the message was received into a pooled buffer.
+	 *
+	 * @return the payload buffer, or null if the payload is a byte array.
+	 */
+	public MqttBuffer getPayloadBuffer() {
+		return payloadBuffer;
+	}
+
 	/**
 	 * Clears the payload, resetting it to be empty.
 	 * 
@@ -110,6 +159,7 @@ public class MqttMessage {
 	public void clearPayload() {
 		checkMutable();
 		this.payload = new byte[] {};
+		this.payloadBuffer = null;
 	}
 
 	/**
@@ -128,6 +178,30 @@ public class MqttMessage {
 			throw new NullPointerException();
 		}
 		this.payload = payload;
+		this.payloadBuffer = null;
+	}
+
+	/**
+	 * Sets the payload of this message to be the specified buffer, without
+	 * copying it. The message takes ownership of the buffer's reference: once
+	 * the message has been published the client releases the buffer after
+	 * delivery completes, returning it to its {@link MqttBufferPool}. The buffer
+	 * contents must not be modified after this call.
+	 *
+	 * @param payload
+	 *            the payload for this message.
+	 * @throws IllegalStateException
+	 *             if this message cannot be edited
+	 * @throws NullPointerException
+	 *             if no payload is provided
+	 */
+	public void setPayload(MqttBuffer payload) {
+		checkMutable();
+		if (payload == null) {
+			throw new NullPointerException();
+		}
+		this.payloadBuffer = payload;
+		this.payload = null;
 	}
 
 	/**
@@ -287,11 +361,11 @@ public class MqttMessage {
 	 * @return a string representation of this message.
 	 */
 	public String toString() {
-		return new String(payload);
+		return new String(getPayload());
 	}
 
 	public String toDebugString() {
-		return "MqttMessage [mutable=" + mutable + ", payload=" + new String(payload) + ", qos=" + qos + ", retained="
+		return "MqttMessage [mutable=" + mutable + ", payload=" + new String(getPayload()) + ", qos=" + qos + ", retained="
 				+ retained + ", dup=" + dup + ", messageId=" + messageId + "]";
 	}
 
@@ -117,9 +117,8 @@ public class MqttDataTypes {
 	 *             the data to the stream.
 	 */
 	public static void encodeUTF8(DataOutputStream dos, String stringToEncode) throws MqttException {
-		validateUTF8String(stringToEncode);
+		byte[] encodedString = toUTF8(stringToEncode);
 		try {
-			byte[] encodedString = stringToEncode.getBytes(STRING_ENCODING);
 			byte byte1 = (byte) ((encodedString.length >>> 8) & 0xFF);
 			byte byte2 = (byte) ((encodedString.length >>> 0) & 0xFF);
 
@@ -131,6 +130,83 @@ public class MqttDataTypes {
 		}
 	}
 
+	/**
+	 * Encodes a String into UTF-8, validating it for MQTT in the same pass.
+	 * Strings made up only of printable ASCII characters are copied directly.
+	 * 
+	 * @param input
+	 *            The String to be encoded
+	 * @return the UTF-8 encoding of the input
+	 * @throws IllegalArgumentException
+	 *             if the input contains illegal characters or character
+	 *             sequences.
+	 */
+	private static byte[] toUTF8(String input) throws IllegalArgumentException {
+		int length = input.length();
+		byte[] ascii = new byte[length];
+		int i = 0;
+		for (; i < length; i++) {
+			char c = input.charAt(i);
+			if (c < 0x20 || c >= 0x7f) {
+				break;
+			}
+			ascii[i] = (byte) c;
+		}
+		if (i == length) {
+			return ascii;
+		}
+
+		byte[] encoded = new byte[i + (length - i) * 3];
+		System.arraycopy(ascii, 0, encoded, 0, i);
+		int pos = i;
+		for (; i < length; i++) {
+			boolean isBad = false;
+			char c = input.charAt(i);
+			if (c < 0x80) {
+				isBad = c < 0x20 || c == 0x7f; /* Control character */
+				encoded[pos++] = (byte) c;
+			} else if (c < 0x800) {
+				isBad = c <= 0x9f; /* Control character */
+				encoded[pos++] = (byte) (0xc0 | (c >> 6));
+				encoded[pos++] = (byte) (0x80 | (c & 0x3f));
+			} else if (Character.isHighSurrogate(c)) {
+				if (i + 1 == length) {
+					isBad = true; /* Trailing high surrogate */
+				} else {
+					char c2 = input.charAt(++i);
+					if (!Character.isLowSurrogate(c2)) {
+						isBad = true; /* No low surrogate */
+					} else {
+						int ch = ((((int) c) & 0x3ff) << 10) | (c2 & 0x3ff);
+						if ((ch & 0xffff) == 0xffff || (ch & 0xffff) == 0xfffe) {
+							isBad = true; /* Noncharacter in base plane */
+						}
+						int codePoint = Character.toCodePoint(c, c2);
+						encoded[pos++] = (byte) (0xf0 | (codePoint >> 18));
+						encoded[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+						encoded[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+						encoded[pos++] = (byte) (0x80 | (codePoint & 0x3f));
+					}
+				}
+			} else {
+				if (Character.isLowSurrogate(c)) {
+					isBad = true; /* No high surrogate */
+				} else if (c >= 0xfdd0 && (c <= 0xfddf || c >= 0xfffe)) {
+					isBad = true; /* Noncharacter in other nonbase plane */
+				}
+				encoded[pos++] = (byte) (0xe0 | (c >> 12));
+				encoded[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+				encoded[pos++] = (byte) (0x80 | (c & 0x3f));
+			}
+			if (isBad) {
+				throw new IllegalArgumentException(String.format("Invalid UTF-8 char: [%04x]", (int) c));
+			}
+		}
+		byte[] result = new byte[pos];
+		System.arraycopy(encoded, 0, result, 0, pos);
+		return result;
+	}
+
 	protected static final Charset STRING_ENCODING = StandardCharsets.UTF_8;
 
 	/**
@@ -153,15 +229,64 @@ public class MqttDataTypes {
 
 			byte[] encodedString = new byte[encodedLength];
 			input.readFully(encodedString);
-			String output = new String(encodedString, STRING_ENCODING);
-			validateUTF8String(output);
+			return decodeUTF8(encodedString, 0, encodedLength);
+		} catch (IOException ioe) {
+			throw new MqttException(MqttException.REASON_CODE_MALFORMED_PACKET, ioe);
+		}
+	}
 
-			return output;
+	/**
+	 * Decodes a UTF-8 string from the {@link DataInputStream} provided, looking
+	 * the encoded bytes up in the given cache first.
+	 * 
+	 * @param input
+	 *            The input stream from which to read the encoded string.
+	 * @param topicCache
+	 *            The cache of recently decoded strings, or null.
+	 * @return a decoded String from the {@link DataInputStream}.
+	 * @throws MqttException
+	 *             thrown when an error occurs with either reading from the stream
+	 *             or decoding the encoding string.
+	 */
+	public static String decodeUTF8(DataInputStream input, MqttTopicCache topicCache) throws MqttException {
+		if (topicCache == null) {
+			return decodeUTF8(input);
+		}
+		try {
+			return topicCache.read(input);
 		} catch (IOException ioe) {
 			throw new MqttException(MqttException.REASON_CODE_MALFORMED_PACKET, ioe);
 		}
 	}
 
+	/**
+	 * Decodes and validates a UTF-8 string held in an array. Strings made up
+	 * only of printable ASCII characters are copied directly.
+	 * 
+	 * @param bytes
+	 *            The array holding the encoded string.
+	 * @param offset
+	 *            The offset of the encoded string in the array.
+	 * @param length
+	 *            The length of the encoded string.
+	 * @return the decoded String.
+	 * @throws IllegalArgumentException
+	 *             if the string contains illegal characters or character
+	 *             sequences.
+	 */
+	public static String decodeUTF8(byte[] bytes, int offset, int length) throws IllegalArgumentException {
+		for (int i = offset; i < offset + length; i++) {
+			byte b = bytes[i];
+			if (b < 0x20 || b == 0x7f) {
+				/* Not printable ASCII, so decode and validate in full */
+				String output = new String(bytes, offset, length, STRING_ENCODING);
+				validateUTF8String(output);
+				return output;
+			}
+		}
+		return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+	}
+
 	/**
 	 * Validate a UTF-8 String for suitability for MQTT.
 	 * 
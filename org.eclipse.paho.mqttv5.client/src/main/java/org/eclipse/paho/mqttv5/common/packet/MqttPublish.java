@@ -22,9 +22,14 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 
+import org.eclipse.paho.mqttv5.common.MqttBuffer;
 import org.eclipse.paho.mqttv5.common.MqttException;
 import org.eclipse.paho.mqttv5.common.MqttMessage;
+import org.eclipse.paho.mqttv5.common.MqttPersistenceException;
+import org.eclipse.paho.mqttv5.common.MqttStreamingMessage;
 import org.eclipse.paho.mqttv5.common.packet.util.CountingInputStream;
 
 /**
@@ -42,6 +47,10 @@ public class MqttPublish extends MqttPersistableWireMessage {
 
 	// Fields
 	private byte[] payload;
+	private MqttBuffer payloadBuffer;
+	private ReadableByteChannel payloadChannel;
+	private int payloadChannelLength;
+	private boolean payloadStreamed = false;
 	private int qos = 1;
 	private boolean retained = false;
 	private boolean dup = false;
@@ -60,7 +69,7 @@ public class MqttPublish extends MqttPersistableWireMessage {
 	public MqttPublish(String topic, MqttMessage message, MqttProperties properties) {
 		super(MqttWireMessage.MESSAGE_TYPE_PUBLISH);
 		this.topicName = topic;
-		this.payload = message.getPayload();
+		setPayload(message);
 		this.qos = message.getQos();
 		this.dup = message.isDuplicate();
 		this.retained = message.isRetained();
@@ -85,6 +94,25 @@ public class MqttPublish extends MqttPersistableWireMessage {
 	 *             - If an exception occurs decoding this packet
 	 */
 	public MqttPublish(byte info, byte[] data) throws MqttException, IOException {
+		this(info, data, null);
+	}
+
+	/**
+	 * Constructs a new MqttPublish message from a byte array, decoding the
+	 * topic through the given cache.
+	 *
+	 * @param info
+	 *            - Info Byte
+	 * @param data
+	 *            - The variable header and payload bytes.
+	 * @param topicCache
+	 *            - The connection's cache of recently received topics, or null.
+	 * @throws IOException
+	 *             - if an exception occurs when decoding an input stream
+	 * @throws MqttException
+	 *             - If an exception occurs decoding this packet
+	 */
+	public MqttPublish(byte info, byte[] data, MqttTopicCache topicCache) throws MqttException, IOException {
 		super(MqttWireMessage.MESSAGE_TYPE_PUBLISH);
 		this.properties = new MqttProperties(validProperties);
 		this.qos = (info >> 1) & 0x03;
@@ -100,7 +128,7 @@ public class MqttPublish extends MqttPersistableWireMessage {
 		CountingInputStream counter = new CountingInputStream(bais);
 		DataInputStream dis = new DataInputStream(counter);
 
-		topicName = MqttDataTypes.decodeUTF8(dis);
+		topicName = MqttDataTypes.decodeUTF8(dis, topicCache);
 		if (this.qos > 0) {
 			msgId = dis.readUnsignedShort();
 		}
@@ -110,6 +138,153 @@ public class MqttPublish extends MqttPersistableWireMessage {
 		dis.close();
 	}
 
+	/**
+	 * Constructs a new MqttPublish message whose payload is a slice of the
+	 * supplied buffer, so no payload bytes are copied.
+	 *
+	 * @param info
+	 *            - Info Byte
+	 * @param data
+	 *            - The variable header and payload bytes, the reference to
+	 *            which is handed over to the message payload.
+	 * @throws IOException
+	 *             - if an exception occurs when decoding an input stream
+	 * @throws MqttException
+	 *             - If an exception occurs decoding this packet
+	 */
+	public MqttPublish(byte info, MqttBuffer data) throws MqttException, IOException {
+		this(info, data, null);
+	}
+
+	/**
+	 * Constructs a new MqttPublish message whose payload is a slice of the
+	 * supplied buffer, decoding the topic through the given cache.
+	 *
+	 * @param info
+	 *            - Info Byte
+	 * @param data
+	 *            - The variable header and payload bytes, the reference to
+	 *            which is handed over to the message payload.
+	 * @param topicCache
+	 *            - The connection's cache of recently received topics, or null.
+	 * @throws IOException
+	 *             - if an exception occurs when decoding an input stream
+	 * @throws MqttException
+	 *             - If an exception occurs decoding this packet
+	 */
+	public MqttPublish(byte info, MqttBuffer data, MqttTopicCache topicCache) throws MqttException, IOException {
+		super(MqttWireMessage.MESSAGE_TYPE_PUBLISH);
+		this.properties = new MqttProperties(validProperties);
+		this.qos = (info >> 1) & 0x03;
+		if ((info & 0x01) == 0x01) {
+			this.retained = true;
+		}
+
+		if ((info & 0x08) == 0x08) {
+			this.dup = true;
+		}
+
+		ByteArrayInputStream bais = new ByteArrayInputStream(data.array(), data.arrayOffset(), data.length());
+		CountingInputStream counter = new CountingInputStream(bais);
+		DataInputStream dis = new DataInputStream(counter);
+
+		topicName = MqttDataTypes.decodeUTF8(dis, topicCache);
+		if (this.qos > 0) {
+			msgId = dis.readUnsignedShort();
+		}
+		this.properties.decodeProperties(dis);
+		int offset = counter.getCounter();
+		this.payloadBuffer = data.slice(offset, data.length() - offset);
+	}
+
+	/**
+	 * Constructs a new MqttPublish message from its variable header only, for a
+	 * message whose payload is passed to the application as a stream. The
+	 * payload is empty.
+	 *
+	 * @param info
+	 *            - Info Byte
+	 * @param in
+	 *            - The stream positioned at the variable header.
+	 * @throws IOException
+	 *             - if an exception occurs when decoding an input stream
+	 * @throws MqttException
+	 *             - If an exception occurs decoding this packet
+	 */
+	public MqttPublish(byte info, DataInputStream in) throws MqttException, IOException {
+		this(info, in, null);
+	}
+
+	/**
+	 * Constructs a new MqttPublish message from its variable header only,
+	 * decoding the topic through the given cache.
+	 *
+	 * @param info
+	 *            - Info Byte
+	 * @param in
+	 *            - The stream positioned at the variable header.
+	 * @param topicCache
+	 *            - The connection's cache of recently received topics, or null.
+	 * @throws IOException
+	 *             - if an exception occurs when decoding an input stream
+	 * @throws MqttException
+	 *             - If an exception occurs decoding this packet
+	 */
+	public MqttPublish(byte info, DataInputStream in, MqttTopicCache topicCache) throws MqttException, IOException {
+		super(MqttWireMessage.MESSAGE_TYPE_PUBLISH);
+		this.properties = new MqttProperties(validProperties);
+		this.qos = (info >> 1) & 0x03;
+		if ((info & 0x01) == 0x01) {
+			this.retained = true;
+		}
+
+		if ((info & 0x08) == 0x08) {
+			this.dup = true;
+		}
+
+		topicName = MqttDataTypes.decodeUTF8(in, topicCache);
+		if (this.qos > 0) {
+			msgId = in.readUnsignedShort();
+		}
+		this.properties.decodeProperties(in);
+		this.payload = new byte[0];
+		this.payloadStreamed = true;
+	}
+
+	private void setPayload(MqttMessage message) {
+		if (message instanceof MqttStreamingMessage) {
+			this.payloadChannel = ((MqttStreamingMessage) message).getPayloadChannel();
+			this.payloadChannelLength = ((MqttStreamingMessage) message).getPayloadLength();
+			this.payloadBuffer = null;
+			this.payload = null;
+			return;
+		}
+		this.payloadChannel = null;
+		this.payloadBuffer = message.getPayloadBuffer();
+		this.payload = (payloadBuffer == null) ? message.getPayload() : null;
+	}
+
+	/**
+	 * @return the channel supplying the payload of an outbound streaming message,
+	 *         or null if the payload is held in memory
+	 */
+	public ReadableByteChannel getPayloadChannel() {
+		return payloadChannel;
+	}
+
+	/**
+	 * @return true if the payload of this inbound message was passed to the
+	 *         application as a stream while it was read
+	 */
+	public boolean isPayloadStreamed() {
+		return payloadStreamed;
+	}
+
+	@Override
+	protected int getEncodedPayloadLength() {
+		return getPayloadLength();
+	}
+
 	@Override
 	protected byte[] getVariableHeader() throws MqttException {
 		try {
@@ -150,12 +325,51 @@ public class MqttPublish extends MqttPersistableWireMessage {
 
 	@Override
 	public byte[] getPayload() {
+		if (this.payload == null && this.payloadBuffer != null) {
+			return this.payloadBuffer.toByteArray();
+		} else if (this.payloadChannel != null) {
+			// the payload is only available as a stream
+			return new byte[0];
+		}
 		return this.payload;
 	}
 
+	@Override
+	public ByteBuffer getPayloadByteBuffer() throws MqttException {
+		if (this.payloadBuffer != null) {
+			return this.payloadBuffer.getByteBuffer();
+		}
+		return ByteBuffer.wrap(getPayloadBytes());
+	}
+
+	@Override
+	public byte[] getPayloadBytes() throws MqttPersistenceException {
+		if (this.payloadChannel != null) {
+			// the payload only exists as a stream, it can not be persisted
+			throw new MqttPersistenceException();
+		}
+		if (this.payloadBuffer != null && this.payloadBuffer.hasArray()) {
+			return this.payloadBuffer.array();
+		}
+		byte[] bytes = getPayload();
+		return (bytes == null) ? new byte[0] : bytes;
+	}
+
+	@Override
+	public int getPayloadOffset() throws MqttPersistenceException {
+		if (this.payloadBuffer != null && this.payloadBuffer.hasArray()) {
+			return this.payloadBuffer.arrayOffset();
+		}
+		return 0;
+	}
+
 	@Override
 	public int getPayloadLength() {
-		if (this.payload != null) {
+		if (this.payloadChannel != null) {
+			return this.payloadChannelLength;
+		} else if (this.payloadBuffer != null) {
+			return this.payloadBuffer.length();
+		} else if (this.payload != null) {
 			return this.payload.length;
 		} else {
 			return 0;
@@ -170,12 +384,29 @@ public class MqttPublish extends MqttPersistableWireMessage {
 	}
 
 	public MqttMessage getMessage() {
-		MqttMessage message = new MqttMessage(payload, qos, retained, properties);
+		MqttMessage message;
+		if (payloadChannel != null) {
+			message = new MqttStreamingMessage(payloadChannel, payloadChannelLength);
+			message.setRetained(retained);
+			message.setProperties(properties);
+		} else if (payloadBuffer != null) {
+			message = new MqttMessage(payloadBuffer, qos, retained, properties);
+		} else {
+			message = new MqttMessage(payload, qos, retained, properties);
+		}
 		return message;
 	}
 
+	/**
+	 * @return the buffer holding the payload, or null if the payload is a byte
+	 *         array.
+	 */
+	public MqttBuffer getPayloadBuffer() {
+		return payloadBuffer;
+	}
+
 	public void setMessage(MqttMessage message) {
-		this.payload = message.getPayload();
+		setPayload(message);
 		this.qos = message.getQos();
 		this.dup = message.isDuplicate();
 		this.retained = message.isRetained();
@@ -202,9 +433,17 @@ public class MqttPublish extends MqttPersistableWireMessage {
 	public String toString() {
 		// Convert the first few bytes of the payload into a hex string
 		StringBuilder hex = new StringBuilder();
-		int limit = Math.min(payload.length, 20);
+		ByteBuffer payload;
+		try {
+			payload = (payloadChannel == null) ? getPayloadByteBuffer() : ByteBuffer.allocate(0);
+		} catch (MqttException ex) {
+			payload = ByteBuffer.allocate(0);
+		}
+		int limit = Math.min(payload.remaining(), 20);
+		byte[] head = new byte[limit];
+		payload.duplicate().get(head);
 		for (int i = 0; i < limit; i++) {
-			byte b = payload[i];
+			byte b = head[i];
 			String ch = Integer.toHexString(b);
 			if (ch.length() == 1) {
 				ch = "0" + ch;
@@ -217,7 +456,7 @@ public class MqttPublish extends MqttPersistableWireMessage {
 		// useful.
 		String string = null;
 		try {
-			string = new String(payload, 0, limit, "UTF-8");
+			string = new String(head, 0, limit, "UTF-8");
 		} catch (UnsupportedEncodingException uee) {
 			string = "?";
 		}
@@ -233,7 +472,7 @@ public class MqttPublish extends MqttPersistableWireMessage {
 		sb.append(", topic=").append(topicName);
 		sb.append(", payload=[hex=").append(hex);
 		sb.append(", utf8=").append(string);
-		sb.append(", length=").append(payload.length).append("]");
+		sb.append(", length=").append(getPayloadLength()).append("]");
 		sb.append(", properties=").append(this.properties.toString());
 
 		return sb.toString();
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - topic string cache
+ */
+package org.eclipse.paho.mqttv5.common.packet;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * A small cache mapping the encoded bytes of recently received topic names to
+ * their decoded String, so that a topic seen again decodes without allocating.
+ * <p>
+ * The cache is direct mapped: each encoded topic hashes to a single slot, and
+ * a new topic simply replaces whatever occupied its slot. Topics longer than
+ * {@link #MAX_CACHED_LENGTH} bytes are decoded but not cached.
+ * </p>
+ * <p>
+ * An instance belongs to one connection and is only used by the thread
+ * receiving from that connection; it is not thread safe.
+ * </p>
+ */
+public class MqttTopicCache {
+
+	/** The default number of slots. */
+	public static final int DEFAULT_SIZE = 64;
+	/** The longest encoded topic, in bytes, that is cached. */
+	public static final int MAX_CACHED_LENGTH = 256;
+
+	private final byte[][] keys;
+	private final String[] values;
+	private final int mask;
+	private final byte[] scratch = new byte[MAX_CACHED_LENGTH];
+	private int hits;
+	private int misses;
+
+	/**
+	 * Creates a cache with {@link #DEFAULT_SIZE} slots.
+	 */
+	public MqttTopicCache() {
+		this(DEFAULT_SIZE);
+	}
+
+	/**
+	 * Creates a cache.
+	 * @param size the number of slots, rounded up to a power of two
+	 */
+	public MqttTopicCache(int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException();
+		}
+		int slots = Integer.highestOneBit(size);
+		if (slots < size) {
+			slots <<= 1;
+		}
+		this.keys = new byte[slots][];
+		this.values = new String[slots];
+		this.mask = slots - 1;
+	}
+
+	/**
+	 * Reads a length prefixed UTF-8 string from the stream, returning the
+	 * cached String if the same bytes have been seen recently.
+	 * @param input the stream positioned at the string length
+	 * @return the decoded string
+	 * @throws IOException if the string could not be read
+	 * @throws IllegalArgumentException if the string is not valid for MQTT
+	 */
+	public String read(DataInputStream input) throws IOException {
+		int length = input.readUnsignedShort();
+		if (length > MAX_CACHED_LENGTH) {
+			byte[] encoded = new byte[length];
+			input.readFully(encoded);
+			misses++;
+			return MqttDataTypes.decodeUTF8(encoded, 0, length);
+		}
+		input.readFully(scratch, 0, length);
+		return get(scratch, 0, length);
+	}
+
+	/**
+	 * Returns the string encoded in the given bytes, from the cache if
+	 * possible.
+	 * @param bytes the array holding the encoded string
+	 * @param offset the offset of the string in the array
+	 * @param length the length of the encoded string
+	 * @return the decoded string
+	 * @throws IllegalArgumentException if the string is not valid for MQTT
+	 */
+	public String get(byte[] bytes, int offset, int length) {
+		if (length > MAX_CACHED_LENGTH) {
+			misses++;
+			return MqttDataTypes.decodeUTF8(bytes, offset, length);
+		}
+		int hash = 1;
+		for (int i = offset; i < offset + length; i++) {
+			hash = 31 * hash + bytes[i];
+		}
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		byte[] key = keys[slot];
+		if (key != null && matches(key, bytes, offset, length)) {
+			hits++;
+			return values[slot];
+		}
+		misses++;
+		String value = MqttDataTypes.decodeUTF8(bytes, offset, length);
+		key = new byte[length];
+		System.arraycopy(bytes, offset, key, 0, length);
+		keys[slot] = key;
+		values[slot] = value;
+		return value;
+	}
+
+	/**
+	 * @return the number of lookups answered from the cache
+	 */
+	public int getHitCount() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of lookups that had to decode the string
+	 */
+	public int getMissCount() {
+		return misses;
+	}
+
+	private static boolean matches(byte[] key, byte[] bytes, int offset, int length) {
+		if (key.length != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (key[i] != bytes[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -22,6 +22,7 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 import org.eclipse.paho.mqttv5.common.ExceptionHelper;
 import org.eclipse.paho.mqttv5.common.MqttException;
@@ -98,6 +99,28 @@ public abstract class MqttWireMessage {
 		return new byte[0];
 	}
 
+	/**
+	 * Returns the payload as a buffer, from its position to its limit.
+	 * Sub-classes holding the payload in a buffer should override this method
+	 * so that the payload can be written without being copied.
+	 * 
+	 * @return The payload buffer
+	 * @throws MqttException
+	 *             if an exception occurs whilst getting the payload.
+	 */
+	public ByteBuffer getPayloadByteBuffer() throws MqttException {
+		return ByteBuffer.wrap(getPayload());
+	}
+
+	/**
+	 * @return The number of payload bytes written after the header
+	 * @throws MqttException
+	 *             if an exception occurs whilst getting the payload.
+	 */
+	protected int getEncodedPayloadLength() throws MqttException {
+		return getPayloadByteBuffer().remaining();
+	}
+
 	/**
 	 * @return the type of the message
 	 */
@@ -144,7 +167,7 @@ public abstract class MqttWireMessage {
 		try {
 			int first = ((getType() & 0x0f) << 4) ^ (getMessageInfo() & 0x0f);
 			byte[] varHeader = getVariableHeader();
-			int remLen = varHeader.length + getPayload().length;
+			int remLen = varHeader.length + getEncodedPayloadLength();
 
 			ByteArrayOutputStream baos = new ByteArrayOutputStream();
 			DataOutputStream dos = new DataOutputStream(baos);
@@ -190,15 +213,31 @@ public abstract class MqttWireMessage {
 		}
 		MultiByteArrayInputStream mbais = new MultiByteArrayInputStream(data.getHeaderBytes(), data.getHeaderOffset(),
 				data.getHeaderLength(), payload, data.getPayloadOffset(), data.getPayloadLength());
-		return createWireMessage(mbais);
+		return createWireMessage(mbais, null);
 	}
 
 	public static MqttWireMessage createWireMessage(byte[] bytes) throws MqttException {
+		return createWireMessage(bytes, null);
+	}
+
+	/**
+	 * Decodes a received packet, using the given cache to decode the topic of
+	 * a PUBLISH.
+	 * 
+	 * @param bytes
+	 *            the packet bytes
+	 * @param topicCache
+	 *            the connection's cache of recently received topics, or null
+	 * @return the decoded packet
+	 * @throws MqttException
+	 *             if the packet could not be decoded
+	 */
+	public static MqttWireMessage createWireMessage(byte[] bytes, MqttTopicCache topicCache) throws MqttException {
 		ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-		return createWireMessage(bais);
+		return createWireMessage(bais, topicCache);
 	}
 
-	private static MqttWireMessage createWireMessage(InputStream inputStream) throws MqttException {
+	private static MqttWireMessage createWireMessage(InputStream inputStream, MqttTopicCache topicCache) throws MqttException {
 		try {
 			CountingInputStream counter = new CountingInputStream(inputStream);
 			DataInputStream in = new DataInputStream(counter);
@@ -226,7 +265,7 @@ public abstract class MqttWireMessage {
 				result = new MqttConnAck(data);
 				break;
 			case MqttWireMessage.MESSAGE_TYPE_PUBLISH:
-				result = new MqttPublish(info, data);
+				result = new MqttPublish(info, data, topicCache);
 				break;
 			case MqttWireMessage.MESSAGE_TYPE_PUBACK:
 				result = new MqttPubAck(data);
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - load generator
+ */
+package org.eclipse.paho.sample.loadtest;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+import org.eclipse.paho.client.mqttv3.metrics.LatencyHistogram;
+
+/**
+ * Keeps track of the messages that arrive at one subscriber: which of them
+ * are duplicates, and how long each took from being due to be published.
+ * <p>
+ * Every payload published by the test starts with a header of
+ * {@link #HEADER_LENGTH} bytes: the {@link System#nanoTime()} the message was
+ * due to be published at, the number of the publishing client and the
+ * number of the message from that client. As publishers and subscribers run
+ * in the same JVM, the times of the two can be compared.
+ * </p>
+ */
+public class DeliveryTracker {
+
+	/**
+	 * The length of the header at the start of every payload.
+	 */
+	public static final int HEADER_LENGTH = 8 + 4 + 8;
+
+	private final LatencyHistogram latency;
+	private final BitSet[] seen;
+	private long received = 0;
+	private long duplicates = 0;
+	private long malformed = 0;
+
+	/**
+	 * @param publishers the number of publishing clients
+	 * @param latency where to record the latencies, shared by all
+	 *            subscribers
+	 */
+	public DeliveryTracker(int publishers, LatencyHistogram latency) {
+		this.latency = latency;
+		this.seen = new BitSet[publishers];
+		for (int i = 0; i < publishers; i++) {
+			seen[i] = new BitSet();
+		}
+	}
+
+	/**
+	 * Writes the header into a payload.
+	 * @param payload the payload, at least {@link #HEADER_LENGTH} long
+	 * @param due the time the message is due to be published
+	 * @param publisher the number of the publishing client
+	 * @param sequence the number of the message from that client
+	 */
+	public static void writeHeader(byte[] payload, long due, int publisher, long sequence) {
+		ByteBuffer.wrap(payload).putLong(due).putInt(publisher).putLong(sequence);
+	}
+
+	/**
+	 * Counts a message that has arrived.
+	 * @param payload the payload of the message
+	 */
+	public void delivered(byte[] payload) {
+		long now = System.nanoTime();
+		if (payload == null || payload.length < HEADER_LENGTH) {
+			synchronized (this) {
+				malformed++;
+			}
+			return;
+		}
+		ByteBuffer header = ByteBuffer.wrap(payload);
+		long due = header.getLong();
+		int publisher = header.getInt();
+		long sequence = header.getLong();
+		if (publisher < 0 || publisher >= seen.length || sequence < 0 || sequence > Integer.MAX_VALUE) {
+			synchronized (this) {
+				malformed++;
+			}
+			return;
+		}
+		boolean duplicate;
+		synchronized (this) {
+			received++;
+			duplicate = seen[publisher].get((int) sequence);
+			if (duplicate) {
+				duplicates++;
+			} else {
+				seen[publisher].set((int) sequence);
+			}
+		}
+		if (!duplicate) {
+			latency.recordNanos(now - due);
+		}
+	}
+
+	/**
+	 * @return the number of messages that have arrived, duplicates included
+	 */
+	public synchronized long getReceived() {
+		return received;
+	}
+
+	/**
+	 * @return the number of messages that arrived more than once, counting
+	 *         each extra arrival
+	 */
+	public synchronized long getDuplicates() {
+		return duplicates;
+	}
+
+	/**
+	 * @return the number of messages that did not come from this test
+	 */
+	public synchronized long getMalformed() {
+		return malformed;
+	}
+
+	/**
+	 * @return the number of different messages that have arrived
+	 */
+	public synchronized long getUnique() {
+		return received - duplicates;
+	}
+}
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - load generator
+ */
+package org.eclipse.paho.sample.loadtest;
+
+/**
+ * A client taking part in a load test, hiding whether it speaks MQTT 3.1.1
+ * or 5.
+ */
+public interface LoadClient {
+
+	/**
+	 * What a load client reports back to the test.
+	 */
+	interface Listener {
+
+		/**
+		 * A message has arrived at a subscriber.
+		 * @param payload the payload of the message
+		 */
+		void delivered(byte[] payload);
+
+		/**
+		 * A publish at QoS 1 or 2 has been acknowledged by the server.
+		 * @param published the {@link System#nanoTime()} the publish was
+		 *            made at
+		 */
+		void acknowledged(long published);
+
+		/**
+		 * A publish has failed, or the connection has been lost.
+		 * @param cause why
+		 */
+		void failed(Throwable cause);
+	}
+
+	/**
+	 * Connects, waiting until connected.
+	 * @throws Exception if the client could not connect
+	 */
+	void connect() throws Exception;
+
+	/**
+	 * Subscribes, waiting until the server has granted the subscription.
+	 * @param topicFilter the topic filter to subscribe to
+	 * @param qos the QoS to subscribe at
+	 * @throws Exception if the subscription failed
+	 */
+	void subscribe(String topicFilter, int qos) throws Exception;
+
+	/**
+	 * Publishes a message without waiting.
+	 * @param topic the topic to publish to
+	 * @param payload the payload
+	 * @param qos the QoS to publish at
+	 * @param published the {@link System#nanoTime()} to report when the
+	 *            message is acknowledged
+	 * @return false if the message was not sent because as many messages as
+	 *         allowed are in flight, true otherwise
+	 * @throws Exception if the publish failed
+	 */
+	boolean publish(String topic, byte[] payload, int qos, long published) throws Exception;
+
+	/**
+	 * Disconnects, if connected, and releases the client.
+	 */
+	void close();
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - load generator
+ */
+package org.eclipse.paho.sample.loadtest;
+
+import java.io.PrintStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.paho.client.mqttv3.metrics.LatencyHistogram;
+
+/**
+ * The results of a load test, as named values in the order they were added,
+ * written as a JSON object or as CSV.
+ */
+public class LoadReport {
+
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9, 99.99 };
+
+	private final Map<String, Object> values = new LinkedHashMap<String, Object>();
+
+	/**
+	 * Adds a value.
+	 * @param name the name of the value
+	 * @param value a number, string or boolean
+	 */
+	public void put(String name, Object value) {
+		values.put(name, value);
+	}
+
+	/**
+	 * Adds the count, mean, percentiles and maximum of a histogram, in
+	 * microseconds, as values named with the given prefix.
+	 * @param prefix the start of the names
+	 * @param histogram the histogram
+	 */
+	public void put(String prefix, LatencyHistogram histogram) {
+		put(prefix + "Count", Long.valueOf(histogram.getCount()));
+		put(prefix + "MeanMicros", Double.valueOf(round(histogram.getMean(TimeUnit.MICROSECONDS))));
+		for (int i = 0; i < PERCENTILES.length; i++) {
+			String name = String.valueOf(PERCENTILES[i]).replace(".0", "").replace(".", "_");
+			put(prefix + "P" + name + "Micros",
+					Long.valueOf(histogram.getValueAtPercentile(PERCENTILES[i], TimeUnit.MICROSECONDS)));
+		}
+		put(prefix + "MaxMicros", Long.valueOf(histogram.getMax(TimeUnit.MICROSECONDS)));
+	}
+
+	/**
+	 * @param value a value
+	 * @return the value to two decimal places
+	 */
+	public static double round(double value) {
+		return Math.round(value * 100) / 100.0;
+	}
+
+	/**
+	 * Writes the values as one JSON object.
+	 * @param out where to write
+	 */
+	public void writeJson(PrintStream out) {
+		StringBuilder json = new StringBuilder("{");
+		for (Iterator<Map.Entry<String, Object>> it = values.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<String, Object> entry = it.next();
+			json.append("\n  ").append(quote(entry.getKey())).append(": ");
+			Object value = entry.getValue();
+			if (value instanceof Number || value instanceof Boolean) {
+				json.append(value);
+			} else {
+				json.append(quote(String.valueOf(value)));
+			}
+			if (it.hasNext()) {
+				json.append(',');
+			}
+		}
+		json.append("\n}");
+		out.println(json);
+	}
+
+	/**
+	 * Writes the values as CSV: a line of names, then a line of values.
+	 * @param out where to write
+	 * @param header whether to write the line of names
+	 */
+	public void writeCsv(PrintStream out, boolean header) {
+		if (header) {
+			out.println(join(values.keySet().iterator()));
+		}
+		out.println(join(values.values().iterator()));
+	}
+
+	private static String join(Iterator<?> it) {
+		StringBuilder line = new StringBuilder();
+		while (it.hasNext()) {
+			String value = String.valueOf(it.next());
+			if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0) {
+				value = '"' + value.replace("\"", "\"\"") + '"';
+			}
+			line.append(value);
+			if (it.hasNext()) {
+				line.append(',');
+			}
+		}
+		return line.toString();
+	}
+
+	private static String quote(String value) {
+		StringBuilder quoted = new StringBuilder("\"");
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				quoted.append('\\').append(c);
+			} else if (c < 0x20) {
+				quoted.append(String.format("\\u%04x", Integer.valueOf(c)));
+			} else {
+				quoted.append(c);
+			}
+		}
+		return quoted.append('"').toString();
+	}
+}
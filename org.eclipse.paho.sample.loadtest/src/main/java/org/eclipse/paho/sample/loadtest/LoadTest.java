@@ -0,0 +1,497 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - load generator
+ */
+package org.eclipse.paho.sample.loadtest;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.eclipse.paho.client.mqttv3.MqttClientHost;
+import org.eclipse.paho.client.mqttv3.metrics.LatencyHistogram;
+
+/**
+ * Measures the throughput and latency of MQTT clients against a server.
+ * <p>
+ * A number of publishing clients publish at a fixed total rate, spread over
+ * a number of driving threads, for a fixed time. Their messages go to a
+ * number of topics in turn, and each subscribing client subscribes to one of
+ * the topics, so that with S subscribers and F topics each message reaches
+ * about S/F subscribers. Every payload carries the time it was due to be
+ * published, so the latency measured includes any time a message waited
+ * because the publisher fell behind, and its publisher and sequence number,
+ * so that lost and duplicated messages can be counted.
+ * </p>
+ * <p>
+ * MQTT 3.1.1 clients are hosted on as many shared threads as there are
+ * driving threads, with a {@link MqttClientHost}; MQTT 5 clients have threads
+ * of their own. When the time is up, the test waits for outstanding messages
+ * to arrive, then writes its results as JSON or CSV.
+ * </p>
+ */
+public class LoadTest {
+
+	/**
+	 * The settings of a test.
+	 */
+	public static class Settings {
+		String serverURI = "tcp://localhost:1883";
+		int version = 3;
+		int publishers = 1;
+		int subscribers = 1;
+		int threads = 1;
+		int qos = 0;
+		int payloadSize = 100;
+		String topicPrefix = "paho/load";
+		int topics = 1;
+		int rate = 1000;
+		int duration = 10;
+		int drain = 5;
+		int keepAlive = 60;
+		int maxInflight = 100;
+		String userName = null;
+		String password = null;
+		String clientIdPrefix = "paho-load";
+		String format = "json";
+		String output = null;
+		int interval = 1;
+		boolean quiet = false;
+		int actionTimeout = 10000;
+	}
+
+	private final Settings settings;
+	private final String[] topicNames;
+	private final int[] subscribersOnTopic;
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final LatencyHistogram ackLatency = new LatencyHistogram();
+	private final AtomicLong sent = new AtomicLong(0);
+	private final AtomicLong acknowledged = new AtomicLong(0);
+	private final AtomicLong errors = new AtomicLong(0);
+	private final AtomicLong inflightWaits = new AtomicLong(0);
+	private final AtomicLongArray sentToTopic;
+	private final List<DeliveryTracker> trackers = new ArrayList<DeliveryTracker>();
+	private final List<LoadClient> publishers = new ArrayList<LoadClient>();
+	private final List<LoadClient> subscribers = new ArrayList<LoadClient>();
+	private volatile boolean running = true;
+	private volatile Throwable lastError = null;
+	private MqttClientHost host = null;
+
+	public LoadTest(Settings settings) {
+		this.settings = settings;
+		topicNames = new String[settings.topics];
+		subscribersOnTopic = new int[settings.topics];
+		for (int i = 0; i < settings.topics; i++) {
+			topicNames[i] = settings.topicPrefix + "/" + i;
+		}
+		for (int i = 0; i < settings.subscribers; i++) {
+			subscribersOnTopic[i % settings.topics]++;
+		}
+		sentToTopic = new AtomicLongArray(settings.topics);
+	}
+
+	public static void main(String[] args) {
+		Options options = new Options();
+		options.addOption("H", "help", false, "Prints help");
+		options.addOption("h", "host", true, "MQTT server URI to connect to. Defaults to tcp://localhost:1883.");
+		options.addOption("v", "version", true, "The version of MQTT to use, 3 (3.1.1) or 5. Defaults to 3.");
+		options.addOption("c", "clients", true, "The number of publishing clients. Defaults to 1.");
+		options.addOption("s", "subscribers", true, "The number of subscribing clients. Defaults to 1.");
+		options.addOption("T", "threads", true,
+				"The number of threads driving the publishers, and hosting the MQTT 3.1.1 clients. Defaults to 1.");
+		options.addOption("q", "qos", true, "The QoS to publish and subscribe at. Defaults to 0.");
+		options.addOption("p", "payload-size", true,
+				"The size of each payload in bytes, at least " + DeliveryTracker.HEADER_LENGTH + ". Defaults to 100.");
+		options.addOption("t", "topic", true, "The start of the topics published to. Defaults to paho/load.");
+		options.addOption("F", "topics", true,
+				"The number of topics to spread the messages over, each subscriber subscribing to one. Defaults to 1.");
+		options.addOption("r", "rate", true,
+				"The total number of messages to publish per second, 0 for as fast as possible. Defaults to 1000.");
+		options.addOption("d", "duration", true, "How long to publish for, in seconds. Defaults to 10.");
+		options.addOption("D", "drain", true,
+				"How long to wait for outstanding messages after publishing, in seconds. Defaults to 5.");
+		options.addOption("k", "keepalive", true, "The keep alive in seconds. Defaults to 60.");
+		options.addOption("M", "max-inflight", true,
+				"The most QoS 1 and 2 messages each client has in flight. Defaults to 100.");
+		options.addOption("u", "username", true, "The user name to connect with.");
+		options.addOption("P", "password", true, "The password to connect with.");
+		options.addOption("i", "id", true, "The start of the client ids. Defaults to paho-load.");
+		options.addOption("f", "format", true, "The format of the results, json or csv. Defaults to json.");
+		options.addOption("o", "output", true,
+				"The file to write the results to, appending to it for csv. Defaults to standard out.");
+		options.addOption("I", "interval", true,
+				"How often to report progress, in seconds, 0 for never. Defaults to 1.");
+		options.addOption("Q", "quiet", false, "Don't report progress or errors.");
+
+		Settings settings = new Settings();
+		try {
+			CommandLine line = new DefaultParser().parse(options, args);
+			if (line.hasOption("help")) {
+				new HelpFormatter().printHelp("mqtt-load", options);
+				System.exit(0);
+			}
+			settings.serverURI = line.getOptionValue("host", settings.serverURI);
+			settings.version = intOption(line, "version", settings.version, 3, 5);
+			settings.publishers = intOption(line, "clients", settings.publishers, 0, Integer.MAX_VALUE);
+			settings.subscribers = intOption(line, "subscribers", settings.subscribers, 0, Integer.MAX_VALUE);
+			settings.threads = intOption(line, "threads", settings.threads, 1, Integer.MAX_VALUE);
+			settings.qos = intOption(line, "qos", settings.qos, 0, 2);
+			settings.payloadSize = intOption(line, "payload-size", settings.payloadSize,
+					DeliveryTracker.HEADER_LENGTH, 268435455);
+			settings.topicPrefix = line.getOptionValue("topic", settings.topicPrefix);
+			settings.topics = intOption(line, "topics", settings.topics, 1, Integer.MAX_VALUE);
+			settings.rate = intOption(line, "rate", settings.rate, 0, Integer.MAX_VALUE);
+			settings.duration = intOption(line, "duration", settings.duration, 1, Integer.MAX_VALUE);
+			settings.drain = intOption(line, "drain", settings.drain, 0, Integer.MAX_VALUE);
+			settings.keepAlive = intOption(line, "keepalive", settings.keepAlive, 0, 65535);
+			settings.maxInflight = intOption(line, "max-inflight", settings.maxInflight, 1, 65535);
+			settings.userName = line.getOptionValue("username");
+			settings.password = line.getOptionValue("password");
+			settings.clientIdPrefix = line.getOptionValue("id", settings.clientIdPrefix);
+			settings.format = line.getOptionValue("format", settings.format);
+			if (!settings.format.equals("json") && !settings.format.equals("csv")) {
+				throw new ParseException("format must be json or csv");
+			}
+			settings.output = line.getOptionValue("output");
+			settings.interval = intOption(line, "interval", settings.interval, 0, Integer.MAX_VALUE);
+			settings.quiet = line.hasOption("quiet");
+		} catch (ParseException e) {
+			System.err.println(e.getMessage());
+			new HelpFormatter().printHelp("mqtt-load", options);
+			System.exit(1);
+		}
+
+		try {
+			LoadReport report = new LoadTest(settings).run();
+			if (settings.output == null) {
+				write(report, settings, System.out, true);
+			} else {
+				boolean csv = settings.format.equals("csv");
+				File file = new File(settings.output);
+				boolean header = !csv || !file.exists() || file.length() == 0;
+				PrintStream out = new PrintStream(new FileOutputStream(file, csv), true, "UTF-8");
+				try {
+					write(report, settings, out, header);
+				} finally {
+					out.close();
+				}
+			}
+		} catch (Exception e) {
+			System.err.println("Load test failed: " + e);
+			System.exit(2);
+		}
+	}
+
+	private static int intOption(CommandLine line, String name, int defaultValue, int min, int max)
+			throws ParseException {
+		String value = line.getOptionValue(name);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			int number = Integer.parseInt(value);
+			if (number >= min && number <= max) {
+				return number;
+			}
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+		throw new ParseException(name + " must be a number from " + min + " to " + max);
+	}
+
+	private static void write(LoadReport report, Settings settings, PrintStream out, boolean header) {
+		if (settings.format.equals("csv")) {
+			report.writeCsv(out, header);
+		} else {
+			report.writeJson(out);
+		}
+	}
+
+	/**
+	 * Runs the test.
+	 * @return the results
+	 * @throws Exception if the clients could not connect or subscribe
+	 */
+	public LoadReport run() throws Exception {
+		try {
+			createClients();
+			return measure();
+		} finally {
+			running = false;
+			for (LoadClient client : publishers) {
+				client.close();
+			}
+			for (LoadClient client : subscribers) {
+				client.close();
+			}
+			if (host != null) {
+				host.close();
+			}
+		}
+	}
+
+	private void createClients() throws Exception {
+		if (settings.version == 3) {
+			host = new MqttClientHost(settings.threads);
+		}
+		for (int i = 0; i < settings.subscribers; i++) {
+			final DeliveryTracker tracker = new DeliveryTracker(settings.publishers, latency);
+			trackers.add(tracker);
+			LoadClient client = createClient(settings.clientIdPrefix + "-sub-" + i, new Listener() {
+				public void delivered(byte[] payload) {
+					tracker.delivered(payload);
+				}
+			});
+			subscribers.add(client);
+			client.connect();
+			client.subscribe(topicNames[i % settings.topics], settings.qos);
+		}
+		for (int i = 0; i < settings.publishers; i++) {
+			LoadClient client = createClient(settings.clientIdPrefix + "-pub-" + i, new Listener());
+			publishers.add(client);
+			client.connect();
+		}
+		progress("connected " + settings.publishers + " publishers and " + settings.subscribers + " subscribers to "
+				+ settings.serverURI);
+	}
+
+	private LoadClient createClient(String clientId, LoadClient.Listener listener) throws Exception {
+		if (settings.version == 3) {
+			return new MqttV3LoadClient(host, settings, clientId, listener);
+		}
+		return new MqttV5LoadClient(settings, clientId, listener);
+	}
+
+	private LoadReport measure() throws InterruptedException {
+		int drivers = Math.max(1, Math.min(settings.threads, settings.publishers));
+		List<Thread> threads = new ArrayList<Thread>();
+		long start = System.nanoTime();
+		for (int d = 0; d < drivers && settings.publishers > 0; d++) {
+			Thread thread = new Thread(new Driver(d, drivers, start), "LoadDriver-" + d);
+			thread.setDaemon(true);
+			threads.add(thread);
+			thread.start();
+		}
+
+		long end = start + TimeUnit.SECONDS.toNanos(settings.duration);
+		long nextReport = start + TimeUnit.SECONDS.toNanos(settings.interval);
+		long lastSent = 0;
+		long lastDelivered = 0;
+		for (long now = System.nanoTime(); now < end; now = System.nanoTime()) {
+			if (settings.interval > 0 && now >= nextReport) {
+				long sentNow = sent.get();
+				long deliveredNow = delivered();
+				progress(String.format("%ds sent=%d (%d/s) delivered=%d (%d/s) p99=%dus errors=%d",
+						Long.valueOf(TimeUnit.NANOSECONDS.toSeconds(now - start)), Long.valueOf(sentNow),
+						Long.valueOf((sentNow - lastSent) / settings.interval), Long.valueOf(deliveredNow),
+						Long.valueOf((deliveredNow - lastDelivered) / settings.interval),
+						Long.valueOf(latency.getValueAtPercentile(99, TimeUnit.MICROSECONDS)),
+						Long.valueOf(errors.get())));
+				lastSent = sentNow;
+				lastDelivered = deliveredNow;
+				nextReport += TimeUnit.SECONDS.toNanos(settings.interval);
+			}
+			Thread.sleep(Math.max(1, TimeUnit.NANOSECONDS.toMillis(Math.min(end, nextReport) - now)));
+		}
+		running = false;
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		long deliveredInTime = delivered();
+
+		// wait for what is still on its way
+		long drainEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(settings.drain);
+		while (System.nanoTime() < drainEnd
+				&& (unique() < expected() || (settings.qos > 0 && acknowledged.get() < sent.get()))) {
+			Thread.sleep(10);
+		}
+
+		long expected = expected();
+		long unique = unique();
+		long duplicates = 0;
+		long malformed = 0;
+		for (DeliveryTracker tracker : trackers) {
+			duplicates += tracker.getDuplicates();
+			malformed += tracker.getMalformed();
+		}
+
+		LoadReport report = new LoadReport();
+		report.put("serverURI", settings.serverURI);
+		report.put("mqttVersion", Integer.valueOf(settings.version));
+		report.put("publishers", Integer.valueOf(settings.publishers));
+		report.put("subscribers", Integer.valueOf(settings.subscribers));
+		report.put("threads", Integer.valueOf(settings.threads));
+		report.put("qos", Integer.valueOf(settings.qos));
+		report.put("payloadSize", Integer.valueOf(settings.payloadSize));
+		report.put("topics", Integer.valueOf(settings.topics));
+		report.put("targetRate", Integer.valueOf(settings.rate));
+		report.put("seconds", Double.valueOf(LoadReport.round(seconds)));
+		report.put("sent", Long.valueOf(sent.get()));
+		report.put("acknowledged", Long.valueOf(acknowledged.get()));
+		report.put("inflightWaits", Long.valueOf(inflightWaits.get()));
+		report.put("errors", Long.valueOf(errors.get()));
+		report.put("expected", Long.valueOf(expected));
+		report.put("delivered", Long.valueOf(unique));
+		report.put("lost", Long.valueOf(Math.max(0, expected - unique)));
+		report.put("duplicates", Long.valueOf(duplicates));
+		report.put("foreign", Long.valueOf(malformed));
+		report.put("publishRate", Double.valueOf(LoadReport.round(sent.get() / seconds)));
+		report.put("deliveredRate", Double.valueOf(LoadReport.round(deliveredInTime / seconds)));
+		report.put("latency", latency);
+		report.put("ackLatency", ackLatency);
+		if (lastError != null) {
+			report.put("lastError", lastError.toString());
+		}
+		return report;
+	}
+
+	/**
+	 * @return the number of messages that should arrive, counting each
+	 *         subscriber a message should reach
+	 */
+	private long expected() {
+		long expected = 0;
+		for (int i = 0; i < topicNames.length; i++) {
+			expected += sentToTopic.get(i) * subscribersOnTopic[i];
+		}
+		return expected;
+	}
+
+	private long unique() {
+		long unique = 0;
+		for (DeliveryTracker tracker : trackers) {
+			unique += tracker.getUnique();
+		}
+		return unique;
+	}
+
+	private long delivered() {
+		long delivered = 0;
+		for (DeliveryTracker tracker : trackers) {
+			delivered += tracker.getReceived();
+		}
+		return delivered;
+	}
+
+	private void failed(Throwable cause) {
+		errors.incrementAndGet();
+		if (lastError == null) {
+			progress("error: " + cause);
+		}
+		lastError = cause;
+	}
+
+	private void progress(String message) {
+		if (!settings.quiet) {
+			System.err.println(message);
+		}
+	}
+
+	/**
+	 * Counts what happens to the messages of the publishers; subscribers pass
+	 * arrivals on to their tracker.
+	 */
+	private class Listener implements LoadClient.Listener {
+		public void delivered(byte[] payload) {
+		}
+
+		public void acknowledged(long published) {
+			acknowledged.incrementAndGet();
+			ackLatency.recordNanos(System.nanoTime() - published);
+		}
+
+		public void failed(Throwable cause) {
+			LoadTest.this.failed(cause);
+		}
+	}
+
+	/**
+	 * Publishes from every publisher whose number leaves the given remainder,
+	 * at an equal share of the total rate. Each message is due a fixed time
+	 * after the one before, however long publishing takes.
+	 */
+	private class Driver implements Runnable {
+		private final int first;
+		private final int step;
+		private final long start;
+
+		Driver(int first, int step, long start) {
+			this.first = first;
+			this.step = step;
+			this.start = start;
+		}
+
+		public void run() {
+			List<Integer> own = new ArrayList<Integer>();
+			for (int p = first; p < publishers.size(); p += step) {
+				own.add(Integer.valueOf(p));
+			}
+			long[] sequences = new long[own.size()];
+			long interval = settings.rate > 0 ? TimeUnit.SECONDS.toNanos(step) / settings.rate : 0;
+			long due = start;
+			int payloadSize = settings.payloadSize;
+			int index = 0;
+			while (running) {
+				if (interval > 0) {
+					long wait = due - System.nanoTime();
+					if (wait > 0) {
+						LockSupport.parkNanos(wait);
+						continue;
+					}
+				} else {
+					due = System.nanoTime();
+				}
+				int publisher = own.get(index).intValue();
+				long sequence = sequences[index];
+				int topic = (int) ((publisher + sequence) % topicNames.length);
+				byte[] payload = new byte[payloadSize];
+				DeliveryTracker.writeHeader(payload, due, publisher, sequence);
+				try {
+					boolean published = false;
+					while (running && !published) {
+						published = publishers.get(publisher).publish(topicNames[topic], payload, settings.qos, due);
+						if (!published) {
+							inflightWaits.incrementAndGet();
+							LockSupport.parkNanos(50000);
+						}
+					}
+					if (published) {
+						sequences[index]++;
+						sentToTopic.incrementAndGet(topic);
+						sent.incrementAndGet();
+					}
+				} catch (Exception e) {
+					failed(e);
+					// the client is probably disconnected, so do not spin
+					LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+				}
+				index = (index + 1) % own.size();
+				due += interval;
+			}
+		}
+	}
+}
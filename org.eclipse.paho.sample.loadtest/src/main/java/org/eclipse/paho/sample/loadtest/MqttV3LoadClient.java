@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - load generator
+ */
+package org.eclipse.paho.sample.loadtest;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttClientHost;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+
+/**
+ * A load client speaking MQTT 3.1.1, hosted with the other clients of the
+ * test on the shared threads of a {@link MqttClientHost}.
+ */
+public class MqttV3LoadClient implements LoadClient, MqttCallback {
+
+	private final MqttAsyncClient client;
+	private final MqttConnectOptions options = new MqttConnectOptions();
+	private final Listener listener;
+	private final int timeout;
+
+	public MqttV3LoadClient(MqttClientHost host, LoadTest.Settings settings, String clientId, Listener listener)
+			throws MqttException {
+		this.client = host.createClient(settings.serverURI, clientId, new MemoryPersistence());
+		this.listener = listener;
+		this.timeout = settings.actionTimeout;
+		options.setCleanSession(true);
+		options.setKeepAliveInterval(settings.keepAlive);
+		options.setMaxInflight(settings.maxInflight);
+		if (settings.userName != null) {
+			options.setUserName(settings.userName);
+		}
+		if (settings.password != null) {
+			options.setPassword(settings.password.toCharArray());
+		}
+		client.setCallback(this);
+	}
+
+	public void connect() throws Exception {
+		client.connect(options).waitForCompletion(timeout);
+	}
+
+	public void subscribe(String topicFilter, int qos) throws Exception {
+		client.subscribe(topicFilter, qos).waitForCompletion(timeout);
+	}
+
+	public boolean publish(String topic, byte[] payload, int qos, final long published) throws Exception {
+		try {
+			if (qos == 0) {
+				client.publish(topic, payload, qos, false);
+			} else {
+				client.publish(topic, payload, qos, false, null, new IMqttActionListener() {
+					public void onSuccess(IMqttToken asyncActionToken) {
+						listener.acknowledged(published);
+					}
+
+					public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+						listener.failed(exception);
+					}
+				});
+			}
+			return true;
+		} catch (MqttException e) {
+			if (e.getReasonCode() == MqttException.REASON_CODE_MAX_INFLIGHT) {
+				return false;
+			}
+			throw e;
+		}
+	}
+
+	public void close() {
+		try {
+			if (client.isConnected()) {
+				client.disconnect().waitForCompletion(timeout);
+			}
+			client.close();
+		} catch (MqttException e) {
+			listener.failed(e);
+		}
+	}
+
+	public void connectionLost(Throwable cause) {
+		listener.failed(cause);
+	}
+
+	public void messageArrived(String topic, MqttMessage message) {
+		listener.delivered(message.getPayload());
+	}
+
+	public void deliveryComplete(IMqttDeliveryToken token) {
+	}
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - load generator
+ */
+package org.eclipse.paho.sample.loadtest;
+
+import org.eclipse.paho.mqttv5.client.IMqttToken;
+import org.eclipse.paho.mqttv5.client.MqttActionListener;
+import org.eclipse.paho.mqttv5.client.MqttAsyncClient;
+import org.eclipse.paho.mqttv5.client.MqttCallback;
+import org.eclipse.paho.mqttv5.client.MqttClientException;
+import org.eclipse.paho.mqttv5.client.MqttConnectionOptions;
+import org.eclipse.paho.mqttv5.client.MqttDisconnectResponse;
+import org.eclipse.paho.mqttv5.client.persist.MemoryPersistence;
+import org.eclipse.paho.mqttv5.common.MqttException;
+import org.eclipse.paho.mqttv5.common.MqttMessage;
+import org.eclipse.paho.mqttv5.common.packet.MqttProperties;
+
+/**
+ * A load client speaking MQTT 5.
+ */
+public class MqttV5LoadClient implements LoadClient, MqttCallback {
+
+	private final MqttAsyncClient client;
+	private final MqttConnectionOptions options = new MqttConnectionOptions();
+	private final Listener listener;
+	private final int timeout;
+
+	public MqttV5LoadClient(LoadTest.Settings settings, String clientId, Listener listener) throws MqttException {
+		this.client = new MqttAsyncClient(settings.serverURI, clientId, new MemoryPersistence());
+		this.listener = listener;
+		this.timeout = settings.actionTimeout;
+		options.setCleanStart(true);
+		options.setKeepAliveInterval(settings.keepAlive);
+		options.setReceiveMaximum(Integer.valueOf(settings.maxInflight));
+		if (settings.userName != null) {
+			options.setUserName(settings.userName);
+		}
+		if (settings.password != null) {
+			options.setPassword(settings.password.getBytes());
+		}
+		client.setCallback(this);
+	}
+
+	public void connect() throws Exception {
+		client.connect(options).waitForCompletion(timeout);
+	}
+
+	public void subscribe(String topicFilter, int qos) throws Exception {
+		client.subscribe(topicFilter, qos).waitForCompletion(timeout);
+	}
+
+	public boolean publish(String topic, byte[] payload, int qos, final long published) throws Exception {
+		MqttMessage message = new MqttMessage(payload);
+		message.setQos(qos);
+		try {
+			if (qos == 0) {
+				client.publish(topic, message);
+			} else {
+				client.publish(topic, message, null, new MqttActionListener() {
+					public void onSuccess(IMqttToken asyncActionToken) {
+						listener.acknowledged(published);
+					}
+
+					public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+						listener.failed(exception);
+					}
+				});
+			}
+			return true;
+		} catch (MqttException e) {
+			if (e.getReasonCode() == MqttClientException.REASON_CODE_MAX_INFLIGHT) {
+				return false;
+			}
+			throw e;
+		}
+	}
+
+	public void close() {
+		try {
+			if (client.isConnected()) {
+				client.disconnect().waitForCompletion(timeout);
+			}
+			client.close();
+		} catch (MqttException e) {
+			listener.failed(e);
+		}
+	}
+
+	public void disconnected(MqttDisconnectResponse disconnectResponse) {
+		if (disconnectResponse.getException() != null) {
+			listener.failed(disconnectResponse.getException());
+		}
+	}
+
+	public void mqttErrorOccurred(MqttException exception) {
+		listener.failed(exception);
+	}
+
+	public void messageArrived(String topic, MqttMessage message) {
+		listener.delivered(message.getPayload());
+	}
+
+	public void deliveryComplete(IMqttToken token) {
+	}
+
+	public void connectComplete(boolean reconnect, String serverURI) {
+	}
+
+	public void authPacketArrived(int reasonCode, MqttProperties properties) {
+	}
+}
@@ -0,0 +1,443 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - in-process test broker
+ */
+package org.eclipse.paho.test.broker;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.paho.client.mqttv3.MqttTopic;
+
+/**
+ * One client's connection to the {@link TestBroker}: its subscriptions, the
+ * message ids of the QoS 1 and 2 flows in progress and the threads that read
+ * and write its packets. What is common to both versions of MQTT is here; the
+ * packets are decoded and encoded by a subclass for each version, with the
+ * codecs of the client of that version.
+ * <p>
+ * Packets are read on one thread and written on another, from a queue, so
+ * that routing a message never waits for a slow subscriber. The writer holds
+ * each packet back until the broker's latency has passed since it was queued.
+ * </p>
+ */
+abstract class BrokerConnection {
+
+	private static final int MAX_MESSAGE_ID = 65535;
+	private static final int CONNECT = 1;
+
+	protected final TestBroker broker;
+	private final DataInputStream in;
+	private final OutputStream out;
+	private final Closeable transport;
+	private final BlockingQueue<Packet> outgoing = new LinkedBlockingQueue<Packet>();
+	// the subscriptions and outbound message ids are guarded by this
+	private final Map<String, Subscription> subscriptions = new LinkedHashMap<String, Subscription>();
+	private final Set<Integer> outboundIds = new HashSet<Integer>();
+	private int lastId = 0;
+	// only used on the reading thread
+	private final Set<Integer> inboundQos2 = new HashSet<Integer>();
+	private volatile boolean open = true;
+	private volatile String clientId = null;
+	private volatile Message will = null;
+	private Thread writer;
+
+	protected BrokerConnection(TestBroker broker, InputStream in, OutputStream out, Closeable transport) {
+		this.broker = broker;
+		this.in = new DataInputStream(in);
+		this.out = out;
+		this.transport = transport;
+	}
+
+	/**
+	 * Serves a new connection until it is closed, on the calling thread. The
+	 * version of MQTT is taken from the CONNECT packet.
+	 */
+	static void serve(TestBroker broker, InputStream in, OutputStream out, Closeable transport) {
+		BrokerConnection connection = null;
+		try {
+			byte[] connect = readPacket(new DataInputStream(in));
+			if (connect != null && (connect[0] & 0xFF) >> 4 == CONNECT) {
+				if (getProtocolLevel(connect) == 5) {
+					connection = new MqttV5Connection(broker, in, out, transport);
+				} else {
+					connection = new MqttV3Connection(broker, in, out, transport);
+				}
+			}
+			if (connection != null) {
+				connection.run(connect);
+			}
+		} catch (IOException e) {
+			// the client went away before connecting
+		} finally {
+			if (connection == null) {
+				closeQuietly(transport);
+			}
+		}
+	}
+
+	private void run(byte[] connect) {
+		writer = new Thread(new Runnable() {
+			public void run() {
+				write();
+			}
+		}, "TestBroker-writer");
+		writer.setDaemon(true);
+		writer.start();
+		try {
+			handle(connect);
+			byte[] packet;
+			while (open && (packet = readPacket(in)) != null) {
+				handle(packet);
+			}
+		} catch (Exception e) {
+			// the connection is lost
+		} finally {
+			close();
+		}
+	}
+
+	private void write() {
+		try {
+			while (open) {
+				Packet packet = outgoing.take();
+				long wait = packet.due - System.nanoTime();
+				if (wait > 0) {
+					TimeUnit.NANOSECONDS.sleep(wait);
+				}
+				if (packet.bytes == null) {
+					out.flush();
+					close();
+					return;
+				}
+				out.write(packet.bytes);
+				if (outgoing.isEmpty()) {
+					out.flush();
+				}
+			}
+		} catch (InterruptedException e) {
+			// closed
+		} catch (IOException e) {
+			close();
+		}
+	}
+
+	/**
+	 * Reads one packet, whole, header included.
+	 * @return the packet, or null at the end of the stream
+	 */
+	private static byte[] readPacket(DataInputStream in) throws IOException {
+		int first = in.read();
+		if (first < 0) {
+			return null;
+		}
+		byte[] header = new byte[5];
+		header[0] = (byte) first;
+		int headerLength = 1;
+		int length = 0;
+		int multiplier = 1;
+		int digit;
+		do {
+			if (headerLength == header.length) {
+				throw new IOException("malformed remaining length");
+			}
+			digit = in.read();
+			if (digit < 0) {
+				throw new EOFException();
+			}
+			header[headerLength++] = (byte) digit;
+			length += (digit & 0x7F) * multiplier;
+			multiplier *= 128;
+		} while ((digit & 0x80) != 0);
+		byte[] packet = new byte[headerLength + length];
+		System.arraycopy(header, 0, packet, 0, headerLength);
+		in.readFully(packet, headerLength, length);
+		return packet;
+	}
+
+	/**
+	 * @return the protocol level of a CONNECT packet, 3 for MQTT 3.1, 4 for
+	 *         3.1.1 and 5 for 5.0
+	 */
+	private static int getProtocolLevel(byte[] connect) {
+		int pos = 1;
+		while ((connect[pos++] & 0x80) != 0) {
+			// skip the remaining length
+		}
+		int nameLength = ((connect[pos] & 0xFF) << 8) | (connect[pos + 1] & 0xFF);
+		pos += 2 + nameLength;
+		return pos < connect.length ? connect[pos] : -1;
+	}
+
+	/**
+	 * Decodes and acts on a packet from the client.
+	 * @param packet the whole packet
+	 * @throws Exception if the packet could not be decoded or the connection
+	 *             is to be closed
+	 */
+	protected abstract void handle(byte[] packet) throws Exception;
+
+	/**
+	 * Encodes a PUBLISH to send to the client; called with the connection
+	 * locked.
+	 * @param message the message to send
+	 * @param qos the QoS to send it at
+	 * @param retained whether to set the RETAIN flag
+	 * @param msgId the message id, 0 for QoS 0
+	 * @return the whole packet
+	 * @throws Exception if it could not be encoded
+	 */
+	protected abstract byte[] encodePublish(Message message, int qos, boolean retained, int msgId) throws Exception;
+
+	/**
+	 * Queues a packet to be written to the client once the broker's latency
+	 * has passed.
+	 */
+	protected void send(byte[] packet) {
+		outgoing.add(new Packet(System.nanoTime() + broker.getLatencyNanos(), packet));
+	}
+
+	/**
+	 * Records that the client has connected, taking the place of any other
+	 * connection with the same client id.
+	 * @param clientId the client id
+	 * @param will the will message, or null if there is none
+	 */
+	protected void connected(String clientId, Message will) {
+		this.clientId = clientId;
+		this.will = will;
+		broker.connected(this);
+	}
+
+	String getClientId() {
+		return clientId;
+	}
+
+	/**
+	 * Passes a message published by the client on to the subscribers.
+	 * @param message the message
+	 * @param msgId the message id, used to pass a QoS 2 message on only once
+	 *            however often it is sent before it is released
+	 */
+	protected void published(Message message, int msgId) {
+		if (message.getQos() == 2 && !inboundQos2.add(Integer.valueOf(msgId))) {
+			return;
+		}
+		broker.publish(message);
+	}
+
+	/**
+	 * Forgets a QoS 2 message published by the client, when the client
+	 * releases it.
+	 * @param msgId the message id
+	 */
+	protected void released(int msgId) {
+		inboundQos2.remove(Integer.valueOf(msgId));
+	}
+
+	/**
+	 * Frees the message id of a QoS 1 or 2 message sent to the client, when
+	 * the client has acknowledged it.
+	 * @param msgId the message id
+	 */
+	protected synchronized void acknowledged(int msgId) {
+		outboundIds.remove(Integer.valueOf(msgId));
+	}
+
+	/**
+	 * Adds or replaces a subscription.
+	 * @param subscription the subscription
+	 * @return whether it replaced a subscription to the same topic filter
+	 * @throws IllegalArgumentException if the topic filter is not valid
+	 */
+	protected synchronized boolean subscribe(Subscription subscription) {
+		MqttTopic.validate(subscription.filter, true);
+		return subscriptions.put(subscription.filter, subscription) != null;
+	}
+
+	/**
+	 * Sends the retained messages that match a topic filter, once the
+	 * subscription has been acknowledged.
+	 * @param filter the topic filter
+	 * @param qos the QoS granted for the subscription
+	 */
+	protected void sendRetained(String filter, int qos) {
+		for (Iterator<Message> it = broker.getRetained().iterator(); it.hasNext();) {
+			Message message = it.next();
+			if (MqttTopic.isMatched(filter, message.getTopic())) {
+				sendPublish(message, Math.min(message.getQos(), qos), true);
+			}
+		}
+	}
+
+	/**
+	 * @return whether there was a subscription to the topic filter
+	 */
+	protected synchronized boolean unsubscribe(String filter) {
+		return subscriptions.remove(filter) != null;
+	}
+
+	/**
+	 * Sends a message to the client if it has subscribed to its topic, once,
+	 * at the highest QoS of the matching subscriptions.
+	 * @param message the message
+	 */
+	synchronized void deliver(Message message) {
+		int qos = -1;
+		boolean retained = false;
+		for (Iterator<Subscription> it = subscriptions.values().iterator(); it.hasNext();) {
+			Subscription subscription = it.next();
+			if (subscription.noLocal && message.getPublisher() == this) {
+				continue;
+			}
+			if (MqttTopic.isMatched(subscription.filter, message.getTopic())) {
+				qos = Math.max(qos, subscription.qos);
+				retained |= subscription.retainAsPublished && message.isRetained();
+			}
+		}
+		if (qos >= 0) {
+			sendPublish(message, Math.min(qos, message.getQos()), retained);
+		}
+	}
+
+	private synchronized void sendPublish(Message message, int qos, boolean retained) {
+		if (!open) {
+			return;
+		}
+		if (qos == 0 && broker.isLost()) {
+			return;
+		}
+		int msgId = 0;
+		if (qos > 0) {
+			msgId = nextMessageId();
+			if (msgId == 0) {
+				// every message id is in use, so the client has stopped acknowledging
+				broker.dropped();
+				return;
+			}
+		}
+		try {
+			send(encodePublish(message, qos, retained, msgId));
+			broker.delivered();
+		} catch (Exception e) {
+			// the reading thread sees the transport closed and tidies up
+			closeQuietly(transport);
+		}
+	}
+
+	private int nextMessageId() {
+		for (int i = 0; i < MAX_MESSAGE_ID; i++) {
+			lastId = lastId == MAX_MESSAGE_ID ? 1 : lastId + 1;
+			if (outboundIds.add(Integer.valueOf(lastId))) {
+				return lastId;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Closes the connection after the client has sent a DISCONNECT, so
+	 * without publishing its will.
+	 */
+	protected void disconnected() {
+		will = null;
+		close();
+	}
+
+	/**
+	 * Closes the connection, without publishing the client's will, once the
+	 * packets already queued have been written; used when the broker refuses
+	 * a connection or ends it with a DISCONNECT of its own.
+	 */
+	protected void closeAfterSending() {
+		will = null;
+		send(null);
+	}
+
+	/**
+	 * Closes the connection, publishing the client's will if it has one and
+	 * did not disconnect.
+	 */
+	void close() {
+		Message lastWill;
+		synchronized (this) {
+			if (!open) {
+				return;
+			}
+			open = false;
+			lastWill = will;
+			will = null;
+		}
+		closeQuietly(transport);
+		if (writer != null) {
+			writer.interrupt();
+		}
+		broker.disconnected(this);
+		if (lastWill != null) {
+			broker.publish(lastWill);
+		}
+	}
+
+	boolean isOpen() {
+		return open;
+	}
+
+	private static void closeQuietly(Closeable closeable) {
+		try {
+			closeable.close();
+		} catch (IOException e) {
+			// closing anyway
+		}
+	}
+
+	/**
+	 * A topic filter subscribed to, with the options of MQTT 5 that the
+	 * broker supports.
+	 */
+	static class Subscription {
+		final String filter;
+		final int qos;
+		final boolean noLocal;
+		final boolean retainAsPublished;
+
+		Subscription(String filter, int qos, boolean noLocal, boolean retainAsPublished) {
+			this.filter = filter;
+			this.qos = qos;
+			this.noLocal = noLocal;
+			this.retainAsPublished = retainAsPublished;
+		}
+	}
+
+	private static class Packet {
+		final long due;
+		final byte[] bytes;
+
+		Packet(long due, byte[] bytes) {
+			this.due = due;
+			this.bytes = bytes;
+		}
+	}
+}
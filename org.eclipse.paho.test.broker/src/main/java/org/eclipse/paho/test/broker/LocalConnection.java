@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - in-process test broker
+ */
+package org.eclipse.paho.test.broker;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The client's end of a connection to a {@link TestBroker} through memory.
+ */
+class LocalConnection {
+	private final Pipe fromBroker;
+	private final Pipe toBroker;
+
+	LocalConnection(Pipe fromBroker, Pipe toBroker) {
+		this.fromBroker = fromBroker;
+		this.toBroker = toBroker;
+	}
+
+	InputStream getInputStream() {
+		return fromBroker.getInputStream();
+	}
+
+	OutputStream getOutputStream() {
+		return toBroker.getOutputStream();
+	}
+
+	void close() {
+		fromBroker.closeReader();
+		toBroker.closeWriter();
+	}
+}
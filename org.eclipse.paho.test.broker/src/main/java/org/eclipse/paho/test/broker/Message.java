@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - in-process test broker
+ */
+package org.eclipse.paho.test.broker;
+
+import org.eclipse.paho.mqttv5.common.packet.MqttProperties;
+
+/**
+ * A message published to the broker, as it is passed on to subscribers
+ * whichever version of MQTT they use.
+ */
+class Message {
+	private final String topic;
+	private final byte[] payload;
+	private final int qos;
+	private final boolean retained;
+	private final MqttProperties properties;
+	private final BrokerConnection publisher;
+
+	/**
+	 * @param topic the topic published to
+	 * @param payload the payload
+	 * @param qos the QoS it was published at
+	 * @param retained whether it is to be retained
+	 * @param properties the MQTT 5 properties to pass on, or null if it was
+	 *            published with MQTT 3
+	 * @param publisher the connection it was published on, or null for a
+	 *            will or a message published by the broker itself
+	 */
+	Message(String topic, byte[] payload, int qos, boolean retained, MqttProperties properties,
+			BrokerConnection publisher) {
+		this.topic = topic;
+		this.payload = payload;
+		this.qos = qos;
+		this.retained = retained;
+		this.properties = properties;
+		this.publisher = publisher;
+	}
+
+	String getTopic() {
+		return topic;
+	}
+
+	byte[] getPayload() {
+		return payload;
+	}
+
+	int getQos() {
+		return qos;
+	}
+
+	boolean isRetained() {
+		return retained;
+	}
+
+	MqttProperties getProperties() {
+		return properties;
+	}
+
+	BrokerConnection getPublisher() {
+		return publisher;
+	}
+}
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - in-process test broker
+ */
+package org.eclipse.paho.test.broker;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.internal.wire.MqttConnack;
+import org.eclipse.paho.client.mqttv3.internal.wire.MqttConnect;
+import org.eclipse.paho.client.mqttv3.internal.wire.MqttDisconnect;
+import org.eclipse.paho.client.mqttv3.internal.wire.MqttPingReq;
+import org.eclipse.paho.client.mqttv3.internal.wire.MqttPingResp;
+import org.eclipse.paho.client.mqttv3.internal.wire.MqttPubAck;
+import org.eclipse.paho.client.mqttv3.internal.wire.MqttPubComp;
+import org.eclipse.paho.client.mqttv3.internal.wire.MqttPubRec;
+import org.eclipse.paho.client.mqttv3.internal.wire.MqttPubRel;
+import org.eclipse.paho.client.mqttv3.internal.wire.MqttPublish;
+import org.eclipse.paho.client.mqttv3.internal.wire.MqttSuback;
+import org.eclipse.paho.client.mqttv3.internal.wire.MqttSubscribe;
+import org.eclipse.paho.client.mqttv3.internal.wire.MqttUnsubAck;
+import org.eclipse.paho.client.mqttv3.internal.wire.MqttUnsubscribe;
+import org.eclipse.paho.client.mqttv3.internal.wire.MqttWireMessage;
+
+/**
+ * A connection from an MQTT 3.1 or 3.1.1 client, using the codecs of the
+ * MQTT 3 client.
+ */
+class MqttV3Connection extends BrokerConnection {
+
+	private static final int CONNACK_ACCEPTED = 0;
+	private static final int CONNACK_REFUSED_PROTOCOL_VERSION = 1;
+	private static final int CONNACK_REFUSED_IDENTIFIER_REJECTED = 2;
+	private static final int SUBACK_FAILURE = 0x80;
+
+	MqttV3Connection(TestBroker broker, InputStream in, OutputStream out, Closeable transport) {
+		super(broker, in, out, transport);
+	}
+
+	protected void handle(byte[] packet) throws Exception {
+		MqttWireMessage message = MqttWireMessage.createWireMessage(packet);
+		if (message instanceof MqttPublish) {
+			MqttPublish publish = (MqttPublish) message;
+			MqttMessage received = publish.getMessage();
+			published(new Message(publish.getTopicName(), received.getPayload(), received.getQos(),
+					received.isRetained(), null, this), publish.getMessageId());
+			if (received.getQos() == 1) {
+				send(encode(new MqttPubAck(publish)));
+			} else if (received.getQos() == 2) {
+				send(encode(new MqttPubRec(publish)));
+			}
+		} else if (message instanceof MqttPubAck || message instanceof MqttPubComp) {
+			acknowledged(message.getMessageId());
+		} else if (message instanceof MqttPubRec) {
+			send(encode(new MqttPubRel((MqttPubRec) message)));
+		} else if (message instanceof MqttPubRel) {
+			released(message.getMessageId());
+			send(encode(new MqttPubComp(message.getMessageId())));
+		} else if (message instanceof MqttSubscribe) {
+			subscribe((MqttSubscribe) message);
+		} else if (message instanceof MqttUnsubscribe) {
+			String[] names = ((MqttUnsubscribe) message).getNames();
+			for (int i = 0; i < names.length; i++) {
+				unsubscribe(names[i]);
+			}
+			send(encode(new MqttUnsubAck(message.getMessageId())));
+		} else if (message instanceof MqttPingReq) {
+			broker.pinged();
+			send(encode(new MqttPingResp()));
+		} else if (message instanceof MqttDisconnect) {
+			disconnected();
+		} else if (message instanceof MqttConnect) {
+			connect((MqttConnect) message);
+		}
+	}
+
+	private void connect(MqttConnect connect) throws Exception {
+		if (getClientId() != null) {
+			throw new IllegalStateException("second CONNECT");
+		}
+		int version = connect.getMqttVersion();
+		String clientId = connect.getClientId();
+		int returnCode = CONNACK_ACCEPTED;
+		if (version != 3 && version != 4) {
+			returnCode = CONNACK_REFUSED_PROTOCOL_VERSION;
+		} else if (clientId.length() == 0) {
+			if (connect.isCleanSession() && version == 4) {
+				clientId = broker.assignClientId();
+			} else {
+				returnCode = CONNACK_REFUSED_IDENTIFIER_REJECTED;
+			}
+		}
+		if (returnCode != CONNACK_ACCEPTED) {
+			send(encode(new MqttConnack(false, returnCode)));
+			closeAfterSending();
+			return;
+		}
+		Message will = null;
+		MqttMessage willMessage = connect.getWillMessage();
+		if (willMessage != null) {
+			will = new Message(connect.getWillDestination(), willMessage.getPayload(), willMessage.getQos(),
+					willMessage.isRetained(), null, null);
+		}
+		connected(clientId, will);
+		send(encode(new MqttConnack(false, returnCode)));
+	}
+
+	private void subscribe(MqttSubscribe subscribe) throws MqttException {
+		String[] names = subscribe.getNames();
+		int[] qos = subscribe.getQos();
+		int[] granted = new int[names.length];
+		for (int i = 0; i < names.length; i++) {
+			granted[i] = qos[i] >= 0 && qos[i] <= 2 ? qos[i] : SUBACK_FAILURE;
+			if (granted[i] != SUBACK_FAILURE) {
+				try {
+					subscribe(new Subscription(names[i], qos[i], false, false));
+				} catch (IllegalArgumentException e) {
+					granted[i] = SUBACK_FAILURE;
+				}
+			}
+		}
+		send(encode(new MqttSuback(subscribe.getMessageId(), granted)));
+		for (int i = 0; i < names.length; i++) {
+			if (granted[i] != SUBACK_FAILURE) {
+				sendRetained(names[i], granted[i]);
+			}
+		}
+	}
+
+	protected byte[] encodePublish(Message message, int qos, boolean retained, int msgId) throws MqttException {
+		MqttMessage sent = new MqttMessage(message.getPayload());
+		sent.setQos(qos);
+		sent.setRetained(retained);
+		MqttPublish publish = new MqttPublish(message.getTopic(), sent);
+		publish.setMessageId(msgId);
+		return encode(publish);
+	}
+
+	private static byte[] encode(MqttWireMessage message) throws MqttException {
+		byte[] header = message.getHeader();
+		byte[] payload = message.getPayload();
+		byte[] packet = new byte[header.length + payload.length];
+		System.arraycopy(header, 0, packet, 0, header.length);
+		System.arraycopy(payload, 0, packet, header.length, payload.length);
+		return packet;
+	}
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - in-process test broker
+ */
+package org.eclipse.paho.test.broker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Set;
+
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.internal.NetworkModule;
+import org.eclipse.paho.client.mqttv3.spi.NetworkModuleFactory;
+
+/**
+ * Creates the network modules that connect the MQTT 3 client to a
+ * {@link TestBroker} through memory, for URIs of the form
+ * <code>local://&lt;broker name&gt;</code>.
+ */
+public class MqttV3LocalNetworkModuleFactory implements NetworkModuleFactory {
+
+	@Override
+	public Set<String> getSupportedUriSchemes() {
+		return Collections.singleton(TestBroker.LOCAL_SCHEME);
+	}
+
+	@Override
+	public void validateURI(URI brokerUri) throws IllegalArgumentException {
+		if (brokerUri.getHost() == null) {
+			throw new IllegalArgumentException("URI must name the broker \"" + brokerUri.toString() + "\"");
+		}
+		String path = brokerUri.getPath();
+		if (path != null && !path.isEmpty()) {
+			throw new IllegalArgumentException("URI path must be empty \"" + brokerUri.toString() + "\"");
+		}
+	}
+
+	@Override
+	public NetworkModule createNetworkModule(URI brokerUri, MqttConnectOptions options, String clientId)
+			throws MqttException {
+		validateURI(brokerUri);
+		return new LocalNetworkModule(brokerUri);
+	}
+
+	private static class LocalNetworkModule implements NetworkModule {
+		private final URI brokerUri;
+		private LocalConnection connection;
+
+		LocalNetworkModule(URI brokerUri) {
+			this.brokerUri = brokerUri;
+		}
+
+		public void start() throws IOException, MqttException {
+			try {
+				connection = TestBroker.connectLocal(brokerUri.getHost());
+			} catch (ConnectException e) {
+				throw new MqttException(MqttException.REASON_CODE_SERVER_CONNECT_ERROR, e);
+			}
+		}
+
+		public InputStream getInputStream() throws IOException {
+			return connection.getInputStream();
+		}
+
+		public OutputStream getOutputStream() throws IOException {
+			return connection.getOutputStream();
+		}
+
+		public void stop() throws IOException {
+			if (connection != null) {
+				connection.close();
+			}
+		}
+
+		public String getServerURI() {
+			return brokerUri.toString();
+		}
+	}
+}
@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - in-process test broker
+ */
+package org.eclipse.paho.test.broker;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.paho.mqttv5.common.MqttException;
+import org.eclipse.paho.mqttv5.common.MqttMessage;
+import org.eclipse.paho.mqttv5.common.MqttSubscription;
+import org.eclipse.paho.mqttv5.common.packet.MqttConnAck;
+import org.eclipse.paho.mqttv5.common.packet.MqttConnect;
+import org.eclipse.paho.mqttv5.common.packet.MqttDisconnect;
+import org.eclipse.paho.mqttv5.common.packet.MqttPingReq;
+import org.eclipse.paho.mqttv5.common.packet.MqttPingResp;
+import org.eclipse.paho.mqttv5.common.packet.MqttProperties;
+import org.eclipse.paho.mqttv5.common.packet.MqttPubAck;
+import org.eclipse.paho.mqttv5.common.packet.MqttPubComp;
+import org.eclipse.paho.mqttv5.common.packet.MqttPubRec;
+import org.eclipse.paho.mqttv5.common.packet.MqttPubRel;
+import org.eclipse.paho.mqttv5.common.packet.MqttPublish;
+import org.eclipse.paho.mqttv5.common.packet.MqttReturnCode;
+import org.eclipse.paho.mqttv5.common.packet.MqttSubAck;
+import org.eclipse.paho.mqttv5.common.packet.MqttSubscribe;
+import org.eclipse.paho.mqttv5.common.packet.MqttUnsubAck;
+import org.eclipse.paho.mqttv5.common.packet.MqttUnsubscribe;
+import org.eclipse.paho.mqttv5.common.packet.MqttWireMessage;
+
+/**
+ * A connection from an MQTT 5 client, using the codecs of the MQTT 5 client.
+ * Topic aliases are accepted from the client up to the broker's
+ * {@link TestBroker#setTopicAliasMaximum(int) maximum}, and used towards it
+ * up to the maximum the client asked for in its CONNECT.
+ */
+class MqttV5Connection extends BrokerConnection {
+
+	private static final String SHARED_SUBSCRIPTION_PREFIX = "$share/";
+
+	// aliases the client has set, only used on the reading thread
+	private final Map<Integer, String> inboundAliases = new HashMap<Integer, String>();
+	private int inboundAliasMaximum = 0;
+	// aliases the broker has set, guarded by the connection
+	private final Map<String, Integer> outboundAliases = new HashMap<String, Integer>();
+	private int outboundAliasMaximum = 0;
+
+	MqttV5Connection(TestBroker broker, InputStream in, OutputStream out, Closeable transport) {
+		super(broker, in, out, transport);
+	}
+
+	protected void handle(byte[] packet) throws Exception {
+		MqttWireMessage message = MqttWireMessage.createWireMessage(packet);
+		if (message instanceof MqttPublish) {
+			publish((MqttPublish) message);
+		} else if (message instanceof MqttPubAck || message instanceof MqttPubComp) {
+			acknowledged(message.getMessageId());
+		} else if (message instanceof MqttPubRec) {
+			send(new MqttPubRel(MqttReturnCode.RETURN_CODE_SUCCESS, message.getMessageId(), null).serialize());
+		} else if (message instanceof MqttPubRel) {
+			released(message.getMessageId());
+			send(new MqttPubComp(MqttReturnCode.RETURN_CODE_SUCCESS, message.getMessageId(), null).serialize());
+		} else if (message instanceof MqttSubscribe) {
+			subscribe((MqttSubscribe) message);
+		} else if (message instanceof MqttUnsubscribe) {
+			String[] topics = ((MqttUnsubscribe) message).getTopics();
+			int[] reasonCodes = new int[topics.length];
+			for (int i = 0; i < topics.length; i++) {
+				reasonCodes[i] = unsubscribe(topics[i]) ? MqttReturnCode.RETURN_CODE_SUCCESS
+						: MqttReturnCode.RETURN_CODE_NO_SUBSCRIPTION_EXISTED;
+			}
+			MqttUnsubAck unsubAck = new MqttUnsubAck(reasonCodes, null);
+			unsubAck.setMessageId(message.getMessageId());
+			send(unsubAck.serialize());
+		} else if (message instanceof MqttPingReq) {
+			broker.pinged();
+			send(new MqttPingResp().serialize());
+		} else if (message instanceof MqttDisconnect) {
+			if (((MqttDisconnect) message).getReturnCode() == MqttReturnCode.RETURN_CODE_DISCONNECT_WITH_WILL_MESSAGE) {
+				close();
+			} else {
+				disconnected();
+			}
+		} else if (message instanceof MqttConnect) {
+			connect((MqttConnect) message);
+		}
+	}
+
+	private void connect(MqttConnect connect) throws MqttException {
+		if (getClientId() != null) {
+			throw new IllegalStateException("second CONNECT");
+		}
+		MqttProperties properties = new MqttProperties();
+		String clientId = connect.getClientId();
+		if (clientId.length() == 0) {
+			clientId = broker.assignClientId();
+			properties.setAssignedClientIdentifier(clientId);
+		}
+		inboundAliasMaximum = broker.getTopicAliasMaximum();
+		if (inboundAliasMaximum > 0) {
+			properties.setTopicAliasMaximum(Integer.valueOf(inboundAliasMaximum));
+		}
+		Integer aliasMaximum = connect.getProperties().getTopicAliasMaximum();
+		synchronized (this) {
+			outboundAliasMaximum = aliasMaximum == null ? 0 : aliasMaximum.intValue();
+		}
+		properties.setSharedSubscriptionAvailable(false);
+		properties.setSubscriptionIdentifiersAvailable(false);
+		Message will = null;
+		MqttMessage willMessage = connect.getWillMessage();
+		if (willMessage != null) {
+			will = new Message(connect.getWillDestination(), willMessage.getPayload(), willMessage.getQos(),
+					willMessage.isRetained(), copy(connect.getWillProperties()), null);
+		}
+		connected(clientId, will);
+		send(new MqttConnAck(false, MqttReturnCode.RETURN_CODE_SUCCESS, properties).serialize());
+	}
+
+	private void publish(MqttPublish publish) throws MqttException {
+		String topic = publish.getTopicName();
+		Integer alias = publish.getProperties().getTopicAlias();
+		if (alias != null) {
+			if (alias.intValue() == 0 || alias.intValue() > inboundAliasMaximum) {
+				refuse(MqttReturnCode.RETURN_CODE_TOPIC_ALIAS_NOT_ACCEPTED);
+				return;
+			}
+			if (topic != null && topic.length() > 0) {
+				inboundAliases.put(alias, topic);
+			} else {
+				topic = inboundAliases.get(alias);
+				if (topic == null) {
+					refuse(MqttReturnCode.RETURN_CODE_PROTOCOL_ERROR);
+					return;
+				}
+			}
+		}
+		MqttMessage received = publish.getMessage();
+		published(new Message(topic, publish.getPayload(), received.getQos(), received.isRetained(),
+				copy(publish.getProperties()), this), publish.getMessageId());
+		if (received.getQos() == 1) {
+			send(new MqttPubAck(MqttReturnCode.RETURN_CODE_SUCCESS, publish.getMessageId(), null).serialize());
+		} else if (received.getQos() == 2) {
+			send(new MqttPubRec(MqttReturnCode.RETURN_CODE_SUCCESS, publish.getMessageId(), null).serialize());
+		}
+	}
+
+	private void subscribe(MqttSubscribe subscribe) throws MqttException {
+		MqttSubscription[] subscriptions = subscribe.getSubscriptions();
+		int[] reasonCodes = new int[subscriptions.length];
+		boolean[] sendRetained = new boolean[subscriptions.length];
+		for (int i = 0; i < subscriptions.length; i++) {
+			MqttSubscription subscription = subscriptions[i];
+			if (subscription.getTopic().startsWith(SHARED_SUBSCRIPTION_PREFIX)) {
+				reasonCodes[i] = MqttReturnCode.RETURN_CODE_SHARED_SUB_NOT_SUPPORTED;
+				continue;
+			}
+			try {
+				boolean existed = subscribe(new Subscription(subscription.getTopic(), subscription.getQos(),
+						subscription.isNoLocal(), subscription.isRetainAsPublished()));
+				reasonCodes[i] = subscription.getQos();
+				// retain handling 0 sends the retained messages, 1 only for a new subscription
+				sendRetained[i] = subscription.getRetainHandling() == 0
+						|| (subscription.getRetainHandling() == 1 && !existed);
+			} catch (IllegalArgumentException e) {
+				reasonCodes[i] = MqttReturnCode.RETURN_CODE_TOPIC_FILTER_NOT_VALID;
+			}
+		}
+		MqttSubAck subAck = new MqttSubAck(reasonCodes, null);
+		subAck.setMessageId(subscribe.getMessageId());
+		send(subAck.serialize());
+		for (int i = 0; i < subscriptions.length; i++) {
+			if (sendRetained[i]) {
+				sendRetained(subscriptions[i].getTopic(), reasonCodes[i]);
+			}
+		}
+	}
+
+	/**
+	 * Ends the connection with a DISCONNECT for a protocol error.
+	 */
+	private void refuse(int reasonCode) throws MqttException {
+		send(new MqttDisconnect(reasonCode, null).serialize());
+		closeAfterSending();
+	}
+
+	protected byte[] encodePublish(Message message, int qos, boolean retained, int msgId) throws MqttException {
+		MqttProperties properties = copy(message.getProperties());
+		String topic = message.getTopic();
+		if (outboundAliasMaximum > 0) {
+			Integer alias = outboundAliases.get(topic);
+			if (alias != null) {
+				topic = "";
+			} else if (outboundAliases.size() < outboundAliasMaximum) {
+				alias = Integer.valueOf(outboundAliases.size() + 1);
+				outboundAliases.put(topic, alias);
+			}
+			properties.setTopicAlias(alias);
+		}
+		MqttMessage sent = new MqttMessage(message.getPayload());
+		sent.setQos(qos);
+		sent.setRetained(retained);
+		MqttPublish publish = new MqttPublish(topic, sent, properties);
+		publish.setMessageId(msgId);
+		return publish.serialize();
+	}
+
+	/**
+	 * Copies the properties of a message that are passed on to the
+	 * subscribers, leaving out those that only concern one connection, such
+	 * as the topic alias.
+	 */
+	private static MqttProperties copy(MqttProperties from) {
+		MqttProperties to = new MqttProperties();
+		if (from != null) {
+			to.setPayloadFormat(from.getPayloadFormat());
+			to.setMessageExpiryInterval(from.getMessageExpiryInterval());
+			to.setContentType(from.getContentType());
+			to.setResponseTopic(from.getResponseTopic());
+			to.setCorrelationData(from.getCorrelationData());
+			to.setUserProperties(new ArrayList<>(from.getUserProperties()));
+		}
+		return to;
+	}
+}
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - in-process test broker
+ */
+package org.eclipse.paho.test.broker;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * A one way stream of bytes between two threads of the same process, through
+ * a ring buffer of fixed size. Unlike {@link java.io.PipedInputStream} the
+ * ends are not tied to the threads that first used them, and a reader blocked
+ * on an empty pipe is woken as soon as either end is closed.
+ */
+class Pipe {
+	private final byte[] buffer;
+	private int readPos = 0;
+	private int count = 0;
+	private boolean writerClosed = false;
+	private boolean readerClosed = false;
+
+	private final InputStream in = new InputStream() {
+		public int read() throws IOException {
+			byte[] one = new byte[1];
+			return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			return Pipe.this.read(b, off, len);
+		}
+
+		public int available() {
+			synchronized (Pipe.this) {
+				return count;
+			}
+		}
+
+		public void close() {
+			closeReader();
+		}
+	};
+
+	private final OutputStream out = new OutputStream() {
+		public void write(int b) throws IOException {
+			Pipe.this.write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			Pipe.this.write(b, off, len);
+		}
+
+		public void close() {
+			closeWriter();
+		}
+	};
+
+	Pipe(int size) {
+		buffer = new byte[size];
+	}
+
+	InputStream getInputStream() {
+		return in;
+	}
+
+	OutputStream getOutputStream() {
+		return out;
+	}
+
+	private synchronized int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		while (count == 0) {
+			if (writerClosed || readerClosed) {
+				return -1;
+			}
+			waitForChange();
+		}
+		int n = Math.min(len, count);
+		int first = Math.min(n, buffer.length - readPos);
+		System.arraycopy(buffer, readPos, b, off, first);
+		System.arraycopy(buffer, 0, b, off + first, n - first);
+		readPos = (readPos + n) % buffer.length;
+		count -= n;
+		notifyAll();
+		return n;
+	}
+
+	private synchronized void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			if (writerClosed || readerClosed) {
+				throw new EOFException("pipe closed");
+			}
+			if (count == buffer.length) {
+				waitForChange();
+				continue;
+			}
+			int writePos = (readPos + count) % buffer.length;
+			int n = Math.min(len, Math.min(buffer.length - count, buffer.length - writePos));
+			System.arraycopy(b, off, buffer, writePos, n);
+			count += n;
+			off += n;
+			len -= n;
+			notifyAll();
+		}
+	}
+
+	private void waitForChange() throws InterruptedIOException {
+		try {
+			wait();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+	}
+
+	synchronized void closeWriter() {
+		writerClosed = true;
+		notifyAll();
+	}
+
+	synchronized void closeReader() {
+		readerClosed = true;
+		count = 0;
+		notifyAll();
+	}
+}
@@ -0,0 +1,436 @@
+/*******************************************************************************
+ * Copyright (c) 2026 IBM Corp.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    https://www.eclipse.org/legal/epl-2.0
+ * and the Eclipse Distribution License is available at
+ *   https://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * Contributors:
+ *    Paho contributors - in-process test broker
+ */
+package org.eclipse.paho.test.broker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An MQTT broker that runs inside the process of the test or benchmark that
+ * uses it, so that the clients can be measured without an external server.
+ * It serves MQTT 3.1, 3.1.1 and 5.0 clients, decoding and encoding packets
+ * with the clients' own codecs, and passes messages between clients of either
+ * version.
+ * <p>
+ * Clients connect to it either over TCP on the loopback interface, with the
+ * URI from {@link #getServerURI()}, or through memory with the
+ * <code>local://</code> URI from {@link #getLocalURI()}, which the clients
+ * find through their {@link org.eclipse.paho.client.mqttv3.spi.NetworkModuleFactory}
+ * service when this module is on the classpath.
+ * </p>
+ * <p>
+ * It supports QoS 0, 1 and 2 in both directions, retained messages, the
+ * <code>+</code> and <code>#</code> wildcards, wills, and MQTT 5 topic
+ * aliases, user and other message properties, no local and retain as
+ * published. Every session is clean: nothing is kept for a client once it
+ * has disconnected and nothing is persisted, and keep alive is not enforced.
+ * </p>
+ * <p>
+ * To test how the clients behave on a poor network, a latency can be added to
+ * every packet the broker sends and a share of the QoS 0 messages it passes
+ * on can be lost, from a random sequence that can be seeded to repeat a test.
+ * </p>
+ */
+public class TestBroker implements Closeable {
+
+	/** The URI scheme of connections through memory. */
+	public static final String LOCAL_SCHEME = "local";
+
+	private static final int PIPE_SIZE = 64 * 1024;
+	private static final AtomicInteger brokers = new AtomicInteger(0);
+	private static final ConcurrentMap<String, TestBroker> localBrokers = new ConcurrentHashMap<String, TestBroker>();
+
+	private final String name;
+	private final ServerSocket server;
+	private final List<BrokerConnection> connections = new CopyOnWriteArrayList<BrokerConnection>();
+	private final ConcurrentMap<String, Message> retained = new ConcurrentHashMap<String, Message>();
+	private final AtomicInteger assignedIds = new AtomicInteger(0);
+	private final AtomicLong accepted = new AtomicLong(0);
+	private final AtomicLong received = new AtomicLong(0);
+	private final AtomicLong delivered = new AtomicLong(0);
+	private final AtomicLong dropped = new AtomicLong(0);
+	private final AtomicLong pings = new AtomicLong(0);
+	private final Random random = new Random();
+	private volatile long latencyNanos = 0;
+	private volatile double lossRate = 0;
+	private volatile int topicAliasMaximum = 0;
+	private volatile boolean closed = false;
+
+	/**
+	 * Starts a broker listening on an ephemeral port of the loopback
+	 * interface, as well as in memory.
+	 * @throws IOException if the port could not be opened
+	 */
+	public TestBroker() throws IOException {
+		this(0);
+	}
+
+	/**
+	 * Starts a broker.
+	 * @param port the loopback port to listen on, 0 for an ephemeral port
+	 *            or -1 to be reachable in memory only
+	 * @throws IOException if the port could not be opened
+	 */
+	public TestBroker(int port) throws IOException {
+		name = "broker" + brokers.incrementAndGet();
+		if (port >= 0) {
+			server = new ServerSocket(port, 1024, InetAddress.getByName("127.0.0.1"));
+			Thread acceptor = new Thread(new Runnable() {
+				public void run() {
+					acceptConnections();
+				}
+			}, "TestBroker-" + name);
+			acceptor.setDaemon(true);
+			acceptor.start();
+		} else {
+			server = null;
+		}
+		localBrokers.put(name, this);
+	}
+
+	/**
+	 * Runs a broker on its own, until the process is stopped.
+	 * @param args the port to listen on, 1883 if not given
+	 * @throws Exception if the broker could not be started
+	 */
+	public static void main(String[] args) throws Exception {
+		TestBroker broker = new TestBroker(args.length > 0 ? Integer.parseInt(args[0]) : 1883);
+		System.out.println(broker.getServerURI());
+		Thread.sleep(Long.MAX_VALUE);
+	}
+
+	/**
+	 * @return the name of the broker, the host of its <code>local://</code>
+	 *         URI
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the <code>tcp://</code> URI of the broker, or its
+	 *         <code>local://</code> URI if it is reachable in memory only
+	 */
+	public String getServerURI() {
+		if (server == null) {
+			return getLocalURI();
+		}
+		return "tcp://127.0.0.1:" + server.getLocalPort();
+	}
+
+	/**
+	 * @return the URI to reach the broker through memory
+	 */
+	public String getLocalURI() {
+		return LOCAL_SCHEME + "://" + name;
+	}
+
+	/**
+	 * Sets the time by which every packet the broker sends is held back,
+	 * which adds that latency to each message passed on and twice that to
+	 * the round trip of each acknowledgement.
+	 * @param latency the latency, 0 for none
+	 * @param unit the unit of the latency
+	 */
+	public void setLatency(long latency, TimeUnit unit) {
+		if (latency < 0) {
+			throw new IllegalArgumentException("negative latency");
+		}
+		latencyNanos = unit.toNanos(latency);
+	}
+
+	public long getLatency(TimeUnit unit) {
+		return unit.convert(latencyNanos, TimeUnit.NANOSECONDS);
+	}
+
+	long getLatencyNanos() {
+		return latencyNanos;
+	}
+
+	/**
+	 * Sets the share of the messages passed on at QoS 0 that are lost on the
+	 * way to the subscriber. Messages at QoS 1 and 2 are never lost, as the
+	 * clients only send them again when they reconnect.
+	 * @param rate the share lost, from 0 for none to 1 for all
+	 */
+	public void setLossRate(double rate) {
+		if (rate < 0 || rate > 1) {
+			throw new IllegalArgumentException("loss rate must be between 0 and 1");
+		}
+		lossRate = rate;
+	}
+
+	public double getLossRate() {
+		return lossRate;
+	}
+
+	/**
+	 * Seeds the random sequence that decides which messages are lost, so that
+	 * a test loses the same messages each time it is run.
+	 * @param seed the seed
+	 */
+	public void setRandomSeed(long seed) {
+		synchronized (random) {
+			random.setSeed(seed);
+		}
+	}
+
+	/**
+	 * Sets the number of topic aliases MQTT 5 clients may use towards the
+	 * broker, from their next connection.
+	 * @param maximum the number of aliases, 0 for none, which is the default
+	 */
+	public void setTopicAliasMaximum(int maximum) {
+		if (maximum < 0 || maximum > 65535) {
+			throw new IllegalArgumentException("topic alias maximum must be between 0 and 65535");
+		}
+		topicAliasMaximum = maximum;
+	}
+
+	public int getTopicAliasMaximum() {
+		return topicAliasMaximum;
+	}
+
+	/**
+	 * @return the number of clients connected
+	 */
+	public int getConnectedCount() {
+		return connections.size();
+	}
+
+	/**
+	 * @return the number of connections accepted since the broker started,
+	 *         including those that have since closed
+	 */
+	public long getConnectionCount() {
+		return accepted.get();
+	}
+
+	/**
+	 * @return the number of messages published to the broker
+	 */
+	public long getReceivedCount() {
+		return received.get();
+	}
+
+	/**
+	 * @return the number of messages sent on to subscribers
+	 */
+	public long getDeliveredCount() {
+		return delivered.get();
+	}
+
+	/**
+	 * @return the number of messages that were to be sent on to subscribers
+	 *         but were lost, as set with {@link #setLossRate(double)}, or
+	 *         dropped because a subscriber had every message id in use
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * @return the number of PINGREQs the clients have sent
+	 */
+	public long getPingCount() {
+		return pings.get();
+	}
+
+	/**
+	 * @return the number of topics with a retained message
+	 */
+	public int getRetainedCount() {
+		return retained.size();
+	}
+
+	/**
+	 * Forgets every retained message.
+	 */
+	public void clearRetained() {
+		retained.clear();
+	}
+
+	/**
+	 * Stops the broker, closing the connections of all the clients, which
+	 * see the connection lost.
+	 */
+	public void close() {
+		closed = true;
+		localBrokers.remove(name, this);
+		if (server != null) {
+			try {
+				server.close();
+			} catch (IOException e) {
+				// closing anyway
+			}
+		}
+		for (Iterator<BrokerConnection> it = connections.iterator(); it.hasNext();) {
+			it.next().close();
+		}
+	}
+
+	private void acceptConnections() {
+		try {
+			while (!closed) {
+				final Socket socket = server.accept();
+				socket.setTcpNoDelay(true);
+				accept(new BufferedInputStream(socket.getInputStream()),
+						new BufferedOutputStream(socket.getOutputStream()), socket);
+			}
+		} catch (IOException e) {
+			// the server socket is closed
+		}
+	}
+
+	/**
+	 * Serves a new connection on a thread of its own.
+	 */
+	private void accept(final InputStream in, final OutputStream out, final Closeable transport) {
+		accepted.incrementAndGet();
+		Thread reader = new Thread(new Runnable() {
+			public void run() {
+				BrokerConnection.serve(TestBroker.this, in, out, transport);
+			}
+		}, "TestBroker-reader");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	/**
+	 * Connects to a broker through memory; called by the network modules of
+	 * the <code>local</code> scheme.
+	 * @param name the name of the broker
+	 * @return the client's end of the connection
+	 * @throws ConnectException if there is no broker of that name
+	 */
+	static LocalConnection connectLocal(String name) throws ConnectException {
+		TestBroker broker = name == null ? null : localBrokers.get(name);
+		if (broker == null || broker.closed) {
+			throw new ConnectException("no test broker named " + name);
+		}
+		final Pipe toBroker = new Pipe(PIPE_SIZE);
+		final Pipe toClient = new Pipe(PIPE_SIZE);
+		Closeable transport = new Closeable() {
+			public void close() {
+				toBroker.closeReader();
+				toClient.closeWriter();
+			}
+		};
+		broker.accept(toBroker.getInputStream(), toClient.getOutputStream(), transport);
+		return new LocalConnection(toClient, toBroker);
+	}
+
+	String assignClientId() {
+		return "auto-" + name + "-" + assignedIds.incrementAndGet();
+	}
+
+	/**
+	 * Adds a connection once its client has connected, closing any other
+	 * connection of the same client id.
+	 */
+	void connected(BrokerConnection connection) {
+		List<BrokerConnection> replaced = new ArrayList<BrokerConnection>();
+		for (Iterator<BrokerConnection> it = connections.iterator(); it.hasNext();) {
+			BrokerConnection other = it.next();
+			if (other.getClientId().equals(connection.getClientId())) {
+				replaced.add(other);
+			}
+		}
+		for (Iterator<BrokerConnection> it = replaced.iterator(); it.hasNext();) {
+			it.next().close();
+		}
+		connections.add(connection);
+		if (closed) {
+			connection.close();
+		}
+	}
+
+	void disconnected(BrokerConnection connection) {
+		connections.remove(connection);
+	}
+
+	/**
+	 * Keeps the message if it is retained, then passes it on to every
+	 * connection subscribed to its topic.
+	 */
+	void publish(Message message) {
+		received.incrementAndGet();
+		if (message.isRetained()) {
+			if (message.getPayload().length == 0) {
+				retained.remove(message.getTopic());
+			} else {
+				retained.put(message.getTopic(), message);
+			}
+		}
+		for (Iterator<BrokerConnection> it = connections.iterator(); it.hasNext();) {
+			it.next().deliver(message);
+		}
+	}
+
+	Collection<Message> getRetained() {
+		return retained.values();
+	}
+
+	/**
+	 * Decides whether a QoS 0 message on its way to a subscriber is lost,
+	 * counting it if it is.
+	 */
+	boolean isLost() {
+		double rate = lossRate;
+		if (rate == 0) {
+			return false;
+		}
+		boolean lost;
+		synchronized (random) {
+			lost = random.nextDouble() < rate;
+		}
+		if (lost) {
+			dropped.incrementAndGet();
+		}
+		return lost;
+	}
+
+	void delivered() {
+		delivered.incrementAndGet();
+	}
+
+	void dropped() {
+		dropped.incrementAndGet();
+	}
+
+	void pinged() {
+		pings.incrementAndGet();
+	}
+}
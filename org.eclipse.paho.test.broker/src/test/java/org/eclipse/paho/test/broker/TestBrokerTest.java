@@ -0,0 +1,350 @@
+package org.eclipse.paho.test.broker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.eclipse.paho.mqttv5.client.IMqttToken;
+import org.eclipse.paho.mqttv5.client.MqttConnectionOptions;
+import org.eclipse.paho.mqttv5.client.MqttDisconnectResponse;
+import org.eclipse.paho.mqttv5.common.MqttException;
+import org.eclipse.paho.mqttv5.common.MqttMessage;
+import org.eclipse.paho.mqttv5.common.packet.MqttProperties;
+import org.eclipse.paho.mqttv5.common.packet.UserProperty;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestBrokerTest {
+
+	private TestBroker broker;
+	private final List<org.eclipse.paho.client.mqttv3.MqttAsyncClient> v3Clients = new ArrayList<org.eclipse.paho.client.mqttv3.MqttAsyncClient>();
+	private final List<org.eclipse.paho.mqttv5.client.MqttAsyncClient> v5Clients = new ArrayList<org.eclipse.paho.mqttv5.client.MqttAsyncClient>();
+
+	@Before
+	public void setUp() throws Exception {
+		broker = new TestBroker();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		for (org.eclipse.paho.client.mqttv3.MqttAsyncClient client : v3Clients) {
+			if (client.isConnected()) {
+				client.disconnect().waitForCompletion(5000);
+			}
+			client.close();
+		}
+		for (org.eclipse.paho.mqttv5.client.MqttAsyncClient client : v5Clients) {
+			if (client.isConnected()) {
+				client.disconnect().waitForCompletion(5000);
+			}
+			client.close();
+		}
+		broker.close();
+	}
+
+	/**
+	 * A message as it arrived at a client of either version.
+	 */
+	private static class Arrived {
+		final String topic;
+		final String payload;
+		final int qos;
+		final boolean retained;
+		final MqttProperties properties;
+
+		Arrived(String topic, byte[] payload, int qos, boolean retained, MqttProperties properties) {
+			this.topic = topic;
+			this.payload = new String(payload);
+			this.qos = qos;
+			this.retained = retained;
+			this.properties = properties;
+		}
+	}
+
+	private static class V3Receiver implements MqttCallback {
+		final BlockingQueue<Arrived> arrived = new LinkedBlockingQueue<Arrived>();
+		volatile Throwable lost;
+
+		public void connectionLost(Throwable cause) {
+			lost = cause;
+		}
+
+		public void messageArrived(String topic, org.eclipse.paho.client.mqttv3.MqttMessage message) {
+			arrived.add(new Arrived(topic, message.getPayload(), message.getQos(), message.isRetained(), null));
+		}
+
+		public void deliveryComplete(IMqttDeliveryToken token) {
+		}
+	}
+
+	private static class V5Receiver implements org.eclipse.paho.mqttv5.client.MqttCallback {
+		final BlockingQueue<Arrived> arrived = new LinkedBlockingQueue<Arrived>();
+		volatile MqttException error;
+
+		public void messageArrived(String topic, MqttMessage message) {
+			arrived.add(new Arrived(topic, message.getPayload(), message.getQos(), message.isRetained(),
+					message.getProperties()));
+		}
+
+		public void disconnected(MqttDisconnectResponse disconnectResponse) {
+		}
+
+		public void mqttErrorOccurred(MqttException exception) {
+			error = exception;
+		}
+
+		public void deliveryComplete(IMqttToken token) {
+		}
+
+		public void connectComplete(boolean reconnect, String serverURI) {
+		}
+
+		public void authPacketArrived(int reasonCode, MqttProperties properties) {
+		}
+	}
+
+	private org.eclipse.paho.client.mqttv3.MqttAsyncClient connectV3(String uri, String clientId,
+			V3Receiver receiver) throws Exception {
+		return connectV3(uri, clientId, receiver, new MqttConnectOptions());
+	}
+
+	private org.eclipse.paho.client.mqttv3.MqttAsyncClient connectV3(String uri, String clientId,
+			V3Receiver receiver, MqttConnectOptions options) throws Exception {
+		org.eclipse.paho.client.mqttv3.MqttAsyncClient client = new org.eclipse.paho.client.mqttv3.MqttAsyncClient(
+				uri, clientId, new MemoryPersistence());
+		v3Clients.add(client);
+		client.setCallback(receiver);
+		client.connect(options).waitForCompletion(5000);
+		return client;
+	}
+
+	private org.eclipse.paho.mqttv5.client.MqttAsyncClient connectV5(String uri, String clientId,
+			V5Receiver receiver, MqttConnectionOptions options) throws Exception {
+		org.eclipse.paho.mqttv5.client.MqttAsyncClient client = new org.eclipse.paho.mqttv5.client.MqttAsyncClient(
+				uri, clientId, new org.eclipse.paho.mqttv5.client.persist.MemoryPersistence());
+		v5Clients.add(client);
+		client.setCallback(receiver);
+		client.connect(options).waitForCompletion(5000);
+		return client;
+	}
+
+	private static Arrived next(BlockingQueue<Arrived> arrived) throws InterruptedException {
+		Arrived message = arrived.poll(5, TimeUnit.SECONDS);
+		Assert.assertNotNull("no message arrived", message);
+		return message;
+	}
+
+	@Test(timeout = 20000)
+	public void testQosOverTcp() throws Exception {
+		V3Receiver receiver = new V3Receiver();
+		org.eclipse.paho.client.mqttv3.MqttAsyncClient client = connectV3(broker.getServerURI(), "tcp", receiver);
+		Assert.assertEquals(1, broker.getConnectedCount());
+		client.subscribe(new String[] { "qos/+", "other/#" }, new int[] { 2, 0 }).waitForCompletion(5000);
+		for (int qos = 0; qos <= 2; qos++) {
+			client.publish("qos/" + qos, ("message " + qos).getBytes(), qos, false).waitForCompletion(5000);
+			Arrived message = next(receiver.arrived);
+			Assert.assertEquals("qos/" + qos, message.topic);
+			Assert.assertEquals("message " + qos, message.payload);
+			Assert.assertEquals(qos, message.qos);
+			Assert.assertFalse(message.retained);
+		}
+		// delivered at the QoS of the subscription
+		client.publish("other/deeper/topic", "downgraded".getBytes(), 2, false).waitForCompletion(5000);
+		Arrived message = next(receiver.arrived);
+		Assert.assertEquals(0, message.qos);
+		client.unsubscribe("qos/+").waitForCompletion(5000);
+		client.publish("qos/1", "unsubscribed".getBytes(), 1, false).waitForCompletion(5000);
+		Assert.assertNull(receiver.arrived.poll(200, TimeUnit.MILLISECONDS));
+		Assert.assertEquals(5, broker.getReceivedCount());
+		Assert.assertEquals(4, broker.getDeliveredCount());
+	}
+
+	@Test(timeout = 20000)
+	public void testQosInMemory() throws Exception {
+		V5Receiver receiver = new V5Receiver();
+		org.eclipse.paho.mqttv5.client.MqttAsyncClient client = connectV5(broker.getLocalURI(), "local", receiver,
+				new MqttConnectionOptions());
+		client.subscribe("memory/#", 2).waitForCompletion(5000);
+		MqttProperties properties = new MqttProperties();
+		properties.setUserProperties(Collections.singletonList(new UserProperty("key", "value")));
+		properties.setContentType("text/plain");
+		for (int qos = 0; qos <= 2; qos++) {
+			MqttMessage sent = new MqttMessage(("message " + qos).getBytes(), qos, false, properties);
+			client.publish("memory/" + qos, sent).waitForCompletion(5000);
+			Arrived message = next(receiver.arrived);
+			Assert.assertEquals("memory/" + qos, message.topic);
+			Assert.assertEquals(qos, message.qos);
+			Assert.assertEquals("text/plain", message.properties.getContentType());
+			Assert.assertEquals("value", message.properties.getUserProperties().get(0).getValue());
+		}
+		Assert.assertEquals(1, broker.getConnectionCount());
+	}
+
+	@Test(timeout = 20000)
+	public void testRetainedAcrossVersions() throws Exception {
+		V3Receiver publisherReceiver = new V3Receiver();
+		org.eclipse.paho.client.mqttv3.MqttAsyncClient publisher = connectV3(broker.getLocalURI(), "publisher",
+				publisherReceiver);
+		publisher.publish("retained/a", "kept".getBytes(), 1, true).waitForCompletion(5000);
+		publisher.publish("retained/b", "replaced".getBytes(), 2, true).waitForCompletion(5000);
+		publisher.publish("retained/b", "kept too".getBytes(), 0, true).waitForCompletion(5000);
+		Assert.assertEquals(2, broker.getRetainedCount());
+
+		V5Receiver receiver = new V5Receiver();
+		org.eclipse.paho.mqttv5.client.MqttAsyncClient subscriber = connectV5(broker.getServerURI(), "subscriber",
+				receiver, new MqttConnectionOptions());
+		subscriber.subscribe("retained/+", 1).waitForCompletion(5000);
+		List<String> payloads = new ArrayList<String>();
+		for (int i = 0; i < 2; i++) {
+			Arrived message = next(receiver.arrived);
+			Assert.assertTrue(message.retained);
+			payloads.add(message.payload);
+		}
+		Collections.sort(payloads);
+		Assert.assertEquals("[kept, kept too]", payloads.toString());
+
+		// passed on live without the retained flag, and cleared by an empty payload
+		publisher.publish("retained/a", new byte[0], 1, true).waitForCompletion(5000);
+		Arrived cleared = next(receiver.arrived);
+		Assert.assertFalse(cleared.retained);
+		Assert.assertEquals(1, broker.getRetainedCount());
+	}
+
+	@Test(timeout = 20000)
+	public void testTopicAliases() throws Exception {
+		broker.setTopicAliasMaximum(4);
+		MqttConnectionOptions options = new MqttConnectionOptions();
+		options.setTopicAliasMaximum(Integer.valueOf(2));
+		V5Receiver receiver = new V5Receiver();
+		org.eclipse.paho.mqttv5.client.MqttAsyncClient client = connectV5(broker.getLocalURI(), "aliases", receiver,
+				options);
+		client.subscribe("alias/#", 1).waitForCompletion(5000);
+		// more topics than there are aliases either way, each used several times
+		String[] topics = { "alias/a", "alias/b", "alias/c", "alias/d", "alias/e" };
+		for (int round = 0; round < 3; round++) {
+			for (int i = 0; i < topics.length; i++) {
+				client.publish(topics[i], (round + topics[i]).getBytes(), 1, false).waitForCompletion(5000);
+			}
+		}
+		for (int round = 0; round < 3; round++) {
+			for (int i = 0; i < topics.length; i++) {
+				Arrived message = next(receiver.arrived);
+				Assert.assertEquals(topics[i], message.topic);
+				Assert.assertEquals(round + topics[i], message.payload);
+			}
+		}
+		Assert.assertNull(receiver.error);
+	}
+
+	@Test(timeout = 20000)
+	public void testLatency() throws Exception {
+		V3Receiver receiver = new V3Receiver();
+		org.eclipse.paho.client.mqttv3.MqttAsyncClient client = connectV3(broker.getLocalURI(), "latency", receiver);
+		client.subscribe("latency", 1).waitForCompletion(5000);
+		broker.setLatency(100, TimeUnit.MILLISECONDS);
+		long start = System.nanoTime();
+		client.publish("latency", "slow".getBytes(), 1, false).waitForCompletion(5000);
+		Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+		next(receiver.arrived);
+		Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+	}
+
+	@Test(timeout = 30000)
+	public void testLossIsRepeatable() throws Exception {
+		long first = countLost(broker);
+		TestBroker second = new TestBroker(-1);
+		try {
+			Assert.assertEquals(first, countLost(second));
+		} finally {
+			second.close();
+		}
+		Assert.assertTrue(first > 0 && first < 200);
+	}
+
+	private long countLost(TestBroker broker) throws Exception {
+		broker.setLossRate(0.5);
+		broker.setRandomSeed(42);
+		V3Receiver receiver = new V3Receiver();
+		org.eclipse.paho.client.mqttv3.MqttAsyncClient client = connectV3(broker.getLocalURI(), "lossy", receiver);
+		client.subscribe("loss/0", 0).waitForCompletion(5000);
+		client.subscribe("loss/1", 1).waitForCompletion(5000);
+		for (int i = 0; i < 200; i++) {
+			client.publish("loss/0", new byte[10], 0, false).waitForCompletion(5000);
+		}
+		for (int i = 0; i < 20; i++) {
+			client.publish("loss/1", new byte[10], 1, false).waitForCompletion(5000);
+		}
+		while (broker.getDeliveredCount() + broker.getDroppedCount() < 220) {
+			Thread.sleep(10);
+		}
+		long deadline = System.currentTimeMillis() + 5000;
+		while (receiver.arrived.size() < broker.getDeliveredCount() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		Assert.assertEquals(broker.getDeliveredCount(), receiver.arrived.size());
+		int qos1 = 0;
+		for (Arrived message : receiver.arrived) {
+			if (message.topic.equals("loss/1")) {
+				qos1++;
+			}
+		}
+		// only QoS 0 messages are lost
+		Assert.assertEquals(20, qos1);
+		client.disconnect().waitForCompletion(5000);
+		return broker.getDroppedCount();
+	}
+
+	@Test(timeout = 20000)
+	public void testWillOnTakeOver() throws Exception {
+		V3Receiver watcher = new V3Receiver();
+		org.eclipse.paho.client.mqttv3.MqttAsyncClient watching = connectV3(broker.getServerURI(), "watcher",
+				watcher);
+		watching.subscribe("will/#", 1).waitForCompletion(5000);
+
+		MqttConnectOptions options = new MqttConnectOptions();
+		options.setWill("will/first", "gone".getBytes(), 1, false);
+		V3Receiver first = new V3Receiver();
+		connectV3(broker.getLocalURI(), "same", first, options);
+		V3Receiver second = new V3Receiver();
+		connectV3(broker.getLocalURI(), "same", second);
+
+		Arrived will = next(watcher.arrived);
+		Assert.assertEquals("will/first", will.topic);
+		Assert.assertEquals("gone", will.payload);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (first.lost == null && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		Assert.assertNotNull(first.lost);
+		Assert.assertEquals(2, broker.getConnectedCount());
+	}
+
+	@Test(timeout = 20000)
+	public void testCloseLosesConnections() throws Exception {
+		V3Receiver receiver = new V3Receiver();
+		connectV3(broker.getLocalURI(), "closed", receiver);
+		broker.close();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (receiver.lost == null && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		Assert.assertNotNull(receiver.lost);
+		Assert.assertEquals(0, broker.getConnectedCount());
+		try {
+			connectV3(broker.getLocalURI(), "refused", new V3Receiver());
+			Assert.fail("connected to a closed broker");
+		} catch (org.eclipse.paho.client.mqttv3.MqttException e) {
+			Assert.assertEquals(org.eclipse.paho.client.mqttv3.MqttException.REASON_CODE_SERVER_CONNECT_ERROR,
+					e.getReasonCode());
+		}
+	}
+}